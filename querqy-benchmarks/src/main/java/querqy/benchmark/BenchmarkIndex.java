@@ -0,0 +1,72 @@
+package querqy.benchmark;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * An in-memory index with documents made of random words from a {@link RulesGenerator} vocabulary.
+ */
+public class BenchmarkIndex implements Closeable {
+
+    private final Directory directory;
+    private final DirectoryReader reader;
+
+    /**
+     * @param analyzer The analyzer for all fields
+     * @param vocabulary The words to index
+     * @param fields The names of the fields to index
+     * @param numDocs The number of documents
+     * @param wordsPerField The number of random words per field and document
+     * @param commitEvery Commit after this many docs to create multiple segments
+     * @throws IOException if the index cannot be written
+     */
+    public BenchmarkIndex(final Analyzer analyzer, final String[] vocabulary, final String[] fields,
+                          final int numDocs, final int wordsPerField, final int commitEvery) throws IOException {
+
+        directory = new ByteBuffersDirectory();
+        final Random random = new Random(4711L);
+
+        final IndexWriterConfig config = new IndexWriterConfig(analyzer);
+        try (final IndexWriter writer = new IndexWriter(directory, config)) {
+            for (int i = 0; i < numDocs; i++) {
+                final Document doc = new Document();
+                for (final String field : fields) {
+                    final StringBuilder sb = new StringBuilder();
+                    for (int j = 0; j < wordsPerField; j++) {
+                        // skew the distribution towards the beginning of the vocabulary
+                        final int idx = (int) (Math.abs(random.nextGaussian()) * vocabulary.length / 3.0);
+                        sb.append(vocabulary[Math.min(idx, vocabulary.length - 1)]).append(' ');
+                    }
+                    doc.add(new TextField(field, sb.toString(), Field.Store.NO));
+                }
+                writer.addDocument(doc);
+                if (commitEvery > 0 && (i + 1) % commitEvery == 0) {
+                    writer.commit();
+                }
+            }
+        }
+
+        reader = DirectoryReader.open(directory);
+    }
+
+    public DirectoryReader getReader() {
+        return reader;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+        directory.close();
+    }
+}
@@ -0,0 +1,30 @@
+package querqy.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>Runs the JMH benchmarks with the GC profiler enabled so that allocation rates are reported next to
+ * throughput.</p>
+ *
+ * <p>Accepts the standard JMH command line options, for example:</p>
+ * <pre>
+ *     java -jar querqy-benchmarks/target/benchmarks.jar RewriteChainBenchmark -p numRules=10000
+ * </pre>
+ */
+public class Benchmarks {
+
+    public static void main(final String[] args) throws RunnerException, CommandLineOptionException {
+        final CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        final Options options = new OptionsBuilder()
+                .parent(commandLineOptions)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,92 @@
+package querqy.benchmark;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Weight;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import querqy.lucene.rewrite.DependentTermQueryBuilder;
+import querqy.lucene.rewrite.DocumentFrequencyCorrection;
+import querqy.lucene.rewrite.LuceneQueryBuilder;
+import querqy.lucene.rewrite.SearchFieldsAndBoosting;
+import querqy.lucene.rewrite.SearchFieldsAndBoosting.FieldBoostModel;
+import querqy.parser.WhiteSpaceQuerqyParser;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building a Lucene query with {@link LuceneQueryBuilder} and {@link DocumentFrequencyCorrection}, including
+ * the creation of the {@link Weight}, which triggers the document frequency lookups.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class LuceneQueryBuilderBenchmark {
+
+    private static final int NUM_QUERIES = 1024;
+    private static final String[] FIELDS = {"f1", "f2", "f3"};
+
+    @Param({"2", "8"})
+    public int maxTerms;
+
+    private final Analyzer analyzer = new WhitespaceAnalyzer();
+    private final WhiteSpaceQuerqyParser parser = new WhiteSpaceQuerqyParser();
+    private BenchmarkIndex index;
+    private IndexSearcher searcher;
+    private SearchFieldsAndBoosting searchFieldsAndBoosting;
+    private List<String> queries;
+    private int queryIndex = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final RulesGenerator generator = new RulesGenerator(42L, 20_000);
+        index = new BenchmarkIndex(analyzer, generator.getVocabulary(), FIELDS, 50_000, 10, 5_000);
+        searcher = new IndexSearcher(index.getReader());
+
+        final Map<String, Float> fields = new HashMap<>();
+        for (int i = 0; i < FIELDS.length; i++) {
+            fields.put(FIELDS[i], (float) (i + 1));
+        }
+        searchFieldsAndBoosting = new SearchFieldsAndBoosting(FieldBoostModel.FIXED, fields, fields, 0.8f);
+        queries = generator.createQueries(NUM_QUERIES, maxTerms);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        index.close();
+    }
+
+    @Benchmark
+    public Weight buildQueryAndWeight() throws IOException {
+        final DocumentFrequencyCorrection dfc = new DocumentFrequencyCorrection();
+        final LuceneQueryBuilder builder = new LuceneQueryBuilder(new DependentTermQueryBuilder(dfc), analyzer,
+                searchFieldsAndBoosting, 0.01f, 1f, null, null);
+
+        final Query query = builder.createQuery(parser.parse(queries.get(queryIndex++ & (NUM_QUERIES - 1))));
+        dfc.finishedUserQuery();
+
+        return searcher.createWeight(searcher.rewrite(query), ScoreMode.COMPLETE, 1f);
+    }
+
+}
@@ -0,0 +1,114 @@
+package querqy.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import querqy.model.ExpandedQuery;
+import querqy.parser.WhiteSpaceQuerqyParser;
+import querqy.rewrite.RewriteChain;
+import querqy.rewrite.RewriterOutput;
+import querqy.rewrite.contrib.ReplaceRewriterFactory;
+import querqy.rewrite.experimental.LocalSearchEngineRequestAdapter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the ReplaceRewriter for queries of queryLength terms, as they occur when users paste long text into the
+ * search box. About every fourth term is replaced by an exact, prefix or suffix rule. The time per term should stay
+ * constant with growing query length.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class ReplaceRewriterBenchmark {
+
+    private static final int NUM_QUERIES = 64;
+    private static final int NUM_RULES = 1000;
+
+    @Param({"10", "100", "1000"})
+    public int queryLength;
+
+    private ReplaceRewriterFactory factory;
+    private List<ExpandedQuery> queries;
+    private LocalSearchEngineRequestAdapter requestAdapter;
+    private int queryIndex = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final Random random = new Random(42L);
+        // the generated vocabulary can contain a word more than once but rule inputs must be unique
+        final String[] vocabulary = new LinkedHashSet<>(Arrays.asList(new RulesGenerator(42L, 5 * NUM_RULES)
+                .getVocabulary())).toArray(new String[0]);
+
+        // rules use the first quarter of the vocabulary
+        final StringBuilder rules = new StringBuilder();
+        for (int i = 0; i < NUM_RULES; i++) {
+            switch (i % 4) {
+                case 0:
+                    rules.append(vocabulary[i]).append(' ').append(vocabulary[i + 1]);
+                    break;
+                case 1:
+                    rules.append(vocabulary[i]).append('*');
+                    break;
+                case 2:
+                    rules.append('*').append(vocabulary[i]);
+                    break;
+                default:
+                    rules.append(vocabulary[i]);
+                    break;
+            }
+            rules.append(" => ").append(vocabulary[2 * NUM_RULES + i]).append('\n');
+        }
+
+        factory = new ReplaceRewriterFactory("replace",
+                new InputStreamReader(new ByteArrayInputStream(rules.toString().getBytes(StandardCharsets.UTF_8)),
+                        StandardCharsets.UTF_8), true, ";", new WhiteSpaceQuerqyParser());
+
+        requestAdapter = new LocalSearchEngineRequestAdapter(new RewriteChain(Collections.singletonList(factory)),
+                Collections.emptyMap());
+
+        final WhiteSpaceQuerqyParser parser = new WhiteSpaceQuerqyParser();
+        queries = new ArrayList<>(NUM_QUERIES);
+        for (int q = 0; q < NUM_QUERIES; q++) {
+            final StringBuilder query = new StringBuilder();
+            for (int t = 0; t < queryLength; t++) {
+                if (t > 0) {
+                    query.append(' ');
+                }
+                // terms from the first half of the vocabulary match a rule with a probability of 1/2
+                query.append(vocabulary[random.nextInt(2 * NUM_RULES)]);
+            }
+            queries.add(new ExpandedQuery(parser.parse(query.toString())));
+        }
+    }
+
+    @Benchmark
+    public RewriterOutput rewrite() {
+        // the rewriter doesn't modify the input query
+        final ExpandedQuery query = queries.get(queryIndex++ & (NUM_QUERIES - 1));
+        return factory.createRewriter(query, requestAdapter).rewrite(query, requestAdapter);
+    }
+
+}
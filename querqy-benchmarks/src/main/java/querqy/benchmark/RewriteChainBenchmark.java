@@ -0,0 +1,84 @@
+package querqy.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import querqy.model.ExpandedQuery;
+import querqy.parser.WhiteSpaceQuerqyParser;
+import querqy.rewrite.RewriteChain;
+import querqy.rewrite.RewriteChainOutput;
+import querqy.rewrite.commonrules.SimpleCommonRulesRewriterFactory;
+import querqy.rewrite.commonrules.WhiteSpaceQuerqyParserFactory;
+import querqy.rewrite.commonrules.model.BoostInstruction.BoostMethod;
+import querqy.rewrite.commonrules.select.ExpressionCriteriaSelectionStrategyFactory;
+import querqy.rewrite.experimental.LocalSearchEngineRequestAdapter;
+import querqy.rewrite.lookup.preprocessing.LookupPreprocessorType;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link RewriteChain#rewrite(ExpandedQuery, querqy.rewrite.SearchEngineRequestAdapter)} for a chain with a
+ * common rules rewriter of a generated rule set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class RewriteChainBenchmark {
+
+    private static final int NUM_QUERIES = 1024;
+
+    @Param({"10000", "100000", "1000000"})
+    public int numRules;
+
+    private RewriteChain rewriteChain;
+    private List<String> queries;
+    private LocalSearchEngineRequestAdapter requestAdapter;
+    private final WhiteSpaceQuerqyParser parser = new WhiteSpaceQuerqyParser();
+    private int queryIndex = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        // the vocabulary grows with the number of rules so that the share of matching queries stays similar
+        final RulesGenerator generator = new RulesGenerator(42L, Math.max(1000, numRules / 2));
+        final String rules = generator.createRules(numRules);
+
+        final SimpleCommonRulesRewriterFactory factory = new SimpleCommonRulesRewriterFactory(
+                "common_rules",
+                new StringReader(rules),
+                true,
+                BoostMethod.ADDITIVE,
+                new WhiteSpaceQuerqyParserFactory(),
+                Collections.emptyMap(),
+                new ExpressionCriteriaSelectionStrategyFactory(),
+                false,
+                LookupPreprocessorType.LOWERCASE
+        );
+
+        rewriteChain = new RewriteChain(Collections.singletonList(factory));
+        requestAdapter = new LocalSearchEngineRequestAdapter(rewriteChain, Collections.emptyMap());
+        queries = generator.createQueries(NUM_QUERIES, 4);
+    }
+
+    @Benchmark
+    public RewriteChainOutput rewrite() {
+        final String query = queries.get(queryIndex++ & (NUM_QUERIES - 1));
+        return rewriteChain.rewrite(new ExpandedQuery(parser.parse(query)), requestAdapter);
+    }
+
+}
@@ -0,0 +1,102 @@
+package querqy.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates common rules and matching queries from a synthetic vocabulary. The same seed always produces the same
+ * rules and queries, so that results of different benchmark runs can be compared.
+ */
+public class RulesGenerator {
+
+    private final Random random;
+    private final String[] vocabulary;
+
+    public RulesGenerator(final long seed, final int vocabularySize) {
+        random = new Random(seed);
+        vocabulary = new String[vocabularySize];
+        for (int i = 0; i < vocabularySize; i++) {
+            vocabulary[i] = word(i);
+        }
+    }
+
+    /**
+     * Create a rules file with the given number of rules. About 70% of the rules have a single-term input, the
+     * remaining rules have two or three terms. Each rule has one to three instructions and an _id property.
+     *
+     * @param numRules The number of rules
+     * @return The rules in the common rules format
+     */
+    public String createRules(final int numRules) {
+        final StringBuilder sb = new StringBuilder(numRules * 64);
+        for (int i = 0; i < numRules; i++) {
+            final int numInputTerms = random.nextInt(10) < 7 ? 1 : 2 + random.nextInt(2);
+            sb.append(randomWords(numInputTerms)).append(" =>\n");
+            sb.append("  SYNONYM: ").append(randomWords(1 + random.nextInt(2))).append('\n');
+            switch (random.nextInt(4)) {
+                case 0:
+                    sb.append("  UP(").append(1 + random.nextInt(100)).append("): ").append(randomWords(1))
+                            .append('\n');
+                    break;
+                case 1:
+                    sb.append("  DOWN(").append(1 + random.nextInt(100)).append("): ").append(randomWords(1))
+                            .append('\n');
+                    break;
+                case 2:
+                    sb.append("  FILTER: * category:").append(randomWords(1)).append('\n');
+                    break;
+                default:
+                    break;
+            }
+            sb.append("  @_id: \"").append(i).append("\"\n");
+            sb.append("  @priority: ").append(random.nextInt(10)).append("\n\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Create queries with one to maxTerms terms from the vocabulary.
+     *
+     * @param numQueries The number of queries
+     * @param maxTerms The maximum number of terms per query
+     * @return The queries
+     */
+    public List<String> createQueries(final int numQueries, final int maxTerms) {
+        final List<String> queries = new ArrayList<>(numQueries);
+        for (int i = 0; i < numQueries; i++) {
+            queries.add(randomWords(1 + random.nextInt(maxTerms)));
+        }
+        return queries;
+    }
+
+    public String randomWords(final int numWords) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < numWords; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(vocabulary[random.nextInt(vocabulary.length)]);
+        }
+        return sb.toString();
+    }
+
+    public String[] getVocabulary() {
+        return vocabulary;
+    }
+
+    static String word(int i) {
+        final StringBuilder sb = new StringBuilder();
+        do {
+            sb.append((char) ('a' + (i % 26)));
+            i /= 26;
+        } while (i > 0);
+        // make sure words are at least three chars long
+        while (sb.length() < 3) {
+            sb.append('q');
+        }
+        final String word = sb.toString();
+        // avoid boolean operators in rules input
+        return ("and".equals(word) || "not".equals(word)) ? word + "q" : word;
+    }
+}
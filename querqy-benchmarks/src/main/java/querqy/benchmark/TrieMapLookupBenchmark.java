@@ -0,0 +1,115 @@
+package querqy.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import querqy.CompoundCharSequence;
+import querqy.trie.PrefixCollectingCursor;
+import querqy.trie.States;
+import querqy.trie.TrieMap;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares looking up the terms of a query in a {@link TrieMap} using {@link TrieMap#get(CharSequence)}, which creates
+ * {@link States} objects for every term, with the cursor-based
+ * {@link TrieMap#lookup(CharSequence, querqy.trie.TrieCursor, querqy.trie.PrefixConsumer)}. Both benchmarks look up
+ * every term on its own and as the continuation of the preceding term, like the common rules lookup does. Compare
+ * <code>gc.alloc.rate.norm</code> of the two benchmarks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class TrieMapLookupBenchmark {
+
+    private static final int NUM_QUERIES = 1024;
+
+    @Param({"10000", "100000"})
+    public int numEntries;
+
+    private TrieMap<String> trieMap;
+    private String[][] queries;
+    private final PrefixCollectingCursor<String> cursor = new PrefixCollectingCursor<>();
+    private int queryIndex = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final RulesGenerator generator = new RulesGenerator(42L, Math.max(1000, numEntries / 2));
+        trieMap = new TrieMap<>();
+        for (int i = 0; i < numEntries; i++) {
+            final String input = generator.randomWords(i % 10 < 7 ? 1 : 2);
+            trieMap.put(input, input);
+            if (i % 20 == 0) {
+                trieMap.putPrefix(input, input);
+            }
+        }
+
+        final List<String> queryList = generator.createQueries(NUM_QUERIES, 4);
+        queries = new String[NUM_QUERIES][];
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            queries[i] = queryList.get(i).split(" ");
+        }
+    }
+
+    @Benchmark
+    public int get() {
+        final String[] terms = queries[queryIndex++ & (NUM_QUERIES - 1)];
+        int matches = 0;
+        States<String> previous = null;
+        for (final String term : terms) {
+            if (previous != null) {
+                final States<String> next = trieMap.get(new CompoundCharSequence(null, " ", term),
+                        previous.getStateForCompleteSequence());
+                matches += count(next);
+            }
+            final States<String> states = trieMap.get(term);
+            matches += count(states);
+            previous = states.getStateForCompleteSequence().isKnown() ? states : null;
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public int lookup() {
+        final String[] terms = queries[queryIndex++ & (NUM_QUERIES - 1)];
+        int matches = 0;
+        querqy.trie.State<String> previous = null;
+        for (final String term : terms) {
+            if (previous != null) {
+                // continue like TrieMapSequenceLookup, without creating a compound sequence for " " + term
+                cursor.setState(previous);
+                if (trieMap.lookupNext(" ", cursor, cursor)) {
+                    trieMap.lookupNext(term, cursor, cursor);
+                }
+                matches += count(cursor);
+            }
+            // like the query visitor, only keep a state for sequences that are known to the trie
+            previous = trieMap.lookup(term, cursor, cursor) ? cursor.toState() : null;
+            matches += count(cursor);
+        }
+        return matches;
+    }
+
+    private static int count(final States<String> states) {
+        final List<querqy.trie.State<String>> prefixes = states.getPrefixes();
+        return (states.getStateForCompleteSequence().isFinal() ? 1 : 0) + (prefixes == null ? 0 : prefixes.size());
+    }
+
+    private static int count(final PrefixCollectingCursor<String> cursor) {
+        return (cursor.isFinal() ? 1 : 0) + cursor.getPrefixCount();
+    }
+
+}
@@ -0,0 +1,57 @@
+package querqy.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import querqy.model.Query;
+import querqy.parser.WhiteSpaceQuerqyParser;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link WhiteSpaceQuerqyParser#parse(String)} for queries of up to maxTerms terms, including boolean
+ * operators.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class WhiteSpaceQuerqyParserBenchmark {
+
+    private static final int NUM_QUERIES = 1024;
+
+    @Param({"3", "10"})
+    public int maxTerms;
+
+    private final WhiteSpaceQuerqyParser parser = new WhiteSpaceQuerqyParser();
+    private List<String> queries;
+    private int queryIndex = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final RulesGenerator generator = new RulesGenerator(42L, 10_000);
+        queries = generator.createQueries(NUM_QUERIES, maxTerms);
+        // add some operators
+        for (int i = 0; i < NUM_QUERIES; i += 4) {
+            queries.set(i, "+" + queries.get(i) + " -" + generator.randomWords(1));
+        }
+    }
+
+    @Benchmark
+    public Query parse() {
+        return parser.parse(queries.get(queryIndex++ & (NUM_QUERIES - 1)));
+    }
+
+}
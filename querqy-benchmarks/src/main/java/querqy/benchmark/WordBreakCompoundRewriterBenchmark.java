@@ -0,0 +1,95 @@
+package querqy.benchmark;
+
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import querqy.lucene.contrib.rewrite.wordbreak.WordBreakCompoundRewriterFactory;
+import querqy.model.ExpandedQuery;
+import querqy.parser.WhiteSpaceQuerqyParser;
+import querqy.rewrite.RewriteChain;
+import querqy.rewrite.RewriterOutput;
+import querqy.rewrite.experimental.LocalSearchEngineRequestAdapter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the {@link querqy.lucene.contrib.rewrite.wordbreak.WordBreakCompoundRewriter} against an in-memory
+ * dictionary index. Half of the queries contain a compound of two dictionary words, the other half contain two
+ * dictionary words that can be compounded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class WordBreakCompoundRewriterBenchmark {
+
+    private static final int NUM_QUERIES = 1024;
+    private static final String DICTIONARY_FIELD = "dict";
+
+    @Param({"default", "german"})
+    public String morphology;
+
+    @Param({"false", "true"})
+    public boolean verifyDecompoundCollation;
+
+    private final WhiteSpaceQuerqyParser parser = new WhiteSpaceQuerqyParser();
+    private BenchmarkIndex index;
+    private WordBreakCompoundRewriterFactory factory;
+    private LocalSearchEngineRequestAdapter requestAdapter;
+    private List<String> queries;
+    private int queryIndex = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final RulesGenerator generator = new RulesGenerator(42L, 5_000);
+        final String[] vocabulary = generator.getVocabulary();
+        index = new BenchmarkIndex(new WhitespaceAnalyzer(), vocabulary, new String[] {DICTIONARY_FIELD}, 20_000,
+                10, 5_000);
+
+        factory = new WordBreakCompoundRewriterFactory("word_break", index::getReader, DICTIONARY_FIELD, true, 1,
+                30, 3, Collections.emptyList(), false, 3, verifyDecompoundCollation, Collections.emptyList(),
+                morphology, morphology);
+
+        requestAdapter = new LocalSearchEngineRequestAdapter(new RewriteChain(Collections.singletonList(factory)),
+                Collections.emptyMap());
+
+        final Random random = new Random(42L);
+        queries = new ArrayList<>(NUM_QUERIES);
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            // prefer frequent words, see BenchmarkIndex
+            final String word1 = vocabulary[random.nextInt(vocabulary.length / 3)];
+            final String word2 = vocabulary[random.nextInt(vocabulary.length / 3)];
+            queries.add((i % 2 == 0) ? word1 + word2 : word1 + " " + word2);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        index.close();
+    }
+
+    @Benchmark
+    public RewriterOutput rewrite() {
+        final ExpandedQuery query = new ExpandedQuery(parser.parse(queries.get(queryIndex++ & (NUM_QUERIES - 1))));
+        return factory.createRewriter(query, requestAdapter).rewrite(query, requestAdapter);
+    }
+
+}
@@ -0,0 +1,158 @@
+package querqy.model;
+
+import java.util.Collection;
+
+/**
+ * <p>Creates deep copies of queries.</p>
+ *
+ * <p>Other than {@link CloneableNode#clone(Node)}, which passes the 'generated' flag of the cloned node down to all
+ * its descendants, the copy keeps the 'generated' flag and the occur of every node. This allows to hand out copies of
+ * a rewritten query, in which only some terms are generated.</p>
+ */
+public final class QueryCopier {
+
+    private QueryCopier() {
+        // static methods only
+    }
+
+    /**
+     * Create a deep copy of an {@link ExpandedQuery}.
+     *
+     * @param expandedQuery The query to copy
+     * @return A copy that doesn't share any mutable node with the original query
+     * @throws IllegalArgumentException if the query contains a node type that cannot be copied without loss
+     */
+    public static ExpandedQuery copy(final ExpandedQuery expandedQuery) {
+
+        final ExpandedQuery copy = new ExpandedQuery(copy(expandedQuery.getUserQuery()));
+
+        final Collection<QuerqyQuery<?>> filterQueries = expandedQuery.getFilterQueries();
+        if (filterQueries != null) {
+            for (final QuerqyQuery<?> filterQuery : filterQueries) {
+                copy.addFilterQuery(copy(filterQuery));
+            }
+        }
+
+        final Collection<BoostQuery> boostUpQueries = expandedQuery.getBoostUpQueries();
+        if (boostUpQueries != null) {
+            for (final BoostQuery boostQuery : boostUpQueries) {
+                copy.addBoostUpQuery(copy(boostQuery));
+            }
+        }
+
+        final Collection<BoostQuery> boostDownQueries = expandedQuery.getBoostDownQueries();
+        if (boostDownQueries != null) {
+            for (final BoostQuery boostQuery : boostDownQueries) {
+                copy.addBoostDownQuery(copy(boostQuery));
+            }
+        }
+
+        final Collection<BoostQuery> multiplicativeBoostQueries = expandedQuery.getMultiplicativeBoostQueries();
+        if (multiplicativeBoostQueries != null) {
+            for (final BoostQuery boostQuery : multiplicativeBoostQueries) {
+                copy.addMultiplicativeBoostQuery(copy(boostQuery));
+            }
+        }
+
+        return copy;
+
+    }
+
+    public static BoostQuery copy(final BoostQuery boostQuery) {
+        return new BoostQuery(copy(boostQuery.getQuery()), boostQuery.getBoost());
+    }
+
+    /**
+     * Create a deep copy of a top-level query.
+     *
+     * @param query The query to copy
+     * @return The copy
+     * @throws IllegalArgumentException if the query contains a node type that cannot be copied without loss
+     */
+    public static QuerqyQuery<?> copy(final QuerqyQuery<?> query) {
+
+        if (query instanceof Query) {
+            final Query source = (Query) query;
+            final Query copy = new Query(source.isGenerated());
+            copyClauses(source, copy);
+            return copy;
+        }
+
+        if (query instanceof BooleanQuery) {
+            return copy((BooleanQuery) query, null);
+        }
+
+        if (query instanceof MatchAllQuery) {
+            return ((MatchAllQuery) query).clone(null);
+        }
+
+        if (query instanceof RawQuery) {
+            // raw queries have no children and keep occur and 'generated'
+            return ((RawQuery) query).clone(null);
+        }
+
+        throw new IllegalArgumentException("Cannot copy query of type " + query.getClass().getName());
+
+    }
+
+    private static BooleanQuery copy(final BooleanQuery source, final BooleanParent newParent) {
+        if (source.getClass() != BooleanQuery.class) {
+            throw new IllegalArgumentException("Cannot copy query of type " + source.getClass().getName());
+        }
+        final BooleanQuery copy = new BooleanQuery(newParent, source.getOccur(), source.isGenerated());
+        copyClauses(source, copy);
+        return copy;
+    }
+
+    private static void copyClauses(final BooleanQuery source, final BooleanQuery target) {
+
+        for (final BooleanClause clause : source.getClauses()) {
+
+            if (clause instanceof DisjunctionMaxQuery) {
+                target.addClause(copy((DisjunctionMaxQuery) clause, target));
+            } else if (clause instanceof BooleanQuery) {
+                target.addClause(copy((BooleanQuery) clause, target));
+            } else {
+                throw new IllegalArgumentException("Cannot copy clause of type " + clause.getClass().getName());
+            }
+
+        }
+
+    }
+
+    private static DisjunctionMaxQuery copy(final DisjunctionMaxQuery source, final BooleanQuery newParent) {
+
+        final DisjunctionMaxQuery copy = new DisjunctionMaxQuery(newParent, source.getOccur(), source.isGenerated());
+
+        for (final DisjunctionMaxClause clause : source.getClauses()) {
+
+            if (clause instanceof Term) {
+                copy.addClause(copy((Term) clause, copy));
+            } else if (clause instanceof BooleanQuery) {
+                copy.addClause(copy((BooleanQuery) clause, copy));
+            } else {
+                throw new IllegalArgumentException("Cannot copy clause of type " + clause.getClass().getName());
+            }
+
+        }
+
+        return copy;
+
+    }
+
+    private static Term copy(final Term source, final DisjunctionMaxQuery newParent) {
+
+        if (source.getClass() == Term.class) {
+            return new Term(newParent, source.getField(), source.getValue(), source.isGenerated());
+        }
+
+        if (source.getClass() == BoostedTerm.class) {
+            return new BoostedTerm(newParent, source.getField(), source.getValue(),
+                    ((BoostedTerm) source).getBoost());
+        }
+
+        throw new IllegalArgumentException("Cannot copy term of type " + source.getClass().getName());
+
+    }
+
+}
@@ -0,0 +1,13 @@
+package querqy.parser;
+
+/**
+ * A {@link WhiteSpaceQuerqyParser} that lower-cases the input. This class can be configured by its name where a
+ * parser class with a no-args constructor is expected, for example in Solr's query parser configuration.
+ */
+public class LowerCaseWhiteSpaceQuerqyParser extends WhiteSpaceQuerqyParser {
+
+    public LowerCaseWhiteSpaceQuerqyParser() {
+        super(true);
+    }
+
+}
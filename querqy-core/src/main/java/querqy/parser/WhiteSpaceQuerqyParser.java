@@ -3,6 +3,8 @@
  */
 package querqy.parser;
 
+import querqy.LowerCaseCharSequence;
+import querqy.SimpleComparableCharSequence;
 import querqy.model.Clause.Occur;
 import querqy.model.DisjunctionMaxQuery;
 import querqy.model.Query;
@@ -12,6 +14,10 @@ import querqy.model.Term;
  * A simple QuerqyParser that breaks a query string into clauses at whitespace.
  * Clauses are either terms or terms with a boolean operator prefix
  * (&quot;+&quot; &quot;-&quot;).
+ *
+ * If lowerCaseInput is set, the input is copied into a single char array, which is lower-cased once. The values of
+ * all Terms are views on this array and they are marked as {@link LowerCaseCharSequence}s so that lookups and
+ * rewriters don't lower-case them again.
  * 
  * @author René Kriegler, @renekrie
  * 
@@ -22,6 +28,16 @@ public class WhiteSpaceQuerqyParser implements QuerqyParser {
         DEFAULT, OP, TERM
     }
 
+    private final boolean lowerCaseInput;
+
+    public WhiteSpaceQuerqyParser() {
+        this(false);
+    }
+
+    public WhiteSpaceQuerqyParser(final boolean lowerCaseInput) {
+        this.lowerCaseInput = lowerCaseInput;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -29,15 +45,21 @@ public class WhiteSpaceQuerqyParser implements QuerqyParser {
      */
     @Override
     public Query parse(final String input) {
-        return parseString(input);
+        return parseString(input, lowerCaseInput);
     }
 
     public static Query parseString(final String input) {
+        return parseString(input, false);
+    }
+
+    public static Query parseString(final String input, final boolean lowerCaseInput) {
 
         final Query query = new Query();
 
         if (input.length() > 0) {
 
+            final char[] buffer = lowerCaseInput ? toLowerCaseChars(input) : null;
+
             int start = -1;
             Status status = Status.DEFAULT;
             Occur occur = Occur.SHOULD;
@@ -57,7 +79,7 @@ public class WhiteSpaceQuerqyParser implements QuerqyParser {
                         DisjunctionMaxQuery dmq = new DisjunctionMaxQuery(
                                 query, occur, false);
                         query.addClause(dmq);
-                        Term term = new Term(dmq, input.substring(start, idx));
+                        Term term = new Term(dmq, termValue(input, buffer, start, idx));
                         dmq.addClause(term);
                         status = Status.DEFAULT;
                         occur = Occur.SHOULD;
@@ -113,7 +135,7 @@ public class WhiteSpaceQuerqyParser implements QuerqyParser {
                 DisjunctionMaxQuery dmq = new DisjunctionMaxQuery(query, occur,
                         false);
                 query.addClause(dmq);
-                Term term = new Term(dmq, input.substring(start));
+                Term term = new Term(dmq, termValue(input, buffer, start, input.length()));
                 dmq.addClause(term);
             }
             break;
@@ -134,4 +156,19 @@ public class WhiteSpaceQuerqyParser implements QuerqyParser {
         return query;
     }
 
+    private static CharSequence termValue(final String input, final char[] buffer, final int start, final int end) {
+        return buffer == null
+                ? input.substring(start, end)
+                : new LowerCaseCharSequence(new SimpleComparableCharSequence(buffer, start, end - start));
+    }
+
+    private static char[] toLowerCaseChars(final String input) {
+        final char[] buffer = input.toCharArray();
+        for (int i = 0; i < buffer.length; i++) {
+            // same as LowerCaseCharSequence.charAt()
+            buffer[i] = Character.toLowerCase(buffer[i]);
+        }
+        return buffer;
+    }
+
 }
@@ -0,0 +1,112 @@
+package querqy.rewrite;
+
+/**
+ * <p>Bounds the work that a {@link RewriteChain} may spend on a single request.</p>
+ *
+ * <p>A budget limits the time since its creation and/or the number of steps that were consumed. The
+ * {@link RewriteChain} consumes one step per rewriter and skips the remaining rewriters once the budget is exhausted.
+ * Rewriters that do expensive optional work (like looking up many rules or decompounding terms) can consume steps
+ * themselves via {@link #tryConsume(int)} and stop adding optional expansions once it returns false.</p>
+ *
+ * <p>A budget is created per request and it is not thread-safe.</p>
+ */
+public class RewriteBudget {
+
+    /**
+     * A budget that is never exhausted.
+     */
+    public static final RewriteBudget UNLIMITED = new RewriteBudget(-1L, -1L) {
+        @Override
+        public boolean isExhausted() {
+            return false;
+        }
+
+        @Override
+        public boolean tryConsume(final int steps) {
+            return true;
+        }
+    };
+
+    private final long startNanos;
+    private final long maxTimeNanos;
+    private final boolean hasTimeLimit;
+    private final long maxSteps;
+
+    private long steps = 0L;
+    private int refusals = 0;
+
+    /**
+     * @param maxTimeNanos The time in nanoseconds after which the budget will be exhausted, or a negative value for no
+     *                     time limit
+     * @param maxSteps The number of steps that can be consumed, or a negative value for no step limit
+     */
+    protected RewriteBudget(final long maxTimeNanos, final long maxSteps) {
+        this.hasTimeLimit = maxTimeNanos >= 0L;
+        this.maxTimeNanos = maxTimeNanos;
+        // nanoTime values can be negative and overflow - only the difference to the start time is meaningful
+        this.startNanos = hasTimeLimit ? System.nanoTime() : 0L;
+        this.maxSteps = maxSteps;
+    }
+
+    /**
+     * Get the budget of a request. Request adapters that return null (for example, mocks that don't call the default
+     * method of {@link SearchEngineRequestAdapter#getRewriteBudget()}) get an unlimited budget.
+     *
+     * @param searchEngineRequestAdapter The request adapter. Can be null.
+     * @return The budget of the request, or {@link #UNLIMITED} if the request doesn't have a budget
+     */
+    public static RewriteBudget of(final SearchEngineRequestAdapter searchEngineRequestAdapter) {
+        final RewriteBudget budget = searchEngineRequestAdapter == null
+                ? null : searchEngineRequestAdapter.getRewriteBudget();
+        return budget == null ? UNLIMITED : budget;
+    }
+
+    /**
+     * Create a budget that starts now.
+     *
+     * @param maxTimeMillis The time limit in milliseconds or null for no time limit
+     * @param maxSteps The step limit or null for no step limit
+     * @return The budget, or {@link #UNLIMITED} if no limit was set
+     */
+    public static RewriteBudget of(final Integer maxTimeMillis, final Integer maxSteps) {
+        if (maxTimeMillis == null && maxSteps == null) {
+            return UNLIMITED;
+        }
+        if ((maxTimeMillis != null && maxTimeMillis < 0) || (maxSteps != null && maxSteps < 0)) {
+            throw new IllegalArgumentException("Rewrite budget must not be negative");
+        }
+        return new RewriteBudget(maxTimeMillis == null ? -1L : maxTimeMillis * 1_000_000L,
+                maxSteps == null ? -1L : maxSteps);
+    }
+
+    /**
+     * @return true if the time or the steps of this budget are used up
+     */
+    public boolean isExhausted() {
+        return (maxSteps >= 0L && steps >= maxSteps) || (hasTimeLimit && System.nanoTime() - startNanos >= maxTimeNanos);
+    }
+
+    /**
+     * Consume steps from this budget. The steps will not be consumed if the budget is exhausted already. A caller
+     * that gets false should skip the work that it wanted to spend the steps on.
+     *
+     * @param steps The number of steps
+     * @return true if the steps could be consumed, false if the budget is exhausted
+     */
+    public boolean tryConsume(final int steps) {
+        if (isExhausted()) {
+            refusals++;
+            return false;
+        }
+        this.steps += steps;
+        return true;
+    }
+
+    /**
+     * @return The number of times that {@link #tryConsume(int)} returned false
+     */
+    public int getRefusals() {
+        return refusals;
+    }
+
+}
@@ -6,12 +6,15 @@ package querqy.rewrite;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 
 import querqy.model.ExpandedQuery;
 import querqy.model.Query;
 import querqy.rewrite.logging.RewriteChainLog;
 import querqy.rewrite.logging.RewriterLog;
+import querqy.rewrite.metrics.RewriteChainInstrumentation;
+import querqy.rewrite.metrics.ThreadAllocation;
 
 /**
  * The chain of rewriters to manipulate a {@link Query}.
@@ -22,13 +25,36 @@ import querqy.rewrite.logging.RewriterLog;
 public class RewriteChain {
 
     private final List<RewriterFactory> factories;
+    private final RewriteResultCache rewriteResultCache;
+    private final RewriteChainInstrumentation instrumentation;
 
     public RewriteChain() {
         this(Collections.emptyList());
     }
 
     public RewriteChain(final List<RewriterFactory> factories) {
+        this(factories, null);
+    }
+
+    /**
+     * @param factories The factories of the rewriters in this chain
+     * @param rewriteResultCache A cache for the rewrite output. Can be null.
+     */
+    public RewriteChain(final List<RewriterFactory> factories, final RewriteResultCache rewriteResultCache) {
+        this(factories, rewriteResultCache, null);
+    }
+
+    /**
+     * @param factories The factories of the rewriters in this chain
+     * @param rewriteResultCache A cache for the rewrite output. Can be null.
+     * @param instrumentation Receives the measurements for each applied rewriter. Can be null. Rewrites that are
+     *                        served from the rewriteResultCache are not measured.
+     */
+    public RewriteChain(final List<RewriterFactory> factories, final RewriteResultCache rewriteResultCache,
+                        final RewriteChainInstrumentation instrumentation) {
         this.factories = factories;
+        this.rewriteResultCache = rewriteResultCache;
+        this.instrumentation = instrumentation;
         ensureThatRewriterIdsAreValid();
     }
 
@@ -57,8 +83,29 @@ public class RewriteChain {
     public RewriteChainOutput rewrite(final ExpandedQuery query,
                                       final SearchEngineRequestAdapter searchEngineRequestAdapter) {
 
-        final RewritingExecutor executor = new RewritingExecutor(factories, searchEngineRequestAdapter, query);
-        return executor.rewrite();
+        final RewriteResultCache.Key cacheKey = rewriteResultCache == null || factories.isEmpty()
+                ? null
+                : rewriteResultCache.createKey(factories, query, searchEngineRequestAdapter).orElse(null);
+
+        if (cacheKey != null) {
+            final Optional<RewriteChainOutput> cachedOutput = rewriteResultCache.get(cacheKey,
+                    searchEngineRequestAdapter);
+            if (cachedOutput.isPresent()) {
+                return cachedOutput.get();
+            }
+        }
+
+        final RewritingExecutor executor = new RewritingExecutor(factories, searchEngineRequestAdapter, query,
+                instrumentation);
+        final RewriteChainOutput output = executor.rewrite();
+
+        // don't cache the output of a rewrite chain that was cut short by the rewrite budget
+        if (cacheKey != null
+                && !output.getRewriteLog().map(RewriteChainLog::hasDegradedRewriting).orElse(false)) {
+            rewriteResultCache.put(cacheKey, output, searchEngineRequestAdapter);
+        }
+
+        return output;
     }
 
     private static class RewritingExecutor {
@@ -67,33 +114,51 @@ public class RewriteChain {
 
         private final SearchEngineRequestAdapter searchEngineRequestAdapter;
         private final RewriteLoggingConfig rewriteLoggingConfig;
+        private final RewriteBudget rewriteBudget;
+        private final RewriteChainInstrumentation instrumentation;
 
         private ExpandedQuery expandedQuery;
 
         private final RewriteChainLog.RewriteChainLogBuilder rewriteChainLogBuilder = RewriteChainLog.builder();
+        private final RewriteChainOutput.RewriteChainOutputBuilder outputBuilder = RewriteChainOutput.builder();
 
         public RewritingExecutor(
                 final List<RewriterFactory> rewriterFactories,
                 final SearchEngineRequestAdapter searchEngineRequestAdapter,
-                final ExpandedQuery expandedQuery
+                final ExpandedQuery expandedQuery,
+                final RewriteChainInstrumentation instrumentation
         ) {
             this.rewriterFactories = rewriterFactories;
 
             this.searchEngineRequestAdapter = searchEngineRequestAdapter;
             this.rewriteLoggingConfig = searchEngineRequestAdapter.getRewriteLoggingConfig();
+            this.rewriteBudget = RewriteBudget.of(searchEngineRequestAdapter);
 
             this.expandedQuery = expandedQuery;
+            this.instrumentation = instrumentation;
         }
 
         public RewriteChainOutput rewrite() {
             for (final RewriterFactory factory : rewriterFactories) {
+
+                if (!rewriteBudget.tryConsume(1)) {
+                    recordDegradation(factory.getRewriterId(), true);
+                    continue;
+                }
+
+                final int refusals = rewriteBudget.getRefusals();
                 final RewriterOutput rewriterOutput = applyFactory(factory);
+                if (rewriteBudget.getRefusals() > refusals) {
+                    recordDegradation(factory.getRewriterId(), false);
+                }
 
                 if (rewriteLoggingConfig.isActive() && rewriterOutput.getRewriterLog().isPresent()) {
                     addLogIfRewritingHasBeenApplied(
                             factory.getRewriterId(), rewriterOutput.getRewriterLog().get());
                 }
 
+                rewriterOutput.getCacheHitReplay().ifPresent(outputBuilder::addCacheHitReplay);
+
                 expandedQuery = rewriterOutput.getExpandedQuery();
             }
 
@@ -101,6 +166,40 @@ public class RewriteChain {
         }
 
         private RewriterOutput applyFactory(final RewriterFactory factory) {
+            if (instrumentation == null) {
+                return createAndApplyRewriter(factory);
+            }
+
+            final boolean measureAllocations = instrumentation.isMeasuringAllocations();
+            final long allocatedBefore = measureAllocations ? ThreadAllocation.currentThreadAllocatedBytes() : 0L;
+            final long start = System.nanoTime();
+
+            final RewriterOutput rewriterOutput = createAndApplyRewriter(factory);
+
+            final long duration = System.nanoTime() - start;
+            final long allocatedBytes = measureAllocations
+                    ? ThreadAllocation.currentThreadAllocatedBytes() - allocatedBefore
+                    : -1L;
+            final boolean hasAppliedRewriting = rewriterOutput.getRewriterLog()
+                    .map(RewriterLog::hasAppliedRewriting)
+                    .orElse(false);
+            instrumentation.recordRewrite(factory.getRewriterId(), duration, allocatedBytes, hasAppliedRewriting);
+
+            return rewriterOutput;
+        }
+
+        private void recordDegradation(final String rewriterId, final boolean skipped) {
+            if (skipped) {
+                rewriteChainLogBuilder.skipped(rewriterId);
+            } else {
+                rewriteChainLogBuilder.truncated(rewriterId);
+            }
+            if (instrumentation != null) {
+                instrumentation.recordDegradedRewrite(rewriterId, skipped);
+            }
+        }
+
+        private RewriterOutput createAndApplyRewriter(final RewriterFactory factory) {
             final QueryRewriter rewriter = factory.createRewriter(expandedQuery, searchEngineRequestAdapter);
             return rewriter.rewrite(expandedQuery, searchEngineRequestAdapter);
         }
@@ -129,7 +228,7 @@ public class RewriteChain {
         }
 
         private RewriteChainOutput buildOutput() {
-            return RewriteChainOutput.builder()
+            return outputBuilder
                     .expandedQuery(expandedQuery)
                     .rewriteLog(rewriteChainLogBuilder.build())
                     .build();
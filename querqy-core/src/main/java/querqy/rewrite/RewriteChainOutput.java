@@ -3,16 +3,22 @@ package querqy.rewrite;
 import querqy.model.ExpandedQuery;
 import querqy.rewrite.logging.RewriteChainLog;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 
 public class RewriteChainOutput {
 
     private final ExpandedQuery expandedQuery;
     private final RewriteChainLog rewriteLog;
+    private final List<Runnable> cacheHitReplays;
 
-    private RewriteChainOutput(final ExpandedQuery expandedQuery, final RewriteChainLog rewriteLog) {
+    private RewriteChainOutput(final ExpandedQuery expandedQuery, final RewriteChainLog rewriteLog,
+                               final List<Runnable> cacheHitReplays) {
         this.expandedQuery = expandedQuery;
         this.rewriteLog = rewriteLog;
+        this.cacheHitReplays = cacheHitReplays;
     }
 
     public ExpandedQuery getExpandedQuery() {
@@ -24,6 +30,15 @@ public class RewriteChainOutput {
         return Optional.ofNullable(rewriteLog);
     }
 
+    /**
+     * @return The side effects of the rewriters that must be repeated when this output is served from a
+     * {@link RewriteResultCache}
+     * @see RewriterOutput#getCacheHitReplay()
+     */
+    public List<Runnable> getCacheHitReplays() {
+        return cacheHitReplays;
+    }
+
     public static RewriteChainOutputBuilder builder() {
         return new RewriteChainOutputBuilder();
     }
@@ -32,6 +47,7 @@ public class RewriteChainOutput {
 
         private ExpandedQuery expandedQuery;
         private RewriteChainLog rewriteLog;
+        private List<Runnable> cacheHitReplays = null;
 
         public RewriteChainOutputBuilder expandedQuery(final ExpandedQuery expandedQuery) {
             this.expandedQuery = expandedQuery;
@@ -43,8 +59,17 @@ public class RewriteChainOutput {
             return this;
         }
 
+        public RewriteChainOutputBuilder addCacheHitReplay(final Runnable cacheHitReplay) {
+            if (cacheHitReplays == null) {
+                cacheHitReplays = new ArrayList<>();
+            }
+            cacheHitReplays.add(cacheHitReplay);
+            return this;
+        }
+
         public RewriteChainOutput build() {
-            return new RewriteChainOutput(expandedQuery, rewriteLog);
+            return new RewriteChainOutput(expandedQuery, rewriteLog,
+                    cacheHitReplays == null ? Collections.emptyList() : cacheHitReplays);
         }
     }
 }
@@ -0,0 +1,341 @@
+package querqy.rewrite;
+
+import querqy.model.ExpandedQuery;
+import querqy.model.QueryCopier;
+import querqy.model.convert.QueryBuilderException;
+import querqy.model.convert.builder.ExpandedQueryBuilder;
+import querqy.rewrite.logging.RewriteChainLog;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * <p>A bounded cache for the output of a {@link RewriteChain}.</p>
+ *
+ * <p>The cache key is made of the rewriter factories of the chain, the structure of the parsed input query and the
+ * values of the request parameters that the factories declare as relevant via
+ * {@link RewriterFactory#getCacheKeyRequestParamNames()}. As the factory instances are part of the key, entries that
+ * were created by a factory that has been replaced (for example, after reloading the rewriter config) will not be
+ * returned again. They can be removed explicitly using {@link #invalidate()}.</p>
+ *
+ * <p>The output is only cached if</p>
+ * <ul>
+ *     <li>all factories in the chain declare their relevant request parameters,</li>
+ *     <li>rewrite logging is not active and the request is not a debug request,</li>
+ *     <li>the request context is empty before rewriting (so that all entries that the rewriters add to the context
+ *     can be replayed) and</li>
+ *     <li>the query can be copied without loss.</li>
+ * </ul>
+ *
+ * <p>The cached queries and context entries are copied before they are handed out, so that callers can modify
+ * them. The side effects of the rewriters ({@link RewriteChainOutput#getCacheHitReplays()}) are repeated whenever
+ * a cached output is handed out.</p>
+ *
+ * <p>The cache is split into stripes by the hash of the key, so that concurrent requests only contend for the lock of
+ * a stripe. Each stripe evicts its least recently used entry when it is full.</p>
+ */
+public class RewriteResultCache {
+
+    /**
+     * The minimum number of entries per stripe. Smaller caches use fewer stripes, so that their eviction stays close
+     * to global LRU.
+     */
+    static final int MIN_STRIPE_SIZE = 16;
+
+    private final int maxSize;
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    /**
+     * @param maxSize The maximum number of cached rewrite outputs. The least recently used entry of a stripe will be
+     *                removed when the stripe is full.
+     */
+    public RewriteResultCache(final int maxSize) {
+        this(maxSize, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * @param maxSize The maximum number of cached rewrite outputs
+     * @param numberOfStripes The number of independently locked cache segments. It will be rounded up to the next
+     *                        power of 2, but there will be at most one stripe per {@value #MIN_STRIPE_SIZE} entries.
+     */
+    public RewriteResultCache(final int maxSize, final int numberOfStripes) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be > 0");
+        }
+        if (numberOfStripes < 1) {
+            throw new IllegalArgumentException("numberOfStripes must be > 0");
+        }
+        this.maxSize = maxSize;
+
+        int numStripes = 1;
+        while (numStripes < numberOfStripes && (numStripes << 1) * MIN_STRIPE_SIZE <= maxSize) {
+            numStripes <<= 1;
+        }
+        stripeMask = numStripes - 1;
+        stripes = new Stripe[numStripes];
+        // distribute maxSize exactly over the stripes
+        for (int i = 0; i < numStripes; i++) {
+            stripes[i] = new Stripe(maxSize / numStripes + (i < maxSize % numStripes ? 1 : 0));
+        }
+    }
+
+    /**
+     * Create the cache key for rewriting a query using a chain of rewriter factories.
+     *
+     * @param factories The factories of the rewrite chain
+     * @param query The query to be rewritten
+     * @param searchEngineRequestAdapter The request adapter
+     * @return The cache key or an empty Optional if the rewrite output cannot be cached
+     */
+    public Optional<Key> createKey(final List<RewriterFactory> factories, final ExpandedQuery query,
+                                   final SearchEngineRequestAdapter searchEngineRequestAdapter) {
+
+        if (searchEngineRequestAdapter.isDebugQuery()
+                || searchEngineRequestAdapter.getRewriteLoggingConfig().isActive()
+                || !searchEngineRequestAdapter.getContext().isEmpty()) {
+            return Optional.empty();
+        }
+
+        final Set<String> paramNames = new HashSet<>();
+        for (final RewriterFactory factory : factories) {
+            final Optional<Set<String>> factoryParamNames = factory.getCacheKeyRequestParamNames();
+            if (!factoryParamNames.isPresent()) {
+                return Optional.empty();
+            }
+            paramNames.addAll(factoryParamNames.get());
+        }
+
+        final ExpandedQueryBuilder queryBuilder;
+        try {
+            queryBuilder = new ExpandedQueryBuilder(query);
+        } catch (final QueryBuilderException e) {
+            return Optional.empty();
+        }
+
+        final Map<String, List<String>> params = new TreeMap<>();
+        for (final String name : paramNames) {
+            final String[] values = searchEngineRequestAdapter.getRequestParams(name);
+            if (values != null && values.length > 0) {
+                final List<String> valueList = new ArrayList<>(values.length);
+                Collections.addAll(valueList, values);
+                params.put(name, valueList);
+            }
+        }
+
+        return Optional.of(new Key(factories, queryBuilder, params));
+
+    }
+
+    /**
+     * Get the cached rewrite output and add the cached context entries to the request context.
+     *
+     * @param key The cache key
+     * @param searchEngineRequestAdapter The request adapter
+     * @return A copy of the cached output or an empty Optional if the key is not in the cache
+     */
+    public Optional<RewriteChainOutput> get(final Key key, final SearchEngineRequestAdapter searchEngineRequestAdapter) {
+
+        final Value value = stripeFor(key).get(key);
+        if (value == null) {
+            return Optional.empty();
+        }
+
+        final Map<String, Object> context = searchEngineRequestAdapter.getContext();
+        value.context.forEach((name, contextValue) -> context.put(name, copyContextValue(contextValue)));
+
+        final RewriteChainOutput.RewriteChainOutputBuilder outputBuilder = RewriteChainOutput.builder();
+        for (final Runnable cacheHitReplay : value.cacheHitReplays) {
+            cacheHitReplay.run();
+            outputBuilder.addCacheHitReplay(cacheHitReplay);
+        }
+
+        // we only cache if rewrite logging is inactive, which results in an empty log
+        return Optional.of(outputBuilder
+                .expandedQuery(QueryCopier.copy(value.expandedQuery))
+                .rewriteLog(RewriteChainLog.builder().build())
+                .build());
+
+    }
+
+    /**
+     * Put the output of a rewrite chain into the cache, together with the entries of the request context. The
+     * context must have been empty before the rewrite chain was applied.
+     *
+     * @param key The cache key
+     * @param output The rewrite output
+     * @param searchEngineRequestAdapter The request adapter
+     */
+    public void put(final Key key, final RewriteChainOutput output,
+                    final SearchEngineRequestAdapter searchEngineRequestAdapter) {
+
+        final ExpandedQuery expandedQuery;
+        try {
+            expandedQuery = QueryCopier.copy(output.getExpandedQuery());
+        } catch (final IllegalArgumentException e) {
+            // the query contains a node that we cannot copy - don't cache
+            return;
+        }
+
+        final Map<String, Object> context = new HashMap<>();
+        searchEngineRequestAdapter.getContext().forEach((name, contextValue) ->
+                context.put(name, copyContextValue(contextValue)));
+
+        stripeFor(key).put(key, new Value(expandedQuery, context, output.getCacheHitReplays()));
+
+    }
+
+    /**
+     * Remove all entries from the cache.
+     */
+    public void invalidate() {
+        for (final Stripe stripe : stripes) {
+            stripe.clear();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (final Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    int getNumberOfStripes() {
+        return stripes.length;
+    }
+
+    private Stripe stripeFor(final Key key) {
+        final int h = key.hashCode();
+        return stripes[(h ^ (h >>> 16)) & stripeMask];
+    }
+
+    /**
+     * Copy collections and maps, which rewriters use to collect values in the context (like decorations)
+     */
+    @SuppressWarnings("unchecked")
+    static Object copyContextValue(final Object value) {
+        if (value instanceof Map) {
+            final Map<Object, Object> copy = new LinkedHashMap<>();
+            ((Map<Object, Object>) value).forEach((k, v) -> copy.put(k, copyContextValue(v)));
+            return copy;
+        }
+        if (value instanceof Set) {
+            final Set<Object> copy = new LinkedHashSet<>();
+            for (final Object element : (Set<Object>) value) {
+                copy.add(copyContextValue(element));
+            }
+            return copy;
+        }
+        if (value instanceof Collection) {
+            final List<Object> copy = new ArrayList<>();
+            for (final Object element : (Collection<Object>) value) {
+                copy.add(copyContextValue(element));
+            }
+            return copy;
+        }
+        return value;
+    }
+
+    public static final class Key {
+
+        private final List<RewriterFactory> factories;
+        private final ExpandedQueryBuilder query;
+        private final Map<String, List<String>> params;
+        private final int hashCode;
+
+        Key(final List<RewriterFactory> factories, final ExpandedQueryBuilder query,
+            final Map<String, List<String>> params) {
+            this.factories = new ArrayList<>(factories);
+            this.query = query;
+            this.params = params;
+            int hash = query.hashCode();
+            for (final RewriterFactory factory : factories) {
+                hash = 31 * hash + System.identityHashCode(factory);
+            }
+            this.hashCode = 31 * hash + params.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key key = (Key) o;
+            if (hashCode != key.hashCode || factories.size() != key.factories.size()) {
+                return false;
+            }
+            // compare factories by identity: a reloaded rewriter has a new factory instance
+            for (int i = 0, len = factories.size(); i < len; i++) {
+                if (factories.get(i) != key.factories.get(i)) {
+                    return false;
+                }
+            }
+            return Objects.equals(query, key.query) && Objects.equals(params, key.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static final class Stripe {
+
+        private final LinkedHashMap<Key, Value> entries;
+
+        Stripe(final int maxSize) {
+            entries = new LinkedHashMap<Key, Value>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<Key, Value> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        synchronized Value get(final Key key) {
+            return entries.get(key);
+        }
+
+        synchronized void put(final Key key, final Value value) {
+            entries.put(key, value);
+        }
+
+        synchronized void clear() {
+            entries.clear();
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+
+    private static final class Value {
+
+        final ExpandedQuery expandedQuery;
+        final Map<String, Object> context;
+        final List<Runnable> cacheHitReplays;
+
+        Value(final ExpandedQuery expandedQuery, final Map<String, Object> context,
+              final List<Runnable> cacheHitReplays) {
+            this.expandedQuery = expandedQuery;
+            this.context = context;
+            this.cacheHitReplays = cacheHitReplays;
+        }
+    }
+}
@@ -4,6 +4,7 @@
 package querqy.rewrite;
 
 import java.util.Collections;
+import java.util.Optional;
 import java.util.Set;
 
 import querqy.model.ExpandedQuery;
@@ -51,6 +52,22 @@ public abstract class RewriterFactory {
         return getGenerableTerms();
     }
 
+    /**
+     * <p>Get the names of the request parameters that can change the output of the rewriters created by this factory.
+     * </p>
+     * <p>The output of a {@link RewriteChain} can only be cached in a {@link RewriteResultCache} if all factories in
+     * the chain return the names of their relevant request parameters. Factories must return an empty Optional if the
+     * output of their rewriters depends on anything else than the input query, these request parameters and the
+     * factory configuration, or if their rewriters modify values in the request context that existed before
+     * rewriting.</p>
+     *
+     * @return The names of the relevant request parameters or an empty Optional if the output of the rewriters cannot be
+     * cached. Defaults to an empty Optional.
+     */
+    public Optional<Set<String>> getCacheKeyRequestParamNames() {
+        return Optional.empty();
+    }
+
     public String getRewriterId() {
         return rewriterId;
     }
@@ -9,10 +9,13 @@ public class RewriterOutput {
 
     private final ExpandedQuery expandedQuery;
     private final RewriterLog rewriterLog;
+    private final Runnable cacheHitReplay;
 
-    private RewriterOutput(final ExpandedQuery expandedQuery, final RewriterLog rewriterLog) {
+    private RewriterOutput(final ExpandedQuery expandedQuery, final RewriterLog rewriterLog,
+                           final Runnable cacheHitReplay) {
         this.expandedQuery = expandedQuery;
         this.rewriterLog = rewriterLog;
+        this.cacheHitReplay = cacheHitReplay;
     }
 
     public ExpandedQuery getExpandedQuery() {
@@ -23,6 +26,14 @@ public class RewriterOutput {
         return Optional.ofNullable(rewriterLog);
     }
 
+    /**
+     * @return The side effects of the rewriter (like counting the applied rules) that must be repeated when this
+     * output is served from a {@link RewriteResultCache}
+     */
+    public Optional<Runnable> getCacheHitReplay() {
+        return Optional.ofNullable(cacheHitReplay);
+    }
+
     public static RewriterOutputBuilder builder() {
         return new RewriterOutputBuilder();
     }
@@ -31,6 +42,7 @@ public class RewriterOutput {
 
         private ExpandedQuery expandedQuery;
         private RewriterLog rewriterLog;
+        private Runnable cacheHitReplay;
 
         public RewriterOutputBuilder expandedQuery(final ExpandedQuery expandedQuery) {
             this.expandedQuery = expandedQuery;
@@ -42,8 +54,13 @@ public class RewriterOutput {
             return this;
         }
 
+        public RewriterOutputBuilder cacheHitReplay(final Runnable cacheHitReplay) {
+            this.cacheHitReplay = cacheHitReplay;
+            return this;
+        }
+
         public RewriterOutput build() {
-            return new RewriterOutput(expandedQuery, rewriterLog);
+            return new RewriterOutput(expandedQuery, rewriterLog, cacheHitReplay);
         }
     }
 }
@@ -78,4 +78,14 @@ public interface SearchEngineRequestAdapter {
 
     RewriteLoggingConfig getRewriteLoggingConfig();
 
+    /**
+     * <p>Get the budget for rewriting the query of this request. The same budget must be returned for all calls
+     * during a request.</p>
+     *
+     * @return The rewrite budget. Defaults to {@link RewriteBudget#UNLIMITED}.
+     */
+    default RewriteBudget getRewriteBudget() {
+        return RewriteBudget.UNLIMITED;
+    }
+
 }
@@ -12,7 +12,9 @@ import querqy.model.Term;
 import querqy.rewrite.logging.ActionLog;
 import querqy.rewrite.logging.InstructionLog;
 import querqy.rewrite.logging.MatchLog;
+import querqy.rewrite.logging.RewriteLoggingSampler;
 import querqy.rewrite.QueryRewriter;
+import querqy.rewrite.RewriteBudget;
 import querqy.rewrite.SearchEngineRequestAdapter;
 import querqy.rewrite.commonrules.model.Action;
 import querqy.rewrite.commonrules.model.Instruction;
@@ -25,6 +27,7 @@ import querqy.rewrite.lookup.triemap.TrieMapLookupQueryVisitor;
 import querqy.rewrite.lookup.triemap.TrieMapLookupQueryVisitorFactory;
 import querqy.rewrite.lookup.model.Match;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -41,12 +44,32 @@ public class CommonRulesRewriter implements QueryRewriter {
 
     protected SelectionStrategy selectionStrategy;
 
+    private final RewriteLoggingSampler rewriteLoggingSampler;
+    private final RuleUsageCounter ruleUsageCounter;
+
     private final RewriterLog.RewriterLogBuilder rewriterLogBuilder = RewriterLog.builder();
+    // the IDs of the applied rules, so that they can be counted again if the output is served from a cache
+    private List<Object> appliedRuleIds = null;
 
     public CommonRulesRewriter(
             final TrieMapLookupQueryVisitorFactory<InstructionsSupplier> trieMapLookupQueryVisitorFactory, final SelectionStrategy selectionStrategy) {
+        this(trieMapLookupQueryVisitorFactory, selectionStrategy, RewriteLoggingSampler.ALWAYS, null);
+    }
+
+    /**
+     * @param trieMapLookupQueryVisitorFactory The lookup of the rules
+     * @param selectionStrategy The rule selection strategy
+     * @param rewriteLoggingSampler Decides whether detailed rewrite logs are created if they are requested
+     * @param ruleUsageCounter Counts the applied rules. Can be null.
+     */
+    public CommonRulesRewriter(
+            final TrieMapLookupQueryVisitorFactory<InstructionsSupplier> trieMapLookupQueryVisitorFactory,
+            final SelectionStrategy selectionStrategy, final RewriteLoggingSampler rewriteLoggingSampler,
+            final RuleUsageCounter ruleUsageCounter) {
         this.trieMapLookupQueryVisitorFactory = trieMapLookupQueryVisitorFactory;
         this.selectionStrategy = selectionStrategy;
+        this.rewriteLoggingSampler = rewriteLoggingSampler;
+        this.ruleUsageCounter = ruleUsageCounter;
     }
 
     @Override
@@ -67,34 +90,68 @@ public class CommonRulesRewriter implements QueryRewriter {
             }
         }
 
-        return RewriterOutput.builder()
+        final RewriterOutput.RewriterOutputBuilder outputBuilder = RewriterOutput.builder()
                 .expandedQuery(query)
-                .rewriterLog(rewriterLogBuilder.build())
-                .build();
+                .rewriterLog(rewriterLogBuilder.build());
+        if (appliedRuleIds != null) {
+            final List<Object> ruleIds = appliedRuleIds;
+            outputBuilder.cacheHitReplay(() -> ruleIds.forEach(ruleUsageCounter::increment));
+        }
+        return outputBuilder.build();
     }
 
     protected void rewriteBooleanQuery(final BooleanQuery booleanQuery) {
 
-        final TopRewritingActionCollector collector = selectionStrategy.createTopRewritingActionCollector();
+        final RewriteBudget rewriteBudget = RewriteBudget.of(searchEngineRequestAdapter);
 
-        final TrieMapLookupQueryVisitor<InstructionsSupplier> trieMapLookupQueryVisitor = trieMapLookupQueryVisitorFactory.createTrieMapLookup(booleanQuery);
+        // the lookup consumes one step per term lookup and stops collecting matches once the budget is exhausted
+        final TrieMapLookupQueryVisitor<InstructionsSupplier> trieMapLookupQueryVisitor =
+                trieMapLookupQueryVisitorFactory.createTrieMapLookup(booleanQuery, rewriteBudget);
 
         final List<Match<InstructionsSupplier>> matches = trieMapLookupQueryVisitor.lookupAndCollect();
+        if (matches.isEmpty()) {
+            return;
+        }
+
+        // don't collect the rules and evaluate boolean input if none of the rules could be applied anyway
+        if (!rewriteBudget.tryConsume(0)) {
+            return;
+        }
 
+        final TopRewritingActionCollector collector = selectionStrategy.createTopRewritingActionCollector();
         for (final Match<InstructionsSupplier> match : matches) {
             collector.collect(match.getValue(), instructions -> new Action(instructions, match.getTermMatches()));
         }
 
         final List<Action> actions = collector.evaluateBooleanInput().createActions();
+        if (actions.isEmpty()) {
+            return;
+        }
+
+        final boolean logDetails = searchEngineRequestAdapter.getRewriteLoggingConfig().hasDetails()
+                && rewriteLoggingSampler.isSampled(expandedQuery.getUserQuery());
 
         for (final Action action : actions) {
+
+            // actions are ordered by the selection strategy - drop the remaining ones if we ran out of budget
+            if (!rewriteBudget.tryConsume(1)) {
+                break;
+            }
+
             final Instructions instructions = action.getInstructions();
             instructions.forEach(instruction ->
                     instruction.apply(action.getTermMatches(), expandedQuery, searchEngineRequestAdapter)
             );
 
             rewriterLogBuilder.hasAppliedRewriting(true);
-            if (searchEngineRequestAdapter.getRewriteLoggingConfig().hasDetails()) {
+            if (ruleUsageCounter != null) {
+                ruleUsageCounter.increment(instructions.getId());
+                if (appliedRuleIds == null) {
+                    appliedRuleIds = new ArrayList<>();
+                }
+                appliedRuleIds.add(instructions.getId());
+            }
+            if (logDetails) {
                 appendActionLogs(action);
             }
         }
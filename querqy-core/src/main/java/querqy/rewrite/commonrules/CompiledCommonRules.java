@@ -0,0 +1,397 @@
+package querqy.rewrite.commonrules;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import querqy.rewrite.commonrules.model.BoostInstruction.BoostMethod;
+import querqy.rewrite.commonrules.model.DeleteInstruction;
+import querqy.rewrite.commonrules.model.Instruction;
+import querqy.rewrite.commonrules.model.InstructionDescription;
+import querqy.rewrite.commonrules.model.Instructions;
+import querqy.rewrite.commonrules.model.InstructionsProperties;
+import querqy.rewrite.commonrules.model.InstructionsSupplier;
+import querqy.rewrite.commonrules.model.PrefixTerm;
+import querqy.rewrite.commonrules.model.Term;
+import querqy.rewrite.rules.RuleParseException;
+import querqy.rewrite.rules.instruction.InstructionParser;
+import querqy.rewrite.rules.instruction.InstructionType;
+import querqy.rewrite.rules.instruction.skeleton.InstructionSkeleton;
+import querqy.rewrite.rules.property.PropertyParser;
+import querqy.rewrite.rules.query.QuerqyQueryParser;
+import querqy.rewrite.rules.query.TermsParser;
+import querqy.trie.CompactTrieMap;
+import querqy.trie.TrieValueCodec;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>Common rules in a compiled, binary representation.</p>
+ *
+ * <p>The binary representation contains the {@link CompactTrieMap} of the rules, together with the settings that were
+ * used for creating it. It can be memory-mapped and used without copying it to the heap (see
+ * {@link #map(Path, QuerqyParserFactory, Set)}), so that the rules don't have to be parsed again when they are loaded
+ * and so that processes that map the same file share its pages. The {@link Instructions} of a rule are stored as their
+ * {@link InstructionDescription}s and they are only created when the rule is matched for the first time.</p>
+ *
+ * <p>The terms that the rules can generate are stored separately from the instructions so that they can be read for
+ * the term query cache (see {@link #getGenerableTerms()}) without creating the instructions of all rules.</p>
+ *
+ * <p>Rules with boolean input cannot be compiled.</p>
+ */
+public class CompiledCommonRules {
+
+    /**
+     * The version of the binary format
+     */
+    public static final int FORMAT_VERSION = 2;
+
+    private static final int MAGIC = 0x51435255; // QCRU
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>> PROPERTIES_TYPE = new TypeReference<>() {};
+
+    private final CompactTrieMap<InstructionsSupplier> trieMap;
+    private final String lookupPreprocessorName;
+    private final BoostMethod boostMethod;
+    private final ByteBuffer generableTerms;
+
+    private CompiledCommonRules(final CompactTrieMap<InstructionsSupplier> trieMap,
+                                final String lookupPreprocessorName,
+                                final BoostMethod boostMethod,
+                                final ByteBuffer generableTerms) {
+        this.trieMap = trieMap;
+        this.lookupPreprocessorName = lookupPreprocessorName;
+        this.boostMethod = boostMethod;
+        this.generableTerms = generableTerms;
+    }
+
+    public CompactTrieMap<InstructionsSupplier> getTrieMap() {
+        return trieMap;
+    }
+
+    /**
+     * @return The name of the preprocessor that was applied to the rule input, either the name of a
+     * {@link querqy.rewrite.lookup.preprocessing.LookupPreprocessorType} or a name that was registered with
+     * {@link querqy.rewrite.lookup.preprocessing.LookupPreprocessorFactory#register(String,
+     * querqy.rewrite.lookup.preprocessing.LookupPreprocessor)}
+     */
+    public String getLookupPreprocessorName() {
+        return lookupPreprocessorName;
+    }
+
+    public BoostMethod getBoostMethod() {
+        return boostMethod;
+    }
+
+    /**
+     * Get the terms that can be generated by the instructions of the rules. The terms are read from their binary
+     * representation on every call and they are not kept by the rules. Unlike iterating over the instructions of the
+     * trie, this doesn't create the instructions.
+     *
+     * @return The generable terms
+     */
+    public Set<querqy.model.Term> getGenerableTerms() {
+        final ByteBuffer in = generableTerms.duplicate();
+        final int numTerms = in.getInt();
+        final Set<querqy.model.Term> terms = new HashSet<>(numTerms * 4 / 3 + 1);
+        for (int i = 0; i < numTerms; i++) {
+            final boolean generated = in.get() != 0;
+            final String field = readString(in);
+            terms.add(new querqy.model.Term(null, field, readString(in), generated));
+        }
+        return terms;
+    }
+
+    /**
+     * Write the binary representation of the rules.
+     *
+     * @param trieMap The rules
+     * @param lookupPreprocessorName The name of the preprocessor that was applied to the rule input when the trie was
+     *                               built
+     * @param boostMethod The boost method of the rules
+     * @param out The output. It will not be closed.
+     * @throws IOException if the rules cannot be written
+     * @throws IllegalArgumentException if the rules cannot be represented in the binary format
+     */
+    public static void write(final CompactTrieMap<InstructionsSupplier> trieMap,
+                             final String lookupPreprocessorName,
+                             final BoostMethod boostMethod,
+                             final OutputStream out) throws IOException {
+
+        final DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(out));
+        dataOut.writeInt(MAGIC);
+        dataOut.writeInt(FORMAT_VERSION);
+        writeString(lookupPreprocessorName, dataOut);
+        writeString(boostMethod.name(), dataOut);
+        trieMap.write(dataOut, new InstructionsSupplierCodec(null));
+        writeGenerableTerms(trieMap, dataOut);
+        dataOut.flush();
+    }
+
+    /**
+     * Read the rules from their binary representation. The buffer is used as the storage of the rules and it must not
+     * be modified afterwards.
+     *
+     * @param buffer The buffer, positioned at the start of the binary representation.
+     * @param querqyParserFactory The parser for the right-hand side of rules
+     * @param supportedTypes The instruction types that can be created
+     * @return The rules
+     * @throws IllegalArgumentException if the buffer doesn't contain valid compiled rules
+     */
+    public static CompiledCommonRules read(final ByteBuffer buffer, final QuerqyParserFactory querqyParserFactory,
+                                           final Set<InstructionType> supportedTypes) {
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IllegalArgumentException("Not a compiled rules file");
+            }
+            final int version = buffer.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IllegalArgumentException("Unsupported compiled rules format version: " + version);
+            }
+            final String lookupPreprocessorName = readString(buffer);
+            final BoostMethod boostMethod = BoostMethod.valueOf(readString(buffer));
+
+            final InstructionParser instructionParser = InstructionParser.prototypeBuilder()
+                    .querqyQueryParser(QuerqyQueryParser.createPrototypeOf(querqyParserFactory))
+                    .termsParser(TermsParser.createPrototype())
+                    .supportedTypes(supportedTypes)
+                    .boostMethod(boostMethod)
+                    .build();
+
+            final CompactTrieMap<InstructionsSupplier> trieMap = CompactTrieMap.read(buffer,
+                    new InstructionsSupplierCodec(instructionParser));
+
+            final int generableTermsLength = buffer.getInt();
+            if (generableTermsLength < 0 || generableTermsLength > buffer.remaining()) {
+                throw new IllegalArgumentException("Truncated compiled rules");
+            }
+            final ByteBuffer generableTerms = buffer.slice();
+            generableTerms.limit(generableTermsLength);
+            buffer.position(buffer.position() + generableTermsLength);
+
+            return new CompiledCommonRules(trieMap, lookupPreprocessorName, boostMethod, generableTerms);
+
+        } catch (final BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated compiled rules", e);
+        }
+    }
+
+    /**
+     * Memory-map a file that contains compiled rules and read the rules from it.
+     *
+     * @param path The file
+     * @param querqyParserFactory The parser for the right-hand side of rules
+     * @param supportedTypes The instruction types that can be created
+     * @return The rules
+     * @throws IOException if the file cannot be mapped
+     * @throws IllegalArgumentException if the file doesn't contain valid compiled rules
+     */
+    public static CompiledCommonRules map(final Path path, final QuerqyParserFactory querqyParserFactory,
+                                          final Set<InstructionType> supportedTypes) throws IOException {
+        // the mapping stays valid after the channel has been closed
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), querqyParserFactory,
+                    supportedTypes);
+        }
+    }
+
+    private static void writeGenerableTerms(final CompactTrieMap<InstructionsSupplier> trieMap,
+                                            final DataOutputStream out) throws IOException {
+
+        final Set<querqy.model.Term> terms = new LinkedHashSet<>();
+        for (final InstructionsSupplier instructionsSupplier : trieMap) {
+            for (final Instructions instructions : instructionsSupplier.getInstructionsList()) {
+                for (final Instruction instruction : instructions) {
+                    terms.addAll(instruction.getGenerableTerms());
+                }
+            }
+        }
+
+        // prefix the section with its length so that it can be sliced from the buffer when the rules are read
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream termsOut = new DataOutputStream(bytes);
+        termsOut.writeInt(terms.size());
+        for (final querqy.model.Term term : terms) {
+            termsOut.writeBoolean(term.isGenerated());
+            writeString(term.getField(), termsOut);
+            writeString(term.getValue().toString(), termsOut);
+        }
+        termsOut.flush();
+
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+    }
+
+    private static void writeString(final String value, final DataOutput out) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(final ByteBuffer in) {
+        final int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Encodes the {@link Instructions} of a rule input using the descriptions of the instructions. Decoding parses the
+     * descriptions again, except for the terms of {@link DeleteInstruction}s, which are stored as they might have been
+     * taken from the rule input.
+     */
+    static class InstructionsSupplierCodec implements TrieValueCodec<InstructionsSupplier> {
+
+        private final InstructionParser instructionParser;
+
+        InstructionsSupplierCodec(final InstructionParser instructionParser) {
+            this.instructionParser = instructionParser;
+        }
+
+        @Override
+        public void encode(final InstructionsSupplier value, final DataOutput out) throws IOException {
+
+            if (value.getLiteral().isPresent()) {
+                throw new IllegalArgumentException("Rules with boolean input cannot be compiled");
+            }
+
+            final List<Instructions> instructionsList = value.getInstructionsList();
+            out.writeInt(instructionsList.size());
+
+            for (final Instructions instructions : instructionsList) {
+                out.writeInt(instructions.getOrd());
+                writeString(MAPPER.writeValueAsString(instructions.getId()), out);
+                writeString(MAPPER.writeValueAsString(instructions.getProperties().getPropertyMap()), out);
+
+                out.writeInt(instructions.size());
+                for (final Instruction instruction : instructions) {
+                    encodeInstruction(instruction, out);
+                }
+            }
+        }
+
+        private void encodeInstruction(final Instruction instruction, final DataOutput out) throws IOException {
+
+            final InstructionDescription description = instruction.getInstructionDescription();
+            final InstructionType type;
+            try {
+                type = InstructionType.of(description.getTypeName());
+            } catch (final RuleParseException e) {
+                throw new IllegalArgumentException("Cannot compile instruction " + instruction, e);
+            }
+
+            writeString(type.getTypeName(), out);
+            writeString(description.getParam().map(String::valueOf).orElse(null), out);
+            writeString(description.getValue().orElse(null), out);
+
+            if (type == InstructionType.DELETE) {
+                final List<? extends Term> terms = ((DeleteInstruction) instruction).getTermsToDelete();
+                out.writeInt(terms.size());
+                for (final Term term : terms) {
+                    out.writeBoolean(term instanceof PrefixTerm);
+                    writeString(term.toString(), out);
+                    final List<String> fieldNames = term.getFieldNames();
+                    out.writeInt(fieldNames == null ? 0 : fieldNames.size());
+                    if (fieldNames != null) {
+                        for (final String fieldName : fieldNames) {
+                            writeString(fieldName, out);
+                        }
+                    }
+                }
+            }
+        }
+
+        @Override
+        public InstructionsSupplier decode(final ByteBuffer in) {
+
+            try {
+                final int numInstructions = in.getInt();
+                final List<Instructions> instructionsList = new ArrayList<>(numInstructions);
+
+                for (int i = 0; i < numInstructions; i++) {
+                    final int ord = in.getInt();
+                    final Object id = MAPPER.readValue(readString(in), Object.class);
+                    final Map<String, Object> propertyMap = MAPPER.readValue(readString(in), PROPERTIES_TYPE);
+                    final InstructionsProperties properties = PropertyParser.create()
+                            .parse(propertyMap, String.valueOf(id));
+
+                    final int size = in.getInt();
+                    final List<InstructionSkeleton> skeletons = new ArrayList<>(size);
+                    final List<Instruction> deleteInstructions = new ArrayList<>();
+                    for (int j = 0; j < size; j++) {
+                        decodeInstruction(in, skeletons, deleteInstructions);
+                    }
+
+                    // Instructions puts other instructions in reverse order in front of the delete instructions
+                    Collections.reverse(skeletons);
+                    final List<Instruction> instructions = instructionParser
+                            .with(Collections.emptyList(), skeletons)
+                            .parse();
+                    instructions.addAll(deleteInstructions);
+
+                    instructionsList.add(new Instructions(ord, id, instructions, properties));
+                }
+
+                return new InstructionsSupplier(instructionsList, null);
+
+            } catch (final IOException | RuleParseException | BufferUnderflowException e) {
+                throw new IllegalArgumentException("Invalid compiled rules", e);
+            }
+        }
+
+        private void decodeInstruction(final ByteBuffer in, final List<InstructionSkeleton> skeletons,
+                                       final List<Instruction> deleteInstructions) {
+
+            final InstructionType type = InstructionType.of(readString(in));
+            final String param = readString(in);
+            final String value = readString(in);
+
+            if (type == InstructionType.DELETE) {
+                final int numTerms = in.getInt();
+                final List<Term> terms = new ArrayList<>(numTerms);
+                for (int k = 0; k < numTerms; k++) {
+                    final boolean isPrefix = in.get() != 0;
+                    final char[] chars = readString(in).toCharArray();
+                    final int numFieldNames = in.getInt();
+                    final List<String> fieldNames = numFieldNames == 0 ? null : new ArrayList<>(numFieldNames);
+                    for (int f = 0; f < numFieldNames; f++) {
+                        fieldNames.add(readString(in));
+                    }
+                    terms.add(isPrefix
+                            ? new PrefixTerm(chars, 0, chars.length, fieldNames)
+                            : new Term(chars, 0, chars.length, fieldNames));
+                }
+                deleteInstructions.add(new DeleteInstruction(terms, InstructionDescription.builder()
+                        .typeName(type.getTypeName())
+                        .value(value)
+                        .build()));
+            } else {
+                skeletons.add(InstructionSkeleton.builder().type(type).parameter(param).value(value).build());
+            }
+        }
+    }
+}
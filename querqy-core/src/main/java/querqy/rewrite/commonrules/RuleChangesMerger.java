@@ -0,0 +1,152 @@
+package querqy.rewrite.commonrules;
+
+import querqy.rewrite.QuerqyTemplateEngine;
+import querqy.rewrite.TemplateParseException;
+import querqy.rewrite.rules.RuleParseException;
+import querqy.rewrite.rules.factory.TextParserFactory;
+import querqy.rewrite.rules.factory.config.TextParserConfig;
+import querqy.rewrite.rules.property.PropertyParser;
+import querqy.rewrite.rules.property.skeleton.PropertySkeletonParser;
+import querqy.rewrite.rules.rule.skeleton.MultiLineParser;
+import querqy.rewrite.rules.rule.skeleton.RuleSkeleton;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Merges rule changes into the rules in rules.txt format, so that the changes don't have to be kept and applied
+ * again whenever the rules are loaded.</p>
+ *
+ * <p>Parsing the merged rules results in the same rules as applying the changes to the original rules using
+ * {@link UpdatableCommonRules#withChanges(Reader, Collection)}: a changed rule replaces the rule with the same ID and
+ * it is moved to the end of the rules, deleted rules are removed. Rules without an ID property get their default ID
+ * as an explicit property if their position changes, so that their ID doesn't change.</p>
+ *
+ * <p>The merged rules are written from the parsed rules. Templates are rendered, comments and formatting are not
+ * kept.</p>
+ */
+public class RuleChangesMerger {
+
+    /**
+     * The rules by rule ID in their order. Rule IDs are compared by their string representation, like in
+     * {@link UpdatableCommonRules}.
+     */
+    private final Map<String, MergedRule> rules = new LinkedHashMap<>();
+    private int nextRuleOrderNumber = 0;
+
+    /**
+     * @param rules The rules in rules.txt format
+     * @throws IOException if the rules cannot be read or parsed
+     */
+    public RuleChangesMerger(final Reader rules) throws IOException {
+        for (final RuleSkeleton skeleton : parseSkeletons(rules)) {
+            add(skeleton);
+        }
+    }
+
+    /**
+     * Apply a change to the rules.
+     *
+     * @param changedRules The added and updated rules in rules.txt format
+     * @param deletedRuleIds The IDs of the rules to delete. Unknown IDs are ignored.
+     * @throws IOException if the changed rules cannot be read or parsed
+     */
+    public void applyChanges(final Reader changedRules, final Collection<?> deletedRuleIds) throws IOException {
+        final List<RuleSkeleton> skeletons = parseSkeletons(changedRules);
+        for (final Object id : deletedRuleIds) {
+            rules.remove(String.valueOf(id));
+        }
+        for (final RuleSkeleton skeleton : skeletons) {
+            add(skeleton);
+        }
+    }
+
+    /**
+     * @return The merged rules in rules.txt format
+     */
+    public String toRulesText() {
+        final List<String> ruleTexts = new ArrayList<>(rules.size());
+        int ruleOrderNumber = 0;
+        for (final MergedRule rule : rules.values()) {
+            if (rule.hasDefaultId && !rule.id.equals(defaultId(rule.skeleton, ruleOrderNumber))) {
+                ruleTexts.add(toTextDefinitionWithId(rule));
+            } else {
+                ruleTexts.add(MultiLineParser.toTextDefinition(rule.skeleton));
+            }
+            ruleOrderNumber++;
+        }
+        return String.join("\n", ruleTexts);
+    }
+
+    /**
+     * @return The number of rules
+     */
+    public int size() {
+        return rules.size();
+    }
+
+    private void add(final RuleSkeleton skeleton) {
+        final Object explicitId = skeleton.getProperties().get(PropertyParser.ID);
+        final String id = explicitId == null
+                ? defaultId(skeleton, nextRuleOrderNumber) : String.valueOf(explicitId);
+        // a changed rule is moved to the end
+        rules.remove(id);
+        rules.put(id, new MergedRule(skeleton, id, explicitId == null));
+        nextRuleOrderNumber++;
+    }
+
+    private static String toTextDefinitionWithId(final MergedRule rule) {
+        final RuleSkeleton skeleton = rule.skeleton;
+        final Map<String, Object> properties = new HashMap<>(skeleton.getProperties());
+        properties.put(PropertyParser.ID, rule.id);
+
+        // the default ID contains a '#', which would start a comment, write it as a JSON unicode escape instead
+        final String propertiesText = PropertySkeletonParser.toTextDefinition(properties).replace("#", "\\u0023");
+
+        return MultiLineParser.toTextDefinition(RuleSkeleton.create(skeleton.getInputSkeleton(),
+                skeleton.getInstructionSkeletons(), Collections.emptyMap()))
+                + "\n  " + String.join("\n  ", propertiesText.split("\n"));
+    }
+
+    // see RuleParser
+    private static String defaultId(final RuleSkeleton skeleton, final int ruleOrderNumber) {
+        return skeleton.getInputSkeleton() + "#" + ruleOrderNumber;
+    }
+
+    private static List<RuleSkeleton> parseSkeletons(final Reader reader) throws IOException {
+        try {
+            final QuerqyTemplateEngine querqyTemplateEngine = new QuerqyTemplateEngine(reader);
+            return TextParserFactory.of(TextParserConfig.builder()
+                            .rulesContentReader(querqyTemplateEngine.renderedRules.reader)
+                            .isMultiLineRulesConfig(true)
+                            .lineNumberMappings(querqyTemplateEngine.renderedRules.lineNumberMapping)
+                            .build())
+                    .createRuleSkeletonParser()
+                    .parse();
+        } catch (final RuleParseException | TemplateParseException e) {
+            throw new IOException(e);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static final class MergedRule {
+
+        final RuleSkeleton skeleton;
+        final String id;
+        final boolean hasDefaultId;
+
+        MergedRule(final RuleSkeleton skeleton, final String id, final boolean hasDefaultId) {
+            this.skeleton = skeleton;
+            this.id = id;
+            this.hasDefaultId = hasDefaultId;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package querqy.rewrite.commonrules;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Counts how often each rule was applied, identified by the rule ID (property <code>_id</code>).</p>
+ *
+ * <p>Counting is cheap enough to be always on: the counter for a rule is only created when the rule is applied for the
+ * first time and incrementing it doesn't synchronize with concurrent requests. Requests that are answered from the
+ * {@link querqy.rewrite.RewriteResultCache} are counted as well: the cached output replays the increments of the
+ * rules that were applied when it was created.</p>
+ */
+public class RuleUsageCounter {
+
+    private final Map<Object, LongAdder> counts = new ConcurrentHashMap<>();
+
+    /**
+     * @param ruleId The ID of the rule that was applied
+     */
+    public void increment(final Object ruleId) {
+        LongAdder count = counts.get(ruleId);
+        if (count == null) {
+            count = counts.computeIfAbsent(ruleId, key -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    /**
+     * @param ruleId The rule ID
+     * @return The number of times the rule was applied
+     */
+    public long getCount(final Object ruleId) {
+        final LongAdder count = counts.get(ruleId);
+        return count == null ? 0L : count.sum();
+    }
+
+    /**
+     * @return A snapshot of the counts of all rules that were applied at least once, most frequently applied rules
+     * first
+     */
+    public Map<Object, Long> getCounts() {
+        final List<Map.Entry<Object, Long>> entries = new ArrayList<>(counts.size());
+        counts.forEach((ruleId, count) -> addIfPositive(entries, ruleId, count.sum()));
+        return toSortedCounts(entries);
+    }
+
+    /**
+     * Get the counts and start counting from zero. Each count is read and set to zero atomically, so that an increment
+     * that happens concurrently is either returned by this call or counted after the reset.
+     *
+     * @return The counts before the reset, most frequently applied rules first
+     */
+    public Map<Object, Long> getCountsAndReset() {
+        final List<Map.Entry<Object, Long>> entries = new ArrayList<>(counts.size());
+        counts.forEach((ruleId, count) -> addIfPositive(entries, ruleId, count.sumThenReset()));
+        return toSortedCounts(entries);
+    }
+
+    private static void addIfPositive(final List<Map.Entry<Object, Long>> entries, final Object ruleId,
+                                      final long count) {
+        // rules keep their (reset) counter, which is 0 until they are applied again
+        if (count > 0L) {
+            entries.add(Map.entry(ruleId, count));
+        }
+    }
+
+    private static Map<Object, Long> toSortedCounts(final List<Map.Entry<Object, Long>> entries) {
+        entries.sort(Map.Entry.<Object, Long>comparingByValue(Comparator.reverseOrder()));
+
+        final Map<Object, Long> result = new LinkedHashMap<>(entries.size() * 4 / 3 + 1);
+        entries.forEach(entry -> result.put(entry.getKey(), entry.getValue()));
+        return result;
+    }
+}
@@ -1,12 +1,18 @@
 package querqy.rewrite.commonrules;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Reader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -22,6 +28,7 @@ import querqy.rewrite.commonrules.model.BoostInstruction.BoostMethod;
 import querqy.rewrite.commonrules.model.Instruction;
 import querqy.rewrite.commonrules.model.Instructions;
 import querqy.rewrite.commonrules.model.InstructionsSupplier;
+import querqy.rewrite.commonrules.model.RuleCollector;
 import querqy.rewrite.commonrules.model.TrieMapRulesCollectionBuilder;
 import querqy.rewrite.commonrules.select.SelectionStrategy;
 import querqy.rewrite.commonrules.select.RuleSelectionParams;
@@ -30,6 +37,7 @@ import querqy.rewrite.lookup.LookupConfig;
 import querqy.rewrite.lookup.preprocessing.LookupPreprocessor;
 import querqy.rewrite.lookup.preprocessing.LookupPreprocessorFactory;
 import querqy.rewrite.lookup.preprocessing.LookupPreprocessorType;
+import querqy.rewrite.logging.RewriteLoggingSampler;
 import querqy.rewrite.lookup.triemap.TrieMapLookupQueryVisitorFactory;
 import querqy.rewrite.rules.RuleParseException;
 import querqy.rewrite.rules.RulesParser;
@@ -38,6 +46,7 @@ import querqy.rewrite.rules.factory.config.RuleParserConfig;
 import querqy.rewrite.rules.factory.config.RulesParserConfig;
 import querqy.rewrite.rules.factory.config.TextParserConfig;
 import querqy.rewrite.rules.instruction.InstructionType;
+import querqy.trie.CompactTrieMap;
 import querqy.trie.TrieMap;
 
 import static querqy.rewrite.rules.instruction.InstructionType.DECORATE;
@@ -61,6 +70,14 @@ public class SimpleCommonRulesRewriterFactory extends RewriterFactory {
     private final String strategyParam;
     private final SelectionStrategyFactory defaultSelectionStrategyFactory;
     private final boolean buildTermCache;
+    private final Optional<Set<String>> cacheKeyRequestParamNames;
+    private final TrieMap<InstructionsSupplier> trieMap;
+    private final UpdatableCommonRules updatableRules;
+    private final CompiledCommonRules compiledRules;
+    private final BoostMethod boostMethod;
+    private final String lookupPreprocessorName;
+    private final RewriteLoggingSampler rewriteLoggingSampler;
+    private final RuleUsageCounter ruleUsageCounter;
 
     private final TrieMapLookupQueryVisitorFactory<InstructionsSupplier> trieMapLookupQueryVisitorFactory;
 
@@ -90,6 +107,93 @@ public class SimpleCommonRulesRewriterFactory extends RewriterFactory {
                                             final LookupPreprocessorType lookupPreprocessorType
     ) throws IOException {
 
+        this(rewriterId, reader, allowBooleanInput, boostMethod, querqyParserFactory, selectionStrategyFactories,
+                defaultSelectionStrategyFactory, buildTermCache, lookupPreprocessorType, 1);
+    }
+
+    /**
+     *
+     * @param rewriterId The id of this rewriter
+     * @param reader The reader to access the rewriter configuration
+     * @param allowBooleanInput Iff true, rule input can have boolean expressions
+     * @param boostMethod The {@link querqy.rewrite.commonrules.model.BoostInstruction.BoostMethod} to use when creating
+     *                    {@link querqy.rewrite.commonrules.model.BoostInstruction}s
+     * @param querqyParserFactory A parser for the right-hand side of rules
+     * @param selectionStrategyFactories A mapping between names of rule selection strategies and their factories.
+     * @param defaultSelectionStrategyFactory The default {@link SelectionStrategyFactory} to be used if no strategy is
+     *                                       specified as a request parameter
+     * @param buildTermCache If true, build the term cache for terms from the rhs of rules
+     * @param lookupPreprocessorType The preprocessor for the rule input
+     * @param parsingParallelism The number of threads for parsing the rules. Rules are always parsed by a single
+     *                           thread if boolean input is allowed.
+     * @throws IOException if rules cannot be read or parsed
+     */
+    public SimpleCommonRulesRewriterFactory(final String rewriterId,
+                                            final Reader reader,
+                                            final boolean allowBooleanInput,
+                                            final BoostMethod boostMethod,
+                                            final QuerqyParserFactory querqyParserFactory,
+                                            final Map<String, SelectionStrategyFactory> selectionStrategyFactories,
+                                            final SelectionStrategyFactory defaultSelectionStrategyFactory,
+                                            final boolean buildTermCache,
+                                            final LookupPreprocessorType lookupPreprocessorType,
+                                            final int parsingParallelism
+    ) throws IOException {
+
+        this(rewriterId, reader, allowBooleanInput, boostMethod, querqyParserFactory, selectionStrategyFactories,
+                defaultSelectionStrategyFactory, buildTermCache, lookupPreprocessorType.getName(), parsingParallelism);
+    }
+
+    /**
+     *
+     * @param rewriterId The id of this rewriter
+     * @param reader The reader to access the rewriter configuration
+     * @param allowBooleanInput Iff true, rule input can have boolean expressions
+     * @param boostMethod The {@link querqy.rewrite.commonrules.model.BoostInstruction.BoostMethod} to use when creating
+     *                    {@link querqy.rewrite.commonrules.model.BoostInstruction}s
+     * @param querqyParserFactory A parser for the right-hand side of rules
+     * @param selectionStrategyFactories A mapping between names of rule selection strategies and their factories.
+     * @param defaultSelectionStrategyFactory The default {@link SelectionStrategyFactory} to be used if no strategy is
+     *                                       specified as a request parameter
+     * @param buildTermCache If true, build the term cache for terms from the rhs of rules
+     * @param lookupPreprocessorName The name of the preprocessor for the rule input, either the name of a
+     *                               {@link LookupPreprocessorType} or a name under which a preprocessor was registered
+     *                               using {@link LookupPreprocessorFactory#register(String, LookupPreprocessor)}
+     * @param parsingParallelism The number of threads for parsing the rules. Rules are always parsed by a single
+     *                           thread if boolean input is allowed.
+     * @throws IOException if rules cannot be read or parsed
+     * @throws IllegalArgumentException if no preprocessor is known by the given name
+     */
+    public SimpleCommonRulesRewriterFactory(final String rewriterId,
+                                            final Reader reader,
+                                            final boolean allowBooleanInput,
+                                            final BoostMethod boostMethod,
+                                            final QuerqyParserFactory querqyParserFactory,
+                                            final Map<String, SelectionStrategyFactory> selectionStrategyFactories,
+                                            final SelectionStrategyFactory defaultSelectionStrategyFactory,
+                                            final boolean buildTermCache,
+                                            final String lookupPreprocessorName,
+                                            final int parsingParallelism
+    ) throws IOException {
+
+        this(rewriterId, parseRules(reader, allowBooleanInput, boostMethod, querqyParserFactory,
+                lookupPreprocessorName, parsingParallelism), null, null, boostMethod, selectionStrategyFactories,
+                defaultSelectionStrategyFactory, buildTermCache, lookupPreprocessorName, RewriteLoggingSampler.ALWAYS,
+                new RuleUsageCounter());
+    }
+
+    private SimpleCommonRulesRewriterFactory(final String rewriterId,
+                                             final TrieMap<InstructionsSupplier> trieMap,
+                                             final UpdatableCommonRules updatableRules,
+                                             final CompiledCommonRules compiledRules,
+                                             final BoostMethod boostMethod,
+                                             final Map<String, SelectionStrategyFactory> selectionStrategyFactories,
+                                             final SelectionStrategyFactory defaultSelectionStrategyFactory,
+                                             final boolean buildTermCache,
+                                             final String lookupPreprocessorName,
+                                             final RewriteLoggingSampler rewriteLoggingSampler,
+                                             final RuleUsageCounter ruleUsageCounter) {
+
         super(rewriterId);
 
         this.strategyParam = RuleSelectionParams.getStrategyParamName(rewriterId);
@@ -100,44 +204,272 @@ public class SimpleCommonRulesRewriterFactory extends RewriterFactory {
 
         this.buildTermCache = buildTermCache;
 
+        this.cacheKeyRequestParamNames = collectCacheKeyRequestParamNames();
+
+        this.trieMap = trieMap;
+        this.updatableRules = updatableRules;
+        this.compiledRules = compiledRules;
+        this.boostMethod = boostMethod;
+        this.lookupPreprocessorName = lookupPreprocessorName;
+        this.rewriteLoggingSampler = rewriteLoggingSampler;
+        this.ruleUsageCounter = ruleUsageCounter;
+
+        trieMapLookupQueryVisitorFactory = TrieMapLookupQueryVisitorFactory.of(
+                trieMap,
+                LookupConfig.builder()
+                        .hasBoundaries(true)
+                        .preprocessor(LookupPreprocessorFactory.fromName(lookupPreprocessorName))
+                        .build()
+        );
+    }
+
+    /**
+     * Create a factory from rules that were written using {@link #writeCompiledRules(OutputStream)}. The file is
+     * memory-mapped and instructions are only created when they are needed for the first time. The term cache is built
+     * from the generable terms that are stored with the compiled rules, without creating the instructions.
+     *
+     * @param rewriterId The id of this rewriter
+     * @param compiledRules The file that contains the compiled rules
+     * @param querqyParserFactory A parser for the right-hand side of rules
+     * @param selectionStrategyFactories A mapping between names of rule selection strategies and their factories.
+     * @param defaultSelectionStrategyFactory The default {@link SelectionStrategyFactory} to be used if no strategy is
+     *                                       specified as a request parameter
+     * @param buildTermCache If true, build the term cache for terms from the rhs of rules
+     * @return The factory
+     * @throws IOException if the compiled rules cannot be read or if their lookup preprocessor is not registered
+     */
+    public static SimpleCommonRulesRewriterFactory fromCompiledRules(
+            final String rewriterId,
+            final Path compiledRules,
+            final QuerqyParserFactory querqyParserFactory,
+            final Map<String, SelectionStrategyFactory> selectionStrategyFactories,
+            final SelectionStrategyFactory defaultSelectionStrategyFactory,
+            final boolean buildTermCache) throws IOException {
+
+        try {
+            final CompiledCommonRules rules = CompiledCommonRules.map(compiledRules, querqyParserFactory,
+                    ALLOWED_TYPES);
+
+            return new SimpleCommonRulesRewriterFactory(rewriterId, rules.getTrieMap(), null, rules,
+                    rules.getBoostMethod(), selectionStrategyFactories, defaultSelectionStrategyFactory,
+                    buildTermCache, rules.getLookupPreprocessorName(), RewriteLoggingSampler.ALWAYS,
+                    new RuleUsageCounter());
+        } catch (final IllegalArgumentException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Create a factory whose rules can be changed using {@link #withRuleChanges(Reader, Collection)}. Such a factory
+     * keeps its rules in a {@link TrieMap} instead of the more compact {@link CompactTrieMap} and it needs additional
+     * memory for an index from rule IDs to rule inputs. Boolean input is not supported.
+     *
+     * @param rewriterId The id of this rewriter
+     * @param reader The reader to access the rewriter configuration
+     * @param boostMethod The {@link querqy.rewrite.commonrules.model.BoostInstruction.BoostMethod} to use when creating
+     *                    {@link querqy.rewrite.commonrules.model.BoostInstruction}s
+     * @param querqyParserFactory A parser for the right-hand side of rules
+     * @param selectionStrategyFactories A mapping between names of rule selection strategies and their factories.
+     * @param defaultSelectionStrategyFactory The default {@link SelectionStrategyFactory} to be used if no strategy is
+     *                                       specified as a request parameter
+     * @param buildTermCache If true, build the term cache for terms from the rhs of rules
+     * @param lookupPreprocessorType The preprocessor for the rule input
+     * @param parsingParallelism The number of threads for parsing the rules
+     * @return The factory
+     * @throws IOException if rules cannot be read or parsed
+     */
+    public static SimpleCommonRulesRewriterFactory createUpdatable(
+            final String rewriterId,
+            final Reader reader,
+            final BoostMethod boostMethod,
+            final QuerqyParserFactory querqyParserFactory,
+            final Map<String, SelectionStrategyFactory> selectionStrategyFactories,
+            final SelectionStrategyFactory defaultSelectionStrategyFactory,
+            final boolean buildTermCache,
+            final LookupPreprocessorType lookupPreprocessorType,
+            final int parsingParallelism) throws IOException {
+
+        return createUpdatable(rewriterId, reader, boostMethod, querqyParserFactory, selectionStrategyFactories,
+                defaultSelectionStrategyFactory, buildTermCache, lookupPreprocessorType.getName(), parsingParallelism);
+    }
+
+    /**
+     * Create a factory whose rules can be changed using {@link #withRuleChanges(Reader, Collection)}, using a lookup
+     * preprocessor that is selected by name (see
+     * {@link #createUpdatable(String, Reader, BoostMethod, QuerqyParserFactory, Map, SelectionStrategyFactory, boolean,
+     * LookupPreprocessorType, int)}).
+     *
+     * @param rewriterId The id of this rewriter
+     * @param reader The reader to access the rewriter configuration
+     * @param boostMethod The {@link querqy.rewrite.commonrules.model.BoostInstruction.BoostMethod} to use when creating
+     *                    {@link querqy.rewrite.commonrules.model.BoostInstruction}s
+     * @param querqyParserFactory A parser for the right-hand side of rules
+     * @param selectionStrategyFactories A mapping between names of rule selection strategies and their factories.
+     * @param defaultSelectionStrategyFactory The default {@link SelectionStrategyFactory} to be used if no strategy is
+     *                                       specified as a request parameter
+     * @param buildTermCache If true, build the term cache for terms from the rhs of rules
+     * @param lookupPreprocessorName The name of the preprocessor for the rule input, either the name of a
+     *                               {@link LookupPreprocessorType} or a name under which a preprocessor was registered
+     *                               using {@link LookupPreprocessorFactory#register(String, LookupPreprocessor)}
+     * @param parsingParallelism The number of threads for parsing the rules
+     * @return The factory
+     * @throws IOException if rules cannot be read or parsed
+     * @throws IllegalArgumentException if no preprocessor is known by the given name
+     */
+    public static SimpleCommonRulesRewriterFactory createUpdatable(
+            final String rewriterId,
+            final Reader reader,
+            final BoostMethod boostMethod,
+            final QuerqyParserFactory querqyParserFactory,
+            final Map<String, SelectionStrategyFactory> selectionStrategyFactories,
+            final SelectionStrategyFactory defaultSelectionStrategyFactory,
+            final boolean buildTermCache,
+            final String lookupPreprocessorName,
+            final int parsingParallelism) throws IOException {
+
+        final UpdatableCommonRules rules = UpdatableCommonRules.parse(reader,
+                createRuleParserConfig(false, boostMethod, querqyParserFactory),
+                LookupPreprocessorFactory.fromName(lookupPreprocessorName), parsingParallelism);
+
+        return new SimpleCommonRulesRewriterFactory(rewriterId, rules.getTrieMap(), rules, null, boostMethod,
+                selectionStrategyFactories, defaultSelectionStrategyFactory, buildTermCache, lookupPreprocessorName,
+                RewriteLoggingSampler.ALWAYS, new RuleUsageCounter());
+    }
+
+    /**
+     * <p>Create a copy of this factory with changed rules. This factory remains unchanged and it can still be used
+     * while the copy is being created.</p>
+     *
+     * <p>Rules are identified by their ID (property _id). A changed rule replaces the rule with the same ID or it
+     * is added if no rule has this ID yet. Only the changed rules are parsed and the copy shares the rules that were
+     * not changed with this factory. See {@link UpdatableCommonRules} for details.</p>
+     *
+     * @param changedRules The added and updated rules in rules.txt format
+     * @param deletedRuleIds The IDs of the rules to delete. Unknown IDs are ignored.
+     * @return The new factory
+     * @throws IOException if the changed rules cannot be parsed
+     * @throws IllegalStateException if this factory was not created using {@link #createUpdatable}
+     */
+    public SimpleCommonRulesRewriterFactory withRuleChanges(final Reader changedRules,
+                                                            final Collection<?> deletedRuleIds) throws IOException {
+        if (updatableRules == null) {
+            throw new IllegalStateException("Rules of rewriter " + getRewriterId() + " cannot be updated");
+        }
+
+        final UpdatableCommonRules rules = updatableRules.withChanges(changedRules, deletedRuleIds);
+
+        return new SimpleCommonRulesRewriterFactory(getRewriterId(), rules.getTrieMap(), rules, null, boostMethod,
+                selectionStrategyFactories, defaultSelectionStrategyFactory, buildTermCache, lookupPreprocessorName,
+                rewriteLoggingSampler, ruleUsageCounter);
+    }
+
+    /**
+     * <p>Create a copy of this factory that only creates detailed rewrite logs for the requests that are sampled by
+     * the given sampler. The copy shares the rules and the {@link RuleUsageCounter} with this factory.</p>
+     *
+     * @param rewriteLoggingSampler The sampler
+     * @return The new factory
+     */
+    public SimpleCommonRulesRewriterFactory withRewriteLoggingSampler(
+            final RewriteLoggingSampler rewriteLoggingSampler) {
+        return new SimpleCommonRulesRewriterFactory(getRewriterId(), trieMap, updatableRules, compiledRules,
+                boostMethod, selectionStrategyFactories, defaultSelectionStrategyFactory, buildTermCache,
+                lookupPreprocessorName, rewriteLoggingSampler, ruleUsageCounter);
+    }
+
+    /**
+     * <p>Create a copy of this factory that counts the applied rules in the given counter. The copy shares the rules
+     * with this factory, which allows to share the rules between several owners that need separate counts, for
+     * example, between Solr cores.</p>
+     *
+     * @param ruleUsageCounter The counter
+     * @return The new factory
+     */
+    public SimpleCommonRulesRewriterFactory withRuleUsageCounter(final RuleUsageCounter ruleUsageCounter) {
+        return new SimpleCommonRulesRewriterFactory(getRewriterId(), trieMap, updatableRules, compiledRules,
+                boostMethod, selectionStrategyFactories, defaultSelectionStrategyFactory, buildTermCache,
+                lookupPreprocessorName, rewriteLoggingSampler, Objects.requireNonNull(ruleUsageCounter));
+    }
+
+    /**
+     * @return true iff the rules can be changed using {@link #withRuleChanges(Reader, Collection)}
+     */
+    public boolean isUpdatable() {
+        return updatableRules != null;
+    }
+
+    /**
+     * Write the rules of this factory in their compiled, binary representation (see {@link CompiledCommonRules}).
+     *
+     * @param out The output. It will not be closed.
+     * @throws IOException if the rules cannot be written
+     * @throws IllegalArgumentException if the rules cannot be compiled, for example, if they contain boolean input
+     */
+    public void writeCompiledRules(final OutputStream out) throws IOException {
+        CompiledCommonRules.write(CompactTrieMap.of(trieMap), lookupPreprocessorName, boostMethod, out);
+    }
+
+    private static CompactTrieMap<InstructionsSupplier> parseRules(final Reader reader,
+                                                                   final boolean allowBooleanInput,
+                                                                   final BoostMethod boostMethod,
+                                                                   final QuerqyParserFactory querqyParserFactory,
+                                                                   final String lookupPreprocessorName,
+                                                                   final int parsingParallelism)
+            throws IOException {
+
+        final LookupPreprocessor lookupPreprocessor = LookupPreprocessorFactory.fromName(lookupPreprocessorName);
+
+        // the rules will not change anymore - use the compact, read-only representation of the trie
+        return CompactTrieMap.of(parseRules(reader,
+                createRuleParserConfig(allowBooleanInput, boostMethod, querqyParserFactory),
+                new TrieMapRulesCollectionBuilder(lookupPreprocessor), parsingParallelism, 0));
+    }
+
+    static RuleParserConfig createRuleParserConfig(final boolean allowBooleanInput,
+                                                   final BoostMethod boostMethod,
+                                                   final QuerqyParserFactory querqyParserFactory) {
+        return RuleParserConfig.builder()
+                .isAllowedToParseBooleanInput(allowBooleanInput)
+                .boostMethod(boostMethod)
+                .querqyParserFactory(querqyParserFactory)
+                .allowedInstructionTypes(ALLOWED_TYPES)
+                .build();
+    }
+
+    static TrieMap<InstructionsSupplier> parseRules(final Reader reader,
+                                                    final RuleParserConfig ruleParserConfig,
+                                                    final RuleCollector ruleCollector,
+                                                    final int parsingParallelism,
+                                                    final int ruleOrderNumberOffset)
+            throws IOException {
+
         // TODO: using List<String> to process lines instead of Reader should be better:
         //  (1) Lines can be reused across different processing stages (should reduce resource consumption)
         //  (2) Allows removing various try & catch blocks
         try {
             final QuerqyTemplateEngine querqyTemplateEngine = new QuerqyTemplateEngine(reader);
 
-            final LookupPreprocessor lookupPreprocessor = LookupPreprocessorFactory.fromType(lookupPreprocessorType);
-
             final RulesParserConfig config = RulesParserConfig.builder()
                     .textParserConfig(TextParserConfig.builder()
                             .rulesContentReader(querqyTemplateEngine.renderedRules.reader)
                             .isMultiLineRulesConfig(true)
                             .lineNumberMappings(querqyTemplateEngine.renderedRules.lineNumberMapping)
                             .build())
-                    .ruleParserConfig(RuleParserConfig.builder()
-                            .isAllowedToParseBooleanInput(allowBooleanInput)
-                            .boostMethod(boostMethod)
-                            .querqyParserFactory(querqyParserFactory)
-                            .allowedInstructionTypes(ALLOWED_TYPES)
-                            .build())
-                    .rulesCollectionBuilder(new TrieMapRulesCollectionBuilder(lookupPreprocessor))
+                    .ruleParserConfig(ruleParserConfig)
+                    .rulesCollectionBuilder(ruleCollector)
+                    .parallelism(parsingParallelism)
+                    .ruleOrderNumberOffset(ruleOrderNumberOffset)
                     .build();
 
             final RulesParser rulesParser = RulesParserFactory.textParser(config);
             final TrieMap<InstructionsSupplier> trieMap = rulesParser.parse();
 
-            trieMapLookupQueryVisitorFactory = TrieMapLookupQueryVisitorFactory.of(
-                    trieMap,
-                    LookupConfig.builder()
-                            .hasBoundaries(true)
-                            .preprocessor(lookupPreprocessor)
-                            .build()
-            );
-
             // should be closed already in RulesParser - passing Readers as arguments should be avoided
             // and refactored as suggested above
             querqyTemplateEngine.renderedRules.reader.close();
 
+            return trieMap;
+
         } catch (final RuleParseException | TemplateParseException e) {
             throw new IOException(e);
         } finally {
@@ -164,12 +496,38 @@ public class SimpleCommonRulesRewriterFactory extends RewriterFactory {
                 }).orElse(defaultSelectionStrategyFactory) // strategy not specified in params
                 .createSelectionStrategy(getRewriterId(), searchEngineRequestAdapter);
 
-        return new CommonRulesRewriter(trieMapLookupQueryVisitorFactory, selectionStrategy);
+        return new CommonRulesRewriter(trieMapLookupQueryVisitorFactory, selectionStrategy, rewriteLoggingSampler,
+                ruleUsageCounter);
+    }
+
+    @Override
+    public Optional<Set<String>> getCacheKeyRequestParamNames() {
+        return cacheKeyRequestParamNames;
+    }
+
+    private Optional<Set<String>> collectCacheKeyRequestParamNames() {
+        final Set<String> names = new HashSet<>();
+        names.add(strategyParam);
+
+        final List<SelectionStrategyFactory> factories = new ArrayList<>(selectionStrategyFactories.values());
+        factories.add(defaultSelectionStrategyFactory);
+        for (final SelectionStrategyFactory factory : factories) {
+            final Optional<Set<String>> factoryParamNames = factory.getCacheKeyRequestParamNames(getRewriterId());
+            if (!factoryParamNames.isPresent()) {
+                return Optional.empty();
+            }
+            names.addAll(factoryParamNames.get());
+        }
+
+        return Optional.of(Collections.unmodifiableSet(names));
     }
 
     @Override
     public Set<Term> getCacheableGenerableTerms() {
         if (buildTermCache) {
+            if (compiledRules != null) {
+                return compiledRules.getGenerableTerms();
+            }
             return getInstructions().stream()
                     .flatMap(instruction -> instruction.getGenerableTerms().stream())
                     .collect(Collectors.toSet());
@@ -178,6 +536,27 @@ public class SimpleCommonRulesRewriterFactory extends RewriterFactory {
         return Collections.emptySet();
     }
 
+    public RewriteLoggingSampler getRewriteLoggingSampler() {
+        return rewriteLoggingSampler;
+    }
+
+    /**
+     * @return The counts of the applied rules. Factories that were created from this factory using
+     * {@link #withRuleChanges(Reader, Collection)} or {@link #withRewriteLoggingSampler(RewriteLoggingSampler)} share
+     * the counter with this factory, factories created using {@link #withRuleUsageCounter(RuleUsageCounter)} don't.
+     */
+    public RuleUsageCounter getRuleUsageCounter() {
+        return ruleUsageCounter;
+    }
+
+    TrieMap<InstructionsSupplier> getTrieMap() {
+        return trieMap;
+    }
+
+    /**
+     * @return All instructions of the rules. For rules created using {@link #fromCompiledRules}, this creates the
+     * instructions of all rules and keeps them on the heap.
+     */
     public Set<Instruction> getInstructions() {
 
         final Set<Instruction> result = new HashSet<>();
@@ -0,0 +1,302 @@
+package querqy.rewrite.commonrules;
+
+import querqy.model.Input;
+import querqy.rewrite.commonrules.model.InputSequenceNormalizer;
+import querqy.rewrite.commonrules.model.Instructions;
+import querqy.rewrite.commonrules.model.InstructionsSupplier;
+import querqy.rewrite.commonrules.model.PrefixTerm;
+import querqy.rewrite.commonrules.model.RuleCollector;
+import querqy.rewrite.commonrules.model.Term;
+import querqy.rewrite.commonrules.model.TrieMapRulesCollectionBuilder;
+import querqy.rewrite.lookup.preprocessing.LookupPreprocessor;
+import querqy.rewrite.rules.RuleParseException;
+import querqy.rewrite.rules.factory.config.RuleParserConfig;
+import querqy.rewrite.rules.rule.Rule;
+import querqy.trie.State;
+import querqy.trie.States;
+import querqy.trie.TrieMap;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * <p>Common rules that can be changed incrementally. Rules are identified by their ID (property _id).</p>
+ *
+ * <p>Instances are immutable. {@link #withChanges(Reader, Collection)} only parses the changed rules and it creates
+ * the new trie using {@link TrieMap#withValue(CharSequence, Object)}, which copies the trie nodes on the paths to the
+ * inputs of the changed and deleted rules. All other nodes and the {@link Instructions} of the unchanged rules are
+ * shared with the previous instance, which can still be used for lookups while the changes are being applied.</p>
+ *
+ * <p>The trie keys of each rule are kept in a second trie that maps the rule ID to the keys. It is copied on write in
+ * the same way, so that applying a change only costs time proportional to the size of the change, not to the number
+ * of rules. Rule IDs are compared by their string representation, so that a numeric ID can be deleted using its
+ * string value and vice versa.</p>
+ *
+ * <p>Changed rules get rule order numbers greater than those of all existing rules, as if they had been moved to the
+ * end of the rules file. Rules with boolean input cannot be changed incrementally.</p>
+ */
+public class UpdatableCommonRules {
+
+    private final TrieMap<InstructionsSupplier> trieMap;
+
+    /**
+     * The trie keys of each rule by rule ID. Only the keys are kept, the instructions are looked up in the trie.
+     */
+    private final TrieMap<List<TrieKey>> keysByRuleId;
+    private final int size;
+    private final int nextRuleOrderNumber;
+    private final RuleParserConfig ruleParserConfig;
+    private final LookupPreprocessor lookupPreprocessor;
+
+    private UpdatableCommonRules(final TrieMap<InstructionsSupplier> trieMap,
+                                 final TrieMap<List<TrieKey>> keysByRuleId,
+                                 final int size,
+                                 final int nextRuleOrderNumber,
+                                 final RuleParserConfig ruleParserConfig,
+                                 final LookupPreprocessor lookupPreprocessor) {
+        this.trieMap = trieMap;
+        this.keysByRuleId = keysByRuleId;
+        this.size = size;
+        this.nextRuleOrderNumber = nextRuleOrderNumber;
+        this.ruleParserConfig = ruleParserConfig;
+        this.lookupPreprocessor = lookupPreprocessor;
+    }
+
+    /**
+     * Parse rules from rules.txt format.
+     *
+     * @param reader The rules
+     * @param ruleParserConfig The parser configuration. It must not allow boolean input.
+     * @param lookupPreprocessor The preprocessor for the rule input
+     * @param parsingParallelism The number of threads for parsing the rules
+     * @return The rules
+     * @throws IOException if the rules cannot be read or parsed
+     */
+    public static UpdatableCommonRules parse(final Reader reader, final RuleParserConfig ruleParserConfig,
+                                             final LookupPreprocessor lookupPreprocessor,
+                                             final int parsingParallelism) throws IOException {
+
+        if (ruleParserConfig.isAllowedToParseBooleanInput()) {
+            throw new IllegalArgumentException("Rules with boolean input cannot be updated");
+        }
+
+        final RuleKeysCollector collector = new RuleKeysCollector(lookupPreprocessor,
+                new TrieMapRulesCollectionBuilder(lookupPreprocessor));
+        final TrieMap<InstructionsSupplier> trieMap = SimpleCommonRulesRewriterFactory.parseRules(reader,
+                ruleParserConfig, collector, parsingParallelism, 0);
+
+        // the IDs are unique, the parser rejects duplicate IDs
+        final TrieMap<List<TrieKey>> keysByRuleId = new TrieMap<>();
+        int maxRuleOrderNumber = -1;
+        for (final CollectedRule rule : collector.rules) {
+            keysByRuleId.put(rule.id, rule.keys);
+            maxRuleOrderNumber = Math.max(maxRuleOrderNumber, rule.instructions.getOrd());
+        }
+
+        return new UpdatableCommonRules(trieMap, keysByRuleId, collector.rules.size(), maxRuleOrderNumber + 1,
+                ruleParserConfig, lookupPreprocessor);
+    }
+
+    /**
+     * Create a copy of these rules with the changed rules added or replaced and the deleted rules removed.
+     *
+     * @param changedRules The added and updated rules in rules.txt format. A rule replaces the existing rule that
+     *                     has the same ID.
+     * @param deletedRuleIds The IDs of the rules to delete. Unknown IDs are ignored.
+     * @return The changed rules
+     * @throws IOException if the changed rules cannot be read or parsed
+     */
+    public UpdatableCommonRules withChanges(final Reader changedRules, final Collection<?> deletedRuleIds)
+            throws IOException {
+
+        final RuleKeysCollector collector = new RuleKeysCollector(lookupPreprocessor, null);
+        SimpleCommonRulesRewriterFactory.parseRules(changedRules, ruleParserConfig, collector, 1,
+                nextRuleOrderNumber);
+
+        final Set<String> removedIds = new HashSet<>();
+        for (final Object id : deletedRuleIds) {
+            final String key = String.valueOf(id);
+            if (!key.isEmpty()) {
+                removedIds.add(key);
+            }
+        }
+        collector.rules.forEach(rule -> removedIds.add(rule.id));
+
+        // the trie keys whose values change, mapped to the added instructions
+        final Map<TrieKey, List<Instructions>> changedKeys = new LinkedHashMap<>();
+
+        TrieMap<List<TrieKey>> newKeysByRuleId = keysByRuleId;
+        int newSize = size;
+        for (final String id : removedIds) {
+            final List<TrieKey> keys = getKeys(id);
+            if (keys != null) {
+                keys.forEach(key -> changedKeys.putIfAbsent(key, new ArrayList<>(1)));
+                newKeysByRuleId = newKeysByRuleId.withValue(id, null);
+                newSize--;
+            }
+        }
+
+        int maxRuleOrderNumber = nextRuleOrderNumber - 1;
+        for (final CollectedRule rule : collector.rules) {
+            newKeysByRuleId = newKeysByRuleId.withValue(rule.id, rule.keys);
+            newSize++;
+            rule.keys.forEach(key -> changedKeys.computeIfAbsent(key, k -> new ArrayList<>(1))
+                    .add(rule.instructions));
+            maxRuleOrderNumber = Math.max(maxRuleOrderNumber, rule.instructions.getOrd());
+        }
+
+        TrieMap<InstructionsSupplier> newTrieMap = trieMap;
+        for (final Map.Entry<TrieKey, List<Instructions>> entry : changedKeys.entrySet()) {
+
+            final TrieKey key = entry.getKey();
+
+            // never modify the existing InstructionsSupplier, it might be in use by a concurrent lookup
+            final List<Instructions> instructionsList = new ArrayList<>();
+            final InstructionsSupplier current = get(key);
+            if (current != null) {
+                current.getInstructionsList().stream()
+                        .filter(instructions -> !removedIds.contains(String.valueOf(instructions.getId())))
+                        .forEach(instructionsList::add);
+            }
+            instructionsList.addAll(entry.getValue());
+
+            final InstructionsSupplier newValue = instructionsList.isEmpty()
+                    ? null : new InstructionsSupplier(instructionsList, null);
+            newTrieMap = key.isPrefix
+                    ? newTrieMap.withPrefixValue(key.seq, newValue)
+                    : newTrieMap.withValue(key.seq, newValue);
+        }
+
+        return new UpdatableCommonRules(newTrieMap, newKeysByRuleId, newSize, maxRuleOrderNumber + 1,
+                ruleParserConfig, lookupPreprocessor);
+    }
+
+    private List<TrieKey> getKeys(final String id) {
+        final State<List<TrieKey>> state = keysByRuleId.get(id).getStateForCompleteSequence();
+        return state.isFinal() ? state.value : null;
+    }
+
+    private InstructionsSupplier get(final TrieKey key) {
+        final States<InstructionsSupplier> states = trieMap.get(key.seq);
+        if (key.isPrefix) {
+            final List<State<InstructionsSupplier>> prefixes = states.getPrefixes();
+            if (prefixes != null) {
+                for (final State<InstructionsSupplier> state : prefixes) {
+                    if (state.isFinal() && state.index == key.seq.length() - 1) {
+                        return state.value;
+                    }
+                }
+            }
+            return null;
+        } else {
+            final State<InstructionsSupplier> state = states.getStateForCompleteSequence();
+            return state.isFinal() ? state.value : null;
+        }
+    }
+
+    public TrieMap<InstructionsSupplier> getTrieMap() {
+        return trieMap;
+    }
+
+    /**
+     * @return The number of rules
+     */
+    public int size() {
+        return size;
+    }
+
+    private static final class TrieKey {
+
+        final String seq;
+        final boolean isPrefix;
+
+        TrieKey(final String seq, final boolean isPrefix) {
+            this.seq = seq;
+            this.isPrefix = isPrefix;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final TrieKey other = (TrieKey) o;
+            return isPrefix == other.isPrefix && seq.equals(other.seq);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(seq, isPrefix);
+        }
+    }
+
+    private static final class CollectedRule {
+
+        final String id;
+        final Instructions instructions;
+        final List<TrieKey> keys;
+
+        CollectedRule(final Instructions instructions, final List<TrieKey> keys) {
+            this.id = String.valueOf(instructions.getId());
+            this.instructions = instructions;
+            this.keys = keys;
+        }
+    }
+
+    /**
+     * Collects the rules and their trie keys and passes them on to a delegate {@link RuleCollector}, if there is one.
+     */
+    private static final class RuleKeysCollector implements RuleCollector {
+
+        final List<CollectedRule> rules = new ArrayList<>();
+        final InputSequenceNormalizer inputSequenceNormalizer;
+        final RuleCollector delegate;
+
+        RuleKeysCollector(final LookupPreprocessor lookupPreprocessor, final RuleCollector delegate) {
+            this.inputSequenceNormalizer = new InputSequenceNormalizer(lookupPreprocessor);
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void addRule(final Rule rule) {
+            final Input.SimpleInput input = rule.getInput();
+            final List<Term> inputTerms = input.getInputTerms();
+            final boolean isPrefix = !inputTerms.isEmpty()
+                    && inputTerms.get(inputTerms.size() - 1) instanceof PrefixTerm;
+
+            final List<TrieKey> keys = inputSequenceNormalizer.getNormalizedInputSequences(input).stream()
+                    .map(seq -> new TrieKey(seq.toString(), isPrefix))
+                    .distinct()
+                    .collect(Collectors.toList());
+
+            for (final Instructions instructions : rule.getInstructionsSupplier().getInstructionsList()) {
+                final CollectedRule collectedRule = new CollectedRule(instructions, keys);
+                if (collectedRule.id.isEmpty()) {
+                    throw new RuleParseException("Rules that can be updated must not have an empty ID");
+                }
+                rules.add(collectedRule);
+            }
+
+            if (delegate != null) {
+                delegate.addRule(rule);
+            }
+        }
+
+        @Override
+        public TrieMap<InstructionsSupplier> getTrieMap() {
+            return delegate == null ? null : delegate.getTrieMap();
+        }
+    }
+}
@@ -67,6 +67,10 @@ public class DeleteInstruction implements Instruction {
        }
    }
 
+   public List<? extends Term> getTermsToDelete() {
+       return termsToDelete;
+   }
+
    public boolean isToBeDeleted(final querqy.model.Term term) {
        if (prefixesToDeleted != null) {
            for (final PrefixTerm prefixTerm: prefixesToDeleted) {
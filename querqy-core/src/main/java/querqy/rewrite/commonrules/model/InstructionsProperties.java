@@ -30,7 +30,15 @@ public class InstructionsProperties {
         return Optional.ofNullable(propertyMap.get(name));
     }
 
+    public Map<String, Object> getPropertyMap() {
+        return propertyMap;
+    }
+
     public boolean matches(final String jsonPath) {
+        return matches(JsonPath.compile(jsonPath));
+    }
+
+    public boolean matches(final JsonPath jsonPath) {
         final List read = documentContext.read(jsonPath);
         return read.size() > 0;
     }
@@ -0,0 +1,16 @@
+package querqy.rewrite.commonrules.model;
+
+import querqy.rewrite.rules.rule.Rule;
+import querqy.trie.TrieMap;
+
+/**
+ * Receives the parsed rules from the rules parser (see {@link querqy.rewrite.rules.RulesParser}) and provides the
+ * trie that maps the rule inputs to their instructions.
+ */
+public interface RuleCollector {
+
+    void addRule(final Rule rule);
+
+    TrieMap<InstructionsSupplier> getTrieMap();
+
+}
@@ -5,16 +5,18 @@ import querqy.rewrite.commonrules.select.booleaninput.model.BooleanInputLiteral;
 import querqy.rewrite.rules.rule.Rule;
 import querqy.trie.TrieMap;
 
-public interface RulesCollectionBuilder {
+public interface RulesCollectionBuilder extends RuleCollector {
 
     void addRule(Input.SimpleInput input, Instructions instructions);
 
     void addRule(Input.SimpleInput input, BooleanInputLiteral literal);
 
+    @Override
     void addRule(final Rule rule);
 
     RulesCollection build();
 
+    @Override
     TrieMap<InstructionsSupplier> getTrieMap();
 
 }
\ No newline at end of file
@@ -14,8 +14,8 @@ import querqy.model.Term;
 import querqy.rewrite.commonrules.select.TopRewritingActionCollector;
 import querqy.rewrite.lookup.preprocessing.LookupPreprocessor;
 import querqy.rewrite.lookup.preprocessing.LookupPreprocessorFactory;
+import querqy.trie.PrefixCollectingCursor;
 import querqy.trie.State;
-import querqy.trie.States;
 import querqy.trie.TrieMap;
 
 /**
@@ -54,34 +54,32 @@ public class TrieMapRulesCollection implements RulesCollection {
         // position. We now find all the combinations of terms in different 
         // positions and look them up as rules input in the dictionary
 
+        // this collection is shared between threads, the cursor is only used for this call
+        final PrefixCollectingCursor<InstructionsSupplier> cursor = new PrefixCollectingCursor<>();
+
         if (sequence.size() == 1) {
 
             sequence.getFirst().stream()
                     .filter(Term.class::isInstance)
                     .map(Term.class::cast).forEach(term -> {
 
-                final States<InstructionsSupplier> states = trieMap.get(createLookupCharSequence(term));
+                trieMap.lookup(createLookupCharSequence(term), cursor, cursor);
 
-                final State<InstructionsSupplier> stateExactMatch = states.getStateForCompleteSequence();
-                if (stateExactMatch.isFinal() && stateExactMatch.value != null) {
+                if (cursor.isFinal()) {
 
-                    collector.collect(stateExactMatch.value,
+                    collector.collect(cursor.getValue(),
                             instructions -> new Action(instructions, new TermMatches(new TermMatch(term)), 0, 1));
 
                 }
 
-                final List<State<InstructionsSupplier>> statesForPrefixes = states.getPrefixes();
-                if (statesForPrefixes != null) {
-                    for (final State<InstructionsSupplier> stateForPrefix: statesForPrefixes) {
+                for (int i = 0, len = cursor.getPrefixCount(); i < len; i++) {
 
-                        if (stateForPrefix.isFinal() && stateForPrefix.value != null) {
-                            collector.collect(stateForPrefix.value,
-                                    instructions -> new Action(instructions, new TermMatches(
-                                            new TermMatch(term, true,
-                                                    term.subSequence(stateForPrefix.index + 1, term.length()))), 0, 1));
+                    final int prefixIndex = cursor.getPrefixIndex(i);
+                    collector.collect(cursor.getPrefixValue(i),
+                            instructions -> new Action(instructions, new TermMatches(
+                                    new TermMatch(term, true,
+                                            term.subSequence(prefixIndex + 1, term.length()))), 0, 1));
 
-                        }
-                    }
                 }
             });
         } else {
@@ -114,15 +112,18 @@ public class TrieMapRulesCollection implements RulesCollection {
                     // combine term with prefixes (= sequences of terms) that brought us here
                     for (final Prefix<InstructionsSupplier> prefix : prefixes) {
 
-                        final States<InstructionsSupplier> states = trieMap.get(
-                                new CompoundCharSequence(null, " ", charSequenceForLookup), prefix.stateInfo);
+                        // same as looking up " " + charSequenceForLookup, as prefixes are not reported for the last
+                        // char of a lookup
+                        cursor.setState(prefix.stateInfo);
+                        if (trieMap.lookupNext(" ", cursor, cursor)) {
+                            trieMap.lookupNext(charSequenceForLookup, cursor, cursor);
+                        }
 
                         final int ofs = isTerm ? 1 : 0;
                         
                         // exact matches 
-                        final State<InstructionsSupplier> stateExactMatch = states.getStateForCompleteSequence();
-                        if (stateExactMatch.isKnown()) {
-                            if (stateExactMatch.isFinal()) {
+                        if (cursor.isKnown()) {
+                            if (cursor.isFinal()) {
                                 final int start;
                                 if (isTerm) {
                                     start = pos - (prefix.matches.size() + 1) + ofs;
@@ -130,7 +131,7 @@ public class TrieMapRulesCollection implements RulesCollection {
                                     start = pos - prefix.matches.size() + ofs;
                                 }
 
-                                collector.collect(stateExactMatch.value, instructions -> {
+                                collector.collect(cursor.getValue(), instructions -> {
                                     final TermMatches matches = new TermMatches(prefix.matches);
                                     if (isTerm) {
                                         matches.add(new TermMatch((Term) element));
@@ -139,7 +140,7 @@ public class TrieMapRulesCollection implements RulesCollection {
                                 });
 
                             }
-                            final Prefix<InstructionsSupplier> newPrefix = new Prefix<>(prefix, stateExactMatch);
+                            final Prefix<InstructionsSupplier> newPrefix = new Prefix<>(prefix, cursor.toState());
                             if (isTerm) {
                                 newPrefix.addTerm(new TermMatch((Term) element));
                             }
@@ -148,75 +149,65 @@ public class TrieMapRulesCollection implements RulesCollection {
                         }
                         
                         // matches for prefixes (= beginnings of terms)
-                        final List<State<InstructionsSupplier>> statesForPrefixes = states.getPrefixes();
-                        if (statesForPrefixes != null) {
-                            for (final State<InstructionsSupplier> stateForPrefix: statesForPrefixes) {
-                                
-                                if (stateForPrefix.isFinal() && stateForPrefix.value != null) {
-                                    final int start;
-                                    if (isTerm) {
-                                        start = pos - (prefix.matches.size() + 1) + ofs;
-                                    } else {
-                                        start = pos - prefix.matches.size() + ofs;
-                                    }
-
+                        for (int i = 0, len = cursor.getPrefixCount(); i < len; i++) {
 
-                                    collector.collect(stateForPrefix.value, instructions -> {
-                                        final TermMatches matches = new TermMatches(prefix.matches);
-                                        if (isTerm) {
-                                            final Term term = (Term) element;
-                                            matches.add(
-                                                    new TermMatch(term,
-                                                            true,
-                                                            term.subSequence(stateForPrefix.index + 1, term.length())));
-                                        }
-                                        return new Action(instructions, matches, start, pos1 + ofs);
-                                    });
+                            final int start;
+                            if (isTerm) {
+                                start = pos - (prefix.matches.size() + 1) + ofs;
+                            } else {
+                                start = pos - prefix.matches.size() + ofs;
+                            }
 
+                            final int prefixIndex = cursor.getPrefixIndex(i);
+                            collector.collect(cursor.getPrefixValue(i), instructions -> {
+                                final TermMatches matches = new TermMatches(prefix.matches);
+                                if (isTerm) {
+                                    final Term term = (Term) element;
+                                    matches.add(
+                                            new TermMatch(term,
+                                                    true,
+                                                    term.subSequence(prefixIndex + 1, term.length())));
                                 }
-                                
-                                // TODO: continue with next match after prefix match
-                            }
+                                return new Action(instructions, matches, start, pos1 + ofs);
+                            });
+
+                            // TODO: continue with next match after prefix match
                         }
                     }
 
                     // now see whether the term matches on its own...
-                    final States<InstructionsSupplier> states = trieMap.get(charSequenceForLookup);
+                    trieMap.lookup(charSequenceForLookup, cursor, cursor);
 
-                    final State<InstructionsSupplier> stateExactMatch = states.getStateForCompleteSequence();
-                    if (stateExactMatch.isKnown()) {
-                        if (stateExactMatch.isFinal()) {
+                    if (cursor.isKnown()) {
+                        if (cursor.isFinal()) {
                             // we do not let match the boundary on its own:
                             if (isTerm) {
-                                collector.collect(stateExactMatch.value,
+                                collector.collect(cursor.getValue(),
                                         instructions ->
                                                 new Action(instructions, new TermMatches(new TermMatch((Term) element)),
                                                         pos1, pos1 + 1));
                             }
                         }
                         // ... and save it as a prefix to the following term
+                        final State<InstructionsSupplier> stateExactMatch = cursor.toState();
                         final Prefix<InstructionsSupplier> newPrefix = isTerm
                                 ? new Prefix<>(new TermMatch((Term) element), stateExactMatch)
                                 : new Prefix<>(stateExactMatch);
                         newPrefixes.add(new Prefix<>(newPrefix, stateExactMatch));
                     }
 
-                    final List<State<InstructionsSupplier>> statesForPrefixes = states.getPrefixes();
-                    if (statesForPrefixes != null) {
-                        for (final State<InstructionsSupplier> stateForPrefix: statesForPrefixes) {
-                            if (stateForPrefix.isFinal() && stateForPrefix.value != null) {
-                                if (isTerm) {
-                                    collector.collect(stateForPrefix.value, instructions -> {
-                                                final Term term = (Term) element;
-                                                return new Action(instructions,
-                                                        new TermMatches(
-                                                                new TermMatch(term, true,
-                                                                term.subSequence(stateForPrefix.index + 1,
-                                                                        term.length()))), pos1, pos1 + 1);
-                                            });
-                                    // TODO: continue with next match after prefix match
-                                }
-                            }
+                    if (isTerm) {
+                        for (int i = 0, len = cursor.getPrefixCount(); i < len; i++) {
+                            final int prefixIndex = cursor.getPrefixIndex(i);
+                            collector.collect(cursor.getPrefixValue(i), instructions -> {
+                                        final Term term = (Term) element;
+                                        return new Action(instructions,
+                                                new TermMatches(
+                                                        new TermMatch(term, true,
+                                                        term.subSequence(prefixIndex + 1,
+                                                                term.length()))), pos1, pos1 + 1);
+                                    });
+                            // TODO: continue with next match after prefix match
                         }
                     }
 
@@ -4,7 +4,12 @@ import querqy.rewrite.SearchEngineRequestAdapter;
 import querqy.rewrite.commonrules.model.*;
 
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -12,14 +17,32 @@ public class ExpressionCriteriaSelectionStrategyFactory implements SelectionStra
 
     public static final Limit DEFAULT_LIMIT = new Limit(-1, false);
 
+    /**
+     * The maximum number of filter criteria that are kept in the cache. A criterion that hasn't been used recently is
+     * removed when this size is reached (second chance eviction, which approximates LRU without locking lookups).
+     */
+    public static final int MAX_CACHED_FILTER_CRITERIA = 1024;
+
     private final Pattern SORT_SPLIT_PARAM_PATTERN = Pattern.compile("[ ]+");
 
+    // filter criteria by request param value, so that filter expressions are only compiled once
+    private final ConcurrentHashMap<String, CachedFilterCriterion> filterCriteriaCache = new ConcurrentHashMap<>();
+
     @Override
     public SelectionStrategy createSelectionStrategy(final String rewriterId,
                                                      final SearchEngineRequestAdapter searchEngineRequestAdapter) {
         return new CriteriaSelectionStrategy(retrieveCriteriaFromRequest(rewriterId, searchEngineRequestAdapter));
     }
 
+    @Override
+    public Optional<Set<String>> getCacheKeyRequestParamNames(final String rewriterId) {
+        return Optional.of(new HashSet<>(Arrays.asList(
+                RuleSelectionParams.getSortParamName(rewriterId),
+                RuleSelectionParams.getLimitParamName(rewriterId),
+                RuleSelectionParams.getIsUseLevelsForLimitParamName(rewriterId),
+                RuleSelectionParams.getFilterParamName(rewriterId))));
+    }
+
     protected Criteria retrieveCriteriaFromRequest(final String rewriterId,
                                                 final SearchEngineRequestAdapter searchEngineRequestAdapter) {
 
@@ -71,10 +94,54 @@ public class ExpressionCriteriaSelectionStrategyFactory implements SelectionStra
 
         return Arrays.stream(searchEngineRequestAdapter
                 .getRequestParams(RuleSelectionParams.getFilterParamName(rewriterId)))
-                .map(this::stringToFilterCriterion)
+                .map(this::getFilterCriterion)
                 .collect(Collectors.toList());
     }
 
+    protected FilterCriterion getFilterCriterion(final String s) {
+
+        final CachedFilterCriterion cached = filterCriteriaCache.get(s);
+        if (cached != null) {
+            // only write if needed, so that hot criteria don't cause contention
+            if (!cached.referenced) {
+                cached.referenced = true;
+            }
+            return cached.criterion;
+        }
+
+        // we might compile the same expression twice but won't block other requests
+        final CachedFilterCriterion created = new CachedFilterCriterion(stringToFilterCriterion(s));
+        if (filterCriteriaCache.size() >= MAX_CACHED_FILTER_CRITERIA) {
+            evictFilterCriterion();
+        }
+        final CachedFilterCriterion previous = filterCriteriaCache.putIfAbsent(s, created);
+        return previous == null ? created.criterion : previous.criterion;
+
+    }
+
+    /**
+     * Removes the first criterion that hasn't been used since the last eviction passed it. The size of the cache is
+     * only bounded approximately under concurrent updates.
+     */
+    private void evictFilterCriterion() {
+        for (int round = 0; round < 2; round++) {
+            final Iterator<CachedFilterCriterion> iterator = filterCriteriaCache.values().iterator();
+            while (iterator.hasNext()) {
+                final CachedFilterCriterion cached = iterator.next();
+                if (cached.referenced) {
+                    cached.referenced = false;
+                } else {
+                    iterator.remove();
+                    return;
+                }
+            }
+        }
+    }
+
+    int getCachedFilterCriteriaCount() {
+        return filterCriteriaCache.size();
+    }
+
 
     public FilterCriterion stringToFilterCriterion(final String s) {
 
@@ -87,4 +154,14 @@ public class ExpressionCriteriaSelectionStrategyFactory implements SelectionStra
 
     }
 
+    private static final class CachedFilterCriterion {
+
+        final FilterCriterion criterion;
+        volatile boolean referenced = false;
+
+        CachedFilterCriterion(final FilterCriterion criterion) {
+            this.criterion = criterion;
+        }
+    }
+
 }
@@ -1,20 +1,32 @@
 package querqy.rewrite.commonrules.select;
 
+import com.jayway.jsonpath.JsonPath;
 import querqy.rewrite.commonrules.model.Instructions;
 
 import java.util.Objects;
 
+/**
+ * A {@link FilterCriterion} that evaluates a JsonPath filter expression against the {@link Instructions}' properties.
+ * The expression is compiled once when the criterion is created. Simple comparisons of a top-level property against a
+ * literal are evaluated directly on the property value (see {@link PropertyComparison}).
+ */
 public class ExpressionFilterCriterion implements FilterCriterion {
 
     private final String expression;
+    private final PropertyComparison propertyComparison;
+    private final JsonPath jsonPath;
 
     public ExpressionFilterCriterion(final String expression) {
         this.expression = expression;
+        propertyComparison = PropertyComparison.fromExpression(expression).orElse(null);
+        jsonPath = propertyComparison == null ? JsonPath.compile(expression) : null;
     }
 
     @Override
     public boolean isValid(final Instructions instructions) {
-        return instructions.getProperties().matches(expression);
+        return propertyComparison != null
+                ? propertyComparison.matches(instructions.getProperties())
+                : instructions.getProperties().matches(jsonPath);
     }
 
     public String getExpression() {
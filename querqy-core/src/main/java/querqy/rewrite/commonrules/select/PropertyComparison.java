@@ -0,0 +1,149 @@
+package querqy.rewrite.commonrules.select;
+
+import querqy.rewrite.commonrules.model.InstructionsProperties;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>A comparison of a single top-level property against a literal, evaluated directly on the property value.</p>
+ *
+ * <p>This covers filter expressions of the form <code>$[?(@.name OP literal)]</code> (or <code>$.[?(...)]</code>),
+ * where OP is one of <code>==, !=, &lt;, &lt;=, &gt;, &gt;=</code> and the literal is a single-quoted string or a
+ * decimal number. The result is the same as evaluating the expression with JsonPath, but without compiling the
+ * expression per request and without allocating a result list per rule.</p>
+ */
+class PropertyComparison {
+
+    private static final Pattern EXPRESSION_PATTERN = Pattern.compile(
+            "^\\$\\.?\\[\\?\\(\\s*@\\.([A-Za-z_][A-Za-z0-9_]*)\\s*(==|!=|<=|>=|<|>)\\s*" +
+                    "('(?:[^'\\\\]|\\\\['\\\\])*'|-?[0-9]+(?:\\.[0-9]+)?)\\s*\\)\\]$");
+
+    private static final int INCOMPARABLE = Integer.MIN_VALUE;
+
+    enum Operator {
+
+        EQ, NE, LT, LE, GT, GE;
+
+        static Operator fromString(final String op) {
+            switch (op) {
+                case "==": return EQ;
+                case "!=": return NE;
+                case "<": return LT;
+                case "<=": return LE;
+                case ">": return GT;
+                case ">=": return GE;
+                default: throw new IllegalArgumentException("Unknown operator: " + op);
+            }
+        }
+    }
+
+    private final String name;
+    private final Operator operator;
+    private final String stringLiteral;
+    private final BigDecimal numberLiteral; // null if the literal is a string that doesn't parse as a number
+    private final boolean literalIsNumber;
+
+    PropertyComparison(final String name, final Operator operator, final String literal,
+                       final boolean literalIsNumber) {
+        this.name = name;
+        this.operator = operator;
+        this.literalIsNumber = literalIsNumber;
+        numberLiteral = toNumber(literal);
+        // JsonPath compares a number literal to a string property using the normalised number string
+        stringLiteral = literalIsNumber ? numberLiteral.toString() : literal;
+    }
+
+    /**
+     * Try to create a PropertyComparison from a JsonPath filter expression.
+     *
+     * @param expression The JsonPath filter expression
+     * @return The comparison or an empty Optional if the expression cannot be evaluated as a direct comparison
+     */
+    static Optional<PropertyComparison> fromExpression(final String expression) {
+        final Matcher matcher = EXPRESSION_PATTERN.matcher(expression);
+        if (!matcher.matches()) {
+            return Optional.empty();
+        }
+
+        final String literal = matcher.group(3);
+        final boolean isString = literal.charAt(0) == '\'';
+
+        return Optional.of(new PropertyComparison(matcher.group(1), Operator.fromString(matcher.group(2)),
+                isString ? unescape(literal.substring(1, literal.length() - 1)) : literal, !isString));
+    }
+
+    boolean matches(final InstructionsProperties properties) {
+        final Object value = properties.getProperty(name).orElse(null);
+        switch (operator) {
+            case EQ: return isEqual(value);
+            case NE: return !isEqual(value);
+            default:
+                final int comparison = compare(value);
+                if (comparison == INCOMPARABLE) {
+                    return false;
+                }
+                switch (operator) {
+                    case LT: return comparison < 0;
+                    case LE: return comparison <= 0;
+                    case GT: return comparison > 0;
+                    case GE: return comparison >= 0;
+                    default: throw new IllegalStateException("Unknown operator: " + operator);
+                }
+        }
+    }
+
+    private boolean isEqual(final Object value) {
+        if (value instanceof String) {
+            return stringLiteral.equals(value);
+        }
+        if (value instanceof Number) {
+            final BigDecimal number = toNumber(value.toString());
+            return number != null && numberLiteral != null && number.compareTo(numberLiteral) == 0;
+        }
+        return false;
+    }
+
+    /**
+     * @return The comparison result, or {@link #INCOMPARABLE} if the value cannot be compared to the literal
+     */
+    private int compare(final Object value) {
+        if (value instanceof String && !literalIsNumber) {
+            return Integer.signum(((String) value).compareTo(stringLiteral));
+        }
+        if (value instanceof Number && literalIsNumber) {
+            final BigDecimal number = toNumber(value.toString());
+            if (number != null) {
+                return number.compareTo(numberLiteral);
+            }
+        }
+        return INCOMPARABLE;
+    }
+
+    private static BigDecimal toNumber(final String s) {
+        try {
+            return new BigDecimal(s);
+        } catch (final NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String unescape(final String s) {
+        if (s.indexOf('\\') < 0) {
+            return s;
+        }
+        final StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0, len = s.length(); i < len; i++) {
+            final char ch = s.charAt(i);
+            if (ch == '\\' && i < len - 1) {
+                sb.append(s.charAt(++i));
+            } else {
+                sb.append(ch);
+            }
+        }
+        return sb.toString();
+    }
+
+}
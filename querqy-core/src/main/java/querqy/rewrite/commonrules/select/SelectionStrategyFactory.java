@@ -2,11 +2,26 @@ package querqy.rewrite.commonrules.select;
 
 import querqy.rewrite.SearchEngineRequestAdapter;
 
+import java.util.Optional;
+import java.util.Set;
+
 public interface SelectionStrategyFactory {
 
     SelectionStrategy DEFAULT_SELECTION_STRATEGY = new ConfigurationOrderSelectionStrategy();
 
     SelectionStrategy createSelectionStrategy(String rewriterId, SearchEngineRequestAdapter searchEngineRequestAdapter);
 
+    /**
+     * Get the names of the request parameters that can change the selection strategy.
+     *
+     * @param rewriterId The id of the rewriter that uses this factory
+     * @return The parameter names or an empty Optional if the strategy depends on anything else than the request
+     * parameters and the configuration (default)
+     * @see querqy.rewrite.RewriterFactory#getCacheKeyRequestParamNames()
+     */
+    default Optional<Set<String>> getCacheKeyRequestParamNames(final String rewriterId) {
+        return Optional.empty();
+    }
+
 
 }
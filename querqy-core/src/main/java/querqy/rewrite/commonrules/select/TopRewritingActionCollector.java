@@ -24,10 +24,14 @@ public abstract class TopRewritingActionCollector {
     }
 
     public TopRewritingActionCollector evaluateBooleanInput() {
-        booleanInputQueryHandler.evaluate().forEach(
-                instructionsFromBooleanInput -> offer(
-                        Collections.singletonList(instructionsFromBooleanInput),
-                        instructions -> new Action(instructions, TermMatches.empty(), 0, 0)));
+        try {
+            for (final Instructions instructionsFromBooleanInput : booleanInputQueryHandler.evaluate()) {
+                offer(Collections.singletonList(instructionsFromBooleanInput),
+                        instructions -> new Action(instructions, TermMatches.empty(), 0, 0));
+            }
+        } finally {
+            booleanInputQueryHandler.release();
+        }
 
         return this;
     }
@@ -50,7 +50,12 @@ public class BooleanInputParser {
             return booleanInputBuilder.addLiteralAndCreateReferenceId(literal);
         };
 
-        return booleanInputBuilder.withPredicate(PredicateBuilder.build(elements, createReferenceIdFunction));
+        // the literal states of larger inputs don't fit into the bit mask that the compiled program evaluates
+        if (PredicateBuilder.countLiterals(elements) > BooleanInput.MAX_LITERALS) {
+            return booleanInputBuilder.withPredicate(PredicateBuilder.build(elements, createReferenceIdFunction));
+        }
+
+        return booleanInputBuilder.withProgram(PredicateBuilder.compile(elements, createReferenceIdFunction));
     }
 
     public List<BooleanInputElement> parseInputStringToElements(final String booleanInputString) {
@@ -2,38 +2,177 @@ package querqy.rewrite.commonrules.select.booleaninput;
 
 import querqy.rewrite.commonrules.model.Instructions;
 import querqy.rewrite.commonrules.select.booleaninput.model.BooleanInput;
-import querqy.rewrite.commonrules.select.booleaninput.model.BooleanInputEvaluator;
 import querqy.rewrite.commonrules.select.booleaninput.model.BooleanInputLiteral;
+import querqy.rewrite.commonrules.select.booleaninput.model.Reference;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Optional;
-import java.util.stream.Stream;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
+/**
+ * <p>Collects the literals that were found in a query and evaluates the boolean inputs that reference them.</p>
+ *
+ * <p>The states of the literals are kept as a bit mask per boolean input, or as a boolean array for the rare boolean
+ * inputs that have more literals than fit into a bit mask (see {@link BooleanInput#MAX_LITERALS}). The masks are held in a table that is reused
+ * by all handlers of a thread. A handler takes the table when it is notified about the first literal and it hands it
+ * back in {@link #release()}. If the table of the thread is still taken by another handler, the handler uses a table
+ * of its own.</p>
+ *
+ * <p>The table only references its handler weakly. If a handler is discarded without being released, for example,
+ * because rewriting failed, the table is cleared and taken over by the next handler of the thread.</p>
+ */
 public class BooleanInputQueryHandler {
 
-    private Map<BooleanInput, BooleanInputEvaluator> evaluatorMap = null;
+    private static final ThreadLocal<State> THREAD_STATE = ThreadLocal.withInitial(State::new);
+
+    private State state = null;
 
     public void notifyLiteral(final BooleanInputLiteral literal) {
-        if (this.evaluatorMap == null) {
-            this.evaluatorMap = new HashMap<>();
+        if (state == null) {
+            state = acquireState();
+        }
+
+        final List<Reference> references = literal.getReferences();
+        for (int i = 0, len = references.size(); i < len; i++) {
+            final Reference reference = references.get(i);
+            state.set(reference.getBooleanInput(), reference.getReferenceId());
+        }
+    }
+
+    /**
+     * Evaluate the boolean inputs that reference at least one of the literals that were notified so far.
+     *
+     * @return The instructions of the matching boolean inputs in the order in which their literals were notified.
+     */
+    public List<Instructions> evaluate() {
+        if (state == null || state.size == 0) {
+            return Collections.emptyList();
+        }
+
+        List<Instructions> instructions = null;
+
+        for (int i = 0; i < state.size; i++) {
+            final int slot = state.slots[i];
+            final BooleanInput booleanInput = state.keys[slot];
+            final boolean matches = booleanInput.isEvaluatedFromBitMask()
+                    ? booleanInput.evaluate(state.masks[slot])
+                    : booleanInput.evaluate(state.literalStates[slot]);
+            if (matches) {
+                if (instructions == null) {
+                    instructions = new ArrayList<>();
+                }
+                instructions.add(booleanInput.getInstructions());
+            }
         }
 
-        literal.getReferences().forEach(
-                reference -> evaluatorMap
-                        .computeIfAbsent(reference.getBooleanInput(),
-                                key -> reference.getBooleanInput().createEvaluator())
-                        .notify(reference.getReferenceId()));
+        return instructions == null ? Collections.emptyList() : instructions;
     }
 
-    public Stream<Instructions> evaluate() {
-        if (evaluatorMap == null) {
-            return Stream.empty();
+    /**
+     * Clear the notified literals and hand back the table to the thread.
+     */
+    public void release() {
+        if (state != null) {
+            state.clear();
+            state.owner.clear();
+            state.owner = null;
+            state = null;
+        }
+    }
+
+    private State acquireState() {
+        final State threadState = THREAD_STATE.get();
+        final State acquired;
+        if (threadState.owner == null) {
+            acquired = threadState;
+        } else if (threadState.owner.get() == null) {
+            // the previous owner was never released
+            threadState.clear();
+            acquired = threadState;
         } else {
-            return evaluatorMap.values().stream()
-                    .map(BooleanInputEvaluator::evaluate)
-                    .filter(Optional::isPresent)
-                    .map(Optional::get);
+            acquired = new State();
+        }
+        acquired.owner = new WeakReference<>(this);
+        return acquired;
+    }
+
+    /**
+     * An open-addressing identity map from boolean inputs to the bit masks (or boolean arrays) of their literals.
+     */
+    static class State {
+
+        private static final int INITIAL_CAPACITY = 16;
+
+        WeakReference<BooleanInputQueryHandler> owner = null;
+
+        BooleanInput[] keys = new BooleanInput[INITIAL_CAPACITY];
+        long[] masks = new long[INITIAL_CAPACITY];
+        // only used for boolean inputs that can't be evaluated from a bit mask
+        boolean[][] literalStates = new boolean[INITIAL_CAPACITY][];
+        // the used slots in the order of insertion
+        int[] slots = new int[INITIAL_CAPACITY / 2];
+        int size = 0;
+
+        void set(final BooleanInput booleanInput, final int referenceId) {
+            int slot = findSlot(keys, booleanInput);
+            if (keys[slot] == null) {
+                if (size == slots.length) {
+                    grow();
+                    slot = findSlot(keys, booleanInput);
+                }
+                keys[slot] = booleanInput;
+                slots[size++] = slot;
+            }
+            if (booleanInput.isEvaluatedFromBitMask()) {
+                masks[slot] |= 1L << referenceId;
+            } else {
+                if (literalStates[slot] == null) {
+                    literalStates[slot] = new boolean[booleanInput.getNumberOfLiterals()];
+                }
+                literalStates[slot][referenceId] = true;
+            }
+        }
+
+        void clear() {
+            for (int i = 0; i < size; i++) {
+                final int slot = slots[i];
+                keys[slot] = null;
+                masks[slot] = 0L;
+                literalStates[slot] = null;
+            }
+            size = 0;
+        }
+
+        private void grow() {
+            final BooleanInput[] newKeys = new BooleanInput[keys.length * 2];
+            final long[] newMasks = new long[newKeys.length];
+            final boolean[][] newLiteralStates = new boolean[newKeys.length][];
+            final int[] newSlots = new int[newKeys.length / 2];
+
+            for (int i = 0; i < size; i++) {
+                final int slot = slots[i];
+                final int newSlot = findSlot(newKeys, keys[slot]);
+                newKeys[newSlot] = keys[slot];
+                newMasks[newSlot] = masks[slot];
+                newLiteralStates[newSlot] = literalStates[slot];
+                newSlots[i] = newSlot;
+            }
+
+            keys = newKeys;
+            masks = newMasks;
+            literalStates = newLiteralStates;
+            slots = newSlots;
+        }
+
+        private static int findSlot(final BooleanInput[] keys, final BooleanInput booleanInput) {
+            final int h = booleanInput.hashCode();
+            final int bitmask = keys.length - 1;
+            int slot = (h ^ (h >>> 16)) & bitmask;
+            while (keys[slot] != null && keys[slot] != booleanInput) {
+                slot = (slot + 1) & bitmask;
+            }
+            return slot;
         }
     }
 }
@@ -1,5 +1,6 @@
 package querqy.rewrite.commonrules.select.booleaninput;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Predicate;
 import java.util.function.ToIntFunction;
@@ -8,6 +9,7 @@ import java.util.stream.Collectors;
 import querqy.rewrite.commonrules.RuleParseException;
 import querqy.rewrite.commonrules.select.booleaninput.model.BooleanInputElement;
 import querqy.rewrite.commonrules.select.booleaninput.model.BooleanInputElement.Type;
+import querqy.rewrite.commonrules.select.booleaninput.model.BooleanInputProgram;
 
 public class PredicateBuilder {
 
@@ -37,6 +39,42 @@ public class PredicateBuilder {
         return new PredicateBuilder(elements, createReferenceIdFunction).build();
     }
 
+    /**
+     * Compile the boolean input elements into a postfix program. The program can only evaluate boolean inputs with up
+     * to {@link querqy.rewrite.commonrules.select.booleaninput.model.BooleanInput#MAX_LITERALS} literals, use
+     * {@link #build(List, ToIntFunction)} for larger inputs. Reference IDs are created for the literals from left
+     * to right.
+     *
+     * @param elements The elements of the boolean input
+     * @param createReferenceIdFunction Creates the reference ID for the terms of a literal
+     * @return The compiled program
+     * @throws RuleParseException if the elements do not form a valid boolean input
+     */
+    public static BooleanInputProgram compile(final List<BooleanInputElement> elements,
+                                              final ToIntFunction<List<String>> createReferenceIdFunction)
+            throws RuleParseException {
+        return new PredicateBuilder(elements, createReferenceIdFunction).compile();
+    }
+
+    /**
+     * Count the literals of a boolean input, which is the number of reference IDs that {@link #build()} and
+     * {@link #compile()} will create.
+     *
+     * @param elements The elements of the boolean input
+     * @return The number of literals
+     */
+    public static int countLiterals(final List<BooleanInputElement> elements) {
+        int count = 0;
+        Type previousType = null;
+        for (final BooleanInputElement element : elements) {
+            // a sequence of terms forms a single literal
+            if (element.type == Type.TERM && previousType != Type.TERM) {
+                count++;
+            }
+            previousType = element.type;
+        }
+        return count;
+    }
 
     public Predicate<boolean[]> build() throws RuleParseException {
         switch (nextHighestPriorityElement.type) {
@@ -69,6 +107,44 @@ public class PredicateBuilder {
         }
     }
 
+    public BooleanInputProgram compile() throws RuleParseException {
+        final List<Integer> code = new ArrayList<>();
+        emit(code);
+        return new BooleanInputProgram(code.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    protected void emit(final List<Integer> code) throws RuleParseException {
+        switch (nextHighestPriorityElement.type) {
+            case AND:
+            case OR:
+                new PredicateBuilder(elements.subList(0, indexOfNextHighestPriorityElement), createReferenceIdFunction)
+                        .emit(code);
+
+                new PredicateBuilder(elements.subList(indexOfNextHighestPriorityElement + 1, elements.size()),
+                        createReferenceIdFunction).emit(code);
+
+                code.add(nextHighestPriorityElement.type == Type.AND
+                        ? BooleanInputProgram.AND : BooleanInputProgram.OR);
+                break;
+
+            case NOT:
+                new PredicateBuilder(elements.subList(1, elements.size()), createReferenceIdFunction).emit(code);
+                code.add(BooleanInputProgram.NOT);
+                break;
+
+            case TERM:
+                final List<String> terms = elements.stream().map(element -> element.term).collect(Collectors.toList());
+                code.add(createReferenceIdFunction.applyAsInt(terms));
+                break;
+
+            default:
+                // should not happen
+                throw new RuleParseException(
+                        String.format("Something unexpected happened while parsing a boolean input string: %s",
+                                elements));
+        }
+    }
+
     private List<BooleanInputElement> removeEncapsulatingParentheses(List<BooleanInputElement> elements) {
         while (elements.size() >= 2 &&
                 elements.get(0).type == Type.LEFT_PARENTHESIS &&
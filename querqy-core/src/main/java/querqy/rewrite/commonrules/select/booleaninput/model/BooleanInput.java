@@ -6,14 +6,30 @@ import querqy.rewrite.commonrules.model.Instructions;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.LongPredicate;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 public class BooleanInput {
 
+    /**
+     * Boolean inputs with up to this number of literals are evaluated from a bit mask, in which the states of the
+     * literals are kept in the bits of a long (see {@link #evaluate(long)}). Larger inputs are evaluated from an array
+     * of literal states (see {@link #evaluate(boolean[])}).
+     */
+    public static final int MAX_LITERALS = 64;
+
+    /**
+     * Boolean inputs with up to this number of literals are evaluated from a truth table that fits into a long.
+     */
+    public static final int MAX_TRUTH_TABLE_LITERALS = 6;
+
     private final String booleanInputString;
 
     private final List<BooleanInputLiteral> literals;
+    private final long truthTable;
+    private final LongPredicate evaluator;
+    // only set if there are more than MAX_LITERALS literals
     private final Predicate<boolean[]> predicate;
     private final Instructions instructions;
 
@@ -22,6 +38,7 @@ public class BooleanInput {
     private BooleanInput(
             final String booleanInputString,
             final List<BooleanInputLiteral> literals,
+            final LongPredicate evaluator,
             final Predicate<boolean[]> predicate,
             final Instructions instructions) {
 
@@ -31,14 +48,70 @@ public class BooleanInput {
         }
         this.booleanInputString = booleanInputString;
         this.literals = literals;
-        this.predicate = predicate;
         this.instructions = instructions;
 
+        this.predicate = predicate;
+
+        if (predicate != null) {
+            this.truthTable = 0L;
+            this.evaluator = null;
+        } else if (literals.size() <= MAX_TRUTH_TABLE_LITERALS) {
+            long table = 0L;
+            for (int mask = 0, len = 1 << literals.size(); mask < len; mask++) {
+                if (evaluator.test(mask)) {
+                    table |= 1L << mask;
+                }
+            }
+            this.truthTable = table;
+            this.evaluator = null;
+        } else {
+            this.truthTable = 0L;
+            this.evaluator = evaluator;
+        }
+
         this.cachedHashCode = Objects.hash(this.booleanInputString, this.instructions);
     }
 
-    public BooleanInputEvaluator createEvaluator() {
-        return new BooleanInputEvaluator(this.literals.size(), this.predicate, this.instructions);
+    /**
+     * Evaluate this boolean input. Only boolean inputs that are {@link #isEvaluatedFromBitMask()} can be evaluated from
+     * a bit mask.
+     *
+     * @param literals A bit mask in which bit <i>i</i> is set if the literal with the reference ID <i>i</i> was found
+     *                 in the query
+     * @return true if the boolean input matches
+     */
+    public boolean evaluate(final long literals) {
+        if (predicate != null) {
+            throw new IllegalStateException("Boolean input has more than " + MAX_LITERALS + " literals: "
+                    + booleanInputString);
+        }
+        return evaluator == null ? ((truthTable >>> literals) & 1L) == 1L : evaluator.test(literals);
+    }
+
+    /**
+     * Evaluate this boolean input.
+     *
+     * @param literals Element <i>i</i> is true if the literal with the reference ID <i>i</i> was found in the query
+     * @return true if the boolean input matches
+     */
+    public boolean evaluate(final boolean[] literals) {
+        return predicate != null ? predicate.test(literals) : evaluate(BooleanInputProgram.toMask(literals));
+    }
+
+    /**
+     * @return true iff this boolean input has at most {@link #MAX_LITERALS} literals and can be evaluated using
+     * {@link #evaluate(long)}
+     */
+    public boolean isEvaluatedFromBitMask() {
+        return predicate == null;
+    }
+
+    public Instructions getInstructions() {
+        return instructions;
+    }
+
+    public int getNumberOfLiterals() {
+        return literals.size();
     }
 
     @Override
@@ -64,6 +137,7 @@ public class BooleanInput {
         private final String booleanInputString;
         private Instructions instructions;
         private Predicate<boolean[]> predicate;
+        private BooleanInputProgram program;
 
         private BooleanInputBuilder(final String booleanInputString) {
             if (booleanInputString == null) {
@@ -78,25 +152,56 @@ public class BooleanInput {
             return referenceId;
         }
 
+        public int getNumberOfLiterals() {
+            return this.references.size();
+        }
+
         public BooleanInputBuilder withPredicate(final Predicate<boolean[]> predicate) {
             this.predicate = predicate;
             return this;
         }
 
+        public BooleanInputBuilder withProgram(final BooleanInputProgram program) {
+            this.program = program;
+            return this;
+        }
+
         public BooleanInputBuilder withInstructions(final Instructions instructions) {
             this.instructions = instructions;
             return this;
         }
 
         public BooleanInput build() {
-            final BooleanInput booleanInput = new BooleanInput(booleanInputString, getLiterals(), predicate,
-                    instructions);
+            final int numberOfLiterals = references.size();
+            final BooleanInput booleanInput;
+            if (numberOfLiterals > MAX_LITERALS) {
+                if (predicate == null) {
+                    throw new IllegalStateException("Boolean inputs with more than " + MAX_LITERALS
+                            + " literals require a predicate: " + booleanInputString);
+                }
+                booleanInput = new BooleanInput(booleanInputString, getLiterals(), null, predicate, instructions);
+            } else {
+                booleanInput = new BooleanInput(booleanInputString, getLiterals(), createEvaluator(numberOfLiterals),
+                        null, instructions);
+            }
 
             references.forEach(reference -> reference.setBooleanInput(booleanInput));
 
             return booleanInput;
         }
 
+        private LongPredicate createEvaluator(final int numberOfLiterals) {
+            final LongPredicate evaluator;
+            if (program != null) {
+                evaluator = program::evaluate;
+            } else if (predicate != null) {
+                evaluator = literals -> predicate.test(BooleanInputProgram.toBooleans(literals, numberOfLiterals));
+            } else {
+                throw new IllegalStateException("Either a program or a predicate must be set: " + booleanInputString);
+            }
+            return evaluator;
+        }
+
         private List<BooleanInputLiteral> getLiterals() {
             return references.stream().map(Reference::getLiteral).collect(Collectors.toList());
         }
@@ -0,0 +1,82 @@
+package querqy.rewrite.commonrules.select.booleaninput.model;
+
+import java.util.Arrays;
+
+/**
+ * <p>A boolean input expression compiled into a postfix program.</p>
+ *
+ * <p>The program is evaluated against a bit mask in which bit <i>i</i> is set if the literal with the reference ID
+ * <i>i</i> was found in the query. The operand stack of the evaluation is a long, too, so that the evaluation doesn't
+ * allocate any memory. This limits the number of literals of a boolean input to {@value BooleanInput#MAX_LITERALS}.</p>
+ */
+public class BooleanInputProgram {
+
+    public static final int AND = -1;
+    public static final int OR = -2;
+    public static final int NOT = -3;
+
+    private final int[] code;
+
+    /**
+     * @param code The postfix code. Non-negative values push the state of the literal with this reference ID,
+     *             {@link #AND}, {@link #OR} and {@link #NOT} are the operators.
+     */
+    public BooleanInputProgram(final int[] code) {
+        if (code.length == 0) {
+            throw new IllegalArgumentException("code must not be empty");
+        }
+        this.code = code;
+    }
+
+    public boolean evaluate(final long literals) {
+
+        long stack = 0L;
+
+        for (final int op : code) {
+            switch (op) {
+                case AND: {
+                    final long right = stack & 1L;
+                    stack >>>= 1;
+                    stack &= ~1L | right;
+                    break;
+                }
+                case OR: {
+                    final long right = stack & 1L;
+                    stack >>>= 1;
+                    stack |= right;
+                    break;
+                }
+                case NOT:
+                    stack ^= 1L;
+                    break;
+                default:
+                    stack = (stack << 1) | ((literals >>> op) & 1L);
+            }
+        }
+
+        return (stack & 1L) == 1L;
+    }
+
+    public static long toMask(final boolean[] booleans) {
+        long mask = 0L;
+        for (int i = 0, len = Math.min(booleans.length, BooleanInput.MAX_LITERALS); i < len; i++) {
+            if (booleans[i]) {
+                mask |= 1L << i;
+            }
+        }
+        return mask;
+    }
+
+    public static boolean[] toBooleans(final long mask, final int numberOfLiterals) {
+        final boolean[] booleans = new boolean[numberOfLiterals];
+        for (int i = 0; i < numberOfLiterals; i++) {
+            booleans[i] = ((mask >>> i) & 1L) == 1L;
+        }
+        return booleans;
+    }
+
+    @Override
+    public String toString() {
+        return "BooleanInputProgram{code=" + Arrays.toString(code) + "}";
+    }
+}
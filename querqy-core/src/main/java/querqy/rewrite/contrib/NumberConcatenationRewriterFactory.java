@@ -6,6 +6,8 @@ import querqy.rewrite.QueryRewriter;
 import querqy.rewrite.RewriterFactory;
 import querqy.rewrite.SearchEngineRequestAdapter;
 
+import java.util.Collections;
+import java.util.Optional;
 import java.util.Set;
 
 /**
@@ -40,6 +42,11 @@ public class NumberConcatenationRewriterFactory extends RewriterFactory {
         return new NumberConcatenationRewriter(acceptGeneratedTerms, minimumLengthOfResultingQueryTerm);
     }
 
+    @Override
+    public Optional<Set<String>> getCacheKeyRequestParamNames() {
+        return Optional.of(Collections.emptySet());
+    }
+
     @Override
     public Set<Term> getCacheableGenerableTerms() {
         return QueryRewriter.EMPTY_GENERABLE_TERMS;
@@ -12,7 +12,9 @@ import querqy.trie.State;
 import querqy.trie.TrieMap;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 
 public class NumberUnitRewriterFactory extends RewriterFactory {
@@ -61,6 +63,11 @@ public class NumberUnitRewriterFactory extends RewriterFactory {
         return new NumberUnitRewriter(numberUnitMap, numberUnitQueryCreator);
     }
 
+    @Override
+    public Optional<Set<String>> getCacheKeyRequestParamNames() {
+        return Optional.of(Collections.emptySet());
+    }
+
     @Override
     public Set<Term> getCacheableGenerableTerms() {
         return QueryRewriter.EMPTY_GENERABLE_TERMS;
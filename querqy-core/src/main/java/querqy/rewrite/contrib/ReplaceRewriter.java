@@ -15,6 +15,7 @@ import querqy.model.Term;
 import querqy.rewrite.QueryRewriter;
 import querqy.rewrite.SearchEngineRequestAdapter;
 import querqy.rewrite.contrib.replace.ReplaceInstruction;
+import querqy.rewrite.contrib.replace.TokenSequence;
 import querqy.trie.LookupUtils;
 import querqy.trie.SequenceLookup;
 import querqy.trie.model.ExactMatch;
@@ -23,7 +24,6 @@ import querqy.trie.model.SuffixMatch;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
 import java.util.List;
 
 public class ReplaceRewriter extends AbstractNodeVisitor<Node> implements QueryRewriter {
@@ -35,7 +35,7 @@ public class ReplaceRewriter extends AbstractNodeVisitor<Node> implements QueryR
     }
 
     private boolean hasReplacement = false;
-    private LinkedList<CharSequence> collectedTerms;
+    private TokenSequence collectedTerms;
     protected SearchEngineRequestAdapter searchEngineRequestAdapter;
 
     @Override
@@ -48,7 +48,7 @@ public class ReplaceRewriter extends AbstractNodeVisitor<Node> implements QueryR
             return RewriterOutput.builder().expandedQuery(expandedQuery).build();
         }
 
-        collectedTerms = new LinkedList<>();
+        collectedTerms = new TokenSequence();
         this.searchEngineRequestAdapter = searchEngineRequestAdapter;
 
         visit((Query) querqyQuery);
@@ -156,7 +156,8 @@ public class ReplaceRewriter extends AbstractNodeVisitor<Node> implements QueryR
     @Override
     public Node visit(final Term term) {
         if (!term.isGenerated()) {
-            collectedTerms.addLast(term);
+            // collect the value, which can be a LowerCaseCharSequence that doesn't have to be lower-cased again
+            collectedTerms.add(term.getValue());
         }
         return null;
     }
@@ -11,6 +11,8 @@ import querqy.trie.SequenceLookup;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.Collections;
+import java.util.Optional;
 import java.util.Set;
 
 public class ReplaceRewriterFactory extends RewriterFactory {
@@ -33,6 +35,11 @@ public class ReplaceRewriterFactory extends RewriterFactory {
         return new ReplaceRewriter(sequenceLookup);
     }
 
+    @Override
+    public Optional<Set<String>> getCacheKeyRequestParamNames() {
+        return Optional.of(Collections.emptySet());
+    }
+
     @Override
     public Set<Term> getCacheableGenerableTerms() {
         return QueryRewriter.EMPTY_GENERABLE_TERMS;
@@ -51,30 +51,34 @@ public abstract class ReplaceInstruction {
                                        final int exclusiveOffset, List<? extends CharSequence> replacementTerms,
                                        final List<ActionLog> actionLogs,
                                        final MatchLog.MatchType matchType) {
+        if (actionLogs == null) {
+            // remove the range in one step, this is a single offset-based edit for a TokenSequence
+            seq.subList(start, start + exclusiveOffset).clear();
+            return;
+        }
+
         final List<CharSequence> removedTerms = IntStream.range(0, exclusiveOffset)
                 .mapToObj(i -> seq.remove(start)).collect(Collectors.toList());
 
         final String removedTermsInfo = String.join(" ", removedTerms);
         final String replacementTermsInfo = String.join(" ", replacementTerms);
 
-        if (actionLogs != null) {
-            actionLogs.add(
-                    ActionLog.builder()
-                            .message(String.format("%s => %s", removedTermsInfo, replacementTermsInfo))
-                            .match(
-                                    MatchLog.builder()
-                                            .type(matchType)
-                                            .term(removedTermsInfo)
-                                            .build()
-                            )
-                            .instructions(List.of(
-                                    InstructionLog.builder()
-                                            .type("replace")
-                                            .value(replacementTermsInfo)
-                                            .build()
-                            ))
-                            .build()
-            );
-        }
+        actionLogs.add(
+                ActionLog.builder()
+                        .message(String.format("%s => %s", removedTermsInfo, replacementTermsInfo))
+                        .match(
+                                MatchLog.builder()
+                                        .type(matchType)
+                                        .term(removedTermsInfo)
+                                        .build()
+                        )
+                        .instructions(List.of(
+                                InstructionLog.builder()
+                                        .type("replace")
+                                        .value(replacementTermsInfo)
+                                        .build()
+                        ))
+                        .build()
+        );
     }
 }
@@ -0,0 +1,133 @@
+package querqy.rewrite.contrib.replace;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * <p>An array-backed sequence of tokens that is optimized for the edits of the {@link ReplaceInstruction}s.</p>
+ *
+ * <p>The tokens are kept in a gap buffer: insertions and removals happen at the gap, which is moved to the offset of
+ * the edit first. Moving the gap costs the distance between the old and the new offset. The ReplaceRewriter applies
+ * its matches in order of decreasing offset, which means that the gap only moves towards the start of the sequence
+ * and all edits of a query cost O(n) in total. Removing or inserting tokens at the same offset repeatedly costs O(1)
+ * per token. In contrast, a LinkedList has to walk to the offset for each single removal or insertion.</p>
+ *
+ * <p>Reading a token by its index costs O(1).</p>
+ */
+public class TokenSequence extends AbstractList<CharSequence> implements RandomAccess {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private CharSequence[] buffer;
+    private int gapStart;
+    private int gapEnd;
+
+    public TokenSequence() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TokenSequence(final int initialCapacity) {
+        buffer = new CharSequence[Math.max(initialCapacity, 1)];
+        gapStart = 0;
+        gapEnd = buffer.length;
+    }
+
+    @Override
+    public CharSequence get(final int index) {
+        checkIndex(index, size());
+        return buffer[index < gapStart ? index : index + gapEnd - gapStart];
+    }
+
+    @Override
+    public CharSequence set(final int index, final CharSequence token) {
+        checkIndex(index, size());
+        final int pos = index < gapStart ? index : index + gapEnd - gapStart;
+        final CharSequence previous = buffer[pos];
+        buffer[pos] = token;
+        return previous;
+    }
+
+    @Override
+    public void add(final int index, final CharSequence token) {
+        if (index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        if (gapStart == gapEnd) {
+            grow(1);
+        }
+        moveGap(index);
+        buffer[gapStart++] = token;
+        modCount++;
+    }
+
+    @Override
+    public CharSequence remove(final int index) {
+        checkIndex(index, size());
+        moveGap(index);
+        final CharSequence removed = buffer[gapEnd];
+        buffer[gapEnd++] = null;
+        modCount++;
+        return removed;
+    }
+
+    @Override
+    protected void removeRange(final int fromIndex, final int toIndex) {
+        if (fromIndex < toIndex) {
+            moveGap(fromIndex);
+            final int newGapEnd = gapEnd + toIndex - fromIndex;
+            Arrays.fill(buffer, gapEnd, newGapEnd, null);
+            gapEnd = newGapEnd;
+            modCount++;
+        }
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(buffer, null);
+        gapStart = 0;
+        gapEnd = buffer.length;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return buffer.length - (gapEnd - gapStart);
+    }
+
+    private void moveGap(final int index) {
+        if (index == gapStart) {
+            return;
+        }
+        final int gapLength = gapEnd - gapStart;
+        if (index < gapStart) {
+            // move the tokens between index and the gap behind the gap
+            System.arraycopy(buffer, index, buffer, index + gapLength, gapStart - index);
+            // only release the slots that were vacated, the rest of the gap is empty already
+            Arrays.fill(buffer, index, Math.min(gapStart, index + gapLength), null);
+        } else {
+            // move the tokens between the gap and index in front of the gap
+            System.arraycopy(buffer, gapEnd, buffer, gapStart, index - gapStart);
+            Arrays.fill(buffer, Math.max(gapEnd, index), index + gapLength, null);
+        }
+        gapStart = index;
+        gapEnd = index + gapLength;
+    }
+
+    private void grow(final int minGapLength) {
+        final int size = size();
+        final int newCapacity = Math.max(buffer.length * 2, size + minGapLength);
+        final CharSequence[] newBuffer = new CharSequence[newCapacity];
+        final int tailLength = buffer.length - gapEnd;
+        System.arraycopy(buffer, 0, newBuffer, 0, gapStart);
+        System.arraycopy(buffer, gapEnd, newBuffer, newCapacity - tailLength, tailLength);
+        gapEnd = newCapacity - tailLength;
+        buffer = newBuffer;
+    }
+
+    private static void checkIndex(final int index, final int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
@@ -8,32 +8,64 @@ import java.util.Objects;
 public class RewriteChainLog {
 
     private final List<RewriteLogEntry> rewriteChain;
+    private final List<String> truncatedRewriters;
+    private final List<String> skippedRewriters;
 
-    private RewriteChainLog(final List<RewriteLogEntry> rewriteChain) {
+    private RewriteChainLog(final List<RewriteLogEntry> rewriteChain, final List<String> truncatedRewriters,
+                            final List<String> skippedRewriters) {
         this.rewriteChain = rewriteChain;
+        this.truncatedRewriters = truncatedRewriters;
+        this.skippedRewriters = skippedRewriters;
     }
 
     public List<RewriteLogEntry> getRewriteChain() {
         return rewriteChain;
     }
 
+    /**
+     * @return The ids of the rewriters that stopped adding optional rewrites because the
+     * {@link querqy.rewrite.RewriteBudget} was exhausted
+     */
+    public List<String> getTruncatedRewriters() {
+        return truncatedRewriters;
+    }
+
+    /**
+     * @return The ids of the rewriters that were not applied because the {@link querqy.rewrite.RewriteBudget} was
+     * exhausted
+     */
+    public List<String> getSkippedRewriters() {
+        return skippedRewriters;
+    }
+
+    /**
+     * @return true if rewriting was degraded because the {@link querqy.rewrite.RewriteBudget} was exhausted
+     */
+    public boolean hasDegradedRewriting() {
+        return !truncatedRewriters.isEmpty() || !skippedRewriters.isEmpty();
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         RewriteChainLog that = (RewriteChainLog) o;
-        return Objects.equals(rewriteChain, that.rewriteChain);
+        return Objects.equals(rewriteChain, that.rewriteChain)
+                && Objects.equals(truncatedRewriters, that.truncatedRewriters)
+                && Objects.equals(skippedRewriters, that.skippedRewriters);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(rewriteChain);
+        return Objects.hash(rewriteChain, truncatedRewriters, skippedRewriters);
     }
 
     @Override
     public String toString() {
         return "RewriteChainLog{" +
                 "rewriteChain=" + rewriteChain +
+                ", truncatedRewriters=" + truncatedRewriters +
+                ", skippedRewriters=" + skippedRewriters +
                 '}';
     }
 
@@ -84,6 +116,8 @@ public class RewriteChainLog {
     public static class RewriteChainLogBuilder {
 
         private final List<RewriteLogEntry> rewriteChain = new LinkedList<>();
+        private final List<String> truncatedRewriters = new LinkedList<>();
+        private final List<String> skippedRewriters = new LinkedList<>();
 
         public RewriteChainLogBuilder add(final String rewriterId) {
             return add(rewriterId, Collections.emptyList());
@@ -94,8 +128,18 @@ public class RewriteChainLog {
             return this;
         }
 
+        public RewriteChainLogBuilder truncated(final String rewriterId) {
+            truncatedRewriters.add(rewriterId);
+            return this;
+        }
+
+        public RewriteChainLogBuilder skipped(final String rewriterId) {
+            skippedRewriters.add(rewriterId);
+            return this;
+        }
+
         public RewriteChainLog build() {
-            return new RewriteChainLog(rewriteChain);
+            return new RewriteChainLog(rewriteChain, truncatedRewriters, skippedRewriters);
         }
     }
 
@@ -0,0 +1,116 @@
+package querqy.rewrite.logging;
+
+import querqy.model.AbstractNodeVisitor;
+import querqy.model.QuerqyQuery;
+import querqy.model.Term;
+
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * <p>Decides for which requests a rewriter creates detailed rewrite logs ({@link ActionLog}s etc.).</p>
+ *
+ * <p>Detailed logs are expensive to build. A sampler with a rate of N only creates them for 1 in N requests so that
+ * rewrite logging can stay switched on for production traffic. In {@link Mode#RANDOM} mode each request is sampled with
+ * a probability of 1/N. In {@link Mode#QUERY} mode the decision is based on a hash of the user query terms: a query is
+ * either always or never sampled, which is useful to follow single queries over time.</p>
+ */
+public class RewriteLoggingSampler {
+
+    public enum Mode {
+
+        RANDOM, QUERY;
+
+        public static Mode fromString(final String str) {
+            try {
+                return Mode.valueOf(str.trim().toUpperCase(Locale.ROOT));
+            } catch (final IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown sampling mode: " + str);
+            }
+        }
+    }
+
+    /**
+     * The sampler that samples every request
+     */
+    public static final RewriteLoggingSampler ALWAYS = new RewriteLoggingSampler(Mode.RANDOM, 1);
+
+    private final Mode mode;
+    private final int rate;
+
+    private RewriteLoggingSampler(final Mode mode, final int rate) {
+        this.mode = mode;
+        this.rate = rate;
+    }
+
+    /**
+     * @param mode The sampling mode
+     * @param rate Sample 1 in rate requests
+     * @return The sampler
+     */
+    public static RewriteLoggingSampler of(final Mode mode, final int rate) {
+        if (mode == null) {
+            throw new IllegalArgumentException("mode must not be null");
+        }
+        if (rate < 1) {
+            throw new IllegalArgumentException("rate must be > 0");
+        }
+        return rate == 1 ? ALWAYS : new RewriteLoggingSampler(mode, rate);
+    }
+
+    /**
+     * @param userQuery The user query of the request
+     * @return true iff detailed rewrite logs should be created for the request
+     */
+    public boolean isSampled(final QuerqyQuery<?> userQuery) {
+        if (rate == 1) {
+            return true;
+        }
+        if (mode == Mode.RANDOM) {
+            return ThreadLocalRandom.current().nextInt(rate) == 0;
+        }
+        final QueryHash queryHash = new QueryHash();
+        userQuery.accept(queryHash);
+        return Math.floorMod(mix(queryHash.hash), rate) == 0;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getRate() {
+        return rate;
+    }
+
+    // spread the bits of the String-style hash so that the modulo doesn't only depend on the last characters
+    private static int mix(final int hash) {
+        final int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static class QueryHash extends AbstractNodeVisitor<Void> {
+
+        int hash = 0;
+
+        @Override
+        public Void visit(final Term term) {
+            // generated terms depend on the preceding rewriters, only use the terms that the user entered
+            if (!term.isGenerated()) {
+                final CharSequence value = term.getValue();
+                for (int i = 0, len = value.length(); i < len; i++) {
+                    hash = 31 * hash + value.charAt(i);
+                }
+                hash = 31 * hash + ' ';
+            }
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RewriteLoggingSampler{" +
+                "mode=" + mode +
+                ", rate=" + rate +
+                '}';
+    }
+}
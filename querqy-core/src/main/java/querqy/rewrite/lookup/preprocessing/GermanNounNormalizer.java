@@ -1,12 +1,11 @@
 package querqy.rewrite.lookup.preprocessing;
 
 import querqy.CompoundCharSequence;
-import querqy.trie.State;
-import querqy.trie.TrieMap;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -20,80 +19,42 @@ public class GermanNounNormalizer implements LookupPreprocessor {
     static final int MIN_INPUT_LENGTH_TO_STRIP_OFF_S = 5;
 
 
-    private static final String IDENTITY = "";
+    static final String DICTIONARY_RESOURCE = "de-nouns.dict";
+    static final String TEXT_RESOURCE = "de-nouns.txt";
 
-    // TODO it would be nicer to create these maps in a factory and then pass them to the constructor. Let's
-    // review this once we know how we plug Normalizers together.
-    private static final TrieMap<String> MAP = loadTrieMap(false);
+    private final NormalizationDictionary dictionary;
 
-    /**
-     * Keys are reversed in this map to facilitate the lookup by suffixes.
-     */
-    private static final TrieMap<String> REVERSE_MAP = loadTrieMap(true);
-
-    static TrieMap<String> loadTrieMap(final boolean reverseKeys) {
-
-        try(final BufferedReader reader = new BufferedReader(new InputStreamReader(
-                GermanNounNormalizer.class.getClassLoader().getResourceAsStream("de-nouns.txt"), UTF_8))) {
-
-            final TrieMap<String> map = new TrieMap<>();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
-
-                final int comment_pos = line.indexOf('#');
-                if (comment_pos > -1) {
-                    line = line.substring(0, comment_pos).trim();
-                }
-                if (line.length() > 0) {
-                    final String[] parts = line.split(",");
-                    // sg = singular (= canonical form), pl = plural
-                    // some lines might only have one form
-                    final String sg = line.charAt(0) == ',' ? "" : parts[0];
-                    final String pl = line.charAt(line.length() - 1) == ',' ? "" : parts[1];
-
-                    updateMap(sg, pl, map, reverseKeys);
-
-                }
-            }
-
-            return map;
+    public GermanNounNormalizer() {
+        this(DefaultDictionaryHolder.DICTIONARY);
+    }
 
-        } catch (final IOException e) {
-            throw new RuntimeException("Could not load noun list", e);
-        }
+    public GermanNounNormalizer(final NormalizationDictionary dictionary) {
+        this.dictionary = dictionary;
     }
 
     /**
+     * Load the noun list that comes with Querqy. The list is compiled at build time. We only compile it from the text
+     * file if the compiled resource is not available, for example, if the classes were not built by Maven.
      *
-     * @param sg Singular = canonical form if not empty
-     * @param pl Plural
-     * @param map The map to update
-     * @param reverseKeys Reverse mapping keys iff true
+     * @return The dictionary
      */
-    static void updateMap(final String sg, final String pl, final TrieMap<String> map,
-                          final boolean reverseKeys) {
-        final String existingSgMapping = getFromMap(sg, map, reverseKeys);
+    static NormalizationDictionary loadDefaultDictionary() {
 
-        // using != to compare with the IDENTITY constant is what we want
-        if ((sg.length() > 0) && IDENTITY != existingSgMapping) {
-            map.put(reverseKeys ? new ReverseCharSequence(sg) : sg, IDENTITY);
-        }
+        final ClassLoader classLoader = GermanNounNormalizer.class.getClassLoader();
 
-        final String existingPlMapping = getFromMap(pl, map, reverseKeys);
-        if ((pl.length() > 0) && IDENTITY != existingPlMapping) {
-            if (sg.length() > 0) {
-                map.put(reverseKeys ? new ReverseCharSequence(pl) : pl, sg);
-            } else {
-                map.put(reverseKeys ? new ReverseCharSequence(pl) : pl, IDENTITY);
+        try (final InputStream in = classLoader.getResourceAsStream(DICTIONARY_RESOURCE)) {
+            if (in != null) {
+                return NormalizationDictionary.read(in);
             }
+        } catch (final IOException e) {
+            throw new RuntimeException("Could not load noun list", e);
         }
-    }
 
-    static String getFromMap(final CharSequence key, final TrieMap<String> map, final boolean reverseKey) {
-        final State<String> state = map.get(reverseKey ? new ReverseCharSequence(key) : key)
-                .getStateForCompleteSequence();
-        return  state.isFinal() ? state.value : null;
+        try (final Reader reader = new InputStreamReader(classLoader.getResourceAsStream(TEXT_RESOURCE), UTF_8)) {
+            return NormalizationDictionary.compile(reader);
+        } catch (final IOException e) {
+            throw new RuntimeException("Could not load noun list", e);
+        }
     }
 
     /**
@@ -192,30 +153,37 @@ public class GermanNounNormalizer implements LookupPreprocessor {
         final ReverseCharSequence seq = new ReverseCharSequence(input);
         // start at the minBaseWordLength:
         int baseWordPos = -1;
-        State<String> baseWordState = null;
+        int baseWordOrdinal = NormalizationDictionary.NOT_FOUND;
 
         final CharSequence suffix = seq.subSequence(0, minBaseWordLength);
-        State<String> state = REVERSE_MAP.get(suffix).getStateForCompleteSequence();
-        if (state.isFinal()) {
-            baseWordState = state;
+        long range = dictionary.reverseRange();
+        for (int i = 0; i < minBaseWordLength && !NormalizationDictionary.isEmpty(range); i++) {
+            range = dictionary.narrowReverse(range, i, suffix.charAt(i));
+        }
+        int ordinal = dictionary.findReverse(range, minBaseWordLength);
+        if (ordinal != NormalizationDictionary.NOT_FOUND) {
+            baseWordOrdinal = ordinal;
             baseWordPos = minBaseWordLength;
         }
 
         int pos = minBaseWordLength;
-        while (state.isKnown && pos < input.length() - minPrefixLength) {
-            state = state.node.getNext(seq.charAt(pos)).getStateForCompleteSequence();
-            if (state.isFinal()) {
-                baseWordState = state;
+        while (!NormalizationDictionary.isEmpty(range) && pos < input.length() - minPrefixLength) {
+            range = dictionary.narrowReverse(range, pos, seq.charAt(pos));
+            ordinal = dictionary.findReverse(range, pos + 1);
+            if (ordinal != NormalizationDictionary.NOT_FOUND) {
+                baseWordOrdinal = ordinal;
                 baseWordPos = pos;
             }
             pos++;
         }
 
-        if (baseWordState != null) {
-            final CharSequence value = baseWordState.value == IDENTITY
+        if (baseWordOrdinal != NormalizationDictionary.NOT_FOUND) {
+            final int value = dictionary.getValue(baseWordOrdinal);
+            final CharSequence canonical = value == NormalizationDictionary.IDENTITY
                     ? input.subSequence(input.length() - baseWordPos - 1, input.length())
-                    : baseWordState.value;
-            return Optional.of(new CompoundCharSequence(null, input.subSequence(0, input.length() - baseWordPos - 1), value));
+                    : dictionary.getKey(value);
+            return Optional.of(new CompoundCharSequence(null, input.subSequence(0, input.length() - baseWordPos - 1),
+                    canonical));
         }
 
         return Optional.empty();
@@ -223,12 +191,13 @@ public class GermanNounNormalizer implements LookupPreprocessor {
 
 
     protected Optional<CharSequence> lookupInput(final CharSequence input) {
-        final String value = getFromMap(input, MAP, false);
-        if (value != null) {
-            if (IDENTITY == value) {
+        final int ordinal = dictionary.find(input);
+        if (ordinal != NormalizationDictionary.NOT_FOUND) {
+            final int value = dictionary.getValue(ordinal);
+            if (value == NormalizationDictionary.IDENTITY) {
                 return Optional.of(input);
             } else {
-                return Optional.of(value);
+                return Optional.of(dictionary.getKey(value));
             }
         }
         return Optional.empty();
@@ -259,6 +228,9 @@ public class GermanNounNormalizer implements LookupPreprocessor {
         return new GermanNounNormalizer();
     }
 
-
+    // Loads the default noun list lazily (and in a synchronized way)
+    private static class DefaultDictionaryHolder {
+        private static final NormalizationDictionary DICTIONARY = loadDefaultDictionary();
+    }
 
 }
@@ -1,11 +1,19 @@
 package querqy.rewrite.lookup.preprocessing;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 public class LookupPreprocessorFactory {
 
     private static final LookupPreprocessor IDENTITY_PREPROCESSOR = charSequence -> charSequence;
 
     private static final LookupPreprocessor LOWERCASE_PREPROCESSOR = LowerCasePreprocessor.create();
 
+    private static final Map<String, LookupPreprocessor> REGISTERED_PREPROCESSORS = new ConcurrentHashMap<>();
+
     public static LookupPreprocessor identity() {
         return IDENTITY_PREPROCESSOR;
     }
@@ -32,7 +40,75 @@ public class LookupPreprocessorFactory {
 
     }
 
-    // This wrapper makes sure the maps in the GermanNounNormalizer are loaded lazily (and in a synchronized way)
+    /**
+     * Get a preprocessor by the name of a {@link LookupPreprocessorType} or by a name under which it was registered.
+     *
+     * @param name The name
+     * @return The preprocessor
+     */
+    public static LookupPreprocessor fromName(final String name) {
+        for (final LookupPreprocessorType type : LookupPreprocessorType.values()) {
+            if (type.getName().equalsIgnoreCase(name)) {
+                return fromType(type);
+            }
+        }
+
+        final LookupPreprocessor preprocessor = REGISTERED_PREPROCESSORS.get(name);
+        if (preprocessor == null) {
+            throw new IllegalArgumentException("Preprocessor " + name + " is not registered");
+        }
+        return preprocessor;
+    }
+
+    /**
+     * Register a preprocessor so that it can be looked up using {@link #fromName(String)}. A preprocessor that was
+     * registered under the same name before will be replaced.
+     *
+     * @param name The name. It must not be the name of a {@link LookupPreprocessorType}.
+     * @param preprocessor The preprocessor
+     */
+    public static void register(final String name, final LookupPreprocessor preprocessor) {
+        if (Arrays.stream(LookupPreprocessorType.values()).anyMatch(type -> type.getName().equalsIgnoreCase(name))) {
+            throw new IllegalArgumentException("Cannot replace built-in preprocessor " + name);
+        }
+        REGISTERED_PREPROCESSORS.put(name, preprocessor);
+    }
+
+    /**
+     * Register a German preprocessor that uses a custom noun dictionary instead of the noun list that comes with
+     * Querqy.
+     *
+     * @param name The name for {@link #fromName(String)}
+     * @param compiledDictionary The dictionary in the format that is created by {@link NormalizationDictionaryCompiler}
+     * @return The registered preprocessor
+     * @throws IOException if the dictionary cannot be read
+     */
+    public static LookupPreprocessor registerGermanNounDictionary(final String name,
+                                                                  final InputStream compiledDictionary)
+            throws IOException {
+        final LookupPreprocessor preprocessor = german(NormalizationDictionary.read(compiledDictionary));
+        register(name, preprocessor);
+        return preprocessor;
+    }
+
+    /**
+     * Create a German preprocessor that uses a custom noun dictionary instead of the noun list that comes with Querqy.
+     *
+     * @param nounDictionary The noun dictionary, for example, read using
+     *                       {@link NormalizationDictionary#read(InputStream)} from a dictionary that was compiled by
+     *                       {@link NormalizationDictionaryCompiler}
+     * @return The preprocessor
+     */
+    public static LookupPreprocessor german(final NormalizationDictionary nounDictionary) {
+        return PipelinePreprocessor.of(
+                LowerCasePreprocessor.create(),
+                GermanUmlautPreprocessor.create(),
+                new GermanNounNormalizer(nounDictionary)
+        );
+    }
+
+    // This wrapper makes sure the noun dictionary of the GermanNounNormalizer is loaded lazily (and in a synchronized
+    // way)
     private static class GermanPreprocessorOnDemandClassHolder {
         private static final LookupPreprocessor GERMAN_PREPROCESSOR = PipelinePreprocessor.of(
                 LowerCasePreprocessor.create(),
@@ -1,6 +1,7 @@
 package querqy.rewrite.lookup.preprocessing;
 
 import querqy.LowerCaseCharSequence;
+import querqy.model.Term;
 
 public class LowerCasePreprocessor implements LookupPreprocessor {
 
@@ -8,7 +9,9 @@ public class LowerCasePreprocessor implements LookupPreprocessor {
 
     @Override
     public CharSequence process(final CharSequence charSequence) {
-        return new LowerCaseCharSequence(charSequence);
+        // Terms that were lower-cased by the parser can be used as they are
+        final CharSequence value = charSequence instanceof Term ? ((Term) charSequence).getValue() : charSequence;
+        return value instanceof LowerCaseCharSequence ? value : new LowerCaseCharSequence(value);
     }
 
     public static LowerCasePreprocessor create() {
@@ -0,0 +1,349 @@
+package querqy.rewrite.lookup.preprocessing;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * <p>A compiled dictionary that maps word forms to their canonical forms, for example plural nouns to the singular.</p>
+ *
+ * <p>All keys are kept in a single char array, sorted in {@link String#compareTo(String)} order, so that the ordinal
+ * of a key is its position in this order. A second array holds the ordinals sorted by the reversed keys. It allows to
+ * walk the keys by suffix like in a trie, with a range of ordinals instead of a trie node per character. The canonical
+ * form of a key is stored as the ordinal of the canonical key, which is always a key itself.</p>
+ *
+ * <p>Dictionaries are compiled from a text file with one entry per line in the form <code>canonical,variant</code>
+ * (for example <code>haus,häuser</code>) using {@link #compile(Reader)}. Either form can be missing. Lines and
+ * trailing parts of lines that start with <code>#</code> are ignored. The compiled dictionary can be stored using
+ * {@link #write(OutputStream)} and loaded using {@link #read(InputStream)}, see
+ * {@link NormalizationDictionaryCompiler}.</p>
+ */
+public class NormalizationDictionary {
+
+    /**
+     * The value of an ordinal that is its own canonical form
+     */
+    public static final int IDENTITY = -1;
+
+    /**
+     * The value of {@link #find(CharSequence)} and {@link #findReverse(long, int)} if there is no match
+     */
+    public static final int NOT_FOUND = -2;
+
+    static final int MAGIC = 0x51444943; // "QDIC"
+    static final int VERSION = 1;
+
+    private final char[] chars;
+    // offsets[i] is the start of key i in chars, offsets[size] == chars.length
+    private final int[] offsets;
+    // the ordinal of the canonical form or IDENTITY
+    private final int[] values;
+    // the ordinals sorted by the reversed keys
+    private final int[] reverseOrder;
+
+    NormalizationDictionary(final char[] chars, final int[] offsets, final int[] values, final int[] reverseOrder) {
+        if (offsets.length != values.length + 1 || reverseOrder.length != values.length
+                || offsets[values.length] != chars.length) {
+            throw new IllegalArgumentException("Inconsistent dictionary data");
+        }
+        this.chars = chars;
+        this.offsets = offsets;
+        this.values = values;
+        this.reverseOrder = reverseOrder;
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * Find a key.
+     *
+     * @param key The key
+     * @return The ordinal of the key or {@link #NOT_FOUND}
+     */
+    public int find(final CharSequence key) {
+        int lo = 0;
+        int hi = values.length - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final int cmp = compareKey(mid, key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * @param ordinal The ordinal of a key
+     * @return The ordinal of the canonical form of the key or {@link #IDENTITY} if the key is a canonical form
+     */
+    public int getValue(final int ordinal) {
+        return values[ordinal];
+    }
+
+    public String getKey(final int ordinal) {
+        return new String(chars, offsets[ordinal], offsets[ordinal + 1] - offsets[ordinal]);
+    }
+
+    /**
+     * <p>Get the range of all keys for a walk by suffix. The range can be narrowed down using
+     * {@link #narrowReverse(long, int, char)}.</p>
+     *
+     * <p>A range is encoded as a long with the start (inclusive) in the upper and the end (exclusive) in the lower 32
+     * bits so that a walk doesn't allocate any memory.</p>
+     *
+     * @return The range of all keys
+     */
+    public long reverseRange() {
+        return range(0, values.length);
+    }
+
+    /**
+     * Narrow down a range to the keys that have the given character at the given position from the end.
+     *
+     * @param range The range of keys that share the suffix of length <code>depth</code>
+     * @param depth The length of the shared suffix
+     * @param ch The next character in reversed order
+     * @return The range of keys that share the suffix of length <code>depth + 1</code>. It might be empty.
+     */
+    public long narrowReverse(final long range, final int depth, final char ch) {
+        final int start = lowerBoundReverse(rangeStart(range), rangeEnd(range), depth, ch);
+        final int end = lowerBoundReverse(start, rangeEnd(range), depth, (char) (ch + 1));
+        return range(start, ch == Character.MAX_VALUE ? rangeEnd(range) : end);
+    }
+
+    /**
+     * @param range A range of keys that share a suffix of length <code>depth</code>
+     * @param depth The length of the suffix
+     * @return The ordinal of the key that equals the suffix or {@link #NOT_FOUND}
+     */
+    public int findReverse(final long range, final int depth) {
+        if (isEmpty(range)) {
+            return NOT_FOUND;
+        }
+        // a key that equals the shared suffix sorts before all longer keys
+        final int ordinal = reverseOrder[rangeStart(range)];
+        return keyLength(ordinal) == depth ? ordinal : NOT_FOUND;
+    }
+
+    public static boolean isEmpty(final long range) {
+        return rangeStart(range) >= rangeEnd(range);
+    }
+
+    private static long range(final int start, final int end) {
+        return ((long) start << 32) | (end & 0xffffffffL);
+    }
+
+    private static int rangeStart(final long range) {
+        return (int) (range >>> 32);
+    }
+
+    private static int rangeEnd(final long range) {
+        return (int) range;
+    }
+
+    private int lowerBoundReverse(int lo, int hi, final int depth, final char ch) {
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            final int ordinal = reverseOrder[mid];
+            // keys that end at depth sort first
+            if (keyLength(ordinal) <= depth || chars[offsets[ordinal + 1] - 1 - depth] < ch) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int keyLength(final int ordinal) {
+        return offsets[ordinal + 1] - offsets[ordinal];
+    }
+
+    private int compareKey(final int ordinal, final CharSequence key) {
+        final int start = offsets[ordinal];
+        final int len1 = offsets[ordinal + 1] - start;
+        final int len2 = key.length();
+        for (int i = 0, len = Math.min(len1, len2); i < len; i++) {
+            final char c1 = chars[start + i];
+            final char c2 = key.charAt(i);
+            if (c1 != c2) {
+                return c1 - c2;
+            }
+        }
+        return len1 - len2;
+    }
+
+    /**
+     * Compile a dictionary from its text form.
+     *
+     * @param reader The text form
+     * @return The compiled dictionary
+     * @throws IOException if the text cannot be read
+     */
+    public static NormalizationDictionary compile(final Reader reader) throws IOException {
+
+        // key -> canonical form, the empty string marks a canonical form
+        final Map<String, String> map = new HashMap<>();
+
+        final BufferedReader bufferedReader = reader instanceof BufferedReader
+                ? (BufferedReader) reader : new BufferedReader(reader);
+
+        String line;
+        while ((line = bufferedReader.readLine()) != null) {
+            line = line.trim();
+
+            final int commentPos = line.indexOf('#');
+            if (commentPos > -1) {
+                line = line.substring(0, commentPos).trim();
+            }
+            if (line.length() > 0) {
+                final String[] parts = line.split(",");
+                // some lines might only have one form
+                final String canonical = line.charAt(0) == ',' ? "" : parts[0];
+                final String variant = line.charAt(line.length() - 1) == ',' ? "" : parts[1];
+                put(canonical, variant, map);
+            }
+        }
+
+        return of(map);
+    }
+
+    private static void put(final String canonical, final String variant, final Map<String, String> map) {
+
+        // a canonical form always stays a canonical form
+        if (canonical.length() > 0) {
+            map.put(canonical, "");
+        }
+
+        if (variant.length() > 0 && !"".equals(map.get(variant))) {
+            map.put(variant, canonical);
+        }
+    }
+
+    private static NormalizationDictionary of(final Map<String, String> map) {
+
+        final String[] keys = map.keySet().toArray(new String[0]);
+        Arrays.sort(keys);
+
+        final Map<String, Integer> ordinals = new HashMap<>(keys.length * 2);
+        final int[] offsets = new int[keys.length + 1];
+        for (int i = 0; i < keys.length; i++) {
+            ordinals.put(keys[i], i);
+            offsets[i + 1] = offsets[i] + keys[i].length();
+        }
+
+        final char[] chars = new char[offsets[keys.length]];
+        final int[] values = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i].getChars(0, keys[i].length(), chars, offsets[i]);
+            final String value = map.get(keys[i]);
+            values[i] = value.isEmpty() ? IDENTITY : ordinals.get(value);
+        }
+
+        final String[] reversedKeys = Arrays.stream(keys)
+                .map(key -> new StringBuilder(key).reverse().toString())
+                .toArray(String[]::new);
+
+        final int[] reverseOrder = IntStream.range(0, keys.length)
+                .boxed()
+                .sorted(Comparator.comparing(ordinal -> reversedKeys[ordinal]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+        return new NormalizationDictionary(chars, offsets, values, reverseOrder);
+    }
+
+    /**
+     * Write the compiled dictionary. It can be loaded using {@link #read(InputStream)}.
+     *
+     * @param out The output stream
+     * @throws IOException if the dictionary cannot be written
+     */
+    public void write(final OutputStream out) throws IOException {
+        final DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(MAGIC);
+        dataOut.writeInt(VERSION);
+        dataOut.writeInt(values.length);
+        dataOut.writeInt(chars.length);
+        for (final char ch : chars) {
+            dataOut.writeChar(ch);
+        }
+        writeInts(offsets, dataOut);
+        writeInts(values, dataOut);
+        writeInts(reverseOrder, dataOut);
+        dataOut.flush();
+    }
+
+    private static void writeInts(final int[] ints, final DataOutputStream out) throws IOException {
+        for (final int i : ints) {
+            out.writeInt(i);
+        }
+    }
+
+    /**
+     * Load a dictionary that was written by {@link #write(OutputStream)}.
+     *
+     * @param in The input stream
+     * @return The dictionary
+     * @throws IOException if the dictionary cannot be read or if it has an unknown format
+     */
+    public static NormalizationDictionary read(final InputStream in) throws IOException {
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        in.transferTo(bytes);
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+
+        if (buffer.remaining() < 16 || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a compiled normalization dictionary");
+        }
+        final int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported normalization dictionary version: " + version);
+        }
+
+        final int size = buffer.getInt();
+        final int charCount = buffer.getInt();
+        if (size < 0 || charCount < 0 || buffer.remaining() != charCount * 2L + (size * 3L + 1L) * 4L) {
+            throw new IOException("Corrupt normalization dictionary");
+        }
+
+        final char[] chars = new char[charCount];
+        buffer.asCharBuffer().get(chars);
+        buffer.position(buffer.position() + charCount * 2);
+
+        final int[] offsets = readInts(size + 1, buffer);
+        final int[] values = readInts(size, buffer);
+        final int[] reverseOrder = readInts(size, buffer);
+
+        try {
+            return new NormalizationDictionary(chars, offsets, values, reverseOrder);
+        } catch (final IllegalArgumentException e) {
+            throw new IOException("Corrupt normalization dictionary", e);
+        }
+    }
+
+    private static int[] readInts(final int count, final ByteBuffer buffer) {
+        final int[] ints = new int[count];
+        buffer.asIntBuffer().get(ints);
+        buffer.position(buffer.position() + count * 4);
+        return ints;
+    }
+
+}
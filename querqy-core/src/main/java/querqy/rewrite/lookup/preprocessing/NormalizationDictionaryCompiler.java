@@ -0,0 +1,51 @@
+package querqy.rewrite.lookup.preprocessing;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * <p>Compiles a normalization dictionary from its text form into the binary form that can be loaded using
+ * {@link NormalizationDictionary#read(java.io.InputStream)}.</p>
+ *
+ * <p>The build uses this to compile the German noun list. It can also be used to compile custom dictionaries that are
+ * then registered using {@link LookupPreprocessorFactory#registerGermanNounDictionary(String, java.io.InputStream)}
+ * and selected by that name in the configuration of a common rules rewriter:</p>
+ *
+ * <pre>
+ *     java -cp querqy-core.jar querqy.rewrite.lookup.preprocessing.NormalizationDictionaryCompiler nouns.txt nouns.dict
+ * </pre>
+ */
+public class NormalizationDictionaryCompiler {
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: NormalizationDictionaryCompiler <text dictionary> <compiled dictionary>");
+            System.exit(1);
+        }
+        compile(Paths.get(args[0]), Paths.get(args[1]));
+    }
+
+    public static void compile(final Path textFile, final Path compiledFile) throws IOException {
+
+        final NormalizationDictionary dictionary;
+        try (final Reader reader = Files.newBufferedReader(textFile, UTF_8)) {
+            dictionary = NormalizationDictionary.compile(reader);
+        }
+
+        final Path parent = compiledFile.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        try (final OutputStream out = new BufferedOutputStream(Files.newOutputStream(compiledFile))) {
+            dictionary.write(out);
+        }
+    }
+}
@@ -4,11 +4,12 @@ import querqy.model.AbstractNodeVisitor;
 import querqy.model.BooleanClause;
 import querqy.model.BooleanQuery;
 import querqy.model.Term;
+import querqy.rewrite.RewriteBudget;
 import querqy.rewrite.lookup.LookupConfig;
 import querqy.rewrite.lookup.model.Match;
 import querqy.rewrite.lookup.triemap.model.TrieMapEvaluation;
 import querqy.rewrite.lookup.triemap.model.TrieMapSequence;
-import querqy.trie.States;
+import querqy.trie.PrefixCollectingCursor;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -25,6 +26,12 @@ import java.util.stream.Stream;
  * for a certain subsequence, the state is passed back to the collector for subsequent lookups. Given the collector
  * returns a state for subsequence A, this state will be passed for subsequent lookups for the sequences A B and A C.
  *
+ * Lookups are made with a single {@link PrefixCollectingCursor}. State objects are only created for subsequences
+ * that are known to the trie map.
+ *
+ * Each lookup consumes one step of the {@link RewriteBudget}. Once the budget is exhausted, no further lookups are made
+ * and only the matches that were collected until then are returned.
+ *
  */
 public class TrieMapLookupQueryVisitor<T> extends AbstractNodeVisitor<Void> {
 
@@ -35,6 +42,8 @@ public class TrieMapLookupQueryVisitor<T> extends AbstractNodeVisitor<Void> {
 
     private final TrieMapSequenceLookup<T> trieMapSequenceLookup;
     private final TrieMapMatchCollector<T> matchCollector;
+    private final PrefixCollectingCursor<T> cursor;
+    private final RewriteBudget rewriteBudget;
 
     private List<TrieMapSequence<T>> previousSequences = List.of();
     private List<TrieMapSequence<T>> sequences = new ArrayList<>();
@@ -44,11 +53,35 @@ public class TrieMapLookupQueryVisitor<T> extends AbstractNodeVisitor<Void> {
             final LookupConfig lookupConfig,
             final TrieMapSequenceLookup<T> trieMapSequenceLookup,
             final TrieMapMatchCollector<T> matchCollector
+    ) {
+        this(booleanQuery, lookupConfig, trieMapSequenceLookup, matchCollector, RewriteBudget.UNLIMITED);
+    }
+
+    TrieMapLookupQueryVisitor(
+            final BooleanQuery booleanQuery,
+            final LookupConfig lookupConfig,
+            final TrieMapSequenceLookup<T> trieMapSequenceLookup,
+            final TrieMapMatchCollector<T> matchCollector,
+            final RewriteBudget rewriteBudget
+    ) {
+        this(booleanQuery, lookupConfig, trieMapSequenceLookup, matchCollector, new PrefixCollectingCursor<>(),
+                rewriteBudget);
+    }
+
+    private TrieMapLookupQueryVisitor(
+            final BooleanQuery booleanQuery,
+            final LookupConfig lookupConfig,
+            final TrieMapSequenceLookup<T> trieMapSequenceLookup,
+            final TrieMapMatchCollector<T> matchCollector,
+            final PrefixCollectingCursor<T> cursor,
+            final RewriteBudget rewriteBudget
     ) {
         this.booleanQuery = booleanQuery;
         this.lookupConfig = lookupConfig;
         this.trieMapSequenceLookup = trieMapSequenceLookup;
         this.matchCollector = matchCollector;
+        this.cursor = cursor;
+        this.rewriteBudget = rewriteBudget;
     }
 
     public List<Match<T>> lookupAndCollect() {
@@ -71,6 +104,10 @@ public class TrieMapLookupQueryVisitor<T> extends AbstractNodeVisitor<Void> {
 
     private void visitBooleanQuery() {
         for (final BooleanClause clause : booleanQuery.getClauses()) {
+            // don't visit the remaining clauses but record the refusal so that the truncation is reported
+            if (!rewriteBudget.tryConsume(0)) {
+                return;
+            }
             clause.accept(this);
             refreshSequenceLists();
         }
@@ -91,7 +128,7 @@ public class TrieMapLookupQueryVisitor<T> extends AbstractNodeVisitor<Void> {
         // TODO: return all full sequences from bq to enable cross-hierarchy lookups
 
         final TrieMapLookupQueryVisitor<T> nestedTrieMapLookupQueryVisitor = new TrieMapLookupQueryVisitor<>(
-                booleanQuery, lookupConfig, trieMapSequenceLookup, matchCollector
+                booleanQuery, lookupConfig, trieMapSequenceLookup, matchCollector, cursor, rewriteBudget
         );
 
         nestedTrieMapLookupQueryVisitor.lookup();
@@ -110,39 +147,35 @@ public class TrieMapLookupQueryVisitor<T> extends AbstractNodeVisitor<Void> {
     }
 
     private void visitSingleTerm(final Term term) {
-        final States<T> states = trieMapSequenceLookup.evaluateTerm(term);
+        if (!rewriteBudget.tryConsume(1)) {
+            return;
+        }
 
-        if (isPartialMatch(states)) {
-            sequences.add(TrieMapSequence.of(states, List.of(term)));
+        if (trieMapSequenceLookup.evaluateTerm(term, cursor)) {
+            sequences.add(TrieMapSequence.of(cursor.toState(), List.of(term)));
         }
 
-        if (hasMatch(states)) {
-            matchCollector.collect(TrieMapEvaluation.of(List.of(), term, states));
+        if (cursor.hasMatch()) {
+            matchCollector.collect(TrieMapEvaluation.of(List.of(), term, cursor.toStates()));
         }
     }
 
     private void visitTermWithPreviousSequences(final Term term) {
         for (final TrieMapSequence<T> previousSequence : previousSequences) {
-            final States<T> states = trieMapSequenceLookup.evaluateNextTerm(previousSequence, term);
+            if (!rewriteBudget.tryConsume(1)) {
+                return;
+            }
 
-            if (isPartialMatch(states)) {
-                sequences.add(TrieMapSequence.of(states, concat(previousSequence.getTerms(), term)));
+            if (trieMapSequenceLookup.evaluateNextTerm(previousSequence, term, cursor)) {
+                sequences.add(TrieMapSequence.of(cursor.toState(), concat(previousSequence.getTerms(), term)));
             }
 
-            if (hasMatch(states)) {
-                matchCollector.collect(TrieMapEvaluation.of(previousSequence.getTerms(), term, states));
+            if (cursor.hasMatch()) {
+                matchCollector.collect(TrieMapEvaluation.of(previousSequence.getTerms(), term, cursor.toStates()));
             }
         }
     }
 
-    private boolean isPartialMatch(final States<T> states) {
-        return states.getStateForCompleteSequence().isKnown();
-    }
-
-    private boolean hasMatch(final States<T> states) {
-        return states.getStateForCompleteSequence().isFinal() || states.getPrefixes() != null;
-    }
-
     private List<Term> concat(final List<Term> terms, final Term term) {
         return Stream.concat(
                 terms.stream(),
@@ -1,6 +1,7 @@
 package querqy.rewrite.lookup.triemap;
 
 import querqy.model.BooleanQuery;
+import querqy.rewrite.RewriteBudget;
 import querqy.rewrite.lookup.LookupConfig;
 import querqy.trie.TrieMap;
 
@@ -19,11 +20,17 @@ public class TrieMapLookupQueryVisitorFactory<ValueT> {
     }
 
     public TrieMapLookupQueryVisitor<ValueT> createTrieMapLookup(final BooleanQuery booleanQuery) {
+        return createTrieMapLookup(booleanQuery, RewriteBudget.UNLIMITED);
+    }
+
+    public TrieMapLookupQueryVisitor<ValueT> createTrieMapLookup(final BooleanQuery booleanQuery,
+                                                                 final RewriteBudget rewriteBudget) {
         return new TrieMapLookupQueryVisitor<>(
                 booleanQuery,
                 lookupConfig,
                 createAutomatonWrapper(),
-                new TrieMapMatchCollector<>()
+                new TrieMapMatchCollector<>(),
+                rewriteBudget
         );
     }
 
@@ -4,12 +4,15 @@ import querqy.CompoundCharSequence;
 import querqy.model.Term;
 import querqy.rewrite.lookup.LookupConfig;
 import querqy.rewrite.lookup.triemap.model.TrieMapSequence;
+import querqy.trie.PrefixCollectingCursor;
 import querqy.trie.States;
 import querqy.trie.TrieMap;
 
 
 public class TrieMapSequenceLookup<ValueT> {
 
+    private static final String SEPARATOR = " ";
+
     private final TrieMap<ValueT> trieMap;
     private final LookupConfig lookupConfig;
 
@@ -18,17 +21,65 @@ public class TrieMapSequenceLookup<ValueT> {
         this.lookupConfig = lookupConfig;
     }
 
-    public States<ValueT> evaluateTerm(final Term term) {
+    /**
+     * Look up a single term. The cursor will be moved to the state of the term and it will hold the prefix matches.
+     *
+     * @param term The term
+     * @param cursor The cursor
+     * @return true iff the term is known to the trie
+     */
+    public boolean evaluateTerm(final Term term, final PrefixCollectingCursor<ValueT> cursor) {
         // TODO: why with field?
         final CharSequence lookupCharSequence = createLookupCharSequence(term);
-        return trieMap.get(lookupCharSequence);
+        return trieMap.lookup(lookupCharSequence, cursor, cursor);
     }
 
-    public States<ValueT> evaluateNextTerm(final TrieMapSequence<ValueT> sequence, final Term term) {
-        final CharSequence lookupCharSequence = new CompoundCharSequence(
-                null, " ", createLookupCharSequence(term));
+    /**
+     * Look up a single term.
+     *
+     * @param term The term
+     * @return The states of the term
+     * @deprecated Use {@link #evaluateTerm(Term, PrefixCollectingCursor)}, which can reuse the cursor across lookups
+     */
+    @Deprecated
+    public States<ValueT> evaluateTerm(final Term term) {
+        final PrefixCollectingCursor<ValueT> cursor = new PrefixCollectingCursor<>();
+        evaluateTerm(term, cursor);
+        return cursor.toStates();
+    }
+
+    /**
+     * Look up a term as the continuation of a sequence. The cursor will be moved to the state of the sequence plus
+     * the term and it will hold the prefix matches.
+     *
+     * @param sequence The sequence to continue
+     * @param term The term
+     * @param cursor The cursor
+     * @return true iff the sequence plus the term is known to the trie
+     */
+    public boolean evaluateNextTerm(final TrieMapSequence<ValueT> sequence, final Term term,
+                                    final PrefixCollectingCursor<ValueT> cursor) {
+        cursor.setState(sequence.getState());
+        // Looking up the separator and the term one after the other saves creating a compound sequence. This is
+        // equivalent to looking up " term" as prefixes are not reported for the last char of a lookup.
+        return trieMap.lookupNext(SEPARATOR, cursor, cursor)
+                && trieMap.lookupNext(createLookupCharSequence(term), cursor, cursor);
+    }
 
-        return trieMap.get(lookupCharSequence, sequence.getStates().getStateForCompleteSequence());
+    /**
+     * Look up a term as the continuation of a sequence.
+     *
+     * @param sequence The sequence to continue
+     * @param term The term
+     * @return The states of the sequence plus the term
+     * @deprecated Use {@link #evaluateNextTerm(TrieMapSequence, Term, PrefixCollectingCursor)}, which can reuse the
+     * cursor across lookups
+     */
+    @Deprecated
+    public States<ValueT> evaluateNextTerm(final TrieMapSequence<ValueT> sequence, final Term term) {
+        final PrefixCollectingCursor<ValueT> cursor = new PrefixCollectingCursor<>();
+        evaluateNextTerm(sequence, term, cursor);
+        return cursor.toStates();
     }
 
     private CharSequence createLookupCharSequence(final Term term) {
@@ -1,29 +1,51 @@
 package querqy.rewrite.lookup.triemap.model;
 
 import querqy.model.Term;
+import querqy.trie.State;
 import querqy.trie.States;
 
 import java.util.List;
 
 public class TrieMapSequence<T> {
 
-    private final States<T> states;
+    private final State<T> state;
     private final List<Term> terms;
 
-    private TrieMapSequence(final States<T> states, final List<Term> terms) {
-        this.states = states;
+    private TrieMapSequence(final State<T> state, final List<Term> terms) {
+        this.state = state;
         this.terms = terms;
     }
 
+    public State<T> getState() {
+        return state;
+    }
+
+    /**
+     * @return The states of this sequence. It has no prefixes.
+     * @deprecated Use {@link #getState()}
+     */
+    @Deprecated
     public States<T> getStates() {
-        return states;
+        return new States<>(state);
     }
 
     public List<Term> getTerms() {
         return terms;
     }
 
+    public static <T> TrieMapSequence<T> of(final State<T> state, final List<Term> terms) {
+        return new TrieMapSequence<>(state, terms);
+    }
+
+    /**
+     * @param states The states of the sequence. Only the state of the complete sequence is kept.
+     * @param terms The terms of the sequence
+     * @param <T> The value type
+     * @return The sequence
+     * @deprecated Use {@link #of(State, List)}
+     */
+    @Deprecated
     public static <T> TrieMapSequence<T> of(final States<T> states, final List<Term> terms) {
-        return new TrieMapSequence<>(states, terms);
+        return of(states.getStateForCompleteSequence(), terms);
     }
 }
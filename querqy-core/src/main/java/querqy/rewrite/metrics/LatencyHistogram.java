@@ -0,0 +1,116 @@
+package querqy.rewrite.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>A lock-free histogram of non-negative long values, such as latencies in nanoseconds.</p>
+ *
+ * <p>Like HdrHistogram, values are counted in buckets whose width grows with the magnitude of the value: each power
+ * of 2 is split into {@value #SUB_BUCKET_COUNT} sub-buckets, so that the relative error of a reported value is
+ * below 1/{@value #SUB_BUCKET_COUNT}. Recording a value only increments an array slot and does not allocate.</p>
+ */
+public class LatencyHistogram implements LatencyRecorder {
+
+    static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    private final long highestTrackableValue;
+    private final AtomicLongArray counts;
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+    /**
+     * Create a histogram that can track values up to one hour in nanoseconds.
+     */
+    public LatencyHistogram() {
+        this(3_600_000_000_000L);
+    }
+
+    /**
+     * @param highestTrackableValue Larger values are counted as this value
+     */
+    public LatencyHistogram(final long highestTrackableValue) {
+        if (highestTrackableValue < 1L) {
+            throw new IllegalArgumentException("highestTrackableValue must be > 0");
+        }
+        this.highestTrackableValue = highestTrackableValue;
+        counts = new AtomicLongArray(bucketIndex(highestTrackableValue) + 1);
+    }
+
+    @Override
+    public void record(final long value) {
+        final long v = Math.min(Math.max(value, 0L), highestTrackableValue);
+        counts.incrementAndGet(bucketIndex(v));
+        sum.add(v);
+        max.accumulate(v);
+    }
+
+    @Override
+    public long getCount() {
+        long count = 0L;
+        for (int i = 0, len = counts.length(); i < len; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        final long count = getCount();
+        return count == 0L ? 0.0 : (double) sum.sum() / count;
+    }
+
+    /**
+     * Get the value at the given percentile. The result is the highest value that is equivalent to the recorded
+     * values at this percentile, but never greater than the maximum recorded value.
+     *
+     * @param percentile The percentile (0 - 100)
+     * @return The value at the percentile or 0 if no value has been recorded.
+     */
+    public long getValueAtPercentile(final double percentile) {
+        final int len = counts.length();
+        final long[] snapshot = new long[len];
+        long total = 0L;
+        for (int i = 0; i < len; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0L) {
+            return 0L;
+        }
+
+        final double p = Math.min(Math.max(percentile, 0.0), 100.0);
+        final long target = Math.max(1L, (long) Math.ceil(p / 100.0 * total));
+        long cumulated = 0L;
+        for (int i = 0; i < len; i++) {
+            cumulated += snapshot[i];
+            if (cumulated >= target) {
+                return Math.min(highestEquivalentValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    static int bucketIndex(final long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) & (SUB_BUCKET_COUNT - 1));
+    }
+
+    static long highestEquivalentValue(final int bucketIndex) {
+        if (bucketIndex < SUB_BUCKET_COUNT) {
+            return bucketIndex;
+        }
+        final int shift = (bucketIndex >>> SUB_BUCKET_BITS) - 1;
+        final long subBucket = bucketIndex & (SUB_BUCKET_COUNT - 1);
+        return ((SUB_BUCKET_COUNT + subBucket + 1) << shift) - 1L;
+    }
+
+}
@@ -0,0 +1,23 @@
+package querqy.rewrite.metrics;
+
+/**
+ * <p>Records the latency of a rewriter. {@link RewriterMetrics} record each latency into exactly one recorder, which
+ * is a {@link LatencyHistogram} by default. Search engine integrations can provide a recorder that is backed by their
+ * own metrics system instead, using
+ * {@link RewriteChainMetrics#RewriteChainMetrics(boolean, java.util.function.Function)}.</p>
+ *
+ * <p>Implementations must be thread-safe.</p>
+ */
+public interface LatencyRecorder {
+
+    /**
+     * @param nanos The latency in nanoseconds
+     */
+    void record(long nanos);
+
+    /**
+     * @return The number of recorded latencies
+     */
+    long getCount();
+
+}
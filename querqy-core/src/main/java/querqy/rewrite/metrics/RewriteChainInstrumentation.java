@@ -0,0 +1,36 @@
+package querqy.rewrite.metrics;
+
+/**
+ * <p>Receives measurements for each rewriter that is applied in a {@link querqy.rewrite.RewriteChain}.</p>
+ *
+ * <p>Implementations are called on the request thread and must be thread-safe and cheap.</p>
+ */
+public interface RewriteChainInstrumentation {
+
+    /**
+     * @return true if the bytes allocated by the request thread while a rewriter is applied should be measured
+     */
+    boolean isMeasuringAllocations();
+
+    /**
+     * Record the application of a rewriter.
+     *
+     * @param rewriterId The id of the rewriter
+     * @param durationNanos The time for creating and applying the rewriter
+     * @param allocatedBytes The bytes allocated by the thread while creating and applying the rewriter, or -1 if
+     *                       allocations are not measured
+     * @param hasAppliedRewriting true if the rewriter reported that it changed the query
+     */
+    void recordRewrite(String rewriterId, long durationNanos, long allocatedBytes, boolean hasAppliedRewriting);
+
+    /**
+     * Record that a rewriter was degraded because the {@link querqy.rewrite.RewriteBudget} of the request was
+     * exhausted.
+     *
+     * @param rewriterId The id of the rewriter
+     * @param skipped true if the rewriter was not applied at all, false if it stopped adding optional rewrites
+     */
+    default void recordDegradedRewrite(final String rewriterId, final boolean skipped) {
+    }
+
+}
@@ -0,0 +1,107 @@
+package querqy.rewrite.metrics;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A {@link RewriteChainInstrumentation} that keeps {@link RewriterMetrics} per rewriter id.
+ */
+public class RewriteChainMetrics implements RewriteChainInstrumentation {
+
+    private final ConcurrentHashMap<String, RewriterMetrics> metrics = new ConcurrentHashMap<>();
+    private final List<Consumer<RewriterMetrics>> listeners = new CopyOnWriteArrayList<>();
+    private final boolean measuringAllocations;
+    private final Function<String, LatencyRecorder> latencyRecorderFactory;
+
+    /**
+     * Create metrics that record the latencies in {@link LatencyHistogram}s.
+     *
+     * @param measureAllocations Iff true, measure the bytes allocated per rewriter. This will be ignored if the JVM
+     *                           cannot measure the allocations per thread.
+     */
+    public RewriteChainMetrics(final boolean measureAllocations) {
+        this(measureAllocations, rewriterId -> new LatencyHistogram());
+    }
+
+    /**
+     * @param measureAllocations Iff true, measure the bytes allocated per rewriter. This will be ignored if the JVM
+     *                           cannot measure the allocations per thread.
+     * @param latencyRecorderFactory Creates the latency recorder for a rewriter id when metrics are recorded for the
+     *                               rewriter for the first time
+     */
+    public RewriteChainMetrics(final boolean measureAllocations,
+                               final Function<String, LatencyRecorder> latencyRecorderFactory) {
+        this.measuringAllocations = measureAllocations && ThreadAllocation.isSupported();
+        this.latencyRecorderFactory = Objects.requireNonNull(latencyRecorderFactory);
+    }
+
+    @Override
+    public boolean isMeasuringAllocations() {
+        return measuringAllocations;
+    }
+
+    @Override
+    public void recordRewrite(final String rewriterId, final long durationNanos, final long allocatedBytes,
+                              final boolean hasAppliedRewriting) {
+        getOrCreate(rewriterId).record(durationNanos, allocatedBytes, hasAppliedRewriting);
+    }
+
+    @Override
+    public void recordDegradedRewrite(final String rewriterId, final boolean skipped) {
+        getOrCreate(rewriterId).recordDegradation(skipped);
+    }
+
+    public Optional<RewriterMetrics> getRewriterMetrics(final String rewriterId) {
+        return Optional.ofNullable(metrics.get(rewriterId));
+    }
+
+    /**
+     * Remove the metrics of a rewriter, for example, after the rewriter was deleted. Metrics will be created again if
+     * the rewriter is applied after it was removed.
+     *
+     * @param rewriterId The rewriter id
+     * @return The removed metrics, if any
+     */
+    public Optional<RewriterMetrics> removeRewriterMetrics(final String rewriterId) {
+        return Optional.ofNullable(metrics.remove(rewriterId));
+    }
+
+    public Collection<RewriterMetrics> getAllRewriterMetrics() {
+        return Collections.unmodifiableCollection(metrics.values());
+    }
+
+    /**
+     * Add a listener that will be notified when metrics are recorded for a rewriter id for the first time. The
+     * listener is also notified about the rewriters that already have metrics. It can be notified more than once for
+     * the same rewriter if metrics are created while the listener is being added.
+     *
+     * @param listener The listener
+     */
+    public void addNewRewriterListener(final Consumer<RewriterMetrics> listener) {
+        listeners.add(listener);
+        metrics.values().forEach(listener);
+    }
+
+    private RewriterMetrics getOrCreate(final String rewriterId) {
+        final RewriterMetrics existing = metrics.get(rewriterId);
+        if (existing != null) {
+            return existing;
+        }
+
+        final RewriterMetrics created = new RewriterMetrics(rewriterId, latencyRecorderFactory.apply(rewriterId));
+        final RewriterMetrics previous = metrics.putIfAbsent(rewriterId, created);
+        if (previous != null) {
+            return previous;
+        }
+        listeners.forEach(listener -> listener.accept(created));
+        return created;
+    }
+
+}
@@ -0,0 +1,102 @@
+package querqy.rewrite.metrics;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics of a single rewriter.
+ */
+public class RewriterMetrics {
+
+    private final String rewriterId;
+    private final LatencyRecorder latencyNanos;
+    private final LongAdder appliedRewrites = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final LongAdder truncatedRewrites = new LongAdder();
+    private final LongAdder skippedRewrites = new LongAdder();
+
+    /**
+     * Create metrics that record the latency in a {@link LatencyHistogram}.
+     *
+     * @param rewriterId The rewriter id
+     */
+    public RewriterMetrics(final String rewriterId) {
+        this(rewriterId, new LatencyHistogram());
+    }
+
+    /**
+     * @param rewriterId The rewriter id
+     * @param latencyRecorder Records the time in nanoseconds for creating and applying the rewriter
+     */
+    public RewriterMetrics(final String rewriterId, final LatencyRecorder latencyRecorder) {
+        this.rewriterId = rewriterId;
+        this.latencyNanos = Objects.requireNonNull(latencyRecorder);
+    }
+
+    void record(final long durationNanos, final long allocatedBytes, final boolean hasAppliedRewriting) {
+        latencyNanos.record(durationNanos);
+        if (hasAppliedRewriting) {
+            appliedRewrites.increment();
+        }
+        if (allocatedBytes > 0L) {
+            this.allocatedBytes.add(allocatedBytes);
+        }
+    }
+
+    void recordDegradation(final boolean skipped) {
+        if (skipped) {
+            skippedRewrites.increment();
+        } else {
+            truncatedRewrites.increment();
+        }
+    }
+
+    public String getRewriterId() {
+        return rewriterId;
+    }
+
+    /**
+     * @return The recorder of the time in nanoseconds for creating and applying the rewriter
+     */
+    public LatencyRecorder getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    /**
+     * @return The number of times the rewriter was applied, as counted by the latency recorder
+     */
+    public long getRewrites() {
+        return latencyNanos.getCount();
+    }
+
+    /**
+     * @return The number of times the rewriter reported that it changed the query. Only rewriters that return a
+     * {@link querqy.rewrite.logging.RewriterLog} can report this.
+     */
+    public long getAppliedRewrites() {
+        return appliedRewrites.sum();
+    }
+
+    /**
+     * @return The total number of bytes allocated while the rewriter was applied, if allocations are measured
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes.sum();
+    }
+
+    /**
+     * @return The number of times the rewriter stopped adding optional rewrites because the rewrite budget was
+     * exhausted
+     */
+    public long getTruncatedRewrites() {
+        return truncatedRewrites.sum();
+    }
+
+    /**
+     * @return The number of times the rewriter was skipped because the rewrite budget was exhausted
+     */
+    public long getSkippedRewrites() {
+        return skippedRewrites.sum();
+    }
+
+}
@@ -0,0 +1,40 @@
+package querqy.rewrite.metrics;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Access to the number of bytes allocated by the current thread, if the JVM supports it.
+ */
+public final class ThreadAllocation {
+
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN = loadThreadMXBean();
+
+    private ThreadAllocation() {
+    }
+
+    public static boolean isSupported() {
+        return THREAD_MX_BEAN != null;
+    }
+
+    /**
+     * @return The total number of bytes allocated by the current thread, or -1 if this is not supported
+     */
+    public static long currentThreadAllocatedBytes() {
+        return THREAD_MX_BEAN == null ? -1L : THREAD_MX_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean loadThreadMXBean() {
+        try {
+            final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                final com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+                if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+                    return sunBean;
+                }
+            }
+        } catch (final LinkageError | RuntimeException e) {
+            // not available on this JVM
+        }
+        return null;
+    }
+}
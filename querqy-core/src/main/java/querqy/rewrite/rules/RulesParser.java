@@ -3,46 +3,149 @@ package querqy.rewrite.rules;
 import lombok.AccessLevel;
 import lombok.Builder;
 import lombok.RequiredArgsConstructor;
+import querqy.rewrite.commonrules.model.Instructions;
 import querqy.rewrite.commonrules.model.InstructionsSupplier;
-import querqy.rewrite.commonrules.model.RulesCollectionBuilder;
+import querqy.rewrite.commonrules.model.RuleCollector;
+import querqy.rewrite.rules.rule.Rule;
 import querqy.rewrite.rules.rule.RuleParser;
 import querqy.rewrite.rules.rule.skeleton.RuleSkeleton;
 import querqy.trie.TrieMap;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
+/**
+ * <p>Parses the rule skeletons and adds the rules to a {@link RuleCollector}.</p>
+ *
+ * <p>If the parallelism is greater than 1, the skeletons are split into chunks of consecutive rules, which are parsed
+ * in a {@link ForkJoinPool}, each chunk by its own {@link RuleParser}. The parsed rules are added to the
+ * {@link RuleCollector} in their original order and rule order numbers are assigned as if the rules had been
+ * parsed sequentially. Parallel parsing must only be used if the parsed rules are independent of each other, which is
+ * not the case for boolean input.</p>
+ *
+ * <p>Rule order numbers start at ruleOrderNumberOffset, which allows parsing rules that are added to an existing set
+ * of rules.</p>
+ */
 @RequiredArgsConstructor(staticName = "of", access = AccessLevel.PRIVATE)
 public class RulesParser {
 
-    private final RuleSkeletonParser ruleSkeletonParser;
-    private final RuleParser ruleParser;
-    private final RulesCollectionBuilder rulesCollectionBuilder;
+    static final int MIN_RULES_PER_CHUNK = 64;
+    private static final int CHUNKS_PER_THREAD = 4;
 
-    private int ruleOrderNumber = 0;
+    private final RuleSkeletonParser ruleSkeletonParser;
+    private final Supplier<RuleParser> ruleParserSupplier;
+    private final RuleCollector rulesCollectionBuilder;
+    private final int parallelism;
+    private final int ruleOrderNumberOffset;
 
     @Builder
     private static RulesParser create(final RuleSkeletonParser ruleSkeletonParser,
-                                      final RuleParser ruleParser,
-                                      final RulesCollectionBuilder rulesCollectionBuilder) {
-        return RulesParser.of(ruleSkeletonParser, ruleParser, rulesCollectionBuilder);
+                                      final Supplier<RuleParser> ruleParserSupplier,
+                                      final RuleCollector rulesCollectionBuilder,
+                                      final int parallelism,
+                                      final int ruleOrderNumberOffset) {
+        return RulesParser.of(ruleSkeletonParser, ruleParserSupplier, rulesCollectionBuilder,
+                Math.max(1, parallelism), ruleOrderNumberOffset);
     }
 
     public TrieMap<InstructionsSupplier> parse() throws IOException {
         final List<RuleSkeleton> skeletons = ruleSkeletonParser.parse();
-        parseRules(skeletons);
+        final List<Rule> rules = parallelism > 1 && skeletons.size() >= 2 * MIN_RULES_PER_CHUNK
+                ? parseRulesInParallel(skeletons)
+                : parseRules(skeletons);
 
-        return createTrieMap();
+        return createTrieMap(rules);
     }
 
-    private void parseRules(final List<RuleSkeleton> skeletons) {
+    private List<Rule> parseRules(final List<RuleSkeleton> skeletons) {
+        final RuleParser ruleParser = ruleParserSupplier.get();
+        int ruleOrderNumber = ruleOrderNumberOffset;
         for (final RuleSkeleton skeleton : skeletons) {
             ruleParser.parse(skeleton, ruleOrderNumber++);
         }
+        return ruleParser.finish();
+    }
+
+    private List<Rule> parseRulesInParallel(final List<RuleSkeleton> skeletons) throws IOException {
+
+        final int numChunks = Math.min(parallelism * CHUNKS_PER_THREAD, skeletons.size() / MIN_RULES_PER_CHUNK);
+        final int chunkSize = (skeletons.size() + numChunks - 1) / numChunks;
+
+        final List<Callable<ChunkResult>> tasks = new ArrayList<>(numChunks);
+        for (int start = 0; start < skeletons.size(); start += chunkSize) {
+            final int offset = start;
+            final List<RuleSkeleton> chunk = skeletons.subList(start, Math.min(start + chunkSize, skeletons.size()));
+            tasks.add(() -> parseChunk(chunk, ruleOrderNumberOffset + offset));
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            final List<Rule> rules = new ArrayList<>(skeletons.size());
+            final Set<Object> knownIds = new HashSet<>();
+
+            // merge in order, so that the first error is the same as in sequential parsing
+            for (final Future<ChunkResult> future : pool.invokeAll(tasks)) {
+                final ChunkResult result = future.get();
+                for (final Rule rule : result.rules) {
+                    for (final Instructions instructions : rule.getInstructionsSupplier().getInstructionsList()) {
+                        if (!knownIds.add(instructions.getId())) {
+                            throw new RuleParseException("Duplicate ID: " + instructions.getId());
+                        }
+                    }
+                    rules.add(rule);
+                }
+                if (result.exception != null) {
+                    throw result.exception;
+                }
+            }
+
+            return rules;
+
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing rules", e);
+        } catch (final ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private ChunkResult parseChunk(final List<RuleSkeleton> chunk, final int ruleOrderNumberOffset) {
+        final RuleParser ruleParser = ruleParserSupplier.get();
+        int ruleOrderNumber = ruleOrderNumberOffset;
+        try {
+            for (final RuleSkeleton skeleton : chunk) {
+                ruleParser.parse(skeleton, ruleOrderNumber++);
+            }
+            return new ChunkResult(ruleParser.finish(), null);
+        } catch (final RuntimeException e) {
+            // keep the rules parsed before the error to report a duplicate ID that precedes it
+            return new ChunkResult(ruleParser.finish(), e);
+        }
     }
 
-    private TrieMap<InstructionsSupplier> createTrieMap() {
-        ruleParser.finish().forEach(rulesCollectionBuilder::addRule);
+    private TrieMap<InstructionsSupplier> createTrieMap(final List<Rule> rules) {
+        rules.forEach(rulesCollectionBuilder::addRule);
         return rulesCollectionBuilder.getTrieMap();
     }
+
+    private static class ChunkResult {
+
+        final List<Rule> rules;
+        final RuntimeException exception;
+
+        ChunkResult(final List<Rule> rules, final RuntimeException exception) {
+            this.rules = rules;
+            this.exception = exception;
+        }
+    }
 }
@@ -9,13 +9,18 @@ import querqy.rewrite.rules.factory.config.RulesParserConfig;
 public class RulesParserFactory {
 
     public static RulesParser textParser(final RulesParserConfig rulesParserConfig) {
+        final RuleParserFactory ruleParserFactory = RuleParserFactory.of(rulesParserConfig.getRuleParserConfig());
+
         return RulesParser.builder()
                 .ruleSkeletonParser(
                         TextParserFactory.of(rulesParserConfig.getTextParserConfig()).createRuleSkeletonParser())
-                .ruleParser(
-                        RuleParserFactory.of(rulesParserConfig.getRuleParserConfig()).createRuleParser())
+                .ruleParserSupplier(ruleParserFactory::createRuleParser)
                 .rulesCollectionBuilder(
                         rulesParserConfig.getRulesCollectionBuilder())
+                // boolean input literals are collected across rules and must be parsed sequentially
+                .parallelism(rulesParserConfig.getRuleParserConfig().isAllowedToParseBooleanInput()
+                        ? 1 : rulesParserConfig.getParallelism())
+                .ruleOrderNumberOffset(rulesParserConfig.getRuleOrderNumberOffset())
                 .build();
     }
 }
@@ -4,7 +4,7 @@ import lombok.Builder;
 import lombok.Builder.Default;
 import lombok.Getter;
 import lombok.NonNull;
-import querqy.rewrite.commonrules.model.RulesCollectionBuilder;
+import querqy.rewrite.commonrules.model.RuleCollector;
 
 @Builder
 @Getter
@@ -13,6 +13,16 @@ public class RulesParserConfig {
     @Default private final TextParserConfig textParserConfig = TextParserConfig.defaultConfig();
     @Default private final RuleParserConfig ruleParserConfig = RuleParserConfig.defaultConfig();
 
-    @NonNull private final RulesCollectionBuilder rulesCollectionBuilder;
+    @NonNull private final RuleCollector rulesCollectionBuilder;
+
+    /**
+     * The number of threads for parsing rules. Rules with boolean input are always parsed by a single thread.
+     */
+    @Default private final int parallelism = 1;
+
+    /**
+     * The order number of the first rule
+     */
+    @Default private final int ruleOrderNumberOffset = 0;
 
 }
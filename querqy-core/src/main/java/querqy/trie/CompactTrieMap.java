@@ -0,0 +1,548 @@
+package querqy.trie;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>A read-only {@link TrieMap} that stores its nodes in primitive arrays instead of one {@link Node} object per
+ * character.</p>
+ *
+ * <p>Nodes are laid out in breadth-first order, so that the children of a node are stored next to each other, sorted by
+ * character. Child lookup is a binary search over a contiguous range of the <code>chars</code> array. Values and prefix
+ * values are only stored for the nodes that have them, using a bitset and a rank index to map a node to its value.</p>
+ *
+ * <p>Lookups have the same semantics as in {@link TrieMap} with the exception that the values are iterated in
+ * breadth-first order. {@link State}s returned by this map can only be resumed from by the same CompactTrieMap.</p>
+ *
+ * <p>Use {@link #of(TrieMap)} to create a CompactTrieMap once the mutable TrieMap has been built completely.</p>
+ *
+ * <p>A CompactTrieMap can be written to a binary representation using {@link #write(DataOutput, TrieValueCodec)}. The
+ * map returned by {@link #read(ByteBuffer, TrieValueCodec)} uses the buffer as its storage without copying it, so
+ * that the trie can be kept off-heap in a memory-mapped file. The values of such a map are only decoded when they are
+ * accessed for the first time.</p>
+ */
+public class CompactTrieMap<T> extends TrieMap<T> {
+
+    private static final int ROOT = 0;
+
+    /**
+     * The version of the binary format
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int MAGIC = 0x51435452; // QCTR
+
+    private static final Comparator<Node<?>> COMPARE_NODE_BY_CHARACTER = Comparator.comparingInt(node -> node.character);
+
+    /**
+     * The character of each node. The root node at position 0 has no character.
+     */
+    private final CharBuffer chars;
+
+    /**
+     * The children of node i are stored from position childStart[i] (inclusive) to childStart[i + 1] (exclusive).
+     */
+    private final IntBuffer childStart;
+
+    private final RankedValues values;
+    private final RankedValues prefixValues;
+
+    private CompactTrieMap(final CharBuffer chars, final IntBuffer childStart, final RankedValues values,
+                           final RankedValues prefixValues) {
+        this.chars = chars;
+        this.childStart = childStart;
+        this.values = values;
+        this.prefixValues = prefixValues;
+    }
+
+    /**
+     * Create a CompactTrieMap that contains the same entries as the given TrieMap. The TrieMap must not be modified
+     * while this method is running.
+     *
+     * @param trieMap The TrieMap to copy
+     * @param <T> The value type
+     * @return A read-only copy of the TrieMap
+     */
+    public static <T> CompactTrieMap<T> of(final TrieMap<T> trieMap) {
+
+        if (trieMap instanceof CompactTrieMap) {
+            return (CompactTrieMap<T>) trieMap;
+        }
+
+        final int size = countNodes(trieMap.root) + 1; // + 1 for the root
+
+        final Node<?>[] nodes = new Node<?>[size];
+        final int[] childStart = new int[size + 1];
+        final char[] chars = new char[size];
+
+        int end = 1;
+        for (int i = 0; i < size; i++) {
+            childStart[i] = end;
+            Node<?> child = i == ROOT ? trieMap.root : nodes[i].firstChild;
+            final int start = end;
+            while (child != null) {
+                nodes[end++] = child;
+                child = child.next;
+            }
+            if (end - start > 1) {
+                Arrays.sort(nodes, start, end, COMPARE_NODE_BY_CHARACTER);
+            }
+        }
+        childStart[size] = end;
+
+        final RankedValues.Builder valuesBuilder = new RankedValues.Builder(size);
+        final RankedValues.Builder prefixValuesBuilder = new RankedValues.Builder(size);
+
+        for (int i = 1; i < size; i++) {
+            final Node<?> node = nodes[i];
+            chars[i] = node.character;
+            if (node.value != null) {
+                valuesBuilder.add(i, node.value);
+            }
+            if (node.hasPrefix) {
+                prefixValuesBuilder.add(i, node.prefixValue);
+            }
+        }
+
+        return new CompactTrieMap<>(CharBuffer.wrap(chars), IntBuffer.wrap(childStart), valuesBuilder.build(),
+                prefixValuesBuilder.build());
+
+    }
+
+    private static int countNodes(final Node<?> first) {
+        int count = 0;
+        final List<Node<?>> stack = new ArrayList<>();
+        if (first != null) {
+            stack.add(first);
+        }
+        while (!stack.isEmpty()) {
+            Node<?> node = stack.remove(stack.size() - 1);
+            while (node != null) {
+                count++;
+                if (node.firstChild != null) {
+                    stack.add(node.firstChild);
+                }
+                node = node.next;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return The number of nodes in this trie, not counting the root node
+     */
+    public int getNodeCount() {
+        return chars.limit() - 1;
+    }
+
+    /**
+     * Write the binary representation of this map.
+     *
+     * @param out The output
+     * @param codec The encoder for the values
+     * @throws IOException if the map cannot be written
+     */
+    public void write(final DataOutput out, final TrieValueCodec<T> codec) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        final int size = chars.limit();
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeChar(chars.get(i));
+        }
+        for (int i = 0; i <= size; i++) {
+            out.writeInt(childStart.get(i));
+        }
+        values.write(out, codec);
+        prefixValues.write(out, codec);
+    }
+
+    /**
+     * <p>Create a CompactTrieMap from its binary representation (see {@link #write(DataOutput, TrieValueCodec)}),
+     * starting at the position of the buffer.</p>
+     *
+     * <p>The map keeps using the buffer, which must not be modified afterwards. The position of the buffer will be
+     * set to the end of the map's representation.</p>
+     *
+     * @param buffer The buffer
+     * @param codec The decoder for the values
+     * @param <T> The value type
+     * @return The map
+     * @throws IllegalArgumentException if the buffer doesn't contain a valid representation of a CompactTrieMap
+     */
+    public static <T> CompactTrieMap<T> read(final ByteBuffer buffer, final TrieValueCodec<T> codec) {
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IllegalArgumentException("Not a CompactTrieMap");
+            }
+            final int version = buffer.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IllegalArgumentException("Unsupported CompactTrieMap format version: " + version);
+            }
+            final int size = buffer.getInt();
+            final CharBuffer chars = slice(buffer, size * Character.BYTES).asCharBuffer();
+            final IntBuffer childStart = slice(buffer, (size + 1) * Integer.BYTES).asIntBuffer();
+            final RankedValues values = RankedValues.read(buffer, codec);
+            final RankedValues prefixValues = RankedValues.read(buffer, codec);
+            return new CompactTrieMap<>(chars, childStart, values, prefixValues);
+        } catch (final BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated CompactTrieMap", e);
+        }
+    }
+
+    /**
+     * Return a slice of the given length starting at the buffer's position and advance the position
+     */
+    private static ByteBuffer slice(final ByteBuffer buffer, final int length) {
+        final ByteBuffer slice = buffer.slice();
+        slice.limit(length);
+        buffer.position(buffer.position() + length);
+        return slice;
+    }
+
+    @Override
+    public void put(final CharSequence seq, final T value) {
+        throw new UnsupportedOperationException("CompactTrieMap is read-only");
+    }
+
+    @Override
+    public void putPrefix(final CharSequence seq, final T value) {
+        throw new UnsupportedOperationException("CompactTrieMap is read-only");
+    }
+
+    @Override
+    public TrieMap<T> withValue(final CharSequence seq, final T value) {
+        throw new UnsupportedOperationException("CompactTrieMap is read-only");
+    }
+
+    @Override
+    public TrieMap<T> withPrefixValue(final CharSequence seq, final T value) {
+        throw new UnsupportedOperationException("CompactTrieMap is read-only");
+    }
+
+    @Override
+    public States<T> get(final CharSequence seq) {
+        if (seq.length() == 0) {
+            return States.unknown();
+        }
+        return get(seq, 0, ROOT);
+    }
+
+    @Override
+    public States<T> get(final CharSequence seq, final State<T> stateInfo) {
+        if (!stateInfo.isKnown() || stateInfo.nodeId < 0) {
+            throw new IllegalArgumentException("Known state of a CompactTrieMap expected");
+        }
+        if (seq.length() == 0) {
+            return States.unknown();
+        }
+        return get(seq, 0, stateInfo.nodeId);
+    }
+
+    private States<T> get(final CharSequence seq, final int index, final int parent) {
+
+        final int node = findChild(parent, seq.charAt(index));
+        if (node < 0) {
+            return States.unknown();
+        }
+
+        if (index == seq.length() - 1) {
+            // do not add prefix match here, as we should have at least one char matching the wildcard
+            return new States<>(new State<>(true, values.get(node), node, index));
+        }
+
+        final States<T> states = get(seq, index + 1, node);
+        final int prefixRank = prefixValues.rank(node);
+        if (prefixRank > -1) {
+            return States.withPrefix(states, new State<>(true, prefixValues.getByRank(prefixRank), node,
+                    seq.charAt(0) == ' ' ? index - 1 : index));
+        }
+        return states;
+
+    }
+
+    @Override
+    public boolean lookup(final CharSequence seq, final TrieCursor<T> cursor, final PrefixConsumer<T> prefixConsumer) {
+        if (seq.length() == 0) {
+            cursor.setUnknown();
+        } else {
+            lookup(seq, 0, ROOT, cursor, prefixConsumer);
+        }
+        return cursor.isKnown();
+    }
+
+    @Override
+    public boolean lookupNext(final CharSequence seq, final TrieCursor<T> cursor,
+                              final PrefixConsumer<T> prefixConsumer) {
+        if (!cursor.isKnown() || cursor.nodeId < 0) {
+            throw new IllegalArgumentException("Known state of a CompactTrieMap expected");
+        }
+        if (seq.length() == 0) {
+            cursor.setUnknown();
+        } else {
+            lookup(seq, 0, cursor.nodeId, cursor, prefixConsumer);
+        }
+        return cursor.isKnown();
+    }
+
+    private void lookup(final CharSequence seq, final int index, final int parent, final TrieCursor<T> cursor,
+                        final PrefixConsumer<T> prefixConsumer) {
+
+        final int node = findChild(parent, seq.charAt(index));
+        if (node < 0) {
+            cursor.setUnknown();
+            return;
+        }
+
+        if (index == seq.length() - 1) {
+            // do not report prefix match here, as we should have at least one char matching the wildcard
+            cursor.set(true, values.get(node), null, node, index);
+            return;
+        }
+
+        lookup(seq, index + 1, node, cursor, prefixConsumer);
+
+        if (prefixConsumer != null) {
+            final int prefixRank = prefixValues.rank(node);
+            if (prefixRank > -1) {
+                prefixConsumer.accept(prefixValues.getByRank(prefixRank), seq.charAt(0) == ' ' ? index - 1 : index);
+            }
+        }
+
+    }
+
+    private int findChild(final int parent, final char ch) {
+        int low = childStart.get(parent);
+        int high = childStart.get(parent + 1) - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final char midChar = chars.get(mid);
+            if (midChar < ch) {
+                low = mid + 1;
+            } else if (midChar > ch) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+
+        return new Iterator<T>() {
+
+            int node = 0;
+            boolean prefixDone = true;
+            T nextValue = null;
+
+            @Override
+            public boolean hasNext() {
+                while (nextValue == null) {
+                    if (!prefixDone) {
+                        prefixDone = true;
+                        nextValue = prefixValues.get(node);
+                    } else if (node < chars.limit() - 1) {
+                        node++;
+                        prefixDone = false;
+                        nextValue = values.get(node);
+                    } else {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final T value = nextValue;
+                nextValue = null;
+                return value;
+            }
+        };
+    }
+
+    /**
+     * Maps node positions to values, storing values only for the nodes that have one.
+     */
+    static final class RankedValues {
+
+        private final LongBuffer bits;
+        private final IntBuffer ranks; // number of values in all words before the word at the same position
+        private final ValueStore values;
+
+        private RankedValues(final LongBuffer bits, final IntBuffer ranks, final ValueStore values) {
+            this.bits = bits;
+            this.ranks = ranks;
+            this.values = values;
+        }
+
+        int rank(final int node) {
+            final int word = node >>> 6;
+            final long mask = 1L << node;
+            final long w = bits.get(word);
+            return ((w & mask) == 0L) ? -1 : ranks.get(word) + Long.bitCount(w & (mask - 1L));
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> T getByRank(final int rank) {
+            return (T) values.get(rank);
+        }
+
+        <T> T get(final int node) {
+            final int rank = rank(node);
+            return rank < 0 ? null : getByRank(rank);
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> void write(final DataOutput out, final TrieValueCodec<T> codec) throws IOException {
+
+            final int words = bits.limit();
+            out.writeInt(words);
+            for (int i = 0; i < words; i++) {
+                out.writeLong(bits.get(i));
+            }
+            for (int i = 0; i < words; i++) {
+                out.writeInt(ranks.get(i));
+            }
+
+            final int count = values.size();
+            final ByteArrayOutputStream data = new ByteArrayOutputStream();
+            final DataOutputStream dataOut = new DataOutputStream(data);
+            final int[] offsets = new int[count + 1];
+            for (int i = 0; i < count; i++) {
+                offsets[i] = dataOut.size();
+                codec.encode((T) values.get(i), dataOut);
+            }
+            dataOut.flush();
+            offsets[count] = dataOut.size();
+
+            out.writeInt(count);
+            for (final int offset : offsets) {
+                out.writeInt(offset);
+            }
+            out.write(data.toByteArray());
+
+        }
+
+        static <T> RankedValues read(final ByteBuffer buffer, final TrieValueCodec<T> codec) {
+            final int words = buffer.getInt();
+            final LongBuffer bits = slice(buffer, words * Long.BYTES).asLongBuffer();
+            final IntBuffer ranks = slice(buffer, words * Integer.BYTES).asIntBuffer();
+            final int count = buffer.getInt();
+            final IntBuffer offsets = slice(buffer, (count + 1) * Integer.BYTES).asIntBuffer();
+            final ByteBuffer data = slice(buffer, offsets.get(count));
+            return new RankedValues(bits, ranks, new EncodedValueStore<>(offsets, data, codec));
+        }
+
+        static final class Builder {
+
+            final long[] bits;
+            final List<Object> values = new ArrayList<>();
+
+            Builder(final int size) {
+                bits = new long[(size + 63) >>> 6];
+            }
+
+            void add(final int node, final Object value) {
+                bits[node >>> 6] |= 1L << node;
+                values.add(value);
+            }
+
+            RankedValues build() {
+                final int[] ranks = new int[bits.length];
+                int rank = 0;
+                for (int i = 0; i < bits.length; i++) {
+                    ranks[i] = rank;
+                    rank += Long.bitCount(bits[i]);
+                }
+                return new RankedValues(LongBuffer.wrap(bits), IntBuffer.wrap(ranks),
+                        new ArrayValueStore(values.toArray()));
+            }
+        }
+
+    }
+
+    interface ValueStore {
+
+        Object get(int rank);
+
+        int size();
+    }
+
+    static final class ArrayValueStore implements ValueStore {
+
+        private final Object[] values;
+
+        ArrayValueStore(final Object[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public Object get(final int rank) {
+            return values[rank];
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+    }
+
+    /**
+     * Decodes values from a buffer when they are accessed for the first time.
+     */
+    static final class EncodedValueStore<T> implements ValueStore {
+
+        private final IntBuffer offsets;
+        private final ByteBuffer data;
+        private final TrieValueCodec<T> codec;
+        private final AtomicReferenceArray<T> decoded;
+
+        EncodedValueStore(final IntBuffer offsets, final ByteBuffer data, final TrieValueCodec<T> codec) {
+            this.offsets = offsets;
+            this.data = data;
+            this.codec = codec;
+            decoded = new AtomicReferenceArray<>(offsets.limit() - 1);
+        }
+
+        @Override
+        public Object get(final int rank) {
+            T value = decoded.get(rank);
+            if (value == null) {
+                final ByteBuffer encoded = data.duplicate();
+                encoded.limit(offsets.get(rank + 1)).position(offsets.get(rank));
+                value = codec.decode(encoded.slice());
+                // concurrent decoding is harmless, we just keep the first value
+                if (!decoded.compareAndSet(rank, null, value)) {
+                    value = decoded.get(rank);
+                }
+            }
+            return value;
+        }
+
+        @Override
+        public int size() {
+            return decoded.length();
+        }
+    }
+
+}
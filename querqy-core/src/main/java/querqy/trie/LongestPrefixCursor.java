@@ -0,0 +1,35 @@
+package querqy.trie;
+
+/**
+ * A {@link TrieCursor} that also keeps track of the longest prefix that was reported during a lookup.
+ *
+ * @param <T> The value type
+ */
+class LongestPrefixCursor<T> extends TrieCursor<T> implements PrefixConsumer<T> {
+
+    private T prefixValue = null;
+    private int prefixIndex = -1;
+
+    @Override
+    public void accept(final T value, final int index) {
+        if (index > prefixIndex) {
+            prefixIndex = index;
+            prefixValue = value;
+        }
+    }
+
+    boolean hasPrefix() {
+        return prefixIndex > -1;
+    }
+
+    T getPrefixValue() {
+        return prefixValue;
+    }
+
+    /**
+     * @return The index of the last char of the longest prefix or -1 if no prefix matched
+     */
+    int getPrefixIndex() {
+        return prefixIndex;
+    }
+}
@@ -5,6 +5,7 @@ import querqy.trie.model.PrefixMatch;
 import querqy.trie.model.SuffixMatch;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Comparator;
 import java.util.List;
 
@@ -38,21 +39,20 @@ public class LookupUtils {
         final List<ExactMatch<T>> exactMatchesSorted = new ArrayList<>(exactMatches);
         exactMatchesSorted.sort(COMPARE_EXACT_MATCH_BY_SIZE_DESC.thenComparing(COMPARE_EXACT_MATCH_BY_LOOKUP_START_ASC));
 
-        exactMatchesSorted.stream()
-                .filter(current -> exactMatchesFiltered.stream()
-                        .allMatch(compared -> sequencesDoNotOverlap(current.lookupStart, current.lookupExclusiveEnd - 1,
-                                compared.lookupStart, compared.lookupExclusiveEnd - 1)))
-                .forEach(exactMatchesFiltered::add);
+        // the lookup offsets that are covered by the matches accepted so far, so that we don't have to compare each
+        // match to all accepted matches
+        final BitSet covered = new BitSet();
+        for (final ExactMatch<T> current : exactMatchesSorted) {
+            final int nextCovered = covered.nextSetBit(current.lookupStart);
+            if (nextCovered < 0 || nextCovered >= current.lookupExclusiveEnd) {
+                exactMatchesFiltered.add(current);
+                covered.set(current.lookupStart, current.lookupExclusiveEnd);
+            }
+        }
 
         exactMatchesFiltered.sort(COMPARE_EXACT_MATCH_BY_LOOKUP_START_ASC);
 
         return exactMatchesFiltered;
     }
 
-    private static boolean sequencesDoNotOverlap(final int startSeq1, final int endSeq1, final int startSeq2,
-                                                 final int endSeq2) {
-        return startSeq1 < startSeq2 && endSeq1 < startSeq2 || startSeq1 > endSeq2 && endSeq1 > endSeq2;
-    }
-
-
 }
@@ -72,29 +72,67 @@ public class Node<T> {
         }
     }
     
+    /**
+     * Copy-on-write version of {@link #put(CharSequence, int, Object, boolean)}: create a copy of this node and its
+     * siblings up to the node for seq.charAt(index) and put the value into the copy. This node and its descendants
+     * remain unchanged. The nodes that are not on the path to seq are shared between the original and the copy.
+     *
+     * @param node The first node at this level, can be null
+     * @param seq The sequence
+     * @param index The position in seq that corresponds to this level
+     * @param value The value, null to remove the value
+     * @param isPrefix Iff true, set the prefix value
+     * @param <T> The value type
+     * @return The copy of node
+     */
+    static <T> Node<T> putCopy(final Node<T> node, final CharSequence seq, final int index, final T value,
+                               final boolean isPrefix) {
+
+        final char ch = seq.charAt(index);
+        final Node<T> copy = node == null ? new Node<>(ch) : node.copy();
+
+        if (copy.character == ch) {
+            if (index == seq.length() - 1) {
+                if (isPrefix) {
+                    copy.prefixValue = value;
+                    copy.hasPrefix = value != null;
+                } else {
+                    copy.value = value;
+                }
+            } else {
+                copy.firstChild = putCopy(copy.firstChild, seq, index + 1, value, isPrefix);
+            }
+        } else {
+            copy.next = putCopy(copy.next, seq, index, value, isPrefix);
+        }
+
+        return copy;
+    }
+
+    private Node<T> copy() {
+        final Node<T> copy = new Node<>(character, value);
+        copy.prefixValue = prefixValue;
+        copy.firstChild = firstChild;
+        copy.next = next;
+        copy.hasPrefix = hasPrefix;
+        return copy;
+    }
+
     public States<T> get(final CharSequence seq, final int index) {
         if (seq.charAt(index) == character) {
             if (index == seq.length() - 1) {
                 return new States<>(new State<T>(true, value, this, index));
                 // do not add prefix match here, as we should have at least one char matching the wildcard
             } else {
-                if (firstChild == null) {
-                    States<T> states = new States<>(new State<T>(false, null, null));
-                    if (hasPrefix) {
-                        states.addPrefix(new State<>(true, prefixValue, this, seq.charAt(0) == ' ' ? index - 1 : index));
-                    }
-                    return states;
-                } else {
-                    States<T> states = firstChild.get(seq, index + 1);
-                    if (hasPrefix) {
-                        states.addPrefix(new State<>(true, prefixValue, this, seq.charAt(0) == ' ' ? index - 1 : index));
-                    }
-                    return states;
+                final States<T> states = (firstChild == null) ? States.unknown() : firstChild.get(seq, index + 1);
+                if (hasPrefix) {
+                    return States.withPrefix(states,
+                            new State<>(true, prefixValue, this, seq.charAt(0) == ' ' ? index - 1 : index));
                 }
-                
+                return states;
             }
         } else {
-            return (next != null) ? next.get(seq, index) : new States<>(new State<T>(false, null, null));
+            return (next != null) ? next.get(seq, index) : States.unknown();
         }
     }
 
@@ -103,18 +141,57 @@ public class Node<T> {
             return new States<>(new State<T>(true, value, this, 0));
                 // do not add prefix match here, as we should have at least one char matching the wildcard
         } else {
-            return (next != null) ? next.get(ch) : new States<>(new State<T>(false, null, null));
+            return (next != null) ? next.get(ch) : States.unknown();
         }
     }
 
     public States<T> getNext(final char ch) {
-        return (firstChild != null) ? firstChild.get(ch) : new States<>(new State<T>(false, null, null));
+        return (firstChild != null) ? firstChild.get(ch) : States.unknown();
     }
 
     public States<T> getNext(final CharSequence seq, final int index) {
-        return (firstChild != null) ? firstChild.get(seq, index) : new States<>(new State<T>(false, null, null));
+        return (firstChild != null) ? firstChild.get(seq, index) : States.unknown();
     }
-    
+
+    /**
+     * Look up seq from position index on, starting with this node and its siblings. The cursor will be set to the
+     * state of the complete sequence before the first prefix is passed to the prefixConsumer. Prefixes are
+     * passed in the same order as they are returned by {@link States#getPrefixes()}.
+     *
+     * @param seq The sequence to look up
+     * @param index The position in seq at which the lookup starts
+     * @param cursor The cursor that will hold the state of the complete sequence
+     * @param prefixConsumer Receives the prefix matches, can be null
+     */
+    public void lookup(final CharSequence seq, final int index, final TrieCursor<T> cursor,
+                       final PrefixConsumer<T> prefixConsumer) {
+        final char ch = seq.charAt(index);
+        Node<T> node = this;
+        while (node.character != ch) {
+            node = node.next;
+            if (node == null) {
+                cursor.setUnknown();
+                return;
+            }
+        }
+
+        if (index == seq.length() - 1) {
+            // do not report prefix match here, as we should have at least one char matching the wildcard
+            cursor.set(true, node.value, node, -1, index);
+            return;
+        }
+
+        if (node.firstChild == null) {
+            cursor.setUnknown();
+        } else {
+            node.firstChild.lookup(seq, index + 1, cursor, prefixConsumer);
+        }
+
+        if (node.hasPrefix && prefixConsumer != null) {
+            prefixConsumer.accept(node.prefixValue, seq.charAt(0) == ' ' ? index - 1 : index);
+        }
+    }
+
     public ValueIterator iterator() {
         return new ValueIterator();
     }
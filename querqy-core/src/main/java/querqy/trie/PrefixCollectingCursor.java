@@ -0,0 +1,86 @@
+package querqy.trie;
+
+import java.util.Arrays;
+
+/**
+ * <p>A {@link TrieCursor} that also collects the prefix matches of the last lookup.</p>
+ *
+ * <p>Only prefixes that have a value are collected. The prefixes are discarded whenever the cursor is moved to a new
+ * state, so that after a lookup the cursor holds the prefixes of this lookup only. The arrays that hold the prefixes
+ * are reused across lookups.</p>
+ *
+ * @param <T> The value type
+ */
+public class PrefixCollectingCursor<T> extends TrieCursor<T> implements PrefixConsumer<T> {
+
+    private Object[] prefixValues = new Object[4];
+    private int[] prefixIndexes = new int[4];
+    private int prefixCount = 0;
+
+    @Override
+    public void accept(final T value, final int index) {
+        if (value == null) {
+            return;
+        }
+        if (prefixCount == prefixValues.length) {
+            prefixValues = Arrays.copyOf(prefixValues, prefixCount * 2);
+            prefixIndexes = Arrays.copyOf(prefixIndexes, prefixCount * 2);
+        }
+        prefixValues[prefixCount] = value;
+        prefixIndexes[prefixCount] = index;
+        prefixCount++;
+    }
+
+    @Override
+    void set(final boolean isKnown, final T value, final Node<T> node, final int nodeId, final int index) {
+        super.set(isKnown, value, node, nodeId, index);
+        Arrays.fill(prefixValues, 0, prefixCount, null);
+        prefixCount = 0;
+    }
+
+    /**
+     * @return The number of prefixes with a value that matched in the last lookup, longest prefix first
+     */
+    public int getPrefixCount() {
+        return prefixCount;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T getPrefixValue(final int i) {
+        if (i >= prefixCount) {
+            throw new IndexOutOfBoundsException(i);
+        }
+        return (T) prefixValues[i];
+    }
+
+    /**
+     * @param i The number of the prefix
+     * @return The index of the last char of the lookup sequence that matched the prefix
+     */
+    public int getPrefixIndex(final int i) {
+        if (i >= prefixCount) {
+            throw new IndexOutOfBoundsException(i);
+        }
+        return prefixIndexes[i];
+    }
+
+    /**
+     * @return true iff the complete sequence has a value or any prefix matched
+     */
+    public boolean hasMatch() {
+        return isFinal() || prefixCount > 0;
+    }
+
+    /**
+     * Create a {@link States} object from the current state of this cursor and its prefixes.
+     *
+     * @return The states
+     */
+    public States<T> toStates() {
+        final States<T> states = new States<>(toState());
+        for (int i = 0; i < prefixCount; i++) {
+            states.addPrefix(new State<>(true, getPrefixValue(i), null, prefixIndexes[i]));
+        }
+        return states;
+    }
+}
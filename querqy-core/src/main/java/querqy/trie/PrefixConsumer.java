@@ -0,0 +1,20 @@
+package querqy.trie;
+
+/**
+ * Receives the prefix matches of a lookup in a {@link TrieMap}, see
+ * {@link TrieMap#lookup(CharSequence, TrieCursor, PrefixConsumer)}.
+ *
+ * @param <T> The value type
+ */
+@FunctionalInterface
+public interface PrefixConsumer<T> {
+
+    /**
+     * Called for each prefix that matched the lookup sequence.
+     *
+     * @param value The value that was stored for the prefix. Can be null.
+     * @param index The index of the last char of the lookup sequence that matched the prefix
+     */
+    void accept(T value, int index);
+
+}
@@ -2,12 +2,8 @@ package querqy.trie;
 
 import querqy.trie.model.PrefixMatch;
 
-import java.util.Collections;
-import java.util.List;
 import java.util.Optional;
 
-import static querqy.trie.LookupUtils.COMPARE_STATE_BY_INDEX_DESC;
-
 public class PrefixTrieMap<T> {
 
     private final TrieMap<T> trieMap;
@@ -37,23 +33,20 @@ public class PrefixTrieMap<T> {
             return Optional.empty();
         }
 
-        final States<T> states = trieMap.get(seq);
+        final LongestPrefixCursor<T> cursor = new LongestPrefixCursor<>();
+        trieMap.lookup(seq, cursor, cursor);
 
-        final State<T> fullMatch = states.getStateForCompleteSequence();
-        if (fullMatch.isFinal()) {
-            return Optional.of(new PrefixMatch<>(fullMatch.index + 1, fullMatch.value));
+        if (cursor.isFinal()) {
+            return Optional.of(new PrefixMatch<>(cursor.getIndex() + 1, cursor.getValue()));
         }
 
-        final List<State<T>> prefixMatches = states.getPrefixes();
-        if (prefixMatches != null && !prefixMatches.isEmpty()) {
-            final State<T> prefixMaxMatch = Collections.max(states.getPrefixes(), COMPARE_STATE_BY_INDEX_DESC);
-
-            final int exclusiveEnd = prefixMaxMatch.index + 1;
+        if (cursor.hasPrefix()) {
+            final int exclusiveEnd = cursor.getPrefixIndex() + 1;
 
             return Optional.of(new PrefixMatch<>(
                     exclusiveEnd,
                     seq.subSequence(exclusiveEnd, seq.length()),
-                    prefixMaxMatch.value));
+                    cursor.getPrefixValue()));
         }
 
         return Optional.empty();
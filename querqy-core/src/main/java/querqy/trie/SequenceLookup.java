@@ -3,14 +3,12 @@ package querqy.trie;
 import querqy.CompoundCharSequence;
 import querqy.LowerCaseCharSequence;
 import querqy.trie.model.ExactMatch;
-import querqy.trie.model.LookupState;
 import querqy.trie.model.PrefixMatch;
 import querqy.trie.model.SuffixMatch;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 public class SequenceLookup<T> {
@@ -48,45 +46,80 @@ public class SequenceLookup<T> {
 
     public List<PrefixMatch<T>> findSingleTermPrefixMatches(final List<? extends CharSequence> terms) {
         final List<PrefixMatch<T>> prefixMatches = new ArrayList<>();
-        final AtomicInteger lookupOffset = new AtomicInteger(0);
 
-        terms.forEach(term -> {
-            prefixTrieMap.getPrefix(lc(term)).ifPresent(
-                    prefixMatch -> prefixMatches.add(prefixMatch.setLookupOffset(lookupOffset.get())));
-            lookupOffset.getAndIncrement(); });
+        int lookupOffset = 0;
+        for (final CharSequence term : terms) {
+            final Optional<PrefixMatch<T>> prefixMatch = prefixTrieMap.getPrefix(lc(term));
+            if (prefixMatch.isPresent()) {
+                prefixMatches.add(prefixMatch.get().setLookupOffset(lookupOffset));
+            }
+            lookupOffset++;
+        }
 
         return prefixMatches;
     }
 
     public List<SuffixMatch<T>> findSingleTermSuffixMatches(final List<? extends CharSequence> terms) {
         final List<SuffixMatch<T>> suffixMatches = new ArrayList<>();
-        final AtomicInteger lookupOffset = new AtomicInteger(0);
 
-        terms.forEach(term -> {
-            suffixTrieMap.getBySuffix(lc(term)).ifPresent(
-                    suffixMatch -> suffixMatches.add(suffixMatch.setLookupOffset(lookupOffset.get())));
-            lookupOffset.getAndIncrement(); });
+        int lookupOffset = 0;
+        for (final CharSequence term : terms) {
+            final Optional<SuffixMatch<T>> suffixMatch = suffixTrieMap.getBySuffix(lc(term));
+            if (suffixMatch.isPresent()) {
+                suffixMatches.add(suffixMatch.get().setLookupOffset(lookupOffset));
+            }
+            lookupOffset++;
+        }
 
         return suffixMatches;
     }
 
+    /**
+     * <p>Find all sub-sequences of the terms that were added using {@link #put(List, Object)}.</p>
+     *
+     * <p>The terms are walked once. For each term, we only keep the trie states of the sub-sequences that can still
+     * be continued, together with their start offsets, in two arrays that are swapped after each term. No
+     * intermediate lists are created.</p>
+     *
+     * @param terms The terms of the query
+     * @return The matches, ordered by the end offset and then by decreasing start offset
+     */
     public List<ExactMatch<T>> findExactMatches(final List<? extends CharSequence> terms) {
 
         final List<ExactMatch<T>> exactMatches = new ArrayList<>();
-        int lookupIndex = 0;
 
-        final LinkedList<LookupState<T>> lookupStates = new LinkedList<>();
+        final int numTerms = terms.size();
+        if (numTerms == 0) {
+            return exactMatches;
+        }
+
+        // the states of the open sub-sequences and their start offsets, ordered by increasing start offset
+        @SuppressWarnings("unchecked")
+        State<T>[] states = new State[numTerms];
+        int[] starts = new int[numTerms];
+        @SuppressWarnings("unchecked")
+        State<T>[] nextStates = new State[numTerms];
+        int[] nextStarts = new int[numTerms];
+        int numStates = 0;
+
+        int lookupIndex = 0;
+        for (final CharSequence rawTerm : terms) {
 
-        for (final CharSequence term : lc(terms)) {
-            lookupStates.add(new LookupState<>(lookupIndex, new LinkedList<>(), null));
+            final CharSequence term = lc(rawTerm);
 
-            final int lookupStatesTempSize = lookupStates.size();
-            for (int i = 0; i < lookupStatesTempSize; i++) {
+            // a sub-sequence can start at each term
+            states[numStates] = null;
+            starts[numStates] = lookupIndex;
+            numStates++;
 
-                final LookupState<T> lookupState = lookupStates.removeLast();
+            // walk the states from the latest to the earliest start offset, keeping the order of the matches
+            // stable, and collect the states that can be continued with the next term
+            int numNextStates = 0;
+            for (int i = numStates - 1; i >= 0; i--) {
 
-                final State<T> subsequentLookupState = lookupState.getState() != null
-                        ? trieMap.get(term, lookupState.getState()).getStateForCompleteSequence()
+                final State<T> state = states[i];
+                final State<T> subsequentLookupState = state != null
+                        ? trieMap.get(term, state).getStateForCompleteSequence()
                         : trieMap.get(term).getStateForCompleteSequence();
 
                 if (!subsequentLookupState.isKnown) {
@@ -94,16 +127,36 @@ public class SequenceLookup<T> {
                 }
 
                 if (subsequentLookupState.isFinal() && subsequentLookupState.value != null) {
-                    exactMatches.add(new ExactMatch<>(
-                            lookupState.lookupOffsetStart, lookupIndex + 1, subsequentLookupState.value));
+                    exactMatches.add(new ExactMatch<>(starts[i], lookupIndex + 1, subsequentLookupState.value));
                 }
 
-                final State<T> subsequentLookupStateNext = trieMap.get(DELIMITER, subsequentLookupState).getStateForCompleteSequence();
+                final State<T> subsequentLookupStateNext = trieMap.get(DELIMITER, subsequentLookupState)
+                        .getStateForCompleteSequence();
                 if (subsequentLookupStateNext.isKnown) {
-                    lookupStates.addFirst(lookupState.addTerm(term).setState(subsequentLookupStateNext));
+                    nextStates[numNextStates] = subsequentLookupStateNext;
+                    nextStarts[numNextStates] = starts[i];
+                    numNextStates++;
                 }
             }
 
+            // the next states were collected in decreasing order of their start offsets
+            for (int i = 0, j = numNextStates - 1; i < j; i++, j--) {
+                final State<T> tmpState = nextStates[i];
+                nextStates[i] = nextStates[j];
+                nextStates[j] = tmpState;
+                final int tmpStart = nextStarts[i];
+                nextStarts[i] = nextStarts[j];
+                nextStarts[j] = tmpStart;
+            }
+
+            final State<T>[] swapStates = states;
+            states = nextStates;
+            nextStates = swapStates;
+            final int[] swapStarts = starts;
+            starts = nextStarts;
+            nextStarts = swapStarts;
+            numStates = numNextStates;
+
             lookupIndex++;
         }
 
@@ -111,10 +164,10 @@ public class SequenceLookup<T> {
     }
 
     private List<CharSequence> lc(final List<? extends CharSequence> seqList) {
-        return seqList.stream().map(this::lc).collect(Collectors.toCollection(LinkedList::new));
+        return seqList.stream().map(this::lc).collect(Collectors.toList());
     }
 
     private CharSequence lc(final CharSequence seq) {
-        return ignoreCase ? new LowerCaseCharSequence(seq) : seq;
+        return ignoreCase && !(seq instanceof LowerCaseCharSequence) ? new LowerCaseCharSequence(seq) : seq;
     }
 }
@@ -8,6 +8,8 @@ package querqy.trie;
  *
  */
 public class State<T> {
+
+    private static final State<?> UNKNOWN = new State<>(false, null, null);
     
     public final T value;
     public final boolean isKnown;
@@ -16,18 +18,43 @@ public class State<T> {
      * The index of the last matching char
      */
     public final int index;
+    /**
+     * The position of the matching node in a {@link CompactTrieMap}, -1 if the state was not created by a
+     * CompactTrieMap
+     */
+    final int nodeId;
     
     public State(final boolean isKnown, final T value, Node<T> node) {
         this(isKnown, value, node, -1);
     }
     
     public State(final boolean isKnown, final T value, final Node<T> node, final int index) {
+        this(isKnown, value, node, -1, index);
+    }
+
+    State(final boolean isKnown, final T value, final int nodeId, final int index) {
+        this(isKnown, value, null, nodeId, index);
+    }
+
+    State(final boolean isKnown, final T value, final Node<T> node, final int nodeId, final int index) {
         this.isKnown = isKnown;
         this.value = value;
         this.node = node;
+        this.nodeId = nodeId;
         this.index = index;
     }
     
+    /**
+     * Get the shared state that represents a sequence that is not known to the trie.
+     *
+     * @param <T> The value type
+     * @return The shared unknown state
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> State<T> unknown() {
+        return (State<T>) UNKNOWN;
+    }
+
     public boolean isKnown() {
         return isKnown;
     }
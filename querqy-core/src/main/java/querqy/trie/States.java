@@ -11,7 +11,7 @@ import java.util.List;
  *
  */
 public class States<T> {
-    
+
     private List<State<T>> prefixes = null;
     private final State<T> completeSequence;
     
@@ -26,6 +26,23 @@ public class States<T> {
         prefixes.add(prefix);
     }
     
+    /**
+     * Create a States object for a lookup that neither matched the complete sequence nor any prefix. The object is
+     * not shared, prefixes can be added to it. Use {@link TrieMap#lookup(CharSequence, TrieCursor, PrefixConsumer)}
+     * to look up sequences without creating States objects.
+     *
+     * @param <T> The value type
+     * @return A new States object for an unknown sequence
+     */
+    public static <T> States<T> unknown() {
+        return new States<>(State.unknown());
+    }
+
+    static <T> States<T> withPrefix(final States<T> states, final State<T> prefix) {
+        states.addPrefix(prefix);
+        return states;
+    }
+
     public State<T> getStateForCompleteSequence() {
         return completeSequence;
     }
@@ -39,6 +56,5 @@ public class States<T> {
         return "States [prefixes=" + prefixes + ", completeSequence="
                 + completeSequence + "]";
     }
-    
-    
+
 }
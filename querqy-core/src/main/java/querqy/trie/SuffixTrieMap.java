@@ -3,12 +3,8 @@ package querqy.trie;
 import querqy.ReverseComparableCharSequence;
 import querqy.trie.model.SuffixMatch;
 
-import java.util.Collections;
-import java.util.List;
 import java.util.Optional;
 
-import static querqy.trie.LookupUtils.COMPARE_STATE_BY_INDEX_DESC;
-
 public class SuffixTrieMap<T> {
 
     private final TrieMap<T> trieMap;
@@ -41,23 +37,20 @@ public class SuffixTrieMap<T> {
 
         final ReverseComparableCharSequence revSeq = new ReverseComparableCharSequence(seq);
 
-        final States<T> states = trieMap.get(revSeq);
+        final LongestPrefixCursor<T> cursor = new LongestPrefixCursor<>();
+        trieMap.lookup(revSeq, cursor, cursor);
 
-        final State<T> fullMatch = states.getStateForCompleteSequence();
-        if (fullMatch.isFinal()) {
-            return Optional.of(new SuffixMatch<>(0, fullMatch.value));
+        if (cursor.isFinal()) {
+            return Optional.of(new SuffixMatch<>(0, cursor.getValue()));
         }
 
-        final List<State<T>> suffixMatches = states.getPrefixes();
-        if (suffixMatches != null && !suffixMatches.isEmpty()) {
-            final State<T> suffixMaxMatch = Collections.max(states.getPrefixes(), COMPARE_STATE_BY_INDEX_DESC);
-
-            final int startSubstring = seq.length() - (suffixMaxMatch.index + 1);
+        if (cursor.hasPrefix()) {
+            final int startSubstring = seq.length() - (cursor.getPrefixIndex() + 1);
 
             return Optional.of(new SuffixMatch<>(
                     startSubstring,
                     seq.subSequence(0, startSubstring),
-                    suffixMaxMatch.value));
+                    cursor.getPrefixValue()));
         }
 
         return Optional.empty();
@@ -0,0 +1,86 @@
+package querqy.trie;
+
+/**
+ * <p>A mutable, reusable alternative to {@link State} for looking up sequences in a {@link TrieMap}.</p>
+ *
+ * <p>The cursor holds the state of the complete sequence of the last lookup. It can be passed to
+ * {@link TrieMap#lookupNext(CharSequence, TrieCursor, PrefixConsumer)} to continue from this state. Use
+ * {@link #toState()} if the state has to be kept beyond the next lookup with this cursor.</p>
+ *
+ * <p>A TrieCursor is not thread-safe.</p>
+ *
+ * @param <T> The value type
+ */
+public class TrieCursor<T> {
+
+    private boolean isKnown = false;
+    private T value = null;
+    private int index = -1;
+    Node<T> node = null;
+    int nodeId = -1;
+
+    public TrieCursor() {}
+
+    /**
+     * Create a cursor that continues from the given state.
+     *
+     * @param state The state to continue from.
+     */
+    public TrieCursor(final State<T> state) {
+        setState(state);
+    }
+
+    /**
+     * Set this cursor to the given state.
+     *
+     * @param state The state
+     */
+    public void setState(final State<T> state) {
+        set(state.isKnown, state.value, state.node, state.nodeId, state.index);
+    }
+
+    void set(final boolean isKnown, final T value, final Node<T> node, final int nodeId, final int index) {
+        this.isKnown = isKnown;
+        this.value = value;
+        this.node = node;
+        this.nodeId = nodeId;
+        this.index = index;
+    }
+
+    void setUnknown() {
+        set(false, null, null, -1, -1);
+    }
+
+    public boolean isKnown() {
+        return isKnown;
+    }
+
+    public boolean isFinal() {
+        return isKnown && value != null;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * @return The index of the last matching char
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Create an immutable state from the current position of this cursor.
+     *
+     * @return The state of this cursor
+     */
+    public State<T> toState() {
+        return isKnown ? new State<>(true, value, node, nodeId, index) : State.unknown();
+    }
+
+    @Override
+    public String toString() {
+        return "TrieCursor [value=" + value + ", isKnown=" + isKnown + ", index=" + index + "]";
+    }
+}
@@ -71,11 +71,47 @@ public class TrieMap<T> implements Iterable<T> {
         root.putPrefix(seq, 0, value);
     }
     
+    /**
+     * <p>Create a TrieMap that maps seq to value, without changing this TrieMap (copy-on-write).</p>
+     *
+     * <p>Only the nodes on the path to seq are copied, all other nodes are shared with this TrieMap. Lookups in this
+     * TrieMap can run concurrently. This TrieMap must not be changed using {@link #put(CharSequence, Object)} or
+     * {@link #putPrefix(CharSequence, Object)} afterwards, as the change would also be visible in the new TrieMap.</p>
+     *
+     * @param seq The sequence
+     * @param value The value, null to remove the value for seq
+     * @return The new TrieMap
+     */
+    public TrieMap<T> withValue(final CharSequence seq, final T value) {
+        return copyWith(seq, value, false);
+    }
+
+    /**
+     * Create a TrieMap that maps prefix seq to value, without changing this TrieMap.
+     *
+     * @param seq The prefix
+     * @param value The value, null to remove the prefix value for seq
+     * @return The new TrieMap
+     * @see #withValue(CharSequence, Object)
+     */
+    public TrieMap<T> withPrefixValue(final CharSequence seq, final T value) {
+        return copyWith(seq, value, true);
+    }
+
+    private TrieMap<T> copyWith(final CharSequence seq, final T value, final boolean isPrefix) {
+        if (seq.length() == 0) {
+            throw new IllegalArgumentException("Must not put empty sequence into trie");
+        }
+        final TrieMap<T> copy = new TrieMap<>();
+        copy.root = Node.putCopy(root, seq, 0, value, isPrefix);
+        return copy;
+    }
+
     public States<T> get(final CharSequence seq) {
         if (seq.length() == 0) {
-            return new States<>(new State<T>(false, null, null));
+            return States.unknown();
         }
-        return (root == null) ? new States<>(new State<T>(false, null, null)) : root.get(seq, 0);
+        return (root == null) ? States.unknown() : root.get(seq, 0);
     }
     
 
@@ -84,9 +120,53 @@ public class TrieMap<T> implements Iterable<T> {
             throw new IllegalArgumentException("Known state expected");
         }
         if (seq.length() == 0) {
-            return new States<>(new State<T>(false, null, null));
+            return States.unknown();
         }
         return stateInfo.node.getNext(seq, 0);
     }
 
+    /**
+     * <p>Look up a sequence without creating {@link States} and {@link State} objects.</p>
+     *
+     * <p>The cursor will be set to the state of the complete sequence. Matching prefixes are passed to the
+     * prefixConsumer after the cursor has been set, starting from the longest prefix.</p>
+     *
+     * @param seq The sequence to look up
+     * @param cursor The cursor that will hold the state of the complete sequence
+     * @param prefixConsumer Receives the prefix matches, can be null
+     * @return true iff the complete sequence is known
+     */
+    public boolean lookup(final CharSequence seq, final TrieCursor<T> cursor, final PrefixConsumer<T> prefixConsumer) {
+        if (seq.length() == 0 || root == null) {
+            cursor.setUnknown();
+        } else {
+            root.lookup(seq, 0, cursor, prefixConsumer);
+        }
+        return cursor.isKnown();
+    }
+
+    /**
+     * Continue a lookup from the current state of the cursor, which must be known. The cursor will be moved to the
+     * state of the complete sequence. This is the allocation-free equivalent of {@link #get(CharSequence, State)}.
+     *
+     * @param seq The sequence to look up after the current state of the cursor
+     * @param cursor The cursor
+     * @param prefixConsumer Receives the prefix matches, can be null
+     * @return true iff the complete sequence is known
+     * @see #lookup(CharSequence, TrieCursor, PrefixConsumer)
+     */
+    public boolean lookupNext(final CharSequence seq, final TrieCursor<T> cursor,
+                              final PrefixConsumer<T> prefixConsumer) {
+        if (!cursor.isKnown() || cursor.node == null) {
+            throw new IllegalArgumentException("Known state expected");
+        }
+        final Node<T> firstChild = cursor.node.firstChild;
+        if (seq.length() == 0 || firstChild == null) {
+            cursor.setUnknown();
+        } else {
+            firstChild.lookup(seq, 0, cursor, prefixConsumer);
+        }
+        return cursor.isKnown();
+    }
+
 }
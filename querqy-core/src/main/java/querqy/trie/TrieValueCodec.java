@@ -0,0 +1,31 @@
+package querqy.trie;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes and decodes the values of a {@link CompactTrieMap} for its binary representation.
+ *
+ * @param <T> The value type
+ */
+public interface TrieValueCodec<T> {
+
+    /**
+     * Write the value.
+     *
+     * @param value The value, never null
+     * @param out The output
+     * @throws IOException if the value cannot be written
+     */
+    void encode(T value, DataOutput out) throws IOException;
+
+    /**
+     * Read a value that was written by {@link #encode(Object, DataOutput)}.
+     *
+     * @param in A buffer that contains exactly the bytes of the encoded value, starting at its position
+     * @return The value
+     */
+    T decode(ByteBuffer in);
+
+}
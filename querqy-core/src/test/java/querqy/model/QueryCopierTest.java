@@ -0,0 +1,109 @@
+package querqy.model;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import querqy.model.Clause.Occur;
+import querqy.model.convert.builder.ExpandedQueryBuilder;
+
+import java.util.List;
+
+public class QueryCopierTest {
+
+    @Test
+    public void testThatGeneratedFlagsAndOccurAreKept() {
+
+        final Query query = new Query();
+        final DisjunctionMaxQuery dmq1 = new DisjunctionMaxQuery(query, Occur.MUST, false);
+        query.addClause(dmq1);
+        dmq1.addClause(new Term(dmq1, "f1", "a"));
+        dmq1.addClause(new Term(dmq1, "b", true));
+
+        final BooleanQuery nested = new BooleanQuery(dmq1, Occur.SHOULD, true);
+        dmq1.addClause(nested);
+        final DisjunctionMaxQuery nestedDmq = new DisjunctionMaxQuery(nested, Occur.MUST, true);
+        nested.addClause(nestedDmq);
+        nestedDmq.addClause(new Term(nestedDmq, "c", true));
+
+        final DisjunctionMaxQuery dmq2 = new DisjunctionMaxQuery(query, Occur.MUST_NOT, false);
+        query.addClause(dmq2);
+        dmq2.addClause(new BoostedTerm(dmq2, "f2", "d", 0.5f));
+
+        final Query copy = (Query) QueryCopier.copy(query);
+
+        assertNotSame(query, copy);
+        assertFalse(copy.isGenerated());
+
+        final List<DisjunctionMaxQuery> dmqs = copy.getClauses(DisjunctionMaxQuery.class);
+        assertEquals(2, dmqs.size());
+
+        final DisjunctionMaxQuery copy1 = dmqs.get(0);
+        assertSame(copy, copy1.getParent());
+        assertEquals(Occur.MUST, copy1.getOccur());
+        assertEquals(3, copy1.getClauses().size());
+
+        final Term termA = (Term) copy1.getClauses().get(0);
+        assertEquals("f1", termA.getField());
+        assertEquals("a", termA.toString());
+        assertFalse(termA.isGenerated());
+        assertSame(copy1, termA.getParent());
+
+        final Term termB = (Term) copy1.getClauses().get(1);
+        assertTrue(termB.isGenerated());
+
+        final BooleanQuery nestedCopy = (BooleanQuery) copy1.getClauses().get(2);
+        assertNotSame(nested, nestedCopy);
+        assertSame(copy1, nestedCopy.getParent());
+        assertTrue(nestedCopy.isGenerated());
+        final DisjunctionMaxQuery nestedDmqCopy = (DisjunctionMaxQuery) nestedCopy.getClauses().get(0);
+        assertTrue(((Term) nestedDmqCopy.getClauses().get(0)).isGenerated());
+
+        final DisjunctionMaxQuery copy2 = dmqs.get(1);
+        assertEquals(Occur.MUST_NOT, copy2.getOccur());
+        final BoostedTerm boostedTerm = (BoostedTerm) copy2.getClauses().get(0);
+        assertEquals(0.5f, boostedTerm.getBoost(), 0.0001f);
+        assertEquals("f2", boostedTerm.getField());
+
+        // modifying the copy must not change the original query
+        copy.removeClause(copy2);
+        assertEquals(2, query.getClauses().size());
+    }
+
+    @Test
+    public void testThatExpandedQueryIsCopied() {
+
+        final Query userQuery = new Query();
+        final DisjunctionMaxQuery dmq = new DisjunctionMaxQuery(userQuery, Occur.SHOULD, false);
+        userQuery.addClause(dmq);
+        dmq.addClause(new Term(dmq, "a"));
+
+        final ExpandedQuery expandedQuery = new ExpandedQuery(userQuery);
+        expandedQuery.addFilterQuery(new StringRawQuery(null, "f:x", Occur.MUST, true));
+
+        final Query boostQuery = new Query(true);
+        final DisjunctionMaxQuery boostDmq = new DisjunctionMaxQuery(boostQuery, Occur.SHOULD, true);
+        boostQuery.addClause(boostDmq);
+        boostDmq.addClause(new Term(boostDmq, "b", true));
+        expandedQuery.addBoostUpQuery(new BoostQuery(boostQuery, 2f));
+        expandedQuery.addBoostDownQuery(new BoostQuery(new MatchAllQuery(true), 3f));
+
+        final ExpandedQuery copy = QueryCopier.copy(expandedQuery);
+
+        assertNotSame(expandedQuery.getUserQuery(), copy.getUserQuery());
+        assertEquals(new ExpandedQueryBuilder(expandedQuery), new ExpandedQueryBuilder(copy));
+        assertEquals(expandedQuery.getFilterQueries(), copy.getFilterQueries());
+        assertEquals(2f, copy.getBoostUpQueries().iterator().next().getBoost(), 0.0001f);
+        assertNotSame(boostQuery, copy.getBoostUpQueries().iterator().next().getQuery());
+        assertNull(copy.getMultiplicativeBoostQueries());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatUnknownTermTypesAreNotCopied() {
+        final Query query = new Query();
+        final DisjunctionMaxQuery dmq = new DisjunctionMaxQuery(query, Occur.SHOULD, false);
+        query.addClause(dmq);
+        dmq.addClause(new Term(dmq, "a") {});
+        QueryCopier.copy(query);
+    }
+
+}
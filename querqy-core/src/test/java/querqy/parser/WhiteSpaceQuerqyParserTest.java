@@ -1,6 +1,7 @@
 package querqy.parser;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
 import static querqy.QuerqyMatchers.bq;
 import static querqy.QuerqyMatchers.dmq;
 import static querqy.QuerqyMatchers.must;
@@ -9,7 +10,10 @@ import static querqy.QuerqyMatchers.term;
 
 import org.junit.Test;
 
+import querqy.LowerCaseCharSequence;
+import querqy.model.DisjunctionMaxQuery;
 import querqy.model.Query;
+import querqy.model.Term;
 import querqy.parser.WhiteSpaceQuerqyParser;
 
 public class WhiteSpaceQuerqyParserTest {
@@ -204,6 +208,23 @@ public class WhiteSpaceQuerqyParserTest {
         
     }
     
+    @Test
+    public void testLowerCaseInput() {
+        WhiteSpaceQuerqyParser parser = new LowerCaseWhiteSpaceQuerqyParser();
+        Query query = parser.parse("-Abc +DEF def - gHi");
+        assertThat(query,
+                bq(
+                        dmq(mustNot(), term("abc")),
+                        dmq(must(), term("def")),
+                        dmq(term("def")),
+                        dmq(term("-")),
+                        dmq(term("ghi"))
+                ));
+
+        Term term = (Term) ((DisjunctionMaxQuery) query.getClauses().get(4)).getClauses().get(0);
+        assertThat(term.getValue(), instanceOf(LowerCaseCharSequence.class));
+    }
+
   /*  @Test
     public void testSpeed() throws Exception {
         
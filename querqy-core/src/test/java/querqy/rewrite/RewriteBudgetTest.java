@@ -0,0 +1,64 @@
+package querqy.rewrite;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+
+public class RewriteBudgetTest {
+
+    @Test
+    public void testThatUnlimitedBudgetIsNeverExhausted() {
+        assertThat(RewriteBudget.of(null, null)).isSameAs(RewriteBudget.UNLIMITED);
+        for (int i = 0; i < 1000; i++) {
+            assertThat(RewriteBudget.UNLIMITED.tryConsume(1000)).isTrue();
+        }
+        assertThat(RewriteBudget.UNLIMITED.isExhausted()).isFalse();
+        assertThat(RewriteBudget.UNLIMITED.getRefusals()).isEqualTo(0);
+    }
+
+    @Test
+    public void testThatMissingBudgetOfRequestIsUnlimited() {
+        assertThat(RewriteBudget.of((SearchEngineRequestAdapter) null)).isSameAs(RewriteBudget.UNLIMITED);
+
+        final SearchEngineRequestAdapter requestAdapter = mock(SearchEngineRequestAdapter.class);
+        assertThat(RewriteBudget.of(requestAdapter)).isSameAs(RewriteBudget.UNLIMITED);
+
+        final RewriteBudget budget = RewriteBudget.of(null, 3);
+        when(requestAdapter.getRewriteBudget()).thenReturn(budget);
+        assertThat(RewriteBudget.of(requestAdapter)).isSameAs(budget);
+    }
+
+    @Test
+    public void testThatStepsAreLimited() {
+        final RewriteBudget budget = RewriteBudget.of(null, 3);
+        assertThat(budget.tryConsume(2)).isTrue();
+        assertThat(budget.isExhausted()).isFalse();
+        assertThat(budget.tryConsume(1)).isTrue();
+        assertThat(budget.isExhausted()).isTrue();
+        assertThat(budget.tryConsume(1)).isFalse();
+        assertThat(budget.tryConsume(1)).isFalse();
+        assertThat(budget.getRefusals()).isEqualTo(2);
+    }
+
+    @Test
+    public void testThatTimeIsLimited() throws InterruptedException {
+        final RewriteBudget budget = RewriteBudget.of(1, null);
+        Thread.sleep(5);
+        assertThat(budget.isExhausted()).isTrue();
+        assertThat(budget.tryConsume(1)).isFalse();
+
+        assertThat(RewriteBudget.of(0, null).tryConsume(1)).isFalse();
+        assertThat(RewriteBudget.of(60_000, null).tryConsume(1)).isTrue();
+        assertThat(RewriteBudget.of(Integer.MAX_VALUE, null).tryConsume(1)).isTrue();
+    }
+
+    @Test
+    public void testThatNegativeLimitsAreRejected() {
+        assertThatThrownBy(() -> RewriteBudget.of(-1, null)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> RewriteBudget.of(null, -1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+}
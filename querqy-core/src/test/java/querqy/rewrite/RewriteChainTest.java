@@ -3,6 +3,7 @@ package querqy.rewrite;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InOrder;
+import org.mockito.Answers;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import querqy.model.EmptySearchEngineRequestAdapter;
@@ -10,6 +11,8 @@ import querqy.model.ExpandedQuery;
 import querqy.rewrite.logging.ActionLog;
 import querqy.rewrite.logging.RewriteChainLog;
 import querqy.rewrite.logging.RewriterLog;
+import querqy.rewrite.metrics.RewriteChainMetrics;
+import querqy.rewrite.metrics.RewriterMetrics;
 
 import java.util.List;
 import java.util.Optional;
@@ -38,7 +41,7 @@ public class RewriteChainTest {
     @Mock
     ActionLog actionLogging2;
 
-    @Mock SearchEngineRequestAdapter searchEngineRequestAdapter;
+    @Mock(answer = Answers.CALLS_REAL_METHODS) SearchEngineRequestAdapter searchEngineRequestAdapter;
 
     @Test
     public void testThat_rewriterAreCreatedAndExecutedInCorrectOrder_forExecutingInRewriteChain() {
@@ -169,6 +172,90 @@ public class RewriteChainTest {
         assertThatThrownBy(() -> new RewriteChain(List.of(rewriterFactory1, rewriterFactory2)));
     }
 
+    @Test
+    public void testThat_rewritesAreRecordedPerRewriter_forInstrumentedRewriteChain() {
+        setupRewriterFactories();
+        setupRewriter();
+
+        final RewriteChainMetrics metrics = new RewriteChainMetrics(false);
+        final RewriteChain rewriteChain = new RewriteChain(List.of(rewriterFactory1, rewriterFactory2), null,
+                metrics);
+        rewriteChain.rewrite(expandedQuery1, new EmptySearchEngineRequestAdapter());
+        rewriteChain.rewrite(expandedQuery1, new EmptySearchEngineRequestAdapter());
+
+        assertThat(metrics.getAllRewriterMetrics()).hasSize(2);
+        final RewriterMetrics rewriterMetrics = metrics.getRewriterMetrics("1").orElseThrow();
+        assertThat(rewriterMetrics.getRewrites()).isEqualTo(2L);
+        assertThat(rewriterMetrics.getAppliedRewrites()).isEqualTo(2L);
+        assertThat(rewriterMetrics.getAllocatedBytes()).isEqualTo(0L);
+        assertThat(rewriterMetrics.getLatencyNanos().getCount()).isEqualTo(2L);
+    }
+
+    @Test
+    public void testThat_rewritesWithoutChangesAreNotCountedAsApplied_forInstrumentedRewriteChain() {
+        setupRewriterFactories();
+        setupRewriter(false);
+
+        final RewriteChainMetrics metrics = new RewriteChainMetrics(true);
+        final RewriteChain rewriteChain = new RewriteChain(List.of(rewriterFactory1, rewriterFactory2), null,
+                metrics);
+        rewriteChain.rewrite(expandedQuery1, new EmptySearchEngineRequestAdapter());
+
+        final RewriterMetrics rewriterMetrics = metrics.getRewriterMetrics("2").orElseThrow();
+        assertThat(rewriterMetrics.getRewrites()).isEqualTo(1L);
+        assertThat(rewriterMetrics.getAppliedRewrites()).isEqualTo(0L);
+    }
+
+    @Test
+    public void testThat_remainingRewritersAreSkipped_forExhaustedRewriteBudget() {
+        when(rewriterFactory1.getRewriterId()).thenReturn("1");
+        when(rewriterFactory2.getRewriterId()).thenReturn("2");
+        when(rewriterFactory1.createRewriter(any(), any())).thenReturn(queryRewriter1);
+
+        // the rewriter tries to do some optional work but the budget was consumed by the chain already
+        when(queryRewriter1.rewrite(any(), any())).thenAnswer(invocation -> {
+            final SearchEngineRequestAdapter adapter = invocation.getArgument(1);
+            assertThat(adapter.getRewriteBudget().tryConsume(1)).isFalse();
+            return RewriterOutput.builder().expandedQuery(expandedQuery1).build();
+        });
+
+        final RewriteBudget budget = RewriteBudget.of(null, 1);
+        final RewriteChainMetrics metrics = new RewriteChainMetrics(false);
+        final RewriteChain rewriteChain = new RewriteChain(List.of(rewriterFactory1, rewriterFactory2), null,
+                metrics);
+        final RewriteChainOutput output = rewriteChain.rewrite(expandedQuery1, new EmptySearchEngineRequestAdapter() {
+            @Override
+            public RewriteBudget getRewriteBudget() {
+                return budget;
+            }
+        });
+
+        verify(rewriterFactory2, Mockito.never()).createRewriter(any(), any());
+        assertThat(output.getExpandedQuery()).isSameAs(expandedQuery1);
+
+        final RewriteChainLog log = output.getRewriteLog().orElseThrow();
+        assertThat(log.hasDegradedRewriting()).isTrue();
+        assertThat(log.getTruncatedRewriters()).containsExactly("1");
+        assertThat(log.getSkippedRewriters()).containsExactly("2");
+
+        assertThat(metrics.getRewriterMetrics("1").orElseThrow().getTruncatedRewrites()).isEqualTo(1L);
+        assertThat(metrics.getRewriterMetrics("1").orElseThrow().getRewrites()).isEqualTo(1L);
+        assertThat(metrics.getRewriterMetrics("2").orElseThrow().getSkippedRewrites()).isEqualTo(1L);
+        assertThat(metrics.getRewriterMetrics("2").orElseThrow().getRewrites()).isEqualTo(0L);
+    }
+
+    @Test
+    public void testThat_rewritingIsNotDegraded_forUnlimitedRewriteBudget() {
+        setupRewriterFactories();
+        setupRewriter();
+
+        final RewriteChain rewriteChain = new RewriteChain(List.of(rewriterFactory1, rewriterFactory2));
+        final RewriteChainOutput output = rewriteChain.rewrite(expandedQuery1, new EmptySearchEngineRequestAdapter());
+
+        assertThat(output.getRewriteLog().orElseThrow().hasDegradedRewriting()).isFalse();
+        assertThat(output.getExpandedQuery()).isSameAs(expandedQuery2);
+    }
+
     private void setupRewriterFactories() {
         setupRewriterFactories("1", "2");
     }
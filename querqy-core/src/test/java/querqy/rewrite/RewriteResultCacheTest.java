@@ -0,0 +1,238 @@
+package querqy.rewrite;
+
+import static org.junit.Assert.*;
+import static querqy.rewrite.commonrules.model.DecorateInstruction.DECORATION_CONTEXT_KEY;
+
+import org.junit.Before;
+import org.junit.Test;
+import querqy.model.ExpandedQuery;
+import querqy.model.Query;
+import querqy.model.convert.builder.ExpandedQueryBuilder;
+import querqy.parser.WhiteSpaceQuerqyParser;
+import querqy.rewrite.commonrules.RuleUsageCounter;
+import querqy.rewrite.commonrules.SimpleCommonRulesRewriterFactory;
+import querqy.rewrite.commonrules.WhiteSpaceQuerqyParserFactory;
+import querqy.rewrite.commonrules.model.BoostInstruction.BoostMethod;
+import querqy.rewrite.commonrules.select.ExpressionCriteriaSelectionStrategyFactory;
+import querqy.rewrite.contrib.ShingleRewriterFactory;
+import querqy.rewrite.experimental.LocalSearchEngineRequestAdapter;
+import querqy.rewrite.lookup.preprocessing.LookupPreprocessorType;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class RewriteResultCacheTest {
+
+    static final String RULES = "a =>\n" +
+            "  SYNONYM: b\n" +
+            "  DECORATE: deco1\n" +
+            "c =>\n" +
+            "  SYNONYM: d\n" +
+            "  @{ \"tenant\": \"t1\" }@\n";
+
+    RewriteResultCache cache;
+    RewriterFactory commonRules;
+
+    @Before
+    public void setUp() throws IOException {
+        cache = new RewriteResultCache(10);
+        commonRules = commonRules();
+    }
+
+    @Test
+    public void testThatRepeatedQueryIsAnsweredFromCache() {
+
+        final RewriteChain chain = new RewriteChain(Collections.singletonList(commonRules), cache);
+
+        final LocalSearchEngineRequestAdapter adapter1 = adapter(chain, Collections.emptyMap());
+        final ExpandedQuery output1 = chain.rewrite(parse("a x"), adapter1).getExpandedQuery();
+        assertEquals(1, cache.size());
+
+        final LocalSearchEngineRequestAdapter adapter2 = adapter(chain, Collections.emptyMap());
+        final ExpandedQuery output2 = chain.rewrite(parse("a x"), adapter2).getExpandedQuery();
+        assertEquals(1, cache.size());
+
+        assertNotSame(output1, output2);
+        assertNotSame(output1.getUserQuery(), output2.getUserQuery());
+        assertEquals(new ExpandedQueryBuilder(output1), new ExpandedQueryBuilder(output2));
+
+        // the decoration is replayed into the context
+        assertEquals(Collections.singleton("deco1"), adapter2.getContext().get(DECORATION_CONTEXT_KEY));
+        assertNotSame(adapter1.getContext().get(DECORATION_CONTEXT_KEY),
+                adapter2.getContext().get(DECORATION_CONTEXT_KEY));
+
+        // modifying the returned query doesn't change the cached entry
+        final Query userQuery2 = (Query) output2.getUserQuery();
+        userQuery2.removeClause(userQuery2.getClauses().get(0));
+        final ExpandedQuery output3 = chain.rewrite(parse("a x"), adapter(chain, Collections.emptyMap()))
+                .getExpandedQuery();
+        assertEquals(new ExpandedQueryBuilder(output1), new ExpandedQueryBuilder(output3));
+    }
+
+    @Test
+    public void testThatRuleUsageIsCountedForCachedOutput() {
+
+        final RewriteChain chain = new RewriteChain(Collections.singletonList(commonRules), cache);
+        final RuleUsageCounter ruleUsageCounter = ((SimpleCommonRulesRewriterFactory) commonRules)
+                .getRuleUsageCounter();
+
+        chain.rewrite(parse("a x"), adapter(chain, Collections.emptyMap()));
+        assertEquals(1L, ruleUsageCounter.getCount("a#0"));
+
+        chain.rewrite(parse("a x"), adapter(chain, Collections.emptyMap()));
+        chain.rewrite(parse("a x"), adapter(chain, Collections.emptyMap()));
+        assertEquals(1, cache.size());
+        assertEquals(3L, ruleUsageCounter.getCount("a#0"));
+    }
+
+    @Test
+    public void testThatRelevantParamsArePartOfTheKey() {
+
+        final RewriteChain chain = new RewriteChain(Collections.singletonList(commonRules), cache);
+
+        final Map<String, String[]> filterParams = new HashMap<>();
+        filterParams.put("querqy.common1.criteria.filter", new String[] {"$[?(@.tenant == 't2')]"});
+
+        final ExpandedQuery unfiltered = chain.rewrite(parse("c"), adapter(chain, Collections.emptyMap()))
+                .getExpandedQuery();
+        final ExpandedQuery filtered = chain.rewrite(parse("c"), adapter(chain, filterParams)).getExpandedQuery();
+        assertEquals(2, cache.size());
+        assertNotEquals(new ExpandedQueryBuilder(unfiltered), new ExpandedQueryBuilder(filtered));
+        assertEquals(new ExpandedQueryBuilder(parse("c")), new ExpandedQueryBuilder(filtered));
+
+        // irrelevant params don't change the key
+        final Map<String, String[]> otherParams = new HashMap<>();
+        otherParams.put("querqy.other.criteria.filter", new String[] {"$[?(@.tenant == 't2')]"});
+        chain.rewrite(parse("c"), adapter(chain, otherParams));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testThatReplacedFactoryDoesNotGetCachedResults() throws IOException {
+
+        final RewriteChain chain = new RewriteChain(Collections.singletonList(commonRules), cache);
+        chain.rewrite(parse("a"), adapter(chain, Collections.emptyMap()));
+
+        final RewriteChain reloadedChain = new RewriteChain(Collections.singletonList(commonRules()), cache);
+        reloadedChain.rewrite(parse("a"), adapter(reloadedChain, Collections.emptyMap()));
+        assertEquals(2, cache.size());
+
+        cache.invalidate();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testThatChainWithUndeclaredParamsIsNotCached() {
+
+        final RewriterFactory factory = new RewriterFactory("undeclared") {
+            @Override
+            public QueryRewriter createRewriter(final ExpandedQuery input,
+                                                final SearchEngineRequestAdapter searchEngineRequestAdapter) {
+                return (query, adapter) -> RewriterOutput.builder().expandedQuery(query).build();
+            }
+
+            @Override
+            public Set<querqy.model.Term> getCacheableGenerableTerms() {
+                return Collections.emptySet();
+            }
+        };
+
+        final RewriteChain chain = new RewriteChain(Arrays.asList(commonRules, factory), cache);
+        chain.rewrite(parse("a"), adapter(chain, Collections.emptyMap()));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testThatNonEmptyContextPreventsCaching() {
+
+        final RewriteChain chain = new RewriteChain(Collections.singletonList(commonRules), cache);
+        final LocalSearchEngineRequestAdapter adapter = adapter(chain, Collections.emptyMap());
+        adapter.getContext().put("some", "value");
+        chain.rewrite(parse("a"), adapter);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testThatDegradedRewritingIsNotCached() {
+
+        final RewriteChain chain = new RewriteChain(Collections.singletonList(commonRules), cache);
+
+        // one step for applying the rewriter and one for the first of the two matching rules
+        final RewriteBudget budget = RewriteBudget.of(null, 2);
+        final LocalSearchEngineRequestAdapter adapter = new LocalSearchEngineRequestAdapter(chain,
+                Collections.emptyMap()) {
+            @Override
+            public RewriteBudget getRewriteBudget() {
+                return budget;
+            }
+        };
+
+        final RewriteChainOutput output = chain.rewrite(parse("a c"), adapter);
+        assertEquals(Collections.singletonList("common1"), output.getRewriteLog().get().getTruncatedRewriters());
+        assertEquals(0, cache.size());
+
+        chain.rewrite(parse("a c"), adapter(chain, Collections.emptyMap()));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testThatLeastRecentlyUsedEntryIsEvicted() {
+
+        final RewriteResultCache smallCache = new RewriteResultCache(2);
+        final List<RewriterFactory> factories = Collections.singletonList(new ShingleRewriterFactory("shingles"));
+        final RewriteChain chain = new RewriteChain(factories, smallCache);
+
+        chain.rewrite(parse("a b"), adapter(chain, Collections.emptyMap()));
+        chain.rewrite(parse("c d"), adapter(chain, Collections.emptyMap()));
+        // touch "a b"
+        chain.rewrite(parse("a b"), adapter(chain, Collections.emptyMap()));
+        chain.rewrite(parse("e f"), adapter(chain, Collections.emptyMap()));
+        assertEquals(2, smallCache.size());
+
+        final LocalSearchEngineRequestAdapter adapter = adapter(chain, Collections.emptyMap());
+        assertTrue(smallCache.get(smallCache.createKey(factories, parse("a b"), adapter).get(), adapter).isPresent());
+        assertFalse(smallCache.get(smallCache.createKey(factories, parse("c d"), adapter).get(), adapter).isPresent());
+    }
+
+    @Test
+    public void testThatStripedCacheIsBounded() {
+
+        final RewriteResultCache stripedCache = new RewriteResultCache(64, 4);
+        assertEquals(4, stripedCache.getNumberOfStripes());
+        // small caches are not striped
+        assertEquals(1, new RewriteResultCache(20, 4).getNumberOfStripes());
+
+        final List<RewriterFactory> factories = Collections.singletonList(new ShingleRewriterFactory("shingles"));
+        final RewriteChain chain = new RewriteChain(factories, stripedCache);
+        for (int i = 0; i < 200; i++) {
+            chain.rewrite(parse("a" + i + " b"), adapter(chain, Collections.emptyMap()));
+        }
+        assertTrue(stripedCache.size() <= 64);
+        assertTrue(stripedCache.size() > 0);
+
+        stripedCache.invalidate();
+        assertEquals(0, stripedCache.size());
+    }
+
+    private static ExpandedQuery parse(final String query) {
+        return new ExpandedQuery(new WhiteSpaceQuerqyParser().parse(query));
+    }
+
+    private static LocalSearchEngineRequestAdapter adapter(final RewriteChain chain,
+                                                           final Map<String, String[]> params) {
+        return new LocalSearchEngineRequestAdapter(chain, params);
+    }
+
+    private static RewriterFactory commonRules() throws IOException {
+        return new SimpleCommonRulesRewriterFactory("common1", new StringReader(RULES), false,
+                BoostMethod.ADDITIVE, new WhiteSpaceQuerqyParserFactory(), Collections.emptyMap(),
+                new ExpressionCriteriaSelectionStrategyFactory(), false, LookupPreprocessorType.NONE);
+    }
+
+}
@@ -39,6 +39,7 @@ import querqy.rewrite.commonrules.model.TrieMapRulesCollectionBuilder;
 import querqy.rewrite.commonrules.select.TopRewritingActionCollector;
 import querqy.rewrite.commonrules.select.booleaninput.model.BooleanInput;
 import querqy.rewrite.commonrules.select.booleaninput.model.BooleanInputLiteral;
+import querqy.rewrite.logging.RewriteLoggingSampler;
 import querqy.rewrite.lookup.triemap.TrieMapLookupQueryVisitorFactory;
 import querqy.rewrite.rules.input.InputParserAdapter;
 
@@ -81,6 +82,11 @@ public abstract class AbstractCommonRulesTest {
     }
 
     public CommonRulesRewriter rewriter(Rule... rules) {
+        return rewriter(RewriteLoggingSampler.ALWAYS, null, rules);
+    }
+
+    public CommonRulesRewriter rewriter(RewriteLoggingSampler sampler, RuleUsageCounter ruleUsageCounter,
+                                        Rule... rules) {
         RulesCollectionBuilder builder = new TrieMapRulesCollectionBuilder(false);
         Arrays.stream(rules).forEach(rule -> {
             if (rule.instructions != null) {
@@ -89,7 +95,8 @@ public abstract class AbstractCommonRulesTest {
                 builder.addRule(rule.input, rule.literal);
             }
         });
-        return new CommonRulesRewriter(TrieMapLookupQueryVisitorFactory.of(builder.getTrieMap()), DEFAULT_SELECTION_STRATEGY);
+        return new CommonRulesRewriter(TrieMapLookupQueryVisitorFactory.of(builder.getTrieMap()), DEFAULT_SELECTION_STRATEGY,
+                sampler, ruleUsageCounter);
     }
 
     public BooleanQueryBuilder rewrite(BooleanQueryBuilder queryBuilder, CommonRulesRewriter rewriter) {
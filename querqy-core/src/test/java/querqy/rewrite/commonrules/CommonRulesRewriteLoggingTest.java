@@ -7,12 +7,14 @@ import querqy.model.ExpandedQuery;
 import querqy.rewrite.RewriterOutput;
 import querqy.rewrite.logging.InstructionLog;
 import querqy.rewrite.logging.MatchLog;
+import querqy.rewrite.logging.RewriteLoggingSampler;
 import querqy.rewrite.RewriteLoggingConfig;
 import querqy.rewrite.SearchEngineRequestAdapter;
 import querqy.rewrite.commonrules.model.InstructionDescription;
 import querqy.rewrite.commonrules.model.Instructions;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
 import static org.mockito.Mockito.when;
 import static querqy.model.convert.builder.BooleanQueryBuilder.bq;
 import static querqy.model.convert.builder.ExpandedQueryBuilder.expanded;
@@ -171,6 +173,58 @@ public class CommonRulesRewriteLoggingTest extends AbstractCommonRulesTest {
         assertThat(rewritingOutput.getRewriterLog().get().getActionLogs()).hasSize(2);
     }
 
+    @Test
+    public void testThat_detailsAreOnlyLogged_forSampledQueries() {
+        activateRewriteLoggingConfigMock();
+
+        final RewriteLoggingSampler sampler = RewriteLoggingSampler.of(RewriteLoggingSampler.Mode.QUERY, 4);
+
+        int sampled = 0;
+        for (int i = 0; i < 200; i++) {
+            final CommonRulesRewriter rewriter = rewriter(sampler, null,
+                    rule(input("iphone"), synonym("apple"))
+            );
+
+            final ExpandedQuery expandedQuery = expanded(bq("iphone", "q" + i)).build();
+            final boolean isSampled = sampler.isSampled(expandedQuery.getUserQuery());
+            final RewriterOutput rewritingOutput = rewriter.rewrite(expandedQuery, searchEngineRequestAdapter);
+
+            assertThat(rewritingOutput.getRewriterLog()).isPresent();
+            assertThat(rewritingOutput.getRewriterLog().get().hasAppliedRewriting()).isTrue();
+            assertThat(rewritingOutput.getRewriterLog().get().getActionLogs()).hasSize(isSampled ? 1 : 0);
+            if (isSampled) {
+                sampled++;
+            }
+        }
+
+        assertThat(sampled).isBetween(20, 80);
+    }
+
+    @Test
+    public void testThat_appliedRulesAreCounted_withoutRewriteLogging() {
+        when(searchEngineRequestAdapter.getRewriteLoggingConfig()).thenReturn(RewriteLoggingConfig.off());
+
+        final RuleUsageCounter ruleUsageCounter = new RuleUsageCounter();
+        final Rule rule1 = rule(input("a"), synonym("b"));
+        final Rule rule2 = rule(input("c"), synonym("d"));
+
+        rewriter(RewriteLoggingSampler.ALWAYS, ruleUsageCounter, rule1, rule2)
+                .rewrite(expanded(bq("a", "c")).build(), searchEngineRequestAdapter);
+        rewriter(RewriteLoggingSampler.ALWAYS, ruleUsageCounter, rule1, rule2)
+                .rewrite(expanded(bq("a")).build(), searchEngineRequestAdapter);
+        rewriter(RewriteLoggingSampler.ALWAYS, ruleUsageCounter, rule1, rule2)
+                .rewrite(expanded(bq("x")).build(), searchEngineRequestAdapter);
+
+        assertThat(ruleUsageCounter.getCounts()).containsExactly(
+                entry(rule1.instructions.getId(), 2L),
+                entry(rule2.instructions.getId(), 1L));
+
+        assertThat(ruleUsageCounter.getCountsAndReset()).containsExactly(
+                entry(rule1.instructions.getId(), 2L),
+                entry(rule2.instructions.getId(), 1L));
+        assertThat(ruleUsageCounter.getCounts()).isEmpty();
+    }
+
     private void activateRewriteLoggingConfigMock() {
         when(searchEngineRequestAdapter.getRewriteLoggingConfig())
                 .thenReturn(RewriteLoggingConfig.builder().isActive(true).hasDetails(true).build());
@@ -5,9 +5,17 @@ import querqy.model.EmptySearchEngineRequestAdapter;
 import querqy.model.ExpandedQuery;
 import querqy.rewrite.commonrules.AbstractCommonRulesTest;
 import querqy.rewrite.commonrules.CommonRulesRewriter;
+import querqy.rewrite.commonrules.model.BoostInstruction.BoostMethod;
+import querqy.rewrite.commonrules.select.ExpressionCriteriaSelectionStrategyFactory;
 import querqy.rewrite.commonrules.select.booleaninput.model.BooleanInputLiteral;
+import querqy.rewrite.lookup.preprocessing.LookupPreprocessorType;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static querqy.model.convert.builder.BooleanQueryBuilder.bq;
@@ -71,4 +79,30 @@ public class CommonRulesRewriterBooleanInputTest extends AbstractCommonRulesTest
 
     }
 
+    @Test
+    public void testRewritingForBooleanInputWithMoreLiteralsThanFitIntoBitMask() throws IOException {
+        // t0 AND NOT t1 AND ( t2 OR ... OR t66 )
+        final String input = "t0 AND NOT t1 AND ( " + IntStream.rangeClosed(2, 66).mapToObj(i -> "t" + i)
+                .collect(Collectors.joining(" OR ")) + " )";
+
+        final SimpleCommonRulesRewriterFactory factory = new SimpleCommonRulesRewriterFactory("common1",
+                new StringReader(input + " =>\n FILTER: f"), true, BoostMethod.ADDITIVE,
+                new WhiteSpaceQuerqyParserFactory(), Collections.emptyMap(),
+                new ExpressionCriteriaSelectionStrategyFactory(), false, LookupPreprocessorType.NONE);
+
+        assertThat(rewriteWithFactory(factory, "t0", "t66").getFilterQueries()).hasSize(1);
+        assertThat(rewriteWithFactory(factory, "t0", "t2").getFilterQueries()).hasSize(1);
+        assertThat(rewriteWithFactory(factory, "t0", "t1", "t66").getFilterQueries()).isNullOrEmpty();
+        assertThat(rewriteWithFactory(factory, "t0").getFilterQueries()).isNullOrEmpty();
+        assertThat(rewriteWithFactory(factory, "t66").getFilterQueries()).isNullOrEmpty();
+    }
+
+    private static ExpandedQuery rewriteWithFactory(final SimpleCommonRulesRewriterFactory factory,
+                                                    final String... terms) {
+        final ExpandedQuery query = new ExpandedQuery(bq(terms).buildQuerqyQuery());
+        final EmptySearchEngineRequestAdapter searchEngineRequestAdapter = new EmptySearchEngineRequestAdapter();
+        return factory.createRewriter(query, searchEngineRequestAdapter).rewrite(query, searchEngineRequestAdapter)
+                .getExpandedQuery();
+    }
+
 }
@@ -0,0 +1,172 @@
+package querqy.rewrite.commonrules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static querqy.QuerqyMatchers.bq;
+import static querqy.QuerqyMatchers.dmq;
+import static querqy.QuerqyMatchers.term;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import querqy.model.EmptySearchEngineRequestAdapter;
+import querqy.model.ExpandedQuery;
+import querqy.model.Query;
+import querqy.rewrite.SearchEngineRequestAdapter;
+import querqy.rewrite.commonrules.model.BoostInstruction.BoostMethod;
+import querqy.rewrite.commonrules.model.InstructionsSupplier;
+import querqy.rewrite.commonrules.select.ExpressionCriteriaSelectionStrategyFactory;
+import querqy.rewrite.lookup.preprocessing.LookupPreprocessorFactory;
+import querqy.rewrite.lookup.preprocessing.LookupPreprocessorType;
+import querqy.rewrite.lookup.preprocessing.NormalizationDictionary;
+import querqy.trie.CompactTrieMap;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class CompiledCommonRulesTest extends AbstractCommonRulesTest {
+
+    @org.junit.Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    static final String RULES = "a =>\n" +
+            "  SYNONYM: b c\n" +
+            "  UP(10): d\n" +
+            "  DOWN: f:e\n" +
+            "  FILTER: * x:y\n" +
+            "  DECORATE(key): value\n" +
+            "  DELETE: a\n" +
+            "  @{\"_id\": \"rule1\", \"tenant\": [\"t1\", \"t2\"], \"weight\": 3}@\n" +
+            "pre* =>\n" +
+            "  DELETE\n" +
+            "  SYNONYM: $1\n" +
+            "\"x y\" =>\n" +
+            "  SYNONYM(0.5): z\n" +
+            "  DELETE: x\n";
+
+    @Test
+    public void testThatCompiledRulesEqualParsedRules() throws IOException {
+
+        final SimpleCommonRulesRewriterFactory factory = factory(RULES);
+        final Path file = write(factory);
+
+        final SimpleCommonRulesRewriterFactory compiled = SimpleCommonRulesRewriterFactory.fromCompiledRules(
+                "rules", file, new WhiteSpaceQuerqyParserFactory(), Collections.emptyMap(),
+                new ExpressionCriteriaSelectionStrategyFactory(), true);
+
+        assertEquals(values(factory), values(compiled));
+        assertEquals(factory.getInstructions(), compiled.getInstructions());
+        assertEquals(factory.getCacheableGenerableTerms(), compiled.getCacheableGenerableTerms());
+    }
+
+    @Test
+    public void testThatGenerableTermsAreReadWithoutCreatingInstructions() throws IOException {
+
+        final SimpleCommonRulesRewriterFactory factory = factory(RULES);
+
+        // the parser is needed for creating the instructions but not for reading the generable terms
+        final SimpleCommonRulesRewriterFactory compiled = SimpleCommonRulesRewriterFactory.fromCompiledRules(
+                "rules", write(factory), () -> {
+                    throw new AssertionError("Instructions must not be created");
+                }, Collections.emptyMap(), new ExpressionCriteriaSelectionStrategyFactory(), true);
+
+        assertFalse(compiled.getCacheableGenerableTerms().isEmpty());
+        assertEquals(factory.getCacheableGenerableTerms(), compiled.getCacheableGenerableTerms());
+    }
+
+    @Test
+    public void testThatCompiledRulesRewriteQuery() throws IOException {
+
+        final SimpleCommonRulesRewriterFactory compiled = SimpleCommonRulesRewriterFactory.fromCompiledRules(
+                "rules", write(factory("x y =>\n  SYNONYM: z\n")), new WhiteSpaceQuerqyParserFactory(),
+                Collections.emptyMap(), new ExpressionCriteriaSelectionStrategyFactory(), false);
+
+        final ExpandedQuery query = makeQuery("x y");
+        final SearchEngineRequestAdapter requestAdapter = new EmptySearchEngineRequestAdapter();
+        final Query rewritten = (Query) compiled.createRewriter(query, requestAdapter)
+                .rewrite(query, requestAdapter).getExpandedQuery().getUserQuery();
+
+        assertThat(rewritten,
+                bq(
+                        dmq(term("x"), term("z")),
+                        dmq(term("y"), term("z"))
+                ));
+    }
+
+    @Test
+    public void testThatRegisteredPreprocessorIsSelectedByName() throws IOException {
+
+        LookupPreprocessorFactory.register("compiled_rules_test_nouns", LookupPreprocessorFactory.german(
+                NormalizationDictionary.compile(new StringReader("gurke,gurken\n"))));
+
+        final SimpleCommonRulesRewriterFactory factory = new SimpleCommonRulesRewriterFactory("rules",
+                new StringReader("salatgurken =>\n  SYNONYM: gurke\n"), false, BoostMethod.MULTIPLICATIVE,
+                new WhiteSpaceQuerqyParserFactory(), Collections.emptyMap(),
+                new ExpressionCriteriaSelectionStrategyFactory(), false, "compiled_rules_test_nouns", 1);
+
+        final SimpleCommonRulesRewriterFactory compiled = SimpleCommonRulesRewriterFactory.fromCompiledRules(
+                "rules", write(factory), new WhiteSpaceQuerqyParserFactory(), Collections.emptyMap(),
+                new ExpressionCriteriaSelectionStrategyFactory(), false);
+
+        for (final SimpleCommonRulesRewriterFactory rewriterFactory : Arrays.asList(factory, compiled)) {
+            final ExpandedQuery query = makeQuery("Salatgurke");
+            final SearchEngineRequestAdapter requestAdapter = new EmptySearchEngineRequestAdapter();
+            final Query rewritten = (Query) rewriterFactory.createRewriter(query, requestAdapter)
+                    .rewrite(query, requestAdapter).getExpandedQuery().getUserQuery();
+
+            assertThat(rewritten, bq(dmq(term("Salatgurke"), term("gurke"))));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testThatUnregisteredPreprocessorIsRejected() throws IOException {
+        final Path file = folder.newFile().toPath();
+        try (final OutputStream out = Files.newOutputStream(file)) {
+            CompiledCommonRules.write(CompactTrieMap.of(factory(RULES).getTrieMap()), "not_registered",
+                    BoostMethod.MULTIPLICATIVE, out);
+        }
+        SimpleCommonRulesRewriterFactory.fromCompiledRules("rules", file, new WhiteSpaceQuerqyParserFactory(),
+                Collections.emptyMap(), new ExpressionCriteriaSelectionStrategyFactory(), false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatBooleanInputCannotBeCompiled() throws IOException {
+        write(factory("a AND b =>\n  UP: c\n"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testThatInvalidFileIsRejected() throws IOException {
+        final Path file = folder.newFile().toPath();
+        Files.write(file, "a =>\n  SYNONYM: b\n".getBytes());
+        SimpleCommonRulesRewriterFactory.fromCompiledRules("rules", file, new WhiteSpaceQuerqyParserFactory(),
+                Collections.emptyMap(), new ExpressionCriteriaSelectionStrategyFactory(), false);
+    }
+
+    private SimpleCommonRulesRewriterFactory factory(final String rules) throws IOException {
+        return new SimpleCommonRulesRewriterFactory("rules", new StringReader(rules), true,
+                BoostMethod.MULTIPLICATIVE, new WhiteSpaceQuerqyParserFactory(), Collections.emptyMap(),
+                new ExpressionCriteriaSelectionStrategyFactory(), true, LookupPreprocessorType.LOWERCASE);
+    }
+
+    private Path write(final SimpleCommonRulesRewriterFactory factory) throws IOException {
+        final Path file = folder.newFile().toPath();
+        try (final OutputStream out = Files.newOutputStream(file)) {
+            factory.writeCompiledRules(out);
+        }
+        return file;
+    }
+
+    private static List<InstructionsSupplier> values(final SimpleCommonRulesRewriterFactory factory) {
+        final List<InstructionsSupplier> values = new ArrayList<>();
+        factory.getTrieMap().forEach(values::add);
+        return values;
+    }
+
+}
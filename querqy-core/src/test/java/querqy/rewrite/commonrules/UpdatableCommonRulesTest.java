@@ -0,0 +1,158 @@
+package querqy.rewrite.commonrules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import querqy.model.EmptySearchEngineRequestAdapter;
+import querqy.model.ExpandedQuery;
+import querqy.rewrite.SearchEngineRequestAdapter;
+import querqy.rewrite.commonrules.model.BoostInstruction.BoostMethod;
+import querqy.rewrite.commonrules.select.ExpressionCriteriaSelectionStrategyFactory;
+import querqy.rewrite.lookup.preprocessing.LookupPreprocessorType;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class UpdatableCommonRulesTest extends AbstractCommonRulesTest {
+
+    static final String RULES = "a =>\n" +
+            "  SYNONYM: b\n" +
+            "  @_id: \"r1\"\n" +
+            "c d =>\n" +
+            "  SYNONYM: e\n" +
+            "  @_id: \"r2\"\n" +
+            "pre* =>\n" +
+            "  SYNONYM: post$1\n" +
+            "  @_id: \"r3\"\n" +
+            "a =>\n" +
+            "  UP(10): f\n" +
+            "  @_id: \"r4\"\n";
+
+    static final List<String> QUERIES = Arrays.asList("a", "c d", "prefix", "a c d", "x", "y z", "y");
+
+    @Test
+    public void testThatChangedRulesRewriteLikeFullyParsedRules() throws IOException {
+
+        final SimpleCommonRulesRewriterFactory factory = updatableFactory(RULES);
+
+        final SimpleCommonRulesRewriterFactory changed = factory
+                .withRuleChanges(new StringReader("c d =>\n  SYNONYM: g\n  @_id: \"r2\"\n" +
+                        "x =>\n  SYNONYM: h\n  @_id: \"r5\"\n"), Collections.singletonList("r1"))
+                .withRuleChanges(new StringReader("y* =>\n  UP(5): i\n  @_id: \"r6\"\n"),
+                        Arrays.asList("r3", "unknown"));
+
+        final SimpleCommonRulesRewriterFactory expected = factory("a =>\n  UP(10): f\n  @_id: \"r4\"\n" +
+                "c d =>\n  SYNONYM: g\n  @_id: \"r2\"\n" +
+                "x =>\n  SYNONYM: h\n  @_id: \"r5\"\n" +
+                "y* =>\n  UP(5): i\n  @_id: \"r6\"\n");
+
+        for (final String query : QUERIES) {
+            assertEquals(query, rewrite(expected, query), rewrite(changed, query));
+        }
+        assertEquals(expected.getInstructions().size(), changed.getInstructions().size());
+    }
+
+    @Test
+    public void testThatOriginalFactoryIsNotChanged() throws IOException {
+
+        final SimpleCommonRulesRewriterFactory factory = updatableFactory(RULES);
+        final List<String> before = rewrite(factory);
+
+        final SimpleCommonRulesRewriterFactory changed = factory.withRuleChanges(
+                new StringReader("a =>\n  SYNONYM: z\n  @_id: \"r1\"\n"), Arrays.asList("r2", "r3", "r4"));
+
+        assertEquals(before, rewrite(factory));
+        assertEquals(before, rewrite(factory(RULES)));
+        assertEquals(rewrite(factory("a =>\n  SYNONYM: z\n")), rewrite(changed));
+        assertTrue(changed.isUpdatable());
+    }
+
+    @Test
+    public void testThatAllRulesCanBeDeleted() throws IOException {
+
+        final SimpleCommonRulesRewriterFactory changed = updatableFactory(RULES).withRuleChanges(
+                new StringReader(""), Arrays.asList("r1", "r2", "r3", "r4"));
+
+        assertTrue(changed.getInstructions().isEmpty());
+        assertEquals(rewrite(factory("")), rewrite(changed));
+    }
+
+    @Test
+    public void testThatIdsAreComparedAsStrings() throws IOException {
+
+        final SimpleCommonRulesRewriterFactory changed = updatableFactory(RULES + "x =>\n  SYNONYM: y\n  @_id: 7\n")
+                .withRuleChanges(new StringReader(""), Arrays.asList("7", "r1"));
+
+        assertEquals(rewrite(factory(RULES.replace("a =>\n  SYNONYM: b\n  @_id: \"r1\"\n", ""))),
+                rewrite(changed));
+    }
+
+    @Test
+    public void testThatMergedChangesRewriteLikeChangedRules() throws IOException {
+
+        final String rules = RULES + "y =>\n  SYNONYM: z\n";
+        final String change1 = "c d =>\n  SYNONYM: g\n  @_id: \"r2\"\nx =>\n  SYNONYM: h\n";
+        final String change2 = "y* =>\n  UP(5): i\n  @_id: \"r6\"\n";
+
+        final SimpleCommonRulesRewriterFactory changed = updatableFactory(rules)
+                .withRuleChanges(new StringReader(change1), Collections.singletonList("r1"))
+                .withRuleChanges(new StringReader(change2), Arrays.asList("r3", "unknown"));
+
+        final RuleChangesMerger merger = new RuleChangesMerger(new StringReader(rules));
+        merger.applyChanges(new StringReader(change1), Collections.singletonList("r1"));
+        merger.applyChanges(new StringReader(change2), Arrays.asList("r3", "unknown"));
+        final SimpleCommonRulesRewriterFactory merged = updatableFactory(merger.toRulesText());
+
+        assertEquals(5, merger.size());
+        assertEquals(rewrite(changed), rewrite(merged));
+        assertEquals(changed.getInstructions().size(), merged.getInstructions().size());
+
+        // rules without an ID property keep their default ID
+        final List<String> deleteDefaultIds = Arrays.asList("y#4", "x#6");
+        assertEquals(rewrite(changed.withRuleChanges(new StringReader(""), deleteDefaultIds)),
+                rewrite(merged.withRuleChanges(new StringReader(""), deleteDefaultIds)));
+        assertEquals(3, merged.withRuleChanges(new StringReader(""), deleteDefaultIds).getInstructions().size());
+    }
+
+    @Test(expected = IOException.class)
+    public void testThatInvalidChangesAreRejected() throws IOException {
+        updatableFactory(RULES).withRuleChanges(new StringReader("a =>\n  UNKNOWN: b\n"), Collections.emptyList());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testThatRulesOfNonUpdatableFactoryCannotBeChanged() throws IOException {
+        final SimpleCommonRulesRewriterFactory factory = factory(RULES);
+        assertFalse(factory.isUpdatable());
+        factory.withRuleChanges(new StringReader(""), Collections.singletonList("r1"));
+    }
+
+    private List<String> rewrite(final SimpleCommonRulesRewriterFactory factory) {
+        return QUERIES.stream().map(query -> rewrite(factory, query)).collect(Collectors.toList());
+    }
+
+    private String rewrite(final SimpleCommonRulesRewriterFactory factory, final String input) {
+        final ExpandedQuery query = makeQuery(input);
+        final SearchEngineRequestAdapter requestAdapter = new EmptySearchEngineRequestAdapter();
+        final ExpandedQuery rewritten = factory.createRewriter(query, requestAdapter).rewrite(query, requestAdapter)
+                .getExpandedQuery();
+        return rewritten.getUserQuery() + " " + rewritten.getBoostUpQueries();
+    }
+
+    private SimpleCommonRulesRewriterFactory factory(final String rules) throws IOException {
+        return new SimpleCommonRulesRewriterFactory("rules", new StringReader(rules), false,
+                BoostMethod.ADDITIVE, new WhiteSpaceQuerqyParserFactory(), Collections.emptyMap(),
+                new ExpressionCriteriaSelectionStrategyFactory(), true, LookupPreprocessorType.LOWERCASE);
+    }
+
+    private SimpleCommonRulesRewriterFactory updatableFactory(final String rules) throws IOException {
+        return SimpleCommonRulesRewriterFactory.createUpdatable("rules", new StringReader(rules),
+                BoostMethod.ADDITIVE, new WhiteSpaceQuerqyParserFactory(), Collections.emptyMap(),
+                new ExpressionCriteriaSelectionStrategyFactory(), true, LookupPreprocessorType.LOWERCASE, 1);
+    }
+}
@@ -15,6 +15,7 @@ import org.mockito.Mock;
 import querqy.rewrite.SearchEngineRequestAdapter;
 import querqy.rewrite.commonrules.model.Limit;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
@@ -167,6 +168,55 @@ public class ExpressionCriteriaSelectionStrategyFactoryTest {
 
     }
 
+    @Test
+    public void testThatFilterCriteriaAreReusedForTheSameExpression() {
+
+        when(requestAdapter.getRequestParams(eq("querqy.rules1.criteria.filter")))
+                .thenReturn(new String[] {"$[?(@.n1 == 'v1')]", "expr2"});
+
+        final List<FilterCriterion> filters1 = factory.getFilterCriteriaFromRequest("rules1", requestAdapter);
+        final List<FilterCriterion> filters2 = factory.getFilterCriteriaFromRequest("rules1", requestAdapter);
+
+        assertEquals(2, filters1.size());
+        assertSame(filters1.get(0), filters2.get(0));
+        assertSame(filters1.get(1), filters2.get(1));
+
+    }
+
+    @Test
+    public void testThatFilterCriteriaCacheIsBounded() {
+
+        final List<FilterCriterion> criteria = new ArrayList<>();
+        for (int i = 0; i < 2 * ExpressionCriteriaSelectionStrategyFactory.MAX_CACHED_FILTER_CRITERIA; i++) {
+            criteria.add(factory.getFilterCriterion("expr" + i));
+        }
+        assertEquals(ExpressionCriteriaSelectionStrategyFactory.MAX_CACHED_FILTER_CRITERIA,
+                factory.getCachedFilterCriteriaCount());
+
+        // at least half of the criteria must have been evicted and compiled again
+        int recompiled = 0;
+        for (int i = 0; i < criteria.size(); i++) {
+            final FilterCriterion criterion = factory.getFilterCriterion("expr" + i);
+            assertEquals(criteria.get(i), criterion);
+            if (criterion != criteria.get(i)) {
+                recompiled++;
+            }
+        }
+        assertTrue(recompiled >= ExpressionCriteriaSelectionStrategyFactory.MAX_CACHED_FILTER_CRITERIA);
+
+    }
+
+    @Test
+    public void testThatRecentlyUsedFilterCriteriaStayInCache() {
+
+        final FilterCriterion criterion = factory.getFilterCriterion("expr0");
+        for (int i = 1; i <= 2 * ExpressionCriteriaSelectionStrategyFactory.MAX_CACHED_FILTER_CRITERIA; i++) {
+            factory.getFilterCriterion("expr" + i);
+            assertSame(criterion, factory.getFilterCriterion("expr0"));
+        }
+
+    }
+
     static FilterCriterionMatcher filter(final String filterExpression) {
         return new FilterCriterionMatcher(filterExpression);
     }
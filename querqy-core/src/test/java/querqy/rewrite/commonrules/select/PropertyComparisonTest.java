@@ -0,0 +1,79 @@
+package querqy.rewrite.commonrules.select;
+
+import static org.junit.Assert.*;
+
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.spi.json.JacksonJsonProvider;
+import com.jayway.jsonpath.spi.mapper.JacksonMappingProvider;
+import org.junit.Test;
+import querqy.rewrite.commonrules.model.InstructionsProperties;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PropertyComparisonTest {
+
+    final Configuration jsonPathConfig = Configuration.builder()
+            .jsonProvider(new JacksonJsonProvider())
+            .mappingProvider(new JacksonMappingProvider()).build();
+
+    @Test
+    public void testThatSimpleComparisonsAreRecognised() {
+        assertTrue(PropertyComparison.fromExpression("$[?(@.n1 == 'v1')]").isPresent());
+        assertTrue(PropertyComparison.fromExpression("$.[?(@.n1 == 'v1')]").isPresent());
+        assertTrue(PropertyComparison.fromExpression("$[?(@.n1>=-2.5)]").isPresent());
+        assertTrue(PropertyComparison.fromExpression("$[?(@.n1 != 'it\\'s')]").isPresent());
+    }
+
+    @Test
+    public void testThatOtherExpressionsAreNotRecognised() {
+        assertFalse(PropertyComparison.fromExpression("$[?(@.n1 == 'v1' && @.n2 == 'v2')]").isPresent());
+        assertFalse(PropertyComparison.fromExpression("$[?(@.a.b == 'v1')]").isPresent());
+        assertFalse(PropertyComparison.fromExpression("$[?(@.n1 == true)]").isPresent());
+        assertFalse(PropertyComparison.fromExpression("$[?(@.n1 =~ /v.*/)]").isPresent());
+        assertFalse(PropertyComparison.fromExpression("$[?(@.n1 in ['v1'])]").isPresent());
+        assertFalse(PropertyComparison.fromExpression("$[?(@.n1 == 'a\\nb')]").isPresent());
+        assertFalse(PropertyComparison.fromExpression("$.n1").isPresent());
+    }
+
+    @Test
+    public void testThatResultsAreTheSameAsForJsonPath() {
+
+        final List<Object> values = Arrays.asList("v1", "v2", "V1", "", "it's", "10", "10.0", "9", "abc", 10, 9, 11,
+                10L, 10.0, 9.5, -2.5, true, false, Collections.singletonList("v1"),
+                Collections.singletonMap("v1", "v1"));
+
+        final List<String> literals = Arrays.asList("'v1'", "'v2'", "''", "'it\\'s'", "'10'", "'10.0'", "'abc'", "10",
+                "10.0", "9", "-2.5", "0");
+
+        final List<String> operators = Arrays.asList("==", "!=", "<", "<=", ">", ">=");
+
+        for (final String op : operators) {
+            for (final String literal : literals) {
+                final String expression = "$[?(@.n1 " + op + " " + literal + ")]";
+                final PropertyComparison comparison = PropertyComparison.fromExpression(expression)
+                        .orElseThrow(() -> new AssertionError(expression));
+
+                for (final Object value : values) {
+                    final InstructionsProperties properties = properties("n1", value);
+                    assertEquals(expression + " for " + value, properties.matches(expression),
+                            comparison.matches(properties));
+                }
+
+                final InstructionsProperties otherName = properties("n2", "v1");
+                assertEquals(expression + " for missing property", otherName.matches(expression),
+                        comparison.matches(otherName));
+            }
+        }
+    }
+
+    private InstructionsProperties properties(final String name, final Object value) {
+        final Map<String, Object> map = new HashMap<>();
+        map.put(name, value);
+        return new InstructionsProperties(map, jsonPathConfig);
+    }
+
+}
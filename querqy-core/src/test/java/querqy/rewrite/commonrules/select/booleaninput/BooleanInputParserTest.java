@@ -2,11 +2,13 @@ package querqy.rewrite.commonrules.select.booleaninput;
 
 import org.junit.Test;
 import querqy.rewrite.commonrules.RuleParseException;
+import querqy.rewrite.commonrules.select.booleaninput.model.BooleanInput;
 import querqy.rewrite.commonrules.select.booleaninput.model.BooleanInputElement;
 
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatCode;
@@ -33,6 +35,23 @@ public class BooleanInputParserTest {
         assertThat(elements).isEqualTo(list("\\(a\\)"));
     }
 
+    @Test
+    public void testThatBooleanInputWithMoreTermsThanFitIntoBitMaskIsAccepted() throws RuleParseException {
+        final BooleanInputParser parser = new BooleanInputParser();
+
+        final String input = IntStream.range(0, 65).mapToObj(i -> "t" + i).collect(Collectors.joining(" OR "));
+        final BooleanInput booleanInput = parser.createInputBuilder(parser.parseInputStringToElements(input), input)
+                .build();
+
+        assertThat(booleanInput.getNumberOfLiterals()).isEqualTo(65);
+        assertThat(booleanInput.isEvaluatedFromBitMask()).isFalse();
+
+        final boolean[] literals = new boolean[65];
+        assertThat(booleanInput.evaluate(literals)).isFalse();
+        literals[64] = true;
+        assertThat(booleanInput.evaluate(literals)).isTrue();
+    }
+
     @Test
     public void testValidateInput() {
         BooleanInputParser parser = new BooleanInputParser();
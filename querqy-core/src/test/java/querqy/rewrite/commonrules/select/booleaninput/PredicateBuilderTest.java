@@ -10,6 +10,7 @@ import org.junit.Test;
 import querqy.rewrite.commonrules.RuleParseException;
 import querqy.rewrite.commonrules.select.booleaninput.model.BooleanInputElement;
 import querqy.rewrite.commonrules.select.booleaninput.model.BooleanInputElement.Type;
+import querqy.rewrite.commonrules.select.booleaninput.model.BooleanInputProgram;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -106,6 +107,21 @@ public class PredicateBuilderTest {
         assertThat(predicate.test(new boolean[]{false, false, false})).isFalse();
     }
 
+    @Test
+    public void testCompiledProgram() throws RuleParseException {
+        final AtomicInteger integer = new AtomicInteger();
+        final BooleanInputProgram program = PredicateBuilder.compile(
+                elements("( a OR b ) AND c AND d AND e AND f AND g AND NOT h"), terms -> integer.getAndIncrement());
+
+        assertThat(integer.get()).isEqualTo(8);
+        assertThat(program.evaluate(0b01111101L)).isTrue();
+        assertThat(program.evaluate(0b01111110L)).isTrue();
+        assertThat(program.evaluate(0b01111100L)).isFalse();
+        assertThat(program.evaluate(0b11111101L)).isFalse();
+        assertThat(program.evaluate(0b01101101L)).isFalse();
+        assertThat(program.evaluate(0L)).isFalse();
+    }
+
     private Predicate<boolean[]> predicate(final String booleanString) throws RuleParseException {
         final AtomicInteger integer = new AtomicInteger();
         return PredicateBuilder.build(elements(booleanString), terms -> integer.getAndIncrement());
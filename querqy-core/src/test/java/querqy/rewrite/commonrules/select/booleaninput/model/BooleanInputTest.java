@@ -3,11 +3,17 @@ package querqy.rewrite.commonrules.select.booleaninput.model;
 import org.junit.Test;
 
 import querqy.rewrite.commonrules.AbstractCommonRulesTest;
+import querqy.rewrite.commonrules.model.Instructions;
+import querqy.rewrite.commonrules.select.booleaninput.BooleanInputParser;
 import querqy.rewrite.commonrules.select.booleaninput.BooleanInputQueryHandler;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
 
 public class BooleanInputTest extends AbstractCommonRulesTest {
 
@@ -62,4 +68,75 @@ public class BooleanInputTest extends AbstractCommonRulesTest {
 
     }
 
+    @Test
+    public void testEvaluationOfCompiledBooleanInputWithoutTruthTable() throws Exception {
+        final BooleanInputParser parser = new BooleanInputParser();
+        final String input = "( a OR b ) AND c AND d AND e AND f AND g AND NOT h";
+        final BooleanInput booleanInput = parser.createInputBuilder(parser.parseInputStringToElements(input), input)
+                .withInstructions(mock(Instructions.class)).build();
+        assertThat(booleanInput.getNumberOfLiterals()).isGreaterThan(BooleanInput.MAX_TRUTH_TABLE_LITERALS);
+
+        final Map<List<String>, BooleanInputLiteral> literals = parser.getLiteralRegister();
+
+        final BooleanInputQueryHandler handler = new BooleanInputQueryHandler();
+        for (final String term : Arrays.asList("b", "c", "d", "e", "f")) {
+            handler.notifyLiteral(literals.get(Collections.singletonList(term)));
+        }
+        assertThat(handler.evaluate()).isEmpty();
+
+        handler.notifyLiteral(literals.get(Collections.singletonList("g")));
+        assertThat(handler.evaluate()).hasSize(1);
+
+        handler.notifyLiteral(literals.get(Collections.singletonList("h")));
+        assertThat(handler.evaluate()).isEmpty();
+        handler.release();
+    }
+
+    @Test
+    public void testThatHandlersOfTheSameThreadDoNotShareLiterals() {
+        final List<BooleanInputLiteral> literals = literals(2);
+        booleanInput(literals);
+
+        final BooleanInputQueryHandler handler1 = new BooleanInputQueryHandler();
+        handler1.notifyLiteral(literals.get(0));
+
+        final BooleanInputQueryHandler handler2 = new BooleanInputQueryHandler();
+        handler2.notifyLiteral(literals.get(1));
+
+        assertThat(handler1.evaluate()).isEmpty();
+        assertThat(handler2.evaluate()).isEmpty();
+
+        handler1.notifyLiteral(literals.get(1));
+        assertThat(handler1.evaluate()).hasSize(1);
+        handler1.release();
+        assertThat(handler1.evaluate()).isEmpty();
+
+        final BooleanInputQueryHandler handler3 = new BooleanInputQueryHandler();
+        handler3.notifyLiteral(literals.get(0));
+        assertThat(handler3.evaluate()).isEmpty();
+        handler3.release();
+
+        handler2.notifyLiteral(literals.get(0));
+        assertThat(handler2.evaluate()).hasSize(1);
+        handler2.release();
+    }
+
+    @Test
+    public void testEvaluationOfManyBooleanInputs() {
+        final List<BooleanInputLiteral> literals = literals(3);
+        for (int i = 0; i < 100; i++) {
+            booleanInput(literals.subList(0, 2));
+            booleanInput(literals.subList(1, 3));
+        }
+
+        final BooleanInputQueryHandler handler = new BooleanInputQueryHandler();
+        handler.notifyLiteral(literals.get(0));
+        handler.notifyLiteral(literals.get(1));
+        assertThat(handler.evaluate()).hasSize(100);
+
+        handler.notifyLiteral(literals.get(2));
+        assertThat(handler.evaluate()).hasSize(200);
+        handler.release();
+    }
+
 }
@@ -0,0 +1,78 @@
+package querqy.rewrite.contrib.replace;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class TokenSequenceTest {
+
+    @Test
+    public void testAddGetAndRemove() {
+        final TokenSequence seq = new TokenSequence(2);
+        seq.add("a");
+        seq.add("b");
+        seq.add("c");
+        seq.add(1, "x");
+
+        assertThat(seq).containsExactly("a", "x", "b", "c");
+        assertThat(seq.remove(2)).isEqualTo("b");
+        assertThat(seq).containsExactly("a", "x", "c");
+
+        seq.subList(0, 2).clear();
+        assertThat(seq).containsExactly("c");
+
+        seq.addAll(0, Arrays.asList("d", "e"));
+        assertThat(seq).containsExactly("d", "e", "c");
+        assertThat(seq.set(1, "f")).isEqualTo("e");
+        assertThat(seq).containsExactly("d", "f", "c");
+
+        seq.clear();
+        assertThat(seq).isEmpty();
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testThatGetChecksIndex() {
+        final TokenSequence seq = new TokenSequence();
+        seq.add("a");
+        seq.get(1);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testThatAddChecksIndex() {
+        new TokenSequence().add(1, "a");
+    }
+
+    @Test
+    public void testThatRandomEditsEqualArrayList() {
+        final Random random = new Random(7L);
+        final TokenSequence seq = new TokenSequence(1);
+        final List<CharSequence> expected = new ArrayList<>();
+
+        for (int i = 0; i < 5000; i++) {
+            final int op = random.nextInt(4);
+            if (op < 2 || expected.isEmpty()) {
+                final int index = random.nextInt(expected.size() + 1);
+                final String token = "t" + i;
+                seq.add(index, token);
+                expected.add(index, token);
+            } else if (op == 2) {
+                final int index = random.nextInt(expected.size());
+                assertThat(seq.remove(index)).isEqualTo(expected.remove(index));
+            } else {
+                final int from = random.nextInt(expected.size());
+                final int to = from + random.nextInt(Math.min(3, expected.size() - from) + 1);
+                seq.subList(from, to).clear();
+                expected.subList(from, to).clear();
+            }
+            assertThat(seq).hasSize(expected.size());
+        }
+
+        assertThat(seq).containsExactlyElementsOf(expected);
+    }
+
+}
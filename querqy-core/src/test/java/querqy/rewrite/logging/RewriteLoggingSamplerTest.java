@@ -0,0 +1,77 @@
+package querqy.rewrite.logging;
+
+import org.junit.Test;
+import querqy.model.DisjunctionMaxQuery;
+import querqy.model.Query;
+import querqy.model.Term;
+import querqy.parser.WhiteSpaceQuerqyParser;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RewriteLoggingSamplerTest {
+
+    @Test
+    public void testThatRateOfOneSamplesEveryRequest() {
+        final RewriteLoggingSampler sampler = RewriteLoggingSampler.of(RewriteLoggingSampler.Mode.QUERY, 1);
+        assertThat(sampler).isSameAs(RewriteLoggingSampler.ALWAYS);
+        for (int i = 0; i < 100; i++) {
+            assertThat(sampler.isSampled(parse("q" + i))).isTrue();
+        }
+    }
+
+    @Test
+    public void testThatInvalidRateIsRejected() {
+        assertThatThrownBy(() -> RewriteLoggingSampler.of(RewriteLoggingSampler.Mode.RANDOM, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testThatRandomModeSamplesApproximatelyOneInN() {
+        final RewriteLoggingSampler sampler = RewriteLoggingSampler.of(RewriteLoggingSampler.Mode.RANDOM, 10);
+        final Query query = parse("a b");
+
+        int sampled = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (sampler.isSampled(query)) {
+                sampled++;
+            }
+        }
+
+        assertThat(sampled).isBetween(700, 1300);
+    }
+
+    @Test
+    public void testThatQueryModeIsDeterministicAndIgnoresGeneratedTerms() {
+        final RewriteLoggingSampler sampler = RewriteLoggingSampler.of(RewriteLoggingSampler.Mode.QUERY, 10);
+
+        int sampled = 0;
+        for (int i = 0; i < 1000; i++) {
+            final boolean isSampled = sampler.isSampled(parse("a q" + i));
+            assertThat(sampler.isSampled(parse("a q" + i))).isEqualTo(isSampled);
+
+            final Query withSynonym = parse("a q" + i);
+            final DisjunctionMaxQuery dmq = (DisjunctionMaxQuery) withSynonym.getClauses().get(0);
+            dmq.addClause(new Term(dmq, "syn" + i, true));
+            assertThat(sampler.isSampled(withSynonym)).isEqualTo(isSampled);
+
+            if (isSampled) {
+                sampled++;
+            }
+        }
+
+        assertThat(sampled).isBetween(50, 150);
+    }
+
+    @Test
+    public void testThatModeIsParsedIgnoringCase() {
+        assertThat(RewriteLoggingSampler.Mode.fromString("query")).isEqualTo(RewriteLoggingSampler.Mode.QUERY);
+        assertThat(RewriteLoggingSampler.Mode.fromString(" Random ")).isEqualTo(RewriteLoggingSampler.Mode.RANDOM);
+        assertThatThrownBy(() -> RewriteLoggingSampler.Mode.fromString("sometimes"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static Query parse(final String input) {
+        return new WhiteSpaceQuerqyParser().parse(input);
+    }
+}
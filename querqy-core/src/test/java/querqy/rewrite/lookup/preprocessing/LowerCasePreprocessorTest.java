@@ -1,6 +1,9 @@
 package querqy.rewrite.lookup.preprocessing;
 
 import org.junit.Test;
+import querqy.model.DisjunctionMaxQuery;
+import querqy.model.Term;
+import querqy.parser.WhiteSpaceQuerqyParser;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -13,4 +16,15 @@ public class LowerCasePreprocessorTest {
                 .isEqualTo("aab");
     }
 
+    @Test
+    public void testThatLowerCaseTermValueIsNotWrappedAgain() {
+        final LowerCasePreprocessor preprocessor = LowerCasePreprocessor.create();
+        final DisjunctionMaxQuery dmq = (DisjunctionMaxQuery) WhiteSpaceQuerqyParser.parseString("AbC", true)
+                .getClauses().get(0);
+        final Term term = (Term) dmq.getClauses().get(0);
+        assertThat(preprocessor.process(term))
+                .isSameAs(term.getValue())
+                .hasToString("abc");
+    }
+
 }
@@ -0,0 +1,154 @@
+package querqy.rewrite.lookup.preprocessing;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class NormalizationDictionaryTest {
+
+    private static final String TEXT = "# comment\n" +
+            "haus,häuser\n" +
+            "maus,mäuse # trailing comment\n" +
+            "laus,\n" +
+            ",leute\n" +
+            "häuser,hausen\n" +
+            "bauer,bauern\n";
+
+    @Test
+    public void testLookupOfKeys() throws IOException {
+        final NormalizationDictionary dictionary = NormalizationDictionary.compile(new StringReader(TEXT));
+
+        assertThat(dictionary.size()).isEqualTo(9);
+        assertThat(canonical(dictionary, "haus")).isEqualTo("haus");
+        assertThat(canonical(dictionary, "mäuse")).isEqualTo("maus");
+        assertThat(canonical(dictionary, "laus")).isEqualTo("laus");
+        assertThat(canonical(dictionary, "leute")).isEqualTo("leute");
+        assertThat(canonical(dictionary, "bauern")).isEqualTo("bauer");
+        // a canonical form stays a canonical form
+        assertThat(canonical(dictionary, "häuser")).isEqualTo("häuser");
+        assertThat(canonical(dictionary, "hausen")).isEqualTo("häuser");
+
+        assertThat(dictionary.find("hau")).isEqualTo(NormalizationDictionary.NOT_FOUND);
+        assertThat(dictionary.find("hauser")).isEqualTo(NormalizationDictionary.NOT_FOUND);
+        assertThat(dictionary.find("zzz")).isEqualTo(NormalizationDictionary.NOT_FOUND);
+        assertThat(dictionary.find("")).isEqualTo(NormalizationDictionary.NOT_FOUND);
+    }
+
+    @Test
+    public void testReverseWalk() throws IOException {
+        final NormalizationDictionary dictionary = NormalizationDictionary.compile(new StringReader(TEXT));
+
+        long range = dictionary.reverseRange();
+        final String reversed = "suah";
+        for (int i = 0; i < reversed.length(); i++) {
+            range = dictionary.narrowReverse(range, i, reversed.charAt(i));
+            assertThat(NormalizationDictionary.isEmpty(range)).isFalse();
+            if (i < 3) {
+                assertThat(dictionary.findReverse(range, i + 1)).isEqualTo(NormalizationDictionary.NOT_FOUND);
+            }
+        }
+        assertThat(dictionary.getKey(dictionary.findReverse(range, 4))).isEqualTo("haus");
+
+        range = dictionary.narrowReverse(range, 4, 'x');
+        assertThat(NormalizationDictionary.isEmpty(range)).isTrue();
+        assertThat(dictionary.findReverse(range, 5)).isEqualTo(NormalizationDictionary.NOT_FOUND);
+
+        long usRange = dictionary.narrowReverse(dictionary.reverseRange(), 0, 's');
+        usRange = dictionary.narrowReverse(usRange, 1, 'u');
+        // haus, maus, laus
+        assertThat(usRange & 0xffffffffL).isEqualTo((usRange >>> 32) + 3);
+    }
+
+    @Test
+    public void testThatWrittenDictionaryCanBeRead() throws IOException {
+        final NormalizationDictionary dictionary = NormalizationDictionary.compile(new StringReader(TEXT));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        dictionary.write(out);
+
+        final NormalizationDictionary read = NormalizationDictionary.read(new ByteArrayInputStream(out.toByteArray()));
+        assertThat(read.size()).isEqualTo(dictionary.size());
+        for (final String key : Arrays.asList("haus", "häuser", "hausen", "mäuse", "leute", "bauern")) {
+            assertThat(canonical(read, key)).isEqualTo(canonical(dictionary, key));
+        }
+
+        final byte[] truncated = Arrays.copyOf(out.toByteArray(), out.size() - 1);
+        assertThatThrownBy(() -> NormalizationDictionary.read(new ByteArrayInputStream(truncated)))
+                .isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> NormalizationDictionary.read(new ByteArrayInputStream(TEXT.getBytes(UTF_8))))
+                .isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void testThatCompiledResourceEqualsNounList() throws IOException {
+        final NormalizationDictionary compiled = GermanNounNormalizer.loadDefaultDictionary();
+
+        final NormalizationDictionary fromText;
+        try (final Reader reader = new InputStreamReader(getClass().getClassLoader()
+                .getResourceAsStream(GermanNounNormalizer.TEXT_RESOURCE), UTF_8)) {
+            fromText = NormalizationDictionary.compile(reader);
+        }
+
+        final ByteArrayOutputStream compiledBytes = new ByteArrayOutputStream();
+        compiled.write(compiledBytes);
+        final ByteArrayOutputStream fromTextBytes = new ByteArrayOutputStream();
+        fromText.write(fromTextBytes);
+
+        assertThat(compiledBytes.toByteArray()).isEqualTo(fromTextBytes.toByteArray());
+    }
+
+    @Test
+    public void testThatCustomNounDictionaryCanBeUsed() throws IOException {
+        final NormalizationDictionary dictionary = NormalizationDictionary.compile(new StringReader(
+                "gurke,gurken\n"));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        dictionary.write(out);
+
+        final LookupPreprocessor preprocessor = LookupPreprocessorFactory.german(
+                NormalizationDictionary.read(new ByteArrayInputStream(out.toByteArray())));
+
+        assertThat(preprocessor.process("Salatgurken").toString()).isEqualTo("salatgurke");
+        // the built-in noun list is not used
+        assertThat(LookupPreprocessorFactory.fromType(LookupPreprocessorType.GERMAN).process("Häuser").toString())
+                .isEqualTo("haus");
+        assertThat(preprocessor.process("Häuser").toString()).isNotEqualTo("haus");
+    }
+
+    @Test
+    public void testThatCustomNounDictionaryCanBeRegistered() throws IOException {
+        final NormalizationDictionary dictionary = NormalizationDictionary.compile(new StringReader(
+                "gurke,gurken\n"));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        dictionary.write(out);
+
+        final LookupPreprocessor preprocessor = LookupPreprocessorFactory.registerGermanNounDictionary("custom_nouns",
+                new ByteArrayInputStream(out.toByteArray()));
+
+        assertThat(LookupPreprocessorFactory.fromName("custom_nouns")).isSameAs(preprocessor);
+        assertThat(preprocessor.process("Salatgurken").toString()).isEqualTo("salatgurke");
+
+        assertThat(LookupPreprocessorFactory.fromName("German"))
+                .isSameAs(LookupPreprocessorFactory.fromType(LookupPreprocessorType.GERMAN));
+        assertThatThrownBy(() -> LookupPreprocessorFactory.register("german", preprocessor))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> LookupPreprocessorFactory.fromName("unknown"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static String canonical(final NormalizationDictionary dictionary, final String key) {
+        final int ordinal = dictionary.find(key);
+        assertThat(ordinal).isGreaterThanOrEqualTo(0);
+        final int value = dictionary.getValue(ordinal);
+        return value == NormalizationDictionary.IDENTITY ? key : dictionary.getKey(value);
+    }
+}
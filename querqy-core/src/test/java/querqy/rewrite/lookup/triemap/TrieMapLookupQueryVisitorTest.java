@@ -5,14 +5,16 @@ import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
+import org.mockito.stubbing.Answer;
 import querqy.model.BooleanQuery;
 import querqy.model.Term;
 import querqy.model.convert.builder.TermBuilder;
+import querqy.rewrite.RewriteBudget;
 import querqy.rewrite.lookup.LookupConfig;
 import querqy.rewrite.lookup.triemap.model.TrieMapEvaluation;
 import querqy.rewrite.lookup.triemap.model.TrieMapSequence;
 import querqy.trie.State;
-import querqy.trie.States;
+import querqy.trie.PrefixCollectingCursor;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -47,12 +49,12 @@ public class TrieMapLookupQueryVisitorTest {
     public void testThat_sequenceLookupIsCalledOnce_forSingleTermQuery() {
         final BooleanQuery bq = bq("a").build();
 
-        when(trieMapSequenceLookup.evaluateTerm(any())).thenReturn(states(false, null));
+        when(trieMapSequenceLookup.evaluateTerm(any(), any())).thenAnswer(moveTo(false, null));
 
         createVisitor(bq, false).lookupAndCollect();
 
-        verify(trieMapSequenceLookup).evaluateTerm(termCaptor.capture());
-        verify(trieMapSequenceLookup, never()).evaluateNextTerm(any(), any());
+        verify(trieMapSequenceLookup).evaluateTerm(termCaptor.capture(), any());
+        verify(trieMapSequenceLookup, never()).evaluateNextTerm(any(), any(), any());
         assertThat(termCaptor.getValue()).isEqualTo(
                 term("a")
         );
@@ -62,7 +64,7 @@ public class TrieMapLookupQueryVisitorTest {
     public void testThat_valueIsCollected_forSingleTermQueryAndCompleteMatch() {
         final BooleanQuery bq = bq("a").build();
 
-        when(trieMapSequenceLookup.evaluateTerm(any())).thenReturn(states(true, "val"));
+        when(trieMapSequenceLookup.evaluateTerm(any(), any())).thenAnswer(moveTo(true, "val"));
 
         createVisitor(bq, false).lookupAndCollect();
 
@@ -74,8 +76,8 @@ public class TrieMapLookupQueryVisitorTest {
     public void testThat_prefixValuesAreCollected_forSingleTermQueryAndPrefixMatches() {
         final BooleanQuery bq = bq("a").build();
 
-        when(trieMapSequenceLookup.evaluateTerm(any())).thenReturn(
-                states(state(false, null), prefixState("val", 1))
+        when(trieMapSequenceLookup.evaluateTerm(any(), any())).thenAnswer(
+                moveTo(state(false, null), prefixState("val", 1))
         );
 
         createVisitor(bq, false).lookupAndCollect();
@@ -88,10 +90,10 @@ public class TrieMapLookupQueryVisitorTest {
     public void testThat_sequenceLookupIsCalledThreeTimes_forSingleTermQueryAndBoundaries() {
         final BooleanQuery bq = bq("a").build();
 
-        when(trieMapSequenceLookup.evaluateTerm(any())).thenReturn(states(false, null));
+        when(trieMapSequenceLookup.evaluateTerm(any(), any())).thenAnswer(moveTo(false, null));
         createVisitor(bq, true).lookupAndCollect();
 
-        verify(trieMapSequenceLookup, times(3)).evaluateTerm(termCaptor.capture());
+        verify(trieMapSequenceLookup, times(3)).evaluateTerm(termCaptor.capture(), any());
         assertThat(termCaptor.getAllValues()).isEqualTo(
                 List.of(
                         BOUNDARY_TERM,
@@ -105,10 +107,10 @@ public class TrieMapLookupQueryVisitorTest {
     public void testThat_sequenceLookupIsCalledMultipleTimes_forEachTermQuery() {
         final BooleanQuery bq = bq("a", "b", "c").build();
 
-        when(trieMapSequenceLookup.evaluateTerm(any())).thenReturn(states(false, null));
+        when(trieMapSequenceLookup.evaluateTerm(any(), any())).thenAnswer(moveTo(false, null));
         createVisitor(bq, false).lookupAndCollect();
 
-        verify(trieMapSequenceLookup, times(3)).evaluateTerm(termCaptor.capture());
+        verify(trieMapSequenceLookup, times(3)).evaluateTerm(termCaptor.capture(), any());
         assertThat(termCaptor.getAllValues()).isEqualTo(
                 List.of(
                     term("a"),
@@ -122,12 +124,12 @@ public class TrieMapLookupQueryVisitorTest {
     public void testThat_sequenceLookupIsCalledWithSequence_forStateReturned() {
         final BooleanQuery bq = bq("a", "b").build();
 
-        when(trieMapSequenceLookup.evaluateTerm(any())).thenReturn(states(true, null));
-        when(trieMapSequenceLookup.evaluateNextTerm(any(), any())).thenReturn(states(true, null));
+        when(trieMapSequenceLookup.evaluateTerm(any(), any())).thenAnswer(moveTo(true, null));
+        when(trieMapSequenceLookup.evaluateNextTerm(any(), any(), any())).thenAnswer(moveTo(true, null));
 
         createVisitor(bq, false).lookupAndCollect();
 
-        verify(trieMapSequenceLookup).evaluateNextTerm(previousSequenceCaptor.capture(), termCaptor.capture());
+        verify(trieMapSequenceLookup).evaluateNextTerm(previousSequenceCaptor.capture(), termCaptor.capture(), any());
 
         assertThat(previousSequenceCaptor.getValue().getTerms()).isEqualTo(List.of(term("a")));
         assertThat(termCaptor.getValue()).isEqualTo(term("b"));
@@ -137,22 +139,22 @@ public class TrieMapLookupQueryVisitorTest {
     public void testThat_sequenceLookupIsNotCalledWithSequence_forNoStateReturned() {
         final BooleanQuery bq = bq("a", "b").build();
 
-        when(trieMapSequenceLookup.evaluateTerm(any())).thenReturn(states(false, null));
+        when(trieMapSequenceLookup.evaluateTerm(any(), any())).thenAnswer(moveTo(false, null));
         createVisitor(bq, false).lookupAndCollect();
 
-        verify(trieMapSequenceLookup, never()).evaluateNextTerm(any(), any());
+        verify(trieMapSequenceLookup, never()).evaluateNextTerm(any(), any(), any());
     }
 
     @Test
     public void testThat_sequenceLookupIsCalledWithAllVariations_forTermsInDmq() {
         final BooleanQuery bq = bq(dmq("a", "b"), dmq("c", "d")).build();
 
-        when(trieMapSequenceLookup.evaluateTerm(any())).thenReturn(states(true, null));
-        when(trieMapSequenceLookup.evaluateNextTerm(any(), any())).thenReturn(states(true, null));
+        when(trieMapSequenceLookup.evaluateTerm(any(), any())).thenAnswer(moveTo(true, null));
+        when(trieMapSequenceLookup.evaluateNextTerm(any(), any(), any())).thenAnswer(moveTo(true, null));
         createVisitor(bq, false).lookupAndCollect();
 
-        verify(trieMapSequenceLookup, times(4)).evaluateTerm(termCaptor.capture());
-        verify(trieMapSequenceLookup, times(4)).evaluateNextTerm(previousSequenceCaptor.capture(), nextTermCaptor.capture());
+        verify(trieMapSequenceLookup, times(4)).evaluateTerm(termCaptor.capture(), any());
+        verify(trieMapSequenceLookup, times(4)).evaluateNextTerm(previousSequenceCaptor.capture(), nextTermCaptor.capture(), any());
 
         assertThat(termCaptor.getAllValues()).containsExactly(
                 term("a"),
@@ -176,12 +178,12 @@ public class TrieMapLookupQueryVisitorTest {
     public void testThat_sequenceLookupIsCalledSeparately_forNestedBq() {
         final BooleanQuery bq = bq(dmq("a"), dmq(TermBuilder.term("b"), bq("c", "d"))).build();
 
-        when(trieMapSequenceLookup.evaluateTerm(any())).thenReturn(states(true, null));
-        when(trieMapSequenceLookup.evaluateNextTerm(any(), any())).thenReturn(states(true, null));
+        when(trieMapSequenceLookup.evaluateTerm(any(), any())).thenAnswer(moveTo(true, null));
+        when(trieMapSequenceLookup.evaluateNextTerm(any(), any(), any())).thenAnswer(moveTo(true, null));
         createVisitor(bq, false).lookupAndCollect();
 
-        verify(trieMapSequenceLookup, times(4)).evaluateTerm(termCaptor.capture());
-        verify(trieMapSequenceLookup, times(2)).evaluateNextTerm(previousSequenceCaptor.capture(), nextTermCaptor.capture());
+        verify(trieMapSequenceLookup, times(4)).evaluateTerm(termCaptor.capture(), any());
+        verify(trieMapSequenceLookup, times(2)).evaluateNextTerm(previousSequenceCaptor.capture(), nextTermCaptor.capture(), any());
 
         assertThat(termCaptor.getAllValues()).containsExactly(
                 term("a"),
@@ -198,6 +200,25 @@ public class TrieMapLookupQueryVisitorTest {
         );
     }
 
+    @Test
+    public void testThat_lookupStops_forExhaustedRewriteBudget() {
+        final BooleanQuery bq = bq("a", "b", "c").build();
+
+        when(trieMapSequenceLookup.evaluateTerm(any(), any())).thenAnswer(moveTo(true, "val"));
+        when(trieMapSequenceLookup.evaluateNextTerm(any(), any(), any())).thenAnswer(moveTo(true, "val"));
+
+        final RewriteBudget rewriteBudget = RewriteBudget.of(null, 3);
+        new TrieMapLookupQueryVisitor<>(bq, LookupConfig.builder().hasBoundaries(false).build(),
+                trieMapSequenceLookup, trieMapMatchCollector, rewriteBudget).lookupAndCollect();
+
+        // a, b, a b - then the budget is used up
+        verify(trieMapSequenceLookup, times(2)).evaluateTerm(termCaptor.capture(), any());
+        verify(trieMapSequenceLookup, times(1)).evaluateNextTerm(any(), any(), any());
+        verify(trieMapMatchCollector, times(3)).collect(any());
+        assertThat(termCaptor.getAllValues()).containsExactly(term("a"), term("b"));
+        assertThat(rewriteBudget.getRefusals()).isEqualTo(1);
+    }
+
     private List<List<String>> zip(final List<TrieMapSequence<String>> seqs, final List<Term> terms) {
         final List<List<Term>> termSeqs = seqs.stream().map(TrieMapSequence::getTerms).collect(Collectors.toList());
 
@@ -235,14 +256,17 @@ public class TrieMapLookupQueryVisitorTest {
     }
 
     @SafeVarargs
-    private States<String> states(final State<String> complete, final State<String>... prefixes) {
-        final States<String> states = new States<>(complete);
-        Arrays.stream(prefixes).forEach(states::addPrefix);
-        return states;
+    private Answer<Boolean> moveTo(final State<String> complete, final State<String>... prefixes) {
+        return invocation -> {
+            final PrefixCollectingCursor<String> cursor = invocation.getArgument(invocation.getArguments().length - 1);
+            cursor.setState(complete);
+            Arrays.stream(prefixes).forEach(prefix -> cursor.accept(prefix.value, prefix.index));
+            return cursor.isKnown();
+        };
     }
 
-    private States<String> states(final boolean isKnown, final String value) {
-        return new States<>(state(isKnown, value));
+    private Answer<Boolean> moveTo(final boolean isKnown, final String value) {
+        return moveTo(state(isKnown, value));
     }
 
     private State<String> state(final boolean isKnown, final String value) {
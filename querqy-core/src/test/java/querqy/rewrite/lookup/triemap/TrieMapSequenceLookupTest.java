@@ -9,10 +9,16 @@ import org.mockito.Mock;
 import querqy.model.Term;
 import querqy.rewrite.lookup.LookupConfig;
 import querqy.rewrite.lookup.preprocessing.LookupPreprocessor;
+import querqy.rewrite.lookup.triemap.model.TrieMapSequence;
+import querqy.trie.PrefixCollectingCursor;
+import querqy.trie.States;
 import querqy.trie.TrieMap;
 
+import java.util.List;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -42,13 +48,35 @@ public class TrieMapSequenceLookupTest {
     public void testThat_preprocessedTermIsPassedToMap_forGivenPreprocessor() {
         when(preprocessor.process(any())).thenReturn("b");
 
-        trieMapSequenceLookup.evaluateTerm(term("a"));
+        final PrefixCollectingCursor<String> cursor = new PrefixCollectingCursor<>();
+        trieMapSequenceLookup.evaluateTerm(term("a"), cursor);
 
-        verify(trieMap).get(charSequenceCaptor.capture());
+        verify(trieMap).lookup(charSequenceCaptor.capture(), eq(cursor), eq(cursor));
         assertThat(charSequenceCaptor.getValue()).isEqualTo("b");
 
     }
 
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testThat_deprecatedLookupsReturnStates() {
+        when(preprocessor.process(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        final TrieMap<String> map = new TrieMap<>();
+        map.put("a", "x");
+        map.put("a b", "y");
+        final TrieMapSequenceLookup<String> lookup = new TrieMapSequenceLookup<>(map,
+                LookupConfig.builder().preprocessor(preprocessor).build());
+
+        final States<String> states = lookup.evaluateTerm(term("a"));
+        assertThat(states.getStateForCompleteSequence().getValue()).isEqualTo("x");
+
+        final TrieMapSequence<String> sequence = TrieMapSequence.of(states, List.of(term("a")));
+        assertThat(lookup.evaluateNextTerm(sequence, term("b")).getStateForCompleteSequence().getValue())
+                .isEqualTo("y");
+        assertThat(lookup.evaluateNextTerm(sequence, term("c")).getStateForCompleteSequence().isKnown()).isFalse();
+        assertThat(sequence.getStates().getStateForCompleteSequence().getValue()).isEqualTo("x");
+    }
+
     private Term term(final String term) {
         return new Term(null, term);
     }
@@ -0,0 +1,93 @@
+package querqy.rewrite.metrics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testThat_emptyHistogramReturnsZero() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.getCount()).isEqualTo(0L);
+        assertThat(histogram.getValueAtPercentile(99.0)).isEqualTo(0L);
+        assertThat(histogram.getMean()).isEqualTo(0.0);
+    }
+
+    @Test
+    public void testThat_smallValuesAreExact() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 20; i++) {
+            histogram.record(i);
+        }
+        assertThat(histogram.getValueAtPercentile(50.0)).isEqualTo(10L);
+        assertThat(histogram.getValueAtPercentile(100.0)).isEqualTo(20L);
+        assertThat(histogram.getMax()).isEqualTo(20L);
+        assertThat(histogram.getMean()).isEqualTo(10.5);
+    }
+
+    @Test
+    public void testThat_percentilesHaveBoundedRelativeError() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 100_000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertThat(histogram.getCount()).isEqualTo(100_000L);
+        final double tolerance = 1.0 / LatencyHistogram.SUB_BUCKET_COUNT;
+        assertThat((double) histogram.getValueAtPercentile(50.0)).isCloseTo(50_000_000.0,
+                within(50_000_000.0 * tolerance));
+        assertThat((double) histogram.getValueAtPercentile(99.0)).isCloseTo(99_000_000.0,
+                within(99_000_000.0 * tolerance));
+        assertThat(histogram.getValueAtPercentile(100.0)).isEqualTo(100_000_000L);
+    }
+
+    @Test
+    public void testThat_bucketBoundsContainValue() {
+        for (long value = 0; value < 1_000_000L; value = value * 3 / 2 + 1) {
+            final int index = LatencyHistogram.bucketIndex(value);
+            assertThat(LatencyHistogram.highestEquivalentValue(index)).isGreaterThanOrEqualTo(value);
+            assertThat(index == 0 || LatencyHistogram.highestEquivalentValue(index - 1) < value).isTrue();
+        }
+    }
+
+    @Test
+    public void testThat_valuesAboveHighestTrackableValueAreClamped() {
+        final LatencyHistogram histogram = new LatencyHistogram(1000L);
+        histogram.record(5000L);
+        histogram.record(-1L);
+        assertThat(histogram.getMax()).isEqualTo(1000L);
+        assertThat(histogram.getCount()).isEqualTo(2L);
+        assertThat(histogram.getValueAtPercentile(0.0)).isEqualTo(0L);
+    }
+
+    @Test
+    public void testThat_concurrentRecordsAreCounted() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        histogram.record(i);
+                    }
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(histogram.getCount()).isEqualTo(40_000L);
+    }
+
+}
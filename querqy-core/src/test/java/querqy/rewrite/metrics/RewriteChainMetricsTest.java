@@ -0,0 +1,90 @@
+package querqy.rewrite.metrics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RewriteChainMetricsTest {
+
+    @Test
+    public void testThat_metricsAreKeptPerRewriter() {
+        final RewriteChainMetrics metrics = new RewriteChainMetrics(false);
+        metrics.recordRewrite("r1", 100L, -1L, true);
+        metrics.recordRewrite("r1", 200L, -1L, false);
+        metrics.recordRewrite("r2", 300L, -1L, true);
+
+        final RewriterMetrics r1 = metrics.getRewriterMetrics("r1").orElseThrow();
+        assertThat(r1.getRewrites()).isEqualTo(2L);
+        assertThat(r1.getAppliedRewrites()).isEqualTo(1L);
+        assertThat(((LatencyHistogram) r1.getLatencyNanos()).getMax()).isEqualTo(200L);
+        assertThat(metrics.getRewriterMetrics("r2").orElseThrow().getRewrites()).isEqualTo(1L);
+        assertThat(metrics.getRewriterMetrics("r3")).isEmpty();
+    }
+
+    @Test
+    public void testThat_allocatedBytesAreSummed() {
+        final RewriteChainMetrics metrics = new RewriteChainMetrics(true);
+        metrics.recordRewrite("r1", 100L, 1000L, true);
+        metrics.recordRewrite("r1", 100L, 24L, true);
+        assertThat(metrics.getRewriterMetrics("r1").orElseThrow().getAllocatedBytes()).isEqualTo(1024L);
+    }
+
+    @Test
+    public void testThat_listenersAreNotifiedAboutNewAndExistingRewriters() {
+        final RewriteChainMetrics metrics = new RewriteChainMetrics(false);
+        metrics.recordRewrite("r1", 100L, -1L, true);
+
+        final List<String> notified = new ArrayList<>();
+        metrics.addNewRewriterListener(rewriterMetrics -> notified.add(rewriterMetrics.getRewriterId()));
+        metrics.recordRewrite("r2", 100L, -1L, true);
+        metrics.recordRewrite("r2", 100L, -1L, true);
+
+        assertThat(notified).containsExactly("r1", "r2");
+    }
+
+    @Test
+    public void testThat_latenciesAreRecordedOnlyInTheProvidedRecorder() {
+        final List<String> rewriterIds = new ArrayList<>();
+        final List<Long> latencies = new ArrayList<>();
+        final RewriteChainMetrics metrics = new RewriteChainMetrics(false, rewriterId -> {
+            rewriterIds.add(rewriterId);
+            return new LatencyRecorder() {
+                @Override
+                public void record(final long nanos) {
+                    latencies.add(nanos);
+                }
+
+                @Override
+                public long getCount() {
+                    return latencies.size();
+                }
+            };
+        });
+        metrics.recordRewrite("r1", 100L, -1L, true);
+        metrics.recordRewrite("r1", 200L, -1L, false);
+
+        assertThat(rewriterIds).containsExactly("r1");
+        assertThat(latencies).containsExactly(100L, 200L);
+        assertThat(metrics.getRewriterMetrics("r1").orElseThrow().getRewrites()).isEqualTo(2L);
+    }
+
+    @Test
+    public void testThat_removedMetricsAreCreatedAgain() {
+        final RewriteChainMetrics metrics = new RewriteChainMetrics(false);
+        final List<String> notified = new ArrayList<>();
+        metrics.addNewRewriterListener(rewriterMetrics -> notified.add(rewriterMetrics.getRewriterId()));
+        metrics.recordRewrite("r1", 100L, -1L, true);
+
+        assertThat(metrics.removeRewriterMetrics("r1")).isPresent();
+        assertThat(metrics.getRewriterMetrics("r1")).isEmpty();
+        assertThat(metrics.removeRewriterMetrics("r1")).isEmpty();
+
+        metrics.recordRewrite("r1", 100L, -1L, true);
+        assertThat(metrics.getRewriterMetrics("r1").orElseThrow().getRewrites()).isEqualTo(1L);
+        assertThat(notified).containsExactly("r1", "r1");
+    }
+
+}
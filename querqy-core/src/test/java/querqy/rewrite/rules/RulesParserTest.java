@@ -0,0 +1,89 @@
+package querqy.rewrite.rules;
+
+import org.junit.Test;
+import querqy.rewrite.commonrules.model.InstructionsSupplier;
+import querqy.rewrite.commonrules.model.TrieMapRulesCollectionBuilder;
+import querqy.rewrite.lookup.preprocessing.LookupPreprocessorFactory;
+import querqy.rewrite.rules.factory.RulesParserFactory;
+import querqy.rewrite.rules.factory.config.RulesParserConfig;
+import querqy.rewrite.rules.factory.config.TextParserConfig;
+import querqy.trie.TrieMap;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertThrows;
+
+public class RulesParserTest {
+
+    @Test
+    public void testThat_parallelParsingCreatesSameRulesAsSequentialParsing() throws IOException {
+        final String rules = rules(RulesParser.MIN_RULES_PER_CHUNK * 10, 1000);
+
+        assertThat(values(parse(rules, 4))).isEqualTo(values(parse(rules, 1)));
+    }
+
+    @Test
+    public void testThat_ruleOrderIsKept_forParallelParsing() throws IOException {
+        final String rules = rules(RulesParser.MIN_RULES_PER_CHUNK * 10, 1000);
+
+        final List<Integer> ords = new ArrayList<>();
+        for (final InstructionsSupplier supplier : parse(rules, 4)) {
+            supplier.getInstructionsList().forEach(instructions -> ords.add(instructions.getOrd()));
+        }
+
+        assertThat(ords).hasSize(RulesParser.MIN_RULES_PER_CHUNK * 10);
+        assertThat(ords).doesNotHaveDuplicates();
+        assertThat(ords).allMatch(ord -> ord >= 0 && ord < RulesParser.MIN_RULES_PER_CHUNK * 10);
+    }
+
+    @Test
+    public void testThat_exceptionIsThrown_forRepeatedIdInDifferentChunks() {
+        final String rules = rules(RulesParser.MIN_RULES_PER_CHUNK * 10, 1000)
+                + "last =>\n  SYNONYM: s\n  @_id: \"input0\"\n";
+
+        final RuleParseException e = assertThrows(RuleParseException.class, () -> parse(rules, 4));
+        assertThat(e.getMessage()).contains("input0");
+    }
+
+    @Test
+    public void testThat_firstErrorIsThrown_forParallelParsing() {
+        final int numRules = RulesParser.MIN_RULES_PER_CHUNK * 10;
+        final String rules = rules(numRules, 1000)
+                .replace("input3 =>\n  SYNONYM: s3", "input3 =>\n  SYNONYM(-1): s3")
+                .replace("input" + (numRules - 2) + " =>\n  SYNONYM: s", "input" + (numRules - 2) + " =>\n  UP: ");
+
+        final RuleParseException e = assertThrows(RuleParseException.class, () -> parse(rules, 4));
+        assertThat(e.getMessage()).contains("-1");
+    }
+
+    private static String rules(final int numRules, final int numSynonyms) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < numRules; i++) {
+            sb.append("input").append(i).append(" =>\n")
+                    .append("  SYNONYM: s").append(i % numSynonyms).append('\n')
+                    .append("  @_id: \"input").append(i).append("\"\n");
+        }
+        return sb.toString();
+    }
+
+    private static TrieMap<InstructionsSupplier> parse(final String rules, final int parallelism) throws IOException {
+        return RulesParserFactory.textParser(RulesParserConfig.builder()
+                .textParserConfig(TextParserConfig.builder()
+                        .rulesContentReader(new StringReader(rules))
+                        .build())
+                .rulesCollectionBuilder(new TrieMapRulesCollectionBuilder(LookupPreprocessorFactory.lowercase()))
+                .parallelism(parallelism)
+                .build()).parse();
+    }
+
+    private static List<InstructionsSupplier> values(final TrieMap<InstructionsSupplier> trieMap) {
+        final List<InstructionsSupplier> values = new ArrayList<>();
+        trieMap.forEach(values::add);
+        return values;
+    }
+
+}
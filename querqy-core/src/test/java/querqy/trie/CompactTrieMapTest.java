@@ -0,0 +1,279 @@
+package querqy.trie;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CompactTrieMapTest {
+
+    @Test
+    public void testThatEmptyMapAlwaysReturnsUnknownState() {
+        final CompactTrieMap<Integer> map = CompactTrieMap.of(new TrieMap<>());
+        final State<Integer> state = map.get("abc").getStateForCompleteSequence();
+        assertFalse(state.isKnown());
+        assertFalse(state.isFinal());
+        assertEquals(-1, state.getIndex());
+        assertFalse(map.iterator().hasNext());
+        assertEquals(0, map.getNodeCount());
+    }
+
+    @Test
+    public void testThatBlankLookupSequenceAlwaysReturnsUnknownState() {
+        final TrieMap<Integer> trieMap = new TrieMap<>();
+        trieMap.put("abc", 1);
+        final State<Integer> state = CompactTrieMap.of(trieMap).get("").getStateForCompleteSequence();
+        assertFalse(state.isKnown());
+        assertEquals(-1, state.getIndex());
+    }
+
+    @Test
+    public void testExactAndPartialMatches() {
+        final TrieMap<Integer> trieMap = new TrieMap<>();
+        trieMap.put("abc", 1);
+        trieMap.put("ab", 2);
+        trieMap.put("b", 3);
+
+        final CompactTrieMap<Integer> map = CompactTrieMap.of(trieMap);
+        assertEquals(4, map.getNodeCount());
+
+        State<Integer> state = map.get("a").getStateForCompleteSequence();
+        assertTrue(state.isKnown());
+        assertFalse(state.isFinal());
+        assertEquals(0, state.getIndex());
+
+        state = map.get("ab").getStateForCompleteSequence();
+        assertTrue(state.isFinal());
+        assertEquals((Integer) 2, state.getValue());
+        assertEquals(1, state.getIndex());
+
+        state = map.get("abc").getStateForCompleteSequence();
+        assertTrue(state.isFinal());
+        assertEquals((Integer) 1, state.getValue());
+        assertEquals(2, state.getIndex());
+
+        state = map.get("b").getStateForCompleteSequence();
+        assertTrue(state.isFinal());
+        assertEquals((Integer) 3, state.getValue());
+
+        assertFalse(map.get("abd").getStateForCompleteSequence().isKnown());
+        assertFalse(map.get("abcd").getStateForCompleteSequence().isKnown());
+        assertFalse(map.get("c").getStateForCompleteSequence().isKnown());
+    }
+
+    @Test
+    public void testResumingFromKnownState() {
+        final TrieMap<Integer> trieMap = new TrieMap<>();
+        trieMap.put("abc", 1);
+        trieMap.put("ab", 2);
+
+        final CompactTrieMap<Integer> map = CompactTrieMap.of(trieMap);
+        final State<Integer> state = map.get("ab").getStateForCompleteSequence();
+        final State<Integer> state2 = map.get("c", state).getStateForCompleteSequence();
+        assertTrue(state2.isFinal());
+        assertEquals((Integer) 1, state2.getValue());
+        assertEquals(0, state2.getIndex());
+
+        assertFalse(map.get("d", state).getStateForCompleteSequence().isKnown());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatResumingFromStateOfMutableTrieMapIsNotAllowed() {
+        final TrieMap<Integer> trieMap = new TrieMap<>();
+        trieMap.put("ab", 1);
+        final State<Integer> state = trieMap.get("a").getStateForCompleteSequence();
+        CompactTrieMap.of(trieMap).get("b", state);
+    }
+
+    @Test
+    public void testPrefixes() {
+        final TrieMap<Integer> trieMap = new TrieMap<>();
+        trieMap.putPrefix("ab", 1);
+        trieMap.putPrefix("abcd", 2);
+        trieMap.put("abcd", 3);
+
+        final CompactTrieMap<Integer> map = CompactTrieMap.of(trieMap);
+
+        final States<Integer> expected = trieMap.get("abcdef");
+        final States<Integer> states = map.get("abcdef");
+        assertFalse(states.getStateForCompleteSequence().isKnown());
+        assertStatesEqual(expected, states);
+
+        // exact match does not contain the prefix of the same length
+        assertStatesEqual(trieMap.get("abcd"), map.get("abcd"));
+        assertNull(map.get("abcd").getPrefixes().stream().filter(state -> state.index == 3).findAny().orElse(null));
+
+        assertStatesEqual(trieMap.get(" abc"), map.get(" abc"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testThatPutIsNotSupported() {
+        CompactTrieMap.of(new TrieMap<Integer>()).put("a", 1);
+    }
+
+    @Test
+    public void testIterator() {
+        final TrieMap<Integer> trieMap = new TrieMap<>();
+        trieMap.put("abc", 1);
+        trieMap.put("ab", 2);
+        trieMap.putPrefix("ab", 3);
+        trieMap.put("x", 4);
+
+        final List<Integer> values = new ArrayList<>();
+        CompactTrieMap.of(trieMap).forEach(values::add);
+        assertThat(values, containsInAnyOrder(1, 2, 3, 4));
+    }
+
+    @Test
+    public void testThatRandomEntriesMatchTrieMap() {
+        final Random random = new Random(42L);
+        final TrieMap<Integer> trieMap = new TrieMap<>();
+        final List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            final String key = randomString(random);
+            keys.add(key);
+            if (random.nextInt(5) == 0) {
+                trieMap.putPrefix(key, i);
+            } else {
+                trieMap.put(key, i);
+            }
+        }
+
+        final CompactTrieMap<Integer> map = CompactTrieMap.of(trieMap);
+
+        for (int i = 0; i < 2000; i++) {
+            final String key = keys.get(i) + randomString(random);
+            for (int len = 1; len <= key.length(); len++) {
+                final String seq = key.substring(0, len);
+                assertStatesEqual(trieMap.get(seq), map.get(seq));
+            }
+        }
+
+        final TrieCursor<Integer> cursor = new TrieCursor<>();
+        final TrieCursor<Integer> compactCursor = new TrieCursor<>();
+        for (int i = 0; i < 2000; i++) {
+            final String key = keys.get(i) + randomString(random);
+            final List<Integer> prefixes = new ArrayList<>();
+            final List<Integer> compactPrefixes = new ArrayList<>();
+            final boolean known = trieMap.lookup(key, cursor, (value, index) -> prefixes.add(index));
+            assertEquals(known, map.lookup(key, compactCursor, (value, index) -> compactPrefixes.add(index)));
+            assertEquals(cursor.getValue(), compactCursor.getValue());
+            assertEquals(cursor.getIndex(), compactCursor.getIndex());
+            assertEquals(prefixes, compactPrefixes);
+            if (known) {
+                assertEquals(trieMap.lookupNext(" ", cursor, null), map.lookupNext(" ", compactCursor, null));
+            }
+        }
+
+        final List<Integer> expectedValues = new ArrayList<>();
+        trieMap.forEach(expectedValues::add);
+        final List<Integer> values = new ArrayList<>();
+        map.forEach(values::add);
+        assertThat(values, containsInAnyOrder(expectedValues.toArray()));
+    }
+
+    @Test
+    public void testThatWrittenMapCanBeReadFromBuffer() throws Exception {
+        final TrieMap<Integer> trieMap = new TrieMap<>();
+        final Random random = new Random(7);
+        for (int i = 0; i < 200; i++) {
+            trieMap.put(randomString(random), i);
+            trieMap.putPrefix(randomString(random), -i);
+        }
+        final CompactTrieMap<Integer> map = CompactTrieMap.of(trieMap);
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(42); // the map doesn't have to start at the beginning of the buffer
+        map.write(out, INT_CODEC);
+        out.writeInt(43);
+        out.flush();
+
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.size());
+        buffer.put(bytes.toByteArray()).flip();
+        assertEquals(42, buffer.getInt());
+        final CompactTrieMap<Integer> read = CompactTrieMap.read(buffer, INT_CODEC);
+        assertEquals(43, buffer.getInt());
+
+        assertEquals(map.getNodeCount(), read.getNodeCount());
+        for (int i = 0; i < 500; i++) {
+            final String s = randomString(random);
+            assertStatesEqual(map.get(s), read.get(s));
+        }
+
+        final List<Integer> expectedValues = new ArrayList<>();
+        map.forEach(expectedValues::add);
+        final List<Integer> values = new ArrayList<>();
+        read.forEach(values::add);
+        assertEquals(expectedValues, values);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatReadingInvalidBufferFails() {
+        CompactTrieMap.read(ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}), INT_CODEC);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatReadingTruncatedBufferFails() throws Exception {
+        final TrieMap<Integer> trieMap = new TrieMap<>();
+        trieMap.put("abc", 1);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CompactTrieMap.of(trieMap).write(new DataOutputStream(bytes), INT_CODEC);
+        CompactTrieMap.read(ByteBuffer.wrap(bytes.toByteArray(), 0, bytes.size() - 8), INT_CODEC);
+    }
+
+    private static final TrieValueCodec<Integer> INT_CODEC = new TrieValueCodec<Integer>() {
+        @Override
+        public void encode(final Integer value, final DataOutput out) throws IOException {
+            out.writeInt(value);
+        }
+
+        @Override
+        public Integer decode(final ByteBuffer in) {
+            return in.getInt();
+        }
+    };
+
+    private static String randomString(final Random random) {
+        final int length = 1 + random.nextInt(6);
+        final StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(5)));
+        }
+        return sb.toString();
+    }
+
+    private static void assertStatesEqual(final States<Integer> expected, final States<Integer> actual) {
+        assertStateEquals(expected.getStateForCompleteSequence(), actual.getStateForCompleteSequence());
+        final List<State<Integer>> expectedPrefixes = expected.getPrefixes();
+        final List<State<Integer>> actualPrefixes = actual.getPrefixes();
+        if (expectedPrefixes == null) {
+            assertTrue(actualPrefixes == null || actualPrefixes.isEmpty());
+        } else {
+            assertThat(actualPrefixes, org.hamcrest.Matchers.not(empty()));
+            assertEquals(expectedPrefixes.size(), actualPrefixes.size());
+            for (int i = 0; i < expectedPrefixes.size(); i++) {
+                assertStateEquals(expectedPrefixes.get(i), actualPrefixes.get(i));
+            }
+        }
+    }
+
+    private static void assertStateEquals(final State<Integer> expected, final State<Integer> actual) {
+        assertEquals(expected.isKnown(), actual.isKnown());
+        assertEquals(expected.isFinal(), actual.isFinal());
+        assertEquals(expected.getValue(), actual.getValue());
+        assertEquals(expected.getIndex(), actual.getIndex());
+    }
+
+}
@@ -26,6 +26,39 @@ public class TrieMapTest {
         assertEquals(-1, state.getIndex());
     }
     
+    @Test
+    public void testThatWithValueDoesNotChangeOriginalMap() {
+        TrieMap<Integer> map = new TrieMap<>();
+        map.put("abc", 1);
+        map.put("abd", 2);
+        map.put("x", 3);
+        map.put("abcdef", 7);
+
+        TrieMap<Integer> copy = map.withValue("abd", 4).withValue("ab", 5).withPrefixValue("ab", 6)
+                .withValue("x", null);
+
+        assertEquals(Integer.valueOf(1), map.get("abc").getStateForCompleteSequence().value);
+        assertEquals(Integer.valueOf(2), map.get("abd").getStateForCompleteSequence().value);
+        assertFalse(map.get("ab").getStateForCompleteSequence().isFinal());
+        assertNull(map.get("abx").getPrefixes());
+        assertEquals(Integer.valueOf(3), map.get("x").getStateForCompleteSequence().value);
+
+        assertEquals(Integer.valueOf(1), copy.get("abc").getStateForCompleteSequence().value);
+        assertEquals(Integer.valueOf(4), copy.get("abd").getStateForCompleteSequence().value);
+        assertEquals(Integer.valueOf(5), copy.get("ab").getStateForCompleteSequence().value);
+        assertEquals(Integer.valueOf(6), copy.get("abx").getPrefixes().get(0).value);
+        assertFalse(copy.get("x").getStateForCompleteSequence().isFinal());
+
+        // unchanged paths are shared
+        assertNotNull(map.root.firstChild.firstChild.firstChild);
+        assertSame(map.root.firstChild.firstChild.firstChild, copy.root.firstChild.firstChild.firstChild);
+        assertEquals(Integer.valueOf(7), copy.get("abcdef").getStateForCompleteSequence().value);
+
+        TrieMap<Integer> withoutPrefix = copy.withPrefixValue("ab", null);
+        assertNull(withoutPrefix.get("abx").getPrefixes());
+        assertEquals(Integer.valueOf(6), copy.get("abx").getPrefixes().get(0).value);
+    }
+
     @Test
     public void testThatBlankLookupSequenceAlwaysReturnsUnknownState() {
         TrieMap<Integer> map = new TrieMap<>();
@@ -316,6 +349,128 @@ public class TrieMapTest {
         return new StateMatcher<T>(isKnown, isFinal, index, value);
     }
 
+    @Test
+    public void testThatPrefixCanBeAddedToUnknownStates() {
+        TrieMap<Integer> map = new TrieMap<>();
+        map.put("abc", 1);
+        final States<Integer> states = map.get("x");
+        assertFalse(states.getStateForCompleteSequence().isKnown());
+        assertNull(states.getPrefixes());
+        assertNotSame(states, map.get("x"));
+
+        states.addPrefix(new State<>(true, 2, null, 0));
+        assertEquals(1, states.getPrefixes().size());
+        assertNull(map.get("x").getPrefixes());
+    }
+
+    @Test
+    public void testLookupWithCursorAndPrefixConsumer() {
+        TrieMap<Integer> map = new TrieMap<>();
+        map.put("abc", 1);
+        map.putPrefix("a", 2);
+        map.putPrefix("ab", 3);
+
+        final TrieCursor<Integer> cursor = new TrieCursor<>();
+        final List<Integer> prefixValues = new LinkedList<>();
+        final List<Integer> prefixIndexes = new LinkedList<>();
+
+        assertTrue(map.lookup("abc", cursor, (value, index) -> {
+            assertTrue(cursor.isFinal());
+            prefixValues.add(value);
+            prefixIndexes.add(index);
+        }));
+        assertEquals((Integer) 1, cursor.getValue());
+        assertEquals(2, cursor.getIndex());
+        assertThat(prefixValues, contains(3, 2));
+        assertThat(prefixIndexes, contains(1, 0));
+
+        assertTrue(map.lookup("ab", cursor, null));
+        assertFalse(cursor.isFinal());
+        assertTrue(map.lookupNext("c", cursor, null));
+        assertEquals((Integer) 1, cursor.getValue());
+        assertEquals(0, cursor.getIndex());
+
+        assertFalse(map.lookup("abx", cursor, null));
+        assertFalse(cursor.isKnown());
+        assertEquals(-1, cursor.getIndex());
+        assertSame(State.unknown(), cursor.toState());
+    }
+
+    @Test
+    public void testThatPrefixCollectingCursorMatchesStates() {
+        TrieMap<Integer> map = new TrieMap<>();
+        map.put("abc", 1);
+        map.putPrefix("a", 2);
+        map.putPrefix("ab", 3);
+        map.put("abc d", 4);
+        map.putPrefix("abc d", 5);
+
+        final PrefixCollectingCursor<Integer> cursor = new PrefixCollectingCursor<>();
+
+        assertTrue(map.lookup("abc", cursor, cursor));
+        assertTrue(cursor.hasMatch());
+        assertEquals(2, cursor.getPrefixCount());
+        assertEquals((Integer) 3, cursor.getPrefixValue(0));
+        assertEquals(1, cursor.getPrefixIndex(0));
+        assertStatesEqual(map.get("abc"), cursor.toStates());
+
+        final State<Integer> state = cursor.toState();
+        assertFalse(map.lookupNext(" def", cursor, cursor));
+        assertTrue(cursor.hasMatch());
+        assertEquals((Integer) 5, cursor.getPrefixValue(0));
+        assertStatesEqual(map.get(" def", state), cursor.toStates());
+
+        // looking up the separator and the term one after the other is the same as looking up " def"
+        cursor.setState(state);
+        assertTrue(map.lookupNext(" ", cursor, cursor));
+        assertFalse(map.lookupNext("def", cursor, cursor));
+        assertStatesEqual(map.get(" def", state), cursor.toStates());
+
+        // prefixes of the last lookup are discarded
+        assertFalse(map.lookup("x", cursor, cursor));
+        assertFalse(cursor.hasMatch());
+        assertEquals(0, cursor.getPrefixCount());
+        assertStatesEqual(map.get("x"), cursor.toStates());
+    }
+
+    private static void assertStatesEqual(final States<Integer> expected, final States<Integer> actual) {
+        final State<Integer> expectedState = expected.getStateForCompleteSequence();
+        final State<Integer> actualState = actual.getStateForCompleteSequence();
+        assertEquals(expectedState.isKnown(), actualState.isKnown());
+        assertEquals(expectedState.getValue(), actualState.getValue());
+        assertEquals(expectedState.getIndex(), actualState.getIndex());
+        final List<State<Integer>> expectedPrefixes = expected.getPrefixes() == null
+                ? List.of() : expected.getPrefixes();
+        final List<State<Integer>> actualPrefixes = actual.getPrefixes() == null ? List.of() : actual.getPrefixes();
+        assertEquals(expectedPrefixes.size(), actualPrefixes.size());
+        for (int i = 0; i < expectedPrefixes.size(); i++) {
+            assertEquals(expectedPrefixes.get(i).getValue(), actualPrefixes.get(i).getValue());
+            assertEquals(expectedPrefixes.get(i).getIndex(), actualPrefixes.get(i).getIndex());
+        }
+    }
+
+    @Test
+    public void testThatCursorCanBeResumedFromState() {
+        TrieMap<Integer> map = new TrieMap<>();
+        map.put("abc", 1);
+
+        final State<Integer> state = map.get("ab").getStateForCompleteSequence();
+        final TrieCursor<Integer> cursor = new TrieCursor<>(state);
+        assertTrue(map.lookupNext("c", cursor, null));
+        assertEquals((Integer) 1, cursor.getValue());
+
+        final State<Integer> finalState = cursor.toState();
+        assertTrue(finalState.isFinal());
+        assertEquals(0, finalState.getIndex());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatLookupNextRequiresKnownCursor() {
+        TrieMap<Integer> map = new TrieMap<>();
+        map.put("abc", 1);
+        map.lookupNext("a", new TrieCursor<>(), null);
+    }
+
     public static class StateMatcher<T> extends TypeSafeMatcher<State<T>> {
         
         final boolean isKnown;
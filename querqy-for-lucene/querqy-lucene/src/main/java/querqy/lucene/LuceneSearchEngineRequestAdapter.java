@@ -3,9 +3,11 @@ package querqy.lucene;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.Query;
+import querqy.lucene.rewrite.DocumentFrequencyCorrection.TermLookup;
 import querqy.lucene.rewrite.infologging.InfoLoggingContext;
 import querqy.rewrite.SearchEngineRequestAdapter;
 import querqy.lucene.rewrite.SearchFieldsAndBoosting.FieldBoostModel;
+import querqy.lucene.rewrite.cache.DocumentFrequencyCache;
 import querqy.lucene.rewrite.cache.TermQueryCache;
 import querqy.model.ExpandedQuery;
 import querqy.model.QuerqyQuery;
@@ -66,6 +68,18 @@ public interface LuceneSearchEngineRequestAdapter extends SearchEngineRequestAda
      */
     Optional<TermQueryCache> getTermQueryCache();
 
+    /**
+     * <p>Get an optional {@link DocumentFrequencyCache}.</p>
+     *
+     * <p>The cache holds term statistics across requests and is consulted by the document frequency correction and
+     * by term queries that are scored by field boost only before looking up the terms in the index.</p>
+     *
+     * @return The optional DocumentFrequencyCache
+     */
+    default Optional<DocumentFrequencyCache> getDocumentFrequencyCache() {
+        return Optional.empty();
+    }
+
     /**
      * <p>Should Querqy boost queries be added to the main query?</p>
      *
@@ -100,6 +114,19 @@ public interface LuceneSearchEngineRequestAdapter extends SearchEngineRequestAda
      */
     Optional<QuerySimilarityScoring> getBoostQuerySimilarityScoring();
 
+    /**
+     * <p>Get the {@link TermLookup} to be used by the document frequency correction
+     * ({@link QuerySimilarityScoring#DFC}).</p>
+     *
+     * <p>If this method returns an empty {@link Optional},
+     * {@link QueryParsingController#DEFAULT_DFC_TERM_LOOKUP} will be used.</p>
+     *
+     * @return An optional TermLookup
+     */
+    default Optional<TermLookup> getDocumentFrequencyCorrectionTermLookup() {
+        return Optional.empty();
+    }
+
 
 
     /**
@@ -24,6 +24,7 @@ import querqy.lucene.rewrite.LuceneTermQueryBuilder;
 import querqy.lucene.rewrite.SearchFieldsAndBoosting;
 import querqy.lucene.rewrite.SearchFieldsAndBoosting.FieldBoostModel;
 import querqy.lucene.rewrite.TermQueryBuilder;
+import querqy.lucene.rewrite.cache.DocumentFrequencyCache;
 import querqy.model.BoostQuery;
 import querqy.model.ExpandedQuery;
 import querqy.model.MatchAllQuery;
@@ -60,6 +61,13 @@ public class QueryParsingController {
      */
     protected static final QuerySimilarityScoring DEFAULT_BOOST_QUERY_SIMILARITY_SCORING = QuerySimilarityScoring.DFC;
 
+    /**
+     * The default value for {@link LuceneSearchEngineRequestAdapter#getDocumentFrequencyCorrectionTermLookup()}
+     * (= {@link DocumentFrequencyCorrection.TermLookup#PER_TERM})
+     */
+    protected static final DocumentFrequencyCorrection.TermLookup DEFAULT_DFC_TERM_LOOKUP =
+            DocumentFrequencyCorrection.TermLookup.PER_TERM;
+
     protected static final float DEFAULT_TIEBREAKER = 0f;
     protected static final float DEFAULT_MULTI_MATCH_TIEBREAKER = 1f;
 
@@ -147,13 +155,20 @@ public class QueryParsingController {
 
             final QuerySimilarityScoring userQuerySimilarityScoring = requestAdapter.getUserQuerySimilarityScoring()
                     .orElse(DEFAULT_USER_QUERY_SIMILARITY_SCORING);
-            final TermQueryBuilder userTermQueryBuilder = userQuerySimilarityScoring.createTermQueryBuilder(null);
+            final DocumentFrequencyCorrection.TermLookup dfcTermLookup = requestAdapter
+                    .getDocumentFrequencyCorrectionTermLookup().orElse(DEFAULT_DFC_TERM_LOOKUP);
+            final DocumentFrequencyCache documentFrequencyCache = requestAdapter.getDocumentFrequencyCache()
+                    .orElse(null);
+            final TermQueryBuilder userTermQueryBuilder = userQuerySimilarityScoring.createTermQueryBuilder(
+                    new DocumentFrequencyCorrection(dfcTermLookup, documentFrequencyCache), documentFrequencyCache);
             dfc = userTermQueryBuilder.getDocumentFrequencyCorrection().orElse(null);
 
             final QuerySimilarityScoring boostQuerySimilarityScoring = requestAdapter.getBoostQuerySimilarityScoring()
                     .orElse(DEFAULT_BOOST_QUERY_SIMILARITY_SCORING);
 
-            boostTermQueryBuilder = boostQuerySimilarityScoring.createTermQueryBuilder(dfc);
+            boostTermQueryBuilder = boostQuerySimilarityScoring.createTermQueryBuilder(
+                    dfc != null ? dfc : new DocumentFrequencyCorrection(dfcTermLookup, documentFrequencyCache),
+                    documentFrequencyCache);
 
             boostSearchFieldsAndBoostings = requestAdapter.useFieldBoostingInQuerqyBoostQueries()
                     ? searchFieldsAndBoosting
@@ -536,6 +551,14 @@ public class QueryParsingController {
         );
     }
 
+    /**
+     * @return true if the rewrite chain skipped rewriters or optional rewrites because the
+     * {@link querqy.rewrite.RewriteBudget} of the request was exhausted
+     */
+    public boolean hasDegradedRewriting() {
+        return rewriteChainLogging != null && rewriteChainLogging.hasDegradedRewriting();
+    }
+
     public Map<String, Object> getDebugInfo() {
 
         if (requestAdapter.isDebugQuery()) {
@@ -546,7 +569,8 @@ public class QueryParsingController {
                 info.put("parser", parserDebugInfo);
             }
 
-            if (rewriteChainLogging != null && !rewriteChainLogging.getRewriteChain().isEmpty()) {
+            if (rewriteChainLogging != null && (!rewriteChainLogging.getRewriteChain().isEmpty()
+                    || rewriteChainLogging.hasDegradedRewriting())) {
                 info.put(
                         "rewrite",
                         REWRITE_LOGGING_OBJECT_MAPPER.convertValue(rewriteChainLogging, new TypeReference<>() {})
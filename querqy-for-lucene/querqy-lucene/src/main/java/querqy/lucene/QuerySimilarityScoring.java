@@ -5,24 +5,44 @@ import querqy.lucene.rewrite.DocumentFrequencyCorrection;
 import querqy.lucene.rewrite.FieldBoostTermQueryBuilder;
 import querqy.lucene.rewrite.SimilarityTermQueryBuilder;
 import querqy.lucene.rewrite.TermQueryBuilder;
+import querqy.lucene.rewrite.cache.DocumentFrequencyCache;
 
 public enum QuerySimilarityScoring {
 
-    DFC(dfc -> dfc == null
-            ? new DependentTermQueryBuilder(new DocumentFrequencyCorrection())
+    DFC((dfc, documentFrequencyCache) -> dfc == null
+            ? new DependentTermQueryBuilder(new DocumentFrequencyCorrection(
+                    DocumentFrequencyCorrection.TermLookup.PER_TERM, documentFrequencyCache))
             : new DependentTermQueryBuilder(dfc)),
 
-    SIMILARITY_SCORE_OFF(dfc ->  new FieldBoostTermQueryBuilder()),
+    SIMILARITY_SCORE_OFF((dfc, documentFrequencyCache) ->  new FieldBoostTermQueryBuilder(documentFrequencyCache)),
 
-    SIMILARITY_SCORE_ON(dfc -> new SimilarityTermQueryBuilder());
+    SIMILARITY_SCORE_ON((dfc, documentFrequencyCache) -> new SimilarityTermQueryBuilder());
 
     private TermQueryBuilderFactory termQueryBuilderFactory;
 
-    QuerySimilarityScoring(final TermQueryBuilderFactory termQueryBuilderFactory) {
+    QuerySimilarityScoring(final CacheAwareTermQueryBuilderFactory termQueryBuilderFactory) {
         this.termQueryBuilderFactory = termQueryBuilderFactory;
     }
 
     TermQueryBuilder createTermQueryBuilder(final DocumentFrequencyCorrection dfc) {
-        return termQueryBuilderFactory.createTermQueryBuilder(dfc);
+        return createTermQueryBuilder(dfc, null);
+    }
+
+    TermQueryBuilder createTermQueryBuilder(final DocumentFrequencyCorrection dfc,
+                                            final DocumentFrequencyCache documentFrequencyCache) {
+        return termQueryBuilderFactory.createTermQueryBuilder(dfc, documentFrequencyCache);
+    }
+
+    @FunctionalInterface
+    private interface CacheAwareTermQueryBuilderFactory extends TermQueryBuilderFactory {
+
+        @Override
+        default TermQueryBuilder createTermQueryBuilder(final DocumentFrequencyCorrection dfc) {
+            return createTermQueryBuilder(dfc, null);
+        }
+
+        @Override
+        TermQueryBuilder createTermQueryBuilder(DocumentFrequencyCorrection dfc,
+                                                DocumentFrequencyCache documentFrequencyCache);
     }
 }
@@ -2,9 +2,23 @@ package querqy.lucene;
 
 import querqy.lucene.rewrite.DocumentFrequencyCorrection;
 import querqy.lucene.rewrite.TermQueryBuilder;
+import querqy.lucene.rewrite.cache.DocumentFrequencyCache;
 
 public interface TermQueryBuilderFactory {
 
     TermQueryBuilder createTermQueryBuilder(DocumentFrequencyCorrection dfc);
 
+    /**
+     * Create a TermQueryBuilder that can take term statistics from a cache that is shared across requests. The default
+     * implementation ignores the cache and delegates to {@link #createTermQueryBuilder(DocumentFrequencyCorrection)}.
+     *
+     * @param dfc The document frequency correction, can be null
+     * @param documentFrequencyCache The cache for term statistics, can be null
+     * @return The TermQueryBuilder
+     */
+    default TermQueryBuilder createTermQueryBuilder(final DocumentFrequencyCorrection dfc,
+                                                    final DocumentFrequencyCache documentFrequencyCache) {
+        return createTermQueryBuilder(dfc);
+    }
+
 }
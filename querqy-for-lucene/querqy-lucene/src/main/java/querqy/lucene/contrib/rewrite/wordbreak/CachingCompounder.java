@@ -0,0 +1,123 @@
+package querqy.lucene.contrib.rewrite.wordbreak;
+
+import org.apache.lucene.index.IndexReader;
+import querqy.LowerCaseCharSequence;
+import querqy.lucene.rewrite.cache.ReaderScopedCache;
+import querqy.model.Term;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A {@link LuceneCompounder} that memoizes the results of another compounder per index reader. The cache key is
+ * made of the (lower-cased) values of the input terms and the reverse flag. As the original terms of a
+ * {@link querqy.lucene.contrib.rewrite.wordbreak.LuceneCompounder.CompoundTerm} belong to the query, only their
+ * positions in the input are cached.
+ */
+class CachingCompounder implements LuceneCompounder {
+
+    private final LuceneCompounder delegate;
+    private final boolean lowerCaseInput;
+    private final ReaderScopedCache<Key, List<CachedCompound>> cache;
+
+    CachingCompounder(final LuceneCompounder delegate, final boolean lowerCaseInput,
+                      final ReaderScopedCache<Key, List<CachedCompound>> cache) {
+        this.delegate = delegate;
+        this.lowerCaseInput = lowerCaseInput;
+        this.cache = cache;
+    }
+
+    @Override
+    public List<CompoundTerm> combine(final Term[] terms, final IndexReader indexReader, final boolean reverse)
+            throws IOException {
+
+        final String[] values = new String[terms.length];
+        for (int i = 0; i < values.length; i++) {
+            final CharSequence value = terms[i].getValue();
+            values[i] = (lowerCaseInput ? new LowerCaseCharSequence(value) : value).toString();
+        }
+        final Key key = new Key(values, reverse);
+
+        List<CachedCompound> compounds = cache.get(indexReader, key);
+        if (compounds == null) {
+
+            final List<CompoundTerm> result = delegate.combine(terms, indexReader, reverse);
+            compounds = new ArrayList<>(result.size());
+            for (final CompoundTerm compoundTerm : result) {
+                compounds.add(new CachedCompound(compoundTerm.value.toString(),
+                        indexesOf(compoundTerm.originalTerms, terms)));
+            }
+            cache.put(indexReader, key, compounds);
+
+            return result;
+
+        }
+
+        final List<CompoundTerm> result = new ArrayList<>(compounds.size());
+        for (final CachedCompound compound : compounds) {
+            final Term[] originalTerms = new Term[compound.originalTermIndexes.length];
+            for (int i = 0; i < originalTerms.length; i++) {
+                originalTerms[i] = terms[compound.originalTermIndexes[i]];
+            }
+            result.add(new CompoundTerm(compound.value, originalTerms));
+        }
+        return result;
+
+    }
+
+    private static int[] indexesOf(final Term[] originalTerms, final Term[] terms) {
+        final int[] indexes = new int[originalTerms.length];
+        for (int i = 0; i < indexes.length; i++) {
+            int index = -1;
+            for (int j = 0; j < terms.length && index < 0; j++) {
+                if (terms[j] == originalTerms[i]) {
+                    index = j;
+                }
+            }
+            if (index < 0) {
+                throw new IllegalStateException("Original term not found in input: " + originalTerms[i]);
+            }
+            indexes[i] = index;
+        }
+        return indexes;
+    }
+
+    static class Key {
+
+        final String[] values;
+        final boolean reverse;
+        final int hashCode;
+
+        Key(final String[] values, final boolean reverse) {
+            this.values = values;
+            this.reverse = reverse;
+            this.hashCode = 31 * Arrays.hashCode(values) + Boolean.hashCode(reverse);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            final Key key = (Key) o;
+            return reverse == key.reverse && Arrays.equals(values, key.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    static class CachedCompound {
+
+        final String value;
+        final int[] originalTermIndexes;
+
+        CachedCompound(final String value, final int[] originalTermIndexes) {
+            this.value = value;
+            this.originalTermIndexes = originalTermIndexes;
+        }
+    }
+}
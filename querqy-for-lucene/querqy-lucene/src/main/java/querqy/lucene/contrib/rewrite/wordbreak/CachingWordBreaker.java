@@ -0,0 +1,63 @@
+package querqy.lucene.contrib.rewrite.wordbreak;
+
+import org.apache.lucene.index.IndexReader;
+import querqy.LowerCaseCharSequence;
+import querqy.lucene.rewrite.cache.ReaderScopedCache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link LuceneWordBreaker} that memoizes the results of another word breaker per index reader. The cache key is
+ * the (lower-cased) word, so the maximum number of expansions and collation verification must not change between
+ * calls.
+ */
+class CachingWordBreaker implements LuceneWordBreaker {
+
+    private final LuceneWordBreaker delegate;
+    private final boolean lowerCaseInput;
+    private final ReaderScopedCache<String, List<CharSequence[]>> cache;
+
+    CachingWordBreaker(final LuceneWordBreaker delegate, final boolean lowerCaseInput,
+                       final ReaderScopedCache<String, List<CharSequence[]>> cache) {
+        this.delegate = delegate;
+        this.lowerCaseInput = lowerCaseInput;
+        this.cache = cache;
+    }
+
+    @Override
+    public List<CharSequence[]> breakWord(final CharSequence word, final IndexReader indexReader,
+                                          final int maxDecompoundExpansions, final boolean verifyCollation)
+            throws IOException {
+
+        final String key = (lowerCaseInput ? new LowerCaseCharSequence(word) : word).toString();
+
+        List<CharSequence[]> suggestions = cache.get(indexReader, key);
+        if (suggestions == null) {
+
+            final List<CharSequence[]> result = delegate.breakWord(word, indexReader, maxDecompoundExpansions,
+                    verifyCollation);
+
+            // copy into Strings so that we don't hold on to the chars of the request
+            suggestions = new ArrayList<>(result.size());
+            for (final CharSequence[] sequence : result) {
+                if (sequence == null) {
+                    suggestions.add(null);
+                } else {
+                    final CharSequence[] copy = new CharSequence[sequence.length];
+                    for (int i = 0; i < copy.length; i++) {
+                        copy[i] = sequence[i].toString();
+                    }
+                    suggestions.add(copy);
+                }
+            }
+            suggestions = Collections.unmodifiableList(suggestions);
+            cache.put(indexReader, key, suggestions);
+        }
+
+        return suggestions;
+
+    }
+}
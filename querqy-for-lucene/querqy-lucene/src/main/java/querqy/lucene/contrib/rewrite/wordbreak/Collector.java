@@ -110,6 +110,7 @@ public class Collector {
     private final int minSuggestionFrequency;
     private final boolean verifyCollation;
     private final IndexReader indexReader;
+    private final WordBreakDictionary dictionary;
     private final String dictionaryField;
     private final float weightDfObservation;
     private final float totalDocsNorm;
@@ -139,6 +140,7 @@ public class Collector {
         this.maxDecompoundExpansions = maxDecompoundExpansions;
         this.verifyCollation = verifyCollation;
         this.indexReader = indexReader;
+        this.dictionary = null;
         searcher = new IndexSearcher(indexReader);
         this.dictionaryField = dictionaryField;
         this.weightDfObservation = weightDfObservation;
@@ -146,12 +148,41 @@ public class Collector {
         this.totalDocsNorm = 2f * (float) Math.log(1 + indexReader.numDocs());
     }
 
+    /**
+     * Create a Collector that looks up the frequencies of the candidates in a precomputed dictionary instead of the
+     * index. Collation cannot be verified without the index.
+     *
+     * @param minSuggestionFrequency Minimum frequency of each split term in the dictionary
+     * @param maxDecompoundExpansions Maximum number of decompound structures to return
+     * @param maxEvaluations Maximum number of lookups in the dictionary
+     * @param dictionary The dictionary
+     * @param weightDfObservation The weight of the observed frequencies when combining with the score of the morphological compound pattern.
+     */
+    public Collector(final int minSuggestionFrequency, final int maxDecompoundExpansions, final int maxEvaluations,
+                     final WordBreakDictionary dictionary, final float weightDfObservation) {
+
+        final int queueInitialCapacity = Math.min(maxDecompoundExpansions, 10);
+        collection = new PriorityQueue<>(queueInitialCapacity);
+
+        this.minSuggestionFrequency = minSuggestionFrequency;
+        this.maxDecompoundExpansions = maxDecompoundExpansions;
+        this.verifyCollation = false;
+        this.indexReader = null;
+        this.dictionary = dictionary;
+        searcher = null;
+        this.dictionaryField = null;
+        this.weightDfObservation = weightDfObservation;
+        this.maxEvaluations = maxEvaluations;
+        this.totalDocsNorm = 2f * (float) Math.log(1 + dictionary.getNumDocs());
+    }
+
 
     /**
      *
      * @param left The modifier character sequence
      * @param right The head character sequence
-     * @param rightTerm The head character sequence as a term in the dictionary field
+     * @param rightTerm The head character sequence as a term in the dictionary field (only needed to verify
+     *                  collation)
      * @param rightDf The document frequency of the rightTerm
      * @param weightMorphologicalPattern The weight of this specific morphological pattern.
      * @return The state of candidate collection
@@ -164,10 +195,10 @@ public class Collector {
         }
         evaluations++;
 
-        final Term leftTerm = new Term(dictionaryField, new BytesRef(left));
+        final Term leftTerm = dictionary == null ? new Term(dictionaryField, new BytesRef(left)) : null;
         final int leftDf;
         try {
-            leftDf = indexReader.docFreq(leftTerm);
+            leftDf = dictionary == null ? indexReader.docFreq(leftTerm) : dictionary.getFrequency(left);
             if (leftDf >= minSuggestionFrequency) {
 
                 final float score = weightDfObservation == 0f ? weightMorphologicalPattern
@@ -0,0 +1,67 @@
+package querqy.lucene.contrib.rewrite.wordbreak;
+
+import org.apache.lucene.index.IndexReader;
+import querqy.model.Term;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A {@link LuceneCompounder} that validates the compounds suggested by a {@link Morphology} against a precomputed
+ * {@link WordBreakDictionary} instead of the index.
+ */
+public class DictionaryCompounder implements LuceneCompounder {
+
+    private static final int DEFAULT_MAX_COMPOUND_EXPANSIONS = 10;
+    private final Morphology morphology;
+    private final WordBreakDictionary dictionary;
+    private final boolean lowerCaseInput;
+    private final int minSuggestionFrequency;
+    private final int maxCompoundExpansions;
+
+    public DictionaryCompounder(final Morphology morphology,
+                                final WordBreakDictionary dictionary,
+                                final boolean lowerCaseInput,
+                                final int minSuggestionFrequency,
+                                final int maxCompoundExpansions) {
+        this.morphology = morphology;
+        this.dictionary = dictionary;
+        this.lowerCaseInput = lowerCaseInput;
+        this.minSuggestionFrequency = minSuggestionFrequency;
+        this.maxCompoundExpansions = maxCompoundExpansions;
+    }
+
+    public DictionaryCompounder(final Morphology morphology,
+                                final WordBreakDictionary dictionary,
+                                final boolean lowerCaseInput,
+                                final int minSuggestionFrequency) {
+        this(morphology, dictionary, lowerCaseInput, minSuggestionFrequency, DEFAULT_MAX_COMPOUND_EXPANSIONS);
+    }
+
+    /**
+     * @param terms The terms to combine
+     * @param indexReader Ignored
+     * @param reverse Iff true, combine the terms in reverse order
+     * @return The compounds that exist in the dictionary, ordered by decreasing score
+     */
+    @Override
+    public List<CompoundTerm> combine(final Term[] terms, final IndexReader indexReader, final boolean reverse) {
+        if (terms.length < 2) {
+            return Collections.emptyList();
+        }
+        final int leftIdx = reverse ? 1 : 0;
+        final int rightIdx = reverse ? 0 : 1;
+        final Term left = lowerCaseInput ? terms[leftIdx].toLowerCaseTerm() : terms[leftIdx];
+        final Term right = lowerCaseInput ? terms[rightIdx].toLowerCaseTerm() : terms[rightIdx];
+
+        return Arrays.stream(morphology.suggestCompounds(left, right))
+                .sorted(Comparator.reverseOrder())
+                .limit(maxCompoundExpansions)
+                .filter(compound -> dictionary.getFrequency(compound.compound) >= minSuggestionFrequency)
+                .map(compound -> new CompoundTerm(compound.compound, terms))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,95 @@
+package querqy.lucene.contrib.rewrite.wordbreak;
+
+import org.apache.lucene.index.IndexReader;
+import querqy.LowerCaseCharSequence;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link LuceneWordBreaker} that validates the candidates of a {@link Morphology} against a precomputed
+ * {@link WordBreakDictionary} instead of the index. It never touches the IndexReader and it cannot verify that the
+ * parts of a compound co-occur in a document.
+ */
+public class DictionaryWordBreaker implements LuceneWordBreaker {
+
+    private final Morphology morphology;
+    private final WordBreakDictionary dictionary;
+    private final boolean lowerCaseInput;
+    private final int minSuggestionFrequency;
+    private final int minBreakLength;
+    private final int maxEvaluations;
+    final float weightDfObservation;
+
+    public DictionaryWordBreaker(final Morphology morphology, final WordBreakDictionary dictionary,
+                                 final boolean lowerCaseInput, final int minSuggestionFrequency,
+                                 final int minBreakLength, final int maxEvaluations) {
+        this(morphology, dictionary, lowerCaseInput, minSuggestionFrequency, minBreakLength, maxEvaluations,
+                MorphologicalWordBreaker.DEFAULT_WEIGHT_MORPHOLOGICAL_PATTERN);
+    }
+
+    public DictionaryWordBreaker(final Morphology morphology, final WordBreakDictionary dictionary,
+                                 final boolean lowerCaseInput, final int minSuggestionFrequency,
+                                 final int minBreakLength, final int maxEvaluations,
+                                 final float weightMorphologicalPattern) {
+        this.morphology = morphology;
+        this.dictionary = dictionary;
+        this.lowerCaseInput = lowerCaseInput;
+        this.minSuggestionFrequency = minSuggestionFrequency;
+        this.minBreakLength = minBreakLength;
+        this.maxEvaluations = maxEvaluations;
+        weightDfObservation = 1f - weightMorphologicalPattern;
+    }
+
+    /**
+     * @param word The word to break
+     * @param indexReader Ignored
+     * @param maxDecompoundExpansions The maximum number of decompound structures to return
+     * @param verifyCollation Ignored, collation cannot be verified without the index
+     * @return The word breaks, ordered by decreasing score
+     */
+    @Override
+    public List<CharSequence[]> breakWord(final CharSequence word,
+                                          final IndexReader indexReader,
+                                          final int maxDecompoundExpansions,
+                                          final boolean verifyCollation) {
+
+        if (maxDecompoundExpansions < 1) {
+            return Collections.emptyList();
+        }
+
+        final int termLength = Character.codePointCount(word, 0, word.length());
+        if (termLength < minBreakLength) {
+            return Collections.emptyList();
+        }
+
+        final CharSequence input = lowerCaseInput && (!(word instanceof LowerCaseCharSequence))
+                ? new LowerCaseCharSequence(word) : word;
+
+        final Collector collector = new Collector(minSuggestionFrequency, maxDecompoundExpansions, maxEvaluations,
+                dictionary, weightDfObservation);
+
+        for (final WordBreak suggestedWordBreak : morphology.suggestWordBreaks(input, minBreakLength)) {
+
+            final int rightDf = dictionary.getFrequency(suggestedWordBreak.originalRight);
+            if (rightDf < minSuggestionFrequency) {
+                continue;
+            }
+
+            for (final Suggestion suggestion : suggestedWordBreak.suggestions) {
+                final Collector.CollectionState collectionState = collector.collect(
+                        suggestion.sequence[0],
+                        suggestedWordBreak.originalRight,
+                        null,
+                        rightDf,
+                        suggestion.score);
+                if (collectionState.isMaxEvaluationsReached()) {
+                    break;
+                }
+            }
+        }
+
+        return collector.flushResults();
+
+    }
+}
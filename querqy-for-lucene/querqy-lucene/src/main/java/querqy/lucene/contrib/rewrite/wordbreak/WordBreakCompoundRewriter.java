@@ -15,6 +15,7 @@ import querqy.model.Query;
 import querqy.rewrite.RewriterOutput;
 import querqy.model.Term;
 import querqy.rewrite.QueryRewriter;
+import querqy.rewrite.RewriteBudget;
 import querqy.rewrite.SearchEngineRequestAdapter;
 import querqy.trie.TrieMap;
 
@@ -38,6 +39,7 @@ public class WordBreakCompoundRewriter extends AbstractNodeVisitor<Node> impleme
 
     private ArrayDeque<Term> previousTerms = null;
     private ArrayDeque<Term> termsToDelete = null;
+    private RewriteBudget rewriteBudget = null;
 
     //
     private List<Node> nodesToAdd = null;
@@ -90,6 +92,7 @@ public class WordBreakCompoundRewriter extends AbstractNodeVisitor<Node> impleme
             previousTerms = new ArrayDeque<>();
             termsToDelete = new ArrayDeque<>();
             nodesToAdd = new LinkedList<>();
+            rewriteBudget = RewriteBudget.of(requestAdapter);
             visit((Query) userQuery);
 
             // append nodesToAdd to parent query
@@ -153,8 +156,8 @@ public class WordBreakCompoundRewriter extends AbstractNodeVisitor<Node> impleme
 
     @Override
     public Node visit(final Term term) {
-        // don't handle generated terms
-        if (!term.isGenerated()) {
+        // don't handle generated terms and stop looking up (de)compounds in the index if we ran out of budget
+        if (!term.isGenerated() && rewriteBudget.tryConsume(1)) {
 
             if (isReverseCompoundTriggerWord(term.getValue())) {
                 termsToDelete.add(term);
@@ -2,6 +2,7 @@ package querqy.lucene.contrib.rewrite.wordbreak;
 
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.spell.WordBreakSpellChecker;
+import querqy.lucene.rewrite.cache.ReaderScopedCache;
 import querqy.model.ExpandedQuery;
 import querqy.model.Term;
 import querqy.rewrite.QueryRewriter;
@@ -38,6 +39,10 @@ public class WordBreakCompoundRewriterFactory extends RewriterFactory {
     final LuceneWordBreaker wordBreaker; // package visible for testing
     final LuceneCompounder compounder; // package visible for testing
     private final TrieMap<Boolean> protectedWords;
+    private final ReaderScopedCache<String, List<CharSequence[]>> decompoundCache;
+    private final ReaderScopedCache<CachingCompounder.Key, List<CachingCompounder.CachedCompound>> compoundCache;
+    private final LuceneWordBreaker rewriterWordBreaker;
+    private final LuceneCompounder rewriterCompounder;
 
     /**
      * @param rewriterId                  The id of the rewriter
@@ -69,6 +74,87 @@ public class WordBreakCompoundRewriterFactory extends RewriterFactory {
                                             final List<String> protectedWords,
                                             final String decompoundMorphologyName,
                                             final String compoundMorphologyName) {
+        this(rewriterId, indexReaderSupplier, dictionaryField, lowerCaseInput, minSuggestionFreq, maxCombineLength,
+                minBreakLength, reverseCompoundTriggerWords, alwaysAddReverseCompounds, maxDecompoundExpansions,
+                verifyDecompoundCollation, protectedWords, decompoundMorphologyName, compoundMorphologyName, 0);
+    }
+
+    /**
+     * @param rewriterId                  The id of the rewriter
+     * @param indexReaderSupplier         Access to an IndexReader
+     * @param dictionaryField             The dictionary field name
+     * @param lowerCaseInput              Iff true, lowercase input before matching it against the dictionary field.
+     * @param minSuggestionFreq           The minimum frequency of a suggestion in the dictionary field (see {@link WordBreakSpellChecker}.setMinSuggestionFrequency())
+     * @param maxCombineLength            The maximum length of a suggestion when combining tokens (see {@link WordBreakSpellChecker}.setMaxCombineWordLength())
+     * @param minBreakLength              The minimum word part length for decompounding (see {@link WordBreakSpellChecker}.setMinBreakWordLength())
+     * @param reverseCompoundTriggerWords Query tokens in this list will trigger the creation of a reverse compound of the surrounding tokens.
+     * @param alwaysAddReverseCompounds   Iff true, reverse shingles will be added to the query
+     * @param maxDecompoundExpansions     The maximum number of decompounds to add to the query
+     * @param verifyDecompoundCollation   Iff true, verify that all parts of the compound cooccur in dictionaryField after decompounding
+     * @param protectedWords              Do not split these words
+     * @param decompoundMorphologyName    The name of decompounding morphology to use
+     * @param compoundMorphologyName      The name of compounding morphology to use
+     * @param suggestionCacheSize         The maximum number of decompound and of compound suggestions to cache per
+     *                                    IndexReader. 0 disables the cache.
+     */
+    public WordBreakCompoundRewriterFactory(final String rewriterId,
+                                            final Supplier<IndexReader> indexReaderSupplier,
+                                            final String dictionaryField,
+                                            final boolean lowerCaseInput,
+                                            final int minSuggestionFreq,
+                                            final int maxCombineLength,
+                                            final int minBreakLength,
+                                            final List<String> reverseCompoundTriggerWords,
+                                            final boolean alwaysAddReverseCompounds,
+                                            final int maxDecompoundExpansions,
+                                            final boolean verifyDecompoundCollation,
+                                            final List<String> protectedWords,
+                                            final String decompoundMorphologyName,
+                                            final String compoundMorphologyName,
+                                            final int suggestionCacheSize) {
+        this(rewriterId, indexReaderSupplier, dictionaryField, lowerCaseInput, minSuggestionFreq, maxCombineLength,
+                minBreakLength, reverseCompoundTriggerWords, alwaysAddReverseCompounds, maxDecompoundExpansions,
+                verifyDecompoundCollation, protectedWords, decompoundMorphologyName, compoundMorphologyName,
+                suggestionCacheSize, null);
+    }
+
+    /**
+     * @param rewriterId                  The id of the rewriter
+     * @param indexReaderSupplier         Access to an IndexReader
+     * @param dictionaryField             The dictionary field name
+     * @param lowerCaseInput              Iff true, lowercase input before matching it against the dictionary field.
+     * @param minSuggestionFreq           The minimum frequency of a suggestion in the dictionary field (see {@link WordBreakSpellChecker}.setMinSuggestionFrequency())
+     * @param maxCombineLength            The maximum length of a suggestion when combining tokens (see {@link WordBreakSpellChecker}.setMaxCombineWordLength())
+     * @param minBreakLength              The minimum word part length for decompounding (see {@link WordBreakSpellChecker}.setMinBreakWordLength())
+     * @param reverseCompoundTriggerWords Query tokens in this list will trigger the creation of a reverse compound of the surrounding tokens.
+     * @param alwaysAddReverseCompounds   Iff true, reverse shingles will be added to the query
+     * @param maxDecompoundExpansions     The maximum number of decompounds to add to the query
+     * @param verifyDecompoundCollation   Iff true, verify that all parts of the compound cooccur in dictionaryField after decompounding
+     * @param protectedWords              Do not split these words
+     * @param decompoundMorphologyName    The name of decompounding morphology to use
+     * @param compoundMorphologyName      The name of compounding morphology to use
+     * @param suggestionCacheSize         The maximum number of decompound and of compound suggestions to cache per
+     *                                    IndexReader. 0 disables the cache.
+     * @param dictionary                  A precomputed dictionary to validate compounds and decompounds against
+     *                                    instead of the dictionary field. Can be null. Collation cannot be verified
+     *                                    when using a dictionary.
+     */
+    public WordBreakCompoundRewriterFactory(final String rewriterId,
+                                            final Supplier<IndexReader> indexReaderSupplier,
+                                            final String dictionaryField,
+                                            final boolean lowerCaseInput,
+                                            final int minSuggestionFreq,
+                                            final int maxCombineLength,
+                                            final int minBreakLength,
+                                            final List<String> reverseCompoundTriggerWords,
+                                            final boolean alwaysAddReverseCompounds,
+                                            final int maxDecompoundExpansions,
+                                            final boolean verifyDecompoundCollation,
+                                            final List<String> protectedWords,
+                                            final String decompoundMorphologyName,
+                                            final String compoundMorphologyName,
+                                            final int suggestionCacheSize,
+                                            final WordBreakDictionary dictionary) {
         super(rewriterId);
         this.indexReaderSupplier = indexReaderSupplier;
         this.lowerCaseInput = lowerCaseInput;
@@ -87,32 +173,61 @@ public class WordBreakCompoundRewriterFactory extends RewriterFactory {
         final Optional<Morphology> compoundMorphology = new MorphologyProvider().get(compoundMorphologyName);
         final Optional<Morphology> decompoundMorphology = new MorphologyProvider().get(decompoundMorphologyName);
 
-        if (!compoundMorphology.isPresent() || compoundMorphology.get() == MorphologyProvider.DEFAULT) {
-            // use WordBreakSpellChecker when DEFAULT for backwards compatibility
-            final WordBreakSpellChecker spellChecker = new WordBreakSpellChecker();
-            spellChecker.setMaxChanges(MAX_CHANGES);
-            spellChecker.setMinSuggestionFrequency(minSuggestionFreq);
-            spellChecker.setMaxCombineWordLength(maxCombineLength);
-            spellChecker.setMinBreakWordLength(minBreakLength);
-            spellChecker.setMaxEvaluations(100);
-            compounder = new SpellCheckerCompounder(spellChecker, dictionaryField, lowerCaseInput);
+        if (dictionary != null) {
+            // validate compounds and decompounds against the precomputed dictionary instead of the index
+            if (verifyDecompoundCollation) {
+                throw new IllegalArgumentException("verifyDecompoundCollation is not supported when using a dictionary");
+            }
+            compounder = new DictionaryCompounder(compoundMorphology.orElse(MorphologyProvider.DEFAULT), dictionary,
+                    lowerCaseInput, minSuggestionFreq);
+            wordBreaker = new DictionaryWordBreaker(decompoundMorphology.orElse(MorphologyProvider.DEFAULT),
+                    dictionary, lowerCaseInput, minSuggestionFreq, minBreakLength, MAX_EVALUATIONS);
         } else {
-            compounder = new MorphologicalCompounder(compoundMorphology.get(), dictionaryField, lowerCaseInput, minSuggestionFreq);
+
+            if (!compoundMorphology.isPresent() || compoundMorphology.get() == MorphologyProvider.DEFAULT) {
+                // use WordBreakSpellChecker when DEFAULT for backwards compatibility
+                final WordBreakSpellChecker spellChecker = new WordBreakSpellChecker();
+                spellChecker.setMaxChanges(MAX_CHANGES);
+                spellChecker.setMinSuggestionFrequency(minSuggestionFreq);
+                spellChecker.setMaxCombineWordLength(maxCombineLength);
+                spellChecker.setMinBreakWordLength(minBreakLength);
+                spellChecker.setMaxEvaluations(100);
+                compounder = new SpellCheckerCompounder(spellChecker, dictionaryField, lowerCaseInput);
+            } else {
+                compounder = new MorphologicalCompounder(compoundMorphology.get(), dictionaryField, lowerCaseInput, minSuggestionFreq);
+            }
+
+            if (!decompoundMorphology.isPresent()) {
+                wordBreaker = new MorphologicalWordBreaker(MorphologyProvider.DEFAULT, dictionaryField, lowerCaseInput, minSuggestionFreq,
+                        minBreakLength, MAX_EVALUATIONS);
+            } else {
+                wordBreaker = new MorphologicalWordBreaker(decompoundMorphology.get(), dictionaryField, lowerCaseInput, minSuggestionFreq,
+                        minBreakLength, MAX_EVALUATIONS);
+            }
+        }
+
+        if (suggestionCacheSize < 0) {
+            throw new IllegalArgumentException("suggestionCacheSize >= 0 required. Actual value: "
+                    + suggestionCacheSize);
         }
 
-        if (!decompoundMorphology.isPresent()) {
-            wordBreaker = new MorphologicalWordBreaker(MorphologyProvider.DEFAULT, dictionaryField, lowerCaseInput, minSuggestionFreq,
-                    minBreakLength, MAX_EVALUATIONS);
+        if (suggestionCacheSize > 0) {
+            decompoundCache = new ReaderScopedCache<>(suggestionCacheSize);
+            compoundCache = new ReaderScopedCache<>(suggestionCacheSize);
+            rewriterWordBreaker = new CachingWordBreaker(wordBreaker, lowerCaseInput, decompoundCache);
+            rewriterCompounder = new CachingCompounder(compounder, lowerCaseInput, compoundCache);
         } else {
-            wordBreaker = new MorphologicalWordBreaker(decompoundMorphology.get(), dictionaryField, lowerCaseInput, minSuggestionFreq,
-                    minBreakLength, MAX_EVALUATIONS);
+            decompoundCache = null;
+            compoundCache = null;
+            rewriterWordBreaker = wordBreaker;
+            rewriterCompounder = compounder;
         }
     }
 
     @Override
     public QueryRewriter createRewriter(final ExpandedQuery input,
                                         final SearchEngineRequestAdapter searchEngineRequestAdapter) {
-        return new WordBreakCompoundRewriter(wordBreaker, compounder, indexReaderSupplier.get(),
+        return new WordBreakCompoundRewriter(rewriterWordBreaker, rewriterCompounder, indexReaderSupplier.get(),
                 lowerCaseInput, alwaysAddReverseCompounds, reverseCompoundTriggerWords, maxDecompoundExpansions,
                 verifyDecompundCollation, protectedWords);
     }
@@ -122,6 +237,20 @@ public class WordBreakCompoundRewriterFactory extends RewriterFactory {
         return QueryRewriter.EMPTY_GENERABLE_TERMS;
     }
 
+    /**
+     * @return The number of decompound and compound lookups that were served from the suggestion cache
+     */
+    public long getSuggestionCacheHits() {
+        return decompoundCache == null ? 0L : decompoundCache.getHits() + compoundCache.getHits();
+    }
+
+    /**
+     * @return The number of decompound and compound lookups that were not found in the suggestion cache
+     */
+    public long getSuggestionCacheMisses() {
+        return decompoundCache == null ? 0L : decompoundCache.getMisses() + compoundCache.getMisses();
+    }
+
     TrieMap<Boolean> getReverseCompoundTriggerWords() {
         return reverseCompoundTriggerWords;
     }
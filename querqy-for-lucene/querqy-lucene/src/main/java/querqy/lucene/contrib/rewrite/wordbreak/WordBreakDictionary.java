@@ -0,0 +1,214 @@
+package querqy.lucene.contrib.rewrite.wordbreak;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiTerms;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.store.InputStreamDataInput;
+import org.apache.lucene.store.OutputStreamDataOutput;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IntsRefBuilder;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.FSTCompiler;
+import org.apache.lucene.util.fst.PositiveIntOutputs;
+import org.apache.lucene.util.fst.Util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>A precomputed dictionary of words and their frequencies that can be used instead of the index to validate
+ * compounding and decompounding candidates (see {@link DictionaryWordBreaker} and {@link DictionaryCompounder}).</p>
+ *
+ * <p>The dictionary is built once, either by walking the terms of the dictionary field in the index or from a word
+ * list, and only keeps words that occur at least 'minFrequency' times. The words are stored in an {@link FST} that
+ * maps each word to its frequency. Looking up a candidate in the FST is a lot cheaper than looking it up in each
+ * segment of the index and it doesn't depend on the current IndexReader.</p>
+ */
+public class WordBreakDictionary {
+
+    private static final int VERSION = 1;
+
+    private static final PositiveIntOutputs OUTPUTS = PositiveIntOutputs.getSingleton();
+
+    private final FST<Long> fst; // null if the dictionary is empty
+    private final long numDocs;
+    private final int size;
+
+    WordBreakDictionary(final FST<Long> fst, final long numDocs, final int size) {
+        this.fst = fst;
+        this.numDocs = numDocs;
+        this.size = size;
+    }
+
+    /**
+     * Build the dictionary from the terms of an index field. The frequency of a word is its document frequency.
+     *
+     * @param indexReader The index reader
+     * @param field The dictionary field
+     * @param minFrequency The minimum document frequency of a term to be included into the dictionary
+     * @return The dictionary
+     * @throws IOException if the terms cannot be read from the index
+     */
+    public static WordBreakDictionary fromIndex(final IndexReader indexReader, final String field,
+                                                final int minFrequency) throws IOException {
+
+        final Builder builder = new Builder(indexReader.numDocs());
+
+        final Terms terms = MultiTerms.getTerms(indexReader, field);
+        if (terms != null) {
+            final TermsEnum termsEnum = terms.iterator();
+            BytesRef term;
+            while ((term = termsEnum.next()) != null) {
+                final int docFreq = termsEnum.docFreq();
+                if (docFreq >= minFrequency) {
+                    builder.add(term, docFreq);
+                }
+            }
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Build the dictionary from a word list. The sum of all frequencies is used as the number of documents when
+     * scoring decompounding candidates.
+     *
+     * @param words The words and their frequencies
+     * @param minFrequency The minimum frequency of a word to be included into the dictionary
+     * @return The dictionary
+     */
+    public static WordBreakDictionary fromWords(final Map<String, Integer> words, final int minFrequency) {
+
+        // the FST must be built in the byte order of the words
+        final TreeMap<BytesRef, Integer> sorted = new TreeMap<>();
+        long numDocs = 0L;
+        for (final Map.Entry<String, Integer> entry : words.entrySet()) {
+            final int frequency = entry.getValue();
+            if (frequency >= minFrequency) {
+                sorted.merge(new BytesRef(entry.getKey()), frequency, Integer::sum);
+                numDocs += frequency;
+            }
+        }
+
+        final Builder builder = new Builder(numDocs);
+        try {
+            for (final Map.Entry<BytesRef, Integer> entry : sorted.entrySet()) {
+                builder.add(entry.getKey(), entry.getValue());
+            }
+            return builder.build();
+        } catch (final IOException e) {
+            // we are only writing to heap memory
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Read a dictionary that was written using {@link #writeTo(OutputStream)}.
+     *
+     * @param inputStream The input
+     * @return The dictionary
+     * @throws IOException if the dictionary cannot be read
+     */
+    public static WordBreakDictionary readFrom(final InputStream inputStream) throws IOException {
+        final DataInput in = new InputStreamDataInput(inputStream);
+        final int version = in.readVInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported dictionary version: " + version);
+        }
+        final long numDocs = in.readVLong();
+        final int size = in.readVInt();
+        return new WordBreakDictionary(size == 0 ? null : new FST<>(FST.readMetadata(in, OUTPUTS), in), numDocs,
+                size);
+    }
+
+    /**
+     * Write the dictionary so that it can be loaded later without having to build it again.
+     *
+     * @param outputStream The output
+     * @throws IOException if the dictionary cannot be written
+     */
+    public void writeTo(final OutputStream outputStream) throws IOException {
+        final DataOutput out = new OutputStreamDataOutput(outputStream);
+        out.writeVInt(VERSION);
+        out.writeVLong(numDocs);
+        out.writeVInt(size);
+        if (size > 0) {
+            fst.save(out, out);
+        }
+    }
+
+    /**
+     * @param word The word
+     * @return The frequency of the word or 0 if the word is not in the dictionary
+     */
+    public int getFrequency(final CharSequence word) {
+        return getFrequency(new BytesRef(word));
+    }
+
+    /**
+     * @param word The word as UTF-8 bytes
+     * @return The frequency of the word or 0 if the word is not in the dictionary
+     */
+    public int getFrequency(final BytesRef word) {
+        if (size == 0) {
+            return 0;
+        }
+        try {
+            final Long frequency = Util.get(fst, word);
+            return frequency == null ? 0 : frequency.intValue();
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return The number of documents (or, for word lists, the sum of all frequencies)
+     */
+    public long getNumDocs() {
+        return numDocs;
+    }
+
+    /**
+     * @return The number of words in the dictionary
+     */
+    public int size() {
+        return size;
+    }
+
+    public long ramBytesUsed() {
+        return size == 0 ? 0L : fst.ramBytesUsed();
+    }
+
+    private static class Builder {
+
+        final FSTCompiler<Long> fstCompiler = new FSTCompiler.Builder<>(FST.INPUT_TYPE.BYTE1, OUTPUTS).build();
+        final IntsRefBuilder scratch = new IntsRefBuilder();
+        final long numDocs;
+        int size = 0;
+
+        Builder(final long numDocs) {
+            this.numDocs = numDocs;
+        }
+
+        void add(final BytesRef word, final int frequency) throws IOException {
+            // 0 is the FST's 'no output' value
+            if (frequency > 0) {
+                fstCompiler.add(Util.toIntsRef(word, scratch), (long) frequency);
+                size++;
+            }
+        }
+
+        WordBreakDictionary build() throws IOException {
+            // the FST would be empty if no word was added
+            return new WordBreakDictionary(size == 0 ? null
+                    : FST.fromFSTReader(fstCompiler.compile(), fstCompiler.getFSTReader()), numDocs, size);
+        }
+    }
+}
@@ -92,7 +92,7 @@ public class DependentTermQueryBuilder implements TermQueryBuilder {
         public Weight createWeight(final IndexSearcher searcher, final ScoreMode scoreMode, final float boost) throws IOException {
 
             final DocumentFrequencyCorrection.DocumentFrequencyAndTermContext dftc
-                    = dftcp.getDocumentFrequencyAndTermContext(tqIndex, searcher.getTopReaderContext());
+                    = dftcp.getDocumentFrequencyAndTermContext(tqIndex, searcher);
 
             if (dftc.df < 1) {
                 return new NeverMatchWeight();
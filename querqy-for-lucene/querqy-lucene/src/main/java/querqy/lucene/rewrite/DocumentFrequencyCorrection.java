@@ -2,7 +2,10 @@ package querqy.lucene.rewrite;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import org.apache.lucene.index.IndexReaderContext;
 import org.apache.lucene.index.LeafReaderContext;
@@ -12,17 +15,39 @@ import org.apache.lucene.index.TermStates;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TaskExecutor;
+import querqy.lucene.rewrite.cache.DocumentFrequencyCache;
 
 /**
  * Created by rene on 10/09/2016.
  */
 public class DocumentFrequencyCorrection {
 
+    /**
+     * Controls how the statistics of the prepared terms are looked up in the index.
+     */
+    public enum TermLookup {
+
+        /**
+         * Look up each term in each segment using a fresh {@link TermsEnum} per term and segment.
+         */
+        PER_TERM,
+
+        /**
+         * Sort the terms by field and term bytes and visit each segment once, seeking a single {@link TermsEnum} per
+         * field forward through the sorted terms. Segments are processed in parallel on the executor of the
+         * {@link IndexSearcher}, if it has one.
+         */
+        SEGMENT_PARALLEL
+    }
+
     final List<Term> terms = new ArrayList<>(16);
     enum Status {
         USER_QUERY, OTHER_QUERY
     }
 
+    protected final TermLookup termLookup;
+    protected final DocumentFrequencyCache documentFrequencyCache;
     protected final List<Integer> clauseOffsets = new ArrayList<>();
     private TermStats termStats = null;
     protected int endUserQuery = -1;
@@ -32,36 +57,79 @@ public class DocumentFrequencyCorrection {
     protected long maxTotalTermFreqInUserQuery = -1;
     int termIndex = -1;
 
+    public DocumentFrequencyCorrection() {
+        this(TermLookup.PER_TERM);
+    }
+
+    public DocumentFrequencyCorrection(final TermLookup termLookup) {
+        this(termLookup, null);
+    }
+
+    /**
+     * @param termLookup The strategy for looking up the terms in the index
+     * @param documentFrequencyCache An optional cache of term statistics that is consulted before looking up the terms
+     *                               in the index. Can be null.
+     */
+    public DocumentFrequencyCorrection(final TermLookup termLookup,
+                                       final DocumentFrequencyCache documentFrequencyCache) {
+        if (termLookup == null) {
+            throw new IllegalArgumentException("TermLookup must not be null");
+        }
+        this.termLookup = termLookup;
+        this.documentFrequencyCache = documentFrequencyCache;
+    }
+
+    public TermLookup getTermLookup() {
+        return termLookup;
+    }
 
     protected TermStats doCalculateTermContexts(final IndexReaderContext indexReaderContext) throws IOException {
+        return doCalculateTermContexts(indexReaderContext, null);
+    }
+
+    protected TermStats doCalculateTermContexts(final IndexReaderContext indexReaderContext,
+                                                final TaskExecutor taskExecutor) throws IOException {
 
         final int[] dfs = new int[terms.size()];
         final long[] totalTermFrequencies = new long[dfs.length];
         final TermStates[] states = new TermStates[dfs.length];
+        final DocumentFrequencyCache.Entry[] entries = new DocumentFrequencyCache.Entry[dfs.length];
 
+        int[] termIndexesToLookup = new int[dfs.length];
+        int numTermsToLookup = 0;
         for (int i = 0; i < dfs.length; i++) {
+            entries[i] = documentFrequencyCache == null
+                    ? null : documentFrequencyCache.get(indexReaderContext, terms.get(i));
+            if (entries[i] == null) {
+                termIndexesToLookup[numTermsToLookup++] = i;
+            }
+        }
 
-            final Term term = terms.get(i);
+        if (numTermsToLookup > 0) {
 
-            states[i] = new TermStates(indexReaderContext);
+            termIndexesToLookup = Arrays.copyOf(termIndexesToLookup, numTermsToLookup);
 
-            for (final LeafReaderContext ctx : indexReaderContext.leaves()) {
-
-                final Terms terms = ctx.reader().terms(term.field());
-                if (terms != null) {
-                    final TermsEnum termsEnum = terms.iterator();
-                    if (termsEnum.seekExact(term.bytes())) {
-                        final TermState termState = termsEnum.termState();
-                        dfs[i] = dfs[i] + termsEnum.docFreq();
-                        totalTermFrequencies[i] = totalTermFrequencies[i] + termsEnum.totalTermFreq();
-                        // we'll update df and ttf later, just register the ord
-                        states[i].register(termState, ctx.ord, 0, 0L);
-                    }
-                }
+            if (termLookup == TermLookup.SEGMENT_PARALLEL) {
+                lookupTermsPerSegment(indexReaderContext, taskExecutor, termIndexesToLookup, entries);
+            } else {
+                lookupTermsPerTerm(indexReaderContext, termIndexesToLookup, entries);
+            }
 
+            if (documentFrequencyCache != null) {
+                for (final int i : termIndexesToLookup) {
+                    documentFrequencyCache.put(indexReaderContext, terms.get(i), entries[i]);
+                }
             }
         }
 
+        for (int i = 0; i < dfs.length; i++) {
+            dfs[i] = entries[i].getDocFreq();
+            totalTermFrequencies[i] = entries[i].getTotalTermFreq();
+            states[i] = new TermStates(indexReaderContext);
+            // we'll update df and ttf later, just register the ords
+            entries[i].register(indexReaderContext, states[i]);
+        }
+
         for (int i = 0, last = clauseOffsets.size() - 1; i <= last; i++) {
             final int start = clauseOffsets.get(i);
             final int end = (i == last) ? terms.size() : clauseOffsets.get(i + 1);
@@ -102,6 +170,92 @@ public class DocumentFrequencyCorrection {
 
     }
 
+    protected void lookupTermsPerTerm(final IndexReaderContext indexReaderContext, final int[] termIndexes,
+                                      final DocumentFrequencyCache.Entry[] entries) throws IOException {
+
+        for (final int i : termIndexes) {
+            entries[i] = DocumentFrequencyCache.lookup(indexReaderContext, terms.get(i));
+        }
+    }
+
+    protected void lookupTermsPerSegment(final IndexReaderContext indexReaderContext, final TaskExecutor taskExecutor,
+                                         final int[] termIndexes, final DocumentFrequencyCache.Entry[] entries)
+            throws IOException {
+
+        final List<LeafReaderContext> leaves = indexReaderContext.leaves();
+
+        // sort by field and term bytes so that we can seek forward through a single TermsEnum per field
+        final Integer[] order = new Integer[termIndexes.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = termIndexes[i];
+        }
+        Arrays.sort(order, (i1, i2) -> terms.get(i1).compareTo(terms.get(i2)));
+
+        final List<Callable<SegmentTermStats>> tasks = new ArrayList<>(leaves.size());
+        for (final LeafReaderContext ctx : leaves) {
+            tasks.add(() -> lookupTermsInSegment(ctx, order));
+        }
+
+        final List<SegmentTermStats> segmentTermStats = tasks.isEmpty()
+                ? Collections.emptyList()
+                : (taskExecutor != null ? taskExecutor : new TaskExecutor(Runnable::run)).invokeAll(tasks);
+
+        // merge in leaf order
+        for (final int i : termIndexes) {
+            final TermState[] termStates = new TermState[leaves.size()];
+            int df = 0;
+            long totalTermFreq = 0L;
+            for (int leaf = 0; leaf < termStates.length; leaf++) {
+                final SegmentTermStats stats = segmentTermStats.get(leaf);
+                if (stats.termStates[i] != null) {
+                    termStates[leaf] = stats.termStates[i];
+                    df += stats.documentFrequencies[i];
+                    totalTermFreq += stats.totalTermFrequencies[i];
+                }
+            }
+            entries[i] = new DocumentFrequencyCache.Entry(df, totalTermFreq, termStates);
+        }
+    }
+
+    protected SegmentTermStats lookupTermsInSegment(final LeafReaderContext ctx, final Integer[] order)
+            throws IOException {
+
+        final SegmentTermStats stats = new SegmentTermStats(terms.size());
+
+        String field = null;
+        TermsEnum termsEnum = null;
+        int previous = -1;
+
+        for (final int i : order) {
+
+            final Term term = terms.get(i);
+
+            if (previous > -1 && term.equals(terms.get(previous))) {
+                // the same term can occur more than once, for example, in the user query and in a boost query
+                stats.termStates[i] = stats.termStates[previous];
+                stats.documentFrequencies[i] = stats.documentFrequencies[previous];
+                stats.totalTermFrequencies[i] = stats.totalTermFrequencies[previous];
+                continue;
+            }
+
+            previous = i;
+
+            if (!term.field().equals(field)) {
+                field = term.field();
+                final Terms terms = ctx.reader().terms(field);
+                termsEnum = terms == null ? null : terms.iterator();
+            }
+
+            if (termsEnum != null && termsEnum.seekExact(term.bytes())) {
+                stats.termStates[i] = termsEnum.termState();
+                stats.documentFrequencies[i] = termsEnum.docFreq();
+                stats.totalTermFrequencies[i] = termsEnum.totalTermFreq();
+            }
+        }
+
+        return stats;
+    }
+
 
     public void prepareTerm(Term term) {
         terms.add(term);
@@ -130,6 +284,24 @@ public class DocumentFrequencyCorrection {
         return new DocumentFrequencyAndTermContext(ts.documentFrequencies[tqIndex], ts.termStates[tqIndex]);
     }
 
+    /**
+     * Same as {@link #getDocumentFrequencyAndTermContext(int, IndexReaderContext)} but allows to use the executor of
+     * the searcher for looking up the terms if {@link TermLookup#SEGMENT_PARALLEL} is used.
+     */
+    public DocumentFrequencyAndTermContext getDocumentFrequencyAndTermContext(final int tqIndex,
+                                                                              final IndexSearcher searcher)
+            throws IOException {
+
+        final IndexReaderContext indexReaderContext = searcher.getTopReaderContext();
+
+        TermStats ts = termStats;
+        if (ts == null || ts.topReaderContext != indexReaderContext) {
+            ts = calculateTermContexts(indexReaderContext, searcher.getTaskExecutor());
+        }
+
+        return new DocumentFrequencyAndTermContext(ts.documentFrequencies[tqIndex], ts.termStates[tqIndex]);
+    }
+
     protected TermStats calculateTermContexts(final IndexReaderContext indexReaderContext)
             throws IOException {
 
@@ -137,6 +309,13 @@ public class DocumentFrequencyCorrection {
 
     }
 
+    protected TermStats calculateTermContexts(final IndexReaderContext indexReaderContext,
+                                              final TaskExecutor taskExecutor) throws IOException {
+
+        return setTermStats(doCalculateTermContexts(indexReaderContext, taskExecutor));
+
+    }
+
     private synchronized TermStats setTermStats(final TermStats ts) {
         this.termStats = ts;
         return this.termStats;
@@ -214,6 +393,18 @@ public class DocumentFrequencyCorrection {
 
     }
 
+    protected static class SegmentTermStats {
+        final TermState[] termStates;
+        final int[] documentFrequencies;
+        final long[] totalTermFrequencies;
+
+        SegmentTermStats(final int numTerms) {
+            termStates = new TermState[numTerms];
+            documentFrequencies = new int[numTerms];
+            totalTermFrequencies = new long[numTerms];
+        }
+    }
+
     public static class TermStats {
         final int[] documentFrequencies;
         final TermStates[] termStates;
@@ -15,12 +15,26 @@ import org.apache.lucene.search.ScoreMode;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.Weight;
+import querqy.lucene.rewrite.cache.DocumentFrequencyCache;
 
 import java.io.IOException;
 import java.util.Optional;
 
 public class FieldBoostTermQueryBuilder implements TermQueryBuilder {
 
+    private final DocumentFrequencyCache documentFrequencyCache;
+
+    public FieldBoostTermQueryBuilder() {
+        this(null);
+    }
+
+    /**
+     * @param documentFrequencyCache An optional cache of term statistics to be consulted before looking up the terms
+     *                               in the index. Can be null.
+     */
+    public FieldBoostTermQueryBuilder(final DocumentFrequencyCache documentFrequencyCache) {
+        this.documentFrequencyCache = documentFrequencyCache;
+    }
 
     @Override
     public Optional<DocumentFrequencyCorrection> getDocumentFrequencyCorrection() {
@@ -29,7 +43,7 @@ public class FieldBoostTermQueryBuilder implements TermQueryBuilder {
 
     @Override
     public FieldBoostTermQuery createTermQuery(final Term term, final FieldBoost boost) {
-        return new FieldBoostTermQuery(term, boost);
+        return new FieldBoostTermQuery(term, boost, documentFrequencyCache);
     }
 
     /**
@@ -42,11 +56,19 @@ public class FieldBoostTermQueryBuilder implements TermQueryBuilder {
 
         protected final Term term;
         protected final FieldBoost fieldBoost;
+        protected final DocumentFrequencyCache documentFrequencyCache;
 
         public FieldBoostTermQuery(final Term term, final FieldBoost fieldBoost) {
+            this(term, fieldBoost, null);
+        }
+
+        public FieldBoostTermQuery(final Term term, final FieldBoost fieldBoost,
+                                   final DocumentFrequencyCache documentFrequencyCache) {
 
             super(term);
 
+            this.documentFrequencyCache = documentFrequencyCache;
+
             this.term = term;
 
             if (fieldBoost == null) {
@@ -60,7 +82,10 @@ public class FieldBoostTermQueryBuilder implements TermQueryBuilder {
         public Weight createWeight(final IndexSearcher searcher, final ScoreMode scoreMode, final float boost)
                 throws IOException {
 
-            final TermStates termState = TermStates.build(searcher, term, scoreMode.needsScores());
+            final TermStates termState = documentFrequencyCache == null
+                    ? TermStates.build(searcher, term, scoreMode.needsScores())
+                    : documentFrequencyCache.buildTermStates(searcher.getTopReaderContext(), term,
+                            scoreMode.needsScores());
             // TODO: set boosts to 1f if needsScores is false?
             return new FieldBoostWeight(termState, boost, fieldBoost.getBoost(term.field(), searcher.getIndexReader()));
         }
@@ -0,0 +1,408 @@
+package querqy.lucene.rewrite.cache;
+
+import java.lang.ref.WeakReference;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongBiFunction;
+
+/**
+ * <p>A bounded {@link TermQueryCache} that does not depend on a search engine's cache implementation.</p>
+ *
+ * <p>The cache is split into stripes. Each stripe holds its entries in a {@link ConcurrentHashMap} and evicts entries
+ * using the CLOCK algorithm over a ring of slots: a lookup only marks the entry as referenced, an insert advances the
+ * clock hand, clearing the reference marks until it finds an entry that has not been referenced since the hand last
+ * passed it. All operations are based on atomic compare-and-set, no locks are taken.</p>
+ *
+ * <p>In addition to the number of entries, the cache can be bounded by a total weight, which is calculated for each
+ * entry using a weigher function.</p>
+ *
+ * <p>Entries belong to a generation. Cached values can depend on the index (for example, when a term does not have
+ * any hits) and a new generation should be started once when the index searcher changes, using
+ * {@link #nextGeneration(Object)} with the new searcher as the owner. Requests should then use the view returned by
+ * {@link #forOwner(Object)} for their searcher: the view is bound to the generation of the searcher, it doesn't
+ * return anything for a searcher that doesn't own the current generation, and it drops values that are put after the
+ * generation has changed, as they might have been computed against another searcher. Entries from a previous
+ * generation are never returned and they are the first to be evicted.</p>
+ */
+public class ConcurrentTermQueryCache implements TermQueryCache {
+
+    public static final ToLongBiFunction<CacheKey, TermQueryCacheValue> UNIT_WEIGHER = (key, value) -> 1L;
+
+    /**
+     * The number of slots that an insert may inspect before it gives up (in multiples of the stripe capacity). Each
+     * slot can be passed twice before its entry becomes evictable, so that this only happens under heavy contention.
+     */
+    private static final int MAX_CLOCK_ROUNDS = 3;
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private final int maxSize;
+    private final long maxWeight;
+    private final ToLongBiFunction<CacheKey, TermQueryCacheValue> weigher;
+    private final AtomicReference<Generation> generation = new AtomicReference<>(new Generation(0L, null));
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Create a cache that is bounded by the number of entries only.
+     *
+     * @param maxSize The maximum number of entries
+     */
+    public ConcurrentTermQueryCache(final int maxSize) {
+        this(maxSize, Long.MAX_VALUE, UNIT_WEIGHER, defaultNumberOfStripes());
+    }
+
+    /**
+     * @param maxSize The maximum number of entries
+     * @param maxWeight The maximum total weight of the entries
+     * @param weigher A function that returns the weight of a cache entry. The weight must not be negative.
+     * @param numberOfStripes The number of independent cache segments. It will be rounded up to the next power of 2.
+     */
+    public ConcurrentTermQueryCache(final int maxSize, final long maxWeight,
+                                    final ToLongBiFunction<CacheKey, TermQueryCacheValue> weigher,
+                                    final int numberOfStripes) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be > 0");
+        }
+        if (maxWeight < 1L) {
+            throw new IllegalArgumentException("maxWeight must be > 0");
+        }
+        if (numberOfStripes < 1) {
+            throw new IllegalArgumentException("numberOfStripes must be > 0");
+        }
+
+        this.maxSize = maxSize;
+        this.maxWeight = maxWeight;
+        this.weigher = Objects.requireNonNull(weigher, "weigher must not be null");
+
+        // round up to a power of 2 but don't create more stripes than entries
+        int numStripes = 1;
+        while (numStripes < numberOfStripes && (numStripes << 1) <= maxSize) {
+            numStripes <<= 1;
+        }
+        stripeMask = numStripes - 1;
+        stripes = new Stripe[numStripes];
+
+        final int capacity = (maxSize + numStripes - 1) / numStripes;
+        final long stripeMaxWeight = maxWeight == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(1L, maxWeight / numStripes);
+        for (int i = 0; i < numStripes; i++) {
+            stripes[i] = new Stripe(capacity, stripeMaxWeight);
+        }
+    }
+
+    @Override
+    public TermQueryCacheValue get(final CacheKey key) {
+        return get(key, generation.get().id);
+    }
+
+    @Override
+    public void put(final CacheKey key, final TermQueryCacheValue value) {
+        put(key, value, generation.get().id);
+    }
+
+    private TermQueryCacheValue get(final CacheKey key, final long expectedGeneration) {
+
+        final Node node = stripeFor(key).map.get(key);
+        if (node == null || node.generation != expectedGeneration) {
+            misses.increment();
+            return null;
+        }
+
+        if (!node.referenced) {
+            node.referenced = true;
+        }
+        hits.increment();
+        return node.value;
+
+    }
+
+    private void put(final CacheKey key, final TermQueryCacheValue value, final long expectedGeneration) {
+
+        final long currentGeneration = generation.get().id;
+        if (currentGeneration != expectedGeneration) {
+            // the value might depend on the index of a previous generation
+            return;
+        }
+        final Node node = new Node(key, value, currentGeneration, weigher.applyAsLong(key, value));
+        if (node.weight < 0L) {
+            throw new IllegalArgumentException("Weight must not be negative: " + node.weight);
+        }
+
+        stripeFor(key).put(node, currentGeneration);
+
+    }
+
+    /**
+     * Start a new generation. All existing entries become invisible to {@link #get(CacheKey)}.
+     */
+    public void nextGeneration() {
+        Generation current;
+        do {
+            current = generation.get();
+        } while (!generation.compareAndSet(current, new Generation(current.id + 1L, null)));
+    }
+
+    /**
+     * Start a new generation that is owned by the given owner, typically a new index searcher. All existing entries
+     * become invisible. The owner is compared by identity and it is only weakly referenced by the cache.
+     *
+     * @param owner The owner of the generation
+     */
+    public void nextGeneration(final Object owner) {
+        Generation current;
+        do {
+            current = generation.get();
+        } while (!generation.compareAndSet(current, new Generation(current.id + 1L, owner)));
+    }
+
+    /**
+     * Set the owner of the current generation unless a generation has been owned before. This can be used to adopt
+     * the searcher that was opened before the cache started to observe new searchers.
+     *
+     * @param owner The owner of the generation
+     */
+    public void initGeneration(final Object owner) {
+        final Generation current = generation.get();
+        if (!current.hasBeenOwned) {
+            generation.compareAndSet(current, new Generation(current.id + 1L, owner));
+        }
+    }
+
+    /**
+     * Get a view of this cache for the given owner. The view is bound to the current generation: it only returns the
+     * entries of this generation and it drops the values that are put after the generation has changed.
+     *
+     * @param owner The owner, typically the searcher of the request
+     * @return The view or null if the owner doesn't own the current generation
+     */
+    public TermQueryCache forOwner(final Object owner) {
+        final Generation current = generation.get();
+        return current.getOwner() == owner ? new GenerationView(current.id) : null;
+    }
+
+    public long getGeneration() {
+        return generation.get().id;
+    }
+
+    /**
+     * @return The number of entries in the cache, including entries of previous generations that have not been
+     * evicted yet
+     */
+    public int size() {
+        int size = 0;
+        for (final Stripe stripe : stripes) {
+            size += stripe.map.size();
+        }
+        return size;
+    }
+
+    public long getWeight() {
+        long weight = 0L;
+        for (final Stripe stripe : stripes) {
+            weight += stripe.weight.get();
+        }
+        return weight;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public void clear() {
+        for (final Stripe stripe : stripes) {
+            stripe.clear();
+        }
+    }
+
+    private Stripe stripeFor(final CacheKey key) {
+        final int h = key.hashCode();
+        return stripes[(h ^ (h >>> 16)) & stripeMask];
+    }
+
+    private static int defaultNumberOfStripes() {
+        return Runtime.getRuntime().availableProcessors() * 4;
+    }
+
+    private final class Stripe {
+
+        final ConcurrentHashMap<CacheKey, Node> map;
+        final AtomicReferenceArray<Node> ring;
+        final AtomicInteger hand = new AtomicInteger();
+        final AtomicLong weight = new AtomicLong();
+        final long maxWeight;
+
+        Stripe(final int capacity, final long maxWeight) {
+            map = new ConcurrentHashMap<>(Math.min(capacity, 1024));
+            ring = new AtomicReferenceArray<>(capacity);
+            this.maxWeight = maxWeight;
+        }
+
+        void put(final Node node, final long currentGeneration) {
+
+            if (node.weight > maxWeight) {
+                return;
+            }
+
+            final Node existing = map.putIfAbsent(node.key, node);
+            if (existing != null) {
+                if (existing.generation == currentGeneration || !map.replace(node.key, existing, node)) {
+                    // the current value has been added already (or concurrently)
+                    return;
+                }
+                // the stale node keeps its slot until the clock hand passes it
+                existing.removed = true;
+                weight.addAndGet(-existing.weight);
+            }
+
+            if (!claimSlot(node, currentGeneration)) {
+                map.remove(node.key, node);
+                return;
+            }
+
+            if (weight.addAndGet(node.weight) > maxWeight) {
+                evictByWeight(node, currentGeneration);
+            }
+
+        }
+
+        private boolean claimSlot(final Node node, final long currentGeneration) {
+
+            final int capacity = ring.length();
+            for (int i = 0, max = capacity * MAX_CLOCK_ROUNDS; i < max; i++) {
+                final int idx = Math.floorMod(hand.getAndIncrement(), capacity);
+                final Node current = ring.get(idx);
+                if (current == null || isEvictable(current, currentGeneration)) {
+                    if (ring.compareAndSet(idx, current, node)) {
+                        if (current != null) {
+                            evict(current);
+                        }
+                        return true;
+                    }
+                } else {
+                    current.referenced = false;
+                }
+            }
+            return false;
+
+        }
+
+        private void evictByWeight(final Node inserted, final long currentGeneration) {
+
+            final int capacity = ring.length();
+            for (int i = 0, max = capacity * MAX_CLOCK_ROUNDS; i < max && weight.get() > maxWeight; i++) {
+                final int idx = Math.floorMod(hand.getAndIncrement(), capacity);
+                final Node current = ring.get(idx);
+                if (current == null || current == inserted) {
+                    continue;
+                }
+                if (isEvictable(current, currentGeneration)) {
+                    if (ring.compareAndSet(idx, current, null)) {
+                        evict(current);
+                    }
+                } else {
+                    current.referenced = false;
+                }
+            }
+
+        }
+
+        private boolean isEvictable(final Node node, final long currentGeneration) {
+            return node.removed || node.generation != currentGeneration || !node.referenced;
+        }
+
+        private void evict(final Node node) {
+            if (map.remove(node.key, node)) {
+                weight.addAndGet(-node.weight);
+                evictions.increment();
+            }
+        }
+
+        void clear() {
+            for (int i = 0, len = ring.length(); i < len; i++) {
+                final Node node = ring.getAndSet(i, null);
+                if (node != null && map.remove(node.key, node)) {
+                    weight.addAndGet(-node.weight);
+                }
+            }
+        }
+
+    }
+
+    private static final class Node {
+
+        final CacheKey key;
+        final TermQueryCacheValue value;
+        final long generation;
+        final long weight;
+        volatile boolean referenced = false;
+        volatile boolean removed = false;
+
+        Node(final CacheKey key, final TermQueryCacheValue value, final long generation, final long weight) {
+            this.key = key;
+            this.value = value;
+            this.generation = generation;
+            this.weight = weight;
+        }
+    }
+
+    private final class GenerationView implements TermQueryCache {
+
+        final long generationId;
+
+        GenerationView(final long generationId) {
+            this.generationId = generationId;
+        }
+
+        @Override
+        public void put(final CacheKey key, final TermQueryCacheValue value) {
+            ConcurrentTermQueryCache.this.put(key, value, generationId);
+        }
+
+        @Override
+        public TermQueryCacheValue get(final CacheKey key) {
+            return ConcurrentTermQueryCache.this.get(key, generationId);
+        }
+    }
+
+    private static final class Generation {
+
+        final long id;
+        // don't keep a closed searcher alive
+        final WeakReference<Object> owner;
+        final boolean hasBeenOwned;
+
+        Generation(final long id, final Object owner) {
+            this.id = id;
+            this.owner = owner == null ? null : new WeakReference<>(owner);
+            this.hasBeenOwned = owner != null;
+        }
+
+        Object getOwner() {
+            return owner == null ? null : owner.get();
+        }
+    }
+
+}
@@ -0,0 +1,205 @@
+package querqy.lucene.rewrite.cache;
+
+import org.apache.lucene.index.IndexReaderContext;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermState;
+import org.apache.lucene.index.TermStates;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * <p>A cache of term statistics (document frequency, total term frequency and the per-segment {@link TermState}s)
+ * that can be shared across requests.</p>
+ *
+ * <p>Term statistics only change when the index reader changes. Entries are kept per top-level reader in a
+ * {@link ReaderScopedCache} so that they are dropped automatically when the reader is closed.</p>
+ *
+ * <p>Unlike the {@link TermQueryCache}, which only caches the queries for terms that were generated by rewriters,
+ * this cache holds the statistics of any term that is looked up for scoring. Once the maximum number of entries for
+ * a reader is reached, terms that have not been looked up recently are evicted.</p>
+ */
+public class DocumentFrequencyCache {
+
+    private final ReaderScopedCache<Term, Entry> cache;
+
+    /**
+     * @param maxEntriesPerReader The maximum number of terms to cache per top-level reader
+     */
+    public DocumentFrequencyCache(final int maxEntriesPerReader) {
+        cache = new ReaderScopedCache<>(maxEntriesPerReader);
+    }
+
+    /**
+     * Get the cached statistics of a term.
+     *
+     * @param topReaderContext The top-level reader context
+     * @param term The term
+     * @return The cached entry or null if the term is not in the cache
+     */
+    public Entry get(final IndexReaderContext topReaderContext, final Term term) {
+
+        return cache.get(topReaderContext.reader(), term);
+
+    }
+
+    /**
+     * Put the statistics of a term into the cache.
+     *
+     * @param topReaderContext The top-level reader context
+     * @param term The term
+     * @param entry The term statistics
+     */
+    public void put(final IndexReaderContext topReaderContext, final Term term, final Entry entry) {
+
+        cache.put(topReaderContext.reader(), new Term(term.field(), BytesRef.deepCopyOf(term.bytes())), entry);
+
+    }
+
+    /**
+     * Get the statistics of a term from the cache, looking them up in the index and caching them if they are not
+     * yet cached.
+     *
+     * @param topReaderContext The top-level reader context
+     * @param term The term
+     * @return The term statistics
+     * @throws IOException if the term cannot be looked up in the index
+     */
+    public Entry getOrLookup(final IndexReaderContext topReaderContext, final Term term) throws IOException {
+
+        Entry entry = get(topReaderContext, term);
+        if (entry == null) {
+            entry = lookup(topReaderContext, term);
+            put(topReaderContext, term, entry);
+        }
+        return entry;
+
+    }
+
+    /**
+     * Build {@link TermStates} for a term, using the cached statistics if available.
+     *
+     * @param topReaderContext The top-level reader context
+     * @param term The term
+     * @param needsStats Whether the statistics should be accumulated into the TermStates
+     * @return The TermStates
+     * @throws IOException if the term cannot be looked up in the index
+     */
+    public TermStates buildTermStates(final IndexReaderContext topReaderContext, final Term term,
+                                      final boolean needsStats) throws IOException {
+
+        final Entry entry = getOrLookup(topReaderContext, term);
+        final TermStates termStates = new TermStates(topReaderContext);
+        entry.register(topReaderContext, termStates);
+        if (needsStats && entry.docFreq > 0) {
+            termStates.accumulateStatistics(entry.docFreq, entry.totalTermFreq);
+        }
+        return termStates;
+
+    }
+
+    public long getHits() {
+        return cache.getHits();
+    }
+
+    public long getMisses() {
+        return cache.getMisses();
+    }
+
+    /**
+     * @return The number of readers for which terms are currently cached
+     */
+    public int getNumberOfReaders() {
+        return cache.getNumberOfReaders();
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * Look up the statistics of a term in the index, visiting each segment.
+     *
+     * @param topReaderContext The top-level reader context
+     * @param term The term
+     * @return The term statistics
+     * @throws IOException if the term cannot be looked up in the index
+     */
+    public static Entry lookup(final IndexReaderContext topReaderContext, final Term term) throws IOException {
+
+        final List<LeafReaderContext> leaves = topReaderContext.leaves();
+        final TermState[] termStates = new TermState[leaves.size()];
+        int docFreq = 0;
+        long totalTermFreq = 0L;
+
+        for (int i = 0; i < termStates.length; i++) {
+            final Terms terms = leaves.get(i).reader().terms(term.field());
+            if (terms != null) {
+                final TermsEnum termsEnum = terms.iterator();
+                if (termsEnum.seekExact(term.bytes())) {
+                    termStates[i] = termsEnum.termState();
+                    docFreq += termsEnum.docFreq();
+                    totalTermFreq += termsEnum.totalTermFreq();
+                }
+            }
+        }
+
+        return new Entry(docFreq, totalTermFreq, termStates);
+
+    }
+
+    /**
+     * The statistics of a term in a top-level reader. The {@link TermState}s are only read after they have been
+     * created, which makes it safe to share them across requests and threads.
+     */
+    public static class Entry {
+
+        final int docFreq;
+        final long totalTermFreq;
+        final TermState[] termStates;
+
+        /**
+         * @param docFreq The document frequency summed up across all segments
+         * @param totalTermFreq The total term frequency summed up across all segments
+         * @param termStates The term state per segment, in the order of the leaves of the top-level reader. An
+         *                   element is null if the term does not occur in the segment.
+         */
+        public Entry(final int docFreq, final long totalTermFreq, final TermState[] termStates) {
+            this.docFreq = docFreq;
+            this.totalTermFreq = totalTermFreq;
+            this.termStates = termStates;
+        }
+
+        public int getDocFreq() {
+            return docFreq;
+        }
+
+        public long getTotalTermFreq() {
+            return totalTermFreq;
+        }
+
+        public TermState getTermState(final int leaf) {
+            return termStates[leaf];
+        }
+
+        /**
+         * Register the per-segment term states with the given {@link TermStates}. Document frequency and total term
+         * frequency are not registered and have to be accumulated by the caller.
+         *
+         * @param topReaderContext The top-level reader context
+         * @param states The TermStates
+         */
+        public void register(final IndexReaderContext topReaderContext, final TermStates states) {
+            final List<LeafReaderContext> leaves = topReaderContext.leaves();
+            for (int i = 0; i < termStates.length; i++) {
+                if (termStates[i] != null) {
+                    states.register(termStates[i], leaves.get(i).ord, 0, 0L);
+                }
+            }
+        }
+    }
+}
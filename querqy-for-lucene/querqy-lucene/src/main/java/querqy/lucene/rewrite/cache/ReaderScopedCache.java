@@ -0,0 +1,193 @@
+package querqy.lucene.rewrite.cache;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.AlreadyClosedException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>A bounded, concurrent cache for values that only change when the index reader changes.</p>
+ *
+ * <p>The entries are scoped to the {@link IndexReader.CacheKey} of the reader that they were created for and they are
+ * dropped when that reader is closed. Readers that don't provide a {@link IndexReader.CacheHelper} are never cached.
+ * Once the maximum number of entries for a reader is reached, entries are evicted using the CLOCK algorithm, like in
+ * {@link ConcurrentTermQueryCache}: a lookup marks the entry as referenced and an insert replaces the first entry that
+ * has not been referenced since the clock hand last passed it. No locks are taken.</p>
+ *
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public class ReaderScopedCache<K, V> {
+
+    /**
+     * The number of slots that an insert may inspect before it gives up (in multiples of the maximum number of
+     * entries), see {@link ConcurrentTermQueryCache}.
+     */
+    private static final int MAX_CLOCK_ROUNDS = 3;
+
+    private final Map<IndexReader.CacheKey, ReaderCache> readerCaches = new ConcurrentHashMap<>();
+    private final int maxEntriesPerReader;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxEntriesPerReader The maximum number of entries per reader
+     */
+    public ReaderScopedCache(final int maxEntriesPerReader) {
+        if (maxEntriesPerReader < 1) {
+            throw new IllegalArgumentException("maxEntriesPerReader must be > 0");
+        }
+        this.maxEntriesPerReader = maxEntriesPerReader;
+    }
+
+    /**
+     * Get a cached value and count the lookup as a hit or miss.
+     *
+     * @param indexReader The reader. Can be null, in which case the lookup is a miss.
+     * @param key The key
+     * @return The value or null if there is no value for the key and reader
+     */
+    public V get(final IndexReader indexReader, final K key) {
+        final ReaderCache cache = getReaderCache(indexReader, false);
+        final Node<K, V> node = cache == null ? null : cache.map.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        if (!node.referenced) {
+            node.referenced = true;
+        }
+        hits.increment();
+        return node.value;
+    }
+
+    /**
+     * Put a value into the cache unless the reader can't be cached. If the maximum number of entries for the reader
+     * has been reached, an entry that has not been looked up recently is evicted. An existing value for the key is
+     * kept.
+     *
+     * @param indexReader The reader. Can be null, in which case nothing is cached.
+     * @param key The key
+     * @param value The value
+     */
+    public void put(final IndexReader indexReader, final K key, final V value) {
+        final ReaderCache cache = getReaderCache(indexReader, true);
+        if (cache != null) {
+            cache.put(new Node<>(key, value));
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return The number of readers for which values are currently cached
+     */
+    public int getNumberOfReaders() {
+        return readerCaches.size();
+    }
+
+    public void clear() {
+        readerCaches.clear();
+    }
+
+    private ReaderCache getReaderCache(final IndexReader indexReader, final boolean create) {
+
+        if (indexReader == null) {
+            return null;
+        }
+
+        final IndexReader.CacheHelper cacheHelper = indexReader.getReaderCacheHelper();
+        if (cacheHelper == null) {
+            return null;
+        }
+
+        final IndexReader.CacheKey key = cacheHelper.getKey();
+        final ReaderCache cache = readerCaches.get(key);
+        if (cache != null || !create) {
+            return cache;
+        }
+
+        final ReaderCache newCache = new ReaderCache(maxEntriesPerReader);
+        final ReaderCache existing = readerCaches.putIfAbsent(key, newCache);
+        if (existing != null) {
+            return existing;
+        }
+
+        try {
+            cacheHelper.addClosedListener(readerCaches::remove);
+        } catch (final AlreadyClosedException e) {
+            readerCaches.remove(key);
+            return null;
+        }
+
+        return newCache;
+
+    }
+
+    private final class ReaderCache {
+
+        final ConcurrentHashMap<K, Node<K, V>> map;
+        final AtomicReferenceArray<Node<K, V>> ring;
+        final AtomicInteger hand = new AtomicInteger();
+
+        ReaderCache(final int capacity) {
+            map = new ConcurrentHashMap<>(Math.min(capacity, 1024));
+            ring = new AtomicReferenceArray<>(capacity);
+        }
+
+        void put(final Node<K, V> node) {
+
+            if (map.putIfAbsent(node.key, node) != null) {
+                return;
+            }
+
+            final int capacity = ring.length();
+            for (int i = 0, max = capacity * MAX_CLOCK_ROUNDS; i < max; i++) {
+                final int idx = Math.floorMod(hand.getAndIncrement(), capacity);
+                final Node<K, V> current = ring.get(idx);
+                if (current == null || !current.referenced) {
+                    if (ring.compareAndSet(idx, current, node)) {
+                        if (current != null && map.remove(current.key, current)) {
+                            evictions.increment();
+                        }
+                        return;
+                    }
+                } else {
+                    current.referenced = false;
+                }
+            }
+
+            // only under heavy contention
+            map.remove(node.key, node);
+
+        }
+    }
+
+    private static final class Node<K, V> {
+
+        final K key;
+        final V value;
+        volatile boolean referenced = false;
+
+        Node(final K key, final V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package querqy.lucene.rewrite.infologging;
+
+import querqy.rewrite.SearchEngineRequestAdapter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>A {@link Sink} that hands the messages of a request to a background thread, which writes them in batches to an
+ * {@link InfoLoggingExporter}.</p>
+ *
+ * <p>The messages are collected in the request context and put into a {@link BoundedRingBuffer} at the end of the
+ * request. The request thread never blocks and never waits for the exporter: if the buffer is full, the messages of
+ * the request are dropped and counted. The background thread exports a batch once the buffer holds a full batch or
+ * after the flush interval, whichever comes first.</p>
+ */
+public class AsyncSink implements Sink, Closeable {
+
+    public static final int DEFAULT_CAPACITY = 8192;
+    public static final int DEFAULT_BATCH_SIZE = 256;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000L;
+
+    private static final AtomicLong INSTANCE_COUNTER = new AtomicLong();
+
+    // sinks must not see each other's messages in the request context
+    private final String contextKey = AsyncSink.class.getName() + ".MESSAGES." + INSTANCE_COUNTER.incrementAndGet();
+
+    private final InfoLoggingExporter exporter;
+    private final BoundedRingBuffer<InfoLoggingRecord> buffer;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final Thread writer;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicLong exported = new AtomicLong();
+    private final AtomicLong failedExports = new AtomicLong();
+    private volatile Exception lastExportFailure = null;
+    private volatile IOException exporterCloseFailure = null;
+
+    private volatile boolean closed = false;
+
+    public AsyncSink(final InfoLoggingExporter exporter) {
+        this(exporter, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL_MILLIS, "querqy-info-logging");
+    }
+
+    /**
+     * @param exporter The exporter
+     * @param capacity The number of requests that can be buffered. It will be rounded up to the next power of 2.
+     * @param batchSize The maximum number of requests per export
+     * @param flushIntervalMillis The maximum time for which requests are buffered if there is less than a batch
+     * @param threadName The name of the background thread
+     */
+    public AsyncSink(final InfoLoggingExporter exporter, final int capacity, final int batchSize,
+                     final long flushIntervalMillis, final String threadName) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be > 0");
+        }
+        if (flushIntervalMillis < 1L) {
+            throw new IllegalArgumentException("flushIntervalMillis must be > 0");
+        }
+        this.exporter = exporter;
+        this.buffer = new BoundedRingBuffer<>(capacity);
+        this.batchSize = Math.min(batchSize, buffer.getCapacity());
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+
+        writer = new Thread(this::runWriter, threadName);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void log(final Object message, final String rewriterId,
+                    final SearchEngineRequestAdapter searchEngineRequestAdapter) {
+
+        final List<Map<String, Object>> messages = (List<Map<String, Object>>) searchEngineRequestAdapter
+                .getContext().computeIfAbsent(contextKey, key -> new ArrayList<>());
+
+        if (message instanceof List && !((List) message).isEmpty()) {
+            messages.add(Map.of("rewriterId", rewriterId, "actions", message));
+        } else {
+            messages.add(Map.of("rewriterId", rewriterId));
+        }
+    }
+
+    @Override
+    public void endOfRequest(final SearchEngineRequestAdapter searchEngineRequestAdapter) {
+
+        @SuppressWarnings("unchecked")
+        final List<Map<String, Object>> messages = (List<Map<String, Object>>) searchEngineRequestAdapter
+                .getContext().get(contextKey);
+
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+
+        if (closed) {
+            dropped.increment();
+            return;
+        }
+
+        final InfoLoggingRecord record = new InfoLoggingRecord(System.currentTimeMillis(),
+                searchEngineRequestAdapter.getRequestParam("q").orElse(null), messages);
+
+        final long pos = buffer.offer(record);
+        if (pos < 0L) {
+            dropped.increment();
+        } else {
+            accepted.increment();
+            // wake up the writer once per full batch, it wakes up by itself after the flush interval otherwise
+            if ((pos + 1) % batchSize == 0L) {
+                LockSupport.unpark(writer);
+            }
+        }
+    }
+
+    private void runWriter() {
+        final List<InfoLoggingRecord> batch = new ArrayList<>(batchSize);
+        while (!closed) {
+            if (buffer.size() < batchSize) {
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            }
+            exportAll(batch);
+        }
+        try {
+            // export what was added before closing
+            exportAll(batch);
+        } finally {
+            // only the writer closes the exporter, so that it is never closed while it is exporting
+            try {
+                exporter.close();
+            } catch (final IOException e) {
+                exporterCloseFailure = e;
+            }
+        }
+    }
+
+    private void exportAll(final List<InfoLoggingRecord> batch) {
+        while (buffer.drainTo(batch, batchSize) > 0) {
+            try {
+                exporter.export(batch);
+                exported.addAndGet(batch.size());
+            } catch (final Exception e) {
+                failedExports.addAndGet(batch.size());
+                lastExportFailure = e;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Stop accepting messages, export the buffered messages and close the exporter. Messages of requests that end
+     * while the sink is being closed might be lost. If the background thread doesn't finish exporting in time, this
+     * method returns and the exporter is closed once the export has finished.
+     *
+     * @throws IOException if the exporter cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos) + 10_000L);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!writer.isAlive() && exporterCloseFailure != null) {
+            throw exporterCloseFailure;
+        }
+    }
+
+    /**
+     * @return The number of requests whose messages were put into the buffer
+     */
+    public long getAcceptedCount() {
+        return accepted.sum();
+    }
+
+    /**
+     * @return The number of requests whose messages were dropped because the buffer was full or the sink was closed
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return The number of requests whose messages were exported
+     */
+    public long getExportedCount() {
+        return exported.get();
+    }
+
+    /**
+     * @return The number of requests whose messages were lost because the exporter threw an exception
+     */
+    public long getFailedExportCount() {
+        return failedExports.get();
+    }
+
+    public Exception getLastExportFailure() {
+        return lastExportFailure;
+    }
+
+    public int getBufferedCount() {
+        return buffer.size();
+    }
+
+    public InfoLoggingExporter getExporter() {
+        return exporter;
+    }
+}
@@ -0,0 +1,127 @@
+package querqy.lucene.rewrite.infologging;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>A bounded, lock-free queue for many producers and a single consumer.</p>
+ *
+ * <p>Each slot has a sequence number that tells producers and the consumer whether the slot is free for the position
+ * that they want to write or read (see Dmitry Vyukov's bounded MPMC queue). Producers never wait: {@link #offer(Object)}
+ * fails immediately if the queue is full.</p>
+ *
+ * @param <T> The element type
+ */
+public class BoundedRingBuffer<T> {
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<T> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+
+    // only modified by the consumer
+    private volatile long head = 0L;
+
+    /**
+     * @param capacity The capacity. It will be rounded up to the next power of 2.
+     */
+    public BoundedRingBuffer(final int capacity) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("capacity must be between 1 and 2^30");
+        }
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        elements = new AtomicReferenceArray<>(this.capacity);
+        sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Add an element if there is space left. Can be called by many threads.
+     *
+     * @param element The element
+     * @return The position of the element in the sequence of all added elements (starting at 0), or -1 if the buffer
+     * is full
+     */
+    public long offer(final T element) {
+        if (element == null) {
+            throw new NullPointerException("element must not be null");
+        }
+        long pos = tail.get();
+        while (true) {
+            final int index = (int) pos & mask;
+            final long diff = sequences.get(index) - pos;
+            if (diff == 0L) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    elements.lazySet(index, element);
+                    // publish the element to the consumer
+                    sequences.set(index, pos + 1);
+                    return pos;
+                }
+                pos = tail.get();
+            } else if (diff < 0L) {
+                // the consumer hasn't freed the slot for this round yet
+                return -1L;
+            } else {
+                // another producer took this position
+                pos = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Remove the next element. Must only be called by a single consumer thread.
+     *
+     * @return The next element or null if the buffer is empty
+     */
+    public T poll() {
+        final long pos = head;
+        final int index = (int) pos & mask;
+        if (sequences.get(index) != pos + 1) {
+            // empty or the producer hasn't published the element yet
+            return null;
+        }
+        final T element = elements.get(index);
+        elements.lazySet(index, null);
+        // free the slot for the next round
+        sequences.set(index, pos + capacity);
+        head = pos + 1;
+        return element;
+    }
+
+    /**
+     * Move up to maxElements elements to a list. Must only be called by a single consumer thread.
+     *
+     * @param target The list
+     * @param maxElements The maximum number of elements to move
+     * @return The number of elements that were moved
+     */
+    public int drainTo(final List<? super T> target, final int maxElements) {
+        int count = 0;
+        while (count < maxElements) {
+            final T element = poll();
+            if (element == null) {
+                break;
+            }
+            target.add(element);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return The approximate number of elements in the buffer
+     */
+    public int size() {
+        return (int) Math.max(0L, Math.min(capacity, tail.get() - head));
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
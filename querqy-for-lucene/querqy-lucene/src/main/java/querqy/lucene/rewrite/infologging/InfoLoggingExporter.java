@@ -0,0 +1,25 @@
+package querqy.lucene.rewrite.infologging;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes batches of {@link InfoLoggingRecord}s to their destination, for example files or a message broker. It is
+ * called by the background thread of an {@link AsyncSink} and it never runs on a request thread.
+ */
+public interface InfoLoggingExporter extends Closeable {
+
+    /**
+     * Export a batch of records. The batch is dropped if this method throws an exception.
+     *
+     * @param records The records in the order of the end of their requests
+     * @throws IOException if the records could not be exported
+     */
+    void export(List<InfoLoggingRecord> records) throws IOException;
+
+    @Override
+    default void close() throws IOException {
+    }
+
+}
@@ -0,0 +1,46 @@
+package querqy.lucene.rewrite.infologging;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The info logging messages of a single request, as they are handed to an {@link InfoLoggingExporter}.
+ */
+public class InfoLoggingRecord {
+
+    private final long timestamp;
+    private final String query;
+    private final List<Map<String, Object>> messages;
+
+    /**
+     * @param timestamp The time of the end of the request in milliseconds since the epoch
+     * @param query The query string of the request. Can be null.
+     * @param messages The messages, each with a 'rewriterId' and optional 'actions'
+     */
+    public InfoLoggingRecord(final long timestamp, final String query, final List<Map<String, Object>> messages) {
+        this.timestamp = timestamp;
+        this.query = query;
+        this.messages = messages;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public List<Map<String, Object>> getMessages() {
+        return messages;
+    }
+
+    @Override
+    public String toString() {
+        return "InfoLoggingRecord{" +
+                "timestamp=" + timestamp +
+                ", query='" + query + '\'' +
+                ", messages=" + messages +
+                '}';
+    }
+}
@@ -0,0 +1,105 @@
+package querqy.lucene.rewrite.infologging;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Appends {@link InfoLoggingRecord}s as JSON lines to a local file and rolls the file once it would exceed a
+ * maximum size. Rolled files get the suffixes <code>.1</code> (newest) to <code>.maxFiles</code> (oldest), older files
+ * are deleted.</p>
+ *
+ * <p>The file is opened per batch. Exporters for the same file, for example of the old and the new core during a core
+ * reload, can be used at the same time.</p>
+ */
+public class RollingFileExporter implements InfoLoggingExporter {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private static final Map<Path, Object> FILE_LOCKS = new ConcurrentHashMap<>();
+
+    private final Path file;
+    private final long maxFileSize;
+    private final int maxFiles;
+
+    /**
+     * @param file The file to write to
+     * @param maxFileSize The size in bytes after which the file will be rolled
+     * @param maxFiles The number of rolled files to keep
+     */
+    public RollingFileExporter(final Path file, final long maxFileSize, final int maxFiles) {
+        if (maxFileSize < 1L) {
+            throw new IllegalArgumentException("maxFileSize must be > 0");
+        }
+        if (maxFiles < 0) {
+            throw new IllegalArgumentException("maxFiles must not be negative");
+        }
+        this.file = file.toAbsolutePath().normalize();
+        this.maxFileSize = maxFileSize;
+        this.maxFiles = maxFiles;
+    }
+
+    @Override
+    public void export(final List<InfoLoggingRecord> records) throws IOException {
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(records.size() * 256);
+        for (final InfoLoggingRecord record : records) {
+            final Map<String, Object> line = new LinkedHashMap<>(4);
+            line.put("timestamp", record.getTimestamp());
+            if (record.getQuery() != null) {
+                line.put("query", record.getQuery());
+            }
+            line.put("messages", record.getMessages());
+            OBJECT_MAPPER.writeValue(bytes, line);
+            bytes.write('\n');
+        }
+
+        synchronized (FILE_LOCKS.computeIfAbsent(file, key -> new Object())) {
+            final Path parent = file.getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            if (Files.exists(file)) {
+                final long size = Files.size(file);
+                if (size > 0L && size + bytes.size() > maxFileSize) {
+                    roll();
+                }
+            }
+            Files.write(file, bytes.toByteArray(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+    }
+
+    private void roll() throws IOException {
+        if (maxFiles == 0) {
+            Files.delete(file);
+            return;
+        }
+        Files.deleteIfExists(rolledFile(maxFiles));
+        for (int i = maxFiles - 1; i > 0; i--) {
+            final Path rolled = rolledFile(i);
+            if (Files.exists(rolled)) {
+                Files.move(rolled, rolledFile(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(file, rolledFile(1), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    Path rolledFile(final int number) {
+        return file.resolveSibling(file.getFileName().toString() + "." + number);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+}
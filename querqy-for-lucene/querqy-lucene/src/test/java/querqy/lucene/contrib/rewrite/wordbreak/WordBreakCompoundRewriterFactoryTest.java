@@ -9,11 +9,16 @@ import org.apache.lucene.tests.index.RandomIndexWriter;
 import org.apache.lucene.tests.util.LuceneTestCase;
 import org.junit.Assert;
 import org.junit.Test;
+import querqy.model.EmptySearchEngineRequestAdapter;
+import querqy.model.ExpandedQuery;
 import querqy.model.Term;
+import querqy.parser.WhiteSpaceQuerqyParser;
+import querqy.rewrite.SearchEngineRequestAdapter;
 import querqy.trie.TrieMap;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 import static org.hamcrest.Matchers.containsInAnyOrder;
@@ -143,4 +148,60 @@ public class WordBreakCompoundRewriterFactoryTest extends LuceneTestCase {
             directory.close();
         }
     }
+
+    @Test
+    public void testThatSuggestionsAreCachedPerIndexReader() throws Exception {
+        final Analyzer analyzer = new WhitespaceAnalyzer();
+
+        final Directory directory = newDirectory();
+        final RandomIndexWriter indexWriter = new RandomIndexWriter(random(), directory, analyzer);
+
+        addNumDocsWithTextField("field1", "buchregal", indexWriter, 1);
+        addNumDocsWithTextField("field1", "buch", indexWriter, 1);
+        addNumDocsWithTextField("field1", "regal", indexWriter, 1);
+        addNumDocsWithTextField("field1", "wandregal", indexWriter, 1);
+        addNumDocsWithTextField("field1", "wand", indexWriter, 1);
+        indexWriter.close();
+
+        final AtomicReference<IndexReader> currentReader = new AtomicReference<>();
+
+        final WordBreakCompoundRewriterFactory uncached = new WordBreakCompoundRewriterFactory("w1",
+                currentReader::get, "field1", true, 1, 20, 2, Collections.emptyList(), true, 2, false,
+                Collections.emptyList(), "DEFAULT", "DEFAULT");
+        final WordBreakCompoundRewriterFactory cached = new WordBreakCompoundRewriterFactory("w2",
+                currentReader::get, "field1", true, 1, 20, 2, Collections.emptyList(), true, 2, false,
+                Collections.emptyList(), "DEFAULT", "DEFAULT", 100);
+
+        try (final IndexReader indexReader = DirectoryReader.open(directory)) {
+            currentReader.set(indexReader);
+
+            final String expected = rewrite(uncached, "Buch regal wandregal");
+            assertEquals(expected, rewrite(cached, "Buch regal wandregal"));
+            assertEquals(0L, cached.getSuggestionCacheHits());
+            final long misses = cached.getSuggestionCacheMisses();
+            assertTrue(misses > 0L);
+
+            // lower-cased input is looked up using the same key
+            assertEquals(rewrite(uncached, "buch Regal wandregal"), rewrite(cached, "buch Regal wandregal"));
+            assertEquals(misses, cached.getSuggestionCacheHits());
+            assertEquals(misses, cached.getSuggestionCacheMisses());
+        }
+
+        try (final IndexReader indexReader = DirectoryReader.open(directory)) {
+            // a new reader doesn't use the entries of the closed reader
+            currentReader.set(indexReader);
+            final long misses = cached.getSuggestionCacheMisses();
+            rewrite(cached, "Buch regal wandregal");
+            assertTrue(cached.getSuggestionCacheMisses() > misses);
+        } finally {
+            directory.close();
+        }
+    }
+
+    private static String rewrite(final WordBreakCompoundRewriterFactory factory, final String input) {
+        final ExpandedQuery query = new ExpandedQuery(new WhiteSpaceQuerqyParser().parse(input));
+        final SearchEngineRequestAdapter requestAdapter = new EmptySearchEngineRequestAdapter();
+        return factory.createRewriter(query, requestAdapter).rewrite(query, requestAdapter).getExpandedQuery()
+                .getUserQuery().toString();
+    }
 }
@@ -8,6 +8,7 @@ import org.apache.lucene.search.spell.WordBreakSpellChecker;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
 import querqy.model.Clause;
@@ -16,6 +17,7 @@ import querqy.model.EmptySearchEngineRequestAdapter;
 import querqy.model.ExpandedQuery;
 import querqy.model.Query;
 import querqy.model.StringRawQuery;
+import querqy.rewrite.RewriteBudget;
 import querqy.rewrite.RewriterOutput;
 import querqy.rewrite.contrib.ShingleRewriter;
 import querqy.trie.TrieMap;
@@ -883,6 +885,34 @@ public class WordBreakCompoundRewriterTest {
 
     }
 
+    @Test
+    public void testThatNoCompoundsAreLookedUpForExhaustedRewriteBudget() {
+
+        final WordBreakCompoundRewriter rewriter = rewriter(NO_PROTECTEDWORDS);
+
+        final Query query = new Query();
+        addTerm(query, "w1", false);
+        addTerm(query, "w2w3", false);
+
+        final RewriteBudget budget = RewriteBudget.of(null, 0);
+        final ExpandedQuery rewritten = rewriter.rewrite(new ExpandedQuery(query),
+                new EmptySearchEngineRequestAdapter() {
+                    @Override
+                    public RewriteBudget getRewriteBudget() {
+                        return budget;
+                    }
+                }).getExpandedQuery();
+
+        assertThat((Query) rewritten.getUserQuery(),
+                bq(
+                        dmq(term("w1", false)),
+                        dmq(term("w2w3", false))
+                )
+        );
+        assertEquals(2, budget.getRefusals());
+        Mockito.verifyNoInteractions(wordBreakSpellChecker);
+    }
+
     private WordBreakCompoundRewriter rewriter(TrieMap<Boolean> protectedTerms) {
         return new WordBreakCompoundRewriter(
                 new SpellCheckerWordBreaker(wordBreakSpellChecker, "field1", false),
@@ -0,0 +1,124 @@
+package querqy.lucene.contrib.rewrite.wordbreak;
+
+import static querqy.lucene.rewrite.TestUtil.addNumDocsWithTextField;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.tests.index.RandomIndexWriter;
+import org.apache.lucene.tests.util.LuceneTestCase;
+import org.junit.Test;
+import querqy.model.Term;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class WordBreakDictionaryTest extends LuceneTestCase {
+
+    private final Morphology GERMAN = new MorphologyProvider().get("GERMAN").get();
+
+    @Test
+    public void testFromWords() throws IOException {
+        final Map<String, Integer> words = new HashMap<>();
+        words.put("regal", 3);
+        words.put("buch", 5);
+        words.put("wand", 1);
+        words.put("büro", 2);
+
+        final WordBreakDictionary dictionary = WordBreakDictionary.fromWords(words, 2);
+        assertEquals(3, dictionary.size());
+        assertEquals(10L, dictionary.getNumDocs());
+        assertEquals(3, dictionary.getFrequency("regal"));
+        assertEquals(5, dictionary.getFrequency("buch"));
+        assertEquals(2, dictionary.getFrequency("büro"));
+        assertEquals(0, dictionary.getFrequency("wand"));
+        assertEquals(0, dictionary.getFrequency("bu"));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        dictionary.writeTo(out);
+        final WordBreakDictionary read = WordBreakDictionary.readFrom(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(3, read.size());
+        assertEquals(10L, read.getNumDocs());
+        assertEquals(3, read.getFrequency("regal"));
+        assertEquals(2, read.getFrequency("büro"));
+        assertEquals(0, read.getFrequency("wand"));
+    }
+
+    @Test
+    public void testEmptyDictionary() throws IOException {
+        final WordBreakDictionary dictionary = WordBreakDictionary.fromWords(Collections.singletonMap("a", 1), 2);
+        assertEquals(0, dictionary.size());
+        assertEquals(0, dictionary.getFrequency("a"));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        dictionary.writeTo(out);
+        final WordBreakDictionary read = WordBreakDictionary.readFrom(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(0, read.size());
+        assertEquals(0, read.getFrequency("a"));
+    }
+
+    @Test
+    public void testThatDictionaryWordBreakerEqualsIndexWordBreaker() throws IOException {
+        final Analyzer analyzer = new WhitespaceAnalyzer();
+        final Directory directory = newDirectory();
+
+        final RandomIndexWriter indexWriter = new RandomIndexWriter(random(), directory, analyzer);
+        addNumDocsWithTextField("f1", "bild buch", indexWriter, 4);
+        addNumDocsWithTextField("f1", "bilder", indexWriter, 3);
+        addNumDocsWithTextField("f1", "kinder jacke", indexWriter, 2);
+        addNumDocsWithTextField("f1", "kind", indexWriter, 1);
+        addNumDocsWithTextField("f2", "jacken", indexWriter, 5);
+        indexWriter.close();
+
+        try (final IndexReader indexReader = DirectoryReader.open(directory)) {
+
+            final WordBreakDictionary dictionary = WordBreakDictionary.fromIndex(indexReader, "f1", 1);
+            assertEquals(6, dictionary.size());
+            assertEquals(indexReader.numDocs(), dictionary.getNumDocs());
+            assertEquals(4, dictionary.getFrequency("buch"));
+            assertEquals(0, dictionary.getFrequency("jacken"));
+
+            final MorphologicalWordBreaker indexWordBreaker = new MorphologicalWordBreaker(GERMAN, "f1", true, 1, 3,
+                    100);
+            final DictionaryWordBreaker dictionaryWordBreaker = new DictionaryWordBreaker(GERMAN, dictionary, true, 1,
+                    3, 100);
+
+            for (final String word : new String[] {"Bilderbuch", "kinderjacke", "kindjacke", "jacke", "abcdef"}) {
+                assertEquals(word, toStrings(indexWordBreaker.breakWord(word, indexReader, 5, false)),
+                        toStrings(dictionaryWordBreaker.breakWord(word, null, 5, false)));
+            }
+            assertEquals(Collections.singletonList("bilder buch"),
+                    toStrings(dictionaryWordBreaker.breakWord("bilderbuch", null, 1, false)));
+
+            final DictionaryCompounder compounder = new DictionaryCompounder(GERMAN, dictionary, true, 1);
+            final Term left = new Term(null, "f1", "Bild");
+            final Term right = new Term(null, "f1", "buch");
+            assertTrue(compounder.combine(new Term[] {left, right}, null, false).isEmpty());
+
+            final Term kind = new Term(null, "f1", "kind");
+            final Term er = new Term(null, "f1", "er");
+            final List<LuceneCompounder.CompoundTerm> compounds = compounder.combine(new Term[] {kind, er}, null,
+                    false);
+            assertEquals(1, compounds.size());
+            assertEquals("kinder", compounds.get(0).value.toString());
+            assertSame(kind, compounds.get(0).originalTerms[0]);
+
+        } finally {
+            directory.close();
+        }
+    }
+
+    private static List<String> toStrings(final List<CharSequence[]> sequences) {
+        return sequences.stream()
+                .map(sequence -> sequence[0] + " " + sequence[1])
+                .collect(Collectors.toList());
+    }
+}
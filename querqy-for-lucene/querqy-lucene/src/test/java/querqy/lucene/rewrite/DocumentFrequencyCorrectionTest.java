@@ -3,6 +3,9 @@ package querqy.lucene.rewrite;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NoMergePolicy;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.store.Directory;
@@ -13,6 +16,10 @@ import org.junit.Test;
 import querqy.lucene.rewrite.DependentTermQueryBuilder.DependentTermQuery;
 import querqy.lucene.rewrite.DocumentFrequencyCorrection.DocumentFrequencyAndTermContext;
 
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import static querqy.lucene.rewrite.TestUtil.addNumDocsWithStringField;
 import static querqy.lucene.rewrite.TestUtil.newTerm;
 
@@ -123,6 +130,79 @@ public class DocumentFrequencyCorrectionTest extends LuceneTestCase {
         
     }
 
+    @Test
+    public void testSegmentParallelTermLookupEqualsPerTermLookup() throws Exception {
+
+        Analyzer analyzer = new MockAnalyzer(random());
+
+        Directory directory = newDirectory();
+        IndexWriter indexWriter = new IndexWriter(directory, newIndexWriterConfig(analyzer)
+                .setMergePolicy(NoMergePolicy.INSTANCE));
+
+        // create several segments, not every term exists in every segment
+        for (int segment = 0; segment < 5; segment++) {
+            addNumDocsWithStringField("f1", "a", indexWriter, getRandomDf());
+            addNumDocsWithStringField("f2", "b" + segment, indexWriter, getRandomDf());
+            if (segment % 2 == 0) {
+                addNumDocsWithStringField("f1", "c", indexWriter, getRandomDf());
+                addNumDocsWithStringField("f2", "a", indexWriter, getRandomDf());
+            }
+            indexWriter.commit();
+        }
+
+        indexWriter.close();
+
+        IndexReader indexReader = DirectoryReader.open(directory);
+        assertTrue(indexReader.leaves().size() > 1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        IndexSearcher indexSearcher = new IndexSearcher(indexReader, executor);
+
+        DocumentFrequencyCorrection perTerm = new DocumentFrequencyCorrection();
+        DocumentFrequencyCorrection segmentParallel = new DocumentFrequencyCorrection(
+                DocumentFrequencyCorrection.TermLookup.SEGMENT_PARALLEL);
+
+        for (DocumentFrequencyCorrection dfc : Arrays.asList(perTerm, segmentParallel)) {
+            dfc.newClause();
+            newTerm("f1", "c", dfc);
+            newTerm("f2", "b3", dfc);
+            newTerm("f1", "a", dfc);
+            newTerm("f2", "a", dfc);
+            dfc.newClause();
+            newTerm("f2", "b1", dfc);
+            newTerm("f1", "x", dfc);
+            newTerm("f3", "a", dfc);
+            dfc.finishedUserQuery();
+            dfc.newClause();
+            newTerm("f1", "a", dfc);
+            newTerm("f2", "b0", dfc);
+        }
+
+        try {
+            for (int i = 0; i < perTerm.terms.size(); i++) {
+
+                DocumentFrequencyAndTermContext expected = perTerm.getDocumentFrequencyAndTermContext(i,
+                        indexSearcher);
+                DocumentFrequencyAndTermContext actual = segmentParallel.getDocumentFrequencyAndTermContext(i,
+                        indexSearcher);
+
+                assertEquals(expected.df, actual.df);
+                assertEquals(expected.termStates.docFreq(), actual.termStates.docFreq());
+                assertEquals(expected.termStates.totalTermFreq(), actual.termStates.totalTermFreq());
+
+                for (LeafReaderContext ctx : indexReader.leaves()) {
+                    assertEquals(expected.termStates.get(ctx) == null, actual.termStates.get(ctx) == null);
+                }
+            }
+        } finally {
+            executor.shutdown();
+            indexReader.close();
+            directory.close();
+            analyzer.close();
+        }
+
+    }
+
     int getRandomDf() {
         return 1 + Long.valueOf(Math.round(50.0 * Math.random())).intValue();
     }
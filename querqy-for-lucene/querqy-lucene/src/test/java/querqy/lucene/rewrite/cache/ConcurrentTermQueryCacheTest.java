@@ -0,0 +1,183 @@
+package querqy.lucene.rewrite.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import querqy.model.Term;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class ConcurrentTermQueryCacheTest {
+
+    @Test
+    public void testGetAndPut() {
+        final ConcurrentTermQueryCache cache = new ConcurrentTermQueryCache(10);
+        final TermQueryCacheValue value = value();
+
+        assertNull(cache.get(key("f1", "a")));
+        cache.put(key("f1", "a"), value);
+        assertSame(value, cache.get(key("f1", "a")));
+        assertNull(cache.get(key("f2", "a")));
+
+        assertEquals(1, cache.size());
+        assertEquals(1L, cache.getHits());
+        assertEquals(2L, cache.getMisses());
+    }
+
+    @Test
+    public void testThatSizeIsBounded() {
+        final ConcurrentTermQueryCache cache = new ConcurrentTermQueryCache(4, Long.MAX_VALUE,
+                ConcurrentTermQueryCache.UNIT_WEIGHER, 1);
+        for (int i = 0; i < 10; i++) {
+            cache.put(key("f1", "v" + i), value());
+        }
+        assertEquals(4, cache.size());
+        assertEquals(6L, cache.getEvictions());
+    }
+
+    @Test
+    public void testThatReferencedEntriesSurviveEviction() {
+        final ConcurrentTermQueryCache cache = new ConcurrentTermQueryCache(3, Long.MAX_VALUE,
+                ConcurrentTermQueryCache.UNIT_WEIGHER, 1);
+        cache.put(key("f1", "a"), value());
+        cache.put(key("f1", "b"), value());
+        cache.put(key("f1", "c"), value());
+
+        assertNotNull(cache.get(key("f1", "a")));
+        cache.put(key("f1", "d"), value());
+
+        assertNotNull(cache.get(key("f1", "a")));
+        assertNull(cache.get(key("f1", "b")));
+        assertNotNull(cache.get(key("f1", "d")));
+    }
+
+    @Test
+    public void testThatWeightIsBounded() {
+        final ConcurrentTermQueryCache cache = new ConcurrentTermQueryCache(100, 10L,
+                (key, value) -> 4L, 1);
+        cache.put(key("f1", "a"), value());
+        cache.put(key("f1", "b"), value());
+        cache.put(key("f1", "c"), value());
+
+        assertEquals(2, cache.size());
+        assertEquals(8L, cache.getWeight());
+        assertNotNull(cache.get(key("f1", "c")));
+    }
+
+    @Test
+    public void testThatEntriesTooHeavyForTheCacheAreNotAdded() {
+        final ConcurrentTermQueryCache cache = new ConcurrentTermQueryCache(100, 3L,
+                (key, value) -> 4L, 1);
+        cache.put(key("f1", "a"), value());
+        assertEquals(0, cache.size());
+        assertEquals(0L, cache.getWeight());
+    }
+
+    @Test
+    public void testThatNewGenerationHidesOldEntries() {
+        final ConcurrentTermQueryCache cache = new ConcurrentTermQueryCache(10);
+        final Object searcher1 = new Object();
+        final Object searcher2 = new Object();
+
+        cache.initGeneration(searcher1);
+        final long generation1 = cache.getGeneration();
+        cache.forOwner(searcher1).put(key("f1", "a"), value());
+
+        cache.initGeneration(searcher2);
+        assertEquals(generation1, cache.getGeneration());
+        assertNotNull(cache.forOwner(searcher1).get(key("f1", "a")));
+        assertNull(cache.forOwner(searcher2));
+
+        cache.nextGeneration(searcher2);
+        assertTrue(cache.getGeneration() > generation1);
+        assertNull(cache.forOwner(searcher1));
+        assertNull(cache.forOwner(searcher2).get(key("f1", "a")));
+
+        final TermQueryCacheValue value = value();
+        cache.forOwner(searcher2).put(key("f1", "a"), value);
+        assertSame(value, cache.forOwner(searcher2).get(key("f1", "a")));
+        assertEquals(1, cache.size());
+        assertEquals(1L, cache.getWeight());
+
+        cache.nextGeneration();
+        assertNull(cache.get(key("f1", "a")));
+    }
+
+    @Test
+    public void testThatPutAfterGenerationChangeIsDropped() {
+        final ConcurrentTermQueryCache cache = new ConcurrentTermQueryCache(10);
+        final Object searcher1 = new Object();
+        final Object searcher2 = new Object();
+
+        cache.nextGeneration(searcher1);
+        final TermQueryCache view1 = cache.forOwner(searcher1);
+
+        cache.nextGeneration(searcher2);
+        view1.put(key("f1", "a"), value());
+        assertEquals(0, cache.size());
+        assertNull(cache.forOwner(searcher2).get(key("f1", "a")));
+        assertNull(view1.get(key("f1", "a")));
+    }
+
+    @Test
+    public void testClear() {
+        final ConcurrentTermQueryCache cache = new ConcurrentTermQueryCache(10);
+        cache.put(key("f1", "a"), value());
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0L, cache.getWeight());
+        assertNull(cache.get(key("f1", "a")));
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final ConcurrentTermQueryCache cache = new ConcurrentTermQueryCache(64, Long.MAX_VALUE,
+                ConcurrentTermQueryCache.UNIT_WEIGHER, 4);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                final int offset = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 5000; i++) {
+                        final CacheKey key = key("f1", "v" + ((i * 7 + offset) % 200));
+                        if (cache.get(key) == null) {
+                            cache.put(key, value());
+                        }
+                        if (i % 1000 == 0) {
+                            cache.nextGeneration();
+                        }
+                    }
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(cache.size() <= 64);
+        assertEquals(cache.size(), cache.getWeight());
+        assertFalse(cache.getHits() + cache.getMisses() < 20000L);
+    }
+
+    private static CacheKey key(final String field, final String value) {
+        return new CacheKey(field, new Term(null, value));
+    }
+
+    private static TermQueryCacheValue value() {
+        return new TermQueryCacheValue(null, null);
+    }
+
+}
@@ -0,0 +1,165 @@
+package querqy.lucene.rewrite.cache;
+
+import static querqy.lucene.rewrite.TestUtil.addNumDocsWithStringField;
+import static querqy.lucene.rewrite.TestUtil.newTerm;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermStates;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.tests.analysis.MockAnalyzer;
+import org.apache.lucene.tests.util.LuceneTestCase;
+import org.junit.Test;
+import querqy.lucene.rewrite.ConstantFieldBoost;
+import querqy.lucene.rewrite.DocumentFrequencyCorrection;
+import querqy.lucene.rewrite.DocumentFrequencyCorrection.DocumentFrequencyAndTermContext;
+import querqy.lucene.rewrite.FieldBoostTermQueryBuilder;
+
+public class DocumentFrequencyCacheTest extends LuceneTestCase {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatMaxEntriesMustBePositive() {
+        new DocumentFrequencyCache(0);
+    }
+
+    @Test
+    public void testThatTermStatsAreServedFromCacheAcrossRequests() throws Exception {
+
+        final Analyzer analyzer = new MockAnalyzer(random());
+        final Directory directory = newDirectory();
+        final IndexWriter indexWriter = new IndexWriter(directory, newIndexWriterConfig(analyzer)
+                .setMergePolicy(NoMergePolicy.INSTANCE));
+
+        addNumDocsWithStringField("f1", "a", indexWriter, 7);
+        addNumDocsWithStringField("f2", "b", indexWriter, 3);
+        indexWriter.commit();
+        addNumDocsWithStringField("f1", "a", indexWriter, 2);
+        indexWriter.close();
+
+        final IndexReader indexReader = DirectoryReader.open(directory);
+        final IndexSearcher indexSearcher = new IndexSearcher(indexReader);
+
+        final DocumentFrequencyCache cache = new DocumentFrequencyCache(100);
+
+        final DocumentFrequencyCorrection uncached = dfc(null);
+        final DocumentFrequencyCorrection first = dfc(cache);
+        final DocumentFrequencyCorrection second = dfc(cache);
+
+        for (int i = 0; i < 3; i++) {
+            final DocumentFrequencyAndTermContext expected = uncached.getDocumentFrequencyAndTermContext(i,
+                    indexSearcher);
+            assertEqualStats(expected, first.getDocumentFrequencyAndTermContext(i, indexSearcher));
+        }
+        // the dfc looks up all terms at once
+        assertEquals(0L, cache.getHits());
+        assertEquals(3L, cache.getMisses());
+        assertEquals(1, cache.getNumberOfReaders());
+
+        for (int i = 0; i < 3; i++) {
+            final DocumentFrequencyAndTermContext expected = uncached.getDocumentFrequencyAndTermContext(i,
+                    indexSearcher);
+            assertEqualStats(expected, second.getDocumentFrequencyAndTermContext(i, indexSearcher));
+        }
+        assertEquals(3L, cache.getHits());
+        assertEquals(3L, cache.getMisses());
+
+        indexReader.close();
+        // closing the reader evicts its entries
+        assertEquals(0, cache.getNumberOfReaders());
+
+        directory.close();
+        analyzer.close();
+
+    }
+
+    @Test
+    public void testThatFieldBoostTermQueryUsesCache() throws Exception {
+
+        final Analyzer analyzer = new MockAnalyzer(random());
+        final Directory directory = newDirectory();
+        final IndexWriter indexWriter = new IndexWriter(directory, newIndexWriterConfig(analyzer));
+
+        addNumDocsWithStringField("f1", "a", indexWriter, 4);
+        addNumDocsWithStringField("f1", "b", indexWriter, 1);
+        indexWriter.close();
+
+        final IndexReader indexReader = DirectoryReader.open(directory);
+        final IndexSearcher indexSearcher = new IndexSearcher(indexReader);
+
+        final DocumentFrequencyCache cache = new DocumentFrequencyCache(100);
+        final FieldBoostTermQueryBuilder builder = new FieldBoostTermQueryBuilder(cache);
+
+        TopDocs topDocs = indexSearcher.search(builder.createTermQuery(new Term("f1", "a"),
+                ConstantFieldBoost.NORM_BOOST), 10);
+        assertEquals(4, topDocs.totalHits.value);
+        assertEquals(1L, cache.getMisses());
+
+        topDocs = indexSearcher.search(builder.createTermQuery(new Term("f1", "a"),
+                ConstantFieldBoost.NORM_BOOST), 10);
+        assertEquals(4, topDocs.totalHits.value);
+        assertEquals(1L, cache.getHits());
+
+        final TermStates termStates = cache.buildTermStates(indexSearcher.getTopReaderContext(),
+                new Term("f1", "b"), true);
+        assertEquals(1, termStates.docFreq());
+
+        indexReader.close();
+        directory.close();
+        analyzer.close();
+
+    }
+
+    @Test
+    public void testThatMaxEntriesPerReaderIsRespected() throws Exception {
+
+        final Analyzer analyzer = new MockAnalyzer(random());
+        final Directory directory = newDirectory();
+        final IndexWriter indexWriter = new IndexWriter(directory, newIndexWriterConfig(analyzer));
+
+        addNumDocsWithStringField("f1", "a", indexWriter, 1);
+        addNumDocsWithStringField("f1", "b", indexWriter, 1);
+        indexWriter.close();
+
+        final IndexReader indexReader = DirectoryReader.open(directory);
+        final IndexSearcher indexSearcher = new IndexSearcher(indexReader);
+
+        final DocumentFrequencyCache cache = new DocumentFrequencyCache(1);
+        cache.getOrLookup(indexSearcher.getTopReaderContext(), new Term("f1", "a"));
+        cache.getOrLookup(indexSearcher.getTopReaderContext(), new Term("f1", "b"));
+
+        // the entry for 'a' has not been looked up since it was added and it is evicted for 'b'
+        assertNull(cache.get(indexSearcher.getTopReaderContext(), new Term("f1", "a")));
+        assertNotNull(cache.get(indexSearcher.getTopReaderContext(), new Term("f1", "b")));
+
+        indexReader.close();
+        directory.close();
+        analyzer.close();
+
+    }
+
+    private static DocumentFrequencyCorrection dfc(final DocumentFrequencyCache cache) {
+        final DocumentFrequencyCorrection dfc = new DocumentFrequencyCorrection(
+                DocumentFrequencyCorrection.TermLookup.PER_TERM, cache);
+        dfc.newClause();
+        newTerm("f1", "a", dfc);
+        newTerm("f2", "b", dfc);
+        dfc.newClause();
+        newTerm("f1", "x", dfc);
+        dfc.finishedUserQuery();
+        return dfc;
+    }
+
+    private static void assertEqualStats(final DocumentFrequencyAndTermContext expected,
+                                         final DocumentFrequencyAndTermContext actual) {
+        assertEquals(expected.df, actual.df);
+        assertEquals(expected.termStates.docFreq(), actual.termStates.docFreq());
+        assertEquals(expected.termStates.totalTermFreq(), actual.termStates.totalTermFreq());
+    }
+
+}
@@ -0,0 +1,103 @@
+package querqy.lucene.rewrite.cache;
+
+import static querqy.lucene.rewrite.TestUtil.addNumDocsWithStringField;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.tests.analysis.MockAnalyzer;
+import org.apache.lucene.tests.util.LuceneTestCase;
+import org.junit.Test;
+
+public class ReaderScopedCacheTest extends LuceneTestCase {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatMaxEntriesMustBePositive() {
+        new ReaderScopedCache<String, String>(0);
+    }
+
+    @Test
+    public void testThatEntriesAreBoundedAndDroppedWithTheReader() throws Exception {
+
+        final Analyzer analyzer = new MockAnalyzer(random());
+        final Directory directory = newDirectory();
+        final IndexWriter indexWriter = new IndexWriter(directory, newIndexWriterConfig(analyzer));
+        addNumDocsWithStringField("f1", "a", indexWriter, 1);
+        indexWriter.close();
+
+        final ReaderScopedCache<String, String> cache = new ReaderScopedCache<>(2);
+
+        final IndexReader indexReader = DirectoryReader.open(directory);
+        try {
+            assertNull(cache.get(indexReader, "k1"));
+            assertEquals(1L, cache.getMisses());
+
+            cache.put(indexReader, "k1", "v1");
+            cache.put(indexReader, "k1", "other");
+            assertEquals("v1", cache.get(indexReader, "k1"));
+            cache.put(indexReader, "k2", "v2");
+            // k2 has not been looked up since it was added
+            cache.put(indexReader, "k3", "v3");
+
+            assertEquals("v1", cache.get(indexReader, "k1"));
+            assertNull(cache.get(indexReader, "k2"));
+            assertEquals("v3", cache.get(indexReader, "k3"));
+            assertEquals(3L, cache.getHits());
+            assertEquals(2L, cache.getMisses());
+            assertEquals(1L, cache.getEvictions());
+            assertEquals(1, cache.getNumberOfReaders());
+
+            // without a reader nothing is cached
+            cache.put(null, "k1", "v1");
+            assertNull(cache.get(null, "k1"));
+        } finally {
+            indexReader.close();
+        }
+
+        assertEquals(0, cache.getNumberOfReaders());
+
+        directory.close();
+        analyzer.close();
+    }
+
+    @Test
+    public void testThatFrequentKeyIsCachedAfterCacheIsFull() throws Exception {
+
+        final Analyzer analyzer = new MockAnalyzer(random());
+        final Directory directory = newDirectory();
+        final IndexWriter indexWriter = new IndexWriter(directory, newIndexWriterConfig(analyzer));
+        addNumDocsWithStringField("f1", "a", indexWriter, 1);
+        indexWriter.close();
+
+        final ReaderScopedCache<String, String> cache = new ReaderScopedCache<>(10);
+
+        final IndexReader indexReader = DirectoryReader.open(directory);
+        try {
+            // fill the cache with keys that are never looked up again
+            for (int i = 0; i < 10; i++) {
+                cache.put(indexReader, "rare" + i, "v");
+            }
+
+            int hits = 0;
+            for (int i = 0; i < 100; i++) {
+                if (cache.get(indexReader, "frequent") == null) {
+                    cache.put(indexReader, "frequent", "v");
+                } else {
+                    hits++;
+                }
+                // keep adding rare keys
+                cache.put(indexReader, "other" + i, "v");
+            }
+
+            assertEquals(99, hits);
+            assertTrue(cache.getEvictions() > 0L);
+        } finally {
+            indexReader.close();
+        }
+
+        directory.close();
+        analyzer.close();
+    }
+}
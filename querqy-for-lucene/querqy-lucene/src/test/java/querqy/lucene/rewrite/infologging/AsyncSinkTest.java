@@ -0,0 +1,227 @@
+package querqy.lucene.rewrite.infologging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+import querqy.rewrite.SearchEngineRequestAdapter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class AsyncSinkTest {
+
+    @Test
+    public void testThatRecordsOfARequestAreExported() throws Exception {
+        final CollectingExporter exporter = new CollectingExporter();
+        final AsyncSink sink = new AsyncSink(exporter, 16, 4, 10L, "test-writer");
+
+        final SearchEngineRequestAdapter request = request("laptop");
+        sink.log(List.of(Map.of("message", "m1")), "r1", request);
+        sink.log(Collections.emptyList(), "r2", request);
+        sink.endOfRequest(request);
+
+        // requests without messages are not exported
+        sink.endOfRequest(request("other"));
+
+        sink.close();
+
+        assertEquals(1, exporter.records.size());
+        final InfoLoggingRecord record = exporter.records.get(0);
+        assertEquals("laptop", record.getQuery());
+        assertEquals(2, record.getMessages().size());
+        assertEquals("r1", record.getMessages().get(0).get("rewriterId"));
+        assertEquals(List.of(Map.of("message", "m1")), record.getMessages().get(0).get("actions"));
+        assertEquals(Map.of("rewriterId", "r2"), record.getMessages().get(1));
+
+        assertEquals(1L, sink.getAcceptedCount());
+        assertEquals(1L, sink.getExportedCount());
+        assertEquals(0L, sink.getDroppedCount());
+        assertTrue(exporter.closed);
+    }
+
+    @Test
+    public void testThatRecordsAreExportedInBatches() throws Exception {
+        final CollectingExporter exporter = new CollectingExporter();
+        final AsyncSink sink = new AsyncSink(exporter, 64, 4, 60_000L, "test-writer");
+
+        for (int i = 0; i < 8; i++) {
+            logRequest(sink, "q" + i);
+        }
+
+        // two full batches wake up the writer before the flush interval
+        exporter.awaitRecords(8);
+        sink.close();
+
+        assertEquals(8, exporter.records.size());
+        assertTrue(exporter.batchSizes.stream().allMatch(size -> size <= 4));
+        for (int i = 0; i < 8; i++) {
+            assertEquals("q" + i, exporter.records.get(i).getQuery());
+        }
+    }
+
+    @Test
+    public void testThatRecordsAreDroppedIfBufferIsFull() throws Exception {
+        final CountDownLatch exporting = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CollectingExporter exporter = new CollectingExporter() {
+            @Override
+            public void export(final List<InfoLoggingRecord> records) throws IOException {
+                exporting.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    throw new IOException(e);
+                }
+                super.export(records);
+            }
+        };
+
+        final AsyncSink sink = new AsyncSink(exporter, 2, 1, 10L, "test-writer");
+        logRequest(sink, "q0");
+        assertTrue(exporting.await(10, TimeUnit.SECONDS));
+
+        // the writer is blocked with q0, the buffer can hold two more requests
+        for (int i = 1; i <= 4; i++) {
+            logRequest(sink, "q" + i);
+        }
+
+        assertEquals(3L, sink.getAcceptedCount());
+        assertEquals(2L, sink.getDroppedCount());
+
+        release.countDown();
+        sink.close();
+
+        assertEquals(3L, sink.getExportedCount());
+        assertEquals(3, exporter.records.size());
+    }
+
+    @Test
+    public void testThatExportFailuresAreCounted() throws Exception {
+        final AsyncSink sink = new AsyncSink(records -> {
+            throw new IOException("unavailable");
+        }, 16, 4, 10L, "test-writer");
+
+        logRequest(sink, "q1");
+        logRequest(sink, "q2");
+        sink.close();
+
+        assertEquals(2L, sink.getFailedExportCount());
+        assertEquals(0L, sink.getExportedCount());
+        assertNotNull(sink.getLastExportFailure());
+
+        // closed sinks drop messages
+        logRequest(sink, "q3");
+        assertEquals(1L, sink.getDroppedCount());
+    }
+
+    @Test
+    public void testThatSinksDontShareMessagesOfARequest() throws Exception {
+        final CollectingExporter exporter1 = new CollectingExporter();
+        final CollectingExporter exporter2 = new CollectingExporter();
+        final AsyncSink sink1 = new AsyncSink(exporter1, 16, 4, 10L, "test-writer-1");
+        final AsyncSink sink2 = new AsyncSink(exporter2, 16, 4, 10L, "test-writer-2");
+
+        final SearchEngineRequestAdapter request = request("laptop");
+        sink1.log(Collections.emptyList(), "r1", request);
+        sink2.log(Collections.emptyList(), "r2", request);
+        sink1.endOfRequest(request);
+        sink2.endOfRequest(request);
+
+        sink1.close();
+        sink2.close();
+
+        assertEquals(1, exporter1.records.size());
+        assertEquals(List.of(Map.of("rewriterId", "r1")), exporter1.records.get(0).getMessages());
+        assertEquals(1, exporter2.records.size());
+        assertEquals(List.of(Map.of("rewriterId", "r2")), exporter2.records.get(0).getMessages());
+    }
+
+    @Test
+    public void testThatExporterIsNotClosedWhileExporting() throws Exception {
+        final CountDownLatch exporting = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CollectingExporter exporter = new CollectingExporter() {
+            @Override
+            public void export(final List<InfoLoggingRecord> records) throws IOException {
+                exporting.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                assertFalse(closed);
+                super.export(records);
+            }
+        };
+        final AsyncSink sink = new AsyncSink(exporter, 16, 1, 10L, "test-writer");
+        logRequest(sink, "q1");
+        assertTrue(exporting.await(10, TimeUnit.SECONDS));
+
+        final Thread closing = new Thread(() -> {
+            try {
+                sink.close();
+            } catch (final IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        closing.start();
+        closing.join(100L);
+        assertFalse(exporter.closed);
+
+        release.countDown();
+        closing.join(10_000L);
+        assertEquals(1, exporter.records.size());
+        assertTrue(exporter.closed);
+    }
+
+    private static void logRequest(final AsyncSink sink, final String query) {
+        final SearchEngineRequestAdapter request = request(query);
+        sink.log(Collections.emptyList(), "r1", request);
+        sink.endOfRequest(request);
+    }
+
+    private static SearchEngineRequestAdapter request(final String query) {
+        final SearchEngineRequestAdapter request = mock(SearchEngineRequestAdapter.class);
+        final Map<String, Object> context = new HashMap<>();
+        when(request.getContext()).thenReturn(context);
+        when(request.getRequestParam("q")).thenReturn(Optional.of(query));
+        return request;
+    }
+
+    static class CollectingExporter implements InfoLoggingExporter {
+
+        final List<InfoLoggingRecord> records = Collections.synchronizedList(new ArrayList<>());
+        final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        volatile boolean closed = false;
+
+        @Override
+        public void export(final List<InfoLoggingRecord> records) throws IOException {
+            batchSizes.add(records.size());
+            this.records.addAll(records);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        void awaitRecords(final int count) throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + 10_000L;
+            while (records.size() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5L);
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package querqy.lucene.rewrite.infologging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class BoundedRingBufferTest {
+
+    @Test
+    public void testThatCapacityIsRoundedUpToPowerOfTwo() {
+        assertEquals(1, new BoundedRingBuffer<>(1).getCapacity());
+        assertEquals(4, new BoundedRingBuffer<>(3).getCapacity());
+        assertEquals(4, new BoundedRingBuffer<>(4).getCapacity());
+        assertEquals(8, new BoundedRingBuffer<>(5).getCapacity());
+    }
+
+    @Test
+    public void testThatElementsArePolledInOrderAndOfferFailsWhenFull() {
+        final BoundedRingBuffer<String> buffer = new BoundedRingBuffer<>(2);
+
+        assertEquals(0L, buffer.offer("a"));
+        assertEquals(1L, buffer.offer("b"));
+        assertEquals(-1L, buffer.offer("c"));
+        assertEquals(2, buffer.size());
+
+        assertEquals("a", buffer.poll());
+        assertEquals(2L, buffer.offer("d"));
+        assertEquals("b", buffer.poll());
+        assertEquals("d", buffer.poll());
+        assertNull(buffer.poll());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testDrainTo() {
+        final BoundedRingBuffer<Integer> buffer = new BoundedRingBuffer<>(8);
+        for (int i = 0; i < 5; i++) {
+            buffer.offer(i);
+        }
+
+        final List<Integer> target = new ArrayList<>();
+        assertEquals(3, buffer.drainTo(target, 3));
+        assertEquals(List.of(0, 1, 2), target);
+        assertEquals(2, buffer.drainTo(target, 3));
+        assertEquals(0, buffer.drainTo(target, 3));
+        assertEquals(List.of(0, 1, 2, 3, 4), target);
+    }
+
+    @Test
+    public void testThatNoElementIsLostOrDuplicatedWithConcurrentProducers() throws Exception {
+        final BoundedRingBuffer<Integer> buffer = new BoundedRingBuffer<>(64);
+        final int producers = 4;
+        final int perProducer = 20_000;
+
+        final ExecutorService executor = Executors.newFixedThreadPool(producers);
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            final int offset = p * perProducer;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    while (buffer.offer(offset + i) < 0L) {
+                        Thread.yield();
+                    }
+                }
+            }));
+        }
+
+        final Set<Integer> consumed = new HashSet<>();
+        while (consumed.size() < producers * perProducer) {
+            final Integer element = buffer.poll();
+            if (element == null) {
+                Thread.yield();
+            } else {
+                assertTrue(consumed.add(element));
+            }
+        }
+
+        for (final Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertNull(buffer.poll());
+    }
+}
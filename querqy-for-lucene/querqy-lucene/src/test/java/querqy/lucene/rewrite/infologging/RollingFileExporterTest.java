@@ -0,0 +1,55 @@
+package querqy.lucene.rewrite.infologging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class RollingFileExporterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testThatRecordsAreWrittenAsJsonLines() throws Exception {
+        final Path file = folder.getRoot().toPath().resolve("logs").resolve("querqy.log");
+        final RollingFileExporter exporter = new RollingFileExporter(file, 1_000_000L, 2);
+
+        exporter.export(List.of(
+                new InfoLoggingRecord(1L, "a b", List.of(Map.of("rewriterId", "r1"))),
+                new InfoLoggingRecord(2L, null, List.of(Map.of("rewriterId", "r2")))));
+
+        final List<String> lines = Files.readAllLines(file, UTF_8);
+        assertEquals(List.of(
+                "{\"timestamp\":1,\"query\":\"a b\",\"messages\":[{\"rewriterId\":\"r1\"}]}",
+                "{\"timestamp\":2,\"messages\":[{\"rewriterId\":\"r2\"}]}"), lines);
+    }
+
+    @Test
+    public void testThatFilesAreRolled() throws Exception {
+        final Path file = folder.getRoot().toPath().resolve("querqy.log");
+        final String line = "{\"timestamp\":1,\"query\":\"q\",\"messages\":[{\"rewriterId\":\"r1\"}]}\n";
+        final RollingFileExporter exporter = new RollingFileExporter(file, line.length() * 2L, 2);
+
+        for (int i = 0; i < 7; i++) {
+            exporter.export(List.of(new InfoLoggingRecord(1L, "q", List.of(Map.of("rewriterId", "r1")))));
+        }
+
+        // 7 lines, 2 per file: 1 in the current file, 2 in each of the rolled files, the oldest 2 lines are deleted
+        assertEquals(1, Files.readAllLines(file, UTF_8).size());
+        assertEquals(2, Files.readAllLines(exporter.rolledFile(1), UTF_8).size());
+        assertEquals(2, Files.readAllLines(exporter.rolledFile(2), UTF_8).size());
+        assertFalse(Files.exists(exporter.rolledFile(3)));
+        assertTrue(Files.exists(file));
+    }
+}
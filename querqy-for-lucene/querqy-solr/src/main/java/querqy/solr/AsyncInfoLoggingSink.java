@@ -0,0 +1,115 @@
+package querqy.solr;
+
+import org.apache.lucene.util.ResourceLoader;
+import org.apache.solr.common.util.NamedList;
+import querqy.lucene.rewrite.infologging.AsyncSink;
+import querqy.lucene.rewrite.infologging.InfoLoggingExporter;
+import querqy.lucene.rewrite.infologging.RollingFileExporter;
+import querqy.rewrite.SearchEngineRequestAdapter;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * <p>A sink that writes the info logging messages on a background thread so that logging doesn't add latency to the
+ * request (see {@link AsyncSink}). By default, the messages of each request are appended as a JSON line to a rolling
+ * file. A custom {@link InfoLoggingExporter} can be configured instead:</p>
+ *
+ * <pre>
+ * &lt;lst name="infoLogging"&gt;
+ *   &lt;lst name="sink"&gt;
+ *     &lt;str name="id"&gt;analytics&lt;/str&gt;
+ *     &lt;str name="class"&gt;querqy.solr.AsyncInfoLoggingSink&lt;/str&gt;
+ *     &lt;!-- defaults to the Solr log directory (solr.log.dir) --&gt;
+ *     &lt;str name="directory"&gt;/var/log/querqy&lt;/str&gt;
+ *     &lt;str name="fileName"&gt;querqy-info-logging.log&lt;/str&gt;
+ *     &lt;int name="maxFileSizeMB"&gt;100&lt;/int&gt;
+ *     &lt;int name="maxFiles"&gt;10&lt;/int&gt;
+ *     &lt;!-- or: &lt;str name="exporter"&gt;com.example.MyExporter&lt;/str&gt; --&gt;
+ *     &lt;int name="capacity"&gt;8192&lt;/int&gt;
+ *     &lt;int name="batchSize"&gt;256&lt;/int&gt;
+ *     &lt;int name="flushIntervalMillis"&gt;1000&lt;/int&gt;
+ *   &lt;/lst&gt;
+ * &lt;/lst&gt;
+ * </pre>
+ *
+ * <p>Messages are dropped if the buffer of <code>capacity</code> requests is full. The numbers of accepted, dropped,
+ * exported and failed requests are available as metrics.</p>
+ */
+public class AsyncInfoLoggingSink implements ConfigurableSink {
+
+    public static final String CONF_DIRECTORY = "directory";
+    public static final String CONF_FILE_NAME = "fileName";
+    public static final String CONF_MAX_FILE_SIZE_MB = "maxFileSizeMB";
+    public static final String CONF_MAX_FILES = "maxFiles";
+    public static final String CONF_EXPORTER = "exporter";
+    public static final String CONF_CAPACITY = "capacity";
+    public static final String CONF_BATCH_SIZE = "batchSize";
+    public static final String CONF_FLUSH_INTERVAL_MILLIS = "flushIntervalMillis";
+
+    public static final String DEFAULT_FILE_NAME = "querqy-info-logging.log";
+    public static final int DEFAULT_MAX_FILE_SIZE_MB = 100;
+    public static final int DEFAULT_MAX_FILES = 10;
+
+    private AsyncSink delegate = null;
+
+    @Override
+    public void init(final NamedList<?> config, final ResourceLoader loader) throws IOException {
+
+        final String exporterClass = (String) config.get(CONF_EXPORTER);
+        final InfoLoggingExporter exporter;
+
+        if (exporterClass != null) {
+            exporter = loader.newInstance(exporterClass, InfoLoggingExporter.class);
+        } else {
+            String directory = (String) config.get(CONF_DIRECTORY);
+            if (directory == null) {
+                directory = System.getProperty("solr.log.dir");
+            }
+            if (directory == null) {
+                throw new IllegalArgumentException("Missing config property " + CONF_DIRECTORY + " for sink "
+                        + config.get("id"));
+            }
+            final String fileName = (String) config.get(CONF_FILE_NAME);
+            exporter = new RollingFileExporter(Paths.get(directory, fileName == null ? DEFAULT_FILE_NAME : fileName),
+                    getInt(config, CONF_MAX_FILE_SIZE_MB, DEFAULT_MAX_FILE_SIZE_MB) * 1024L * 1024L,
+                    getInt(config, CONF_MAX_FILES, DEFAULT_MAX_FILES));
+        }
+
+        delegate = new AsyncSink(exporter,
+                getInt(config, CONF_CAPACITY, AsyncSink.DEFAULT_CAPACITY),
+                getInt(config, CONF_BATCH_SIZE, AsyncSink.DEFAULT_BATCH_SIZE),
+                getInt(config, CONF_FLUSH_INTERVAL_MILLIS, (int) AsyncSink.DEFAULT_FLUSH_INTERVAL_MILLIS),
+                "querqy-info-logging-" + config.get("id"));
+    }
+
+    private static int getInt(final NamedList<?> config, final String name, final int defaultValue) {
+        final Object value = config.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        return value instanceof Number ? ((Number) value).intValue() : Integer.parseInt(value.toString().trim());
+    }
+
+    @Override
+    public void log(final Object message, final String rewriterId,
+                    final SearchEngineRequestAdapter searchEngineRequestAdapter) {
+        delegate.log(message, rewriterId, searchEngineRequestAdapter);
+    }
+
+    @Override
+    public void endOfRequest(final SearchEngineRequestAdapter searchEngineRequestAdapter) {
+        delegate.endOfRequest(searchEngineRequestAdapter);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (delegate != null) {
+            delegate.close();
+        }
+    }
+
+    public AsyncSink getDelegate() {
+        return delegate;
+    }
+}
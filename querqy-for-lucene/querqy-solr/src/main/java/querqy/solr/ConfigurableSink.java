@@ -0,0 +1,29 @@
+package querqy.solr;
+
+import org.apache.lucene.util.ResourceLoader;
+import org.apache.solr.common.util.NamedList;
+import querqy.lucene.rewrite.infologging.Sink;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A {@link Sink} that gets the configuration of its <code>sink</code> element in the <code>infoLogging</code> section of
+ * the {@link QuerqyRewriterRequestHandler} and that is closed together with the core.
+ */
+public interface ConfigurableSink extends Sink, Closeable {
+
+    /**
+     * Initialise this sink.
+     *
+     * @param config The configuration of the sink element, including its 'id' and 'class'
+     * @param loader A resource loader for loading classes and resources
+     * @throws IOException if a resource cannot be loaded
+     */
+    void init(NamedList<?> config, ResourceLoader loader) throws IOException;
+
+    @Override
+    default void close() throws IOException {
+    }
+
+}
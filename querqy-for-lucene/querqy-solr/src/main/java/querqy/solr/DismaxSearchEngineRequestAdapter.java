@@ -9,6 +9,7 @@ import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.BoostQuery;
 import org.apache.lucene.search.Query;
+import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.AppendedSolrParams;
 import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.params.MapSolrParams;
@@ -30,7 +31,9 @@ import querqy.lucene.PhraseBoosting;
 import querqy.lucene.PhraseBoosting.PhraseBoostFieldParams;
 import querqy.lucene.QuerySimilarityScoring;
 import querqy.lucene.LuceneSearchEngineRequestAdapter;
+import querqy.lucene.rewrite.DocumentFrequencyCorrection.TermLookup;
 import querqy.lucene.rewrite.SearchFieldsAndBoosting;
+import querqy.lucene.rewrite.cache.DocumentFrequencyCache;
 import querqy.lucene.rewrite.cache.TermQueryCache;
 import querqy.lucene.rewrite.infologging.InfoLogging;
 import querqy.lucene.rewrite.infologging.InfoLoggingContext;
@@ -38,6 +41,7 @@ import querqy.model.ParametrizedRawQuery;
 import querqy.model.QuerqyQuery;
 import querqy.model.RawQuery;
 import querqy.model.StringRawQuery;
+import querqy.rewrite.RewriteBudget;
 import querqy.rewrite.RewriteLoggingConfig;
 import querqy.parser.QuerqyParser;
 import querqy.rewrite.RewriteChain;
@@ -92,6 +96,7 @@ public class DismaxSearchEngineRequestAdapter implements LuceneSearchEngineReque
     private final SolrParams solrParams;
     private final SolrQueryRequest request;
     private final TermQueryCache termQueryCache;
+    private final DocumentFrequencyCache documentFrequencyCache;
     private final QuerqyParser querqyParser;
     private final RewriteChain rewriteChain;
     private final List<FieldParams> allPhraseFields;
@@ -104,6 +109,7 @@ public class DismaxSearchEngineRequestAdapter implements LuceneSearchEngineReque
 
     private final RewriteLoggingParameters rewriteLoggingParameter;
     private final RewriteLoggingConfig rewriteLoggingConfig;
+    private final RewriteBudget rewriteBudget;
 
     private Map<String, String> additionalParams = null;
 
@@ -112,7 +118,18 @@ public class DismaxSearchEngineRequestAdapter implements LuceneSearchEngineReque
                                             final QuerqyParser querqyParser, final RewriteChain rewriteChain,
                                             final InfoLogging infoLogging,
                                             final TermQueryCache termQueryCache) {
+        this(qParser, request, queryString, solrParams, querqyParser, rewriteChain, infoLogging, termQueryCache,
+                null);
+    }
+
+    public DismaxSearchEngineRequestAdapter(final QParser qParser, final SolrQueryRequest request,
+                                            final String queryString, final SolrParams solrParams,
+                                            final QuerqyParser querqyParser, final RewriteChain rewriteChain,
+                                            final InfoLogging infoLogging,
+                                            final TermQueryCache termQueryCache,
+                                            final DocumentFrequencyCache documentFrequencyCache) {
         this.qParser = qParser;
+        this.documentFrequencyCache = documentFrequencyCache;
         this.userQueryString = queryString;
         this.solrParams = solrParams;
         this.termQueryCache = termQueryCache;
@@ -126,6 +143,7 @@ public class DismaxSearchEngineRequestAdapter implements LuceneSearchEngineReque
         this.rewriteLoggingParameter = RewriteLoggingParameters.of(solrParams.get(REWRITE_LOGGING_PARAM_KEY, "OFF"));
         this.infoLoggingContext = createInfoLoggingContext(infoLogging);
         this.rewriteLoggingConfig = createRewriteLoggingConfig(infoLogging);
+        this.rewriteBudget = createRewriteBudget(solrParams);
 
         final int ps0 = solrParams.getInt(PS, 0);
         final int ps2 = solrParams.getInt(PS2, ps0);
@@ -181,6 +199,15 @@ public class DismaxSearchEngineRequestAdapter implements LuceneSearchEngineReque
         return builder.build();
     }
 
+    private static RewriteBudget createRewriteBudget(final SolrParams solrParams) {
+        try {
+            return RewriteBudget.of(solrParams.getInt(REWRITE_TIME_BUDGET), solrParams.getInt(REWRITE_STEP_BUDGET));
+        } catch (final IllegalArgumentException e) {
+            throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Invalid value for " + REWRITE_TIME_BUDGET
+                    + " or " + REWRITE_STEP_BUDGET + ": " + e.getMessage(), e);
+        }
+    }
+
     private InfoLoggingContext createInfoLoggingContext(final InfoLogging infoLogging) {
         if (infoLogging == null || RewriteLoggingParameters.OFF.equals(rewriteLoggingParameter)) {
             return null;
@@ -213,6 +240,11 @@ public class DismaxSearchEngineRequestAdapter implements LuceneSearchEngineReque
         return Optional.ofNullable(termQueryCache);
     }
 
+    @Override
+    public Optional<DocumentFrequencyCache> getDocumentFrequencyCache() {
+        return Optional.ofNullable(documentFrequencyCache);
+    }
+
     @Override
     public boolean addQuerqyBoostQueriesToMainQuery() {
         return QBOOST_METHOD_OPT.equals(solrParams.get(QBOOST_METHOD, QBOOST_METHOD_DEFAULT));
@@ -227,6 +259,20 @@ public class DismaxSearchEngineRequestAdapter implements LuceneSearchEngineReque
         return getSimilarityScoringParam(USER_QUERY_SIMILARITY_SCORE);
     }
 
+    @Override
+    public Optional<TermLookup> getDocumentFrequencyCorrectionTermLookup() {
+        return getRequestParam(DFC_TERM_LOOKUP).map(termLookup -> {
+            switch (termLookup) {
+                case DFC_TERM_LOOKUP_PER_TERM:
+                    return TermLookup.PER_TERM;
+                case DFC_TERM_LOOKUP_SEGMENT_PARALLEL:
+                    return TermLookup.SEGMENT_PARALLEL;
+                default:
+                    throw new IllegalArgumentException("Invalid value for " + DFC_TERM_LOOKUP + ": " + termLookup);
+            }
+        });
+    }
+
     @Override
     public Optional<Float> getUserQueryWeight() {
         return getFloatRequestParam(USER_QUERY_BOOST);
@@ -651,6 +697,11 @@ public class DismaxSearchEngineRequestAdapter implements LuceneSearchEngineReque
         return rewriteLoggingConfig;
     }
 
+    @Override
+    public RewriteBudget getRewriteBudget() {
+        return rewriteBudget;
+    }
+
 //
 //    private static class LoggingAndDebugHandler {
 //
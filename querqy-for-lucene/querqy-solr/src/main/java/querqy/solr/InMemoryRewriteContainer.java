@@ -40,10 +40,13 @@ public class InMemoryRewriteContainer extends RewriterContainer<SolrResourceLoad
         store.remove(rewriterId);
 
         final Map<String, RewriterFactoryContext> newRewriters = new HashMap<>(rewriters);
-        if ((newRewriters.remove(rewriterId) == null) && !store.containsKey(rewriterId)) {
+        final RewriterFactoryContext removed = newRewriters.remove(rewriterId);
+        if ((removed == null) && !store.containsKey(rewriterId)) {
             throw new SolrException(NOT_FOUND, "No such rewriter: " + rewriterId);
         }
         rewriters = newRewriters;
+        releaseRewriter(removed);
+        invalidateCaches();
     }
 
     @Override
@@ -156,9 +156,10 @@ public class IndexRewriterContainer extends RewriterContainer<SolrResourceLoader
         final Map<String, RewriterFactoryContext> newRewriters = new HashMap<>(rewriters);
         previouslyLoadedRewriters.forEach(rewriterId -> {
             LOGGER.info("Unloading rewriter {} in core {}", rewriterId, core.getName());
-            newRewriters.remove(rewriterId);
+            releaseRewriter(newRewriters.remove(rewriterId));
         });
         rewriters = newRewriters;
+        invalidateCaches();
 
         notifyRewritersChangeListener();
     }
@@ -241,10 +242,13 @@ public class IndexRewriterContainer extends RewriterContainer<SolrResourceLoader
         });
 
         final Map<String, RewriterFactoryContext> newRewriters = new HashMap<>(rewriters);
-        if ((newRewriters.remove(rewriterId) == null)) {
+        final RewriterFactoryContext removed = newRewriters.remove(rewriterId);
+        if ((removed == null)) {
             throw new SolrException(NOT_FOUND, "No such rewriter: " + rewriterId);
         }
         rewriters = newRewriters;
+        releaseRewriter(removed);
+        invalidateCaches();
 
         notifyRewritersChangeListener();
     }
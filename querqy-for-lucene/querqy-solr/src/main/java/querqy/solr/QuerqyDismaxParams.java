@@ -120,6 +120,24 @@ public interface QuerqyDismaxParams {
      * implementation is integrated into the score of a Querqy boost query
      */
     String QBOOST_SIMILARITY_SCORE = "qboost.similarityScore";
+
+    /**
+     * Control how the document frequency correction ({@link #SIMILARITY_SCORE_DFC}) looks up the terms in the index.
+     * Accepts "perTerm" (look up each term in each segment separately) and "segmentParallel" (sort the terms and
+     * visit each segment once, processing the segments in parallel on the searcher's executor). Default: "perTerm"
+     */
+    String DFC_TERM_LOOKUP = "dfc.termLookup";
+
+    /**
+     * A possible value of {@link #DFC_TERM_LOOKUP}: look up each term in each segment separately.
+     */
+    String DFC_TERM_LOOKUP_PER_TERM = "perTerm";
+
+    /**
+     * A possible value of {@link #DFC_TERM_LOOKUP}: sort the terms by field and value, seek a single
+     * {@link org.apache.lucene.index.TermsEnum} per field and segment and process the segments in parallel.
+     */
+    String DFC_TERM_LOOKUP_SEGMENT_PARALLEL = "segmentParallel";
     /**
      * A global weight factor to be applied to positive Querqy boost queries (multiplied with the boosts of individual
      * positive boost queries.) Default: 1.0.
@@ -205,4 +223,17 @@ public interface QuerqyDismaxParams {
      * Turn info logging on/off. Default = 'off'
      */
     String INFO_LOGGING = "querqy.infoLogging";
+
+    /**
+     * The maximum time in milliseconds that Querqy may spend on parsing and rewriting the query. Rewriters that would
+     * be applied after this time are skipped and some rewriters stop adding optional rewrites. Default: no limit
+     */
+    String REWRITE_TIME_BUDGET = "querqy.rewriteBudget.time";
+
+    /**
+     * The maximum number of steps for rewriting the query. Applying a rewriter is one step, rewriters can consume
+     * further steps for optional work, for example, the common rules rewriter consumes one step per rule lookup and one
+     * step per applied rule. Default: no limit
+     */
+    String REWRITE_STEP_BUDGET = "querqy.rewriteBudget.steps";
 }
@@ -11,6 +11,7 @@ import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.request.SolrRequestInfo;
 import org.apache.solr.search.ExtendedQuery;
 import org.apache.solr.search.QParser;
 import org.apache.solr.search.RankQuery;
@@ -19,6 +20,7 @@ import org.apache.solr.search.WrappedQuery;
 import querqy.lucene.LuceneQueries;
 import querqy.lucene.QueryParsingController;
 import querqy.lucene.LuceneSearchEngineRequestAdapter;
+import querqy.lucene.rewrite.cache.DocumentFrequencyCache;
 import querqy.lucene.rewrite.cache.TermQueryCache;
 import querqy.lucene.rewrite.infologging.InfoLogging;
 import querqy.parser.QuerqyParser;
@@ -32,6 +34,12 @@ import java.util.Optional;
 
 public class QuerqyDismaxQParser extends QParser {
 
+    /**
+     * The response header entry that is set to true if rewriting was degraded because the rewrite budget (see
+     * {@link QuerqyDismaxParams#REWRITE_TIME_BUDGET} and {@link QuerqyDismaxParams#REWRITE_STEP_BUDGET}) was exhausted.
+     */
+    public static final String RESPONSE_HEADER_REWRITE_DEGRADED = "querqyRewriteDegraded";
+
     protected final QueryParsingController controller;
     protected final DismaxSearchEngineRequestAdapter requestAdapter;
 
@@ -58,6 +66,28 @@ public class QuerqyDismaxQParser extends QParser {
                                final SolrQueryRequest req, final QuerqyParser querqyParser,
                                final RewriteChain rewriteChain, final InfoLogging infoLogging,
                                final TermQueryCache termQueryCache) {
+        this(qstr, localParams, params, req, querqyParser, rewriteChain, infoLogging, termQueryCache, null);
+    }
+
+    /**
+     * Constructor for the QParser
+     *
+     * @param qstr        The part of the query string specific to this parser
+     * @param localParams The set of parameters that are specific to this QParser.  See http://wiki.apache.org/solr/LocalParams
+     * @param params      The rest of the {@link SolrParams}
+     * @param req         The original {@link SolrQueryRequest}
+     * @param querqyParser The Querqy query parser to be applied to the input query string
+     * @param rewriteChain The chain of rewriters to be applied to this request
+     * @param infoLogging The info logging object for this request
+     * @param termQueryCache The term query cache.
+     * @param documentFrequencyCache The cache of term statistics. Can be null.
+     *
+     */
+    public QuerqyDismaxQParser(final String qstr, final SolrParams localParams, final SolrParams params,
+                               final SolrQueryRequest req, final QuerqyParser querqyParser,
+                               final RewriteChain rewriteChain, final InfoLogging infoLogging,
+                               final TermQueryCache termQueryCache,
+                               final DocumentFrequencyCache documentFrequencyCache) {
         super(qstr, localParams, params, req);
         final String q = Objects.requireNonNull(qstr).trim();
 
@@ -69,7 +99,8 @@ public class QuerqyDismaxQParser extends QParser {
         this.querqyParser = querqyParser;
 
         requestAdapter = new DismaxSearchEngineRequestAdapter(this, req, userQueryString,
-                SolrParams.wrapDefaults(localParams, params), querqyParser, rewriteChain, infoLogging, termQueryCache);
+                SolrParams.wrapDefaults(localParams, params), querqyParser, rewriteChain, infoLogging, termQueryCache,
+                documentFrequencyCache);
 
 
         controller = createQueryParsingController();
@@ -87,6 +118,9 @@ public class QuerqyDismaxQParser extends QParser {
         try {
 
             luceneQueries = controller.process();
+            if (controller.hasDegradedRewriting()) {
+                markRewriteDegraded();
+            }
 
             processedQuery = maybeWrapQuery(luceneQueries.mainQuery);
 
@@ -98,6 +132,16 @@ public class QuerqyDismaxQParser extends QParser {
 
     }
 
+    protected void markRewriteDegraded() {
+        final SolrRequestInfo requestInfo = SolrRequestInfo.getRequestInfo();
+        if (requestInfo != null && requestInfo.getRsp() != null) {
+            final NamedList<Object> responseHeader = requestInfo.getRsp().getResponseHeader();
+            if (responseHeader != null && responseHeader.get(RESPONSE_HEADER_REWRITE_DEGRADED) == null) {
+                responseHeader.add(RESPONSE_HEADER_REWRITE_DEGRADED, true);
+            }
+        }
+    }
+
     @Override
     public Query getQuery() throws SyntaxError {
         if (query==null) {
@@ -3,6 +3,7 @@ package querqy.solr;
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.search.QParser;
+import querqy.lucene.rewrite.cache.DocumentFrequencyCache;
 import querqy.lucene.rewrite.cache.TermQueryCache;
 import querqy.lucene.rewrite.infologging.InfoLogging;
 import querqy.rewrite.RewriteChain;
@@ -20,5 +21,15 @@ public class QuerqyDismaxQParserPlugin extends QuerqyQParserPlugin {
                 createQuerqyParser(qstr, localParams, params, req), rewriteChain, infoLogging, termQueryCache);
     }
 
+    @Override
+    public QParser createParser(final String qstr, final SolrParams localParams, final SolrParams params,
+                                final SolrQueryRequest req, final RewriteChain rewriteChain,
+                                final InfoLogging infoLogging, final TermQueryCache termQueryCache,
+                                final DocumentFrequencyCache documentFrequencyCache) {
+        return new QuerqyDismaxQParser(qstr, localParams, params, req,
+                createQuerqyParser(qstr, localParams, params, req), rewriteChain, infoLogging, termQueryCache,
+                documentFrequencyCache);
+    }
+
 
 }
@@ -5,6 +5,7 @@ import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.request.SolrQueryRequest;
 import querqy.lucene.JsonQueryParsingController;
 import querqy.lucene.QueryParsingController;
+import querqy.lucene.rewrite.cache.DocumentFrequencyCache;
 import querqy.lucene.rewrite.cache.TermQueryCache;
 import querqy.lucene.rewrite.infologging.InfoLogging;
 import querqy.parser.QuerqyParser;
@@ -27,6 +28,15 @@ public class QuerqyJsonQParser extends QuerqyDismaxQParser {
         super(qstr, localParams, params, req, querqyParser, rewriteChain, infoLogging, termQueryCache);
     }
 
+    public QuerqyJsonQParser(final String qstr, final SolrParams localParams, final SolrParams params,
+                             final SolrQueryRequest req, final QuerqyParser querqyParser,
+                             final RewriteChain rewriteChain, final InfoLogging infoLogging,
+                             final TermQueryCache termQueryCache,
+                             final DocumentFrequencyCache documentFrequencyCache) {
+        super(qstr, localParams, params, req, querqyParser, rewriteChain, infoLogging, termQueryCache,
+                documentFrequencyCache);
+    }
+
     public String getQueryParserName() {
         if (super.localParams != null) {
             final String queryParser = super.localParams.get(FIELD_TYPE);
@@ -1,20 +1,26 @@
 package querqy.solr;
 
+import com.codahale.metrics.Gauge;
 import org.apache.lucene.util.ResourceLoader;
 import org.apache.lucene.util.ResourceLoaderAware;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.AbstractSolrEventListener;
 import org.apache.solr.core.SolrCore;
+import org.apache.solr.metrics.SolrMetricsContext;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.request.SolrRequestHandler;
 import org.apache.solr.search.QParser;
 import org.apache.solr.search.QParserPlugin;
 import org.apache.solr.search.SolrCache;
+import org.apache.solr.search.SolrIndexSearcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import querqy.lucene.GZIPAwareResourceLoader;
 import querqy.lucene.rewrite.cache.CacheKey;
+import querqy.lucene.rewrite.cache.ConcurrentTermQueryCache;
+import querqy.lucene.rewrite.cache.DocumentFrequencyCache;
 import querqy.lucene.rewrite.cache.TermQueryCache;
 import querqy.lucene.rewrite.cache.TermQueryCacheValue;
 import querqy.lucene.rewrite.infologging.InfoLogging;
@@ -27,6 +33,7 @@ import querqy.rewrite.RewriterFactory;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static querqy.solr.RewriteLoggingParameters.PARAM_REWRITE_LOGGING_REWRITERS;
 
@@ -40,10 +47,17 @@ public abstract class QuerqyQParserPlugin extends QParserPlugin implements Resou
 
     public static final String CONF_CACHE_NAME = "termQueryCache.name";
     public static final String CONF_CACHE_UPDATE = "termQueryCache.update";
+    public static final String CONF_CACHE_SIZE = "termQueryCache.size";
+    public static final String CONF_DOCUMENT_FREQUENCY_CACHE_SIZE = "documentFrequencyCache.size";
     public static final String CONF_REWRITER_REQUEST_HANDLER = "rewriterRequestHandler";
     public static final String CONF_SKIP_UNKNOWN_REWRITERS = "skipUnknownRewriters";
     public static final String CONF_SKIP_UNKNOWN_REWRITERS_WITH_TYPO = "skipUnkownRewriters";
 
+    public static final String METRICS_SCOPE_PREFIX_DOCUMENT_FREQUENCY_CACHE = "querqyDocumentFrequencyCache.";
+
+
+    private static final RewriteChain EMPTY_REWRITE_CHAIN = new RewriteChain();
+    private static final InfoLogging EMPTY_INFO_LOGGING = new MultiSinkInfoLogging(Collections.emptyMap());
 
     protected Logger logger = LoggerFactory.getLogger(getClass());
 
@@ -52,10 +66,22 @@ public abstract class QuerqyQParserPlugin extends QParserPlugin implements Resou
     protected SolrQuerqyParserFactory querqyParserFactory = null;
     protected String termQueryCacheName = null;
     protected boolean ignoreTermQueryCacheUpdates = true;
+    protected final AtomicBoolean observingNewSearchers = new AtomicBoolean(false);
+
+    protected ConcurrentTermQueryCache nativeTermQueryCache = null;
+    protected DocumentFrequencyCache documentFrequencyCache = null;
 
     protected String rewriterRequestHandlerName = QuerqyRewriterRequestHandler.DEFAULT_HANDLER_NAME;
     protected boolean skipUnknownRewriter = false;
 
+    /**
+     * The rewrite chains per value of {@link #PARAM_REWRITERS}, invalidated when the rewriters change
+     */
+    protected final RewriteChainCache rewriteChainCache = new RewriteChainCache();
+    private volatile QuerqyRewriterRequestHandler rewriteChainCacheHandler = null;
+
+    private SolrMetricsContext solrMetricsContext = null;
+
     @Override
     public void init(final @SuppressWarnings("rawtypes") NamedList args) {
         this.initArgs = args;
@@ -99,20 +125,77 @@ public abstract class QuerqyQParserPlugin extends QParserPlugin implements Resou
         termQueryCacheName = (String) initArgs.get(CONF_CACHE_NAME);
 
         final Boolean updateCache = initArgs.getBooleanArg(CONF_CACHE_UPDATE);
-        if (termQueryCacheName == null && updateCache != null) {
+        if (termQueryCacheName == null && updateCache != null && initArgs.get(CONF_CACHE_SIZE) == null) {
             throw new IOException("Configuration property " + CONF_CACHE_NAME + " required if " + CONF_CACHE_UPDATE +
                     " is set");
         }
 
         ignoreTermQueryCacheUpdates = (updateCache != null) && !updateCache;
 
+        final Integer cacheSize = (Integer) initArgs.get(CONF_CACHE_SIZE);
+        if (cacheSize != null) {
+            if (termQueryCacheName != null) {
+                throw new IOException("Configuration properties " + CONF_CACHE_NAME + " and " + CONF_CACHE_SIZE +
+                        " cannot be combined");
+            }
+            if (ignoreTermQueryCacheUpdates) {
+                // only Solr caches can be preloaded
+                throw new IOException("Configuration property " + CONF_CACHE_NAME + " required if " +
+                        CONF_CACHE_UPDATE + " is false");
+            }
+            nativeTermQueryCache = new ConcurrentTermQueryCache(cacheSize);
+            logger.info("Using Querqy TermQueryCache of size {}", cacheSize);
+        }
+
+        final Integer documentFrequencyCacheSize = (Integer) initArgs.get(CONF_DOCUMENT_FREQUENCY_CACHE_SIZE);
+        if (documentFrequencyCacheSize != null) {
+            documentFrequencyCache = new DocumentFrequencyCache(documentFrequencyCacheSize);
+            logger.info("Using Querqy DocumentFrequencyCache of size {} per index reader",
+                    documentFrequencyCacheSize);
+        }
+
         this.querqyParserFactory = loadSolrQuerqyParserFactory(loader, initArgs);
     }
 
+    /**
+     * Registers the hits and misses of the {@link DocumentFrequencyCache} as gauges if the cache is configured. The
+     * gauges read the cache when they are reported as the metrics can be initialized before the cache is created.
+     */
+    @Override
+    public void initializeMetrics(final SolrMetricsContext parentContext, final String scope) {
+        solrMetricsContext = parentContext.getChildContext(this);
+        if (initArgs != null && initArgs.get(CONF_DOCUMENT_FREQUENCY_CACHE_SIZE) != null) {
+            final String metricsScope = METRICS_SCOPE_PREFIX_DOCUMENT_FREQUENCY_CACHE + scope;
+            final String category = Category.QUERY.toString();
+            solrMetricsContext.gauge((Gauge<Long>) () -> documentFrequencyCache == null
+                    ? 0L : documentFrequencyCache.getHits(), true, "hits", category, metricsScope);
+            solrMetricsContext.gauge((Gauge<Long>) () -> documentFrequencyCache == null
+                    ? 0L : documentFrequencyCache.getMisses(), true, "misses", category, metricsScope);
+            solrMetricsContext.gauge((Gauge<Integer>) () -> documentFrequencyCache == null
+                    ? 0 : documentFrequencyCache.getNumberOfReaders(), true, "readers", category, metricsScope);
+        }
+    }
+
+    @Override
+    public SolrMetricsContext getSolrMetricsContext() {
+        return solrMetricsContext;
+    }
+
     public abstract QParser createParser(final String qstr, final SolrParams localParams, final SolrParams params,
                                          final SolrQueryRequest req, final RewriteChain rewriteChain,
                                          final InfoLogging infoLogging, final TermQueryCache termQueryCache);
 
+    /**
+     * Create the parser, passing on the optional {@link DocumentFrequencyCache}. The default implementation ignores
+     * the cache. Subclasses that can make use of it should override this method.
+     */
+    public QParser createParser(final String qstr, final SolrParams localParams, final SolrParams params,
+                                final SolrQueryRequest req, final RewriteChain rewriteChain,
+                                final InfoLogging infoLogging, final TermQueryCache termQueryCache,
+                                final DocumentFrequencyCache documentFrequencyCache) {
+        return createParser(qstr, localParams, params, req, rewriteChain, infoLogging, termQueryCache);
+    }
+
 
     protected SolrQuerqyParserFactory loadSolrQuerqyParserFactory(final ResourceLoader loader,
                                                                   final NamedList<?> args) throws IOException {
@@ -157,77 +240,127 @@ public abstract class QuerqyQParserPlugin extends QParserPlugin implements Resou
     @Override
     public final QParser createParser(final String qstr, final SolrParams localParams, final SolrParams params,
                                       final SolrQueryRequest req) {
-        String rewritersParam = null;
-        if (localParams != null) {
-            rewritersParam = localParams.get(PARAM_REWRITERS);
-
-        }
-        if (rewritersParam == null) {
-            rewritersParam = params.get(PARAM_REWRITERS);
-        }
+        final String localRewritersParam = localParams != null ? localParams.get(PARAM_REWRITERS) : null;
+        final String rewritersParam = localRewritersParam != null
+                ? localRewritersParam
+                : params.get(PARAM_REWRITERS);
 
         final String loggingRewritersParam = params.get(PARAM_REWRITE_LOGGING_REWRITERS);
-        final boolean hasFullRewriteLogging = "*".equals(loggingRewritersParam);
-        final Set<String> loggingRewriters = new HashSet<>();
-        if (!hasFullRewriteLogging && loggingRewritersParam != null) {
-            Collections.addAll(loggingRewriters, loggingRewritersParam.split(","));
-        }
 
         final RewriteChain rewriteChain;
         final InfoLogging infoLogging;
         if (rewritersParam != null) {
 
             final QuerqyRewriterRequestHandler rewriterRequestHandler = getQuerqyRequestHandler(req.getCore());
-            final String[] rewriterIds = rewritersParam.split(",");
-            final List<RewriterFactory> factories = new ArrayList<>(rewriterIds.length);
-            final Map<String, List<Sink>> sinkMappings = new HashMap<>(rewriterIds.length);
-
-            for (final String rewriterId: rewriterIds) {
-
-                final Optional<RewriterFactoryContext> factoryOpt = rewriterRequestHandler
-                        .getRewriterFactory(rewriterId.trim());
-
-                if (factoryOpt.isPresent()) {
-                    final RewriterFactoryContext context = factoryOpt.get();
-                    factories.add(context.getRewriterFactory());
-
-                    if (hasFullRewriteLogging || loggingRewriters.contains(rewriterId)) {
-                        final List<Sink> sinks = context.getSinks();
-                        if (sinks != null && (!sinks.isEmpty())) {
-                            sinkMappings.put(rewriterId, sinks);
-                        }
-                    }
-                } else if (skipUnknownRewriter){
-                    logger.warn("Skipping unknown rewriter: {}", rewriterId);
-                } else {
-                    throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "No such rewriter: " + rewriterId);
-                }
-
-            }
-            rewriteChain = new RewriteChain(factories);
-            infoLogging = new MultiSinkInfoLogging(sinkMappings);
+            final RewriteChainCache.Entry entry = getRewriteChainCache(rewriterRequestHandler).get(rewritersParam,
+                    loggingRewritersParam,
+                    () -> assembleRewriteChain(rewriterRequestHandler, rewritersParam, loggingRewritersParam));
+            rewriteChain = entry.getRewriteChain();
+            infoLogging = entry.getInfoLogging();
 
         } else {
-            rewriteChain = new RewriteChain();
-            infoLogging = new MultiSinkInfoLogging(Collections.emptyMap()); // TODO: just use null?
+            rewriteChain = EMPTY_REWRITE_CHAIN;
+            infoLogging = EMPTY_INFO_LOGGING; // TODO: just use null?
         }
 
 
-        if (termQueryCacheName == null) {
-            return createParser(qstr, localParams, params, req, rewriteChain, infoLogging, null);
+        if (nativeTermQueryCache != null) {
+            // cached entries can depend on the index - they are only used by requests on the searcher that owns the
+            // current cache generation
+            observeNewSearchers(req);
+            return createParser(qstr, localParams, params, req, rewriteChain, infoLogging,
+                    nativeTermQueryCache.forOwner(req.getSearcher()), documentFrequencyCache);
+        } else if (termQueryCacheName == null) {
+            return createParser(qstr, localParams, params, req, rewriteChain, infoLogging, null,
+                    documentFrequencyCache);
         } else {
 
             @SuppressWarnings("unchecked")
             final SolrCache<CacheKey, TermQueryCacheValue> solrCache = req.getSearcher().getCache(termQueryCacheName);
             if (solrCache == null) {
                 logger.warn("Missing Solr cache {}", termQueryCacheName);
-                return createParser(qstr, localParams, params, req, rewriteChain, infoLogging, null);
+                return createParser(qstr, localParams, params, req, rewriteChain, infoLogging, null,
+                    documentFrequencyCache);
             } else {
                 return createParser(qstr, localParams, params, req, rewriteChain, infoLogging,
-                        new SolrTermQueryCacheAdapter(ignoreTermQueryCacheUpdates, solrCache));
+                        new SolrTermQueryCacheAdapter(ignoreTermQueryCacheUpdates, solrCache), documentFrequencyCache);
+            }
+
+        }
+    }
+
+    /**
+     * Start a new generation of the native TermQueryCache once for every new searcher. The searcher of the first
+     * request owns the initial generation.
+     */
+    private void observeNewSearchers(final SolrQueryRequest req) {
+        if (observingNewSearchers.compareAndSet(false, true)) {
+            final SolrCore core = req.getCore();
+            core.registerNewSearcherListener(new AbstractSolrEventListener(core) {
+                @Override
+                public void newSearcher(final SolrIndexSearcher newSearcher, final SolrIndexSearcher currentSearcher) {
+                    nativeTermQueryCache.nextGeneration(newSearcher);
+                }
+            });
+            nativeTermQueryCache.initGeneration(req.getSearcher());
+        }
+    }
+
+    private RewriteChainCache.Entry assembleRewriteChain(final QuerqyRewriterRequestHandler rewriterRequestHandler,
+                                                         final String rewritersParam,
+                                                         final String loggingRewritersParam) {
+
+        final boolean hasFullRewriteLogging = "*".equals(loggingRewritersParam);
+        final Set<String> loggingRewriters = new HashSet<>();
+        if (!hasFullRewriteLogging && loggingRewritersParam != null) {
+            Collections.addAll(loggingRewriters, loggingRewritersParam.split(","));
+        }
+
+        final String[] rewriterIds = rewritersParam.split(",");
+        final List<RewriterFactory> factories = new ArrayList<>(rewriterIds.length);
+        final Map<String, List<Sink>> sinkMappings = new HashMap<>(rewriterIds.length);
+
+        for (final String rewriterId: rewriterIds) {
+
+            final Optional<RewriterFactoryContext> factoryOpt = rewriterRequestHandler
+                    .getRewriterFactory(rewriterId.trim());
+
+            if (factoryOpt.isPresent()) {
+                final RewriterFactoryContext context = factoryOpt.get();
+                factories.add(context.getRewriterFactory());
+
+                if (hasFullRewriteLogging || loggingRewriters.contains(rewriterId)) {
+                    final List<Sink> sinks = context.getSinks();
+                    if (sinks != null && (!sinks.isEmpty())) {
+                        sinkMappings.put(rewriterId, sinks);
+                    }
+                }
+            } else if (skipUnknownRewriter){
+                logger.warn("Skipping unknown rewriter: {}", rewriterId);
+            } else {
+                throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "No such rewriter: " + rewriterId);
             }
 
         }
+
+        return new RewriteChainCache.Entry(
+                new RewriteChain(factories, rewriterRequestHandler.getRewriteResultCache().orElse(null),
+                        rewriterRequestHandler.getRewriteChainInstrumentation().orElse(null)),
+                new MultiSinkInfoLogging(sinkMappings));
+    }
+
+    private RewriteChainCache getRewriteChainCache(final QuerqyRewriterRequestHandler rewriterRequestHandler) {
+        if (rewriteChainCacheHandler != rewriterRequestHandler) {
+            synchronized (rewriteChainCache) {
+                if (rewriteChainCacheHandler != rewriterRequestHandler) {
+                    // start listening before we drop the chains of the previous handler
+                    rewriterRequestHandler.addRewritersChangeListener(rewriteChainCache);
+                    rewriteChainCache.invalidate();
+                    rewriteChainCacheHandler = rewriterRequestHandler;
+                }
+            }
+        }
+        return rewriteChainCache;
     }
 
     private QuerqyRewriterRequestHandler getQuerqyRequestHandler(final SolrCore core){
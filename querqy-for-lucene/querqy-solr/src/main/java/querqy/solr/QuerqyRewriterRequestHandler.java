@@ -13,6 +13,8 @@ import org.apache.solr.common.params.MultiMapSolrParams;
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.util.ContentStream;
 import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.CloseHook;
+import org.apache.solr.core.SolrInfoBean;
 import org.apache.solr.core.SolrCore;
 import org.apache.solr.core.SolrResourceLoader;
 import org.apache.solr.handler.NestedRequestHandler;
@@ -20,20 +22,33 @@ import org.apache.solr.metrics.SolrMetricsContext;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.request.SolrRequestHandler;
 import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.search.SolrIndexSearcher;
 import org.apache.solr.util.plugin.SolrCoreAware;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import querqy.lucene.contrib.rewrite.wordbreak.WordBreakCompoundRewriterFactory;
+import querqy.lucene.rewrite.infologging.AsyncSink;
 import querqy.lucene.rewrite.infologging.Sink;
+import querqy.rewrite.RewriteResultCache;
+import querqy.rewrite.metrics.LatencyRecorder;
+import querqy.rewrite.metrics.RewriteChainInstrumentation;
+import querqy.rewrite.metrics.RewriteChainMetrics;
+import querqy.rewrite.metrics.RewriterMetrics;
 import querqy.solr.explain.ExplainRewriteChainRequestHandler;
+import querqy.solr.usage.RuleUsageRequestHandler;
 
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 public class QuerqyRewriterRequestHandler implements SolrRequestHandler, NestedRequestHandler, SolrCoreAware {
 
     public static final String PARAM_ACTION = "action";
     public static final String PATH_EXPLAIN_CHAIN = "/_explain/chain";
+    public static final String PATH_RULE_USAGE = "/_usage/rules";
 
     private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
@@ -49,7 +64,7 @@ public class QuerqyRewriterRequestHandler implements SolrRequestHandler, NestedR
 
     public enum ActionParam {
 
-        SAVE, DELETE, GET;
+        SAVE, DELETE, GET, UPDATE;
 
         private final SolrParams params;
 
@@ -84,6 +99,7 @@ public class QuerqyRewriterRequestHandler implements SolrRequestHandler, NestedR
                 switch (actionParam.get()) {
                     case SAVE:
                     case DELETE:
+                    case UPDATE:
                         return actionParam;
                     default:
                         throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "HTTP POST must not be combined " +
@@ -144,6 +160,9 @@ public class QuerqyRewriterRequestHandler implements SolrRequestHandler, NestedR
             if (GET.name().equalsIgnoreCase(str)) {
                 return Optional.of(GET);
             }
+            if (UPDATE.name().equalsIgnoreCase(str)) {
+                return Optional.of(UPDATE);
+            }
 
             throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Unknown action value: " + str);
         }
@@ -155,18 +174,43 @@ public class QuerqyRewriterRequestHandler implements SolrRequestHandler, NestedR
 
     public static final String DEFAULT_HANDLER_NAME = "/querqy/rewriter";
 
+    /**
+     * Name of the configuration property that sets the maximum number of entries in the rewrite result cache. The
+     * cache is disabled if this property is not set.
+     */
+    public static final String CONF_REWRITE_RESULT_CACHE_SIZE = "rewriteResultCache.size";
+
+    /**
+     * Name of the configuration property that enables metrics per rewriter (latency percentiles, number of rewrites).
+     * The metrics are registered in the core's metrics registry under QUERY.querqyRewriter.&lt;rewriter id&gt;.
+     */
+    public static final String CONF_REWRITER_METRICS = "rewriterMetrics.enabled";
+
+    /**
+     * Name of the configuration property that enables measuring the bytes allocated per rewriter. This requires
+     * {@link #CONF_REWRITER_METRICS} and a JVM that supports measuring thread allocations.
+     */
+    public static final String CONF_REWRITER_METRICS_ALLOCATIONS = "rewriterMetrics.allocations";
+
+    static final String METRICS_SCOPE_PREFIX = "querqyRewriter.";
+    static final String METRICS_SCOPE_PREFIX_SINK = "querqyInfoLoggingSink.";
+
     private RewriterStorageType rewriterStorageType = null;
 
     private RewriterContainer<?> rewriterContainer = null;
 
+    private RewriteChainMetrics rewriteChainMetrics = null;
+
     @SuppressWarnings({"rawtypes"})
     private NamedList initArgs = null;
 
     private final ExplainRewriteChainRequestHandler explainRewriteChainRequestHandler;
+    private final RuleUsageRequestHandler ruleUsageRequestHandler;
 
     public QuerqyRewriterRequestHandler() {
         explainRewriteChainRequestHandler =
                 new ExplainRewriteChainRequestHandler(this);
+        ruleUsageRequestHandler = new RuleUsageRequestHandler(this);
     }
 
     @Override
@@ -286,6 +330,7 @@ public class QuerqyRewriterRequestHandler implements SolrRequestHandler, NestedR
 
         final SolrResourceLoader resourceLoader = core.getResourceLoader();
         Map<String, Sink> sinks = loadSinks(resourceLoader);
+        registerSinks(core, sinks);
 
         final SolrMode solrMode = resourceLoader instanceof ZkSolrResourceLoader ? CLOUD : STANDALONE;
 
@@ -307,9 +352,176 @@ public class QuerqyRewriterRequestHandler implements SolrRequestHandler, NestedR
                 break;
         }
 
+        final Integer rewriteResultCacheSize = (Integer) initArgs.get(CONF_REWRITE_RESULT_CACHE_SIZE);
+        if (rewriteResultCacheSize != null) {
+            rewriterContainer.setRewriteResultCache(new RewriteResultCache(rewriteResultCacheSize));
+            LOG.info("Using rewrite result cache of size {}", rewriteResultCacheSize);
+        }
+
+        if (Boolean.TRUE.equals(initArgs.get(CONF_REWRITER_METRICS))) {
+            final boolean measureAllocations = Boolean.TRUE.equals(initArgs.get(CONF_REWRITER_METRICS_ALLOCATIONS));
+            final SolrMetricsContext metricsContext = core.getSolrMetricsContext();
+            if (metricsContext != null) {
+                // record the latency only in the Solr timer, which also provides the rewrite count
+                rewriteChainMetrics = new RewriteChainMetrics(measureAllocations,
+                        rewriterId -> new TimerLatencyRecorder(metricsContext.timer("latency",
+                                SolrInfoBean.Category.QUERY.toString(), METRICS_SCOPE_PREFIX + rewriterId)));
+                rewriteChainMetrics.addNewRewriterListener(metrics -> registerRewriterMetrics(metricsContext, metrics));
+            } else {
+                rewriteChainMetrics = new RewriteChainMetrics(measureAllocations);
+            }
+            LOG.info("Recording rewriter metrics, allocations: {}", rewriteChainMetrics.isMeasuringAllocations());
+        }
+
+        rewriterContainer.addRewritersChangeListener(new RewriterMetricsRegistration(core));
+
         rewriterContainer.init(initArgs);
     }
 
+    private static void registerSinks(final SolrCore core, final Map<String, Sink> sinks) {
+
+        final SolrMetricsContext metricsContext = core.getSolrMetricsContext();
+        if (metricsContext != null) {
+            final String category = SolrInfoBean.Category.QUERY.toString();
+            sinks.forEach((id, sink) -> {
+                if (sink instanceof AsyncInfoLoggingSink) {
+                    final AsyncSink asyncSink = ((AsyncInfoLoggingSink) sink).getDelegate();
+                    final String scope = METRICS_SCOPE_PREFIX_SINK + id;
+                    metricsContext.gauge((Gauge<Long>) asyncSink::getAcceptedCount, true, "accepted", category,
+                            scope);
+                    metricsContext.gauge((Gauge<Long>) asyncSink::getDroppedCount, true, "dropped", category,
+                            scope);
+                    metricsContext.gauge((Gauge<Long>) asyncSink::getExportedCount, true, "exported", category,
+                            scope);
+                    metricsContext.gauge((Gauge<Long>) asyncSink::getFailedExportCount, true, "failedExports",
+                            category, scope);
+                    metricsContext.gauge((Gauge<Integer>) asyncSink::getBufferedCount, true, "buffered", category,
+                            scope);
+                }
+            });
+        }
+
+        core.addCloseHook(new CloseHook() {
+
+            @Override
+            public void preClose(final SolrCore core) {
+                // noop
+            }
+
+            @Override
+            public void postClose(final SolrCore core) {
+                for (final Sink sink : sinks.values()) {
+                    if (sink instanceof ConfigurableSink) {
+                        try {
+                            ((ConfigurableSink) sink).close();
+                        } catch (final IOException e) {
+                            LOG.warn("Could not close info logging sink", e);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Registers the suggestion cache hits and misses of word break rewriters as gauges when the rewriters are loaded.
+     * The gauges look up the rewriter when they are read, so that they report the cache of the current configuration.
+     * Removes all metrics of a rewriter when the rewriter is deleted.
+     */
+    private class RewriterMetricsRegistration implements RewriterContainer.RewritersChangeListener {
+
+        private final SolrCore core;
+        private final Set<String> registeredRewriterIds = new HashSet<>();
+
+        RewriterMetricsRegistration(final SolrCore core) {
+            this.core = core;
+        }
+
+        @Override
+        public void rewritersChanged(final SolrIndexSearcher indexSearcher,
+                                     final Set<RewriterFactoryContext> allRewriters) {
+            // registration happens in rewritersInvalidated()
+        }
+
+        @Override
+        public synchronized void rewritersInvalidated() {
+            final SolrMetricsContext metricsContext = core.getSolrMetricsContext();
+            if (metricsContext == null) {
+                return;
+            }
+            final Set<String> rewriterIds = getRewriterIds();
+            final String category = SolrInfoBean.Category.QUERY.toString();
+
+            final Set<String> deletedRewriterIds = new HashSet<>(registeredRewriterIds);
+            if (rewriteChainMetrics != null) {
+                rewriteChainMetrics.getAllRewriterMetrics().forEach(metrics ->
+                        deletedRewriterIds.add(metrics.getRewriterId()));
+            }
+            deletedRewriterIds.removeAll(rewriterIds);
+            for (final String rewriterId : deletedRewriterIds) {
+                if (rewriteChainMetrics != null) {
+                    rewriteChainMetrics.removeRewriterMetrics(rewriterId);
+                }
+                final String prefix = category + "." + METRICS_SCOPE_PREFIX + rewriterId + ".";
+                metricsContext.getMetricRegistry().removeMatching((name, metric) -> name.startsWith(prefix));
+                registeredRewriterIds.remove(rewriterId);
+            }
+
+            for (final String rewriterId : rewriterIds) {
+                if (!registeredRewriterIds.contains(rewriterId) && getWordBreakFactory(rewriterId).isPresent()) {
+                    final String scope = METRICS_SCOPE_PREFIX + rewriterId;
+                    metricsContext.gauge((Gauge<Long>) () -> getWordBreakFactory(rewriterId)
+                            .map(WordBreakCompoundRewriterFactory::getSuggestionCacheHits).orElse(0L), true,
+                            "suggestionCacheHits", category, scope);
+                    metricsContext.gauge((Gauge<Long>) () -> getWordBreakFactory(rewriterId)
+                            .map(WordBreakCompoundRewriterFactory::getSuggestionCacheMisses).orElse(0L), true,
+                            "suggestionCacheMisses", category, scope);
+                    registeredRewriterIds.add(rewriterId);
+                }
+            }
+        }
+
+        private Optional<WordBreakCompoundRewriterFactory> getWordBreakFactory(final String rewriterId) {
+            return getRewriterFactory(rewriterId)
+                    .map(RewriterFactoryContext::getRewriterFactory)
+                    .filter(WordBreakCompoundRewriterFactory.class::isInstance)
+                    .map(WordBreakCompoundRewriterFactory.class::cast);
+        }
+    }
+
+    private static void registerRewriterMetrics(final SolrMetricsContext metricsContext,
+                                                final RewriterMetrics metrics) {
+        final String scope = METRICS_SCOPE_PREFIX + metrics.getRewriterId();
+        final String category = SolrInfoBean.Category.QUERY.toString();
+        metricsContext.gauge((Gauge<Long>) metrics::getRewrites, true, "rewrites", category, scope);
+        metricsContext.gauge((Gauge<Long>) metrics::getAppliedRewrites, true, "appliedRewrites", category, scope);
+        metricsContext.gauge((Gauge<Long>) metrics::getAllocatedBytes, true, "allocatedBytes", category, scope);
+        metricsContext.gauge((Gauge<Long>) metrics::getTruncatedRewrites, true, "truncatedRewrites", category, scope);
+        metricsContext.gauge((Gauge<Long>) metrics::getSkippedRewrites, true, "skippedRewrites", category, scope);
+    }
+
+    /**
+     * Records the latency of a rewriter in a Solr {@link Timer}, which reports the recent latency distribution.
+     */
+    private static class TimerLatencyRecorder implements LatencyRecorder {
+
+        private final Timer timer;
+
+        TimerLatencyRecorder(final Timer timer) {
+            this.timer = timer;
+        }
+
+        @Override
+        public void record(final long nanos) {
+            timer.update(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public long getCount() {
+            return timer.getCount();
+        }
+    }
+
     public Map<String, Sink> loadSinks(final SolrResourceLoader resourceLoader) {
 
         final Map<String, Sink> sinks = new HashMap<>();
@@ -333,6 +545,15 @@ public class QuerqyRewriterRequestHandler implements SolrRequestHandler, NestedR
                     if (sinks.put(id, sink) != null) {
                         throw new IllegalStateException("Sink id is not unique: " + id);
                     }
+
+                    if (sink instanceof ConfigurableSink) {
+                        try {
+                            ((ConfigurableSink) sink).init(config, resourceLoader);
+                        } catch (final IOException e) {
+                            throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
+                                    "Could not initialise sink " + id, e);
+                        }
+                    }
                 }
             }
         }
@@ -355,10 +576,26 @@ public class QuerqyRewriterRequestHandler implements SolrRequestHandler, NestedR
         return rewriterContainer.getRewriterFactory(rewriterId);
     }
 
+    public Set<String> getRewriterIds() {
+        return Collections.unmodifiableSet(rewriterContainer.rewriters.keySet());
+    }
+
+    public Optional<RewriteResultCache> getRewriteResultCache() {
+        return rewriterContainer.getRewriteResultCache();
+    }
+
+    public Optional<RewriteChainInstrumentation> getRewriteChainInstrumentation() {
+        return Optional.ofNullable(rewriteChainMetrics);
+    }
+
     public synchronized Collection<RewriterFactoryContext> getRewriterFactories(final RewriterContainer.RewritersChangeListener listener) {
         return rewriterContainer.getRewriterFactories(listener);
     }
 
+    public void addRewritersChangeListener(final RewriterContainer.RewritersChangeListener listener) {
+        rewriterContainer.addRewritersChangeListener(listener);
+    }
+
 
     @Override
     public SolrRequestHandler getSubHandler(final String subPath) {
@@ -367,6 +604,10 @@ public class QuerqyRewriterRequestHandler implements SolrRequestHandler, NestedR
             return explainRewriteChainRequestHandler;
         }
 
+        if (PATH_RULE_USAGE.equals(subPath)) {
+            return ruleUsageRequestHandler;
+        }
+
         return new SolrRequestHandler() {
             @Override
             public void initializeMetrics(final SolrMetricsContext parentContext, final String scope) {
@@ -404,6 +645,9 @@ public class QuerqyRewriterRequestHandler implements SolrRequestHandler, NestedR
                         case DELETE:
                             rewriterContainer.deleteRewriter(rewriterId);
                             break;
+                        case UPDATE:
+                            doUpdate(req, rewriterId);
+                            break;
                         case GET:
                             final Map<String, Object> definition = rewriterContainer.readRewriterDefinition(rewriterId);
                             final Map<String, Object> conf = new LinkedHashMap<>(3);
@@ -449,4 +693,15 @@ public class QuerqyRewriterRequestHandler implements SolrRequestHandler, NestedR
 
         rewriterContainer.saveRewriter(rewriterId, readJson(iterator.next().getStream(), Map.class));
     }
+
+    public void doUpdate(final SolrQueryRequest req, final String rewriterId) throws IOException {
+
+        final Iterable<ContentStream> streams = req.getContentStreams();
+        final Iterator<ContentStream> iterator = streams.iterator();
+        if (!iterator.hasNext()) {
+            throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Empty request");
+        }
+
+        rewriterContainer.updateRewriter(rewriterId, readJson(iterator.next().getStream(), Map.class));
+    }
 }
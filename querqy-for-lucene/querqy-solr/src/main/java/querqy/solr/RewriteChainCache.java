@@ -0,0 +1,141 @@
+package querqy.solr;
+
+import org.apache.solr.search.SolrIndexSearcher;
+import querqy.lucene.rewrite.infologging.InfoLogging;
+import querqy.rewrite.RewriteChain;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * <p>Caches the {@link RewriteChain} and the {@link InfoLogging} that a {@link QuerqyQParserPlugin} assembles for a
+ * value of the {@value QuerqyQParserPlugin#PARAM_REWRITERS} parameter (and of the rewrite logging rewriters
+ * parameter). Requests usually only use a handful of distinct rewriter chains so that the chain doesn't have to be
+ * assembled per request.</p>
+ *
+ * <p>The cache is a {@link RewriterContainer.RewritersChangeListener} and it drops all entries when a rewriter is
+ * loaded, replaced or removed. Entries that were assembled from the previous rewriters while the cache was
+ * invalidated are never added to the new entries.</p>
+ */
+public class RewriteChainCache implements RewriterContainer.RewritersChangeListener {
+
+    /**
+     * The default for the maximum number of cached chains. Chains for further parameter values will be assembled per
+     * request.
+     */
+    public static final int DEFAULT_MAX_SIZE = 1024;
+
+    private final int maxSize;
+
+    private volatile Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    public RewriteChainCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public RewriteChainCache(final int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize must not be negative");
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get the chain for the parameter values or assemble and cache it.
+     *
+     * @param rewritersParam The value of the rewriters parameter
+     * @param loggingRewritersParam The value of the rewrite logging rewriters parameter. Can be null.
+     * @param assembler Assembles the chain if it is not in the cache. It must read the rewriters from the
+     *                  {@link RewriterContainer} that this cache is listening to.
+     * @return The cached or the newly assembled entry
+     */
+    public Entry get(final String rewritersParam, final String loggingRewritersParam,
+                     final Supplier<Entry> assembler) {
+
+        // if the cache is invalidated while we are assembling the entry, we put the entry into the dropped map
+        final Map<Key, Entry> currentEntries = entries;
+
+        final Key key = new Key(rewritersParam, loggingRewritersParam);
+        final Entry entry = currentEntries.get(key);
+        if (entry != null) {
+            return entry;
+        }
+
+        final Entry assembled = assembler.get();
+        if (currentEntries.size() < maxSize) {
+            final Entry previous = currentEntries.putIfAbsent(key, assembled);
+            if (previous != null) {
+                return previous;
+            }
+        }
+        return assembled;
+    }
+
+    public void invalidate() {
+        entries = new ConcurrentHashMap<>();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void rewritersChanged(final SolrIndexSearcher indexSearcher, final Set<RewriterFactoryContext> allRewriters) {
+        // we've been invalidated already
+    }
+
+    @Override
+    public void rewritersInvalidated() {
+        invalidate();
+    }
+
+    public static class Entry {
+
+        private final RewriteChain rewriteChain;
+        private final InfoLogging infoLogging;
+
+        public Entry(final RewriteChain rewriteChain, final InfoLogging infoLogging) {
+            this.rewriteChain = rewriteChain;
+            this.infoLogging = infoLogging;
+        }
+
+        public RewriteChain getRewriteChain() {
+            return rewriteChain;
+        }
+
+        public InfoLogging getInfoLogging() {
+            return infoLogging;
+        }
+    }
+
+    private static class Key {
+
+        private final String rewritersParam;
+        private final String loggingRewritersParam;
+        private final int hash;
+
+        Key(final String rewritersParam, final String loggingRewritersParam) {
+            this.rewritersParam = rewritersParam;
+            this.loggingRewritersParam = loggingRewritersParam;
+            this.hash = 31 * rewritersParam.hashCode() + Objects.hashCode(loggingRewritersParam);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            final Key key = (Key) o;
+            return rewritersParam.equals(key.rewritersParam)
+                    && Objects.equals(loggingRewritersParam, key.loggingRewritersParam);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+}
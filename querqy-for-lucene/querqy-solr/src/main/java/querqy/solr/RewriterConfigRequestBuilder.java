@@ -3,6 +3,7 @@ package querqy.solr;
 import static querqy.solr.QuerqyRewriterRequestHandler.ActionParam.DELETE;
 import static querqy.solr.QuerqyRewriterRequestHandler.ActionParam.GET;
 import static querqy.solr.QuerqyRewriterRequestHandler.ActionParam.SAVE;
+import static querqy.solr.QuerqyRewriterRequestHandler.ActionParam.UPDATE;
 
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrRequest;
@@ -89,6 +90,17 @@ public abstract class RewriterConfigRequestBuilder {
         return new SaveRewriterConfigSolrRequest(requestHandlerName, rewriterId, requestBuilder.buildJson());
     }
 
+    public static UpdateRewriterConfigSolrRequest buildUpdateRequest(final String rewriterId,
+                                                                     final Map<String, Object> changes) {
+        return buildUpdateRequest(QuerqyRewriterRequestHandler.DEFAULT_HANDLER_NAME, rewriterId, changes);
+    }
+
+    public static UpdateRewriterConfigSolrRequest buildUpdateRequest(final String requestHandlerName,
+                                                                     final String rewriterId,
+                                                                     final Map<String, Object> changes) {
+        return new UpdateRewriterConfigSolrRequest(requestHandlerName, rewriterId, JsonUtil.toJson(changes));
+    }
+
     public static DeleteRewriterConfigSolrRequest buildDeleteRequest(final String rewriterId) {
         return new DeleteRewriterConfigSolrRequest(QuerqyRewriterRequestHandler.DEFAULT_HANDLER_NAME, rewriterId);
     }
@@ -159,6 +171,49 @@ public abstract class RewriterConfigRequestBuilder {
         }
     }
 
+    public static class UpdateRewriterConfigSolrRequest extends SolrRequest<UpdateRewriterConfigSolrResponse> {
+
+        private final String payload;
+
+        public UpdateRewriterConfigSolrRequest(final String requestHandlerName, final String rewriterId,
+                                               final String payload) {
+            super(SolrRequest.METHOD.POST, requestHandlerName + "/" + rewriterId);
+            this.payload = payload;
+        }
+
+        @Override
+        public String getRequestType() {
+            return SolrRequestType.UNSPECIFIED.toString();
+        }
+
+        @Override
+        public SolrParams getParams() {
+            return UPDATE.params();
+        }
+
+        @Override
+        protected UpdateRewriterConfigSolrResponse createResponse(final SolrClient client) {
+            return new UpdateRewriterConfigSolrResponse();
+        }
+
+        @Override
+        public RequestWriter.ContentWriter getContentWriter(final String expectedType) {
+            return new RequestWriter.ContentWriter() {
+                @Override
+                public void write(final OutputStream os) throws IOException {
+                    final OutputStreamWriter writer = new OutputStreamWriter(os, StandardCharsets.UTF_8);
+                    writer.write(payload);
+                    writer.flush();
+                }
+
+                @Override
+                public String getContentType() {
+                    return ClientUtils.TEXT_JSON;
+                }
+            };
+        }
+    }
+
     public static class DeleteRewriterConfigSolrRequest extends SolrRequest<DeleteRewriterConfigSolrSolrResponse> {
 
         public DeleteRewriterConfigSolrRequest(final String requestHandlerName, final String rewriterId) {
@@ -230,6 +285,8 @@ public abstract class RewriterConfigRequestBuilder {
 
     public static class SaveRewriterConfigSolrResponse extends SolrResponseBase { }
 
+    public static class UpdateRewriterConfigSolrResponse extends SolrResponseBase { }
+
     public static class DeleteRewriterConfigSolrSolrResponse extends SolrResponseBase { }
 
     public static class GetRewriterConfigSolrResponse extends SolrResponseBase { }
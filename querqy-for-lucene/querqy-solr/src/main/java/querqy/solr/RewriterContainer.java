@@ -10,23 +10,41 @@ import org.apache.solr.util.RefCounted;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import querqy.lucene.rewrite.infologging.Sink;
+import querqy.rewrite.RewriteResultCache;
+import querqy.rewrite.commonrules.RuleUsageCounter;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.stream.Collectors;
 
 public abstract class RewriterContainer<R extends SolrResourceLoader> {
 
     protected final Logger LOG = LoggerFactory.getLogger(getClass());
 
+    /**
+     * How often {@link #updateRewriter(String, Map)} reads, merges and saves a definition that was modified
+     * concurrently before it gives up
+     */
+    static final int MAX_UPDATE_ATTEMPTS = 10;
+
     protected Map<String, RewriterFactoryContext> rewriters = new HashMap<>();
     protected R resourceLoader;
     protected SolrCore core;
-    private RewritersChangeListener rewritersChangeListener = null;
+    private final Set<RewritersChangeListener> rewritersChangeListeners = new CopyOnWriteArraySet<>();
     protected final Map<String, Sink> infoLoggingSinks;
+    private RewriteResultCache rewriteResultCache = null;
 
     public interface RewritersChangeListener {
         void rewritersChanged(SolrIndexSearcher indexSearcher, Set<RewriterFactoryContext> allRewriters);
+
+        /**
+         * Called synchronously whenever a rewriter was loaded, replaced or removed. Unlike
+         * {@link #rewritersChanged(SolrIndexSearcher, Set)}, this method is also called while the core has no
+         * searcher yet and after the last rewriter was removed. The default implementation does nothing.
+         */
+        default void rewritersInvalidated() {
+        }
     }
 
     protected RewriterContainer(final SolrCore core, final R resourceLoader, final Map<String, Sink> infoLoggingSinks) {
@@ -90,18 +108,137 @@ public abstract class RewriterContainer<R extends SolrResourceLoader> {
 
     }
 
+    /**
+     * <p>Apply incremental changes to the configuration of a rewriter, for example, to add, update or delete single
+     * rules. The rewriter's adapter creates the new configuration from the stored one
+     * (see {@link SolrRewriterFactoryAdapter#updateConfiguration(Map, Map)}), and the new configuration is stored
+     * like a saved configuration.</p>
+     *
+     * <p>Only the changes are validated. Adapters can use the previous adapter when the rewriter is reloaded so that
+     * only the changes have to be applied
+     * (see {@link SolrRewriterFactoryAdapter#configure(Map, SolrRewriterFactoryAdapter)}).</p>
+     *
+     * <p>The definition is only saved if it hasn't been changed since it was read (see
+     * {@link #readVersionedRewriterDefinition(String)}), otherwise the changes are merged into the new definition and
+     * saving is tried again.</p>
+     *
+     * @param rewriterId The rewriter ID
+     * @param changes The changes, the format depends on the rewriter
+     * @throws IOException If the rewriter definition cannot be read or stored
+     */
+    public synchronized void updateRewriter(final String rewriterId, final Map<String, Object> changes)
+            throws IOException {
+
+        for (int attempt = 1; attempt <= MAX_UPDATE_ATTEMPTS; attempt++) {
+
+            final VersionedRewriterDefinition definition = readVersionedRewriterDefinition(rewriterId);
+            final Map<String, Object> instanceDescription = definition == null ? null : definition.definition;
+            if (instanceDescription == null) {
+                throw new SolrException(SolrException.ErrorCode.NOT_FOUND, "No such rewriter: " + rewriterId);
+            }
+
+            final SolrRewriterFactoryAdapter factoryLoader = SolrRewriterFactoryAdapter.loadInstance(rewriterId,
+                    instanceDescription);
+
+            // never modify the stored description, it might be shared with the container's store
+            final Map<String, Object> newInstanceDescription = new HashMap<>(instanceDescription);
+            newInstanceDescription.put("config", factoryLoader.updateConfiguration(
+                    (Map<String, Object>) instanceDescription.getOrDefault("config", Collections.emptyMap()),
+                    changes));
+
+            if (doSaveRewriter(rewriterId, newInstanceDescription, definition.version)) {
+                return;
+            }
+
+            LOG.info("Rewriter {} was changed concurrently, merging changes again", rewriterId);
+
+        }
+
+        throw new SolrException(SolrException.ErrorCode.CONFLICT, "Could not update rewriter " + rewriterId
+                + " because it was changed concurrently");
+
+    }
+
+    /**
+     * Read the rewriter definition together with the version of the stored definition. The default implementation
+     * doesn't know about versions and returns a definition without version.
+     *
+     * @param rewriterId The rewriter ID
+     * @return The definition or null if there is no such rewriter
+     * @throws IOException If the rewriter definition cannot be read
+     */
+    protected VersionedRewriterDefinition readVersionedRewriterDefinition(final String rewriterId)
+            throws IOException {
+        final Map<String, Object> definition = readRewriterDefinition(rewriterId);
+        return definition == null ? null : new VersionedRewriterDefinition(definition, null);
+    }
+
+    /**
+     * Save the rewriter definition if the stored definition still has the expected version. The default
+     * implementation ignores the version and always saves.
+     *
+     * @param rewriterId The rewriter ID
+     * @param instanceDescription The new definition
+     * @param expectedVersion The version from {@link #readVersionedRewriterDefinition(String)}. Can be null.
+     * @return true if the definition was saved, false if the stored definition has a different version
+     * @throws IOException If the rewriter definition cannot be stored
+     */
+    protected boolean doSaveRewriter(final String rewriterId, final Map<String, Object> instanceDescription,
+                                     final Object expectedVersion) throws IOException {
+        doSaveRewriter(rewriterId, instanceDescription);
+        return true;
+    }
+
+    protected static final class VersionedRewriterDefinition {
+
+        final Map<String, Object> definition;
+        final Object version;
+
+        public VersionedRewriterDefinition(final Map<String, Object> definition, final Object version) {
+            this.definition = definition;
+            this.version = version;
+        }
+    }
+
     public Optional<RewriterFactoryContext> getRewriterFactory(final String rewriterId) {
         return Optional.ofNullable(rewriters.get(rewriterId));
     }
 
+    /**
+     * Set the cache for the output of rewrite chains. The cache will be invalidated when a rewriter is (re)loaded or
+     * deleted.
+     *
+     * @param rewriteResultCache The cache or null if rewrite results should not be cached
+     */
+    public void setRewriteResultCache(final RewriteResultCache rewriteResultCache) {
+        this.rewriteResultCache = rewriteResultCache;
+    }
+
+    public Optional<RewriteResultCache> getRewriteResultCache() {
+        return Optional.ofNullable(rewriteResultCache);
+    }
+
     public synchronized Collection<RewriterFactoryContext> getRewriterFactories(final RewritersChangeListener listener) {
-        this.rewritersChangeListener = listener;
+        rewritersChangeListeners.add(listener);
         return rewriters.values();
     }
 
+    /**
+     * Register a listener that will be notified about changes of the rewriters.
+     *
+     * @param listener The listener
+     */
+    public void addRewritersChangeListener(final RewritersChangeListener listener) {
+        rewritersChangeListeners.add(listener);
+    }
+
     public final synchronized void close() {
         doClose();
-        rewritersChangeListener = null;
+        if (rewriters != null) {
+            // keep what the adapters created outside the heap so that it can be re-used when the core is loaded again
+            rewriters.values().forEach(RewriterContainer::releaseSharedKey);
+        }
+        rewritersChangeListeners.clear();
         resourceLoader = null;
         core = null;
         rewriters = null;
@@ -111,21 +248,103 @@ public abstract class RewriterContainer<R extends SolrResourceLoader> {
 
         final SolrRewriterFactoryAdapter factoryLoader = SolrRewriterFactoryAdapter.loadInstance(rewriterId,
                 instanceDesc);
-        factoryLoader.configure((Map<String, Object>) instanceDesc.getOrDefault("config", Collections.emptyMap()));
+        final Map<String, Object> config = (Map<String, Object>) instanceDesc.getOrDefault("config",
+                Collections.emptyMap());
+
+        final RewriterFactoryContext previous = rewriters.get(rewriterId);
+        final SolrRewriterFactoryAdapter previousFactoryLoader = previous == null ? null : previous.getFactoryAdapter();
+
+        // Cores that load the same definition share the adapter and its rewriter factory if the adapter allows it
+        final String sharedKey = factoryLoader.isShareable()
+                ? SharedRewriterFactoryRegistry.contentKey(rewriterId, instanceDesc) : null;
+
+        final SolrRewriterFactoryAdapter configuredFactoryLoader = sharedKey == null
+                ? configure(factoryLoader, config, previousFactoryLoader)
+                : SharedRewriterFactoryRegistry.INSTANCE.acquire(sharedKey,
+                        () -> configure(factoryLoader, config, previousFactoryLoader));
+
+        // Rule usage is counted per core, even if the adapter is shared. Counts are kept if the adapter continues the
+        // previous adapter, for example, when single rules were changed.
+        final RuleUsageCounter ruleUsageCounter = previous != null && previous.getRuleUsageCounter() != null
+                && configuredFactoryLoader.continues(previousFactoryLoader)
+                ? previous.getRuleUsageCounter()
+                : new RuleUsageCounter();
 
         final Map<String, RewriterFactoryContext> newRewriters = new HashMap<>(rewriters);
-        newRewriters.put(
-                rewriterId,
-                new RewriterFactoryContext(
-                        factoryLoader.getRewriterFactory(),
-                        getLoggingSinksFromInstanceDescription(instanceDesc)
-                )
-        );
+        try {
+            newRewriters.put(
+                    rewriterId,
+                    new RewriterFactoryContext(
+                            configuredFactoryLoader.getRewriterFactory(ruleUsageCounter),
+                            getLoggingSinksFromInstanceDescription(instanceDesc),
+                            configuredFactoryLoader,
+                            sharedKey,
+                            ruleUsageCounter
+                    )
+            );
+        } catch (final RuntimeException e) {
+            if (sharedKey != null) {
+                SharedRewriterFactoryRegistry.INSTANCE.release(sharedKey);
+            }
+            throw e;
+        }
         rewriters = newRewriters;
+        releaseRewriter(previous);
+        invalidateCaches();
         LOG.info("Loaded rewriter: {}", rewriterId);
 
     }
 
+    private static SolrRewriterFactoryAdapter configure(final SolrRewriterFactoryAdapter factoryLoader,
+                                                        final Map<String, Object> config,
+                                                        final SolrRewriterFactoryAdapter previousFactoryLoader) {
+        if (previousFactoryLoader != null && previousFactoryLoader.getClass() == factoryLoader.getClass()) {
+            factoryLoader.configure(config, previousFactoryLoader);
+        } else {
+            factoryLoader.configure(config);
+        }
+        return factoryLoader;
+    }
+
+    /**
+     * Release the shared adapter of a rewriter that was replaced or removed from the 'rewriters' map. If no core uses
+     * the adapter anymore, it is told that it was unloaded (see {@link SolrRewriterFactoryAdapter#unloaded()}).
+     *
+     * @param context The context of the rewriter. Can be null.
+     */
+    protected void releaseRewriter(final RewriterFactoryContext context) {
+        if (context == null) {
+            return;
+        }
+        if (context.getSharedKey() == null) {
+            if (context.getFactoryAdapter() != null) {
+                context.getFactoryAdapter().unloaded();
+            }
+        } else {
+            final SolrRewriterFactoryAdapter released = releaseSharedKey(context);
+            if (released != null) {
+                released.unloaded();
+            }
+        }
+    }
+
+    private static SolrRewriterFactoryAdapter releaseSharedKey(final RewriterFactoryContext context) {
+        return context.getSharedKey() == null ? null
+                : SharedRewriterFactoryRegistry.INSTANCE.release(context.getSharedKey());
+    }
+
+    /**
+     * Remove all entries from the rewrite result cache and tell the {@link RewritersChangeListener}s that the rewriters
+     * have changed so that they can drop what they derived from the previous rewriters. Results of replaced or deleted
+     * rewriters can never be returned from the rewrite result cache but invalidating the cache frees their memory.
+     */
+    protected void invalidateCaches() {
+        if (rewriteResultCache != null) {
+            rewriteResultCache.invalidate();
+        }
+        rewritersChangeListeners.forEach(RewritersChangeListener::rewritersInvalidated);
+    }
+
     protected List<Sink> getLoggingSinksFromInstanceDescription(final Map<String, Object> instanceDescription) {
         final Map<String, Map<String, ?>> infoLoggingDesc = (Map<String, Map<String, ?>>)
                 instanceDescription.get("info_logging");
@@ -163,13 +382,16 @@ public abstract class RewriterContainer<R extends SolrResourceLoader> {
 
     protected synchronized void notifyRewritersChangeListener() {
 
-        if (rewritersChangeListener != null && !rewriters.isEmpty()) {
+        if (!rewritersChangeListeners.isEmpty() && !rewriters.isEmpty()) {
 
             // We must not call lister.rewritersChanges() asynchronously. If we did, we might happen to decref and
             // possibly let the core close the searcher prematurely
             final RefCounted<SolrIndexSearcher> refCounted = core.getSearcher();
             try {
-                rewritersChangeListener.rewritersChanged(refCounted.get(), new HashSet<>(rewriters.values()));
+                final Set<RewriterFactoryContext> allRewriters = new HashSet<>(rewriters.values());
+                for (final RewritersChangeListener listener : rewritersChangeListeners) {
+                    listener.rewritersChanged(refCounted.get(), allRewriters);
+                }
             } finally {
                 refCounted.decref();
             }
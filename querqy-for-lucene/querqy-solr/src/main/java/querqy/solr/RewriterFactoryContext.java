@@ -2,6 +2,7 @@ package querqy.solr;
 
 import querqy.lucene.rewrite.infologging.Sink;
 import querqy.rewrite.RewriterFactory;
+import querqy.rewrite.commonrules.RuleUsageCounter;
 
 import java.util.List;
 
@@ -9,10 +10,32 @@ public class RewriterFactoryContext {
 
     private final RewriterFactory rewriterFactory;
     private final List<Sink> sinks;
+    private final SolrRewriterFactoryAdapter factoryAdapter;
+    private final String sharedKey;
+    private final RuleUsageCounter ruleUsageCounter;
 
     public RewriterFactoryContext(final RewriterFactory rewriterFactory, final List<Sink> sinks) {
+        this(rewriterFactory, sinks, null);
+    }
+
+    public RewriterFactoryContext(final RewriterFactory rewriterFactory, final List<Sink> sinks,
+                                  final SolrRewriterFactoryAdapter factoryAdapter) {
+        this(rewriterFactory, sinks, factoryAdapter, null);
+    }
+
+    public RewriterFactoryContext(final RewriterFactory rewriterFactory, final List<Sink> sinks,
+                                  final SolrRewriterFactoryAdapter factoryAdapter, final String sharedKey) {
+        this(rewriterFactory, sinks, factoryAdapter, sharedKey, null);
+    }
+
+    public RewriterFactoryContext(final RewriterFactory rewriterFactory, final List<Sink> sinks,
+                                  final SolrRewriterFactoryAdapter factoryAdapter, final String sharedKey,
+                                  final RuleUsageCounter ruleUsageCounter) {
         this.rewriterFactory = rewriterFactory;
         this.sinks = sinks;
+        this.factoryAdapter = factoryAdapter;
+        this.sharedKey = sharedKey;
+        this.ruleUsageCounter = ruleUsageCounter;
     }
 
     public RewriterFactory getRewriterFactory() {
@@ -22,4 +45,27 @@ public class RewriterFactoryContext {
     public List<Sink> getSinks() {
         return sinks;
     }
+
+    /**
+     * @return The adapter that created the rewriter factory or null if it is unknown
+     */
+    public SolrRewriterFactoryAdapter getFactoryAdapter() {
+        return factoryAdapter;
+    }
+
+    /**
+     * @return The key of the factory adapter in the {@link SharedRewriterFactoryRegistry} or null if the adapter is
+     * not shared
+     */
+    public String getSharedKey() {
+        return sharedKey;
+    }
+
+    /**
+     * @return The counts of the rules that were applied in this core or null if they are unknown. Unlike the rewriter
+     * factory of a shared adapter, the counter is never shared with other cores.
+     */
+    public RuleUsageCounter getRuleUsageCounter() {
+        return ruleUsageCounter;
+    }
 }
@@ -0,0 +1,150 @@
+package querqy.solr;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * <p>A JVM-wide registry of configured {@link SolrRewriterFactoryAdapter}s, which lets all cores that load the same
+ * rewriter definition use a single rewriter factory instance.</p>
+ *
+ * <p>Adapters are registered under a hash of the rewriter ID, the adapter class and the rewriter configuration
+ * (see {@link #contentKey(String, Map)}). The registry counts the references to each adapter: a
+ * {@link RewriterContainer} acquires an adapter when it loads a rewriter and releases it when the rewriter is
+ * replaced, deleted or when the container is closed. The adapter is removed from the registry when the last reference
+ * has been released. If the last reference was released because the rewriter was replaced or deleted, the container
+ * calls {@link SolrRewriterFactoryAdapter#unloaded()}.</p>
+ *
+ * <p>Only adapters whose {@link SolrRewriterFactoryAdapter#isShareable()} returns true are shared.</p>
+ */
+public final class SharedRewriterFactoryRegistry {
+
+    public static final SharedRewriterFactoryRegistry INSTANCE = new SharedRewriterFactoryRegistry();
+
+    private static final ObjectMapper CANONICAL_MAPPER = new ObjectMapper()
+            .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+
+    // guarded by 'this'
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    SharedRewriterFactoryRegistry() {}
+
+    /**
+     * Get the adapter for a key and increment its reference count. If there is no adapter for this key yet, the
+     * configurer is called to create it. Other threads that acquire the same key wait for the configurer.
+     *
+     * @param key The content key
+     * @param configurer Creates the configured adapter
+     * @return The shared adapter
+     */
+    public SolrRewriterFactoryAdapter acquire(final String key, final Supplier<SolrRewriterFactoryAdapter> configurer) {
+
+        final Entry entry;
+        synchronized (this) {
+            entry = entries.computeIfAbsent(key, k -> new Entry());
+            entry.refCount++;
+        }
+
+        // only block the threads that acquire the same key while the adapter is being configured
+        synchronized (entry) {
+            if (entry.adapter == null) {
+                try {
+                    entry.adapter = configurer.get();
+                } catch (final RuntimeException e) {
+                    release(key);
+                    throw e;
+                }
+            }
+            return entry.adapter;
+        }
+    }
+
+    /**
+     * Decrement the reference count for a key and remove the adapter if it is no longer referenced.
+     *
+     * @param key The content key
+     * @return The adapter if it was removed, null if it is still referenced
+     */
+    public synchronized SolrRewriterFactoryAdapter release(final String key) {
+        final Entry entry = entries.get(key);
+        if (entry != null && --entry.refCount <= 0) {
+            entries.remove(key);
+            return entry.adapter;
+        }
+        return null;
+    }
+
+    /**
+     * @return The adapters that are currently registered. Adapters that are still being configured are not included.
+     */
+    public synchronized List<SolrRewriterFactoryAdapter> getAdapters() {
+        final List<SolrRewriterFactoryAdapter> adapters = new ArrayList<>(entries.size());
+        for (final Entry entry : entries.values()) {
+            final SolrRewriterFactoryAdapter adapter = entry.adapter;
+            if (adapter != null) {
+                adapters.add(adapter);
+            }
+        }
+        return adapters;
+    }
+
+    synchronized int getReferenceCount(final String key) {
+        final Entry entry = entries.get(key);
+        return entry == null ? 0 : entry.refCount;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Create the key under which a rewriter will be shared. It is a SHA-256 hash of the rewriter ID, the adapter class
+     * and the configuration. Map entries are hashed in key order so that equal configurations result in equal keys
+     * regardless of their map implementation.
+     *
+     * @param rewriterId The rewriter ID
+     * @param instanceDescription The rewriter definition
+     * @return The key
+     */
+    public static String contentKey(final String rewriterId, final Map<String, Object> instanceDescription) {
+
+        final Map<String, Object> content = new LinkedHashMap<>(3);
+        content.put("id", rewriterId);
+        content.put("class", instanceDescription.get("class"));
+        content.put("config", instanceDescription.get("config"));
+
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (final OutputStream out = new DigestOutputStream(OutputStream.nullOutputStream(), digest)) {
+                CANONICAL_MAPPER.writeValue(out, content);
+            }
+
+            final StringBuilder sb = new StringBuilder(64);
+            for (final byte b : digest.digest()) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+
+        } catch (final NoSuchAlgorithmException | IOException e) {
+            throw new RuntimeException("Could not create content key for rewriter " + rewriterId, e);
+        }
+    }
+
+    private static final class Entry {
+        int refCount = 0;
+        // written while holding the entry's lock, read while holding the registry's lock
+        volatile SolrRewriterFactoryAdapter adapter = null;
+    }
+
+}
@@ -1,7 +1,9 @@
 package querqy.solr;
 
+import org.apache.solr.common.SolrException;
 import querqy.lucene.rewrite.infologging.Sink;
 import querqy.rewrite.RewriterFactory;
+import querqy.rewrite.commonrules.RuleUsageCounter;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -17,10 +19,86 @@ public abstract class SolrRewriterFactoryAdapter {
 
     public abstract void configure(Map<String, Object> config);
 
+    /**
+     * <p>Configure this adapter when it replaces the adapter of a loaded rewriter with the same ID.</p>
+     *
+     * <p>Adapters that support {@link #updateConfiguration(Map, Map)} can reuse the state of the previous adapter
+     * instead of building the rewriter factory from scratch. By default, this calls {@link #configure(Map)}.</p>
+     *
+     * @param config The configuration
+     * @param previous The adapter of the loaded rewriter. It is of the same class as this adapter.
+     */
+    public void configure(final Map<String, Object> config, final SolrRewriterFactoryAdapter previous) {
+        configure(config);
+    }
+
     public abstract List<String> validateConfiguration(Map<String, Object> config);
 
+    /**
+     * <p>Apply incremental changes to a configuration. The returned configuration will be stored and loaded like a
+     * configuration that was saved as a whole.</p>
+     *
+     * <p>Only the changes have to be validated, the configuration was validated when it was saved. Adapters that
+     * don't support incremental changes throw a {@link SolrException}, which is the default.</p>
+     *
+     * @param config The current configuration
+     * @param changes The changes
+     * @return The new configuration
+     */
+    public Map<String, Object> updateConfiguration(final Map<String, Object> config,
+                                                   final Map<String, Object> changes) {
+        throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Rewriter " + rewriterId +
+                " does not support updates");
+    }
+
     public abstract RewriterFactory getRewriterFactory();
 
+    /**
+     * <p>Get the rewriter factory for a single core. Adapters that are shared between cores (see
+     * {@link #isShareable()}) must not keep per-core state, like rule usage counts, in the factory returned by
+     * {@link #getRewriterFactory()}. They can return a factory here that shares everything else with it but keeps the
+     * per-core state in the given objects. By default, this returns {@link #getRewriterFactory()}.</p>
+     *
+     * @param ruleUsageCounter The counter for the rules that are applied in the core
+     * @return The rewriter factory of the core
+     */
+    public RewriterFactory getRewriterFactory(final RuleUsageCounter ruleUsageCounter) {
+        return getRewriterFactory();
+    }
+
+    /**
+     * Whether the per-core state of the rewriter, like rule usage counts, should be kept if this adapter replaces the
+     * given adapter of the loaded rewriter. The default is false.
+     *
+     * @param previous The adapter of the loaded rewriter
+     * @return true if this adapter continues the previous adapter, for example, because it only applies rule changes
+     */
+    public boolean continues(final SolrRewriterFactoryAdapter previous) {
+        return false;
+    }
+
+    /**
+     * <p>Called when the rewriter of this adapter was replaced or deleted and no core uses this adapter anymore.
+     * Adapters can delete resources here that they created outside the JVM heap, like files. This is not called when
+     * a core is closed, so that such resources can be re-used when the core is loaded again. The default does
+     * nothing.</p>
+     */
+    public void unloaded() {
+    }
+
+    /**
+     * <p>Whether the configured adapter and its rewriter factory can be shared between all cores in the JVM that load
+     * the same rewriter definition (see {@link SharedRewriterFactoryRegistry}).</p>
+     *
+     * <p>Only return true if the rewriter factory is immutable and doesn't depend on the core or on its index. The
+     * default is false.</p>
+     *
+     * @return true if the adapter can be shared
+     */
+    public boolean isShareable() {
+        return false;
+    }
+
     public String getRewriterId() {
         return rewriterId;
     }
@@ -104,11 +104,15 @@ public class StandAloneRewriterContainer extends RewriterContainer<SolrResourceL
                 .getCoreDescriptor().getCollectionName(), resourceLoader, new NamedList<>());
 
         final Map<String, RewriterFactoryContext> newRewriters = new HashMap<>(rewriters);
-        if ((newRewriters.remove(rewriterId) == null) && !storageIO.exists(rewriterPath)) {
+        final RewriterFactoryContext removed = newRewriters.remove(rewriterId);
+        if ((removed == null) && !storageIO.exists(rewriterPath)) {
             throw new SolrException(SolrException.ErrorCode.NOT_FOUND, "No such rewriter: " + rewriterId);
         }
 
         rewriters = newRewriters;
+        releaseRewriter(removed);
+
+        invalidateCaches();
         storageIO.delete(rewriterPath);
         notifyRewritersChangeListener();
 
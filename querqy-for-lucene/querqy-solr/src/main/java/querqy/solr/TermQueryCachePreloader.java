@@ -1,17 +1,44 @@
 package querqy.solr;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.codahale.metrics.Gauge;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
-import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+import org.apache.solr.common.util.ExecutorUtil;
 import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SolrNamedThreadFactory;
 import org.apache.solr.core.AbstractSolrEventListener;
+import org.apache.solr.core.CloseHook;
 import org.apache.solr.core.SolrCore;
+import org.apache.solr.core.SolrInfoBean;
+import org.apache.solr.metrics.SolrMetricsContext;
 import org.apache.solr.request.SolrRequestHandler;
 import org.apache.solr.search.SolrCache;
 import org.apache.solr.search.SolrIndexSearcher;
@@ -31,6 +58,14 @@ import querqy.model.Term;
 import querqy.rewrite.RewriterFactory;
 
 /**
+ * <p>Preloads the {@link TermQueryCache} with the terms that the rewriters can generate.</p>
+ *
+ * <p>The preloading can be distributed across a thread pool ({@value #CONF_THREADS}) and it can run in the background
+ * ({@value #CONF_BACKGROUND}), so that Solr can open the new searcher with a partially warmed cache. The analysis
+ * result of a term does not depend on the index and it is reused across searchers. If {@value #CONF_TEST_FOR_HITS} is
+ * set, the hit test is done per segment and segments that were already tested for the previous searcher are not tested
+ * again.</p>
+ *
  * @author rene
  *
  */
@@ -43,11 +78,41 @@ public class TermQueryCachePreloader extends AbstractSolrEventListener implement
     public static final String CONF_CACHE_NAME = "cacheName";
     public static final String CONF_TEST_FOR_HITS = "testForHits";
     public static final String CONF_REWRITER_REQUEST_HANDLER = "rewriterRequestHandler";
+    public static final String CONF_THREADS = "threads";
+    public static final String CONF_BACKGROUND = "background";
+
+    /**
+     * The number of terms per preload task
+     */
+    static final int TERMS_PER_TASK = 256;
+
+    /**
+     * How often a foreground preload checks whether the preloader was shut down while it waits for its tasks
+     */
+    static final long TASK_WAIT_MILLIS = 1000L;
 
     private Set<String> preloadFields = Collections.emptySet();
     private String cacheName = null;
     private boolean testForHits = false;
     private String rewriterRequestHandlerName = QuerqyRewriterRequestHandler.DEFAULT_HANDLER_NAME;
+    private int threads = 1;
+    private boolean background = false;
+
+    private ExecutorService workerExecutor = null;
+    private ExecutorService backgroundExecutor = null;
+    // the worker tasks that haven't completed yet, cancelled on shutdown so that no preload waits for them forever
+    private final Set<Future<?>> pendingTasks = ConcurrentHashMap.newKeySet();
+
+    // the result of the last completed preload, used to avoid re-computation for the next searcher
+    private volatile PreloadState lastState = PreloadState.EMPTY;
+    // the most recently started preload, which reports the progress metrics
+    private volatile PreloadState currentState = PreloadState.EMPTY;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    private final AtomicInteger runningPreloads = new AtomicInteger();
+    private final AtomicLong preloadCount = new AtomicLong();
+    private volatile long lastDurationMillis = -1L;
+    private final AtomicBoolean metricsRegistered = new AtomicBoolean(false);
     
     public TermQueryCachePreloader(final SolrCore core) {
         super(core);
@@ -60,6 +125,7 @@ public class TermQueryCachePreloader extends AbstractSolrEventListener implement
         configureCacheName(args);
         configureTestForHits(args);
         configureRewriterRequestHandlerName(args);
+        configureExecutors(args);
     }
 
     private void configureRewriterRequestHandlerName(final NamedList args) {
@@ -77,6 +143,42 @@ public class TermQueryCachePreloader extends AbstractSolrEventListener implement
 
     }
 
+    private void configureExecutors(final NamedList args) {
+
+        final Integer numThreads = (Integer) args.get(CONF_THREADS);
+        if (numThreads != null) {
+            if (numThreads < 1) {
+                throw new IllegalArgumentException("'" + CONF_THREADS + "' must be > 0");
+            }
+            threads = numThreads;
+        }
+
+        final Boolean runInBackground = args.getBooleanArg(CONF_BACKGROUND);
+        background = runInBackground != null && runInBackground;
+
+        if (threads > 1) {
+            workerExecutor = ExecutorUtil.newMDCAwareFixedThreadPool(threads,
+                    new SolrNamedThreadFactory("querqyTermQueryCachePreloader"));
+        }
+        if (background) {
+            backgroundExecutor = ExecutorUtil.newMDCAwareSingleThreadExecutor(
+                    new SolrNamedThreadFactory("querqyTermQueryCachePreloaderBackground"));
+        }
+
+        if (workerExecutor != null || backgroundExecutor != null) {
+            final SolrCore core = getCore();
+            if (core != null) {
+                core.addCloseHook(new CloseHook() {
+                    @Override
+                    public void preClose(final SolrCore core) {
+                        shutdown();
+                    }
+                });
+            }
+        }
+
+    }
+
     @Override
     public void newSearcher(final SolrIndexSearcher newSearcher, final SolrIndexSearcher currentSearcher) {
         final SolrRequestHandler rewriterRequestHandler = getCore().getRequestHandler(rewriterRequestHandlerName);
@@ -95,71 +197,361 @@ public class TermQueryCachePreloader extends AbstractSolrEventListener implement
             return;
         }
 
+        registerMetrics();
+
         final TermQueryCache cache = getCache(searcher);
+        final List<PreloadTerm> terms = collectPreloadTerms(rewriterFactories);
 
-        LOG.info("Starting preload for Querqy TermQueryCache. Testing for hits: {}", testForHits);
+        if (backgroundExecutor == null) {
+            preload(searcher, terms, cache);
+            return;
+        }
+
+        // keep the index reader open until the background preload has finished
+        final IndexReader reader = searcher.getIndexReader();
+        if (!reader.tryIncRef()) {
+            LOG.warn("Not starting preload for Querqy TermQueryCache: the index reader has been closed already");
+            return;
+        }
+        try {
+            backgroundExecutor.execute(() -> {
+                try {
+                    preload(searcher, terms, cache);
+                } finally {
+                    decRef(reader);
+                }
+            });
+        } catch (final RuntimeException e) {
+            // the executor has been shut down
+            decRef(reader);
+            LOG.warn("Could not start preload for Querqy TermQueryCache", e);
+        }
+
+    }
+
+    private void preload(final SolrIndexSearcher searcher, final List<PreloadTerm> terms,
+                         final TermQueryCache cache) {
+
+        LOG.info("Starting preload for Querqy TermQueryCache. Testing for hits: {}, terms: {}", testForHits,
+                terms.size());
 
         final long t1 = System.currentTimeMillis();
+        runningPreloads.incrementAndGet();
 
-        final TermSubQueryBuilder termSubQueryBuilder = new TermSubQueryBuilder(searcher.getSchema().getQueryAnalyzer(),
-                cache);
-        for (final RewriterFactoryContext factoryContext : rewriterFactories) {
-            for (final Term term: factoryContext.getRewriterFactory().getCacheableGenerableTerms()) {
-                final String field = term.getField();
-                if (field != null) {
-                    if (preloadFields.contains(field)) {
-                        preloadTerm(searcher, termSubQueryBuilder, field, term, testForHits, cache);
+        final PreloadState previousState = lastState;
+        final PreloadState state = new PreloadState(testForHits ? leafKeys(searcher) : Collections.emptySet(),
+                terms.size());
+        currentState = state;
+        final TermSubQueryBuilder termSubQueryBuilder = new TermSubQueryBuilder(searcher.getSchema()
+                .getQueryAnalyzer(), new RecordingTermQueryCache(cache, state.values));
+
+        try {
+
+            if (workerExecutor == null || terms.size() <= TERMS_PER_TASK) {
+                preloadTerms(searcher, termSubQueryBuilder, terms, cache, previousState, state);
+            } else {
+                final List<Future<?>> futures = new ArrayList<>();
+                try {
+                    for (int from = 0; from < terms.size(); from += TERMS_PER_TASK) {
+                        final List<PreloadTerm> partition = terms.subList(from,
+                                Math.min(terms.size(), from + TERMS_PER_TASK));
+                        final Future<?> future = workerExecutor.submit(() -> preloadTerms(searcher,
+                                termSubQueryBuilder, partition, cache, previousState, state));
+                        futures.add(future);
+                        pendingTasks.add(future);
                     }
-                } else {
-                    for (final String fieldname : preloadFields) {
-                        preloadTerm(searcher, termSubQueryBuilder, fieldname, term, testForHits, cache);
+                    for (final Future<?> future : futures) {
+                        awaitTask(future);
                     }
+                } finally {
+                    futures.forEach(pendingTasks::remove);
                 }
             }
+
+            if (!closed.get()) {
+                lastState = state;
+            }
+
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("Preload for Querqy TermQueryCache interrupted");
+        } catch (final CancellationException | RejectedExecutionException e) {
+            LOG.warn("Preload for Querqy TermQueryCache cancelled");
+        } catch (final ExecutionException e) {
+            LOG.error("Error preloading Querqy TermQueryCache", e.getCause());
+        } finally {
+            runningPreloads.decrementAndGet();
         }
 
-        if (LOG.isInfoEnabled()) {
-            final long t2 = System.currentTimeMillis();
-            LOG.info("Finished preload for Querqy TermQueryCache after {}ms", (t2 - t1));
+        final long t2 = System.currentTimeMillis();
+        lastDurationMillis = t2 - t1;
+        preloadCount.incrementAndGet();
+        LOG.info("Finished preload for Querqy TermQueryCache after {}ms. Reused hit tests: {}", (t2 - t1),
+                state.termsReused.get());
+
+    }
+
+    /**
+     * Wait for a worker task. Tasks that are still queued when the preloader is shut down are discarded and they will
+     * never complete, so we stop waiting once the preloader is closed.
+     */
+    private void awaitTask(final Future<?> future) throws InterruptedException, ExecutionException {
+        while (true) {
+            try {
+                future.get(TASK_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                return;
+            } catch (final TimeoutException e) {
+                if (closed.get()) {
+                    future.cancel(true);
+                    throw new CancellationException("Preloader closed");
+                }
+            }
+        }
+    }
+
+    private void preloadTerms(final IndexSearcher searcher,
+                              final TermSubQueryBuilder termSubQueryBuilder, final List<PreloadTerm> terms,
+                              final TermQueryCache cache, final PreloadState previousState,
+                              final PreloadState state) {
+
+        for (final PreloadTerm term : terms) {
+            if (closed.get()) {
+                return;
+            }
+            preloadTerm(searcher, termSubQueryBuilder, term, cache, previousState, state);
+            state.termsDone.incrementAndGet();
         }
 
     }
 
     protected void preloadTerm(final IndexSearcher searcher, final TermSubQueryBuilder termSubQueryBuilder,
-                               final String field, final Term term, final boolean testForHits,
-                               final TermQueryCache cache) {
+                               final PreloadTerm term, final TermQueryCache cache,
+                               final PreloadState previousState, final PreloadState state) {
         
+        final CacheKey key = term.key;
         try {
-            
-            // luceneQueryBuilder.termToFactory creates the query and caches it (without the boost)
-            final TermSubQueryFactory termSubQueryFactory
-                    = termSubQueryBuilder.termToFactory(field, term, ConstantFieldBoost.NORM_BOOST);
-            
+
+            // the analysis doesn't depend on the index - reuse the value from the previous preload
+            TermQueryCacheValue value = previousState.values.get(key);
+            if (value != null) {
+                cache.put(key, value);
+                state.values.put(key, value);
+            } else {
+                // termToFactory creates the query and caches it (without the boost)
+                termSubQueryBuilder.termToFactory(term.field, term.term, ConstantFieldBoost.NORM_BOOST);
+                value = state.values.get(key);
+            }
+
             // test the query for hits and override the cache value with a factory that creates a query that never matches
             // --> this query will never be executed against the index again
-            
-            // no need to re-test for hits if we've seen this term before
-            if (testForHits && (termSubQueryFactory != null) && (!termSubQueryFactory.isNeverMatchQuery())) {
-                final Query query = termSubQueryFactory
-                        .createQuery(ConstantFieldBoost.NORM_BOOST, new LuceneTermQueryBuilder());
-                final TopDocs topDocs = searcher.search(query, 1);
-                if (topDocs.totalHits.value < 1) {
-                    cache.put(new CacheKey(field, term),
+            if (testForHits && value != null && value.hasQuery()
+                    && !(value.queryFactory instanceof NeverMatchQueryFactory)) {
+
+                final Object segmentWithHits = findSegmentWithHits(searcher, term, value, previousState, state);
+                if (segmentWithHits != null) {
+                    state.segmentsWithHits.put(key, segmentWithHits);
+                } else {
+                    cache.put(key,
                             new TermQueryCacheValue(NeverMatchQueryFactory.FACTORY, PRMSQuery.NEVER_MATCH_PRMS_QUERY));
                 }
             }
         
         } catch (final IOException e) {
-            LOG.error("Error preloading term " + term.toString(), e);
+            // we don't know whether the term has hits - the next preload must analyse and test it again instead of
+            // taking the missing segment with hits for 'no hits'
+            state.values.remove(key);
+            state.segmentsWithHits.remove(key);
+            LOG.error("Error preloading term " + term.term.toString(), e);
         }
     }
 
+    /**
+     * Find a segment in which the query for the term has a live document.
+     *
+     * @return The reader cache key of the segment or null if the query doesn't match any live document
+     */
+    private Object findSegmentWithHits(final IndexSearcher searcher, final PreloadTerm term,
+                                       final TermQueryCacheValue value, final PreloadState previousState,
+                                       final PreloadState state) throws IOException {
+
+        final List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+
+        // the segment (including its deletions) in which we found a hit before is still part of the index
+        final CacheKey key = term.key;
+        final Object previousSegmentWithHits = previousState.segmentsWithHits.get(key);
+        if (previousSegmentWithHits != null) {
+            for (final LeafReaderContext leaf : leaves) {
+                if (previousSegmentWithHits == readerKey(leaf)) {
+                    state.termsReused.incrementAndGet();
+                    return previousSegmentWithHits;
+                }
+            }
+        }
+
+        // no hits in the previous searcher: only test segments that are new (deletions can only remove hits)
+        final boolean onlyNewSegments = previousState.values.containsKey(key) && previousSegmentWithHits == null;
+
+        final Query query = new TermSubQueryFactory(value, ConstantFieldBoost.NORM_BOOST, term.term, term.field)
+                .createQuery(ConstantFieldBoost.NORM_BOOST, new LuceneTermQueryBuilder());
+        final Weight weight = searcher.createWeight(searcher.rewrite(query), ScoreMode.COMPLETE_NO_SCORES, 1f);
+
+        boolean reused = onlyNewSegments;
+        for (final LeafReaderContext leaf : leaves) {
+
+            if (onlyNewSegments && previousState.testedCoreKeys.contains(coreKey(leaf))) {
+                continue;
+            }
+            reused = false;
+
+            final Scorer scorer = weight.scorer(leaf);
+            if (scorer != null) {
+                final Bits liveDocs = leaf.reader().getLiveDocs();
+                final DocIdSetIterator iterator = scorer.iterator();
+                for (int doc = iterator.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = iterator.nextDoc()) {
+                    if (liveDocs == null || liveDocs.get(doc)) {
+                        final Object readerKey = readerKey(leaf);
+                        // we can't recognise the segment later without a key but we still know that there are hits
+                        return readerKey != null ? readerKey : leaf;
+                    }
+                }
+            }
+
+        }
+
+        if (reused) {
+            state.termsReused.incrementAndGet();
+        }
+        return null;
+
+    }
 
     @Override
     public void rewritersChanged(final SolrIndexSearcher indexSearcher, final Set<RewriterFactoryContext> allRewriters) {
         preload(indexSearcher, allRewriters);
     }
 
+    /**
+     * @return The number of terms of the most recently started preload
+     */
+    public int getTermsTotal() {
+        return currentState.termsTotal;
+    }
+
+    /**
+     * @return The number of terms that the most recently started preload has done so far
+     */
+    public int getTermsDone() {
+        return currentState.termsDone.get();
+    }
+
+    /**
+     * @return The number of hit tests that the most recently started preload reused from the previous preload
+     */
+    public int getTermsReused() {
+        return currentState.termsReused.get();
+    }
+
+    public boolean isRunning() {
+        return runningPreloads.get() > 0;
+    }
+
+    public long getPreloadCount() {
+        return preloadCount.get();
+    }
+
+    public long getLastDurationMillis() {
+        return lastDurationMillis;
+    }
+
+    protected List<PreloadTerm> collectPreloadTerms(final Collection<RewriterFactoryContext> rewriterFactories) {
+
+        final Map<CacheKey, PreloadTerm> terms = new LinkedHashMap<>();
+        for (final RewriterFactoryContext factoryContext : rewriterFactories) {
+            for (final Term term: factoryContext.getRewriterFactory().getCacheableGenerableTerms()) {
+                final String field = term.getField();
+                if (field != null) {
+                    if (preloadFields.contains(field)) {
+                        final PreloadTerm preloadTerm = new PreloadTerm(field, term);
+                        terms.putIfAbsent(preloadTerm.key, preloadTerm);
+                    }
+                } else {
+                    for (final String fieldname : preloadFields) {
+                        final PreloadTerm preloadTerm = new PreloadTerm(fieldname, term);
+                        terms.putIfAbsent(preloadTerm.key, preloadTerm);
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(terms.values());
+
+    }
+
+    private void registerMetrics() {
+
+        final SolrCore core = getCore();
+        if (core == null || !metricsRegistered.compareAndSet(false, true)) {
+            return;
+        }
+
+        final SolrMetricsContext metricsContext = core.getSolrMetricsContext();
+        if (metricsContext == null) {
+            return;
+        }
+
+        // the listener that preloaded most recently for this cache reports the metrics
+        final String scope = "querqyTermQueryCachePreloader." + cacheName;
+        final String category = SolrInfoBean.Category.CACHE.toString();
+        metricsContext.gauge((Gauge<Integer>) this::getTermsTotal, true, "termsTotal", category, scope);
+        metricsContext.gauge((Gauge<Integer>) this::getTermsDone, true, "termsDone", category, scope);
+        metricsContext.gauge((Gauge<Integer>) this::getTermsReused, true, "termsReused", category, scope);
+        metricsContext.gauge((Gauge<Integer>) runningPreloads::get, true, "running", category, scope);
+        metricsContext.gauge((Gauge<Long>) preloadCount::get, true, "count", category, scope);
+        metricsContext.gauge((Gauge<Long>) () -> lastDurationMillis, true, "lastDurationMillis", category, scope);
+
+    }
+
+    void shutdown() {
+        closed.set(true);
+        for (final Future<?> future : pendingTasks) {
+            future.cancel(true);
+        }
+        if (backgroundExecutor != null) {
+            ExecutorUtil.shutdownNowAndAwaitTermination(backgroundExecutor);
+        }
+        if (workerExecutor != null) {
+            ExecutorUtil.shutdownNowAndAwaitTermination(workerExecutor);
+        }
+    }
+
+    private static Set<Object> leafKeys(final IndexSearcher searcher) {
+        final Set<Object> keys = new HashSet<>();
+        for (final LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+            final Object key = coreKey(leaf);
+            if (key != null) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    private static Object coreKey(final LeafReaderContext leaf) {
+        final IndexReader.CacheHelper helper = leaf.reader().getCoreCacheHelper();
+        return helper == null ? null : helper.getKey();
+    }
+
+    private static Object readerKey(final LeafReaderContext leaf) {
+        final IndexReader.CacheHelper helper = leaf.reader().getReaderCacheHelper();
+        return helper == null ? null : helper.getKey();
+    }
+
+    private static void decRef(final IndexReader reader) {
+        try {
+            reader.decRef();
+        } catch (final IOException e) {
+            LOG.error("Error releasing index reader", e);
+        }
+    }
+
     private void configurePreloadFields(final NamedList args) {
         final String fieldConf = (String) args.get(CONF_PRELOAD_FIELDS);
         if (fieldConf == null || fieldConf.trim().isEmpty()) {
@@ -201,4 +593,71 @@ public class TermQueryCachePreloader extends AbstractSolrEventListener implement
         return new SolrTermQueryCacheAdapter(false, solrCache);
     }
 
+    /**
+     * A term to preload for a field
+     */
+    static final class PreloadTerm {
+
+        final String field;
+        final Term term;
+        final CacheKey key;
+
+        PreloadTerm(final String field, final Term term) {
+            this.field = field;
+            this.term = term;
+            this.key = new CacheKey(field, term);
+        }
+    }
+
+    /**
+     * The values computed during a preload and its progress. Each preload has its own state so that a preload that
+     * runs in the background doesn't reset the progress of another one.
+     */
+    static final class PreloadState {
+
+        static final PreloadState EMPTY = new PreloadState(Collections.emptySet(), 0);
+
+        // the core cache keys of the segments that were tested for hits
+        final Set<Object> testedCoreKeys;
+        // the analysed values by term, without the 'never match' overrides
+        final Map<CacheKey, TermQueryCacheValue> values = new ConcurrentHashMap<>();
+        // the reader cache key of a segment with a hit by term
+        final Map<CacheKey, Object> segmentsWithHits = new ConcurrentHashMap<>();
+
+        final int termsTotal;
+        final AtomicInteger termsDone = new AtomicInteger();
+        final AtomicInteger termsReused = new AtomicInteger();
+
+        PreloadState(final Set<Object> testedCoreKeys, final int termsTotal) {
+            this.testedCoreKeys = testedCoreKeys;
+            this.termsTotal = termsTotal;
+        }
+    }
+
+    /**
+     * Records the values that the {@link TermSubQueryBuilder} puts into the cache. Lookups always miss so that terms
+     * are analysed.
+     */
+    static final class RecordingTermQueryCache implements TermQueryCache {
+
+        final TermQueryCache delegate;
+        final Map<CacheKey, TermQueryCacheValue> values;
+
+        RecordingTermQueryCache(final TermQueryCache delegate, final Map<CacheKey, TermQueryCacheValue> values) {
+            this.delegate = delegate;
+            this.values = values;
+        }
+
+        @Override
+        public void put(final CacheKey key, final TermQueryCacheValue value) {
+            values.put(key, value);
+            delegate.put(key, value);
+        }
+
+        @Override
+        public TermQueryCacheValue get(final CacheKey key) {
+            return null;
+        }
+    }
+
 }
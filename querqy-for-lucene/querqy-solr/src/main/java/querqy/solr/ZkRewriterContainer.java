@@ -143,6 +143,16 @@ public class ZkRewriterContainer extends RewriterContainer<ZkSolrResourceLoader>
     @Override
     protected void doSaveRewriter(final String rewriterId, final Map<String, Object> instanceDescription)
             throws IOException {
+        doSaveRewriter(rewriterId, instanceDescription, null);
+    }
+
+    /**
+     * Save the rewriter. If an expected version is given, the storage info node is only replaced if it still has this
+     * version, so that concurrent updates on other nodes are not lost.
+     */
+    @Override
+    protected boolean doSaveRewriter(final String rewriterId, final Map<String, Object> instanceDescription,
+                                     final Object expectedVersion) throws IOException {
 
         if (rewriterId.startsWith(".")) {
             throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Rewriter ID must not start with '.'");
@@ -185,9 +195,15 @@ public class ZkRewriterContainer extends RewriterContainer<ZkSolrResourceLoader>
         try {
             stat = zkClient.exists(rewriterStorageInfoNode, null, true);
         } catch (final InterruptedException | KeeperException e) {
+            deleteRewriterData(rewriterId, dataDirectory, uuids);
             throw new IOException("Error saving rewriter " + rewriterId, e);
         }
 
+        if (expectedVersion != null && stat == null) {
+            deleteRewriterData(rewriterId, dataDirectory, uuids);
+            throw new SolrException(SolrException.ErrorCode.NOT_FOUND, "No such rewriter: " + rewriterId);
+        }
+
         try {
 
             final byte[] infoData = new RewriterStorageInfo(uuids, dataDirectory).toJsonString().getBytes(UTF_8);
@@ -217,30 +233,60 @@ public class ZkRewriterContainer extends RewriterContainer<ZkSolrResourceLoader>
                 final RewriterStorageInfo oldStorageInfo = RewriterStorageInfo.fromString(
                         new String(zkClient.getData(rewriterStorageInfoNode, null, stat, true)));
 
-                zkClient.setData(rewriterStorageInfoNode, infoData, stat.getVersion(), true);
-
-                for (final String oldUuid : oldStorageInfo.uuids) {
-                    final String oldPath = rewriterDataPath(rewriterId, oldStorageInfo.dataDir, oldUuid);
-                    try {
-                        zkClient.delete(oldPath, -1, true);
-                    } catch (final Exception e) {
-                        LOG.error("Could not delete old rewriter data: " + oldPath, e);
+                final int version = expectedVersion != null ? (Integer) expectedVersion : stat.getVersion();
+                try {
+                    zkClient.setData(rewriterStorageInfoNode, infoData, version, true);
+                } catch (final KeeperException.BadVersionException e) {
+                    // the rewriter was changed after the caller read it
+                    deleteRewriterData(rewriterId, dataDirectory, uuids);
+                    if (expectedVersion != null) {
+                        return false;
                     }
+                    throw e;
                 }
+
+                deleteRewriterData(rewriterId, oldStorageInfo.dataDir, oldStorageInfo.uuids);
             }
 
         } catch (final InterruptedException | KeeperException e) {
             throw new IOException("Error saving rewriter " + rewriterId, e);
         }
 
+        return true;
+
+    }
+
+    @Override
+    protected synchronized VersionedRewriterDefinition readVersionedRewriterDefinition(final String rewriterId)
+            throws IOException {
+        final Stat stat = new Stat();
+        final RewriterStorageInfo storageInfo = readRewriterStorageInfo(rewriterId, null, stat);
+        return new VersionedRewriterDefinition(readRewriterDefinitionForStorageInfo(rewriterId, storageInfo),
+                stat.getVersion());
+    }
+
+    private void deleteRewriterData(final String rewriterId, final String dataDir, final List<String> uuids) {
+        for (final String uuid : uuids) {
+            final String path = rewriterDataPath(rewriterId, dataDir, uuid);
+            try {
+                zkClient.delete(path, -1, true);
+            } catch (final Exception e) {
+                LOG.error("Could not delete rewriter data: " + path, e);
+            }
+        }
     }
 
     protected RewriterStorageInfo readRewriterStorageInfo(final String rewriterId, final Watcher watcher) throws
             IOException {
+        return readRewriterStorageInfo(rewriterId, watcher, null);
+    }
+
+    protected RewriterStorageInfo readRewriterStorageInfo(final String rewriterId, final Watcher watcher,
+                                                          final Stat stat) throws IOException {
 
         try {
             return RewriterStorageInfo.fromString(new String(zkClient.getData(rewriterStorageInfoNode(rewriterId), watcher,
-                    null, true)));
+                    stat, true)));
         } catch (final KeeperException e) {
             if (KeeperException.Code.NONODE == e.code()) {
                 throw new SolrException(SolrException.ErrorCode.NOT_FOUND, "Rewriter " + rewriterId + " not found.");
@@ -270,6 +316,7 @@ public class ZkRewriterContainer extends RewriterContainer<ZkSolrResourceLoader>
 
         try {
             zkClient.delete(rewriterStorageInfoNode(rewriterId), -1, true);
+            ZkRewriterDefinitionCache.INSTANCE.remove(rewriterStorageInfoNode(rewriterId));
         } catch (final KeeperException e) {
             if (KeeperException.Code.NONODE == e.code()) {
                 throw new SolrException(SolrException.ErrorCode.NOT_FOUND, "Rewriter " + rewriterId + " not found.");
@@ -346,7 +393,8 @@ public class ZkRewriterContainer extends RewriterContainer<ZkSolrResourceLoader>
         final ZooKeeper zooKeeper = zkClient.getZooKeeper();
         for (final String rewriterId : known) {
             LOG.info("Unloading rewriter: {}", rewriterId);
-            newRewriters.remove(rewriterId);
+            releaseRewriter(newRewriters.remove(rewriterId));
+            ZkRewriterDefinitionCache.INSTANCE.remove(rewriterStorageInfoNode(rewriterId));
             final Watcher oldWatcher = rewriterWatchers.remove(rewriterId);
             if (oldWatcher != null) {
                 try {
@@ -359,6 +407,7 @@ public class ZkRewriterContainer extends RewriterContainer<ZkSolrResourceLoader>
             }
         }
         rewriters = newRewriters;
+        invalidateCaches();
 
     }
 
@@ -382,9 +431,26 @@ public class ZkRewriterContainer extends RewriterContainer<ZkSolrResourceLoader>
                                                                       final Watcher watcher)
             throws IOException {
 
-        try (final ByteArrayOutputStream bos = new ByteArrayOutputStream(maxFileSize)) {
+        return readRewriterDefinitionForStorageInfo(rewriterId, readRewriterStorageInfo(rewriterId, watcher));
+    }
 
-            final RewriterStorageInfo storageInfo = readRewriterStorageInfo(rewriterId, watcher);
+    protected Map<String, Object> readRewriterDefinitionForStorageInfo(final String rewriterId,
+                                                                       final RewriterStorageInfo storageInfo)
+            throws IOException {
+
+        // The cores of this JVM share the definitions so that each version is only fetched and parsed once
+        final List<String> version = new ArrayList<>(storageInfo.uuids.size() + 1);
+        version.add(storageInfo.dataDir);
+        version.addAll(storageInfo.uuids);
+
+        return ZkRewriterDefinitionCache.INSTANCE.get(rewriterStorageInfoNode(rewriterId), version,
+                () -> fetchRewriterDefinition(rewriterId, storageInfo));
+    }
+
+    protected Map<String, Object> fetchRewriterDefinition(final String rewriterId,
+                                                          final RewriterStorageInfo storageInfo) throws IOException {
+
+        try (final ByteArrayOutputStream bos = new ByteArrayOutputStream(maxFileSize)) {
 
             for (final String uuid : storageInfo.uuids) {
                 try {
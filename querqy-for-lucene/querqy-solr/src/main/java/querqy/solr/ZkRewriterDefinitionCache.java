@@ -0,0 +1,91 @@
+package querqy.solr;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>A JVM-wide cache of the rewriter definitions that the {@link ZkRewriterContainer}s read from ZooKeeper.</p>
+ *
+ * <p>All cores that use the same configset watch the same rewriter nodes in ZK. Without this cache, a change of a
+ * rewriter makes each core on a node download all chunks of the rewriter data and deserialize the JSON at the same
+ * time. The chunks of a rewriter version are stored under random UUIDs and they are never changed, so that the UUIDs
+ * identify the version. The cache keeps the latest version per rewriter node and makes sure that a version is only
+ * fetched and deserialized once per JVM, while the other cores wait for it.</p>
+ *
+ * <p>Cached definitions are shared between cores and cannot be modified.</p>
+ */
+final class ZkRewriterDefinitionCache {
+
+    static final ZkRewriterDefinitionCache INSTANCE = new ZkRewriterDefinitionCache();
+
+    interface DefinitionLoader {
+        Map<String, Object> load() throws IOException;
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    ZkRewriterDefinitionCache() {}
+
+    /**
+     * Get the rewriter definition for a version of a rewriter.
+     *
+     * @param rewriterPath The path of the rewriter's storage info node in ZK
+     * @param version The version of the rewriter definition, made up of the data directory and the chunk UUIDs
+     * @param loader Fetches and deserializes the definition if the version is not in the cache
+     * @return The (unmodifiable) rewriter definition
+     * @throws IOException if the loader fails
+     */
+    Map<String, Object> get(final String rewriterPath, final List<String> version, final DefinitionLoader loader)
+            throws IOException {
+
+        final Entry entry = entries.computeIfAbsent(rewriterPath, path -> new Entry());
+
+        // we only block the cores that load the same rewriter
+        synchronized (entry) {
+            if (!version.equals(entry.version)) {
+                entry.definition = unmodifiable(loader.load());
+                entry.version = version;
+            }
+            return entry.definition;
+        }
+    }
+
+    /**
+     * Remove a rewriter from the cache, for example, when it was deleted.
+     *
+     * @param rewriterPath The path of the rewriter's storage info node in ZK
+     */
+    void remove(final String rewriterPath) {
+        entries.remove(rewriterPath);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T unmodifiable(final T value) {
+        if (value instanceof Map) {
+            final Map<Object, Object> copy = new LinkedHashMap<>();
+            ((Map<Object, Object>) value).forEach((k, v) -> copy.put(k, unmodifiable(v)));
+            return (T) Collections.unmodifiableMap(copy);
+        }
+        if (value instanceof List) {
+            final List<Object> copy = new ArrayList<>(((List<Object>) value).size());
+            ((List<Object>) value).forEach(v -> copy.add(unmodifiable(v)));
+            return (T) Collections.unmodifiableList(copy);
+        }
+        return value;
+    }
+
+    private static final class Entry {
+        List<String> version = null;
+        Map<String, Object> definition = null;
+    }
+
+}
@@ -63,6 +63,11 @@ public class NumberConcatenationRewriterFactory extends SolrRewriterFactoryAdapt
         return factory;
     }
 
+    @Override
+    public boolean isShareable() {
+        return true;
+    }
+
     public static class NumberConcatenationConfigRequestBuilder extends RewriterConfigRequestBuilder {
 
         private Boolean acceptGeneratedTerms;
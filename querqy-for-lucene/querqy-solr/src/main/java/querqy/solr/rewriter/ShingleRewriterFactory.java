@@ -50,6 +50,11 @@ public class ShingleRewriterFactory extends SolrRewriterFactoryAdapter implement
         return factory;
     }
 
+    @Override
+    public boolean isShareable() {
+        return true;
+    }
+
     public static class ShingleConfigRequestBuilder extends RewriterConfigRequestBuilder {
 
         private Boolean acceptGeneratedTerms;
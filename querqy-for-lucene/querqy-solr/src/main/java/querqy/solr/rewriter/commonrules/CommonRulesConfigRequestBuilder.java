@@ -5,15 +5,18 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import querqy.rewrite.commonrules.QuerqyParserFactory;
 import querqy.rewrite.commonrules.model.BoostInstruction;
 import querqy.rewrite.commonrules.select.SelectionStrategyFactory;
+import querqy.rewrite.logging.RewriteLoggingSampler;
 import querqy.rewrite.lookup.preprocessing.LookupPreprocessorType;
 import querqy.solr.FactoryAdapter;
 import querqy.solr.RewriterConfigRequestBuilder;
+import querqy.solr.RewriterConfigRequestBuilder.UpdateRewriterConfigSolrRequest;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
@@ -21,10 +24,16 @@ public class CommonRulesConfigRequestBuilder extends RewriterConfigRequestBuilde
 
     private Boolean ignoreCase = null;
     private Boolean allowBooleanInput = null;
+    private Boolean allowRuleUpdates = null;
+    private Integer maxRuleChanges = null;
     private BoostInstruction.BoostMethod boostMethod = null;
     private Class<? extends QuerqyParserFactory> rhsParser = null;
     private String rules = null;
-    private LookupPreprocessorType lookupPreprocessorType = null;
+    private String lookupPreprocessor = null;
+    private Integer parsingThreads = null;
+    private String compiledRulesDir = null;
+    private Integer rewriteLoggingSampleRate = null;
+    private RewriteLoggingSampler.Mode rewriteLoggingSampleMode = null;
     private final Map<String, Map<String, Object>> ruleSelectionStrategies = new HashMap<>();
 
     public CommonRulesConfigRequestBuilder() {
@@ -36,8 +45,29 @@ public class CommonRulesConfigRequestBuilder extends RewriterConfigRequestBuilde
         return this;
     }
 
+    public CommonRulesConfigRequestBuilder allowRuleUpdates(final boolean allowRuleUpdates) {
+        this.allowRuleUpdates = allowRuleUpdates;
+        return this;
+    }
+
+    public CommonRulesConfigRequestBuilder maxRuleChanges(final int maxRuleChanges) {
+        this.maxRuleChanges = maxRuleChanges;
+        return this;
+    }
+
     public CommonRulesConfigRequestBuilder lookupPreprocessorType(final LookupPreprocessorType lookupPreprocessorType) {
-        this.lookupPreprocessorType = lookupPreprocessorType;
+        return lookupPreprocessor(lookupPreprocessorType.getName());
+    }
+
+    /**
+     * @param lookupPreprocessor The name of a {@link LookupPreprocessorType} or a name under which a preprocessor was
+     *                           registered using
+     *                           {@link querqy.rewrite.lookup.preprocessing.LookupPreprocessorFactory#register(String,
+     *                           querqy.rewrite.lookup.preprocessing.LookupPreprocessor)}
+     * @return This builder
+     */
+    public CommonRulesConfigRequestBuilder lookupPreprocessor(final String lookupPreprocessor) {
+        this.lookupPreprocessor = lookupPreprocessor;
         return this;
     }
 
@@ -51,6 +81,26 @@ public class CommonRulesConfigRequestBuilder extends RewriterConfigRequestBuilde
         return this;
     }
 
+    public CommonRulesConfigRequestBuilder parsingThreads(final int parsingThreads) {
+        this.parsingThreads = parsingThreads;
+        return this;
+    }
+
+    public CommonRulesConfigRequestBuilder compiledRulesDir(final String compiledRulesDir) {
+        this.compiledRulesDir = compiledRulesDir;
+        return this;
+    }
+
+    public CommonRulesConfigRequestBuilder rewriteLoggingSampleRate(final int rewriteLoggingSampleRate) {
+        this.rewriteLoggingSampleRate = rewriteLoggingSampleRate;
+        return this;
+    }
+
+    public CommonRulesConfigRequestBuilder rewriteLoggingSampleMode(final RewriteLoggingSampler.Mode mode) {
+        this.rewriteLoggingSampleMode = mode;
+        return this;
+    }
+
     public CommonRulesConfigRequestBuilder rules(final String rules) {
         if (rules == null) {
             throw new IllegalArgumentException("rules must not be null");
@@ -88,18 +138,42 @@ public class CommonRulesConfigRequestBuilder extends RewriterConfigRequestBuilde
             config.put(CommonRulesRewriterFactory.CONF_RHS_QUERY_PARSER, rhsParser.getName());
         }
 
-        if (lookupPreprocessorType != null) {
-            config.put(CommonRulesRewriterFactory.CONF_LOOKUP_PREPROCESSOR, lookupPreprocessorType.getName());
+        if (lookupPreprocessor != null) {
+            config.put(CommonRulesRewriterFactory.CONF_LOOKUP_PREPROCESSOR, lookupPreprocessor);
         }
 
         if (allowBooleanInput != null) {
             config.put(CommonRulesRewriterFactory.CONF_ALLOW_BOOLEAN_INPUT, allowBooleanInput);
         }
 
+        if (allowRuleUpdates != null) {
+            config.put(CommonRulesRewriterFactory.CONF_ALLOW_RULE_UPDATES, allowRuleUpdates);
+        }
+
+        if (maxRuleChanges != null) {
+            config.put(CommonRulesRewriterFactory.CONF_MAX_RULE_CHANGES, maxRuleChanges);
+        }
+
         if (boostMethod != null) {
             config.put(CommonRulesRewriterFactory.CONF_BOOST_METHOD, boostMethod.name());
         }
 
+        if (parsingThreads != null) {
+            config.put(CommonRulesRewriterFactory.CONF_PARSING_THREADS, parsingThreads);
+        }
+
+        if (compiledRulesDir != null) {
+            config.put(CommonRulesRewriterFactory.CONF_COMPILED_RULES_DIR, compiledRulesDir);
+        }
+
+        if (rewriteLoggingSampleRate != null) {
+            config.put(CommonRulesRewriterFactory.CONF_REWRITE_LOGGING_SAMPLE_RATE, rewriteLoggingSampleRate);
+        }
+
+        if (rewriteLoggingSampleMode != null) {
+            config.put(CommonRulesRewriterFactory.CONF_REWRITE_LOGGING_SAMPLE_MODE, rewriteLoggingSampleMode.name());
+        }
+
         if (rules == null) {
             throw new RuntimeException(CommonRulesRewriterFactory.CONF_RULES + " must not be null");
         }
@@ -114,5 +188,27 @@ public class CommonRulesConfigRequestBuilder extends RewriterConfigRequestBuilde
 
     }
 
+    /**
+     * Build a request that adds or updates rules and deletes rules of a rewriter that was saved with
+     * {@link #allowRuleUpdates(boolean)}. Rules are identified by their _id.
+     *
+     * @param rewriterId The rewriter ID
+     * @param changedRules The added and updated rules in rules.txt format
+     * @param deletedRuleIds The IDs of the rules to delete
+     * @return The request
+     */
+    public static UpdateRewriterConfigSolrRequest buildRuleChangesRequest(final String rewriterId,
+                                                                          final String changedRules,
+                                                                          final List<String> deletedRuleIds) {
+        final Map<String, Object> changes = new HashMap<>(2);
+        if (changedRules != null) {
+            changes.put(CommonRulesRewriterFactory.CONF_CHANGE_RULES, changedRules);
+        }
+        if (deletedRuleIds != null) {
+            changes.put(CommonRulesRewriterFactory.CONF_CHANGE_DELETE, deletedRuleIds);
+        }
+        return buildUpdateRequest(rewriterId, changes);
+    }
+
 
 }
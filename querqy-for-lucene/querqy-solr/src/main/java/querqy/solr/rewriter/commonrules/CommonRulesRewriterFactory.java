@@ -4,27 +4,47 @@ import org.apache.commons.io.IOUtils;
 import org.apache.lucene.util.ResourceLoader;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.util.NamedList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import querqy.rewrite.RewriterFactory;
 import querqy.rewrite.commonrules.QuerqyParserFactory;
+import querqy.rewrite.commonrules.RuleChangesMerger;
+import querqy.rewrite.commonrules.RuleUsageCounter;
 import querqy.rewrite.commonrules.WhiteSpaceQuerqyParserFactory;
 import querqy.rewrite.commonrules.model.BoostInstruction.BoostMethod;
 import querqy.rewrite.commonrules.select.ExpressionCriteriaSelectionStrategyFactory;
 import querqy.rewrite.commonrules.select.SelectionStrategyFactory;
+import querqy.rewrite.logging.RewriteLoggingSampler;
 import querqy.rewrite.lookup.preprocessing.LookupPreprocessor;
 import querqy.rewrite.lookup.preprocessing.LookupPreprocessorFactory;
 import querqy.rewrite.lookup.preprocessing.LookupPreprocessorType;
 import querqy.solr.FactoryAdapter;
+import querqy.solr.SharedRewriterFactoryRegistry;
 import querqy.solr.SolrRewriterFactoryAdapter;
 import querqy.solr.rewriter.ClassicConfigurationParser;
 import querqy.solr.utils.ConfigUtils;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.StringReader;
+import java.net.URLEncoder;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static querqy.solr.RewriterConfigRequestBuilder.CONF_CLASS;
@@ -46,9 +66,64 @@ public class CommonRulesRewriterFactory extends SolrRewriterFactoryAdapter imple
             new ExpressionCriteriaSelectionStrategyFactory();
 
     static final LookupPreprocessorType DEFAULT_LOOKUP_PREPROCESSOR_TYPE = LookupPreprocessorType.LOWERCASE;
+    static final int DEFAULT_MAX_RULE_CHANGES = 100;
     public static final String CONF_BUILD_TERM_CACHE = "buildTermCache";
-
-    private RewriterFactory delegate = null;
+    /**
+     * The number of threads for parsing the rules. Defaults to the number of available processors.
+     */
+    public static final String CONF_PARSING_THREADS = "parsingThreads";
+    /**
+     * Allow to add, update and delete single rules (identified by their _id) without re-parsing all rules. Cannot be
+     * combined with {@link #CONF_ALLOW_BOOLEAN_INPUT}.
+     */
+    public static final String CONF_ALLOW_RULE_UPDATES = "allowRuleUpdates";
+    /**
+     * The list of rule changes that were applied to the {@link #CONF_RULES} in this order. Each change has the
+     * added/updated rules under {@link #CONF_CHANGE_RULES} and the IDs of deleted rules under
+     * {@link #CONF_CHANGE_DELETE}. Saving the rewriter with new rules discards the changes.
+     */
+    public static final String CONF_RULE_CHANGES = "ruleChanges";
+    /**
+     * The maximum number of {@link #CONF_RULE_CHANGES} to keep. If an update exceeds this number, all changes are
+     * merged into the {@link #CONF_RULES} (see {@link RuleChangesMerger}), and the rules are parsed again when the
+     * rewriter is reloaded. Defaults to 100. 0 merges every change.
+     */
+    public static final String CONF_MAX_RULE_CHANGES = "maxRuleChanges";
+    public static final String CONF_CHANGE_RULES = "rules";
+    public static final String CONF_CHANGE_DELETE = "delete";
+    /**
+     * Only create detailed rewrite logs for 1 in N requests. Defaults to 1 (every request). Rule usage is counted for
+     * all requests.
+     */
+    public static final String CONF_REWRITE_LOGGING_SAMPLE_RATE = "rewriteLoggingSampleRate";
+    /**
+     * How requests are sampled for detailed rewrite logs: 'random' (default) or 'query' (a hash of the query terms,
+     * so that a query is either always or never sampled). See {@link RewriteLoggingSampler}.
+     */
+    public static final String CONF_REWRITE_LOGGING_SAMPLE_MODE = "rewriteLoggingSampleMode";
+    /**
+     * A directory in the local file system for the compiled, binary representation of the rules. If set, the rules
+     * are compiled into a file in this directory and the rewriter memory-maps this file instead of keeping the rules
+     * on the heap. The files of a rewriter are kept in a sub-directory named after the rewriter ID. The file name is
+     * derived from the configuration so that all cores (and processes) that use the same rules map the same file and
+     * share the page cache. Existing files are re-used. When a rewriter is loaded, the files of its other
+     * configurations that aren't used by a rewriter loaded in this JVM are deleted. The file of a configuration is
+     * also deleted when the rewriter was replaced or deleted in all cores. Files are kept when cores are closed.
+     * Cannot be combined with {@link #CONF_ALLOW_RULE_UPDATES} or {@link #CONF_ALLOW_BOOLEAN_INPUT}.
+     */
+    public static final String CONF_COMPILED_RULES_DIR = "compiledRulesDir";
+
+    static final String COMPILED_RULES_FILE_SUFFIX = ".rules.bin";
+
+    private static final Logger LOG = LoggerFactory.getLogger(CommonRulesRewriterFactory.class);
+
+    // Serializes creating, mapping and deleting the compiled rules files of a rewriter in the JVM. Keyed by the
+    // directory of the rewriter.
+    private static final ConcurrentMap<Path, Object> COMPILED_RULES_LOCKS = new ConcurrentHashMap<>();
+
+    private querqy.rewrite.commonrules.SimpleCommonRulesRewriterFactory delegate = null;
+    private Map<String, Object> config = null;
+    private Path compiledRulesFile = null;
 
     public CommonRulesRewriterFactory(final String rewriterId) {
         super(rewriterId);
@@ -70,30 +145,150 @@ public class CommonRulesRewriterFactory extends SolrRewriterFactoryAdapter imple
 
         final Map<String, SelectionStrategyFactory> selectionStrategyFactories = loadSelectionStrategyFactories(config);
 
-        final Optional<String> lookupPreprocessorTypeName = ConfigUtils.getStringArg(config, CONF_LOOKUP_PREPROCESSOR);
-        final LookupPreprocessorType lookupPreprocessorType = lookupPreprocessorTypeName
-                .map(LookupPreprocessorType::fromString)
-                .orElse(DEFAULT_LOOKUP_PREPROCESSOR_TYPE);
+        final String lookupPreprocessorName = readLookupPreprocessorName(config);
+
+        final Optional<String> compiledRulesDir = ConfigUtils.getStringArg(config, CONF_COMPILED_RULES_DIR);
 
         try {
-            delegate = new querqy.rewrite.commonrules.SimpleCommonRulesRewriterFactory(
-                    rewriterId,
-                    new StringReader(rules),
-                    allowBooleanInput,
-                    boostMethod,
-                    querqyParser,
-                    selectionStrategyFactories,
-                    DEFAULT_SELECTION_STRATEGY_FACTORY,
-                    buildTermCache,
-                    lookupPreprocessorType);
+            delegate = compiledRulesDir.isPresent()
+                    ? createCompiledDelegate(
+                            Paths.get(compiledRulesDir.get()),
+                            config,
+                            rules,
+                            boostMethod,
+                            querqyParser,
+                            selectionStrategyFactories,
+                            buildTermCache,
+                            lookupPreprocessorName,
+                            readParsingThreads(config))
+                    : createDelegate(
+                            rules,
+                            allowBooleanInput,
+                            ConfigUtils.getArg(config, CONF_ALLOW_RULE_UPDATES, false),
+                            readRuleChanges(config),
+                            boostMethod,
+                            querqyParser,
+                            selectionStrategyFactories,
+                            buildTermCache,
+                            lookupPreprocessorName,
+                            readParsingThreads(config));
+            final RewriteLoggingSampler sampler = readRewriteLoggingSampler(config);
+            if (sampler != RewriteLoggingSampler.ALWAYS) {
+                delegate = delegate.withRewriteLoggingSampler(sampler);
+            }
         } catch (final IOException e) {
             throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
                     "Could not create delegate factory ", e);
         }
 
+        this.config = config;
 
     }
 
+    /**
+     * Applies only the rule changes that were added to the configuration of the previous adapter if the rules are
+     * updatable and the configuration hasn't changed otherwise. Falls back to {@link #configure(Map)}.
+     */
+    @Override
+    public void configure(final Map<String, Object> config, final SolrRewriterFactoryAdapter previous) {
+
+        final CommonRulesRewriterFactory previousFactory = (CommonRulesRewriterFactory) previous;
+        if (previousFactory.delegate == null || !previousFactory.delegate.isUpdatable()) {
+            configure(config);
+            return;
+        }
+
+        if (!onlyAddsRuleChanges(config, previousFactory.config)) {
+            configure(config);
+            return;
+        }
+
+        final List<Map<String, Object>> previousChanges = readRuleChanges(previousFactory.config);
+        final List<Map<String, Object>> changes = readRuleChanges(config);
+        try {
+            delegate = applyRuleChanges(previousFactory.delegate,
+                    changes.subList(previousChanges.size(), changes.size()));
+        } catch (final IOException e) {
+            throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
+                    "Could not apply rule changes ", e);
+        }
+
+        this.config = config;
+
+    }
+
+    /**
+     * Rule usage counts are kept if this adapter has the configuration of the previous adapter plus rule changes.
+     */
+    @Override
+    public boolean continues(final SolrRewriterFactoryAdapter previous) {
+        return previous instanceof CommonRulesRewriterFactory && config != null
+                && ((CommonRulesRewriterFactory) previous).config != null
+                && onlyAddsRuleChanges(config, ((CommonRulesRewriterFactory) previous).config);
+    }
+
+    /**
+     * @return true iff the configuration equals the previous configuration, except for the rule changes that were
+     * appended to the rule changes of the previous configuration
+     */
+    protected boolean onlyAddsRuleChanges(final Map<String, Object> config, final Map<String, Object> previousConfig) {
+        final List<Map<String, Object>> previousChanges = readRuleChanges(previousConfig);
+        final List<Map<String, Object>> changes = readRuleChanges(config);
+        return changes.size() >= previousChanges.size()
+                && changes.subList(0, previousChanges.size()).equals(previousChanges)
+                && withoutRuleChanges(config).equals(withoutRuleChanges(previousConfig));
+    }
+
+    /**
+     * Appends the changes to the {@link #CONF_RULE_CHANGES}. The changes must be a map with the added and updated
+     * rules under {@link #CONF_CHANGE_RULES} and/or the IDs of the rules to delete under {@link #CONF_CHANGE_DELETE}.
+     * If there are more than {@link #CONF_MAX_RULE_CHANGES} changes, they are merged into the {@link #CONF_RULES}.
+     */
+    @Override
+    public Map<String, Object> updateConfiguration(final Map<String, Object> config,
+                                                   final Map<String, Object> changes) {
+
+        if (!ConfigUtils.getArg(config, CONF_ALLOW_RULE_UPDATES, false)) {
+            throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Rewriter " + rewriterId +
+                    " does not allow rule updates. Set " + CONF_ALLOW_RULE_UPDATES + "=true");
+        }
+
+        final List<String> errors = validateRuleChange(changes);
+        if (errors != null) {
+            throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+                    "Invalid rule changes for rewriter " + rewriterId + " " + String.join("; ", errors));
+        }
+
+        // parse the changed rules on their own so that we don't have to parse all rules for validation
+        try {
+            applyRuleChanges(createDelegate("", false, true, Collections.emptyList(), readBoostMethod(config),
+                    ConfigUtils.getInstanceFromArg(config, CONF_RHS_QUERY_PARSER, DEFAULT_RHS_QUERY_PARSER),
+                    loadSelectionStrategyFactories(config), false, readLookupPreprocessorName(config), 1),
+                    Collections.singletonList(changes));
+        } catch (final IOException e) {
+            throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+                    "Invalid rule changes for rewriter " + rewriterId + " " + e.getMessage());
+        }
+
+        final List<Map<String, Object>> ruleChanges = new ArrayList<>(readRuleChanges(config));
+        ruleChanges.add(changes);
+
+        final Map<String, Object> newConfig = new HashMap<>(config);
+        if (ruleChanges.size() > readMaxRuleChanges(config)) {
+            try {
+                newConfig.put(CONF_RULES, mergeRuleChanges(ConfigUtils.getStringArg(config, CONF_RULES, ""),
+                        ruleChanges));
+            } catch (final IOException e) {
+                throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
+                        "Could not merge rule changes of rewriter " + rewriterId, e);
+            }
+            newConfig.remove(CONF_RULE_CHANGES);
+        } else {
+            newConfig.put(CONF_RULE_CHANGES, ruleChanges);
+        }
+        return newConfig;
+    }
+
     @Override
     public List<String> validateConfiguration(final Map<String, Object> config) {
 
@@ -123,19 +318,92 @@ public class CommonRulesRewriterFactory extends SolrRewriterFactoryAdapter imple
         }
 
         final boolean allowBooleanInput = ConfigUtils.getArg(config, CONF_ALLOW_BOOLEAN_INPUT, false);
+        final boolean allowRuleUpdates = ConfigUtils.getArg(config, CONF_ALLOW_RULE_UPDATES, false);
+        if (allowBooleanInput && allowRuleUpdates) {
+            return Collections.singletonList(CONF_ALLOW_RULE_UPDATES + " cannot be combined with " +
+                    CONF_ALLOW_BOOLEAN_INPUT);
+        }
+        if (config.get(CONF_COMPILED_RULES_DIR) != null && (allowBooleanInput || allowRuleUpdates)) {
+            return Collections.singletonList(CONF_COMPILED_RULES_DIR + " cannot be combined with " +
+                    CONF_ALLOW_BOOLEAN_INPUT + " or " + CONF_ALLOW_RULE_UPDATES);
+        }
+
+        final List<Map<String, Object>> ruleChanges;
+        try {
+            ruleChanges = readRuleChanges(config);
+        } catch (final ClassCastException e) {
+            return Collections.singletonList("Invalid attribute '" + CONF_RULE_CHANGES + "': " + e.getMessage());
+        }
+        if (!ruleChanges.isEmpty() && !allowRuleUpdates) {
+            return Collections.singletonList(CONF_RULE_CHANGES + " requires " + CONF_ALLOW_RULE_UPDATES + "=true");
+        }
+        for (final Map<String, Object> ruleChange : ruleChanges) {
+            final List<String> errors = validateRuleChange(ruleChange);
+            if (errors != null) {
+                return errors;
+            }
+        }
+
+        try {
+            readMaxRuleChanges(config);
+        } catch (final IllegalArgumentException e) {
+            return Collections.singletonList("Invalid attribute '" + CONF_MAX_RULE_CHANGES + "': " + e.getMessage());
+        }
+
         final BoostMethod boostMethod = readBoostMethod(config);
 
-        final Boolean buildTermCache = ConfigUtils.getArg(config, CONF_BUILD_TERM_CACHE, true);
+        final int parsingThreads;
+        try {
+            parsingThreads = readParsingThreads(config);
+        } catch (final IllegalArgumentException e) {
+            return Collections.singletonList("Invalid attribute '" + CONF_PARSING_THREADS + "': " + e.getMessage());
+        }
 
-        final Optional<String> lookupPreprocessorTypeName = ConfigUtils.getStringArg(config, CONF_LOOKUP_PREPROCESSOR);
-        final LookupPreprocessorType lookupPreprocessorType = lookupPreprocessorTypeName
-                .map(LookupPreprocessorType::fromString)
-                .orElse(DEFAULT_LOOKUP_PREPROCESSOR_TYPE);
+        try {
+            readRewriteLoggingSampler(config);
+        } catch (final IllegalArgumentException e) {
+            return Collections.singletonList("Invalid attribute '" + CONF_REWRITE_LOGGING_SAMPLE_RATE + "' or '"
+                    + CONF_REWRITE_LOGGING_SAMPLE_MODE + "': " + e.getMessage());
+        }
 
+        final Boolean buildTermCache = ConfigUtils.getArg(config, CONF_BUILD_TERM_CACHE, true);
 
+        final String lookupPreprocessorName = readLookupPreprocessorName(config);
+        try {
+            LookupPreprocessorFactory.fromName(lookupPreprocessorName);
+        } catch (final IllegalArgumentException e) {
+            return Collections.singletonList("Invalid attribute '" + CONF_LOOKUP_PREPROCESSOR + "': " + e.getMessage());
+        }
 
         try {
-            new querqy.rewrite.commonrules.SimpleCommonRulesRewriterFactory(
+            createDelegate(
+                    rules,
+                    allowBooleanInput,
+                    allowRuleUpdates,
+                    ruleChanges,
+                    boostMethod,
+                    querqyParser,
+                    selectionStrategyFactories,
+                    buildTermCache,
+                    lookupPreprocessorName,
+                    parsingThreads
+            );
+        } catch (final IOException e) {
+            return Collections.singletonList("Cannot create rewriter: " + e.getMessage());
+        }
+
+        return null;
+    }
+
+    protected querqy.rewrite.commonrules.SimpleCommonRulesRewriterFactory createDelegate(
+            final String rules, final boolean allowBooleanInput, final boolean allowRuleUpdates,
+            final List<Map<String, Object>> ruleChanges, final BoostMethod boostMethod,
+            final QuerqyParserFactory querqyParser,
+            final Map<String, SelectionStrategyFactory> selectionStrategyFactories, final boolean buildTermCache,
+            final String lookupPreprocessorName, final int parsingThreads) throws IOException {
+
+        if (!allowRuleUpdates) {
+            return new querqy.rewrite.commonrules.SimpleCommonRulesRewriterFactory(
                     rewriterId,
                     new StringReader(rules),
                     allowBooleanInput,
@@ -144,15 +412,258 @@ public class CommonRulesRewriterFactory extends SolrRewriterFactoryAdapter imple
                     selectionStrategyFactories,
                     DEFAULT_SELECTION_STRATEGY_FACTORY,
                     buildTermCache,
-                    lookupPreprocessorType
-            );
+                    lookupPreprocessorName,
+                    parsingThreads);
+        }
+
+        return applyRuleChanges(querqy.rewrite.commonrules.SimpleCommonRulesRewriterFactory.createUpdatable(
+                rewriterId,
+                new StringReader(rules),
+                boostMethod,
+                querqyParser,
+                selectionStrategyFactories,
+                DEFAULT_SELECTION_STRATEGY_FACTORY,
+                buildTermCache,
+                lookupPreprocessorName,
+                parsingThreads), ruleChanges);
+    }
+
+    /**
+     * Creates the delegate from the compiled rules file for the given configuration in the directory. The file is
+     * created from the rules if it doesn't exist yet or if it cannot be read. Deletes the files of other
+     * configurations of this rewriter that are not used by a loaded rewriter.
+     */
+    protected querqy.rewrite.commonrules.SimpleCommonRulesRewriterFactory createCompiledDelegate(
+            final Path compiledRulesDir, final Map<String, Object> config, final String rules,
+            final BoostMethod boostMethod, final QuerqyParserFactory querqyParser,
+            final Map<String, SelectionStrategyFactory> selectionStrategyFactories, final boolean buildTermCache,
+            final String lookupPreprocessorName, final int parsingThreads) throws IOException {
+
+        final Map<String, Object> instanceDescription = new HashMap<>(2);
+        instanceDescription.put(CONF_CLASS, getClass().getName());
+        instanceDescription.put(CONF_CONFIG, config);
+        final Path rewriterDir = getCompiledRulesDir(compiledRulesDir, rewriterId);
+        final Path compiledRules = rewriterDir.resolve(
+                SharedRewriterFactoryRegistry.contentKey(rewriterId, instanceDescription) + COMPILED_RULES_FILE_SUFFIX);
+
+        synchronized (getCompiledRulesLock(rewriterDir)) {
+            final querqy.rewrite.commonrules.SimpleCommonRulesRewriterFactory factory = loadCompiledRules(
+                    rewriterDir, compiledRules, rules, boostMethod, querqyParser, selectionStrategyFactories,
+                    buildTermCache, lookupPreprocessorName, parsingThreads);
+            compiledRulesFile = compiledRules;
+            deleteUnusedCompiledRules(rewriterDir, compiledRules);
+            return factory;
+        }
+    }
+
+    private querqy.rewrite.commonrules.SimpleCommonRulesRewriterFactory loadCompiledRules(
+            final Path rewriterDir, final Path compiledRules, final String rules, final BoostMethod boostMethod,
+            final QuerqyParserFactory querqyParser,
+            final Map<String, SelectionStrategyFactory> selectionStrategyFactories, final boolean buildTermCache,
+            final String lookupPreprocessorName, final int parsingThreads) throws IOException {
+
+        if (Files.exists(compiledRules)) {
+            try {
+                return querqy.rewrite.commonrules.SimpleCommonRulesRewriterFactory.fromCompiledRules(rewriterId,
+                        compiledRules, querqyParser, selectionStrategyFactories, DEFAULT_SELECTION_STRATEGY_FACTORY,
+                        buildTermCache);
+            } catch (final IOException e) {
+                // incomplete or written by an incompatible version - compile the rules again
+                Files.deleteIfExists(compiledRules);
+            }
+        }
+
+        final querqy.rewrite.commonrules.SimpleCommonRulesRewriterFactory parsed = createDelegate(rules, false,
+                false, Collections.emptyList(), boostMethod, querqyParser, selectionStrategyFactories, false,
+                lookupPreprocessorName, parsingThreads);
+
+        Files.createDirectories(rewriterDir);
+        // write to a temporary file first so that other processes never map an incomplete file
+        final Path tmpFile = Files.createTempFile(rewriterDir, "compiling-", ".tmp");
+        try {
+            try (final OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmpFile))) {
+                parsed.writeCompiledRules(out);
+            }
+            try {
+                Files.move(tmpFile, compiledRules, StandardCopyOption.ATOMIC_MOVE);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(tmpFile, compiledRules, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+
+        return querqy.rewrite.commonrules.SimpleCommonRulesRewriterFactory.fromCompiledRules(rewriterId,
+                compiledRules, querqyParser, selectionStrategyFactories, DEFAULT_SELECTION_STRATEGY_FACTORY,
+                buildTermCache);
+    }
+
+    /**
+     * Deletes the compiled rules file of this adapter unless a loaded rewriter uses it again.
+     */
+    @Override
+    public void unloaded() {
+        if (compiledRulesFile != null) {
+            final Path rewriterDir = compiledRulesFile.getParent();
+            synchronized (getCompiledRulesLock(rewriterDir)) {
+                if (!getUsedCompiledRules().contains(compiledRulesFile)) {
+                    deleteCompiledRules(compiledRulesFile);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the directory for the compiled rules files of a rewriter.
+     *
+     * @param compiledRulesDir The directory from the configuration
+     * @param rewriterId The rewriter ID
+     * @return The directory of the rewriter
+     */
+    static Path getCompiledRulesDir(final Path compiledRulesDir, final String rewriterId) {
+        // encode the ID so that it is a valid directory name that stays inside compiledRulesDir
+        final String name = URLEncoder.encode(rewriterId, UTF_8).replace(".", "%2E").replace("*", "%2A");
+        return compiledRulesDir.resolve(name).toAbsolutePath().normalize();
+    }
+
+    private static Object getCompiledRulesLock(final Path rewriterDir) {
+        return COMPILED_RULES_LOCKS.computeIfAbsent(rewriterDir, dir -> new Object());
+    }
+
+    private static Set<Path> getUsedCompiledRules() {
+        final Set<Path> used = new HashSet<>();
+        for (final SolrRewriterFactoryAdapter adapter : SharedRewriterFactoryRegistry.INSTANCE.getAdapters()) {
+            if (adapter instanceof CommonRulesRewriterFactory) {
+                final Path file = ((CommonRulesRewriterFactory) adapter).compiledRulesFile;
+                if (file != null) {
+                    used.add(file);
+                }
+            }
+        }
+        return used;
+    }
+
+    private static void deleteUnusedCompiledRules(final Path rewriterDir, final Path keep) throws IOException {
+        final Set<Path> used = getUsedCompiledRules();
+        try (final DirectoryStream<Path> files = Files.newDirectoryStream(rewriterDir,
+                "*" + COMPILED_RULES_FILE_SUFFIX)) {
+            for (final Path file : files) {
+                if (!file.equals(keep) && !used.contains(file)) {
+                    deleteCompiledRules(file);
+                }
+            }
+        }
+    }
+
+    private static void deleteCompiledRules(final Path file) {
+        // the rules stay mapped if the file is deleted while a rewriter still uses it
+        try {
+            Files.deleteIfExists(file);
         } catch (final IOException e) {
-            return Collections.singletonList("Cannot create rewriter: " + e.getMessage());
+            LOG.warn("Could not delete compiled rules file {}", file, e);
+        }
+    }
+
+    protected querqy.rewrite.commonrules.SimpleCommonRulesRewriterFactory applyRuleChanges(
+            final querqy.rewrite.commonrules.SimpleCommonRulesRewriterFactory factory,
+            final List<Map<String, Object>> ruleChanges) throws IOException {
+
+        querqy.rewrite.commonrules.SimpleCommonRulesRewriterFactory result = factory;
+        for (final Map<String, Object> ruleChange : ruleChanges) {
+            result = result.withRuleChanges(
+                    new StringReader(ConfigUtils.getStringArg(ruleChange, CONF_CHANGE_RULES, "")),
+                    ConfigUtils.getArg(ruleChange, CONF_CHANGE_DELETE, Collections.emptyList()));
+        }
+        return result;
+    }
+
+    protected String mergeRuleChanges(final String rules, final List<Map<String, Object>> ruleChanges)
+            throws IOException {
+
+        final RuleChangesMerger merger = new RuleChangesMerger(new StringReader(rules));
+        for (final Map<String, Object> ruleChange : ruleChanges) {
+            merger.applyChanges(new StringReader(ConfigUtils.getStringArg(ruleChange, CONF_CHANGE_RULES, "")),
+                    ConfigUtils.getArg(ruleChange, CONF_CHANGE_DELETE, Collections.emptyList()));
+        }
+        return merger.toRulesText();
+    }
+
+    protected int readMaxRuleChanges(final Map<String, Object> config) {
+        final Object value = config.get(CONF_MAX_RULE_CHANGES);
+        if (value == null) {
+            return DEFAULT_MAX_RULE_CHANGES;
+        }
+        final int maxRuleChanges = value instanceof Number
+                ? ((Number) value).intValue()
+                : Integer.parseInt(value.toString().trim());
+        if (maxRuleChanges < 0) {
+            throw new IllegalArgumentException(CONF_MAX_RULE_CHANGES + " must be >= 0");
         }
+        return maxRuleChanges;
+    }
 
+    protected List<String> validateRuleChange(final Map<String, Object> ruleChange) {
+        if (ruleChange == null || ruleChange.isEmpty()) {
+            return Collections.singletonList("Empty rule change");
+        }
+        for (final String key : ruleChange.keySet()) {
+            if (!CONF_CHANGE_RULES.equals(key) && !CONF_CHANGE_DELETE.equals(key)) {
+                return Collections.singletonList("Unknown attribute in rule change: '" + key + "'");
+            }
+        }
+        if (ruleChange.containsKey(CONF_CHANGE_RULES) && !(ruleChange.get(CONF_CHANGE_RULES) instanceof String)) {
+            return Collections.singletonList("'" + CONF_CHANGE_RULES + "' in rule change must be a String");
+        }
+        if (ruleChange.containsKey(CONF_CHANGE_DELETE) && !(ruleChange.get(CONF_CHANGE_DELETE) instanceof List)) {
+            return Collections.singletonList("'" + CONF_CHANGE_DELETE + "' in rule change must be a list of rule IDs");
+        }
         return null;
     }
 
+    protected List<Map<String, Object>> readRuleChanges(final Map<String, Object> config) {
+        return ConfigUtils.getArg(config, CONF_RULE_CHANGES, Collections.emptyList());
+    }
+
+    /**
+     * Reads the name of the lookup preprocessor. This is either the name of a {@link LookupPreprocessorType} or a name
+     * under which a preprocessor was registered using
+     * {@link LookupPreprocessorFactory#register(String, LookupPreprocessor)}.
+     */
+    protected String readLookupPreprocessorName(final Map<String, Object> config) {
+        return ConfigUtils.getStringArg(config, CONF_LOOKUP_PREPROCESSOR)
+                .orElse(DEFAULT_LOOKUP_PREPROCESSOR_TYPE.getName());
+    }
+
+    private static Map<String, Object> withoutRuleChanges(final Map<String, Object> config) {
+        final Map<String, Object> result = new HashMap<>(config);
+        result.remove(CONF_RULE_CHANGES);
+        return result;
+    }
+
+    protected int readParsingThreads(final Map<String, Object> config) {
+        final Object value = config.get(CONF_PARSING_THREADS);
+        if (value == null) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        final int parsingThreads = value instanceof Number
+                ? ((Number) value).intValue()
+                : Integer.parseInt(value.toString().trim());
+        if (parsingThreads < 1) {
+            throw new IllegalArgumentException(CONF_PARSING_THREADS + " must be > 0");
+        }
+        return parsingThreads;
+    }
+
+    protected RewriteLoggingSampler readRewriteLoggingSampler(final Map<String, Object> config) {
+        final Object rate = config.get(CONF_REWRITE_LOGGING_SAMPLE_RATE);
+        final Optional<String> mode = ConfigUtils.getStringArg(config, CONF_REWRITE_LOGGING_SAMPLE_MODE);
+        return RewriteLoggingSampler.of(
+                mode.map(RewriteLoggingSampler.Mode::fromString).orElse(RewriteLoggingSampler.Mode.RANDOM),
+                rate == null ? 1 : rate instanceof Number
+                        ? ((Number) rate).intValue()
+                        : Integer.parseInt(rate.toString().trim()));
+    }
+
     protected BoostMethod readBoostMethod(final Map<String, Object> config) {
         final String boostMethodConfig = ConfigUtils.getArg(config, CONF_BOOST_METHOD, BoostMethod.ADDITIVE.name());
         return BoostMethod.valueOf(boostMethodConfig.toUpperCase());
@@ -191,6 +702,19 @@ public class CommonRulesRewriterFactory extends SolrRewriterFactoryAdapter imple
         return delegate;
     }
 
+    /**
+     * The factory shares the rules with the shared delegate but counts rule usage in the given counter.
+     */
+    @Override
+    public RewriterFactory getRewriterFactory(final RuleUsageCounter ruleUsageCounter) {
+        return delegate == null ? null : delegate.withRuleUsageCounter(ruleUsageCounter);
+    }
+
+    @Override
+    public boolean isShareable() {
+        return true;
+    }
+
     @Override
     public Map<String, Object> parseConfigurationToRequestHandlerBody(final NamedList<Object> configuration,
                                                                       final ResourceLoader resourceLoader) throws RuntimeException {
@@ -212,6 +736,9 @@ public class CommonRulesRewriterFactory extends SolrRewriterFactoryAdapter imple
         ifNotNull(configuration.get(CONF_RHS_QUERY_PARSER), v -> conf.put(CONF_RHS_QUERY_PARSER, v));
         ifNotNull(configuration.get(CONF_RULE_SELECTION_STRATEGIES), v -> conf.put(CONF_RULE_SELECTION_STRATEGIES, v));
         ifNotNull(configuration.get(CONF_ALLOW_BOOLEAN_INPUT), v -> conf.put(CONF_ALLOW_BOOLEAN_INPUT, v));
+        ifNotNull(configuration.get(CONF_PARSING_THREADS), v -> conf.put(CONF_PARSING_THREADS, v));
+        ifNotNull(configuration.get(CONF_ALLOW_RULE_UPDATES), v -> conf.put(CONF_ALLOW_RULE_UPDATES, v));
+        ifNotNull(configuration.get(CONF_COMPILED_RULES_DIR), v -> conf.put(CONF_COMPILED_RULES_DIR, v));
         ifNotNull(configuration.get(CONF_CLASS), v -> result.put(CONF_CLASS, v));
         return result;
     }
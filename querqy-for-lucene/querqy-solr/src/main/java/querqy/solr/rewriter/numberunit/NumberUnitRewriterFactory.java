@@ -218,6 +218,11 @@ public class NumberUnitRewriterFactory extends SolrRewriterFactoryAdapter implem
         return delegate;
     }
 
+    @Override
+    public boolean isShareable() {
+        return true;
+    }
+
     @Override
     public Map<String, Object> parseConfigurationToRequestHandlerBody(final NamedList<Object> configuration,
                                                                       final ResourceLoader resourceLoader) throws RuntimeException {
@@ -99,6 +99,11 @@ public class ReplaceRewriterFactory extends SolrRewriterFactoryAdapter implement
         return delegate;
     }
 
+    @Override
+    public boolean isShareable() {
+        return true;
+    }
+
     @Override
     public Map<String, Object> parseConfigurationToRequestHandlerBody(final NamedList<Object> configuration,
                                                                       final ResourceLoader resourceLoader) throws RuntimeException {
@@ -6,6 +6,7 @@ import static querqy.solr.rewriter.wordbreak.WordBreakCompoundRewriterFactory.CO
 import static querqy.solr.rewriter.wordbreak.WordBreakCompoundRewriterFactory.CONF_DECOMPOUND_MAX_EXPANSIONS;
 import static querqy.solr.rewriter.wordbreak.WordBreakCompoundRewriterFactory.CONF_DECOMPOUND_VERIFY_COLLATION;
 import static querqy.solr.rewriter.wordbreak.WordBreakCompoundRewriterFactory.CONF_DICTIONARY_FIELD;
+import static querqy.solr.rewriter.wordbreak.WordBreakCompoundRewriterFactory.CONF_DICTIONARY_WORDS;
 import static querqy.solr.rewriter.wordbreak.WordBreakCompoundRewriterFactory.CONF_LOWER_CASE_INPUT;
 import static querqy.solr.rewriter.wordbreak.WordBreakCompoundRewriterFactory.CONF_MAX_COMBINE_WORD_LENGTH;
 import static querqy.solr.rewriter.wordbreak.WordBreakCompoundRewriterFactory.CONF_MIN_BREAK_LENGTH;
@@ -13,6 +14,7 @@ import static querqy.solr.rewriter.wordbreak.WordBreakCompoundRewriterFactory.CO
 import static querqy.solr.rewriter.wordbreak.WordBreakCompoundRewriterFactory.CONF_MORPHOLOGY;
 import static querqy.solr.rewriter.wordbreak.WordBreakCompoundRewriterFactory.CONF_PROTECTED_WORDS;
 import static querqy.solr.rewriter.wordbreak.WordBreakCompoundRewriterFactory.CONF_REVERSE_COMPOUND_TRIGGER_WORDS;
+import static querqy.solr.rewriter.wordbreak.WordBreakCompoundRewriterFactory.CONF_SUGGESTION_CACHE_SIZE;
 
 import querqy.lucene.contrib.rewrite.wordbreak.Morphology;
 import querqy.lucene.contrib.rewrite.wordbreak.SuffixGroupMorphology;
@@ -38,6 +40,8 @@ public class WordBreakCompoundConfigRequestBuilder extends RewriterConfigRequest
     private String decompoundMorphology;
     private String compoundMorphology;
     private List<String> protectedWords;
+    private Integer suggestionCacheSize;
+    private Map<String, Integer> dictionaryWords;
 
     public WordBreakCompoundConfigRequestBuilder() {
         super(WordBreakCompoundRewriterFactory.class);
@@ -48,10 +52,12 @@ public class WordBreakCompoundConfigRequestBuilder extends RewriterConfigRequest
 
         final Map<String, Object> config = new HashMap<>();
 
-        if (dictionaryField == null) {
+        if (dictionaryField == null && dictionaryWords == null) {
             throw new RuntimeException(CONF_DICTIONARY_FIELD + " must not be null");
         }
-        config.put(CONF_DICTIONARY_FIELD, dictionaryField);
+        if (dictionaryField != null) {
+            config.put(CONF_DICTIONARY_FIELD, dictionaryField);
+        }
 
         if (minSuggestionFrequency != null) {
             config.put(CONF_MIN_SUGGESTION_FREQ, minSuggestionFrequency);
@@ -85,6 +91,14 @@ public class WordBreakCompoundConfigRequestBuilder extends RewriterConfigRequest
             config.put(CONF_MORPHOLOGY, morphology);
         }
 
+        if (suggestionCacheSize != null) {
+            config.put(CONF_SUGGESTION_CACHE_SIZE, suggestionCacheSize);
+        }
+
+        if (dictionaryWords != null) {
+            config.put(CONF_DICTIONARY_WORDS, dictionaryWords);
+        }
+
         Map<String, Object> decompoundConf = null;
 
         if (decompoundMaxExpansions != null) {
@@ -215,4 +229,17 @@ public class WordBreakCompoundConfigRequestBuilder extends RewriterConfigRequest
         this.compoundMorphology = morphology;
         return this;
     }
+
+    public WordBreakCompoundConfigRequestBuilder suggestionCacheSize(final Integer suggestionCacheSize) {
+        if (suggestionCacheSize != null && suggestionCacheSize < 0) {
+            throw new IllegalArgumentException("suggestionCacheSize must be >=0 or null");
+        }
+        this.suggestionCacheSize = suggestionCacheSize;
+        return this;
+    }
+
+    public WordBreakCompoundConfigRequestBuilder dictionaryWords(final Map<String, Integer> dictionaryWords) {
+        this.dictionaryWords = dictionaryWords;
+        return this;
+    }
 }
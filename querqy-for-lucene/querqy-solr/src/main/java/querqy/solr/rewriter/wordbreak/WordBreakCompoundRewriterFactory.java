@@ -1,15 +1,23 @@
 package querqy.solr.rewriter.wordbreak;
 
 import org.apache.lucene.index.IndexReader;
+import org.apache.solr.common.SolrException;
 import org.apache.solr.request.SolrRequestInfo;
 import querqy.lucene.contrib.rewrite.wordbreak.Morphology;
 import querqy.lucene.contrib.rewrite.wordbreak.MorphologyProvider;
+import querqy.lucene.contrib.rewrite.wordbreak.WordBreakDictionary;
 import querqy.rewrite.RewriterFactory;
 import querqy.solr.SolrRewriterFactoryAdapter;
 import querqy.solr.rewriter.ClassicConfigurationParser;
 import querqy.solr.utils.ConfigUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Base64;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -30,6 +38,15 @@ public class WordBreakCompoundRewriterFactory extends SolrRewriterFactoryAdapter
     public static final String CONF_DECOMPOUND_VERIFY_COLLATION = "verifyCollation";
     public static final String CONF_COMPOUND = "compound";
     public static final String CONF_PROTECTED_WORDS = "protectedWords";
+    public static final String CONF_SUGGESTION_CACHE_SIZE = "suggestionCacheSize";
+    public static final String CONF_DICTIONARY_WORDS = "dictionaryWords";
+    public static final String CONF_DICTIONARY = "dictionary";
+
+    /**
+     * Name of the change that builds the dictionary from the terms of the dictionary field when the rewriter is
+     * updated. The dictionary is stored in the configuration under {@link #CONF_DICTIONARY}.
+     */
+    public static final String CHANGE_BUILD_DICTIONARY = "buildDictionary";
 
 
     private static final int DEFAULT_MIN_SUGGESTION_FREQ = 1;
@@ -37,6 +54,7 @@ public class WordBreakCompoundRewriterFactory extends SolrRewriterFactoryAdapter
     private static final int DEFAULT_MIN_BREAK_LENGTH = 3;
     private static final int DEFAULT_MAX_DECOMPOUND_EXPANSIONS = 3;
     private static final boolean DEFAULT_VERIFY_DECOMPOUND_COLLATION = false;
+    private static final int DEFAULT_SUGGESTION_CACHE_SIZE = 0;
 
 
     private querqy.lucene.contrib.rewrite.wordbreak.WordBreakCompoundRewriterFactory delegate = null;
@@ -92,6 +110,27 @@ public class WordBreakCompoundRewriterFactory extends SolrRewriterFactoryAdapter
         // of a combination
         final List<String> protectedWords = ConfigUtils.getArg(config, CONF_PROTECTED_WORDS, Collections.emptyList());
 
+        // the max. number of words/word sequences per index reader for which compound and decompound suggestions
+        // are cached, 0 = don't cache
+        final int suggestionCacheSize = ConfigUtils.getArg(config, CONF_SUGGESTION_CACHE_SIZE,
+                DEFAULT_SUGGESTION_CACHE_SIZE);
+
+        // an optional word list (word -> frequency) to validate compounds and decompounds against instead of the
+        // dictionary field
+        final Map<String, Number> dictionaryWords = ConfigUtils.getArg(config, CONF_DICTIONARY_WORDS, null);
+
+        // or a dictionary that was built from the dictionary field (see updateConfiguration())
+        final String serializedDictionary = (String) config.get(CONF_DICTIONARY);
+
+        final WordBreakDictionary dictionary;
+        if (serializedDictionary != null) {
+            dictionary = readDictionary(serializedDictionary);
+        } else if (dictionaryWords != null) {
+            dictionary = WordBreakDictionary.fromWords(toFrequencies(dictionaryWords), minSuggestionFreq);
+        } else {
+            dictionary = null;
+        }
+
         // the indexReader has to be supplied on a per-request basis from a request thread-local
         final Supplier<IndexReader> indexReaderSupplier = () ->
                 SolrRequestInfo.getRequestInfo().getReq().getSearcher().getIndexReader();
@@ -105,7 +144,8 @@ public class WordBreakCompoundRewriterFactory extends SolrRewriterFactoryAdapter
         delegate = new querqy.lucene.contrib.rewrite.wordbreak.WordBreakCompoundRewriterFactory(rewriterId,
                 indexReaderSupplier, indexField, lowerCaseInput, minSuggestionFreq, maxCombineLength,
                 minBreakLength, reverseCompoundTriggerWords, alwaysAddReverseCompounds, maxDecompoundExpansions,
-                verifyDecompoundCollation, protectedWords, decompoundMorphologyName, compoundMorphologyName);
+                verifyDecompoundCollation, protectedWords, decompoundMorphologyName, compoundMorphologyName,
+                suggestionCacheSize, dictionary);
     }
 
     @Override
@@ -130,6 +170,12 @@ public class WordBreakCompoundRewriterFactory extends SolrRewriterFactoryAdapter
             return Collections.singletonList("Cannot load compound morphology: " + compoundConf.get("morphology"));
         }
 
+        final int suggestionCacheSize = ConfigUtils.getArg(config, CONF_SUGGESTION_CACHE_SIZE,
+                DEFAULT_SUGGESTION_CACHE_SIZE);
+        if (suggestionCacheSize < 0) {
+            return Collections.singletonList("suggestionCacheSize >= 0 expected");
+        }
+
         final List<String> protectedWords = ConfigUtils.getArg(config, CONF_PROTECTED_WORDS, Collections.emptyList());
         if (protectedWords.stream().map(String::trim).anyMatch(String::isEmpty)) {
             return Collections.singletonList("protected word must not be an empty string");
@@ -141,12 +187,126 @@ public class WordBreakCompoundRewriterFactory extends SolrRewriterFactoryAdapter
             return Collections.singletonList("reverseTriggerCompoundWords must not contain an empty string");
         }
 
+        final Object serializedDictionary = config.get(CONF_DICTIONARY);
+        if (serializedDictionary != null) {
+            if (!(serializedDictionary instanceof String)) {
+                return Collections.singletonList(CONF_DICTIONARY + " must be a string");
+            }
+            try {
+                readDictionary((String) serializedDictionary);
+            } catch (final IllegalArgumentException e) {
+                return Collections.singletonList(e.getMessage());
+            }
+            if (ConfigUtils.getArg(decompoundConf, CONF_DECOMPOUND_VERIFY_COLLATION,
+                    DEFAULT_VERIFY_DECOMPOUND_COLLATION)) {
+                return Collections.singletonList("decompound.verifyCollation is not supported with "
+                        + CONF_DICTIONARY);
+            }
+            return null;
+        }
+
+        final Object dictionaryWords = config.get(CONF_DICTIONARY_WORDS);
+        if (dictionaryWords != null) {
+            if (!(dictionaryWords instanceof Map)) {
+                return Collections.singletonList(CONF_DICTIONARY_WORDS + " must be a map of words to frequencies");
+            }
+            for (final Map.Entry<?, ?> entry : ((Map<?, ?>) dictionaryWords).entrySet()) {
+                if (!(entry.getValue() instanceof Number) || ((Number) entry.getValue()).intValue() < 1) {
+                    return Collections.singletonList("Frequency > 0 expected for dictionary word: " + entry.getKey());
+                }
+            }
+            if (ConfigUtils.getArg(decompoundConf, CONF_DECOMPOUND_VERIFY_COLLATION,
+                    DEFAULT_VERIFY_DECOMPOUND_COLLATION)) {
+                return Collections.singletonList("decompound.verifyCollation is not supported with "
+                        + CONF_DICTIONARY_WORDS);
+            }
+            return null;
+        }
+
         final Optional<String> optValue = ConfigUtils.getStringArg(config, "dictionaryField").map(String::trim)
                 .filter(s -> !s.isEmpty());
         // TODO: can we validate the dictionary field against the schema?
         return optValue.isPresent() ? null : Collections.singletonList("Missing config:  dictionaryField");
     }
 
+    /**
+     * <p>Supports a single change, {@link #CHANGE_BUILD_DICTIONARY}, which walks the terms of the dictionary field in
+     * the index of the current request once and stores the resulting {@link WordBreakDictionary} in the
+     * configuration. Compounds and decompounds will then be validated against the stored dictionary instead of the
+     * index. Send the change again to rebuild the dictionary after the index has changed.</p>
+     *
+     * <p>The dictionary is built from the index of the core that handles the update request. In SolrCloud, all
+     * replicas will load this dictionary, which only reflects the terms of the shard that handled the request.</p>
+     */
+    @Override
+    public Map<String, Object> updateConfiguration(final Map<String, Object> config,
+                                                   final Map<String, Object> changes) {
+
+        if (changes.size() != 1 || !Boolean.TRUE.equals(changes.get(CHANGE_BUILD_DICTIONARY))) {
+            throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Rewriter " + rewriterId +
+                    " only supports the change: {\"" + CHANGE_BUILD_DICTIONARY + "\": true}");
+        }
+
+        final String indexField = ConfigUtils.getStringArg(config, CONF_DICTIONARY_FIELD).map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .orElseThrow(() -> new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+                        CHANGE_BUILD_DICTIONARY + " requires config: " + CONF_DICTIONARY_FIELD));
+
+        final Map<String, Object> decompoundConf = ConfigUtils.getArg(config, CONF_DECOMPOUND, Collections.emptyMap());
+        if (ConfigUtils.getArg(decompoundConf, CONF_DECOMPOUND_VERIFY_COLLATION, DEFAULT_VERIFY_DECOMPOUND_COLLATION)) {
+            throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+                    "decompound.verifyCollation is not supported with " + CONF_DICTIONARY);
+        }
+
+        final SolrRequestInfo requestInfo = SolrRequestInfo.getRequestInfo();
+        if (requestInfo == null) {
+            throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, CHANGE_BUILD_DICTIONARY +
+                    " requires a request to get the index from");
+        }
+
+        final int minSuggestionFreq = ConfigUtils.getArg(config, CONF_MIN_SUGGESTION_FREQ,
+                DEFAULT_MIN_SUGGESTION_FREQ);
+
+        final WordBreakDictionary dictionary;
+        try {
+            dictionary = WordBreakDictionary.fromIndex(requestInfo.getReq().getSearcher().getIndexReader(),
+                    indexField, minSuggestionFreq);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        final Map<String, Object> newConfig = new HashMap<>(config);
+        newConfig.remove(CONF_DICTIONARY_WORDS);
+        newConfig.put(CONF_DICTIONARY, writeDictionary(dictionary));
+        return newConfig;
+    }
+
+    private static WordBreakDictionary readDictionary(final String serializedDictionary) {
+        try {
+            return WordBreakDictionary.readFrom(new ByteArrayInputStream(
+                    Base64.getDecoder().decode(serializedDictionary)));
+        } catch (final IOException | RuntimeException e) {
+            throw new IllegalArgumentException("Cannot read " + CONF_DICTIONARY + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static String writeDictionary(final WordBreakDictionary dictionary) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            dictionary.writeTo(out);
+        } catch (final IOException e) {
+            // we are only writing to heap memory
+            throw new UncheckedIOException(e);
+        }
+        return Base64.getEncoder().encodeToString(out.toByteArray());
+    }
+
+    private static Map<String, Integer> toFrequencies(final Map<String, Number> dictionaryWords) {
+        final Map<String, Integer> frequencies = new HashMap<>(dictionaryWords.size());
+        dictionaryWords.forEach((word, frequency) -> frequencies.put(word, frequency.intValue()));
+        return frequencies;
+    }
+
     @Override
     public RewriterFactory getRewriterFactory() {
         return delegate;
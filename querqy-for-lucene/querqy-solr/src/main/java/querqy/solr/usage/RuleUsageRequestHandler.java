@@ -0,0 +1,128 @@
+package querqy.solr.usage;
+
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.metrics.SolrMetricsContext;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.request.SolrRequestHandler;
+import org.apache.solr.response.SolrQueryResponse;
+import querqy.rewrite.commonrules.RuleUsageCounter;
+import querqy.rewrite.commonrules.SimpleCommonRulesRewriterFactory;
+import querqy.solr.QuerqyQParserPlugin;
+import querqy.solr.QuerqyRewriterRequestHandler;
+import querqy.solr.RewriterFactoryContext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * <p>Returns how often the rules of the common rules rewriters were applied, most frequently applied rules first:</p>
+ *
+ * <pre>
+ * GET /querqy/rewriter/_usage/rules?rewriters=common1,common2
+ * </pre>
+ *
+ * <p>All common rules rewriters are included if the <code>rewriters</code> parameter is not set. Counts start when a
+ * rewriter is loaded and they are kept when single rules are changed. Only the requests of this core are counted, even
+ * if other cores share the rewriter. Requests that are answered from the rewrite result cache are counted, too.</p>
+ *
+ * <p>With <code>reset=true</code>, which requires HTTP POST, the counts are returned and counting starts from zero
+ * again.</p>
+ */
+public class RuleUsageRequestHandler implements SolrRequestHandler {
+
+    public static final String PARAM_REWRITERS = QuerqyQParserPlugin.PARAM_REWRITERS;
+    public static final String PARAM_RESET = "reset";
+
+    private final QuerqyRewriterRequestHandler rewriterRequestHandler;
+
+    public RuleUsageRequestHandler(final QuerqyRewriterRequestHandler rewriterRequestHandler) {
+        this.rewriterRequestHandler = rewriterRequestHandler;
+    }
+
+    @Override
+    public void init(final NamedList args) {
+
+    }
+
+    @Override
+    public void handleRequest(final SolrQueryRequest req, final SolrQueryResponse rsp) {
+
+        final SolrParams params = req.getParams();
+
+        final String rewritersParam = params.get(PARAM_REWRITERS);
+        final boolean reset = params.getBool(PARAM_RESET, false);
+        if (reset && "GET".equalsIgnoreCase(req.getHttpMethod())) {
+            throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, PARAM_RESET + "=true requires HTTP POST");
+        }
+
+        final List<String> rewriterIds;
+        if (rewritersParam != null) {
+            rewriterIds = new ArrayList<>();
+            for (final String rewriterId : rewritersParam.split(",")) {
+                rewriterIds.add(rewriterId.trim());
+            }
+        } else {
+            rewriterIds = new ArrayList<>(rewriterRequestHandler.getRewriterIds());
+            Collections.sort(rewriterIds);
+        }
+
+        final Map<String, Object> usage = new LinkedHashMap<>();
+
+        for (final String rewriterId : rewriterIds) {
+
+            final Optional<RewriterFactoryContext> factoryOpt = rewriterRequestHandler.getRewriterFactory(rewriterId);
+            if (factoryOpt.isEmpty()) {
+                throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "No such rewriter: " + rewriterId);
+            }
+
+            final RewriterFactoryContext context = factoryOpt.get();
+            final RuleUsageCounter counter = context.getRuleUsageCounter();
+            if (counter == null || !(context.getRewriterFactory() instanceof SimpleCommonRulesRewriterFactory)) {
+                if (rewritersParam != null) {
+                    throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+                            "Rewriter " + rewriterId + " does not count rule usage");
+                }
+                continue;
+            }
+
+            final Map<String, Long> rules = new LinkedHashMap<>();
+            (reset ? counter.getCountsAndReset() : counter.getCounts())
+                    .forEach((ruleId, count) -> rules.put(ruleId.toString(), count));
+
+            usage.put(rewriterId, rules);
+        }
+
+        rsp.add("ruleUsage", usage);
+
+    }
+
+    @Override
+    public String getName() {
+        return RuleUsageRequestHandler.class.getSimpleName();
+    }
+
+    @Override
+    public String getDescription() {
+        return "Request handler to report how often Querqy rules were applied";
+    }
+
+    @Override
+    public Category getCategory() {
+        return Category.OTHER;
+    }
+
+    @Override
+    public void initializeMetrics(final SolrMetricsContext parentContext, final String scope) {
+    }
+
+    @Override
+    public SolrMetricsContext getSolrMetricsContext() {
+        return null;
+    }
+}
@@ -0,0 +1,75 @@
+package querqy.solr;
+
+import com.codahale.metrics.Gauge;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.params.DisMaxParams;
+import org.apache.solr.request.SolrQueryRequest;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static querqy.solr.QuerqyQParserPlugin.PARAM_REWRITERS;
+import static querqy.solr.RewriteLoggingParameters.PARAM_REWRITE_LOGGING_REWRITERS;
+import static querqy.solr.StandaloneSolrTestSupport.withCommonRulesRewriter;
+
+@SolrTestCaseJ4.SuppressSSL
+public class AsyncInfoLoggingSinkTest extends SolrTestCaseJ4 {
+
+    static final String METRICS_PREFIX = "QUERY.querqyInfoLoggingSink.asyncSink.";
+
+    private static Path logDir;
+
+    @BeforeClass
+    public static void beforeTests() throws Exception {
+        logDir = createTempDir();
+        System.setProperty("querqy.test.infoLogging.dir", logDir.toString());
+        initCore("solrconfig-infoLogging.xml", "schema.xml");
+        withCommonRulesRewriter(h.getCore(), "common_async",
+                "configs/commonrules/rules-infoLogging1.txt", "asyncSink");
+    }
+
+    @Test
+    public void testThatMessagesAreWrittenToFile() throws Exception {
+
+        final SolrQueryRequest req = req("q", "k",
+                DisMaxParams.QF, "f1 f2 f3",
+                RewriteLoggingParameters.REWRITE_LOGGING_PARAM_KEY, RewriteLoggingParameters.DETAILS.getValue(),
+                PARAM_REWRITE_LOGGING_REWRITERS, "common_async",
+                "defType", "querqy",
+                PARAM_REWRITERS, "common_async"
+        );
+
+        assertQ("Query failed", req, "//result[@name='response']");
+        req.close();
+
+        final Path file = logDir.resolve(AsyncInfoLoggingSink.DEFAULT_FILE_NAME);
+        final long deadline = System.currentTimeMillis() + 10_000L;
+        while (((Long) getGaugeValue("exported")) < 1L && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+
+        assertEquals(1L, getGaugeValue("accepted"));
+        assertEquals(0L, getGaugeValue("dropped"));
+        assertEquals(1L, getGaugeValue("exported"));
+        assertEquals(0L, getGaugeValue("failedExports"));
+
+        final List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).contains("\"query\":\"k\""));
+        assertTrue(lines.get(0).contains("\"rewriterId\":\"common_async\""));
+        assertTrue(lines.get(0).contains("LOG for k"));
+
+    }
+
+    private static Object getGaugeValue(final String name) {
+        final Gauge<?> gauge = h.getCore().getSolrMetricsContext().getMetricRegistry().getGauges()
+                .get(METRICS_PREFIX + name);
+        assertNotNull("Missing gauge " + name, gauge);
+        return gauge.getValue();
+    }
+
+}
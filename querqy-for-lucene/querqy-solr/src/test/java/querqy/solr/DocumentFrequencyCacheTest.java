@@ -0,0 +1,124 @@
+package querqy.solr;
+
+import com.codahale.metrics.Gauge;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.params.DisMaxParams;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.search.QueryParsing;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import querqy.lucene.rewrite.cache.DocumentFrequencyCache;
+
+@SolrTestCaseJ4.SuppressSSL
+public class DocumentFrequencyCacheTest extends SolrTestCaseJ4 {
+
+    public void index() throws Exception {
+
+        assertU(adoc("id", "1", "f1", "a"));
+        assertU(adoc("id", "2", "f1", "a", "f2", "b"));
+        assertU(adoc("id", "3", "f1", "a", "f2", "c"));
+        assertU(commit());
+    }
+
+    @BeforeClass
+    public static void beforeTests() throws Exception {
+        initCore("solrconfig-document-frequency-cache.xml", "schema.xml");
+    }
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        clearIndex();
+        index();
+    }
+
+    @Test
+    public void testThatTermStatsAreServedFromCacheForDfc() throws Exception {
+
+        final DocumentFrequencyCache cache = getCache();
+        final long misses = cache.getMisses();
+        final long hits = cache.getHits();
+
+        assertQuery("c", "dfc", 1);
+        assertEquals(misses + 2L, cache.getMisses());
+        assertEquals(hits, cache.getHits());
+
+        assertQuery("c", "dfc", 1);
+        assertEquals(misses + 2L, cache.getMisses());
+        assertEquals(hits + 2L, cache.getHits());
+
+    }
+
+    @Test
+    public void testThatTermStatsAreServedFromCacheWithoutSimilarityScore() throws Exception {
+
+        final DocumentFrequencyCache cache = getCache();
+        final long hits = cache.getHits();
+
+        assertQuery("b", "off", 1);
+        assertQuery("b", "off", 1);
+        assertEquals(hits + 2L, cache.getHits());
+
+    }
+
+    @Test
+    public void testThatNewSearcherIsNotServedFromOldEntries() throws Exception {
+
+        assertQuery("b", "dfc", 1);
+
+        assertU(adoc("id", "4", "f2", "b"));
+        assertU(commit());
+
+        final DocumentFrequencyCache cache = getCache();
+        final long misses = cache.getMisses();
+
+        assertQuery("b", "dfc", 2);
+        assertEquals(misses + 2L, cache.getMisses());
+
+    }
+
+    @Test
+    public void testThatCacheMetricsAreRegistered() throws Exception {
+
+        final DocumentFrequencyCache cache = getCache();
+        assertQuery("c", "dfc", 1);
+        assertQuery("c", "dfc", 1);
+
+        assertEquals(cache.getHits(), getGaugeValue("hits"));
+        assertEquals(cache.getMisses(), getGaugeValue("misses"));
+        assertEquals(cache.getNumberOfReaders(), getGaugeValue("readers"));
+
+    }
+
+    private static Object getGaugeValue(final String name) {
+        final Gauge<?> gauge = h.getCore().getSolrMetricsContext().getMetricRegistry().getGauges()
+                .get("QUERY." + QuerqyQParserPlugin.METRICS_SCOPE_PREFIX_DOCUMENT_FREQUENCY_CACHE
+                        + QuerqyDismaxQParserPlugin.class.getName() + "." + name);
+        assertNotNull("Missing gauge " + name, gauge);
+        return gauge.getValue();
+    }
+
+    private void assertQuery(final String q, final String similarityScore, final int numFound) {
+        final SolrQueryRequest req = req("q", q,
+                DisMaxParams.QF, "f1 f2",
+                QueryParsing.OP, "OR",
+                QuerqyDismaxParams.USER_QUERY_SIMILARITY_SCORE, similarityScore,
+                "defType", "querqy"
+        );
+
+        assertQ("Unexpected query result",
+                req,
+                "//result[@name='response'][@numFound='" + numFound + "']");
+        req.close();
+    }
+
+    private DocumentFrequencyCache getCache() {
+        final DocumentFrequencyCache cache = ((QuerqyQParserPlugin) h.getCore().getQueryPlugin("querqy"))
+                .documentFrequencyCache;
+        assertNotNull(cache);
+        return cache;
+    }
+
+}
@@ -0,0 +1,92 @@
+package querqy.solr;
+
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.params.DisMaxParams;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.search.QueryParsing;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import querqy.lucene.rewrite.cache.ConcurrentTermQueryCache;
+
+@SolrTestCaseJ4.SuppressSSL
+public class NativeTermQueryCacheTest extends SolrTestCaseJ4 {
+
+    public void index() throws Exception {
+
+        assertU(adoc("id", "1", "f1", "a"));
+        assertU(adoc("id", "2", "f1", "a", "f2", "b"));
+        assertU(adoc("id", "3", "f1", "a", "f2", "c"));
+        assertU(commit());
+    }
+
+    @BeforeClass
+    public static void beforeTests() throws Exception {
+        initCore("solrconfig-native-cache.xml", "schema.xml");
+    }
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        clearIndex();
+        index();
+    }
+
+    @Test
+    public void testThatTermQueriesArePutIntoAndServedFromCache() throws Exception {
+
+        final ConcurrentTermQueryCache cache = getCache();
+        final long misses = cache.getMisses();
+        final long hits = cache.getHits();
+
+        assertQuery("c", 1);
+        assertEquals(misses + 2L, cache.getMisses());
+        assertEquals(hits, cache.getHits());
+
+        assertQuery("c", 1);
+        assertEquals(misses + 2L, cache.getMisses());
+        assertEquals(hits + 2L, cache.getHits());
+
+    }
+
+    @Test
+    public void testThatNewSearcherStartsNewGeneration() throws Exception {
+
+        final ConcurrentTermQueryCache cache = getCache();
+
+        assertQuery("b", 1);
+        final long generation = cache.getGeneration();
+        final long misses = cache.getMisses();
+
+        assertU(adoc("id", "4", "f2", "b"));
+        assertU(commit());
+
+        assertQuery("b", 2);
+        assertTrue(cache.getGeneration() > generation);
+        assertEquals(misses + 2L, cache.getMisses());
+
+    }
+
+    private void assertQuery(final String q, final int numFound) {
+        final SolrQueryRequest req = req("q", q,
+                DisMaxParams.QF, "f1 f2",
+                QueryParsing.OP, "OR",
+                DisMaxParams.TIE, "0.1",
+                "defType", "querqy"
+        );
+
+        assertQ("Unexpected query result",
+                req,
+                "//result[@name='response'][@numFound='" + numFound + "']");
+        req.close();
+    }
+
+    private ConcurrentTermQueryCache getCache() {
+        final ConcurrentTermQueryCache cache = ((QuerqyQParserPlugin) h.getCore().getQueryPlugin("querqy"))
+                .nativeTermQueryCache;
+        assertNotNull(cache);
+        return cache;
+    }
+
+}
@@ -1,6 +1,9 @@
 package querqy.solr;
 
 import static querqy.model.convert.builder.BooleanQueryBuilder.bq;
+import static querqy.solr.QuerqyDismaxParams.DFC_TERM_LOOKUP;
+import static querqy.solr.QuerqyDismaxParams.DFC_TERM_LOOKUP_PER_TERM;
+import static querqy.solr.QuerqyDismaxParams.DFC_TERM_LOOKUP_SEGMENT_PARALLEL;
 import static querqy.solr.QuerqyDismaxParams.GFB;
 import static querqy.solr.QuerqyDismaxParams.GQF;
 import static querqy.solr.QuerqyDismaxParams.MULTI_MATCH_TIE;
@@ -216,6 +219,31 @@ public class QuerqyDismaxQParserPluginTest extends SolrTestCaseJ4 {
 
     }
 
+    @Test
+    public void testThatSegmentParallelDfcTermLookupFindsSameDocuments() throws Exception {
+
+        assertU(adoc("id", "19", "f2", "aaa"));
+        assertU(commit());
+
+        for (final String termLookup : Arrays.asList(DFC_TERM_LOOKUP_PER_TERM, DFC_TERM_LOOKUP_SEGMENT_PARALLEL)) {
+
+            SolrQueryRequest req = req("q", "a aaa",
+                    DisMaxParams.QF, "f1 f2",
+                    QueryParsing.OP, "OR",
+                    "defType", "querqy",
+                    "uq.similarityScore", "dfc",
+                    DFC_TERM_LOOKUP, termLookup
+            );
+
+            assertQ("DFC term lookup " + termLookup + " failed",
+                    req,
+                    "//result[@numFound='6']");
+
+            req.close();
+        }
+
+    }
+
     @Test
     public void testThatPfIsAppliedOnlyToExistingField() {
 
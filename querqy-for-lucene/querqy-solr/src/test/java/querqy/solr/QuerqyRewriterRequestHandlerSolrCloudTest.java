@@ -18,24 +18,34 @@ import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.DisMaxParams;
 import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.core.CoreContainer;
+import org.apache.solr.core.SolrCore;
 import org.apache.solr.embedded.JettySolrRunner;
 import org.apache.solr.search.QueryParsing;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import querqy.rewrite.RewriterFactory;
 import querqy.rewrite.lookup.preprocessing.LookupPreprocessorType;
 import querqy.solr.RewriterConfigRequestBuilder.GetRewriterConfigSolrResponse;
 import querqy.solr.RewriterConfigRequestBuilder.SaveRewriterConfigSolrResponse;
+import querqy.solr.RewriterConfigRequestBuilder.UpdateRewriterConfigSolrResponse;
 import querqy.solr.rewriter.replace.ReplaceConfigRequestBuilder;
 import querqy.solr.rewriter.commonrules.CommonRulesConfigRequestBuilder;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @SolrTestCaseJ4.SuppressSSL
 public class QuerqyRewriterRequestHandlerSolrCloudTest extends AbstractQuerqySolrCloudTestCase {
@@ -152,6 +162,214 @@ public class QuerqyRewriterRequestHandlerSolrCloudTest extends AbstractQuerqySol
 
     }
 
+    @Test
+    public void testUpdateRules() throws Exception {
+
+        try {
+
+            final SaveRewriterConfigSolrResponse response = new CommonRulesConfigRequestBuilder()
+                    .allowRuleUpdates(true)
+                    .rules("a =>\n SYNONYM: b\n @_id: \"r1\"")
+                    .buildSaveRequest("rewriter_rule_updates").process(getRandClient());
+
+            assertEquals(0, response.getStatus());
+
+            final SolrParams params = params("collection", COLLECTION,
+                    "q", "a",
+                    "defType", "querqy",
+                    PARAM_REWRITERS, "rewriter_rule_updates",
+                    DisMaxParams.QF, "f1 f2",
+                    QueryParsing.OP, "OR"
+            );
+
+            QueryResponse rsp = waitForRewriterAndQuery(params, getRandClient());
+            assertEquals(2L, rsp.getResults().getNumFound());
+
+            final UpdateRewriterConfigSolrResponse response2 = CommonRulesConfigRequestBuilder
+                    .buildRuleChangesRequest("rewriter_rule_updates",
+                            "a =>\n SYNONYM: b\n SYNONYM: c\n @_id: \"r1\"", null)
+                    .process(getRandClient());
+
+            assertEquals(0, response2.getStatus());
+
+            QueryResponse rsp2 = waitForRewriterAndQuery(params, getRandClient());
+            assertEquals(3L, rsp2.getResults().getNumFound());
+
+            final UpdateRewriterConfigSolrResponse response3 = CommonRulesConfigRequestBuilder
+                    .buildRuleChangesRequest("rewriter_rule_updates", null, Collections.singletonList("r1"))
+                    .process(getRandClient());
+
+            assertEquals(0, response3.getStatus());
+
+            QueryResponse rsp3 = waitForRewriterAndQuery(params, getRandClient());
+            assertEquals(1L, rsp3.getResults().getNumFound());
+
+        } finally {
+            cleanUpRewriters("rewriter_rule_updates");
+        }
+
+    }
+
+    @Test
+    public void testThatConcurrentRuleUpdatesAreNotLost() throws Exception {
+
+        try {
+
+            assertEquals(0, new CommonRulesConfigRequestBuilder()
+                    .allowRuleUpdates(true)
+                    .rules("a =>\n SYNONYM: b\n @_id: \"r0\"")
+                    .buildSaveRequest("rewriter_concurrent_updates").process(getRandClient()).getStatus());
+
+            final int numUpdates = 8;
+            final ExecutorService executor = Executors.newFixedThreadPool(numUpdates);
+            try {
+                final List<Future<UpdateRewriterConfigSolrResponse>> futures = new ArrayList<>();
+                for (int i = 1; i <= numUpdates; i++) {
+                    // send the updates to different nodes
+                    final SolrClient client = CLIENTS.get(i % CLIENTS.size());
+                    final String rule = "x" + i + " =>\n SYNONYM: b\n @_id: \"r" + i + "\"";
+                    futures.add(executor.submit(() -> CommonRulesConfigRequestBuilder
+                            .buildRuleChangesRequest("rewriter_concurrent_updates", rule, null)
+                            .process(client)));
+                }
+                for (final Future<UpdateRewriterConfigSolrResponse> future : futures) {
+                    assertEquals(0, future.get().getStatus());
+                }
+            } finally {
+                executor.shutdown();
+            }
+
+            final GetRewriterConfigSolrResponse response = buildGetRequest("rewriter_concurrent_updates")
+                    .process(getRandClient());
+            final Map<String, Object> definition = (Map<String, Object>) ((Map<String, Object>) response
+                    .getResponse().get("rewriter")).get("definition");
+            final Map<String, Object> config = (Map<String, Object>) definition.get("config");
+            assertEquals(numUpdates, ((List<?>) config.get("ruleChanges")).size());
+
+        } finally {
+            cleanUpRewriters("rewriter_concurrent_updates");
+        }
+
+    }
+
+    @Test
+    public void testThatCoresShareRewriterFactory() throws Exception {
+
+        boolean deleted = false;
+        try {
+
+            final CommonRulesConfigRequestBuilder builder = new CommonRulesConfigRequestBuilder()
+                    .rules("a =>\n SYNONYM: b");
+            assertEquals(0, builder.buildSaveRequest("shared_common_rules").process(getRandClient()).getStatus());
+
+            final SolrParams params = params("collection", COLLECTION,
+                    "q", "a",
+                    "defType", "querqy",
+                    PARAM_REWRITERS, "shared_common_rules",
+                    DisMaxParams.QF, "f1 f2",
+                    QueryParsing.OP, "OR"
+            );
+            assertEquals(2L, waitForRewriterAndQuery(params, getRandClient()).getResults().getNumFound());
+
+            final String sharedKey = SharedRewriterFactoryRegistry.contentKey("shared_common_rules",
+                    builder.buildDefinition());
+
+            final Set<RewriterFactory> factories = Collections.newSetFromMap(new IdentityHashMap<>());
+            int numCores = 0;
+            for (final JettySolrRunner jetty : cluster.getJettySolrRunners()) {
+                final CoreContainer coreContainer = jetty.getCoreContainer();
+                for (final String coreName : coreContainer.getAllCoreNames()) {
+                    try (final SolrCore core = coreContainer.getCore(coreName)) {
+                        if (core != null && COLLECTION.equals(core.getCoreDescriptor().getCollectionName())) {
+                            final QuerqyRewriterRequestHandler handler = (QuerqyRewriterRequestHandler)
+                                    core.getRequestHandler(QuerqyRewriterRequestHandler.DEFAULT_HANDLER_NAME);
+                            final RewriterFactoryContext context = handler.getRewriterFactory("shared_common_rules")
+                                    .orElseThrow();
+                            assertEquals(sharedKey, context.getSharedKey());
+                            factories.add(context.getFactoryAdapter().getRewriterFactory());
+                            numCores++;
+                        }
+                    }
+                }
+            }
+
+            assertEquals(2, numCores);
+            assertEquals(1, factories.size());
+            assertEquals(numCores, SharedRewriterFactoryRegistry.INSTANCE.getReferenceCount(sharedKey));
+
+            cleanUpRewriters("shared_common_rules");
+            deleted = true;
+
+            int attempts = 20;
+            while (attempts-- > 0 && SharedRewriterFactoryRegistry.INSTANCE.getReferenceCount(sharedKey) > 0) {
+                Thread.sleep(100);
+            }
+            assertEquals(0, SharedRewriterFactoryRegistry.INSTANCE.getReferenceCount(sharedKey));
+
+        } finally {
+            if (!deleted) {
+                cleanUpRewriters("shared_common_rules");
+            }
+        }
+
+    }
+
+    @Test
+    public void testThatCoresSharingRewriterFactoryCountRuleUsageSeparately() throws Exception {
+
+        try {
+
+            final CommonRulesConfigRequestBuilder builder = new CommonRulesConfigRequestBuilder()
+                    .rules("a =>\n SYNONYM: b\n @_id: \"rule_a\"");
+            assertEquals(0, builder.buildSaveRequest("usage_common_rules").process(getRandClient()).getStatus());
+
+            final List<String> coreUrls = new ArrayList<>();
+            final List<RewriterFactoryContext> contexts = new ArrayList<>();
+            for (final JettySolrRunner jetty : cluster.getJettySolrRunners()) {
+                final CoreContainer coreContainer = jetty.getCoreContainer();
+                for (final String coreName : coreContainer.getAllCoreNames()) {
+                    try (final SolrCore core = coreContainer.getCore(coreName)) {
+                        if (core != null && COLLECTION.equals(core.getCoreDescriptor().getCollectionName())) {
+                            final QuerqyRewriterRequestHandler handler = (QuerqyRewriterRequestHandler)
+                                    core.getRequestHandler(QuerqyRewriterRequestHandler.DEFAULT_HANDLER_NAME);
+                            int attempts = 50;
+                            while (attempts-- > 0 && handler.getRewriterFactory("usage_common_rules").isEmpty()) {
+                                Thread.sleep(100);
+                            }
+                            contexts.add(handler.getRewriterFactory("usage_common_rules").orElseThrow());
+                            coreUrls.add(jetty.getBaseUrl() + "/" + core.getName() + "/");
+                        }
+                    }
+                }
+            }
+
+            assertEquals(2, contexts.size());
+            assertSame(contexts.get(0).getFactoryAdapter(), contexts.get(1).getFactoryAdapter());
+
+            final SolrParams params = params(
+                    "q", "a",
+                    "defType", "querqy",
+                    "distrib", "false",
+                    PARAM_REWRITERS, "usage_common_rules",
+                    DisMaxParams.QF, "f1 f2"
+            );
+
+            try (final HttpSolrClient client0 = getHttpSolrClient(coreUrls.get(0));
+                 final HttpSolrClient client1 = getHttpSolrClient(coreUrls.get(1))) {
+                new QueryRequest(params).process(client0);
+                new QueryRequest(params).process(client0);
+                new QueryRequest(params).process(client1);
+            }
+
+            assertEquals(2L, contexts.get(0).getRuleUsageCounter().getCount("rule_a"));
+            assertEquals(1L, contexts.get(1).getRuleUsageCounter().getCount("rule_a"));
+
+        } finally {
+            cleanUpRewriters("usage_common_rules");
+        }
+
+    }
+
     @Test
     public void testRewriteChain() throws Exception {
 
@@ -2,18 +2,26 @@ package querqy.solr;
 
 import static querqy.solr.QuerqyQParserPlugin.PARAM_REWRITERS;
 import static querqy.solr.StandaloneSolrTestSupport.deleteRewriter;
+import static querqy.solr.StandaloneSolrTestSupport.updateRewriter;
 import static querqy.solr.StandaloneSolrTestSupport.withCommonRulesRewriter;
 
 import org.apache.solr.SolrTestCaseJ4;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.DisMaxParams;
 import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.search.QParser;
 import org.apache.solr.search.QueryParsing;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import querqy.rewrite.RewriteChain;
 import querqy.rewrite.lookup.preprocessing.LookupPreprocessorType;
 import querqy.solr.rewriter.commonrules.CommonRulesConfigRequestBuilder;
+import querqy.solr.rewriter.commonrules.CommonRulesRewriterFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 @SolrTestCaseJ4.SuppressSSL
 public class QuerqyRewriterRequestHandlerStandaloneTest extends SolrTestCaseJ4 {
@@ -181,6 +189,184 @@ public class QuerqyRewriterRequestHandlerStandaloneTest extends SolrTestCaseJ4 {
     }
 
 
+    @Test
+    public void testThatRewriteChainIsReusedUntilRewritersChange() throws Exception {
+
+        withCommonRulesRewriter(h.getCore(), "rewriter_chain_cache", new CommonRulesConfigRequestBuilder()
+                .rules("a =>\n SYNONYM: b"));
+
+        final RewriteChain chain1 = parseRewriteChain("rewriter_chain_cache");
+        assertSame(chain1, parseRewriteChain("rewriter_chain_cache"));
+        assertNotSame(chain1, parseRewriteChain(" rewriter_chain_cache"));
+
+        withCommonRulesRewriter(h.getCore(), "rewriter_chain_cache2", new CommonRulesConfigRequestBuilder()
+                .rules("a =>\n SYNONYM: c"));
+
+        final RewriteChain chain2 = parseRewriteChain("rewriter_chain_cache");
+        assertNotSame(chain1, chain2);
+        assertEquals(2, parseRewriteChain("rewriter_chain_cache,rewriter_chain_cache2").getFactories().size());
+
+        deleteRewriter(h.getCore(), "rewriter_chain_cache");
+        try {
+            parseRewriteChain("rewriter_chain_cache");
+            fail("Deleted rewriter must not be served from the cache");
+        } catch (final SolrException e) {
+            assertEquals(SolrException.ErrorCode.BAD_REQUEST.code, e.code());
+        }
+
+        deleteRewriter(h.getCore(), "rewriter_chain_cache2");
+
+    }
+
+    private RewriteChain parseRewriteChain(final String rewriters) throws Exception {
+        final SolrQueryRequest req = req("q", "a",
+                DisMaxParams.QF, "f1 f2",
+                "defType", "querqy",
+                PARAM_REWRITERS, rewriters);
+        try {
+            final QuerqyDismaxQParser parser = (QuerqyDismaxQParser) QParser.getParser("a", "querqy", req);
+            return parser.getSearchEngineRequestAdapter().getRewriteChain();
+        } finally {
+            req.close();
+        }
+    }
+
+    @Test
+    public void testUpdateRules() {
+
+        final CommonRulesConfigRequestBuilder builder = new CommonRulesConfigRequestBuilder()
+                .allowRuleUpdates(true)
+                .rules("a =>\n SYNONYM: b\n @_id: \"r1\"\nx =>\n SYNONYM: c\n @_id: \"r2\"");
+        withCommonRulesRewriter(h.getCore(), "rewriter_rule_updates", builder);
+
+        assertQ("Rewriter not saved",
+                req("q", "a",
+                        DisMaxParams.QF, "f1 f2",
+                        "defType", "querqy",
+                        PARAM_REWRITERS, "rewriter_rule_updates"),
+                "//result[@name='response' and @numFound='2']",
+                "//result/doc/str[@name='id'][text()='2']"
+        );
+
+        final Map<String, Object> changes = new HashMap<>();
+        changes.put(CommonRulesRewriterFactory.CONF_CHANGE_RULES, "a =>\n SYNONYM: c\n @_id: \"r1\"");
+        changes.put(CommonRulesRewriterFactory.CONF_CHANGE_DELETE, Collections.singletonList("r2"));
+        updateRewriter(h.getCore(), "rewriter_rule_updates", changes);
+
+        assertQ("Rule not updated",
+                req("q", "a",
+                        DisMaxParams.QF, "f1 f2",
+                        "defType", "querqy",
+                        PARAM_REWRITERS, "rewriter_rule_updates"),
+                "//result[@name='response' and @numFound='2']",
+                "//result/doc/str[@name='id'][text()='3']"
+        );
+
+        assertQ("Rule not deleted",
+                req("q", "x",
+                        DisMaxParams.QF, "f1 f2",
+                        "defType", "querqy",
+                        PARAM_REWRITERS, "rewriter_rule_updates"),
+                "//result[@name='response' and @numFound='0']"
+        );
+
+        updateRewriter(h.getCore(), "rewriter_rule_updates",
+                Collections.singletonMap(CommonRulesRewriterFactory.CONF_CHANGE_DELETE,
+                        Collections.singletonList("r1")));
+
+        assertQ("Rule not deleted",
+                req("q", "a",
+                        DisMaxParams.QF, "f1 f2",
+                        "defType", "querqy",
+                        PARAM_REWRITERS, "rewriter_rule_updates"),
+                "//result[@name='response' and @numFound='1']"
+        );
+
+        try (final SolrQueryRequest req = req("qt", "/querqy/rewriter/rewriter_rule_updates")) {
+            assertQ("Rule changes not stored",
+                    req,
+                    "count(//lst[@name='rewriter']/lst[@name='definition']/lst[@name='config']" +
+                            "/arr[@name='ruleChanges']/lst)=2"
+            );
+        }
+
+    }
+
+    @Test
+    public void testThatRuleChangesAreMergedIntoTheRules() {
+
+        final CommonRulesConfigRequestBuilder builder = new CommonRulesConfigRequestBuilder()
+                .allowRuleUpdates(true)
+                .maxRuleChanges(1)
+                .rules("a =>\n SYNONYM: b\n @_id: \"r1\"\nx =>\n SYNONYM: c\n @_id: \"r2\"");
+        withCommonRulesRewriter(h.getCore(), "rewriter_rule_merges", builder);
+
+        updateRewriter(h.getCore(), "rewriter_rule_merges",
+                Collections.singletonMap(CommonRulesRewriterFactory.CONF_CHANGE_RULES,
+                        "a =>\n SYNONYM: c\n @_id: \"r1\""));
+
+        try (final SolrQueryRequest req = req("qt", "/querqy/rewriter/rewriter_rule_merges")) {
+            assertQ("Rule changes not stored",
+                    req,
+                    "count(//lst[@name='rewriter']/lst[@name='definition']/lst[@name='config']" +
+                            "/arr[@name='ruleChanges']/lst)=1"
+            );
+        }
+
+        updateRewriter(h.getCore(), "rewriter_rule_merges",
+                Collections.singletonMap(CommonRulesRewriterFactory.CONF_CHANGE_DELETE,
+                        Collections.singletonList("r2")));
+
+        try (final SolrQueryRequest req = req("qt", "/querqy/rewriter/rewriter_rule_merges")) {
+            assertQ("Rule changes not merged",
+                    req,
+                    "count(//lst[@name='rewriter']/lst[@name='definition']/lst[@name='config']" +
+                            "/arr[@name='ruleChanges'])=0"
+            );
+        }
+
+        assertQ("Merged rule not applied",
+                req("q", "a",
+                        DisMaxParams.QF, "f1 f2",
+                        "defType", "querqy",
+                        PARAM_REWRITERS, "rewriter_rule_merges"),
+                "//result[@name='response' and @numFound='2']",
+                "//result/doc/str[@name='id'][text()='3']"
+        );
+
+        assertQ("Deleted rule applied",
+                req("q", "x",
+                        DisMaxParams.QF, "f1 f2",
+                        "defType", "querqy",
+                        PARAM_REWRITERS, "rewriter_rule_merges"),
+                "//result[@name='response' and @numFound='0']"
+        );
+    }
+
+    @Test
+    public void testThatRulesCannotBeUpdatedUnlessAllowed() {
+
+        withCommonRulesRewriter(h.getCore(), "rewriter_no_rule_updates", new CommonRulesConfigRequestBuilder()
+                .rules("a =>\n SYNONYM: b\n @_id: \"r1\""));
+
+        try {
+            updateRewriter(h.getCore(), "rewriter_no_rule_updates",
+                    Collections.singletonMap(CommonRulesRewriterFactory.CONF_CHANGE_DELETE,
+                            Collections.singletonList("r1")));
+            fail("Rules must not be updatable");
+        } catch (final SolrException e) {
+            assertEquals(SolrException.ErrorCode.BAD_REQUEST.code, e.code());
+        }
+
+        assertQ("Rule must not be deleted",
+                req("q", "a",
+                        DisMaxParams.QF, "f1 f2",
+                        "defType", "querqy",
+                        PARAM_REWRITERS, "rewriter_no_rule_updates"),
+                "//result[@name='response' and @numFound='2']"
+        );
+    }
+
     @Test
     public void testUnknownRewriterReturnsBadRequest() {
 
@@ -0,0 +1,81 @@
+package querqy.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import querqy.lucene.rewrite.infologging.MultiSinkInfoLogging;
+import querqy.rewrite.RewriteChain;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RewriteChainCacheTest {
+
+    @Test
+    public void testThatEntryIsAssembledOncePerParamValues() {
+
+        final RewriteChainCache cache = new RewriteChainCache();
+        final AtomicInteger assembled = new AtomicInteger();
+
+        final RewriteChainCache.Entry entry1 = cache.get("r1,r2", null, () -> entry(assembled));
+        assertSame(entry1, cache.get("r1,r2", null, () -> entry(assembled)));
+        assertNotSame(entry1, cache.get("r1,r2", "r1", () -> entry(assembled)));
+        assertNotSame(entry1, cache.get("r1", null, () -> entry(assembled)));
+
+        assertEquals(3, assembled.get());
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void testThatRewritersChangeInvalidatesEntries() {
+
+        final RewriteChainCache cache = new RewriteChainCache();
+        final AtomicInteger assembled = new AtomicInteger();
+
+        final RewriteChainCache.Entry entry1 = cache.get("r1", null, () -> entry(assembled));
+        cache.rewritersInvalidated();
+        assertEquals(0, cache.size());
+        assertNotSame(entry1, cache.get("r1", null, () -> entry(assembled)));
+        assertEquals(2, assembled.get());
+    }
+
+    @Test
+    public void testThatEntryAssembledDuringInvalidationIsNotCached() {
+
+        final RewriteChainCache cache = new RewriteChainCache();
+        final AtomicInteger assembled = new AtomicInteger();
+
+        // the rewriters change while the entry is assembled from the previous rewriters
+        cache.get("r1", null, () -> {
+            cache.rewritersInvalidated();
+            return entry(assembled);
+        });
+
+        assertEquals(0, cache.size());
+        cache.get("r1", null, () -> entry(assembled));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testThatMaxSizeIsRespected() {
+
+        final RewriteChainCache cache = new RewriteChainCache(2);
+        final AtomicInteger assembled = new AtomicInteger();
+
+        cache.get("r1", null, () -> entry(assembled));
+        cache.get("r2", null, () -> entry(assembled));
+        final RewriteChainCache.Entry entry3 = cache.get("r3", null, () -> entry(assembled));
+        assertNotSame(entry3, cache.get("r3", null, () -> entry(assembled)));
+
+        assertEquals(2, cache.size());
+        assertEquals(4, assembled.get());
+    }
+
+    private static RewriteChainCache.Entry entry(final AtomicInteger assembled) {
+        assembled.incrementAndGet();
+        return new RewriteChainCache.Entry(new RewriteChain(), new MultiSinkInfoLogging(Collections.emptyMap()));
+    }
+
+}
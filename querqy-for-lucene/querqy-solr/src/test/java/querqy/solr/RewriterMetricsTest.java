@@ -0,0 +1,174 @@
+package querqy.solr;
+
+import static querqy.solr.QuerqyQParserPlugin.PARAM_REWRITERS;
+import static querqy.solr.StandaloneSolrTestSupport.withCommonRulesRewriter;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.DisMaxParams;
+import org.apache.solr.request.SolrQueryRequest;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import querqy.solr.rewriter.commonrules.CommonRulesConfigRequestBuilder;
+
+@SolrTestCaseJ4.SuppressSSL
+public class RewriterMetricsTest extends SolrTestCaseJ4 {
+
+    static final String METRICS_PREFIX = "QUERY.querqyRewriter.";
+
+    @BeforeClass
+    public static void beforeTests() throws Exception {
+        initCore("solrconfig-rewriter-metrics.xml", "schema.xml");
+        withCommonRulesRewriter(h.getCore(), "metrics_rules", new CommonRulesConfigRequestBuilder()
+                .rules("a =>\n  SYNONYM: b"));
+        withCommonRulesRewriter(h.getCore(), "budget_rules", new CommonRulesConfigRequestBuilder()
+                .rules("a =>\n  SYNONYM: b"));
+        assertU(adoc("id", "1", "f1", "a"));
+        assertU(adoc("id", "2", "f1", "b"));
+        assertU(commit());
+    }
+
+    @Test
+    public void testThatRewritesAreRecordedPerRewriter() {
+
+        assertQuery("a", 2);
+        assertQuery("a", 2);
+        assertQuery("c", 0);
+
+        assertEquals(3L, getGaugeValue("rewrites"));
+        assertEquals(2L, getGaugeValue("appliedRewrites"));
+        final Timer latency = getTimer("metrics_rules");
+        assertEquals(3L, latency.getCount());
+        final Snapshot snapshot = latency.getSnapshot();
+        assertTrue(snapshot.get99thPercentile() > 0.0);
+        assertTrue(snapshot.get99thPercentile() <= snapshot.getMax());
+        assertNotNull(getGaugeValue("allocatedBytes"));
+
+    }
+
+    @Test
+    public void testThatDegradedRewritesAreRecorded() {
+
+        final SolrQueryRequest skipReq = req("q", "a",
+                DisMaxParams.QF, "f1",
+                "defType", "querqy",
+                PARAM_REWRITERS, "budget_rules",
+                QuerqyDismaxParams.REWRITE_STEP_BUDGET, "0",
+                "debugQuery", "true"
+        );
+
+        assertQ("Rewriter not skipped",
+                skipReq,
+                "//result[@name='response'][@numFound='1']",
+                "//lst[@name='responseHeader']/bool[@name='querqyRewriteDegraded'][text()='true']",
+                "//lst[@name='debug']/lst[@name='querqy']/lst[@name='rewrite']/arr[@name='skippedRewriters']"
+                        + "/str[text()='budget_rules']"
+        );
+        skipReq.close();
+
+        // the rewriter can be applied but looking up the rule would need a second step
+        final SolrQueryRequest truncateReq = req("q", "a",
+                DisMaxParams.QF, "f1",
+                "defType", "querqy",
+                PARAM_REWRITERS, "budget_rules",
+                QuerqyDismaxParams.REWRITE_STEP_BUDGET, "1"
+        );
+
+        assertQ("Rewriter not truncated",
+                truncateReq,
+                "//result[@name='response'][@numFound='1']",
+                "//lst[@name='responseHeader']/bool[@name='querqyRewriteDegraded'][text()='true']"
+        );
+        truncateReq.close();
+
+        final SolrQueryRequest unlimitedReq = req("q", "a",
+                DisMaxParams.QF, "f1",
+                "defType", "querqy",
+                PARAM_REWRITERS, "budget_rules",
+                QuerqyDismaxParams.REWRITE_STEP_BUDGET, "10",
+                QuerqyDismaxParams.REWRITE_TIME_BUDGET, "60000"
+        );
+
+        assertQ("Rewriting degraded",
+                unlimitedReq,
+                "//result[@name='response'][@numFound='2']",
+                "not(//lst[@name='responseHeader']/bool[@name='querqyRewriteDegraded'])"
+        );
+        unlimitedReq.close();
+
+        assertEquals(1L, getGaugeValue("budget_rules", "skippedRewrites"));
+        assertEquals(1L, getGaugeValue("budget_rules", "truncatedRewrites"));
+        assertEquals(2L, getGaugeValue("budget_rules", "rewrites"));
+
+    }
+
+    @Test
+    public void testThatNegativeBudgetIsABadRequest() {
+        try (final SolrQueryRequest req = req("q", "a",
+                DisMaxParams.QF, "f1",
+                "defType", "querqy",
+                PARAM_REWRITERS, "budget_rules",
+                QuerqyDismaxParams.REWRITE_TIME_BUDGET, "-1"
+        )) {
+            assertQEx("Negative budget should trigger bad request", req, SolrException.ErrorCode.BAD_REQUEST);
+        }
+    }
+
+    private void assertQuery(final String q, final int numFound) {
+        final SolrQueryRequest req = req("q", q,
+                DisMaxParams.QF, "f1",
+                "defType", "querqy",
+                PARAM_REWRITERS, "metrics_rules"
+        );
+
+        assertQ("Unexpected query result",
+                req,
+                "//result[@name='response'][@numFound='" + numFound + "']");
+        req.close();
+    }
+
+    @Test
+    public void testThatMetricsAreRemovedWithTheRewriter() {
+
+        withCommonRulesRewriter(h.getCore(), "deleted_rules", new CommonRulesConfigRequestBuilder()
+                .rules("a =>\n  SYNONYM: b"));
+
+        final SolrQueryRequest req = req("q", "a",
+                DisMaxParams.QF, "f1",
+                "defType", "querqy",
+                PARAM_REWRITERS, "deleted_rules"
+        );
+        assertQ("Unexpected query result", req, "//result[@name='response'][@numFound='2']");
+        req.close();
+
+        assertEquals(1L, getGaugeValue("deleted_rules", "rewrites"));
+        assertNotNull(getTimer("deleted_rules"));
+
+        StandaloneSolrTestSupport.deleteRewriter(h.getCore(), "deleted_rules");
+
+        assertTrue(h.getCore().getSolrMetricsContext().getMetricRegistry().getNames().stream()
+                .noneMatch(name -> name.startsWith(METRICS_PREFIX + "deleted_rules.")));
+    }
+
+    private static Timer getTimer(final String rewriterId) {
+        final Timer timer = h.getCore().getSolrMetricsContext().getMetricRegistry().getTimers()
+                .get(METRICS_PREFIX + rewriterId + ".latency");
+        assertNotNull("Missing latency timer", timer);
+        return timer;
+    }
+
+    private static Object getGaugeValue(final String name) {
+        return getGaugeValue("metrics_rules", name);
+    }
+
+    private static Object getGaugeValue(final String rewriterId, final String name) {
+        final Gauge<?> gauge = h.getCore().getSolrMetricsContext().getMetricRegistry().getGauges()
+                .get(METRICS_PREFIX + rewriterId + "." + name);
+        assertNotNull("Missing gauge " + name, gauge);
+        return gauge.getValue();
+    }
+
+}
@@ -0,0 +1,94 @@
+package querqy.solr;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.Test;
+import querqy.solr.rewriter.commonrules.CommonRulesRewriterFactory;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SharedRewriterFactoryRegistryTest {
+
+    @Test
+    public void testThatEqualDefinitionsHaveEqualContentKeys() {
+
+        final Map<String, Object> config1 = new LinkedHashMap<>();
+        config1.put("rules", "a =>\n SYNONYM: b");
+        config1.put("lookupPreprocessor", "none");
+
+        final Map<String, Object> config2 = new TreeMap<>();
+        config2.put("lookupPreprocessor", "none");
+        config2.put("rules", "a =>\n SYNONYM: b");
+
+        final Map<String, Object> config3 = new HashMap<>(config1);
+        config3.put("rules", "a =>\n SYNONYM: c");
+
+        final String key1 = SharedRewriterFactoryRegistry.contentKey("r1", definition(config1));
+
+        assertThat(SharedRewriterFactoryRegistry.contentKey("r1", definition(config2))).isEqualTo(key1);
+        assertThat(SharedRewriterFactoryRegistry.contentKey("r2", definition(config1))).isNotEqualTo(key1);
+        assertThat(SharedRewriterFactoryRegistry.contentKey("r1", definition(config3))).isNotEqualTo(key1);
+
+        final Map<String, Object> withSinks = definition(config1);
+        withSinks.put("info_logging", Map.of("sinks", "log"));
+        assertThat(SharedRewriterFactoryRegistry.contentKey("r1", withSinks)).isEqualTo(key1);
+    }
+
+    @Test
+    public void testThatAdapterIsSharedUntilLastReferenceIsReleased() {
+
+        final SharedRewriterFactoryRegistry registry = new SharedRewriterFactoryRegistry();
+        final AtomicInteger configured = new AtomicInteger();
+
+        final SolrRewriterFactoryAdapter adapter1 = registry.acquire("k1", () -> adapter(configured));
+        final SolrRewriterFactoryAdapter adapter2 = registry.acquire("k1", () -> adapter(configured));
+        final SolrRewriterFactoryAdapter adapter3 = registry.acquire("k2", () -> adapter(configured));
+
+        assertThat(adapter2).isSameAs(adapter1);
+        assertThat(adapter3).isNotSameAs(adapter1);
+        assertThat(configured.get()).isEqualTo(2);
+        assertThat(registry.getReferenceCount("k1")).isEqualTo(2);
+
+        registry.release("k1");
+        assertThat(registry.getReferenceCount("k1")).isEqualTo(1);
+        assertThat(registry.acquire("k1", () -> adapter(configured))).isSameAs(adapter1);
+
+        registry.release("k1");
+        registry.release("k1");
+        assertThat(registry.getReferenceCount("k1")).isEqualTo(0);
+        assertThat(registry.size()).isEqualTo(1);
+
+        assertThat(registry.acquire("k1", () -> adapter(configured))).isNotSameAs(adapter1);
+        assertThat(configured.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void testThatFailedConfigurationIsNotShared() {
+
+        final SharedRewriterFactoryRegistry registry = new SharedRewriterFactoryRegistry();
+
+        assertThatThrownBy(() -> registry.acquire("k1", () -> {
+            throw new IllegalArgumentException("invalid config");
+        })).isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(registry.size()).isEqualTo(0);
+        assertThat(registry.acquire("k1", () -> adapter(new AtomicInteger()))).isNotNull();
+    }
+
+    private static Map<String, Object> definition(final Map<String, Object> config) {
+        final Map<String, Object> definition = new HashMap<>();
+        definition.put("class", CommonRulesRewriterFactory.class.getName());
+        definition.put("config", config);
+        return definition;
+    }
+
+    private static SolrRewriterFactoryAdapter adapter(final AtomicInteger configured) {
+        configured.incrementAndGet();
+        return new CommonRulesRewriterFactory("r1");
+    }
+}
@@ -0,0 +1,78 @@
+package querqy.solr;
+
+import static querqy.solr.QuerqyQParserPlugin.PARAM_REWRITERS;
+import static querqy.solr.StandaloneSolrTestSupport.withCommonRulesRewriter;
+
+import com.codahale.metrics.Gauge;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.DisMaxParams;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.search.QueryParsing;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import querqy.solr.rewriter.commonrules.CommonRulesConfigRequestBuilder;
+
+@SolrTestCaseJ4.SuppressSSL
+public class SolrTermQueryCacheParallelPreloadTest extends SolrTestCaseJ4 {
+
+    static final String METRICS_PREFIX = "CACHE.querqyTermQueryCachePreloader.querqyTermQueryCache.";
+
+    @BeforeClass
+    public static void beforeTest() throws Exception {
+        initCore("solrconfig-cache-parallel-preload.xml", "schema.xml");
+
+        // more terms than fit into a single preload task
+        final StringBuilder rules = new StringBuilder("a =>\n");
+        for (int i = 0; i < TermQueryCachePreloader.TERMS_PER_TASK + 44; i++) {
+            rules.append("  SYNONYM: s").append(i).append('\n');
+        }
+        withCommonRulesRewriter(h.getCore(), "common_rules", new CommonRulesConfigRequestBuilder()
+                .rules(rules.toString()));
+    }
+
+    @Test
+    public void testThatHitTestsAreReusedForUnchangedSegments() throws Exception {
+
+        assertU(adoc("id", "1", "f1", "s1"));
+        assertU(commit());
+
+        // the rewriters of other tests can be stored in the same config directory
+        final int termsTotal = (Integer) getGaugeValue("termsTotal");
+        assertTrue(termsTotal >= 300);
+        assertEquals(termsTotal, getGaugeValue("termsDone"));
+        assertEquals(0, getGaugeValue("termsReused"));
+
+        assertU(adoc("id", "2", "f1", "s2"));
+        assertU(commit());
+
+        // the hit for s1 in the first segment is reused, s2 is found in the new segment
+        assertEquals(termsTotal, getGaugeValue("termsDone"));
+        assertEquals(1, getGaugeValue("termsReused"));
+        assertEquals(0, getGaugeValue("running"));
+
+        final SolrQueryRequest req = req(
+                CommonParams.Q, "a",
+                DisMaxParams.QF, "f1",
+                QueryParsing.OP, "OR",
+                "defType", "querqy",
+                PARAM_REWRITERS, "common_rules"
+        );
+
+        assertQ("Preloaded hit test failed",
+                req,
+                "//result[@name='response'][@numFound='2']"
+        );
+
+        req.close();
+
+    }
+
+    private static Object getGaugeValue(final String name) {
+        final Gauge<?> gauge = h.getCore().getSolrMetricsContext().getMetricRegistry().getGauges()
+                .get(METRICS_PREFIX + name);
+        assertNotNull("Missing gauge " + name, gauge);
+        return gauge.getValue();
+    }
+
+}
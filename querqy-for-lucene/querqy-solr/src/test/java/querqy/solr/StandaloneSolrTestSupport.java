@@ -181,6 +181,24 @@ public interface StandaloneSolrTestSupport {
         }
     }
 
+    static void updateRewriter(final SolrCore core, final String rewriterId, final Map<String, Object> changes) {
+
+        SolrRequestHandler handler = core.getRequestHandler("/querqy/rewriter/" + rewriterId);
+
+        final LocalSolrQueryRequest req = new LocalSolrQueryRequest(core, UPDATE.params());
+        req.setContentStreams(Collections.singletonList(new ContentStreamBase.StringStream(JsonUtil.toJson(changes))));
+        req.getContext().put("httpMethod", "POST");
+
+        final SolrQueryResponse rsp = new SolrQueryResponse();
+        SolrRequestInfo.setRequestInfo(new SolrRequestInfo(req, rsp));
+        try {
+            core.execute( handler, req, rsp );
+        } finally {
+            SolrRequestInfo.clearRequestInfo();
+            req.close();
+        }
+    }
+
     static String resourceToString(final String resourceName) throws IOException {
         try (final BufferedReader reader = new BufferedReader(new InputStreamReader(
                 Objects.requireNonNull(StandaloneSolrTestSupport.class.getClassLoader()
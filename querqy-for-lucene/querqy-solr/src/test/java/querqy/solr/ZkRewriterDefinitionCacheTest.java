@@ -0,0 +1,109 @@
+package querqy.solr;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ZkRewriterDefinitionCacheTest {
+
+    @Test
+    public void testThatVersionIsOnlyLoadedOnce() throws Exception {
+
+        final ZkRewriterDefinitionCache cache = new ZkRewriterDefinitionCache();
+        final AtomicInteger loads = new AtomicInteger();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Map<String, Object>>> futures = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                futures.add(executor.submit(() -> cache.get("/r1", Arrays.asList(".data", "u1"),
+                        () -> definition("v1", loads))));
+            }
+            final Map<String, Object> first = futures.get(0).get();
+            for (final Future<Map<String, Object>> future : futures) {
+                assertThat(future.get()).isSameAs(first);
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testThatNewVersionIsLoaded() throws IOException {
+
+        final ZkRewriterDefinitionCache cache = new ZkRewriterDefinitionCache();
+        final AtomicInteger loads = new AtomicInteger();
+
+        assertThat(cache.get("/r1", Arrays.asList(".data", "u1"), () -> definition("v1", loads)))
+                .containsEntry("rules", "v1");
+        assertThat(cache.get("/r2", Arrays.asList(".data", "u1"), () -> definition("v2", loads)))
+                .containsEntry("rules", "v2");
+        assertThat(cache.get("/r1", Arrays.asList(".data", "u2", "u3"), () -> definition("v3", loads)))
+                .containsEntry("rules", "v3");
+        assertThat(loads.get()).isEqualTo(3);
+
+        cache.remove("/r1");
+        assertThat(cache.get("/r1", Arrays.asList(".data", "u2", "u3"), () -> definition("v3", loads)))
+                .containsEntry("rules", "v3");
+        assertThat(loads.get()).isEqualTo(4);
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void testThatFailedLoadIsNotCached() throws IOException {
+
+        final ZkRewriterDefinitionCache cache = new ZkRewriterDefinitionCache();
+        final AtomicInteger loads = new AtomicInteger();
+
+        assertThatThrownBy(() -> cache.get("/r1", Arrays.asList(".data", "u1"), () -> {
+            throw new IOException("failed");
+        })).isInstanceOf(IOException.class);
+
+        assertThat(cache.get("/r1", Arrays.asList(".data", "u1"), () -> definition("v1", loads)))
+                .containsEntry("rules", "v1");
+    }
+
+    @Test
+    public void testThatCachedDefinitionCannotBeModified() throws IOException {
+
+        final ZkRewriterDefinitionCache cache = new ZkRewriterDefinitionCache();
+        final Map<String, Object> definition = cache.get("/r1", Collections.singletonList("u1"),
+                () -> definition("v1", new AtomicInteger()));
+
+        assertThatThrownBy(() -> definition.put("class", "x")).isInstanceOf(UnsupportedOperationException.class);
+        final Map<String, Object> config = (Map<String, Object>) definition.get("config");
+        assertThatThrownBy(() -> config.put("rules", "x")).isInstanceOf(UnsupportedOperationException.class);
+        final List<Object> sinks = (List<Object>) config.get("sinks");
+        assertThatThrownBy(() -> sinks.add("x")).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    private static Map<String, Object> definition(final String rules, final AtomicInteger loads) {
+        loads.incrementAndGet();
+        final Map<String, Object> config = new HashMap<>();
+        config.put("rules", rules);
+        config.put("sinks", new ArrayList<>(Collections.singletonList("log")));
+        final Map<String, Object> definition = new HashMap<>();
+        definition.put("class", "querqy.solr.rewriter.commonrules.CommonRulesRewriterFactory");
+        definition.put("config", config);
+        definition.put("rules", rules);
+        return definition;
+    }
+}
@@ -9,6 +9,7 @@ import static org.junit.Assert.fail;
 
 import org.junit.Test;
 import querqy.rewrite.commonrules.WhiteSpaceQuerqyParserFactory;
+import querqy.rewrite.logging.RewriteLoggingSampler;
 import querqy.rewrite.lookup.preprocessing.LookupPreprocessorType;
 
 import java.util.List;
@@ -50,10 +51,16 @@ public class CommonRulesConfigRequestBuilderTest {
                 .lookupPreprocessorType(LookupPreprocessorType.GERMAN)
                 .rhsParser(WhiteSpaceQuerqyParserFactory.class)
                 .ruleSelectionStrategy("strategy1", ExpressionSelectionStrategyFactory.class)
+                .parsingThreads(2)
+                .rewriteLoggingSampleRate(100)
+                .rewriteLoggingSampleMode(RewriteLoggingSampler.Mode.QUERY)
                 .buildConfig();
         assertThat(config, hasEntry(CommonRulesRewriterFactory.CONF_RULES, "trainers =>\n" +
                 "SYNONYM: sneakers"));
         assertThat(config, hasEntry(CommonRulesRewriterFactory.CONF_LOOKUP_PREPROCESSOR, "german"));
+        assertThat(config, hasEntry(CommonRulesRewriterFactory.CONF_PARSING_THREADS, 2));
+        assertThat(config, hasEntry(CommonRulesRewriterFactory.CONF_REWRITE_LOGGING_SAMPLE_RATE, 100));
+        assertThat(config, hasEntry(CommonRulesRewriterFactory.CONF_REWRITE_LOGGING_SAMPLE_MODE, "QUERY"));
 
         final Map<String,Map<String,Object>> strategyConfig = (Map<String,Map<String,Object>>) config
                 .get(CommonRulesRewriterFactory.CONF_RULE_SELECTION_STRATEGIES);
@@ -65,4 +72,24 @@ public class CommonRulesConfigRequestBuilderTest {
                 WhiteSpaceQuerqyParserFactory.class.getName()));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testThatParsingThreadsMustBePositive() {
+        final Map<String, Object> config = new CommonRulesConfigRequestBuilder().rules("a =>\nSYNONYM: b")
+                .parsingThreads(0).buildConfig();
+
+        final List<String> errors = new CommonRulesRewriterFactory("id").validateConfiguration(config);
+        assertNotNull(errors);
+        assertTrue(errors.get(0).contains(CommonRulesRewriterFactory.CONF_PARSING_THREADS));
+    }
+
+    @Test
+    public void testThatRewriteLoggingSampleRateMustBePositive() {
+        final Map<String, Object> config = new CommonRulesConfigRequestBuilder().rules("a =>\nSYNONYM: b")
+                .rewriteLoggingSampleRate(0).buildConfig();
+
+        final List<String> errors = new CommonRulesRewriterFactory("id").validateConfiguration(config);
+        assertNotNull(errors);
+        assertTrue(errors.get(0).contains(CommonRulesRewriterFactory.CONF_REWRITE_LOGGING_SAMPLE_RATE));
+    }
+
+}
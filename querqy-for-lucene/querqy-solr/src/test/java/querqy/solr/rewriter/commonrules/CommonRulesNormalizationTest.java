@@ -5,7 +5,11 @@ import org.apache.solr.common.params.DisMaxParams;
 import org.apache.solr.request.SolrQueryRequest;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import querqy.rewrite.lookup.preprocessing.LookupPreprocessorFactory;
 import querqy.rewrite.lookup.preprocessing.LookupPreprocessorType;
+import querqy.rewrite.lookup.preprocessing.NormalizationDictionary;
+
+import java.io.StringReader;
 
 import static querqy.solr.QuerqyQParserPlugin.PARAM_REWRITERS;
 import static querqy.solr.StandaloneSolrTestSupport.withCommonRulesRewriter;
@@ -17,6 +21,12 @@ public class CommonRulesNormalizationTest extends SolrTestCaseJ4 {
         initCore("solrconfig.xml", "schema.xml");
         withCommonRulesRewriter(h.getCore(), "common", "configs/commonrules/rules-normalization.txt",
                 LookupPreprocessorType.GERMAN);
+
+        LookupPreprocessorFactory.register("custom_nouns", LookupPreprocessorFactory.german(
+                NormalizationDictionary.compile(new StringReader("gurke,gurken\n"))));
+        withCommonRulesRewriter(h.getCore(), "custom", new CommonRulesConfigRequestBuilder()
+                .rules("salatgurken =>\n    SYNONYM: tomate\n")
+                .lookupPreprocessor("custom_nouns"));
     }
 
     @Test
@@ -73,5 +83,22 @@ public class CommonRulesNormalizationTest extends SolrTestCaseJ4 {
         req.close();
     }
 
+    @Test
+    public void testThat_synonymIsApplied_forApplyingRegisteredPreprocessingOnRuleLookups() {
+        String q = "salatgurke"; // rule input is 'salatgurken'
+
+        SolrQueryRequest req = req("q", q,
+                DisMaxParams.QF, "f1",
+                "debugQuery", "on",
+                "defType", "querqy",
+                PARAM_REWRITERS, "custom"
+        );
+
+        assertQ("",
+                req,
+                "//lst[@name='debug']/str[@name='parsedquery' and contains(text(),'tomate')]"
+        );
+        req.close();
+    }
 
 }
@@ -1,21 +1,35 @@
 package querqy.solr.rewriter.commonrules;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.solr.common.SolrException;
 import org.apache.solr.common.util.NamedList;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import querqy.lucene.GZIPAwareResourceLoader;
 import querqy.rewrite.RewriterFactory;
 import querqy.rewrite.commonrules.WhiteSpaceQuerqyParserFactory;
+import querqy.rewrite.lookup.preprocessing.LookupPreprocessorFactory;
+import querqy.rewrite.lookup.preprocessing.NormalizationDictionary;
+import querqy.solr.SharedRewriterFactoryRegistry;
 
 import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.when;
 import static querqy.solr.RewriterConfigRequestBuilder.CONF_CLASS;
 import static querqy.solr.RewriterConfigRequestBuilder.CONF_CONFIG;
@@ -30,6 +44,9 @@ public class CommonRulesRewriterFactoryTest {
     @Mock
     private GZIPAwareResourceLoader resourceLoader;
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void testParseDeprecatedConfigurationWorksFine() throws IOException {
 
@@ -60,4 +77,185 @@ public class CommonRulesRewriterFactoryTest {
 
         assertThat(config.get(CONF_ALLOW_BOOLEAN_INPUT)).isEqualTo(false);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testThatRuleChangesAreAppliedToPreviousRules() {
+
+        final Map<String, Object> config = new HashMap<>();
+        config.put(CONF_RULES, "a =>\n SYNONYM: b\n @_id: \"r1\"\nc =>\n SYNONYM: d\n @_id: \"r2\"");
+        config.put(CONF_ALLOW_RULE_UPDATES, true);
+        assertThat(factory.validateConfiguration(config)).isNull();
+        factory.configure(config);
+
+        final Map<String, Object> changes = new HashMap<>();
+        changes.put(CONF_CHANGE_RULES, "e =>\n SYNONYM: f\n @_id: \"r3\"");
+        changes.put(CONF_CHANGE_DELETE, Collections.singletonList("r1"));
+        final Map<String, Object> newConfig = factory.updateConfiguration(config, changes);
+
+        assertThat((List<Object>) newConfig.get(CONF_RULE_CHANGES)).containsExactly(changes);
+        assertThat(config).doesNotContainKey(CONF_RULE_CHANGES);
+        assertThat(factory.validateConfiguration(newConfig)).isNull();
+
+        final CommonRulesRewriterFactory updated = new CommonRulesRewriterFactory("test");
+        updated.configure(newConfig, factory);
+
+        final CommonRulesRewriterFactory reloaded = new CommonRulesRewriterFactory("test");
+        reloaded.configure(newConfig);
+
+        assertThat(synonyms(updated)).containsExactlyInAnyOrder("d", "f");
+        assertThat(synonyms(reloaded)).containsExactlyInAnyOrder("d", "f");
+        assertThat(synonyms(factory)).containsExactlyInAnyOrder("b", "d");
+    }
+
+    @Test
+    public void testThatRuleChangesRequireRuleUpdates() {
+
+        final Map<String, Object> config = new HashMap<>();
+        config.put(CONF_RULES, "a =>\n SYNONYM: b\n @_id: \"r1\"");
+        final Map<String, Object> changes = Collections.singletonMap(CONF_CHANGE_DELETE,
+                Collections.singletonList("r1"));
+
+        assertThatThrownBy(() -> factory.updateConfiguration(config, changes)).isInstanceOf(SolrException.class);
+
+        config.put(CONF_RULE_CHANGES, Collections.singletonList(changes));
+        assertThat(factory.validateConfiguration(config)).isNotEmpty();
+
+        config.put(CONF_ALLOW_RULE_UPDATES, true);
+        assertThat(factory.validateConfiguration(config)).isNull();
+
+        config.put(CONF_ALLOW_BOOLEAN_INPUT, true);
+        assertThat(factory.validateConfiguration(config)).isNotEmpty();
+    }
+
+    @Test
+    public void testThatInvalidRuleChangesAreRejected() {
+
+        final Map<String, Object> config = new HashMap<>();
+        config.put(CONF_RULES, "a =>\n SYNONYM: b\n @_id: \"r1\"");
+        config.put(CONF_ALLOW_RULE_UPDATES, true);
+
+        assertThatThrownBy(() -> factory.updateConfiguration(config,
+                Collections.singletonMap(CONF_CHANGE_RULES, "a =>\n UNKNOWN: b")))
+                .isInstanceOf(SolrException.class);
+        assertThatThrownBy(() -> factory.updateConfiguration(config, Collections.singletonMap("x", "y")))
+                .isInstanceOf(SolrException.class);
+    }
+
+    @Test
+    public void testThatCompiledRulesAreWrittenAndShared() throws IOException {
+
+        final Path compiledRulesDir = folder.getRoot().toPath().resolve("compiled");
+
+        final Map<String, Object> config = new HashMap<>();
+        config.put(CONF_RULES, "a =>\n SYNONYM: b\nc =>\n SYNONYM: d");
+        config.put(CONF_COMPILED_RULES_DIR, compiledRulesDir.toString());
+        assertThat(factory.validateConfiguration(config)).isNull();
+        factory.configure(config);
+
+        final List<Path> files = compiledRulesFiles(compiledRulesDir, "test");
+        assertThat(files).hasSize(1);
+        assertThat(files.get(0).getFileName().toString()).endsWith(COMPILED_RULES_FILE_SUFFIX);
+        assertThat(synonyms(factory)).containsExactlyInAnyOrder("b", "d");
+
+        final CommonRulesRewriterFactory other = new CommonRulesRewriterFactory("test");
+        other.configure(new HashMap<>(config));
+        assertThat(synonyms(other)).containsExactlyInAnyOrder("b", "d");
+        assertThat(compiledRulesFiles(compiledRulesDir, "test")).isEqualTo(files);
+
+        config.put(CONF_ALLOW_RULE_UPDATES, true);
+        assertThat(factory.validateConfiguration(config)).isNotEmpty();
+    }
+
+    @Test
+    public void testThatUnusedCompiledRulesAreDeleted() throws IOException {
+
+        final Path compiledRulesDir = folder.getRoot().toPath().resolve("compiled");
+
+        final Map<String, Object> config1 = new HashMap<>();
+        config1.put(CONF_RULES, "a =>\n SYNONYM: b");
+        config1.put(CONF_COMPILED_RULES_DIR, compiledRulesDir.toString());
+
+        final Map<String, Object> config2 = new HashMap<>(config1);
+        config2.put(CONF_RULES, "a =>\n SYNONYM: c");
+
+        // the file of another rewriter must be kept
+        final CommonRulesRewriterFactory otherRewriter = new CommonRulesRewriterFactory("other");
+        otherRewriter.configure(new HashMap<>(config1));
+
+        // the file of a loaded rewriter must be kept
+        final Map<String, Object> instanceDescription = new HashMap<>();
+        instanceDescription.put(CONF_CLASS, CommonRulesRewriterFactory.class.getName());
+        instanceDescription.put(CONF_CONFIG, config1);
+        final String key1 = SharedRewriterFactoryRegistry.contentKey("test", instanceDescription);
+        final CommonRulesRewriterFactory loaded = (CommonRulesRewriterFactory) SharedRewriterFactoryRegistry.INSTANCE
+                .acquire(key1, () -> {
+                    final CommonRulesRewriterFactory adapter = new CommonRulesRewriterFactory("test");
+                    adapter.configure(config1);
+                    return adapter;
+                });
+        final List<Path> files1 = compiledRulesFiles(compiledRulesDir, "test");
+        assertThat(files1).hasSize(1);
+
+        try {
+            factory.configure(config2);
+            final List<Path> files2 = compiledRulesFiles(compiledRulesDir, "test");
+            assertThat(files2).hasSize(2).containsAll(files1);
+
+            // no core uses the first configuration anymore
+            assertThat(SharedRewriterFactoryRegistry.INSTANCE.release(key1)).isSameAs(loaded);
+            loaded.unloaded();
+            files2.removeAll(files1);
+            assertThat(compiledRulesFiles(compiledRulesDir, "test")).isEqualTo(files2);
+
+            // the first configuration isn't loaded anymore
+            new CommonRulesRewriterFactory("test").configure(new HashMap<>(config1));
+            assertThat(compiledRulesFiles(compiledRulesDir, "test")).isEqualTo(files1);
+
+        } finally {
+            SharedRewriterFactoryRegistry.INSTANCE.release(key1);
+        }
+
+        assertThat(compiledRulesFiles(compiledRulesDir, "other")).hasSize(1);
+        assertThat(synonyms(otherRewriter)).containsExactly("b");
+    }
+
+    @Test
+    public void testThatLookupPreprocessorIsSelectedByRegisteredName() throws IOException {
+
+        LookupPreprocessorFactory.register("factory_test_nouns", LookupPreprocessorFactory.german(
+                NormalizationDictionary.compile(new StringReader("gurke,gurken\n"))));
+
+        final Map<String, Object> config = new HashMap<>();
+        config.put(CONF_RULES, "salatgurken =>\n SYNONYM: tomate");
+        config.put(CONF_LOOKUP_PREPROCESSOR, "not_registered");
+        assertThat(factory.validateConfiguration(config)).isNotEmpty();
+
+        config.put(CONF_LOOKUP_PREPROCESSOR, "factory_test_nouns");
+        assertThat(factory.validateConfiguration(config)).isNull();
+        factory.configure(config);
+        assertThat(synonyms(factory)).containsExactly("tomate");
+
+        // the name is stored with the compiled rules
+        config.put(CONF_COMPILED_RULES_DIR, folder.getRoot().toPath().resolve("compiled").toString());
+        final CommonRulesRewriterFactory compiled = new CommonRulesRewriterFactory("test");
+        compiled.configure(new HashMap<>(config));
+        final CommonRulesRewriterFactory reloaded = new CommonRulesRewriterFactory("test");
+        reloaded.configure(new HashMap<>(config));
+        assertThat(synonyms(reloaded)).containsExactly("tomate");
+    }
+
+    private static List<Path> compiledRulesFiles(final Path compiledRulesDir, final String rewriterId)
+            throws IOException {
+        try (final Stream<Path> stream = Files.list(getCompiledRulesDir(compiledRulesDir, rewriterId))) {
+            return stream.collect(Collectors.toList());
+        }
+    }
+
+    private static List<String> synonyms(final CommonRulesRewriterFactory factory) {
+        return ((querqy.rewrite.commonrules.SimpleCommonRulesRewriterFactory) factory.getRewriterFactory())
+                .getInstructions().stream()
+                .flatMap(instruction -> instruction.getGenerableTerms().stream())
+                .map(term -> term.getValue().toString())
+                .collect(Collectors.toList());
+    }
+}
@@ -11,16 +11,19 @@ import static querqy.solr.rewriter.wordbreak.WordBreakCompoundRewriterFactory.CO
 import static querqy.solr.rewriter.wordbreak.WordBreakCompoundRewriterFactory.CONF_DECOMPOUND_VERIFY_COLLATION;
 import static querqy.solr.rewriter.wordbreak.WordBreakCompoundRewriterFactory.CONF_COMPOUND;
 import static querqy.solr.rewriter.wordbreak.WordBreakCompoundRewriterFactory.CONF_DICTIONARY_FIELD;
+import static querqy.solr.rewriter.wordbreak.WordBreakCompoundRewriterFactory.CONF_DICTIONARY_WORDS;
 import static querqy.solr.rewriter.wordbreak.WordBreakCompoundRewriterFactory.CONF_LOWER_CASE_INPUT;
 import static querqy.solr.rewriter.wordbreak.WordBreakCompoundRewriterFactory.CONF_MAX_COMBINE_WORD_LENGTH;
 import static querqy.solr.rewriter.wordbreak.WordBreakCompoundRewriterFactory.CONF_MIN_BREAK_LENGTH;
 import static querqy.solr.rewriter.wordbreak.WordBreakCompoundRewriterFactory.CONF_MIN_SUGGESTION_FREQ;
 import static querqy.solr.rewriter.wordbreak.WordBreakCompoundRewriterFactory.CONF_MORPHOLOGY;
 import static querqy.solr.rewriter.wordbreak.WordBreakCompoundRewriterFactory.CONF_REVERSE_COMPOUND_TRIGGER_WORDS;
+import static querqy.solr.rewriter.wordbreak.WordBreakCompoundRewriterFactory.CONF_SUGGESTION_CACHE_SIZE;
 
 import org.junit.Test;
 import querqy.lucene.contrib.rewrite.wordbreak.SuffixGroupMorphology;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -62,6 +65,32 @@ public class WordBreakCompoundConfigRequestBuilderTest {
         }
     }
 
+    @Test
+    public void testThatSuggestionCacheSizeMustNotBeNegative() {
+        try {
+            new WordBreakCompoundConfigRequestBuilder().dictionaryField("f1").suggestionCacheSize(-1);
+            fail("suggestionCacheSize<0 must not be allowed");
+        } catch (final IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("suggestionCacheSize"));
+        }
+    }
+
+    @Test
+    public void testThatDictionaryWordsReplaceDictionaryField() {
+        final Map<String, Object> config = new WordBreakCompoundConfigRequestBuilder()
+                .dictionaryWords(Collections.singletonMap("jacke", 2)).buildConfig();
+        final WordBreakCompoundRewriterFactory factory = new WordBreakCompoundRewriterFactory("id");
+        final List<String> errors = factory.validateConfiguration(config);
+        assertTrue(errors == null || errors.isEmpty());
+
+        config.put(CONF_DECOMPOUND, Collections.singletonMap(CONF_DECOMPOUND_VERIFY_COLLATION, true));
+        assertThat(factory.validateConfiguration(config), contains("decompound.verifyCollation is not supported "
+                + "with dictionaryWords"));
+
+        assertThat(factory.validateConfiguration(Collections.singletonMap(CONF_DICTIONARY_WORDS,
+                Collections.singletonMap("jacke", 0))), contains("Frequency > 0 expected for dictionary word: jacke"));
+    }
+
     @Test
     public void testMinimalConfig() {
         final Map<String, Object> config = new WordBreakCompoundConfigRequestBuilder().dictionaryField("f1")
@@ -85,6 +114,7 @@ public class WordBreakCompoundConfigRequestBuilderTest {
                 .compoundMorphology("GERMAN")
                 .reverseCompoundTriggerWords("from", "of")
                 .verifyDecompoundCollation(false)
+                .suggestionCacheSize(1000)
                 .buildConfig();
 
         final List<String> errors = new WordBreakCompoundRewriterFactory("id").validateConfiguration(config);
@@ -97,6 +127,7 @@ public class WordBreakCompoundConfigRequestBuilderTest {
         assertThat(config, hasEntry(CONF_MAX_COMBINE_WORD_LENGTH, 10));
         assertThat(config, hasEntry(CONF_MIN_SUGGESTION_FREQ, 2));
         assertThat(config, hasEntry(CONF_MORPHOLOGY, "GERMAN"));
+        assertThat(config, hasEntry(CONF_SUGGESTION_CACHE_SIZE, 1000));
 
         final Map<String, Object> decompound = (Map<String, Object>) config.get(CONF_DECOMPOUND);
 
@@ -2,15 +2,19 @@ package querqy.solr.rewriter.wordbreak;
 
 import static querqy.solr.QuerqyQParserPlugin.PARAM_REWRITERS;
 import static querqy.solr.StandaloneSolrTestSupport.withCommonRulesRewriter;
+import static querqy.solr.StandaloneSolrTestSupport.updateRewriter;
 import static querqy.solr.StandaloneSolrTestSupport.withRewriter;
 
+import com.codahale.metrics.Gauge;
 import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.DisMaxParams;
 import org.apache.solr.request.SolrQueryRequest;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -51,6 +55,21 @@ public class WordBreakCompoundRewriterTest extends SolrTestCaseJ4 {
         withRewriter(h.getCore(), "word_break_protected",  WordBreakCompoundRewriterFactory.class,
                 builder.buildConfig());
 
+        final WordBreakCompoundConfigRequestBuilder cachingBuilder = new WordBreakCompoundConfigRequestBuilder()
+                .dictionaryField("f1").reverseCompoundTriggerWords("für", "aus").verifyDecompoundCollation(true)
+                .lowerCaseInput(true).suggestionCacheSize(100);
+        withRewriter(h.getCore(), "word_break_cached",  WordBreakCompoundRewriterFactory.class,
+                cachingBuilder.buildConfig());
+
+        final Map<String, Integer> dictionaryWords = new HashMap<>();
+        dictionaryWords.put("herren", 2);
+        dictionaryWords.put("jacke", 2);
+        dictionaryWords.put("damenjacke", 1);
+        final WordBreakCompoundConfigRequestBuilder dictionaryBuilder = new WordBreakCompoundConfigRequestBuilder()
+                .dictionaryWords(dictionaryWords).lowerCaseInput(true);
+        withRewriter(h.getCore(), "word_break_dictionary",  WordBreakCompoundRewriterFactory.class,
+                dictionaryBuilder.buildConfig());
+
         addDocs();
 
     }
@@ -226,6 +245,156 @@ public class WordBreakCompoundRewriterTest extends SolrTestCaseJ4 {
         req.close();
     }
 
+    @Test
+    public void testThatCachedSuggestionsAreApplied() {
+
+        final long hits = getSuggestionCacheGaugeValue("suggestionCacheHits");
+        final long misses = getSuggestionCacheGaugeValue("suggestionCacheMisses");
+
+        // run each query twice so that the second request gets its suggestions from the cache
+        for (int i = 0; i < 2; i++) {
+            SolrQueryRequest req = req("q", "Herrenjacke",
+                    DisMaxParams.QF, "f1 f2 f3",
+                    DisMaxParams.MM, "100%",
+                    "defType", "querqy",
+                    PARAM_REWRITERS, "common_rules_before_wordbreak,word_break_cached"
+            );
+
+            assertQ("Misssing decompound",
+                    req,
+                    "//result[@name='response' and @numFound='1']",
+                    "//doc/str[@name='id'][contains(.,'2')]"
+            );
+
+            req.close();
+
+            req = req("q", "jacke für damen lila",
+                    DisMaxParams.QF, "f1 f2",
+                    DisMaxParams.MM, "100%",
+                    "defType", "querqy",
+                    PARAM_REWRITERS, "common_rules_before_wordbreak,word_break_cached"
+            );
+
+            assertQ("Compounding failed",
+                    req,
+                    "//result[@name='response' and @numFound='1']/doc[1]/str[@name='id'][text()='5']"
+            );
+
+            req.close();
+        }
+
+        assertTrue(getSuggestionCacheGaugeValue("suggestionCacheHits") > hits);
+        assertTrue(getSuggestionCacheGaugeValue("suggestionCacheMisses") > misses);
+    }
+
+    private static long getSuggestionCacheGaugeValue(final String name) {
+        final Gauge<?> gauge = h.getCore().getSolrMetricsContext().getMetricRegistry().getGauges()
+                .get("QUERY.querqyRewriter.word_break_cached." + name);
+        assertNotNull("Missing gauge " + name, gauge);
+        return (Long) gauge.getValue();
+    }
+
+    @Test
+    public void testThatDictionaryIsBuiltFromIndexAndStored() {
+
+        withRewriter(h.getCore(), "word_break_built", WordBreakCompoundRewriterFactory.class,
+                new WordBreakCompoundConfigRequestBuilder().dictionaryField("f1").lowerCaseInput(true)
+                        .buildConfig());
+
+        updateRewriter(h.getCore(), "word_break_built",
+                Collections.singletonMap(WordBreakCompoundRewriterFactory.CHANGE_BUILD_DICTIONARY, true));
+
+        try (final SolrQueryRequest req = req("qt", "/querqy/rewriter/word_break_built")) {
+            assertQ("Dictionary not stored",
+                    req,
+                    "//lst[@name='rewriter']/lst[@name='definition']/lst[@name='config']/str[@name='dictionary']",
+                    "//lst[@name='rewriter']/lst[@name='definition']/lst[@name='config']"
+                            + "/str[@name='dictionaryField'][text()='f1']"
+            );
+        }
+
+        try (final SolrQueryRequest req = req("q", "Herrenjacke",
+                DisMaxParams.QF, "f1 f2 f3",
+                DisMaxParams.MM, "100%",
+                "defType", "querqy",
+                PARAM_REWRITERS, "word_break_built"
+        )) {
+            assertQ("Misssing decompound",
+                    req,
+                    "//result[@name='response' and @numFound='1']",
+                    "//doc/str[@name='id'][contains(.,'2')]"
+            );
+        }
+
+        try (final SolrQueryRequest req = req("q", "lila damen jacke",
+                DisMaxParams.QF, "f1 f2",
+                DisMaxParams.MM, "100%",
+                "defType", "querqy",
+                PARAM_REWRITERS, "word_break_built"
+        )) {
+            assertQ("Compounding failed",
+                    req,
+                    "//result[@name='response' and @numFound='1']/doc[1]/str[@name='id'][text()='5']"
+            );
+        }
+
+        try {
+            updateRewriter(h.getCore(), "word_break_built",
+                    Collections.singletonMap(WordBreakCompoundRewriterFactory.CONF_DICTIONARY_FIELD, "f2"));
+            fail("Only buildDictionary must be supported");
+        } catch (final SolrException e) {
+            assertEquals(SolrException.ErrorCode.BAD_REQUEST.code, e.code());
+        }
+    }
+
+    @Test
+    public void testThatDictionaryWordsAreUsedInsteadOfIndex() {
+
+        SolrQueryRequest req = req("q", "Herrenjacke",
+                DisMaxParams.QF, "f1 f2 f3",
+                DisMaxParams.MM, "100%",
+                "defType", "querqy",
+                PARAM_REWRITERS, "word_break_dictionary"
+        );
+
+        assertQ("Misssing decompound",
+                req,
+                "//result[@name='response' and @numFound='1']",
+                "//doc/str[@name='id'][contains(.,'2')]"
+        );
+
+        req.close();
+
+        req = req("q", "lila damen jacke",
+                DisMaxParams.QF, "f1 f2",
+                DisMaxParams.MM, "100%",
+                "defType", "querqy",
+                PARAM_REWRITERS, "word_break_dictionary"
+        );
+
+        assertQ("Compounding failed",
+                req,
+                "//result[@name='response' and @numFound='1']/doc[1]/str[@name='id'][text()='5']"
+        );
+
+        req.close();
+
+        // 'kinder' is in the index but not in the dictionary
+        req = req("q", "kinderjacke",
+                DisMaxParams.QF, "f1 f2",
+                DisMaxParams.MM, "100%",
+                "defType", "querqy",
+                PARAM_REWRITERS, "word_break_dictionary"
+        );
+
+        assertQ("Unexpected decompound",
+                req,
+                "//result[@name='response' and @numFound='0']"
+        );
+
+        req.close();
+    }
+
     @Test
     public void testCompoundingTriggerReverseCompound() {
         String q = "jacke für damen lila";
@@ -0,0 +1,112 @@
+package querqy.solr.usage;
+
+import static querqy.solr.QuerqyQParserPlugin.PARAM_REWRITERS;
+import static querqy.solr.StandaloneSolrTestSupport.withCommonRulesRewriter;
+
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.params.DisMaxParams;
+import org.apache.solr.request.SolrQueryRequest;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import querqy.rewrite.logging.RewriteLoggingSampler;
+import querqy.solr.rewriter.commonrules.CommonRulesConfigRequestBuilder;
+
+@SolrTestCaseJ4.SuppressSSL
+public class RuleUsageTest extends SolrTestCaseJ4 {
+
+    private static final String USAGE_PATH = "//lst[@name='ruleUsage']/lst[@name='usage_rules']";
+
+    @BeforeClass
+    public static void beforeTests() throws Exception {
+        initCore("solrconfig.xml", "schema.xml");
+    }
+
+    @Test
+    public void testThatAppliedRulesAreCounted() {
+        withCommonRulesRewriter(h.getCore(), "usage_rules", new CommonRulesConfigRequestBuilder()
+                .rules("a =>\n SYNONYM: b\n @_id: \"rule_a\"\nc =>\n SYNONYM: d\n @_id: \"rule_c\"")
+                .rewriteLoggingSampleRate(100)
+                .rewriteLoggingSampleMode(RewriteLoggingSampler.Mode.QUERY));
+
+        search("a");
+        search("a c");
+        search("x");
+
+        try (final SolrQueryRequest req = req(
+                "qt", "/querqy/rewriter/_usage/rules",
+                PARAM_REWRITERS, "usage_rules",
+                RuleUsageRequestHandler.PARAM_RESET, "true"
+        )) {
+            assertQ("Rule usage not reported",
+                    req,
+                    USAGE_PATH + "/long[1][@name='rule_a'][text()='2']",
+                    USAGE_PATH + "/long[2][@name='rule_c'][text()='1']",
+                    "count(" + USAGE_PATH + "/long) = 2"
+            );
+        }
+
+        try (final SolrQueryRequest req = req("qt", "/querqy/rewriter/_usage/rules")) {
+            assertQ("Rule usage not reset",
+                    req,
+                    "count(" + USAGE_PATH + "/long) = 0"
+            );
+        }
+
+    }
+
+    @Test
+    public void testThatResetRequiresPost() {
+        withCommonRulesRewriter(h.getCore(), "usage_rules", new CommonRulesConfigRequestBuilder()
+                .rules("a =>\n SYNONYM: b\n @_id: \"rule_a\""));
+
+        search("a");
+
+        try (final SolrQueryRequest req = req(
+                "qt", "/querqy/rewriter/_usage/rules",
+                PARAM_REWRITERS, "usage_rules",
+                RuleUsageRequestHandler.PARAM_RESET, "true"
+        )) {
+            req.getContext().put("httpMethod", "GET");
+            assertQEx("Reset must not be accepted via GET", req, 400);
+        }
+
+        try (final SolrQueryRequest req = req(
+                "qt", "/querqy/rewriter/_usage/rules",
+                PARAM_REWRITERS, "usage_rules",
+                RuleUsageRequestHandler.PARAM_RESET, "true"
+        )) {
+            req.getContext().put("httpMethod", "POST");
+            assertQ("Rule usage not reported", req, USAGE_PATH + "/long[@name='rule_a'][text()='1']");
+        }
+
+        search("a");
+
+        try (final SolrQueryRequest req = req("qt", "/querqy/rewriter/_usage/rules")) {
+            assertQ("Rule usage not counted after reset",
+                    req,
+                    USAGE_PATH + "/long[@name='rule_a'][text()='1']",
+                    "count(" + USAGE_PATH + "/long) = 1"
+            );
+        }
+    }
+
+    @Test
+    public void testThatUnknownRewriterIsRejected() {
+        try (final SolrQueryRequest req = req(
+                "qt", "/querqy/rewriter/_usage/rules",
+                PARAM_REWRITERS, "no_such_rewriter"
+        )) {
+            assertQEx("Unknown rewriter must not be accepted", req, 400);
+        }
+    }
+
+    private void search(final String q) {
+        try (final SolrQueryRequest req = req("q", q,
+                DisMaxParams.QF, "f1",
+                "defType", "querqy",
+                PARAM_REWRITERS, "usage_rules"
+        )) {
+            assertQ("Query failed", req, "//result[@name='response']");
+        }
+    }
+}